@@ -71,6 +71,7 @@ import org.geotools.xml.impl.BindingPropertyExtractor;
 import org.geotools.xml.impl.BindingVisitorDispatch;
 import org.geotools.xml.impl.BindingWalker;
 import org.geotools.xml.impl.BindingWalkerFactoryImpl;
+import org.geotools.xml.impl.CompiledSchemas;
 import org.geotools.xml.impl.ElementEncoder;
 import org.geotools.xml.impl.GetPropertyExecutor;
 import org.geotools.xml.impl.MismatchedBindingFinder;
@@ -218,9 +219,24 @@ public class Encoder {
      * @param schema The schema instance.
      */
     public Encoder(Configuration configuration, XSDSchema schema) {
-        this.schema = schema;
+        this(configuration, schema, new SchemaIndexImpl(new XSDSchema[] { schema }));
+    }
 
-        index = new SchemaIndexImpl(new XSDSchema[] { schema });
+    /**
+     * Creates an encoder from a configuration, sharing the index of the configuration schema
+     * with the other encoders created from the same compiled schemas.
+     *
+     * @param configuration The encoder configuration.
+     * @param schemas The compiled schemas, usually obtained with
+     *        {@link CompiledSchemas#get(Configuration)}.
+     */
+    public Encoder(Configuration configuration, CompiledSchemas schemas) {
+        this(configuration, configuration.schema(), schemas.getIndex(configuration.schema()));
+    }
+
+    private Encoder(Configuration configuration, XSDSchema schema, SchemaIndex index) {
+        this.schema = schema;
+        this.index = index;
 
         bindingLoader = new BindingLoader(configuration.setupBindings());
         bindingWalker = new BindingWalker(bindingLoader);
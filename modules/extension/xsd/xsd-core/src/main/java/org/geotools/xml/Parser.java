@@ -41,6 +41,8 @@ import javax.xml.transform.stream.StreamResult;
 
 import org.eclipse.emf.ecore.resource.URIHandler;
 import org.eclipse.xsd.XSDSchema;
+import org.geotools.xml.impl.CompiledBindings;
+import org.geotools.xml.impl.CompiledSchemas;
 import org.geotools.xml.impl.ParserHandler;
 import org.geotools.xs.XS;
 import org.w3c.dom.Document;
@@ -353,6 +355,54 @@ public class Parser {
         return handler.isForceParserDelegate();
     }
     
+    /**
+     * Sets the compiled bindings to parse with, which must have been created from the
+     * configuration of this parser.
+     * <p>
+     * Compiled bindings are shared among parsers, and avoid setting up the bindings and resolving
+     * the binding execution chains for each document, see {@link CompiledBindings} for details.
+     * By default no compiled bindings are used.
+     * </p>
+     * 
+     * @param compiledBindings The compiled bindings, or <code>null</code> to parse without.
+     */
+    public void setCompiledBindings(CompiledBindings compiledBindings) {
+        handler.setCompiledBindings(compiledBindings);
+    }
+
+    /**
+     * Returns the compiled bindings to parse with, or <code>null</code> if not set.
+     * 
+     * @see Parser#setCompiledBindings(CompiledBindings)
+     */
+    public CompiledBindings getCompiledBindings() {
+        return handler.getCompiledBindings();
+    }
+
+    /**
+     * Sets the compiled schemas to parse with, usually obtained with
+     * {@link CompiledSchemas#get(Configuration)}.
+     * <p>
+     * The schemas referenced by the instance documents are then resolved and indexed once and
+     * shared among parsers using the same entity resolver and URI handlers. Schemas are not
+     * cached when validating. By default no compiled schemas are used.
+     * </p>
+     * 
+     * @param compiledSchemas The compiled schemas, or <code>null</code> to parse without.
+     */
+    public void setCompiledSchemas(CompiledSchemas compiledSchemas) {
+        handler.setCompiledSchemas(compiledSchemas);
+    }
+
+    /**
+     * Returns the compiled schemas to parse with, or <code>null</code> if not set.
+     * 
+     * @see Parser#setCompiledSchemas(CompiledSchemas)
+     */
+    public CompiledSchemas getCompiledSchemas() {
+        return handler.getCompiledSchemas();
+    }
+
     /**
      * Set EntityResolver
      * 
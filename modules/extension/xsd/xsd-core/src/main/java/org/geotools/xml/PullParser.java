@@ -11,6 +11,8 @@ import javax.xml.stream.XMLInputFactory;
 import javax.xml.stream.XMLStreamException;
 import javax.xml.stream.XMLStreamReader;
 
+import org.geotools.xml.impl.CompiledBindings;
+import org.geotools.xml.impl.CompiledSchemas;
 import org.geotools.xml.impl.ElementHandler;
 import org.geotools.xml.impl.NodeImpl;
 import org.geotools.xml.impl.ParserHandler;
@@ -47,6 +49,22 @@ public class PullParser {
         pp = createPullParser(input);
     }
 
+    /**
+     * Sets the compiled bindings to parse with, see {@link Parser#setCompiledBindings(CompiledBindings)}.
+     * Must be called before the first call to {@link #parse()}.
+     */
+    public void setCompiledBindings(CompiledBindings compiledBindings) {
+        handler.setCompiledBindings(compiledBindings);
+    }
+
+    /**
+     * Sets the compiled schemas to parse with, see {@link Parser#setCompiledSchemas(CompiledSchemas)}.
+     * Must be called before the first call to {@link #parse()}.
+     */
+    public void setCompiledSchemas(CompiledSchemas compiledSchemas) {
+        handler.setCompiledSchemas(compiledSchemas);
+    }
+
     public Object parse() throws XMLStreamException, IOException, SAXException {
         if (handler.getLogger() == null) {
             handler.startDocument();
@@ -24,6 +24,7 @@ import javax.xml.namespace.QName;
 import javax.xml.parsers.ParserConfigurationException;
 import javax.xml.parsers.SAXParser;
 import javax.xml.parsers.SAXParserFactory;
+import org.geotools.xml.impl.CompiledBindings;
 import org.geotools.xml.impl.ElementNameStreamingParserHandler;
 import org.geotools.xml.impl.StreamingParserHandler;
 import org.geotools.xml.impl.TypeStreamingParserHandler;
@@ -230,6 +231,14 @@ public class StreamingParser {
         this.input = input;
     }
 
+    /**
+     * Sets the compiled bindings to parse with, see {@link Parser#setCompiledBindings(CompiledBindings)}.
+     * Must be called before the first call to {@link #parse()}.
+     */
+    public void setCompiledBindings(CompiledBindings compiledBindings) {
+        handler.setCompiledBindings(compiledBindings);
+    }
+
     /**
      * Streams the parser to the next element in the instance document which
      * matches the xpath query specified in the contstructor. This method
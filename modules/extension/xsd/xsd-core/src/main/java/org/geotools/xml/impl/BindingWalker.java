@@ -24,14 +24,16 @@ import org.eclipse.xsd.XSDParticle;
 import org.eclipse.xsd.XSDSimpleTypeDefinition;
 import org.eclipse.xsd.XSDTypeDefinition;
 import org.picocontainer.MutablePicoContainer;
+import java.lang.ref.SoftReference;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.Stack;
+import java.util.WeakHashMap;
 import javax.xml.namespace.QName;
 
-import org.geotools.util.SoftValueHashMap;
 import org.geotools.xml.Binding;
 import org.geotools.xml.Schemas;
 import org.geotools.xs.XS;
@@ -45,17 +47,33 @@ import org.geotools.xs.XS;
 public class BindingWalker implements TypeWalker.Visitor {
     BindingLoader loader;
     
-    SoftValueHashMap /*<XSDFeature,BindingExecutionChain>*/ chains;
+    /**
+     * The chains by component, weakly keyed so that a walker shared among parsers does not keep
+     * alive the schemas of the documents it has seen, and softly referenced so that they can be
+     * dropped under memory pressure
+     */
+    Map<XSDFeature, SoftReference<BindingExecutionChain>> chains;
     TypeWalker typeWalker;
     MutablePicoContainer context;
     ArrayList bindings;
     XSDFeature component;
     XSDTypeDefinition container;
 
+    /**
+     * Whether the chains are shared among parsers, in which case they hold
+     * {@link BindingReference}s instead of bindings loaded in the context of the first parser
+     */
+    boolean shared;
+
     public BindingWalker(BindingLoader factory) {
+        this(factory, false);
+    }
+
+    BindingWalker(BindingLoader factory, boolean shared) {
         this.loader = factory;
+        this.shared = shared;
 
-        chains = new SoftValueHashMap(100);
+        chains = new WeakHashMap<XSDFeature, SoftReference<BindingExecutionChain>>(100);
         typeWalker = new TypeWalker();
     }
     
@@ -149,7 +167,18 @@ public class BindingWalker implements TypeWalker.Visitor {
 
     public void walk(XSDFeature component, Visitor visitor, XSDTypeDefinition container,
         MutablePicoContainer context) {
-        BindingExecutionChain chain = (BindingExecutionChain) chains.get(component);
+        BindingExecutionChain chain = getChain(component, container, context);
+        chain.execute(visitor);
+    }
+
+    /**
+     * Looks up the execution chain of a component, building it if missing. Synchronized, as the
+     * walker can be shared among parsers, see {@link CompiledBindings}.
+     */
+    synchronized BindingExecutionChain getChain(XSDFeature component,
+            XSDTypeDefinition container, MutablePicoContainer context) {
+        SoftReference<BindingExecutionChain> reference = chains.get(component);
+        BindingExecutionChain chain = reference != null ? reference.get() : null;
 
         if (chain == null) {
             this.container = container;
@@ -179,11 +208,27 @@ public class BindingWalker implements TypeWalker.Visitor {
                 }
             }
 
+            if (shared) {
+                //keep the binding classes only, the bindings are instantiated in the context
+                // of each parser, see ParserHandler#resolveBinding
+                for (int i = 0; i < bindings.size(); i++) {
+                    Binding binding = (Binding) bindings.get(i);
+                    if (!(binding instanceof InstanceBinding)) {
+                        bindings.set(i, new BindingReference(binding));
+                    }
+                }
+                //do not keep the context of the parser around
+                this.context = null;
+            }
             chain = new BindingExecutionChain(bindings);
-            chains.put(component, chain);
+            chains.put(component, new SoftReference<BindingExecutionChain>(chain));
         }
 
-        chain.execute(visitor);
+        return chain;
+    }
+
+    synchronized int getChainCount() {
+        return chains.size();
     }
 
     public void walk(XSDFeature component, Visitor visitor, MutablePicoContainer context) {
@@ -194,6 +239,40 @@ public class BindingWalker implements TypeWalker.Visitor {
         void visit(Binding binding);
     }
 
+    /**
+     * The class, target and execution mode of a binding in a shared chain, to be instantiated
+     * within the context of the parser executing the chain.
+     */
+    static final class BindingReference implements Binding {
+        final Class bindingClass;
+        final QName target;
+        final Class type;
+        final int executionMode;
+
+        BindingReference(Binding binding) {
+            this.bindingClass = binding.getClass();
+            this.target = binding.getTarget();
+            this.type = binding.getType();
+            this.executionMode = binding.getExecutionMode();
+        }
+
+        public Class getBindingClass() {
+            return bindingClass;
+        }
+
+        public QName getTarget() {
+            return target;
+        }
+
+        public Class getType() {
+            return type;
+        }
+
+        public int getExecutionMode() {
+            return executionMode;
+        }
+    }
+
     public static class BindingExecutionChain {
         List bindings;
 
@@ -0,0 +1,93 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2013, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.xml.impl;
+
+import java.util.Map;
+
+import org.geotools.xml.Configuration;
+
+/**
+ * The element to binding dispatch of a {@link Configuration}, compiled once and shared among all
+ * the parsers it is handed to.
+ * <p>
+ * A parser normally rebuilds the binding map of the configuration and the binding execution
+ * chains of every element, attribute and type it meets for each document. When compiled bindings
+ * are set on a parser, see {@link org.geotools.xml.Parser#setCompiledBindings(CompiledBindings)},
+ * the binding map is set up only once and each execution chain, resolved walking the type
+ * hierarchy, is computed on the first document and then looked up in a flat table. The chains
+ * only hold the binding classes, each parser instantiating the bindings within its own contexts,
+ * so that no binding or component of a parser is kept or seen by the others. Moreover the
+ * parser reuses the bindings it instantiates within a context, each element still getting its own
+ * child context, so that the components registered by bindings do not leak among siblings.
+ * </p>
+ * <p>
+ * Compiled bindings are thread safe and can be shared among parsers running in different
+ * threads. They assume the bindings of the configuration are stateless, and that the
+ * configuration is not modified after they have been created. The chains are looked up by schema
+ * component, so the benefit across documents is full when the schemas are cached too, for example
+ * when the application schema is part of the configuration. The table only weakly references the
+ * schema components, so that it does not keep alive schemas that are not used anymore.
+ * </p>
+ *
+ * @source $URL$
+ */
+public class CompiledBindings {
+
+    final Configuration configuration;
+
+    final BindingLoader bindingLoader;
+
+    final BindingWalker bindingWalker;
+
+    /**
+     * Compiles the bindings of a configuration
+     *
+     * @param configuration The parser configuration.
+     */
+    public CompiledBindings(Configuration configuration) {
+        if (configuration == null) {
+            throw new NullPointerException("configuration");
+        }
+        this.configuration = configuration;
+
+        Map bindings = configuration.setupBindings();
+        bindingLoader = new BindingLoader(bindings);
+        bindingWalker = new BindingWalker(bindingLoader, true);
+    }
+
+    /**
+     * @return The configuration the bindings have been compiled from.
+     */
+    public Configuration getConfiguration() {
+        return configuration;
+    }
+
+    /**
+     * @return The number of execution chains compiled so far.
+     */
+    public int getChainCount() {
+        return bindingWalker.getChainCount();
+    }
+
+    BindingLoader getBindingLoader() {
+        return bindingLoader;
+    }
+
+    BindingWalker getBindingWalker() {
+        return bindingWalker;
+    }
+}
@@ -0,0 +1,277 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2013, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.xml.impl;
+
+import java.lang.ref.WeakReference;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.eclipse.emf.ecore.resource.URIHandler;
+import org.eclipse.xsd.XSDSchema;
+import org.geotools.xml.Configuration;
+import org.geotools.xml.SchemaIndex;
+import org.xml.sax.EntityResolver;
+
+/**
+ * A registry of the schemas resolved by parsers and encoders of a {@link Configuration}, along
+ * with their {@link SchemaIndex}, shared among parser and encoder instances.
+ * <p>
+ * A parser normally resolves the schema locations of each instance document, parsing the schemas
+ * not provided by the configuration, and builds a new schema index for each document. When
+ * compiled schemas are set on a parser, see
+ * {@link org.geotools.xml.Parser#setCompiledSchemas(CompiledSchemas)}, the schemas resolved for a
+ * given <code>xsi:schemaLocation</code> are parsed and indexed only once. Encoders created with
+ * {@link org.geotools.xml.Encoder#Encoder(Configuration, CompiledSchemas)} share the index of the
+ * configuration schema in the same way.
+ * </p>
+ * <p>
+ * The registry is keyed by configuration class, see {@link #get(Configuration)}, and is thread
+ * safe. Configurations are not compared with {@link Configuration#equals(Object)}, which only
+ * looks at the namespace: GML 2 and GML 3 configurations, for example, resolve different schemas
+ * for the same namespace.
+ * The cached schemas are never modified, the entries are dropped with {@link #invalidate()}, for
+ * example when a remote application schema changes, and recomputed on demand.
+ * </p>
+ * <p>
+ * Since the entity resolver and the URI handlers of a parser decide what its schema locations
+ * resolve to, the schemas are shared only among parsers using the same entity resolver and URI
+ * handler instances. The default {@link HTTPURIHandler} is the exception, as it resolves
+ * locations the same way whatever its settings. Resolvers and handlers are weakly referenced,
+ * the schemas they resolved are dropped once they are garbage collected.
+ * </p>
+ *
+ * @source $URL$
+ */
+public class CompiledSchemas {
+
+    /**
+     * The registry, keyed by configuration class
+     */
+    static final Map<Class<?>, CompiledSchemas> REGISTRY = Collections
+            .synchronizedMap(new WeakHashMap<Class<?>, CompiledSchemas>());
+
+    /**
+     * The schemas resolved by parsers, keyed by the schema location of the documents
+     */
+    final ConcurrentMap<Key, Entry> entries = new ConcurrentHashMap<Key, Entry>();
+
+    /**
+     * The indexes used by encoders
+     */
+    final Map<XSDSchema, SchemaIndexImpl> indexes = new HashMap<XSDSchema, SchemaIndexImpl>();
+
+    /**
+     * Returns the compiled schemas of a configuration, creating them if missing
+     *
+     * @param configuration The parser or encoder configuration.
+     */
+    public static CompiledSchemas get(Configuration configuration) {
+        synchronized (REGISTRY) {
+            CompiledSchemas schemas = REGISTRY.get(configuration.getClass());
+            if (schemas == null) {
+                schemas = new CompiledSchemas();
+                REGISTRY.put(configuration.getClass(), schemas);
+            }
+            return schemas;
+        }
+    }
+
+    /**
+     * Drops the compiled schemas of a configuration, parsers and encoders already holding them
+     * keep on working with the schemas resolved so far.
+     *
+     * @param configuration The parser or encoder configuration.
+     */
+    public static void invalidate(Configuration configuration) {
+        CompiledSchemas schemas = REGISTRY.remove(configuration.getClass());
+        if (schemas != null) {
+            schemas.invalidate();
+        }
+    }
+
+    /**
+     * Drops all the schemas resolved so far, they will be resolved again on demand.
+     */
+    public void invalidate() {
+        for (Key key : entries.keySet()) {
+            Entry entry = entries.remove(key);
+            if (entry != null) {
+                entry.index.detach();
+            }
+        }
+        synchronized (indexes) {
+            for (SchemaIndexImpl index : indexes.values()) {
+                index.detach();
+            }
+            indexes.clear();
+        }
+    }
+
+    /**
+     * @return The number of schema sets resolved by parsers and cached so far.
+     */
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * Returns the shared index of a schema, as used by encoders
+     *
+     * @param schema The schema to index.
+     */
+    public SchemaIndex getIndex(XSDSchema schema) {
+        synchronized (indexes) {
+            SchemaIndexImpl index = indexes.get(schema);
+            if (index == null) {
+                index = new SchemaIndexImpl(new XSDSchema[] { schema });
+                indexes.put(schema, index);
+            }
+            return index;
+        }
+    }
+
+    Entry get(Key key) {
+        return entries.get(key);
+    }
+
+    /**
+     * Caches the schemas resolved for a key, returning the entry that ends up in the cache, which
+     * is a different one if another parser resolved the same key concurrently.
+     */
+    Entry put(Key key, XSDSchema[] schemas) {
+        //drop the schemas resolved by resolvers and handlers that are gone
+        for (Iterator<Map.Entry<Key, Entry>> it = entries.entrySet().iterator(); it.hasNext();) {
+            Map.Entry<Key, Entry> stale = it.next();
+            if (stale.getKey().isStale()) {
+                it.remove();
+                stale.getValue().index.detach();
+            }
+        }
+
+        Entry entry = new Entry(schemas);
+        Entry previous = entries.putIfAbsent(key, entry);
+        if (previous != null) {
+            entry.index.detach();
+            return previous;
+        }
+        return entry;
+    }
+
+    /**
+     * The key of the schemas resolved for a document, made of the configuration class, which
+     * provides the schemas of documents without a schema location, of the schema location, and
+     * of the entity resolver and URI handlers used to resolve it
+     */
+    static final class Key {
+        final Class<?> configuration;
+
+        final String location;
+
+        /**
+         * Either a class, for resolvers and handlers compared by type, or a weak reference, for
+         * the ones compared by identity
+         */
+        final Object[] resolvers;
+
+        final int hash;
+
+        Key(Class<?> configuration, String location, EntityResolver entityResolver,
+                List<URIHandler> uriHandlers) {
+            this.configuration = configuration;
+            this.location = location;
+            this.resolvers = new Object[uriHandlers.size() + 1];
+            int hash = 31 * configuration.hashCode() + location.hashCode();
+            for (int i = 0; i < resolvers.length; i++) {
+                Object resolver = i == 0 ? entityResolver : uriHandlers.get(i - 1);
+                if (resolver == null) {
+                    hash = 31 * hash;
+                } else if (resolver.getClass() == HTTPURIHandler.class) {
+                    resolvers[i] = HTTPURIHandler.class;
+                    hash = 31 * hash + HTTPURIHandler.class.hashCode();
+                } else {
+                    resolvers[i] = new WeakReference<Object>(resolver);
+                    hash = 31 * hash + System.identityHashCode(resolver);
+                }
+            }
+            this.hash = hash;
+        }
+
+        boolean isStale() {
+            for (Object resolver : resolvers) {
+                if (resolver instanceof WeakReference
+                        && ((WeakReference<?>) resolver).get() == null) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) obj;
+            if (hash != other.hash || configuration != other.configuration
+                    || !location.equals(other.location)
+                    || resolvers.length != other.resolvers.length) {
+                return false;
+            }
+            for (int i = 0; i < resolvers.length; i++) {
+                Object r1 = resolvers[i];
+                Object r2 = other.resolvers[i];
+                if (r1 instanceof WeakReference && r2 instanceof WeakReference) {
+                    Object referent = ((WeakReference<?>) r1).get();
+                    if (referent == null || referent != ((WeakReference<?>) r2).get()) {
+                        return false;
+                    }
+                } else if (r1 != r2) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    /**
+     * The schemas resolved for a document, along with their index
+     */
+    static class Entry {
+        final XSDSchema[] schemas;
+
+        final SchemaIndexImpl index;
+
+        Entry(XSDSchema[] schemas) {
+            this.schemas = schemas;
+            this.index = new SchemaIndexImpl(schemas);
+        }
+    }
+}
@@ -193,7 +193,8 @@ public class ElementHandlerImpl extends HandlerImpl implements ElementHandler {
 
         // trigger the leading edge initialize callback
         ElementInitializer initer = new ElementInitializer(element, node, parent.getContext());
-        parser.getBindingWalker().walk(element.getElementDeclaration(), initer, container(), parent.getContext());
+        parser.getBindingWalker().walk(element.getElementDeclaration(),
+            parser.resolving(initer, parent.getContext()), container(), parent.getContext());
 
         //create context for children 
         //TODO: this should only be done if the element is complex, this class
@@ -259,6 +260,7 @@ public class ElementHandlerImpl extends HandlerImpl implements ElementHandler {
 
         //kill the context
         parent.getContext().removeChildContainer(getContext());
+        parser.releaseContext(getContext());
     }
 
     /**
@@ -343,7 +345,8 @@ public class ElementHandlerImpl extends HandlerImpl implements ElementHandler {
             ElementInstance childInstance = (ElementInstance) child.getComponent();
             ContextInitializer initer = new ContextInitializer(childInstance, node,
                     child.getContext());
-            parser.getBindingWalker().walk(element.getElementDeclaration(), initer, container(), getContext());
+            parser.getBindingWalker().walk(element.getElementDeclaration(),
+                parser.resolving(initer, getContext()), container(), getContext());
         }
     }
 
@@ -20,6 +20,8 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
@@ -38,6 +40,7 @@ import org.eclipse.xsd.XSDSchema;
 import org.eclipse.xsd.XSDTypeDefinition;
 import org.eclipse.xsd.util.XSDSchemaLocationResolver;
 import org.eclipse.xsd.util.XSDSchemaLocator;
+import org.geotools.xml.Binding;
 import org.geotools.xml.BindingFactory;
 import org.geotools.xml.Configuration;
 import org.geotools.xml.ElementInstance;
@@ -45,6 +48,8 @@ import org.geotools.xml.ParserDelegate;
 import org.geotools.xml.ParserDelegate2;
 import org.geotools.xml.SchemaIndex;
 import org.geotools.xml.Schemas;
+import org.geotools.xml.impl.BindingWalker.BindingReference;
+import org.geotools.xml.impl.BindingWalker.Visitor;
 import org.geotools.xs.XS;
 import org.picocontainer.ComponentAdapter;
 import org.picocontainer.MutablePicoContainer;
@@ -135,6 +140,19 @@ public class ParserHandler extends DefaultHandler {
     /** entity resolver */
     EntityResolver entityResolver;
     
+    /** compiled bindings, shared among parsers */
+    CompiledBindings compiledBindings;
+
+    /** compiled schemas, shared among parsers */
+    CompiledSchemas compiledSchemas;
+
+    /** whether the schema index comes from the compiled schemas, and must not be destroyed */
+    boolean sharedIndex;
+
+    /** bindings instantiated in the live contexts, only used with compiled bindings */
+    Map<MutablePicoContainer, ContextBindings> contextBindings =
+        new IdentityHashMap<MutablePicoContainer, ContextBindings>();
+    
     public ParserHandler(Configuration config) {
         this.config = config;
         namespaces = new NamespaceSupport();
@@ -195,6 +213,18 @@ public class ParserHandler extends DefaultHandler {
         return rootElementType;
     }
     
+    public void setCompiledBindings(CompiledBindings compiledBindings) {
+        if (compiledBindings != null && compiledBindings.getConfiguration() != config) {
+            throw new IllegalArgumentException(
+                    "The bindings have been compiled from a different configuration");
+        }
+        this.compiledBindings = compiledBindings;
+    }
+
+    public CompiledBindings getCompiledBindings() {
+        return compiledBindings;
+    }
+
     public List getValidationErrors() {
         return validator.getErrors();
     }
@@ -219,6 +249,92 @@ public class ParserHandler extends DefaultHandler {
         return bindingFactory;
     }
 
+    /**
+     * Reloads a binding out of a context, so that the binding can pick up any new dependencies
+     * provided by this particular context. With compiled bindings the binding is instantiated once
+     * per context, as long as no new component is registered in it.
+     *
+     * @param binding The binding found by the {@link BindingWalker}, or the reference to it held
+     *        by a shared chain.
+     * @param context The context to load the binding from.
+     */
+    public Binding resolveBinding(Binding binding, MutablePicoContainer context) {
+        //TODO: the check for InstanceBinding is a temporary measure to allow 
+        // for bindings that are not registered by class, but by instance. 
+        // in the long term we intend to ditch pico container b/c our inection 
+        // needs are quite trivial and can be handled by some simple reflection
+        if (binding instanceof InstanceBinding) {
+            return binding;
+        }
+
+        Class bindingClass = binding instanceof BindingReference
+            ? ((BindingReference) binding).getBindingClass() : binding.getClass();
+        ContextBindings cached = null;
+        if (compiledBindings != null) {
+            int adapters = context.getComponentAdapters().size();
+            cached = contextBindings.get(context);
+            if (cached == null || cached.adapters != adapters) {
+                cached = new ContextBindings(adapters);
+                contextBindings.put(context, cached);
+            } else {
+                Binding resolved = cached.bindings.get(bindingClass);
+                if (resolved != null) {
+                    return resolved;
+                }
+            }
+        }
+
+        QName bindingTarget = binding.getTarget();
+        binding = (Binding) context.getComponentInstanceOfType(bindingClass);
+        if (binding == null) {
+            binding = bindingLoader.loadBinding(bindingTarget, context);
+            if (binding == null) {
+                binding = bindingLoader.loadBinding(bindingTarget, bindingClass, context);
+            }
+            if (binding.getClass() != bindingClass) {
+                throw new IllegalStateException("Reloaded binding resulted in different type");
+            }
+        }
+
+        if (cached != null) {
+            cached.bindings.put(bindingClass, binding);
+        }
+        return binding;
+    }
+
+    /**
+     * Wraps a visitor so that it gets the bindings instantiated in the context, only needed with
+     * compiled bindings, whose execution chains are shared among parsers and only hold references
+     * to the bindings.
+     */
+    Visitor resolving(final Visitor visitor, final MutablePicoContainer context) {
+        if (compiledBindings == null) {
+            return visitor;
+        }
+        return new Visitor() {
+            public void visit(Binding binding) {
+                visitor.visit(resolveBinding(binding, context));
+            }
+        };
+    }
+
+    /**
+     * Forgets the bindings instantiated in a context that is not going to be used anymore.
+     */
+    void releaseContext(MutablePicoContainer context) {
+        if (compiledBindings != null) {
+            contextBindings.remove(context);
+        }
+    }
+
+    public void setCompiledSchemas(CompiledSchemas compiledSchemas) {
+        this.compiledSchemas = compiledSchemas;
+    }
+
+    public CompiledSchemas getCompiledSchemas() {
+        return compiledSchemas;
+    }
+
     public XSDSchema[] getSchemas() {
         return schemas;
     }
@@ -314,7 +430,19 @@ public class ParserHandler extends DefaultHandler {
         }
 
         boolean root = schemas == null;
-        if (root) {
+        CompiledSchemas.Key schemaKey = root ? getSchemaKey(uri, attributes) : null;
+        CompiledSchemas.Entry compiled = schemaKey != null ? compiledSchemas.get(schemaKey) : null;
+        if (compiled != null) {
+            //schemas already resolved by a previous document
+            schemas = compiled.schemas;
+            index = compiled.index;
+            sharedIndex = true;
+            context.registerComponentInstance(index);
+
+            if (namespaces.getURI("") == null) {
+                namespaces.declarePrefix("", config.getNamespaceURI());
+            }
+        } else if (root) {
             //root element, parse the schema
             //TODO: this processing is too loose, do some validation will ya!
             String[] locations = null;
@@ -403,6 +531,8 @@ public class ParserHandler extends DefaultHandler {
                         } catch (Exception e) {
                             String msg = "Error parsing: " + location;
                             logger.warning(msg);
+                            //do not cache a partial resolution
+                            schemaKey = null;
 
                             if (isStrict()) {
                                 //strict mode, throw exception
@@ -508,7 +638,14 @@ O:          for (int i = 0; i < schemas.length; i++) {
                 }
             }
 
-            index = new SchemaIndexImpl(schemas);
+            if (schemaKey != null) {
+                compiled = compiledSchemas.put(schemaKey, schemas);
+                schemas = compiled.schemas;
+                index = compiled.index;
+                sharedIndex = true;
+            } else {
+                index = new SchemaIndexImpl(schemas);
+            }
             context.registerComponentInstance(index);
             
             //if no default prefix is set in this namespace context, then 
@@ -754,11 +891,13 @@ O:          for (int i = 0; i < schemas.length; i++) {
         documentHandler.endDocument();
         
         //cleanup
-        if ( index != null ) {
+        if ( index != null && !sharedIndex ) {
             index.destroy();
         }
         index = null;
+        sharedIndex = false;
         schemas = null;
+        contextBindings.clear();
 
         synchronized (this) {
             notifyAll();
@@ -793,11 +932,39 @@ O:          for (int i = 0; i < schemas.length; i++) {
         return null;
     }
 
+    /**
+     * Returns the key of the root element schemas in the compiled schemas, or <code>null</code>
+     * if they should not be cached
+     */
+    CompiledSchemas.Key getSchemaKey(String uri, Attributes attributes) {
+        //validation checks the imports and includes while parsing the schemas
+        if (compiledSchemas == null || isValidating()) {
+            return null;
+        }
+
+        String schemaLocation = null;
+        for (int i = 0; i < attributes.getLength(); i++) {
+            if (attributes.getQName(i).endsWith("schemaLocation")) {
+                schemaLocation = attributes.getValue(i);
+                break;
+            }
+        }
+        return new CompiledSchemas.Key(config.getClass(),
+            (isStrict() ? "strict " : "") + uri + " " + schemaLocation, entityResolver, uriHandlers);
+    }
+
     protected void configure(Configuration config) {
+        handlerFactory = new HandlerFactoryImpl();
+        if (compiledBindings != null) {
+            //reuse the bindings and execution chains compiled so far
+            bindingLoader = compiledBindings.getBindingLoader();
+            bindingWalker = compiledBindings.getBindingWalker();
+            return;
+        }
+
         //configure the bindings
         Map bindings = config.setupBindings();
         
-        handlerFactory = new HandlerFactoryImpl();
         bindingLoader = new BindingLoader(bindings);
         bindingWalker = new BindingWalker(bindingLoader);
     }
@@ -823,4 +990,18 @@ O:          for (int i = 0; i < schemas.length; i++) {
 
         return (XSDSchemaLocationResolver[]) l.toArray(new XSDSchemaLocationResolver[l.size()]);
     }
+
+    /**
+     * The bindings instantiated in a context, valid as long as the number of components registered
+     * in the context does not change.
+     */
+    static class ContextBindings {
+        final int adapters;
+
+        final Map<Class, Binding> bindings = new HashMap<Class, Binding>();
+
+        ContextBindings(int adapters) {
+            this.adapters = adapters;
+        }
+    }
 }
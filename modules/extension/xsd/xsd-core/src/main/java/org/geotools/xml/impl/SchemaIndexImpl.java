@@ -42,9 +42,10 @@ import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import javax.xml.namespace.QName;
 
-import org.geotools.util.SoftValueHashMap;
 import org.geotools.xml.SchemaIndex;
 import org.geotools.xml.Schemas;
 
@@ -63,21 +64,18 @@ public class SchemaIndexImpl implements SchemaIndex {
     /**
      * Indexes
      */
-    HashMap elementIndex;
-    HashMap attributeIndex;
-    HashMap attributeGroupIndex;
-    HashMap complexTypeIndex;
-    HashMap simpleTypeIndex;
+    volatile HashMap elementIndex;
+    volatile HashMap attributeIndex;
+    volatile HashMap attributeGroupIndex;
+    volatile HashMap complexTypeIndex;
+    volatile HashMap simpleTypeIndex;
 
     /**
-     * Cache of elements to children
+     * Cache of elements to their children and attributes, each entry filled lazily under its own
+     * lock, so that threads sharing the index do not wait on each other for different elements
      */
-    SoftValueHashMap /*<XSDElementDeclaration,OrderedMap>*/ element2children = new SoftValueHashMap(1000);
-
-    /**
-     * Cache of elemnets to attributes
-     */
-    HashMap /*<XSDElementDeclaratoin,List>*/ element2attributes = new HashMap();
+    ConcurrentMap<XSDElementDeclaration, ElementEntry> elementEntries =
+        new ConcurrentHashMap<XSDElementDeclaration, ElementEntry>();
 
     /**
      * Adapter for tracking changes to schemas.
@@ -101,13 +99,21 @@ public class SchemaIndexImpl implements SchemaIndex {
     }
     
     public void destroy() {
+        detach();
+        schemas = null;
+    }
+
+    /**
+     * Stops tracking the changes to the schemas, leaving the index usable by the ones still
+     * holding it, see {@link CompiledSchemas}.
+     */
+    void detach() {
         //remove the adapter from the schemas
         for (int i = 0; i < schemas.length; i++) {
             synchronized(this.schemas[i].eAdapters()) {
                 this.schemas[i].eAdapters().remove(adapter);
             }
         }
-        schemas = null;
     }
 
     public XSDSchema[] getSchemas() {
@@ -195,41 +201,47 @@ public class SchemaIndexImpl implements SchemaIndex {
     }
 
     protected OrderedMap children(XSDElementDeclaration parent) {
-        OrderedMap children = (OrderedMap) element2children.get(parent);
+        return getElementEntry(parent).getChildren();
+    }
 
-        if (children == null) {
-            synchronized (this) {
-                if (children == null) {
-                    children = new ListOrderedMap();
-
-                    for (Iterator i = Schemas.getChildElementParticles(parent.getType(), true)
-                                             .iterator(); i.hasNext();) {
-                        XSDParticle particle = (XSDParticle) i.next();
-                        XSDElementDeclaration child = (XSDElementDeclaration) particle.getContent();
-
-                        if (child.isElementDeclarationReference()) {
-                            child = child.getResolvedElementDeclaration();
-                        }
-
-                        QName childName = null;
-
-                        if (child.getTargetNamespace() != null) {
-                            childName = new QName(child.getTargetNamespace(), child.getName());
-                        } else if (parent.getTargetNamespace() != null) {
-                            childName = new QName(parent.getTargetNamespace(), child.getName());
-                        } else if (parent.getType().getTargetNamespace() != null) {
-                            childName = new QName(parent.getType().getTargetNamespace(),
-                                    child.getName());
-                        } else {
-                            childName = new QName(null, child.getName());
-                        }
-
-                        children.put(childName, particle);
-                    }
+    ElementEntry getElementEntry(XSDElementDeclaration element) {
+        ElementEntry entry = elementEntries.get(element);
+        if (entry == null) {
+            entry = new ElementEntry(element);
+            ElementEntry previous = elementEntries.putIfAbsent(element, entry);
+            if (previous != null) {
+                entry = previous;
+            }
+        }
+        return entry;
+    }
 
-                    element2children.put(parent, children);
-                }
+    static OrderedMap buildChildren(XSDElementDeclaration parent) {
+        OrderedMap children = new ListOrderedMap();
+
+        for (Iterator i = Schemas.getChildElementParticles(parent.getType(), true)
+                                 .iterator(); i.hasNext();) {
+            XSDParticle particle = (XSDParticle) i.next();
+            XSDElementDeclaration child = (XSDElementDeclaration) particle.getContent();
+
+            if (child.isElementDeclarationReference()) {
+                child = child.getResolvedElementDeclaration();
+            }
+
+            QName childName = null;
+
+            if (child.getTargetNamespace() != null) {
+                childName = new QName(child.getTargetNamespace(), child.getName());
+            } else if (parent.getTargetNamespace() != null) {
+                childName = new QName(parent.getTargetNamespace(), child.getName());
+            } else if (parent.getType().getTargetNamespace() != null) {
+                childName = new QName(parent.getType().getTargetNamespace(),
+                        child.getName());
+            } else {
+                childName = new QName(null, child.getName());
             }
+
+            children.put(childName, particle);
         }
 
         return children;
@@ -283,14 +295,7 @@ public class SchemaIndexImpl implements SchemaIndex {
     }
 
     public List getAttributes(XSDElementDeclaration element) {
-        List attributes = (List) element2attributes.get(element);
-
-        if (attributes == null) {
-            attributes = Schemas.getAttributeDeclarations(element);
-            element2attributes.put(element, attributes);
-        }
-
-        return Collections.unmodifiableList(attributes);
+        return getElementEntry(element).getAttributes();
     }
 
     protected Collection find(Class c) {
@@ -374,7 +379,8 @@ public class SchemaIndexImpl implements SchemaIndex {
     }
 
     protected void buildElementIndex() {
-        elementIndex = new HashMap();
+        //fill before publishing, the index is read without locking
+        HashMap index = new HashMap();
 
         for (int i = 0; i < schemas.length; i++) {
             XSDSchema schema = schemas[i];
@@ -383,13 +389,16 @@ public class SchemaIndexImpl implements SchemaIndex {
                 XSDElementDeclaration element = (XSDElementDeclaration) e.next();
 
                 QName qName = new QName(element.getTargetNamespace(), element.getName());
-                elementIndex.put(qName, element);
+                index.put(qName, element);
             }
         }
+
+        elementIndex = index;
     }
 
     protected void buildAttriubuteIndex() {
-        attributeIndex = new HashMap();
+        //fill before publishing, the index is read without locking
+        HashMap index = new HashMap();
 
         for (int i = 0; i < schemas.length; i++) {
             XSDSchema schema = schemas[i];
@@ -398,13 +407,16 @@ public class SchemaIndexImpl implements SchemaIndex {
                 XSDAttributeDeclaration attribute = (XSDAttributeDeclaration) a.next();
 
                 QName qName = new QName(attribute.getTargetNamespace(), attribute.getName());
-                attributeIndex.put(qName, attribute);
+                index.put(qName, attribute);
             }
         }
+
+        attributeIndex = index;
     }
 
     protected void buildAttributeGroupIndex() {
-        attributeGroupIndex = new HashMap();
+        //fill before publishing, the index is read without locking
+        HashMap index = new HashMap();
 
         for (int i = 0; i < schemas.length; i++) {
             XSDSchema schema = schemas[i];
@@ -413,13 +425,16 @@ public class SchemaIndexImpl implements SchemaIndex {
                 XSDAttributeGroupDefinition group = (XSDAttributeGroupDefinition) g.next();
 
                 QName qName = new QName(group.getTargetNamespace(), group.getName());
-                attributeGroupIndex.put(qName, group);
+                index.put(qName, group);
             }
         }
+
+        attributeGroupIndex = index;
     }
 
     protected void buildComplexTypeIndex() {
-        complexTypeIndex = new HashMap();
+        //fill before publishing, the index is read without locking
+        HashMap index = new HashMap();
 
         for (int i = 0; i < schemas.length; i++) {
             XSDSchema schema = schemas[i];
@@ -429,14 +444,17 @@ public class SchemaIndexImpl implements SchemaIndex {
 
                 if (type instanceof XSDComplexTypeDefinition) {
                     QName qName = new QName(type.getTargetNamespace(), type.getName());
-                    complexTypeIndex.put(qName, type);
+                    index.put(qName, type);
                 }
             }
         }
+
+        complexTypeIndex = index;
     }
 
     protected void buildSimpleTypeIndex() {
-        simpleTypeIndex = new HashMap();
+        //fill before publishing, the index is read without locking
+        HashMap index = new HashMap();
 
         for (int i = 0; i < schemas.length; i++) {
             XSDSchema schema = schemas[i];
@@ -446,9 +464,56 @@ public class SchemaIndexImpl implements SchemaIndex {
 
                 if (type instanceof XSDSimpleTypeDefinition) {
                     QName qName = new QName(type.getTargetNamespace(), type.getName());
-                    simpleTypeIndex.put(qName, type);
+                    index.put(qName, type);
+                }
+            }
+        }
+
+        simpleTypeIndex = index;
+    }
+
+    /**
+     * The children and attributes of an element, computed on first access
+     */
+    static class ElementEntry {
+        final XSDElementDeclaration element;
+
+        volatile OrderedMap children;
+
+        volatile List attributes;
+
+        ElementEntry(XSDElementDeclaration element) {
+            this.element = element;
+        }
+
+        OrderedMap getChildren() {
+            OrderedMap result = children;
+            if (result == null) {
+                synchronized (this) {
+                    result = children;
+                    if (result == null) {
+                        //fill before publishing, the map is read without locking
+                        result = buildChildren(element);
+                        children = result;
+                    }
+                }
+            }
+            return result;
+        }
+
+        List getAttributes() {
+            List result = attributes;
+            if (result == null) {
+                synchronized (this) {
+                    result = attributes;
+                    if (result == null) {
+                        result = Collections.unmodifiableList(
+                            Schemas.getAttributeDeclarations(element));
+                        attributes = result;
+                    }
                 }
             }
+            return result;
         }
     }
 
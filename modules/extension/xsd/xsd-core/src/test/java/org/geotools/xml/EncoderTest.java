@@ -9,6 +9,7 @@ import org.geotools.ml.Envelope;
 import org.geotools.ml.MLConfiguration;
 import org.geotools.ml.Mail;
 import org.geotools.ml.bindings.ML;
+import org.geotools.xml.impl.CompiledSchemas;
 
 import junit.framework.TestCase;
 
@@ -23,4 +24,17 @@ public class EncoderTest extends TestCase {
 
         System.out.println(e.encodeAsString(ml, new QName(ML.NAMESPACE, "mails")));
     }
+
+    public void testCompiledSchemas() throws Exception {
+        Mail ml = new Mail(BigInteger.valueOf(10), "hi", new Envelope("me@me.org", "you@you.org", 
+            Calendar.getInstance(), "hey", null), null);
+        MLConfiguration config = new MLConfiguration();
+        Encoder e1 = new Encoder(config, CompiledSchemas.get(config));
+        Encoder e2 = new Encoder(config, CompiledSchemas.get(config));
+        assertSame(e1.getSchemaIndex(), e2.getSchemaIndex());
+
+        QName name = new QName(ML.NAMESPACE, "mails");
+        assertEquals(new Encoder(config).encodeAsString(ml, name), e1.encodeAsString(ml, name));
+        assertEquals(e1.encodeAsString(ml, name), e2.encodeAsString(ml, name));
+    }
 }
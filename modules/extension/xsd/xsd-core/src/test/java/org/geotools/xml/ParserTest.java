@@ -30,6 +30,8 @@ import junit.framework.TestCase;
 import org.geotools.ml.MLConfiguration;
 import org.geotools.ml.Mail;
 import org.geotools.ml.bindings.MLSchemaLocationResolver;
+import org.geotools.xml.impl.CompiledBindings;
+import org.geotools.xml.impl.CompiledSchemas;
 import org.xml.sax.Attributes;
 import org.xml.sax.EntityResolver;
 import org.xml.sax.InputSource;
@@ -57,6 +59,73 @@ public class ParserTest extends TestCase {
         assertEquals(1, mail.getId().intValue());
     }
 
+    public void testParseCompiledBindings() throws Exception {
+        MLConfiguration config = new MLConfiguration();
+        CompiledBindings compiled = new CompiledBindings(config);
+
+        for (int i = 0; i < 2; i++) {
+            Parser parser = new Parser(config);
+            parser.setCompiledBindings(compiled);
+            List mails = (List) parser.parse(MLSchemaLocationResolver.class.getResourceAsStream(
+                        "mails.xml"));
+
+            assertEquals(2, mails.size());
+
+            Mail mail = (Mail) mails.get(0);
+            assertEquals(0, mail.getId().intValue());
+            assertEquals("user@unknown.domain.org", mail.getEnvelope().getFrom());
+            assertEquals("I desperately need XML Schema support in CDuce",
+                mail.getEnvelope().getSubject());
+            assertEquals(1, mail.getEnvelope().getHeaders().length);
+            assertEquals(1, mail.getAttachments().length);
+
+            mail = (Mail) mails.get(1);
+            assertEquals(1, mail.getId().intValue());
+            assertEquals("bill@microsoft.com", mail.getEnvelope().getTo());
+        }
+        assertTrue(compiled.getChainCount() > 0);
+
+        try {
+            new Parser(new MLConfiguration()).setCompiledBindings(compiled);
+            fail("compiled bindings should not be accepted by a parser with another configuration");
+        } catch (IllegalArgumentException e) {
+        }
+    }
+
+    public void testParseCompiledSchemas() throws Exception {
+        MLConfiguration config = new MLConfiguration();
+        CompiledSchemas.invalidate(config);
+        CompiledSchemas compiled = CompiledSchemas.get(config);
+        assertSame(compiled, CompiledSchemas.get(new MLConfiguration()));
+
+        for (int i = 0; i < 2; i++) {
+            Parser parser = new Parser(config);
+            parser.setCompiledSchemas(compiled);
+            List mails = (List) parser.parse(MLSchemaLocationResolver.class.getResourceAsStream(
+                        "mails.xml"));
+
+            assertEquals(2, mails.size());
+            assertEquals(1, ((Mail) mails.get(1)).getId().intValue());
+            // resolved by the first parse only
+            assertEquals(1, compiled.size());
+        }
+
+        // a different entity resolver might resolve the schemas differently
+        Parser parser = new Parser(config);
+        parser.setCompiledSchemas(compiled);
+        parser.setEntityResolver(new EntityResolver() {
+            public InputSource resolveEntity(String publicId, String systemId) {
+                return null;
+            }
+        });
+        parser.parse(MLSchemaLocationResolver.class.getResourceAsStream("mails.xml"));
+        assertEquals(2, compiled.size());
+
+        CompiledSchemas.invalidate(config);
+        assertEquals(0, compiled.size());
+        assertNotSame(compiled, CompiledSchemas.get(config));
+    }
+
     public void testParseValid() throws Exception {
         Parser parser = new Parser(new MLConfiguration());
         parser.setValidating(true);
@@ -5,6 +5,7 @@ import javax.xml.namespace.QName;
 import org.geotools.ml.MLConfiguration;
 import org.geotools.ml.Mail;
 import org.geotools.ml.bindings.ML;
+import org.geotools.xml.impl.CompiledBindings;
 
 import junit.framework.TestCase;
 
@@ -24,4 +25,26 @@ public class PullParserTest extends TestCase {
 
         assertNull(parser.parse());
     }
+
+    public void testParseCompiledBindings() throws Exception {
+        MLConfiguration config = new MLConfiguration();
+        CompiledBindings compiled = new CompiledBindings(config);
+
+        for (int i = 0; i < 2; i++) {
+            PullParser parser = new PullParser(config, 
+                ML.class.getResourceAsStream("mails.xml"), new QName(ML.NAMESPACE, "mail"));
+            parser.setCompiledBindings(compiled);
+
+            Mail m = (Mail) parser.parse();
+            assertNotNull(m);
+            assertEquals(0, m.getId().intValue());
+            assertEquals("user@cduce.org", m.getEnvelope().getTo());
+
+            m = (Mail) parser.parse();
+            assertNotNull(m);
+            assertEquals(1, m.getId().intValue());
+
+            assertNull(parser.parse());
+        }
+    }
 }
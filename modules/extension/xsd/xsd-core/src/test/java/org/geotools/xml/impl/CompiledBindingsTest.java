@@ -0,0 +1,64 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2013, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.xml.impl;
+
+import java.lang.ref.SoftReference;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.geotools.ml.MLConfiguration;
+import org.geotools.ml.bindings.MLSchemaLocationResolver;
+import org.geotools.xml.Parser;
+import org.geotools.xml.impl.BindingWalker.BindingExecutionChain;
+
+/**
+ * 
+ *
+ * @source $URL$
+ */
+public class CompiledBindingsTest extends TestCase {
+
+    public void testChainsHoldNoBindingInstances() throws Exception {
+        MLConfiguration config = new MLConfiguration();
+        CompiledBindings compiled = new CompiledBindings(config);
+
+        for (int i = 0; i < 2; i++) {
+            Parser parser = new Parser(config);
+            parser.setCompiledBindings(compiled);
+            List mails = (List) parser.parse(MLSchemaLocationResolver.class.getResourceAsStream(
+                        "mails.xml"));
+            assertEquals(2, mails.size());
+        }
+
+        BindingWalker walker = compiled.getBindingWalker();
+        assertNull(walker.context);
+        int references = 0;
+        for (SoftReference<BindingExecutionChain> reference : walker.chains.values()) {
+            BindingExecutionChain chain = reference.get();
+            if (chain == null) {
+                continue;
+            }
+            for (Object binding : chain.bindings) {
+                assertTrue(binding.getClass().getName(), binding instanceof BindingWalker.BindingReference
+                        || binding instanceof InstanceBinding);
+                references++;
+            }
+        }
+        assertTrue(references > 0);
+    }
+}
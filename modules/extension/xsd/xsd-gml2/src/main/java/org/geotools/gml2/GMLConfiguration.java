@@ -83,6 +83,14 @@ public class GMLConfiguration extends Configuration {
      */
     public static final QName ENCODE_FEATURE_MEMBER = new QName( "org.geotools.gml", "encodeFeatureMember" );
 
+    /**
+     * Boolean property which controls whether simple feature collections are encoded by a
+     * streaming writer, bypassing the per feature bindings, as opposed to the schema driven
+     * encoding. It is honoured by the GML feature collections and the WFS 1.0 and 1.1 ones, WFS 2.0
+     * feature collections are always encoded by the schema driven encoder.
+     */
+    public static final QName OPTIMIZED_ENCODING = new QName( "org.geotools.gml", "optimizedEncoding" );
+
     /**
      * Srs name style to encode srsName URI's with
      */
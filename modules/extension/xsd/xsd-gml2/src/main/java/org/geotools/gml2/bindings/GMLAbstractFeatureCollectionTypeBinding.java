@@ -23,10 +23,15 @@ import javax.xml.namespace.QName;
 import org.geotools.data.simple.SimpleFeatureCollection;
 import org.geotools.feature.FeatureCollection;
 import org.geotools.gml2.GML;
+import org.geotools.gml2.GMLConfiguration;
+import org.geotools.gml2.SrsSyntax;
+import org.geotools.gml2.simple.GML2FeatureCollectionEncoderDelegate;
 import org.geotools.xml.AbstractComplexBinding;
+import org.geotools.xml.Configuration;
 import org.geotools.xml.ElementInstance;
 import org.geotools.xml.Node;
 import org.opengis.feature.simple.SimpleFeature;
+import org.xml.sax.helpers.NamespaceSupport;
 
 
 /**
@@ -60,6 +65,20 @@ import org.opengis.feature.simple.SimpleFeature;
  * @source $URL$
  */
 public class GMLAbstractFeatureCollectionTypeBinding extends AbstractComplexBinding {
+    Configuration configuration;
+    NamespaceSupport namespaces;
+    SrsSyntax srsSyntax;
+
+    public GMLAbstractFeatureCollectionTypeBinding() {
+    }
+
+    public GMLAbstractFeatureCollectionTypeBinding(Configuration configuration,
+            NamespaceSupport namespaces, SrsSyntax srsSyntax) {
+        this.configuration = configuration;
+        this.namespaces = namespaces;
+        this.srsSyntax = srsSyntax;
+    }
+
     /**
      * @generated
      */
@@ -108,4 +127,19 @@ public class GMLAbstractFeatureCollectionTypeBinding extends AbstractComplexBind
 
         return fc;
     }
+
+    public Object getProperty(Object object, QName name)
+        throws Exception {
+        //stream the members when optimized encoding is on
+        if (GML.featureMember.equals(name) && object instanceof SimpleFeatureCollection
+                && configuration != null && namespaces != null
+                && configuration.hasProperty(GMLConfiguration.OPTIMIZED_ENCODING)) {
+            GML2FeatureCollectionEncoderDelegate delegate = new GML2FeatureCollectionEncoderDelegate(
+                    (SimpleFeatureCollection) object, namespaces, srsSyntax);
+            delegate.setEncodeBounds(!configuration.hasProperty(GMLConfiguration.NO_FEATURE_BOUNDS));
+            return delegate;
+        }
+
+        return null;
+    }
 }
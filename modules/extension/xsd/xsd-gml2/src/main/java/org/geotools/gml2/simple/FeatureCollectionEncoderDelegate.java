@@ -0,0 +1,368 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2013, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.gml2.simple;
+
+import java.util.Calendar;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TimeZone;
+
+import org.geotools.data.simple.SimpleFeatureCollection;
+import org.geotools.data.simple.SimpleFeatureIterator;
+import org.geotools.gml2.bindings.GML2EncodingUtils;
+import org.geotools.gml2.bindings.GMLEncodingUtils;
+import org.geotools.xml.EncoderDelegate;
+import org.geotools.xml.impl.DatatypeConverterImpl;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
+import org.opengis.feature.type.AttributeDescriptor;
+import org.opengis.feature.type.GeometryDescriptor;
+import org.opengis.geometry.BoundingBox;
+import org.opengis.referencing.crs.CoordinateReferenceSystem;
+import org.xml.sax.ContentHandler;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.AttributesImpl;
+import org.xml.sax.helpers.NamespaceSupport;
+
+import com.vividsolutions.jts.geom.Geometry;
+
+/**
+ * Streams the members of a {@link SimpleFeatureCollection} straight to the encoder output,
+ * bypassing the per feature binding lookups, property extraction and DOM building of the
+ * {@link org.geotools.xml.Encoder}.
+ * <p>
+ * The first time a feature type is met a write plan is built for it, holding the qualified
+ * names of the feature and attribute elements and the srsName of the geometry attributes, so
+ * that the encoding of each feature only has to walk the attribute values. Null attributes are
+ * skipped, geometries are handed to a {@link GeometryEncoder}, dates are written in the XML
+ * schema lexical form and any other value with its <code>toString()</code>.
+ * </p>
+ * <p>
+ * The output only follows the feature type, not the application schema, and is meant for flat
+ * feature types mapping one to one to their schema, as it is the case for most data stores.
+ * </p>
+ * 
+ * @source $URL$
+ */
+public abstract class FeatureCollectionEncoderDelegate implements EncoderDelegate {
+
+    protected final SimpleFeatureCollection features;
+
+    protected final NamespaceSupport namespaces;
+
+    /**
+     * Name of the GML namespace, the other GML names are derived from it
+     */
+    protected final QualifiedName gml;
+
+    /**
+     * The member element(s) to write the features into
+     */
+    protected final QualifiedName member;
+
+    /**
+     * Whether all features go in a single member element, as in <code>gml:featureMembers</code>,
+     * or each in its own, as in <code>gml:featureMember</code>
+     */
+    protected final boolean singleMember;
+
+    protected final GeometryEncoder geometryEncoder;
+
+    protected final QualifiedName boundedBy;
+
+    boolean encodeBounds = true;
+
+    int numDecimals = -1;
+
+    Map<SimpleFeatureType, FeatureTypePlan> plans = new IdentityHashMap<SimpleFeatureType, FeatureTypePlan>();
+
+    Map<String, String> generatedPrefixes = new HashMap<String, String>();
+
+    Calendar calendar;
+
+    protected FeatureCollectionEncoderDelegate(SimpleFeatureCollection features,
+            NamespaceSupport namespaces, QualifiedName gml, QualifiedName member,
+            boolean singleMember, GeometryEncoder geometryEncoder) {
+        this.features = features;
+        this.namespaces = namespaces;
+        this.gml = gml;
+        this.member = member;
+        this.singleMember = singleMember;
+        this.geometryEncoder = geometryEncoder;
+        this.boundedBy = gml.derive("boundedBy");
+    }
+
+    /**
+     * Returns the prefix mapped to the namespace, the empty string if the namespace is the default
+     * one, or <code>null</code> if not declared.
+     */
+    protected static String getPrefix(NamespaceSupport namespaces, String namespaceURI) {
+        if (namespaceURI.equals(namespaces.getURI(""))) {
+            return "";
+        }
+        return namespaces.getPrefix(namespaceURI);
+    }
+
+    /**
+     * Sets whether features are written with their <code>gml:boundedBy</code>, true by default
+     */
+    public void setEncodeBounds(boolean encodeBounds) {
+        this.encodeBounds = encodeBounds;
+    }
+
+    public boolean isEncodeBounds() {
+        return encodeBounds;
+    }
+
+    /**
+     * Sets the number of decimals ordinates are rounded to, a negative number (the default) writing
+     * them as {@link Double#toString(double)} does
+     */
+    public void setNumDecimals(int numDecimals) {
+        this.numDecimals = numDecimals;
+    }
+
+    public int getNumDecimals() {
+        return numDecimals;
+    }
+
+    public void encode(ContentHandler output) throws Exception {
+        GMLWriter writer = new GMLWriter(output, numDecimals);
+        if (singleMember) {
+            writer.startElement(member, null);
+        }
+
+        SimpleFeatureIterator it = features.features();
+        try {
+            SimpleFeatureType lastType = null;
+            FeatureTypePlan plan = null;
+            while (it.hasNext()) {
+                SimpleFeature feature = it.next();
+                if (feature.getFeatureType() != lastType) {
+                    lastType = feature.getFeatureType();
+                    plan = getPlan(lastType);
+                }
+
+                if (!singleMember) {
+                    writer.startElement(member, null);
+                }
+                encode(feature, plan, writer);
+                if (!singleMember) {
+                    writer.endElement(member);
+                }
+            }
+        } finally {
+            it.close();
+        }
+
+        if (singleMember) {
+            writer.endElement(member);
+        }
+    }
+
+    void encode(SimpleFeature feature, FeatureTypePlan plan, GMLWriter writer)
+            throws SAXException {
+        ContentHandler output = writer.getContentHandler();
+        if (plan.declarePrefix) {
+            output.startPrefixMapping(plan.name.prefix, plan.name.namespaceURI);
+        }
+
+        AttributesImpl attributes = writer.attributes();
+        if (feature.getID() != null) {
+            addFeatureId(attributes, feature.getID());
+        }
+        writer.startElement(plan.name, attributes);
+
+        if (encodeBounds) {
+            // same as the binding based encoding, no bounds for features without geometries
+            BoundingBox bounds = feature.getBounds();
+            if (!bounds.isEmpty() || feature.getDefaultGeometry() != null) {
+                writer.startElement(boundedBy, null);
+                encodeBounds(bounds, plan.boundsSrsName, writer);
+                writer.endElement(boundedBy);
+            }
+        }
+
+        for (int i = 0; i < plan.attributes.length; i++) {
+            Object value = feature.getAttribute(i);
+            if (value == null) {
+                continue;
+            }
+
+            QualifiedName name = plan.attributes[i];
+            writer.startElement(name, null);
+            if (value instanceof Geometry) {
+                Geometry geometry = (Geometry) value;
+                if (!GMLEncodingUtils.isEmpty(geometry)) {
+                    String srsName = plan.srsNames[i];
+                    if (srsName == null) {
+                        CoordinateReferenceSystem crs = GML2EncodingUtils.getCRS(geometry);
+                        srsName = crs != null ? getSrsName(crs) : null;
+                    }
+                    geometryEncoder.encode(geometry, srsName, getGeometryId(feature, name),
+                            writer);
+                }
+            } else {
+                writer.characters(format(value));
+            }
+            writer.endElement(name);
+        }
+
+        writer.endElement(plan.name);
+        if (plan.declarePrefix) {
+            output.endPrefixMapping(plan.name.prefix);
+        }
+    }
+
+    /**
+     * Returns the write plan of the feature type, building it the first time the type is met
+     */
+    FeatureTypePlan getPlan(SimpleFeatureType featureType) {
+        FeatureTypePlan plan = plans.get(featureType);
+        if (plan != null) {
+            return plan;
+        }
+
+        // same as the binding based encoding, features without a namespace go in the one of
+        // the feature collection
+        String namespaceURI = featureType.getName().getNamespaceURI();
+        if (namespaceURI == null) {
+            namespaceURI = gml.namespaceURI;
+        }
+        String prefix = getPrefix(namespaces, namespaceURI);
+        boolean declarePrefix = false;
+        if (prefix == null) {
+            prefix = generatedPrefixes.get(namespaceURI);
+            if (prefix == null) {
+                int i = generatedPrefixes.size() + 1;
+                while (namespaces.getURI("ns" + i) != null) {
+                    i++;
+                }
+                prefix = "ns" + i;
+                generatedPrefixes.put(namespaceURI, prefix);
+            }
+            declarePrefix = true;
+        }
+
+        plan = new FeatureTypePlan();
+        plan.name = new QualifiedName(namespaceURI, featureType.getTypeName(), prefix);
+        plan.declarePrefix = declarePrefix;
+
+        List<AttributeDescriptor> descriptors = featureType.getAttributeDescriptors();
+        plan.attributes = new QualifiedName[descriptors.size()];
+        plan.srsNames = new String[descriptors.size()];
+        for (int i = 0; i < descriptors.size(); i++) {
+            AttributeDescriptor descriptor = descriptors.get(i);
+            plan.attributes[i] = plan.name.derive(descriptor.getLocalName());
+            if (descriptor instanceof GeometryDescriptor) {
+                CoordinateReferenceSystem crs = ((GeometryDescriptor) descriptor)
+                        .getCoordinateReferenceSystem();
+                if (crs != null) {
+                    plan.srsNames[i] = getSrsName(crs);
+                }
+            }
+        }
+        CoordinateReferenceSystem crs = featureType.getCoordinateReferenceSystem();
+        if (crs != null) {
+            plan.boundsSrsName = getSrsName(crs);
+        }
+
+        plans.put(featureType, plan);
+        return plan;
+    }
+
+    /**
+     * Formats a non geometric attribute value
+     */
+    protected String format(Object value) {
+        if (value instanceof String) {
+            return (String) value;
+        }
+
+        if (value instanceof Date || value instanceof Calendar) {
+            if (calendar == null) {
+                calendar = Calendar.getInstance(TimeZone.getTimeZone("GMT"));
+            }
+            calendar.clear();
+            if (value instanceof Date) {
+                calendar.setTimeInMillis(((Date) value).getTime());
+            } else {
+                calendar.setTimeInMillis(((Calendar) value).getTimeInMillis());
+            }
+
+            DatatypeConverterImpl converter = DatatypeConverterImpl.getInstance();
+            if (value instanceof java.sql.Date) {
+                return converter.printDate(calendar);
+            } else if (value instanceof java.sql.Time) {
+                return converter.printTime(calendar);
+            } else {
+                return converter.printDateTime(calendar);
+            }
+        }
+
+        return value.toString();
+    }
+
+    /**
+     * Adds the feature id to the attributes of the feature element
+     */
+    protected abstract void addFeatureId(AttributesImpl attributes, String id);
+
+    /**
+     * Writes out the content of the <code>gml:boundedBy</code> element
+     * 
+     * @param bounds The feature bounds, possibly empty
+     * @param srsName The srsName of the feature type, or <code>null</code>
+     */
+    protected abstract void encodeBounds(BoundingBox bounds, String srsName, GMLWriter writer)
+            throws SAXException;
+
+    /**
+     * Returns the srsName for the specified crs
+     */
+    protected abstract String getSrsName(CoordinateReferenceSystem crs);
+
+    /**
+     * Returns the id of a geometry attribute, or <code>null</code> if the GML version does not need
+     * one. Defaults to <code>null</code>.
+     */
+    protected String getGeometryId(SimpleFeature feature, QualifiedName attribute) {
+        return null;
+    }
+
+    /**
+     * The precomputed names of a feature type
+     */
+    static class FeatureTypePlan {
+
+        QualifiedName name;
+
+        /**
+         * Whether the feature element has to declare its own namespace prefix
+         */
+        boolean declarePrefix;
+
+        QualifiedName[] attributes;
+
+        String[] srsNames;
+
+        String boundsSrsName;
+    }
+}
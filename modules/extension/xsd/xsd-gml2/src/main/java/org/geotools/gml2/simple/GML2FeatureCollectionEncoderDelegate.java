@@ -0,0 +1,100 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2013, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.gml2.simple;
+
+import org.geotools.data.simple.SimpleFeatureCollection;
+import org.geotools.gml2.GML;
+import org.geotools.gml2.SrsSyntax;
+import org.geotools.gml2.bindings.GML2EncodingUtils;
+import org.opengis.geometry.BoundingBox;
+import org.opengis.referencing.crs.CoordinateReferenceSystem;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.AttributesImpl;
+import org.xml.sax.helpers.NamespaceSupport;
+
+/**
+ * Streaming encoder for GML 2 feature collections, writing each feature in its own
+ * <code>gml:featureMember</code>.
+ * 
+ * @source $URL$
+ */
+public class GML2FeatureCollectionEncoderDelegate extends FeatureCollectionEncoderDelegate {
+
+    static final QualifiedName FID = new QualifiedName(null, "fid", null);
+
+    final SrsSyntax srsSyntax;
+
+    final QualifiedName box;
+
+    final QualifiedName coordinates;
+
+    final QualifiedName nullElement;
+
+    public GML2FeatureCollectionEncoderDelegate(SimpleFeatureCollection features,
+            NamespaceSupport namespaces, SrsSyntax srsSyntax) {
+        this(features, namespaces, srsSyntax, gml(namespaces));
+    }
+
+    GML2FeatureCollectionEncoderDelegate(SimpleFeatureCollection features,
+            NamespaceSupport namespaces, SrsSyntax srsSyntax, QualifiedName gml) {
+        super(features, namespaces, gml, gml.derive("featureMember"), false,
+                new GML2GeometryEncoder(gml.getPrefix()));
+        this.srsSyntax = srsSyntax != null ? srsSyntax : SrsSyntax.OGC_HTTP_URL;
+        this.box = gml.derive("Box");
+        this.coordinates = gml.derive("coordinates");
+        this.nullElement = gml.derive("null");
+    }
+
+    static QualifiedName gml(NamespaceSupport namespaces) {
+        String prefix = getPrefix(namespaces, GML.NAMESPACE);
+        return new QualifiedName(GML.NAMESPACE, "", prefix != null ? prefix : "gml");
+    }
+
+    @Override
+    protected void addFeatureId(AttributesImpl attributes, String id) {
+        GMLWriter.addAttribute(attributes, FID, id);
+    }
+
+    @Override
+    protected void encodeBounds(BoundingBox bounds, String srsName, GMLWriter writer)
+            throws SAXException {
+        if (bounds.isEmpty()) {
+            writer.startElement(nullElement, null);
+            writer.characters("unknown");
+            writer.endElement(nullElement);
+            return;
+        }
+
+        AttributesImpl attributes = null;
+        if (srsName != null) {
+            attributes = writer.attributes();
+            GMLWriter.addAttribute(attributes, GML2GeometryEncoder.SRS_NAME, srsName);
+        }
+        writer.startElement(box, attributes);
+        writer.startElement(coordinates, null);
+        writer.ordinates(bounds.getMinX(), bounds.getMinY(), ',');
+        writer.characters(" ");
+        writer.ordinates(bounds.getMaxX(), bounds.getMaxY(), ',');
+        writer.endElement(coordinates);
+        writer.endElement(box);
+    }
+
+    @Override
+    protected String getSrsName(CoordinateReferenceSystem crs) {
+        return GML2EncodingUtils.toURI(crs, srsSyntax);
+    }
+}
@@ -0,0 +1,163 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2013, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.gml2.simple;
+
+import org.geotools.gml2.GML;
+import org.xml.sax.Attributes;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.AttributesImpl;
+
+import com.vividsolutions.jts.geom.CoordinateSequence;
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.GeometryCollection;
+import com.vividsolutions.jts.geom.LineString;
+import com.vividsolutions.jts.geom.LinearRing;
+import com.vividsolutions.jts.geom.MultiLineString;
+import com.vividsolutions.jts.geom.MultiPoint;
+import com.vividsolutions.jts.geom.MultiPolygon;
+import com.vividsolutions.jts.geom.Point;
+import com.vividsolutions.jts.geom.Polygon;
+
+/**
+ * Streaming GML 2 geometry encoder. Coordinates are written as <code>gml:coordinates</code>, with
+ * the default separators.
+ * 
+ * @source $URL$
+ */
+public class GML2GeometryEncoder extends GeometryEncoder {
+
+    static final QualifiedName SRS_NAME = new QualifiedName(null, "srsName", null);
+
+    final QualifiedName point;
+
+    final QualifiedName lineString;
+
+    final QualifiedName linearRing;
+
+    final QualifiedName polygon;
+
+    final QualifiedName outerBoundaryIs;
+
+    final QualifiedName innerBoundaryIs;
+
+    final QualifiedName multiPoint;
+
+    final QualifiedName pointMember;
+
+    final QualifiedName multiLineString;
+
+    final QualifiedName lineStringMember;
+
+    final QualifiedName multiPolygon;
+
+    final QualifiedName polygonMember;
+
+    final QualifiedName geometryCollection;
+
+    final QualifiedName geometryMember;
+
+    final QualifiedName coordinates;
+
+    /**
+     * Creates an encoder writing GML elements with the specified prefix
+     */
+    public GML2GeometryEncoder(String gmlPrefix) {
+        super(new QualifiedName(GML.NAMESPACE, "", gmlPrefix));
+        point = gml.derive("Point");
+        lineString = gml.derive("LineString");
+        linearRing = gml.derive("LinearRing");
+        polygon = gml.derive("Polygon");
+        outerBoundaryIs = gml.derive("outerBoundaryIs");
+        innerBoundaryIs = gml.derive("innerBoundaryIs");
+        multiPoint = gml.derive("MultiPoint");
+        pointMember = gml.derive("pointMember");
+        multiLineString = gml.derive("MultiLineString");
+        lineStringMember = gml.derive("lineStringMember");
+        multiPolygon = gml.derive("MultiPolygon");
+        polygonMember = gml.derive("polygonMember");
+        geometryCollection = gml.derive("MultiGeometry");
+        geometryMember = gml.derive("geometryMember");
+        coordinates = gml.derive("coordinates");
+    }
+
+    @Override
+    public void encode(Geometry geometry, String srsName, String gmlId, GMLWriter writer)
+            throws SAXException {
+        AttributesImpl attributes = null;
+        if (srsName != null) {
+            attributes = writer.attributes();
+            GMLWriter.addAttribute(attributes, SRS_NAME, srsName);
+        }
+        encode(geometry, attributes, writer);
+    }
+
+    void encode(Geometry geometry, Attributes attributes, GMLWriter writer) throws SAXException {
+        if (geometry instanceof Point) {
+            writer.startElement(point, attributes);
+            coordinates(((Point) geometry).getCoordinateSequence(), writer);
+            writer.endElement(point);
+        } else if (geometry instanceof LinearRing) {
+            writer.startElement(linearRing, attributes);
+            coordinates(((LinearRing) geometry).getCoordinateSequence(), writer);
+            writer.endElement(linearRing);
+        } else if (geometry instanceof LineString) {
+            writer.startElement(lineString, attributes);
+            coordinates(((LineString) geometry).getCoordinateSequence(), writer);
+            writer.endElement(lineString);
+        } else if (geometry instanceof Polygon) {
+            Polygon p = (Polygon) geometry;
+            writer.startElement(polygon, attributes);
+            writer.startElement(outerBoundaryIs, null);
+            encode(p.getExteriorRing(), null, writer);
+            writer.endElement(outerBoundaryIs);
+            for (int i = 0; i < p.getNumInteriorRing(); i++) {
+                writer.startElement(innerBoundaryIs, null);
+                encode(p.getInteriorRingN(i), null, writer);
+                writer.endElement(innerBoundaryIs);
+            }
+            writer.endElement(polygon);
+        } else if (geometry instanceof MultiPoint) {
+            members(geometry, multiPoint, pointMember, attributes, writer);
+        } else if (geometry instanceof MultiLineString) {
+            members(geometry, multiLineString, lineStringMember, attributes, writer);
+        } else if (geometry instanceof MultiPolygon) {
+            members(geometry, multiPolygon, polygonMember, attributes, writer);
+        } else if (geometry instanceof GeometryCollection) {
+            members(geometry, geometryCollection, geometryMember, attributes, writer);
+        } else {
+            throw new IllegalArgumentException("Cannot encode geometry of type "
+                    + geometry.getGeometryType());
+        }
+    }
+
+    void members(Geometry geometry, QualifiedName collection, QualifiedName member,
+            Attributes attributes, GMLWriter writer) throws SAXException {
+        writer.startElement(collection, attributes);
+        for (int i = 0; i < geometry.getNumGeometries(); i++) {
+            writer.startElement(member, null);
+            encode(geometry.getGeometryN(i), null, writer);
+            writer.endElement(member);
+        }
+        writer.endElement(collection);
+    }
+
+    void coordinates(CoordinateSequence cs, GMLWriter writer) throws SAXException {
+        writer.startElement(coordinates, null);
+        writer.coordinates(cs, getDimension(cs), ',', ' ');
+        writer.endElement(coordinates);
+    }
+}
@@ -0,0 +1,330 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2013, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.gml2.simple;
+
+import org.geotools.math.XMath;
+import org.xml.sax.Attributes;
+import org.xml.sax.ContentHandler;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.AttributesImpl;
+
+import com.vividsolutions.jts.geom.CoordinateSequence;
+
+/**
+ * Thin wrapper around a {@link ContentHandler} used by the streaming encoders. Element names are
+ * precomputed {@link QualifiedName}s, and ordinates are formatted straight into a reusable
+ * character buffer, so that writing a coordinate sequence does not allocate a {@link String} per
+ * ordinate.
+ * <p>
+ * When the number of decimals is negative (the default) ordinates are formatted as
+ * {@link Double#toString(double)} would, that is, as the shortest decimal reading back as the same
+ * double, without allocating. Only NaN, infinities and the ordinates needing about 16 significant
+ * digits or more fall back on {@link Double#toString(double)} itself. When a number of decimals is
+ * set, ordinates are rounded to it and trailing zeros are dropped, without allocating.
+ * </p>
+ * <p>
+ * Instances are not thread safe, each encoding should use its own writer.
+ * </p>
+ * 
+ * @source $URL$
+ */
+public class GMLWriter {
+
+    /**
+     * The longest ordinate the writer can produce, a {@link Double#toString(double)} output
+     * being at most 24 characters long
+     */
+    static final int MAX_ORDINATE_LENGTH = 32;
+
+    /**
+     * Largest scaled magnitude that can be rounded to a long without losing the units
+     */
+    static final double MAX_SCALED = 1e17;
+
+    /**
+     * Largest magnitude {@link Double#toString(double)} prints without an exponent
+     */
+    static final double MAX_PLAIN = 1e7;
+
+    /**
+     * Smallest magnitude {@link Double#toString(double)} prints without an exponent
+     */
+    static final double MIN_PLAIN = 1e-3;
+
+    static final Attributes EMPTY_ATTRIBUTES = new AttributesImpl();
+
+    final ContentHandler handler;
+
+    final int numDecimals;
+
+    final long scale;
+
+    final AttributesImpl attributes = new AttributesImpl();
+
+    final char[] digits = new char[20];
+
+    final char[] buffer;
+
+    /**
+     * Creates a writer formatting ordinates as {@link Double#toString(double)} does
+     */
+    public GMLWriter(ContentHandler handler) {
+        this(handler, -1);
+    }
+
+    /**
+     * Creates a writer rounding ordinates to the specified number of decimals, or formatting them
+     * as {@link Double#toString(double)} does if the number is negative.
+     */
+    public GMLWriter(ContentHandler handler, int numDecimals) {
+        if (numDecimals > 15) {
+            throw new IllegalArgumentException("The number of decimals cannot be larger than 15: "
+                    + numDecimals);
+        }
+        this.handler = handler;
+        this.numDecimals = numDecimals;
+        long scale = 1;
+        for (int i = 0; i < numDecimals; i++) {
+            scale *= 10;
+        }
+        this.scale = scale;
+        this.buffer = new char[4096];
+    }
+
+    public ContentHandler getContentHandler() {
+        return handler;
+    }
+
+    public int getNumDecimals() {
+        return numDecimals;
+    }
+
+    /**
+     * Clears and returns the attributes shared among the elements written by this writer. The
+     * attributes are only valid until the next call to this method.
+     */
+    public AttributesImpl attributes() {
+        attributes.clear();
+        return attributes;
+    }
+
+    /**
+     * Adds an attribute to the specified attributes.
+     */
+    public static void addAttribute(AttributesImpl attributes, QualifiedName name, String value) {
+        attributes.addAttribute(name.namespaceURI, name.localPart, name.qualifiedName, "CDATA",
+                value);
+    }
+
+    public void startElement(QualifiedName name, Attributes attributes) throws SAXException {
+        handler.startElement(name.namespaceURI, name.localPart, name.qualifiedName,
+                attributes == null ? EMPTY_ATTRIBUTES : attributes);
+    }
+
+    public void endElement(QualifiedName name) throws SAXException {
+        handler.endElement(name.namespaceURI, name.localPart, name.qualifiedName);
+    }
+
+    /**
+     * Writes out the specified text.
+     */
+    public void characters(String text) throws SAXException {
+        int length = text.length();
+        for (int start = 0; start < length; start += buffer.length) {
+            int end = Math.min(length, start + buffer.length);
+            text.getChars(start, end, buffer, 0);
+            handler.characters(buffer, 0, end - start);
+        }
+    }
+
+    /**
+     * Writes out a pair of ordinates separated by the specified character.
+     */
+    public void ordinates(double x, double y, char separator) throws SAXException {
+        int pos = ordinate(x, 0);
+        buffer[pos++] = separator;
+        pos = ordinate(y, pos);
+        handler.characters(buffer, 0, pos);
+    }
+
+    /**
+     * Writes out the first <code>dimension</code> ordinates of each coordinate in the sequence,
+     * separating ordinates and coordinates with the specified characters. The text is flushed to
+     * the content handler in chunks as the buffer fills up.
+     */
+    public void coordinates(CoordinateSequence cs, int dimension, char ordinateSeparator,
+            char tupleSeparator) throws SAXException {
+        int size = cs.size();
+        int pos = 0;
+        for (int i = 0; i < size; i++) {
+            for (int d = 0; d < dimension; d++) {
+                if (pos + MAX_ORDINATE_LENGTH + 1 > buffer.length) {
+                    handler.characters(buffer, 0, pos);
+                    pos = 0;
+                }
+                if (d > 0) {
+                    buffer[pos++] = ordinateSeparator;
+                } else if (i > 0) {
+                    buffer[pos++] = tupleSeparator;
+                }
+                pos = ordinate(cs.getOrdinate(i, d), pos);
+            }
+        }
+        if (pos > 0) {
+            handler.characters(buffer, 0, pos);
+        }
+    }
+
+    /**
+     * Formats the value into the buffer at the specified position, returning the position
+     * following the last character written.
+     */
+    int ordinate(double value, int pos) {
+        if (Double.isNaN(value) || Double.isInfinite(value)) {
+            return string(Double.toString(value), pos);
+        }
+
+        if (numDecimals >= 0) {
+            double scaled = Math.abs(value) * scale;
+            if (scaled < MAX_SCALED) {
+                long units = Math.round(scaled);
+                if (units == 0) {
+                    buffer[pos++] = '0';
+                    return pos;
+                }
+                if (value < 0) {
+                    buffer[pos++] = '-';
+                }
+                pos = digits(units / scale, pos);
+                long fraction = units % scale;
+                if (fraction != 0) {
+                    buffer[pos++] = '.';
+                    for (int i = pos + numDecimals - 1; i >= pos; i--) {
+                        buffer[i] = (char) ('0' + fraction % 10);
+                        fraction /= 10;
+                    }
+                    pos += numDecimals;
+                    while (buffer[pos - 1] == '0') {
+                        pos--;
+                    }
+                }
+                return pos;
+            }
+        } else if (value == 0) {
+            if (1 / value < 0) {
+                buffer[pos++] = '-';
+            }
+            buffer[pos++] = '0';
+            buffer[pos++] = '.';
+            buffer[pos++] = '0';
+            return pos;
+        } else {
+            int end = shortest(value, pos);
+            if (end >= 0) {
+                return end;
+            }
+        }
+
+        return string(Double.toString(value), pos);
+    }
+
+    /**
+     * Writes out the shortest decimal reading back as the specified non zero value, returning the
+     * position following the last character written, or -1 if the decimal has too many digits to
+     * be checked with exact double arithmetic.
+     */
+    int shortest(double value, int pos) {
+        double magnitude = Math.abs(value);
+        int decimals = XMath.shortestDecimalFractionDigits(magnitude, Integer.MAX_VALUE);
+        if (decimals < 0) {
+            return -1;
+        }
+        long units = Math.round(magnitude * XMath.pow10(decimals));
+
+        // the significant digits, least significant first
+        int count = 0;
+        do {
+            digits[count++] = (char) ('0' + units % 10);
+            units /= 10;
+        } while (units > 0);
+        int last = 0;
+        while (last < count - 1 && digits[last] == '0') {
+            last++;
+        }
+
+        if (value < 0) {
+            buffer[pos++] = '-';
+        }
+        int exponent = count - 1 - decimals;
+        if (magnitude >= MIN_PLAIN && magnitude < MAX_PLAIN) {
+            int i = count - 1;
+            if (exponent < 0) {
+                buffer[pos++] = '0';
+            } else {
+                for (int e = exponent; e >= 0; e--) {
+                    buffer[pos++] = i >= 0 ? digits[i--] : '0';
+                }
+            }
+            buffer[pos++] = '.';
+            if (i < last) {
+                buffer[pos++] = '0';
+            } else {
+                for (int e = exponent + 1; e < 0; e++) {
+                    buffer[pos++] = '0';
+                }
+                while (i >= last) {
+                    buffer[pos++] = digits[i--];
+                }
+            }
+            return pos;
+        }
+
+        buffer[pos++] = digits[count - 1];
+        buffer[pos++] = '.';
+        if (count - 2 < last) {
+            buffer[pos++] = '0';
+        } else {
+            for (int i = count - 2; i >= last; i--) {
+                buffer[pos++] = digits[i];
+            }
+        }
+        buffer[pos++] = 'E';
+        if (exponent < 0) {
+            buffer[pos++] = '-';
+            exponent = -exponent;
+        }
+        return digits(exponent, pos);
+    }
+
+    int digits(long value, int pos) {
+        int count = 0;
+        do {
+            digits[count++] = (char) ('0' + value % 10);
+            value /= 10;
+        } while (value > 0);
+        while (count > 0) {
+            buffer[pos++] = digits[--count];
+        }
+        return pos;
+    }
+
+    int string(String value, int pos) {
+        int length = value.length();
+        value.getChars(0, length, buffer, pos);
+        return pos + length;
+    }
+}
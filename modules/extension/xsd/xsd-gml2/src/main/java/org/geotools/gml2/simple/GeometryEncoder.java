@@ -0,0 +1,60 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2013, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.gml2.simple;
+
+import org.geotools.geometry.jts.coordinatesequence.CoordinateSequences;
+import org.xml.sax.SAXException;
+
+import com.vividsolutions.jts.geom.CoordinateSequence;
+import com.vividsolutions.jts.geom.Geometry;
+
+/**
+ * Writes out geometries to a {@link GMLWriter}, in the flavour of GML of the subclass. Encoders
+ * hold no per geometry state and can be reused for a whole feature collection.
+ * 
+ * @source $URL$
+ */
+public abstract class GeometryEncoder {
+
+    /**
+     * Name of the GML namespace, the other GML names are derived from it
+     */
+    protected final QualifiedName gml;
+
+    protected GeometryEncoder(QualifiedName gml) {
+        this.gml = gml;
+    }
+
+    /**
+     * Writes out a geometry.
+     * 
+     * @param geometry The geometry, not empty
+     * @param srsName The srsName attribute of the root geometry element, or <code>null</code>
+     * @param gmlId The id of the root geometry element, or <code>null</code>. Encoders are free to
+     *        ignore it if the GML version does not need one.
+     * @param writer The writer
+     */
+    public abstract void encode(Geometry geometry, String srsName, String gmlId, GMLWriter writer)
+            throws SAXException;
+
+    /**
+     * Returns the number of ordinates to write out for each coordinate of the sequence
+     */
+    protected int getDimension(CoordinateSequence cs) {
+        return CoordinateSequences.coordinateDimension(cs);
+    }
+}
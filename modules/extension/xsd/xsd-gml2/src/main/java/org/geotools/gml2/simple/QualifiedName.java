@@ -0,0 +1,69 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2013, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.gml2.simple;
+
+/**
+ * An XML element or attribute name with its namespace prefix resolved up front, so that the
+ * streaming encoders do not have to build the qualified name for every element they write.
+ * 
+ * @source $URL$
+ */
+public class QualifiedName {
+
+    final String namespaceURI;
+
+    final String localPart;
+
+    final String prefix;
+
+    final String qualifiedName;
+
+    public QualifiedName(String namespaceURI, String localPart, String prefix) {
+        this.namespaceURI = namespaceURI == null ? "" : namespaceURI;
+        this.localPart = localPart;
+        this.prefix = prefix == null ? "" : prefix;
+        this.qualifiedName = this.prefix.length() == 0 ? localPart : this.prefix + ":" + localPart;
+    }
+
+    /**
+     * Returns a name in the same namespace, and with the same prefix, as this one.
+     */
+    public QualifiedName derive(String localPart) {
+        return new QualifiedName(namespaceURI, localPart, prefix);
+    }
+
+    public String getNamespaceURI() {
+        return namespaceURI;
+    }
+
+    public String getLocalPart() {
+        return localPart;
+    }
+
+    public String getPrefix() {
+        return prefix;
+    }
+
+    public String getQualifiedName() {
+        return qualifiedName;
+    }
+
+    @Override
+    public String toString() {
+        return "{" + namespaceURI + "}" + qualifiedName;
+    }
+}
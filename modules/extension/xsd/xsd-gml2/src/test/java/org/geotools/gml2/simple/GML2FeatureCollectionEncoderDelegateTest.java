@@ -0,0 +1,174 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2013, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.gml2.simple;
+
+import javax.xml.transform.dom.DOMResult;
+import javax.xml.transform.sax.SAXTransformerFactory;
+import javax.xml.transform.sax.TransformerHandler;
+
+import junit.framework.TestCase;
+
+import org.geotools.data.simple.SimpleFeatureCollection;
+import org.geotools.feature.collection.ListFeatureCollection;
+import org.geotools.feature.simple.SimpleFeatureBuilder;
+import org.geotools.feature.simple.SimpleFeatureTypeBuilder;
+import org.geotools.gml2.GML;
+import org.geotools.gml2.GMLConfiguration;
+import org.geotools.gml2.SrsSyntax;
+import org.geotools.gml2.TEST;
+import org.geotools.gml2.bindings.GMLAbstractFeatureCollectionTypeBinding;
+import org.geotools.referencing.CRS;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.xml.sax.helpers.AttributesImpl;
+import org.xml.sax.helpers.NamespaceSupport;
+
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.io.WKTReader;
+
+/**
+ * 
+ *
+ * @source $URL$
+ */
+public class GML2FeatureCollectionEncoderDelegateTest extends TestCase {
+
+    SimpleFeatureCollection features;
+
+    NamespaceSupport namespaces;
+
+    protected void setUp() throws Exception {
+        SimpleFeatureTypeBuilder typeBuilder = new SimpleFeatureTypeBuilder();
+        typeBuilder.setName(TEST.TestFeature.getLocalPart());
+        typeBuilder.setNamespaceURI(TEST.TestFeature.getNamespaceURI());
+        typeBuilder.setCRS(CRS.decode("EPSG:4326"));
+        typeBuilder.add("geom", Geometry.class);
+        typeBuilder.add("count", Integer.class);
+        typeBuilder.add("name", String.class);
+        SimpleFeatureType type = typeBuilder.buildFeatureType();
+
+        WKTReader reader = new WKTReader();
+        SimpleFeatureBuilder builder = new SimpleFeatureBuilder(type);
+        features = new ListFeatureCollection(type);
+        builder.add(reader.read("POINT(1 2)"));
+        builder.add(1);
+        builder.add("first");
+        ((ListFeatureCollection) features).add(builder.buildFeature("fid.1"));
+        builder.add(reader.read("POLYGON((0 0, 10 0, 10 10, 0 0), (1 1, 2 1, 2 2, 1 1))"));
+        builder.add(2);
+        builder.add(null);
+        ((ListFeatureCollection) features).add(builder.buildFeature("fid.2"));
+        builder.add(reader.read("MULTILINESTRING((0 0, 1 1), (2 2, 3 3))"));
+        builder.add(3);
+        builder.add("third");
+        ((ListFeatureCollection) features).add(builder.buildFeature("fid.3"));
+
+        namespaces = new NamespaceSupport();
+        namespaces.declarePrefix("gml", GML.NAMESPACE);
+        namespaces.declarePrefix("test", TEST.NAMESPACE);
+    }
+
+    Document encode(FeatureCollectionEncoderDelegate delegate) throws Exception {
+        SAXTransformerFactory factory = (SAXTransformerFactory) SAXTransformerFactory.newInstance();
+        TransformerHandler handler = factory.newTransformerHandler();
+        DOMResult result = new DOMResult();
+        handler.setResult(result);
+
+        handler.startDocument();
+        handler.startPrefixMapping("gml", GML.NAMESPACE);
+        handler.startPrefixMapping("test", TEST.NAMESPACE);
+        handler.startElement(TEST.NAMESPACE, "TestFeatureCollection", "test:TestFeatureCollection",
+                new AttributesImpl());
+        delegate.encode(handler);
+        handler.endElement(TEST.NAMESPACE, "TestFeatureCollection", "test:TestFeatureCollection");
+        handler.endPrefixMapping("test");
+        handler.endPrefixMapping("gml");
+        handler.endDocument();
+
+        return (Document) result.getNode();
+    }
+
+    public void testEncode() throws Exception {
+        GML2FeatureCollectionEncoderDelegate delegate = new GML2FeatureCollectionEncoderDelegate(
+                features, namespaces, SrsSyntax.OGC_HTTP_URL);
+        Document dom = encode(delegate);
+
+        assertEquals(3, dom.getElementsByTagNameNS(GML.NAMESPACE, "featureMember").getLength());
+        assertEquals(3, dom.getElementsByTagNameNS(GML.NAMESPACE, "boundedBy").getLength());
+        assertEquals(3, dom.getElementsByTagNameNS(TEST.NAMESPACE, "TestFeature").getLength());
+        Element feature = (Element) dom.getElementsByTagNameNS(TEST.NAMESPACE, "TestFeature")
+                .item(0);
+        assertEquals("fid.1", feature.getAttribute("fid"));
+
+        // the null name of the second feature is skipped
+        assertEquals(2, dom.getElementsByTagNameNS(TEST.NAMESPACE, "name").getLength());
+
+        Element point = (Element) dom.getElementsByTagNameNS(GML.NAMESPACE, "Point").item(0);
+        assertEquals("http://www.opengis.net/gml/srs/epsg.xml#4326", point.getAttribute("srsName"));
+        assertEquals("1.0,2.0", point.getElementsByTagNameNS(GML.NAMESPACE, "coordinates").item(0)
+                .getTextContent());
+
+        Element polygon = (Element) dom.getElementsByTagNameNS(GML.NAMESPACE, "Polygon").item(0);
+        assertEquals(1, polygon.getElementsByTagNameNS(GML.NAMESPACE, "outerBoundaryIs")
+                .getLength());
+        assertEquals(1, polygon.getElementsByTagNameNS(GML.NAMESPACE, "innerBoundaryIs")
+                .getLength());
+        assertEquals("0.0,0.0 10.0,0.0 10.0,10.0 0.0,0.0", polygon
+                .getElementsByTagNameNS(GML.NAMESPACE, "coordinates").item(0).getTextContent());
+
+        assertEquals(2, dom.getElementsByTagNameNS(GML.NAMESPACE, "lineStringMember").getLength());
+        assertEquals("0.0,0.0 10.0,10.0", ((Element) dom.getElementsByTagNameNS(GML.NAMESPACE,
+                "Box").item(1)).getElementsByTagNameNS(GML.NAMESPACE, "coordinates").item(0)
+                .getTextContent());
+    }
+
+    public void testEncodeNoBoundsNumDecimals() throws Exception {
+        GML2FeatureCollectionEncoderDelegate delegate = new GML2FeatureCollectionEncoderDelegate(
+                features, namespaces, SrsSyntax.OGC_HTTP_URL);
+        delegate.setEncodeBounds(false);
+        delegate.setNumDecimals(2);
+        Document dom = encode(delegate);
+
+        assertEquals(0, dom.getElementsByTagNameNS(GML.NAMESPACE, "boundedBy").getLength());
+        assertEquals("1,2", dom.getElementsByTagNameNS(GML.NAMESPACE, "coordinates").item(0)
+                .getTextContent());
+    }
+
+    public void testUndeclaredNamespace() throws Exception {
+        NamespaceSupport namespaces = new NamespaceSupport();
+        namespaces.declarePrefix("gml", GML.NAMESPACE);
+        Document dom = encode(new GML2FeatureCollectionEncoderDelegate(features, namespaces,
+                SrsSyntax.OGC_HTTP_URL));
+
+        // the feature elements declare a prefix of their own
+        assertEquals(3, dom.getElementsByTagNameNS(TEST.NAMESPACE, "TestFeature").getLength());
+        assertEquals("ns1:TestFeature", dom.getElementsByTagNameNS(TEST.NAMESPACE, "TestFeature")
+                .item(0).getNodeName());
+    }
+
+    public void testBindingProperty() throws Exception {
+        GMLConfiguration configuration = new GMLConfiguration();
+        GMLAbstractFeatureCollectionTypeBinding binding = new GMLAbstractFeatureCollectionTypeBinding(
+                configuration, namespaces, SrsSyntax.OGC_HTTP_URL);
+        assertNull(binding.getProperty(features, GML.featureMember));
+
+        configuration.getProperties().add(GMLConfiguration.OPTIMIZED_ENCODING);
+        assertTrue(binding.getProperty(features, GML.featureMember) instanceof GML2FeatureCollectionEncoderDelegate);
+    }
+}
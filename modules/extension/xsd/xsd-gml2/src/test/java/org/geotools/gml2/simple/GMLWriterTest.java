@@ -0,0 +1,121 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2013, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.gml2.simple;
+
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+import org.xml.sax.helpers.DefaultHandler;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.CoordinateSequence;
+import com.vividsolutions.jts.geom.impl.CoordinateArraySequence;
+
+/**
+ * 
+ *
+ * @source $URL$
+ */
+public class GMLWriterTest extends TestCase {
+
+    static class TextHandler extends DefaultHandler {
+        StringBuilder text = new StringBuilder();
+
+        int chunks;
+
+        public void characters(char[] ch, int start, int length) {
+            text.append(ch, start, length);
+            chunks++;
+        }
+    }
+
+    String format(int numDecimals, double x, double y) throws Exception {
+        TextHandler handler = new TextHandler();
+        new GMLWriter(handler, numDecimals).ordinates(x, y, ',');
+        return handler.text.toString();
+    }
+
+    public void testDefaultFormat() throws Exception {
+        double[] values = { 0, -0d, 1, -2.5, 0.1, 1e-5, 1234567, 1e7, -123456789.123,
+                Double.NaN, Double.NEGATIVE_INFINITY, Double.MAX_VALUE, Double.MIN_VALUE, 0.001,
+                9.9e-4, -0.00123, 9999999.999, 1.5e-5, 12345678.9, 0.1 + 0.2, 1e22 };
+        for (double value : values) {
+            assertEquals(Double.toString(value) + ",1.0", format(-1, value, 1));
+        }
+    }
+
+    public void testDefaultFormatRandom() throws Exception {
+        Random random = new Random(1);
+        for (int i = 0; i < 10000; i++) {
+            // geographic, projected and arbitrary values
+            double lon = Math.round((random.nextDouble() * 360 - 180) * 1e6) / 1e6;
+            double northing = Math.round(random.nextDouble() * 2e9) / 100d;
+            double value = random.nextDouble() * Math.pow(10, random.nextInt(40) - 20);
+            assertEquals(Double.toString(lon) + "," + Double.toString(northing),
+                    format(-1, lon, northing));
+            assertEquals(Double.toString(value) + ",1.0", format(-1, value, 1));
+        }
+    }
+
+    public void testNumDecimals() throws Exception {
+        assertEquals("1.23,-3.14", format(2, 1.234, -3.14159));
+        assertEquals("2,10.5", format(2, 2.0, 10.5));
+        assertEquals("0,-0.01", format(2, -0.001, -0.01));
+        assertEquals("-0.5,12", format(1, -0.5, 12.04));
+        assertEquals("3,-4", format(0, 3.4, -3.6));
+        assertEquals("1.0E20,NaN", format(2, 1e20, Double.NaN));
+    }
+
+    public void testInvalidNumDecimals() {
+        try {
+            new GMLWriter(new DefaultHandler(), 16);
+            fail("Should have failed");
+        } catch (IllegalArgumentException e) {
+            // fine
+        }
+    }
+
+    public void testCoordinates() throws Exception {
+        Coordinate[] coordinates = new Coordinate[1000];
+        StringBuilder expected = new StringBuilder();
+        for (int i = 0; i < coordinates.length; i++) {
+            coordinates[i] = new Coordinate(i / 3d, -i * 1000.5, i);
+            if (i > 0) {
+                expected.append(' ');
+            }
+            expected.append(coordinates[i].x).append(',').append(coordinates[i].y);
+        }
+        CoordinateSequence cs = new CoordinateArraySequence(coordinates);
+
+        TextHandler handler = new TextHandler();
+        new GMLWriter(handler).coordinates(cs, 2, ',', ' ');
+        assertEquals(expected.toString(), handler.text.toString());
+        // the text does not fit in the buffer, it has been written out in chunks
+        assertTrue(handler.chunks > 1);
+    }
+
+    public void testCharacters() throws Exception {
+        StringBuilder expected = new StringBuilder();
+        for (int i = 0; i < 10000; i++) {
+            expected.append((char) ('a' + i % 26));
+        }
+        TextHandler handler = new TextHandler();
+        new GMLWriter(handler).characters(expected.toString());
+        assertEquals(expected.toString(), handler.text.toString());
+    }
+}
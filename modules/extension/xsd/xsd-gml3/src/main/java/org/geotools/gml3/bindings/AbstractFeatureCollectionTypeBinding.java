@@ -26,11 +26,16 @@ import org.geotools.data.simple.SimpleFeatureCollection;
 import org.geotools.feature.DefaultFeatureCollection;
 import org.geotools.feature.DefaultFeatureCollections;
 import org.geotools.feature.FeatureCollection;
+import org.geotools.gml2.SrsSyntax;
 import org.geotools.gml3.GML;
+import org.geotools.gml3.GMLConfiguration;
+import org.geotools.gml3.simple.GML3FeatureCollectionEncoderDelegate;
 import org.geotools.xml.AbstractComplexBinding;
+import org.geotools.xml.Configuration;
 import org.geotools.xml.ElementInstance;
 import org.geotools.xml.Node;
 import org.opengis.feature.simple.SimpleFeature;
+import org.xml.sax.helpers.NamespaceSupport;
 
 
 /**
@@ -64,6 +69,20 @@ import org.opengis.feature.simple.SimpleFeature;
  * @source $URL$
  */
 public class AbstractFeatureCollectionTypeBinding extends AbstractComplexBinding {
+    Configuration configuration;
+    NamespaceSupport namespaces;
+    SrsSyntax srsSyntax;
+
+    public AbstractFeatureCollectionTypeBinding() {
+    }
+
+    public AbstractFeatureCollectionTypeBinding(Configuration configuration,
+            NamespaceSupport namespaces, SrsSyntax srsSyntax) {
+        this.configuration = configuration;
+        this.namespaces = namespaces;
+        this.srsSyntax = srsSyntax;
+    }
+
     /**
      * @generated
      */
@@ -115,6 +134,20 @@ public class AbstractFeatureCollectionTypeBinding extends AbstractComplexBinding
     }
 
     public Object getProperty(Object object, QName name) {
+        //stream the members when optimized encoding is on, in GML 3.1 and 3.2 alike
+        if ("featureMembers".equals(name.getLocalPart())
+                && object instanceof SimpleFeatureCollection && configuration != null
+                && namespaces != null
+                && configuration.hasProperty(GMLConfiguration.OPTIMIZED_ENCODING)
+                && (GML.NAMESPACE.equals(name.getNamespaceURI())
+                        || org.geotools.gml3.v3_2.GML.NAMESPACE.equals(name.getNamespaceURI()))) {
+            GML3FeatureCollectionEncoderDelegate delegate = new GML3FeatureCollectionEncoderDelegate(
+                    (SimpleFeatureCollection) object, namespaces, name.getNamespaceURI(), srsSyntax,
+                    !configuration.hasProperty(GMLConfiguration.NO_SRS_DIMENSION));
+            delegate.setEncodeBounds(!configuration.hasProperty(GMLConfiguration.NO_FEATURE_BOUNDS));
+            return delegate;
+        }
+
         //just return the features themselves
         if (GML.featureMembers.equals(name)) {
             SimpleFeatureCollection fc = (SimpleFeatureCollection) object;
@@ -0,0 +1,160 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2013, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.gml3.simple;
+
+import org.geotools.data.simple.SimpleFeatureCollection;
+import org.geotools.gml2.SrsSyntax;
+import org.geotools.gml2.bindings.GML2EncodingUtils;
+import org.geotools.gml2.simple.FeatureCollectionEncoderDelegate;
+import org.geotools.gml2.simple.GMLWriter;
+import org.geotools.gml2.simple.QualifiedName;
+import org.geotools.gml3.bindings.GML3EncodingUtils;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.geometry.BoundingBox;
+import org.opengis.referencing.crs.CoordinateReferenceSystem;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.AttributesImpl;
+import org.xml.sax.helpers.NamespaceSupport;
+
+import com.vividsolutions.jts.geom.Geometry;
+
+/**
+ * Streaming encoder for GML 3.1 and 3.2 feature collections, writing all the features in a single
+ * <code>gml:featureMembers</code>, or each in its own <code>gml:featureMember</code>.
+ * <p>
+ * Geometries keep the id they carry in their user data, if any. In GML 3.2, where geometries
+ * need one, the others are given the feature id followed by the attribute name.
+ * </p>
+ * 
+ * @source $URL$
+ */
+public class GML3FeatureCollectionEncoderDelegate extends FeatureCollectionEncoderDelegate {
+
+    static final QualifiedName SRS_NAME = new QualifiedName(null, "srsName", null);
+
+    final SrsSyntax srsSyntax;
+
+    final boolean gml32;
+
+    final QualifiedName id;
+
+    final QualifiedName envelope;
+
+    final QualifiedName lowerCorner;
+
+    final QualifiedName upperCorner;
+
+    final QualifiedName nullElement;
+
+    /**
+     * Creates the delegate
+     * 
+     * @param features The features to encode
+     * @param namespaces The namespaces declared by the encoder
+     * @param gmlNamespace The GML 3.1 or 3.2 namespace
+     * @param srsSyntax The syntax of the srsName attributes
+     * @param encodeSrsDimension Whether geometries get a srsDimension attribute
+     */
+    public GML3FeatureCollectionEncoderDelegate(SimpleFeatureCollection features,
+            NamespaceSupport namespaces, String gmlNamespace, SrsSyntax srsSyntax,
+            boolean encodeSrsDimension) {
+        this(features, namespaces, gmlNamespace, srsSyntax, encodeSrsDimension, false);
+    }
+
+    /**
+     * Creates the delegate
+     * 
+     * @param features The features to encode
+     * @param namespaces The namespaces declared by the encoder
+     * @param gmlNamespace The GML 3.1 or 3.2 namespace
+     * @param srsSyntax The syntax of the srsName attributes
+     * @param encodeSrsDimension Whether geometries get a srsDimension attribute
+     * @param encodeFeatureMember Whether each feature goes in its own
+     *        <code>gml:featureMember</code> rather than all in a <code>gml:featureMembers</code>
+     */
+    public GML3FeatureCollectionEncoderDelegate(SimpleFeatureCollection features,
+            NamespaceSupport namespaces, String gmlNamespace, SrsSyntax srsSyntax,
+            boolean encodeSrsDimension, boolean encodeFeatureMember) {
+        this(features, namespaces, gml(namespaces, gmlNamespace), srsSyntax, encodeSrsDimension,
+                encodeFeatureMember);
+    }
+
+    GML3FeatureCollectionEncoderDelegate(SimpleFeatureCollection features,
+            NamespaceSupport namespaces, QualifiedName gml, SrsSyntax srsSyntax,
+            boolean encodeSrsDimension, boolean encodeFeatureMember) {
+        super(features, namespaces, gml, gml.derive(encodeFeatureMember ? "featureMember"
+                : "featureMembers"), !encodeFeatureMember, new GML3GeometryEncoder(gml,
+                encodeSrsDimension));
+        this.srsSyntax = srsSyntax != null ? srsSyntax : SrsSyntax.OGC_URN_EXPERIMENTAL;
+        this.gml32 = org.geotools.gml3.v3_2.GML.NAMESPACE.equals(gml.getNamespaceURI());
+        this.id = gml.derive("id");
+        this.envelope = gml.derive("Envelope");
+        this.lowerCorner = gml.derive("lowerCorner");
+        this.upperCorner = gml.derive("upperCorner");
+        this.nullElement = gml.derive("Null");
+    }
+
+    static QualifiedName gml(NamespaceSupport namespaces, String gmlNamespace) {
+        String prefix = getPrefix(namespaces, gmlNamespace);
+        return new QualifiedName(gmlNamespace, "", prefix != null ? prefix : "gml");
+    }
+
+    @Override
+    protected void addFeatureId(AttributesImpl attributes, String featureId) {
+        GMLWriter.addAttribute(attributes, id, featureId);
+    }
+
+    @Override
+    protected void encodeBounds(BoundingBox bounds, String srsName, GMLWriter writer)
+            throws SAXException {
+        if (bounds.isEmpty()) {
+            writer.startElement(nullElement, null);
+            writer.characters("unknown");
+            writer.endElement(nullElement);
+            return;
+        }
+
+        AttributesImpl attributes = null;
+        if (srsName != null) {
+            attributes = writer.attributes();
+            GMLWriter.addAttribute(attributes, SRS_NAME, srsName);
+        }
+        writer.startElement(envelope, attributes);
+        writer.startElement(lowerCorner, null);
+        writer.ordinates(bounds.getMinX(), bounds.getMinY(), ' ');
+        writer.endElement(lowerCorner);
+        writer.startElement(upperCorner, null);
+        writer.ordinates(bounds.getMaxX(), bounds.getMaxY(), ' ');
+        writer.endElement(upperCorner);
+        writer.endElement(envelope);
+    }
+
+    @Override
+    protected String getSrsName(CoordinateReferenceSystem crs) {
+        return GML2EncodingUtils.toURI(crs, srsSyntax);
+    }
+
+    @Override
+    protected String getGeometryId(SimpleFeature feature, QualifiedName attribute) {
+        Geometry geometry = (Geometry) feature.getAttribute(attribute.getLocalPart());
+        String geometryId = GML3EncodingUtils.getID(geometry);
+        if (geometryId == null && gml32 && feature.getID() != null) {
+            geometryId = feature.getID() + "." + attribute.getLocalPart();
+        }
+        return geometryId;
+    }
+}
@@ -0,0 +1,203 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2013, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.gml3.simple;
+
+import org.geotools.geometry.jts.coordinatesequence.CoordinateSequences;
+import org.geotools.gml2.simple.GMLWriter;
+import org.geotools.gml2.simple.GeometryEncoder;
+import org.geotools.gml2.simple.QualifiedName;
+import org.xml.sax.Attributes;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.AttributesImpl;
+
+import com.vividsolutions.jts.geom.CoordinateSequence;
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.GeometryCollection;
+import com.vividsolutions.jts.geom.LineString;
+import com.vividsolutions.jts.geom.LinearRing;
+import com.vividsolutions.jts.geom.MultiLineString;
+import com.vividsolutions.jts.geom.MultiPoint;
+import com.vividsolutions.jts.geom.MultiPolygon;
+import com.vividsolutions.jts.geom.Point;
+import com.vividsolutions.jts.geom.Polygon;
+
+/**
+ * Streaming GML 3.1/3.2 geometry encoder, the version being the one of the GML namespace the
+ * encoder is created with. As in the binding based encoding multi line strings are written as
+ * <code>gml:MultiCurve</code> and multi polygons as <code>gml:MultiSurface</code>.
+ * <p>
+ * When an id is provided for the root geometry, members of multi geometries get the root id
+ * followed by their position, as GML 3.2 requires an id on each of them.
+ * </p>
+ * 
+ * @source $URL$
+ */
+public class GML3GeometryEncoder extends GeometryEncoder {
+
+    static final QualifiedName SRS_NAME = new QualifiedName(null, "srsName", null);
+
+    static final QualifiedName SRS_DIMENSION = new QualifiedName(null, "srsDimension", null);
+
+    static final String[] DIMENSIONS = { "0", "1", "2", "3", "4" };
+
+    final boolean encodeSrsDimension;
+
+    final QualifiedName id;
+
+    final QualifiedName point;
+
+    final QualifiedName pos;
+
+    final QualifiedName lineString;
+
+    final QualifiedName linearRing;
+
+    final QualifiedName posList;
+
+    final QualifiedName polygon;
+
+    final QualifiedName exterior;
+
+    final QualifiedName interior;
+
+    final QualifiedName multiPoint;
+
+    final QualifiedName pointMember;
+
+    final QualifiedName multiCurve;
+
+    final QualifiedName curveMember;
+
+    final QualifiedName multiSurface;
+
+    final QualifiedName surfaceMember;
+
+    final QualifiedName multiGeometry;
+
+    final QualifiedName geometryMember;
+
+    /**
+     * Creates an encoder
+     * 
+     * @param gml The GML namespace and prefix
+     * @param encodeSrsDimension Whether the root geometry element gets a srsDimension attribute
+     */
+    public GML3GeometryEncoder(QualifiedName gml, boolean encodeSrsDimension) {
+        super(gml);
+        this.encodeSrsDimension = encodeSrsDimension;
+        id = gml.derive("id");
+        point = gml.derive("Point");
+        pos = gml.derive("pos");
+        lineString = gml.derive("LineString");
+        linearRing = gml.derive("LinearRing");
+        posList = gml.derive("posList");
+        polygon = gml.derive("Polygon");
+        exterior = gml.derive("exterior");
+        interior = gml.derive("interior");
+        multiPoint = gml.derive("MultiPoint");
+        pointMember = gml.derive("pointMember");
+        multiCurve = gml.derive("MultiCurve");
+        curveMember = gml.derive("curveMember");
+        multiSurface = gml.derive("MultiSurface");
+        surfaceMember = gml.derive("surfaceMember");
+        multiGeometry = gml.derive("MultiGeometry");
+        geometryMember = gml.derive("geometryMember");
+    }
+
+    @Override
+    public void encode(Geometry geometry, String srsName, String gmlId, GMLWriter writer)
+            throws SAXException {
+        AttributesImpl attributes = writer.attributes();
+        if (gmlId != null) {
+            GMLWriter.addAttribute(attributes, id, gmlId);
+        }
+        if (srsName != null) {
+            GMLWriter.addAttribute(attributes, SRS_NAME, srsName);
+        }
+        if (encodeSrsDimension) {
+            int dimension = CoordinateSequences.coordinateDimension(geometry);
+            GMLWriter.addAttribute(attributes, SRS_DIMENSION,
+                    dimension < DIMENSIONS.length ? DIMENSIONS[dimension] : String.valueOf(dimension));
+        }
+        encode(geometry, attributes, gmlId, writer);
+    }
+
+    void encode(Geometry geometry, Attributes attributes, String gmlId, GMLWriter writer)
+            throws SAXException {
+        if (geometry instanceof Point) {
+            writer.startElement(point, attributes);
+            positions(((Point) geometry).getCoordinateSequence(), pos, writer);
+            writer.endElement(point);
+        } else if (geometry instanceof LinearRing) {
+            writer.startElement(linearRing, attributes);
+            positions(((LinearRing) geometry).getCoordinateSequence(), posList, writer);
+            writer.endElement(linearRing);
+        } else if (geometry instanceof LineString) {
+            writer.startElement(lineString, attributes);
+            positions(((LineString) geometry).getCoordinateSequence(), posList, writer);
+            writer.endElement(lineString);
+        } else if (geometry instanceof Polygon) {
+            Polygon p = (Polygon) geometry;
+            writer.startElement(polygon, attributes);
+            writer.startElement(exterior, null);
+            encode(p.getExteriorRing(), null, null, writer);
+            writer.endElement(exterior);
+            for (int i = 0; i < p.getNumInteriorRing(); i++) {
+                writer.startElement(interior, null);
+                encode(p.getInteriorRingN(i), null, null, writer);
+                writer.endElement(interior);
+            }
+            writer.endElement(polygon);
+        } else if (geometry instanceof MultiPoint) {
+            members(geometry, multiPoint, pointMember, attributes, gmlId, writer);
+        } else if (geometry instanceof MultiLineString) {
+            members(geometry, multiCurve, curveMember, attributes, gmlId, writer);
+        } else if (geometry instanceof MultiPolygon) {
+            members(geometry, multiSurface, surfaceMember, attributes, gmlId, writer);
+        } else if (geometry instanceof GeometryCollection) {
+            members(geometry, multiGeometry, geometryMember, attributes, gmlId, writer);
+        } else {
+            throw new IllegalArgumentException("Cannot encode geometry of type "
+                    + geometry.getGeometryType());
+        }
+    }
+
+    void members(Geometry geometry, QualifiedName collection, QualifiedName member,
+            Attributes attributes, String gmlId, GMLWriter writer) throws SAXException {
+        writer.startElement(collection, attributes);
+        for (int i = 0; i < geometry.getNumGeometries(); i++) {
+            writer.startElement(member, null);
+            if (gmlId != null) {
+                String memberId = gmlId + "." + (i + 1);
+                AttributesImpl memberAttributes = writer.attributes();
+                GMLWriter.addAttribute(memberAttributes, id, memberId);
+                encode(geometry.getGeometryN(i), memberAttributes, memberId, writer);
+            } else {
+                encode(geometry.getGeometryN(i), null, null, writer);
+            }
+            writer.endElement(member);
+        }
+        writer.endElement(collection);
+    }
+
+    void positions(CoordinateSequence cs, QualifiedName element, GMLWriter writer)
+            throws SAXException {
+        writer.startElement(element, null);
+        writer.coordinates(cs, getDimension(cs), ' ', ' ');
+        writer.endElement(element);
+    }
+}
@@ -38,6 +38,7 @@ import javax.xml.validation.Validator;
 import junit.framework.TestCase;
 
 import org.eclipse.xsd.XSDSchema;
+import org.geotools.data.DataUtilities;
 import org.geotools.data.simple.SimpleFeatureCollection;
 import org.geotools.gml2.SrsSyntax;
 import org.geotools.gml3.bindings.GML3MockData;
@@ -48,6 +49,8 @@ import org.geotools.xml.Encoder;
 import org.geotools.xml.Parser;
 import org.opengis.feature.simple.SimpleFeature;
 import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
 import org.xml.sax.InputSource;
 import org.xml.sax.SAXException;
 import org.xml.sax.SAXParseException;
@@ -204,4 +207,29 @@ public class GML3EncodingTest extends TestCase {
         assertTrue(dom.getDocumentElement().getAttribute("srsName")
             .startsWith("http://www.opengis.net/def/crs/EPSG/0/"));
     }
+
+    public void testEncodeFeatureCollectionOptimized() throws Exception {
+        SimpleFeatureCollection fc = DataUtilities.collection(new SimpleFeature[] {
+                GML3MockData.feature(), GML3MockData.feature() });
+        TestConfiguration configuration = new TestConfiguration();
+        Document dom = new Encoder(configuration).encodeAsDOM(fc, TEST.TestFeatureCollection);
+        NodeList positions = dom.getElementsByTagNameNS(GML.NAMESPACE, "pos");
+
+        configuration.getProperties().add(GMLConfiguration.OPTIMIZED_ENCODING);
+        Document optimized = new Encoder(configuration).encodeAsDOM(fc, TEST.TestFeatureCollection);
+        assertEquals(1, optimized.getElementsByTagNameNS(GML.NAMESPACE, "featureMembers")
+                .getLength());
+        assertEquals(2, optimized.getElementsByTagNameNS(TEST.NAMESPACE, "TestFeature")
+                .getLength());
+        assertEquals("fid.1", ((Element) optimized.getElementsByTagNameNS(TEST.NAMESPACE,
+                "TestFeature").item(0)).getAttributeNS(GML.NAMESPACE, "id"));
+
+        // same geometries as the schema driven encoding
+        NodeList optimizedPositions = optimized.getElementsByTagNameNS(GML.NAMESPACE, "pos");
+        assertEquals(positions.getLength(), optimizedPositions.getLength());
+        for (int i = 0; i < positions.getLength(); i++) {
+            assertEquals(positions.item(i).getTextContent(), optimizedPositions.item(i)
+                    .getTextContent());
+        }
+    }
 }
@@ -1,5 +1,6 @@
 package org.geotools.gml3;
 
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.InputStream;
@@ -13,10 +14,14 @@ import javax.xml.transform.stream.StreamResult;
 
 import junit.framework.TestCase;
 
+import org.geotools.xml.Parser;
 import org.geotools.xml.StreamingParser;
+import org.geotools.xml.impl.CompiledSchemas;
 import org.opengis.feature.simple.SimpleFeature;
 import org.w3c.dom.Document;
 
+import com.vividsolutions.jts.geom.Point;
+
 /**
  * 
  *
@@ -76,4 +81,33 @@ public class GML3ParsingTest extends TestCase {
         
         assertEquals( 49, nfeatures );
     }
+
+    public void testCompiledSchemasPerConfiguration() throws Exception {
+        // same namespace, different schemas
+        org.geotools.gml2.GMLConfiguration gml2 = new org.geotools.gml2.GMLConfiguration();
+        GMLConfiguration gml3 = new GMLConfiguration();
+        assertEquals(gml2, gml3);
+        assertNotSame(CompiledSchemas.get(gml2), CompiledSchemas.get(gml3));
+
+        // even sharing the compiled schemas, documents without a schema location get the
+        // schemas of their configuration
+        CompiledSchemas compiled = new CompiledSchemas();
+        Parser parser = new Parser(gml2);
+        parser.setCompiledSchemas(compiled);
+        Point point = (Point) parser.parse(new ByteArrayInputStream(
+                ("<gml:Point xmlns:gml='http://www.opengis.net/gml'>"
+                        + "<gml:coordinates>1,2</gml:coordinates></gml:Point>").getBytes()));
+        assertEquals(1d, point.getX());
+        assertEquals(2d, point.getY());
+        assertEquals(1, compiled.size());
+
+        parser = new Parser(gml3);
+        parser.setCompiledSchemas(compiled);
+        point = (Point) parser.parse(new ByteArrayInputStream(
+                ("<gml:Point xmlns:gml='http://www.opengis.net/gml'>"
+                        + "<gml:pos>3 4</gml:pos></gml:Point>").getBytes()));
+        assertEquals(3d, point.getX());
+        assertEquals(4d, point.getY());
+        assertEquals(2, compiled.size());
+    }
 }
@@ -0,0 +1,104 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2013, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.gml3.simple;
+
+import javax.xml.transform.dom.DOMResult;
+import javax.xml.transform.sax.SAXTransformerFactory;
+import javax.xml.transform.sax.TransformerHandler;
+
+import junit.framework.TestCase;
+
+import org.geotools.feature.collection.ListFeatureCollection;
+import org.geotools.feature.simple.SimpleFeatureBuilder;
+import org.geotools.feature.simple.SimpleFeatureTypeBuilder;
+import org.geotools.gml2.SrsSyntax;
+import org.geotools.gml3.bindings.TEST;
+import org.geotools.gml3.v3_2.GML;
+import org.geotools.referencing.CRS;
+import org.opengis.feature.simple.SimpleFeatureType;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+import org.xml.sax.helpers.AttributesImpl;
+import org.xml.sax.helpers.NamespaceSupport;
+
+import com.vividsolutions.jts.geom.MultiPolygon;
+import com.vividsolutions.jts.io.WKTReader;
+
+/**
+ * 
+ *
+ * @source $URL$
+ */
+public class GML3FeatureCollectionEncoderDelegateTest extends TestCase {
+
+    public void testEncodeGML32() throws Exception {
+        SimpleFeatureTypeBuilder typeBuilder = new SimpleFeatureTypeBuilder();
+        typeBuilder.setName(TEST.TestFeature.getLocalPart());
+        typeBuilder.setNamespaceURI(TEST.TestFeature.getNamespaceURI());
+        typeBuilder.setCRS(CRS.decode("EPSG:4326"));
+        typeBuilder.add("geom", MultiPolygon.class);
+        typeBuilder.add("count", Integer.class);
+        SimpleFeatureType type = typeBuilder.buildFeatureType();
+
+        SimpleFeatureBuilder builder = new SimpleFeatureBuilder(type);
+        builder.add(new WKTReader().read("MULTIPOLYGON(((0 0, 1 0, 1 1, 0 0)), ((2 2, 3 2, 3 3, 2 2)))"));
+        builder.add(1);
+        ListFeatureCollection features = new ListFeatureCollection(type);
+        features.add(builder.buildFeature("fid.1"));
+
+        NamespaceSupport namespaces = new NamespaceSupport();
+        namespaces.declarePrefix("gml", GML.NAMESPACE);
+        namespaces.declarePrefix("test", TEST.NAMESPACE);
+        GML3FeatureCollectionEncoderDelegate delegate = new GML3FeatureCollectionEncoderDelegate(
+                features, namespaces, GML.NAMESPACE, SrsSyntax.OGC_URN, true);
+
+        SAXTransformerFactory factory = (SAXTransformerFactory) SAXTransformerFactory.newInstance();
+        TransformerHandler handler = factory.newTransformerHandler();
+        DOMResult result = new DOMResult();
+        handler.setResult(result);
+        handler.startDocument();
+        handler.startPrefixMapping("gml", GML.NAMESPACE);
+        handler.startPrefixMapping("test", TEST.NAMESPACE);
+        handler.startElement(GML.NAMESPACE, "FeatureCollection", "gml:FeatureCollection",
+                new AttributesImpl());
+        delegate.encode(handler);
+        handler.endElement(GML.NAMESPACE, "FeatureCollection", "gml:FeatureCollection");
+        handler.endDocument();
+        Document dom = (Document) result.getNode();
+
+        Element feature = (Element) dom.getElementsByTagNameNS(TEST.NAMESPACE, "TestFeature")
+                .item(0);
+        assertEquals("fid.1", feature.getAttributeNS(GML.NAMESPACE, "id"));
+        assertEquals("1", feature.getElementsByTagNameNS(TEST.NAMESPACE, "count").item(0)
+                .getTextContent());
+        assertEquals(1, dom.getElementsByTagNameNS(GML.NAMESPACE, "Envelope").getLength());
+
+        Element multiSurface = (Element) dom.getElementsByTagNameNS(GML.NAMESPACE,
+                "MultiSurface").item(0);
+        assertEquals("fid.1.geom", multiSurface.getAttributeNS(GML.NAMESPACE, "id"));
+        assertEquals("urn:ogc:def:crs:EPSG::4326", multiSurface.getAttribute("srsName"));
+        assertEquals("2", multiSurface.getAttribute("srsDimension"));
+
+        NodeList polygons = multiSurface.getElementsByTagNameNS(GML.NAMESPACE, "Polygon");
+        assertEquals(2, polygons.getLength());
+        assertEquals("fid.1.geom.2", ((Element) polygons.item(1)).getAttributeNS(GML.NAMESPACE,
+                "id"));
+        assertEquals("2.0 2.0 3.0 2.0 3.0 3.0 2.0 2.0", ((Element) polygons.item(1))
+                .getElementsByTagNameNS(GML.NAMESPACE, "posList").item(0).getTextContent());
+    }
+}
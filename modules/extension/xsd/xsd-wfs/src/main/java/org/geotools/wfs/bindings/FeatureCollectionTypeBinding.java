@@ -28,13 +28,21 @@ import org.geotools.data.simple.SimpleFeatureCollection;
 import org.geotools.feature.DefaultFeatureCollection;
 import org.geotools.feature.FeatureCollection;
 import org.geotools.geometry.jts.ReferencedEnvelope;
+import org.geotools.gml2.SrsSyntax;
+import org.geotools.gml2.simple.FeatureCollectionEncoderDelegate;
+import org.geotools.gml2.simple.GML2FeatureCollectionEncoderDelegate;
 import org.geotools.gml3.GML;
+import org.geotools.gml3.GMLConfiguration;
+import org.geotools.gml3.simple.GML3FeatureCollectionEncoderDelegate;
 import org.geotools.wfs.CompositeFeatureCollection;
 import org.geotools.wfs.WFS;
 import org.geotools.xml.AbstractComplexEMFBinding;
+import org.geotools.xml.Configuration;
 import org.geotools.xml.ElementInstance;
+import org.geotools.xml.EncoderDelegate;
 import org.geotools.xml.Node;
 import org.opengis.feature.simple.SimpleFeature;
+import org.xml.sax.helpers.NamespaceSupport;
 
 
 /**
@@ -101,10 +109,22 @@ import org.opengis.feature.simple.SimpleFeature;
  * @source $URL$
  */
 public class FeatureCollectionTypeBinding extends AbstractComplexEMFBinding {
+    Configuration configuration;
+    NamespaceSupport namespaces;
+    SrsSyntax srsSyntax;
+
     public FeatureCollectionTypeBinding(WfsFactory factory) {
         super(factory);
     }
 
+    public FeatureCollectionTypeBinding(WfsFactory factory, Configuration configuration,
+            NamespaceSupport namespaces, SrsSyntax srsSyntax) {
+        super(factory);
+        this.configuration = configuration;
+        this.namespaces = namespaces;
+        this.srsSyntax = srsSyntax;
+    }
+
     /**
      * @generated
      */
@@ -116,6 +136,12 @@ public class FeatureCollectionTypeBinding extends AbstractComplexEMFBinding {
     public Object getProperty(Object object, QName name) throws Exception {
         FeatureCollectionType fc = (FeatureCollectionType) object;
         if ( !fc.getFeature().isEmpty() ) {
+            //stream the members when optimized encoding is on
+            Object delegate = getEncoderDelegate(fc, name);
+            if (delegate != null) {
+                return delegate;
+            }
+
             Object val = WFSParsingUtils.FeatureCollectionType_getProperty(fc, name);
             if (val != null) {
                 return val;
@@ -125,6 +151,46 @@ public class FeatureCollectionTypeBinding extends AbstractComplexEMFBinding {
         return super.getProperty(object, name);
     }
     
+    /**
+     * Returns the streaming encoder of the feature members, or null if optimized encoding is off,
+     * or some of the feature collections are not simple ones
+     */
+    EncoderDelegate getEncoderDelegate(FeatureCollectionType fc, QName name) {
+        if (configuration == null || namespaces == null
+                || !configuration.hasProperty(GMLConfiguration.OPTIMIZED_ENCODING)
+                || !GML.NAMESPACE.equals(name.getNamespaceURI())) {
+            return null;
+        }
+        boolean featureMember = "featureMember".equals(name.getLocalPart());
+        if (!featureMember && !"featureMembers".equals(name.getLocalPart())) {
+            return null;
+        }
+
+        List<FeatureCollection> collections = WFSParsingUtils.features(fc);
+        for (FeatureCollection collection : collections) {
+            if (!(collection instanceof SimpleFeatureCollection)) {
+                return null;
+            }
+        }
+        SimpleFeatureCollection features = collections.size() == 1 ?
+                (SimpleFeatureCollection) collections.get(0) :
+                new CompositeFeatureCollection(collections);
+
+        FeatureCollectionEncoderDelegate delegate;
+        if (configuration.getDependency(org.geotools.gml3.GMLConfiguration.class) != null) {
+            delegate = new GML3FeatureCollectionEncoderDelegate(features, namespaces,
+                    GML.NAMESPACE, srsSyntax,
+                    !configuration.hasProperty(GMLConfiguration.NO_SRS_DIMENSION), featureMember);
+        } else if (featureMember) {
+            delegate = new GML2FeatureCollectionEncoderDelegate(features, namespaces, srsSyntax);
+        } else {
+            // no gml:featureMembers in GML 2
+            return null;
+        }
+        delegate.setEncodeBounds(!configuration.hasProperty(GMLConfiguration.NO_FEATURE_BOUNDS));
+        return delegate;
+    }
+
     public Object parse(ElementInstance instance, Node node, Object value)
         throws Exception {
         FeatureCollectionType fct = (FeatureCollectionType) super.parse(instance, node, value);
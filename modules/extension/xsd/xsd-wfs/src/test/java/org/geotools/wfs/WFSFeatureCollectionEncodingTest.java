@@ -94,6 +94,34 @@ public class WFSFeatureCollectionEncodingTest extends TestCase {
         assertNotNull( ((Element)d.getElementsByTagName( "geotools:feature").item( 0 )).getAttribute("gml:id") );
     }
     
+    public void testEncodeFeatureCollectionOptimized10() throws Exception {
+        org.geotools.wfs.v1_0.WFSConfiguration configuration = new org.geotools.wfs.v1_0.WFSConfiguration();
+        configuration.getProperties().add(org.geotools.gml2.GMLConfiguration.OPTIMIZED_ENCODING);
+        Encoder e = new Encoder( configuration );
+        e.getNamespaces().declarePrefix( "geotools", "http://geotools.org");
+
+        Document d = e.encodeAsDOM( fc, WFS.FeatureCollection );
+        assertEquals( 2, d.getElementsByTagName( "gml:featureMember" ).getLength() );
+        assertEquals( 2, d.getElementsByTagName( "gml:Point" ).getLength() );
+        assertEquals( "1.0,1.0", d.getElementsByTagName( "gml:coordinates" ).item( 1 ).getTextContent() );
+        assertEquals( 2, d.getElementsByTagName( "geotools:feature" ).getLength() );
+        assertEquals( "one", ((Element)d.getElementsByTagName( "geotools:feature").item( 1 )).getAttribute("fid") );
+    }
+
+    public void testEncodeFeatureCollectionOptimized11() throws Exception {
+        org.geotools.wfs.v1_1.WFSConfiguration configuration = new org.geotools.wfs.v1_1.WFSConfiguration();
+        configuration.getProperties().add(org.geotools.gml3.GMLConfiguration.OPTIMIZED_ENCODING);
+        Encoder e = new Encoder( configuration );
+        e.getNamespaces().declarePrefix( "geotools", "http://geotools.org");
+
+        Document d = e.encodeAsDOM( fc, WFS.FeatureCollection );
+        assertEquals( 1, d.getElementsByTagName( "gml:featureMembers" ).getLength() );
+        assertEquals( 2, d.getElementsByTagName( "gml:Point" ).getLength() );
+        assertEquals( 2, d.getElementsByTagName( "gml:pos" ).getLength() );
+        assertEquals( 2, d.getElementsByTagName( "geotools:feature" ).getLength() );
+        assertEquals( "one", ((Element)d.getElementsByTagName( "geotools:feature").item( 1 )).getAttribute("gml:id") );
+    }
+
     public void testEncodeFeatureCollectionMultipleFeatureTypes() throws Exception {
         DefaultFeatureCollection features = new DefaultFeatureCollection();
         
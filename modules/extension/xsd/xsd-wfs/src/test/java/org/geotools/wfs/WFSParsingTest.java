@@ -26,6 +26,7 @@ import java.io.Writer;
 import java.math.BigDecimal;
 import java.math.BigInteger;
 import java.net.URI;
+import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
 
@@ -58,11 +59,13 @@ import org.geotools.data.simple.SimpleFeatureIterator;
 import org.geotools.xml.Parser;
 import org.geotools.xml.Schemas;
 import org.geotools.xml.StreamingParser;
+import org.geotools.xml.impl.CompiledBindings;
 import org.opengis.feature.simple.SimpleFeature;
 import org.opengis.filter.capability.FilterCapabilities;
 import org.opengis.filter.capability.SpatialOperators;
 import org.w3c.dom.Document;
 
+import com.vividsolutions.jts.geom.Geometry;
 import com.vividsolutions.jts.geom.Point;
 
 /**
@@ -223,8 +226,11 @@ public class WFSParsingTest extends TestCase {
         assertEquals(targetNs, type.getTargetNamespace());
     }
 
-    @SuppressWarnings("unchecked")
-    public void testParseGetFeature() throws Exception {
+    /**
+     * Copies the GetFeature response, pointing its schema location to a local copy of the
+     * DescribeFeatureType response
+     */
+    File getFeatureDocument() throws Exception {
         File tmp = File.createTempFile("geoserver-DescribeFeatureType", "xml");
         tmp.deleteOnExit();
 
@@ -255,8 +261,12 @@ public class WFSParsingTest extends TestCase {
 
         Transformer tx = TransformerFactory.newInstance().newTransformer();
         tx.transform(new DOMSource(doc), new StreamResult(tmp));
+        return tmp;
+    }
 
-        in = new FileInputStream(tmp);
+    @SuppressWarnings("unchecked")
+    public void testParseGetFeature() throws Exception {
+        InputStream in = new FileInputStream(getFeatureDocument());
 
         Parser parser = new Parser(configuration);
         FeatureCollectionType fc = (FeatureCollectionType) parser.parse(in);
@@ -302,6 +312,56 @@ public class WFSParsingTest extends TestCase {
         }
     }
 
+    public void testParseGetFeatureCompiledBindings() throws Exception {
+        File document = getFeatureDocument();
+        List<SimpleFeature> expected = parseFeatures(new Parser(configuration), document);
+        assertEquals(5, expected.size());
+
+        // the same features, with the bindings compiled on the first document and reused after
+        CompiledBindings compiled = new CompiledBindings(configuration);
+        for (int i = 0; i < 2; i++) {
+            Parser parser = new Parser(configuration);
+            parser.setCompiledBindings(compiled);
+            List<SimpleFeature> features = parseFeatures(parser, document);
+            assertEquals(expected.size(), features.size());
+            for (int j = 0; j < expected.size(); j++) {
+                SimpleFeature e = expected.get(j);
+                SimpleFeature f = features.get(j);
+                assertEquals(e.getID(), f.getID());
+                assertEquals(e.getAttributeCount(), f.getAttributeCount());
+                for (int k = 0; k < e.getAttributeCount(); k++) {
+                    Object value = e.getAttribute(k);
+                    if (value instanceof Geometry) {
+                        assertTrue(((Geometry) value).equalsExact((Geometry) f.getAttribute(k)));
+                    } else {
+                        assertEquals(value, f.getAttribute(k));
+                    }
+                }
+            }
+        }
+        assertTrue(compiled.getChainCount() > 0);
+    }
+
+    List<SimpleFeature> parseFeatures(Parser parser, File document) throws Exception {
+        InputStream in = new FileInputStream(document);
+        try {
+            FeatureCollectionType fc = (FeatureCollectionType) parser.parse(in);
+            List<SimpleFeature> result = new ArrayList<SimpleFeature>();
+            SimpleFeatureIterator features = ((SimpleFeatureCollection) fc.getFeature().get(0))
+                    .features();
+            try {
+                while (features.hasNext()) {
+                    result.add(features.next());
+                }
+            } finally {
+                features.close();
+            }
+            return result;
+        } finally {
+            in.close();
+        }
+    }
+
     void copy(InputStream in, File to) throws Exception {
         Writer writer = new BufferedWriter(new FileWriter(to));
         InputStreamReader reader = new InputStreamReader(in);
@@ -0,0 +1,1000 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2013, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.coverage.grid.io.imageio;
+
+import java.awt.Point;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
+import java.awt.image.DataBufferShort;
+import java.awt.image.DataBufferUShort;
+import java.awt.image.Raster;
+import java.awt.image.RenderedImage;
+import java.awt.image.SampleModel;
+import java.awt.image.WritableRaster;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.media.jai.CachedTile;
+import javax.media.jai.TileCache;
+
+import com.sun.media.jai.util.DataBufferUtils;
+
+/**
+ * A {@link TileCache} keeping the cached tiles data out of the Java heap, so that large raster
+ * jobs do not fill the old generation with long lived tile arrays, triggering full garbage
+ * collections.
+ * <p>
+ * The cache allocates direct memory in slabs, up to its memory capacity, and hands it out in
+ * fixed size blocks. The data of a tile is copied into blocks when the tile is added, and copied
+ * back into a short lived heap raster when requested, since JAI operations can only work against
+ * heap arrays. The copy is made out of the cache lock, so concurrent requests for other tiles are
+ * not serialized behind it. The heap raster, or the one added, is only weakly referenced by the
+ * cache, so later requests get the very same raster, without copying, as long as some caller is
+ * still holding it. Blocks are
+ * explicitly returned to the free list when tiles are removed, evicted when the capacity is
+ * exceeded, or when the image owning them gets garbage collected, so the off-heap memory in use
+ * never exceeds the budget and does not depend on the garbage collector to be released. Reducing
+ * the capacity moves the cached tiles out of the slabs exceeding the new budget, and releases
+ * them.
+ * <p>
+ * Tiles are evicted in least recently used order, unless a
+ * {@link #setTileComparator(Comparator) tile comparator} is set, in which case the cached tiles,
+ * exposed as {@link CachedTile}, are sorted with it and removed starting from the first one, down
+ * to the {@link #getMemoryThreshold() memory threshold}, like the JAI default tile cache does.
+ * <p>
+ * The cache is used like any other JAI tile cache, e.g., with {@link org.geotools.image.ImageWorker}:
+ * 
+ * <pre>
+ * TileCache cache = new OffHeapTileCache(4L * 1024 * 1024 * 1024);
+ * ImageWorker worker = new ImageWorker(image);
+ * worker.setRenderingHint(JAI.KEY_TILE_CACHE, cache);
+ * </pre>
+ * 
+ * or as the tile cache of the {@link org.geotools.coverage.processing.CoverageProcessor}
+ * hints.
+ * <p>
+ * Tiles having a data buffer other than the standard Java2D and JAI ones are not cached.
+ *
+ * @source $URL$
+ */
+public class OffHeapTileCache implements TileCache {
+
+    /** Default memory capacity, 256MB */
+    public static final long DEFAULT_MEMORY_CAPACITY = 256 * 1024 * 1024;
+
+    /** Size of the memory blocks, a multiple of all the sample sizes */
+    static final int BLOCK_SIZE = 16 * 1024;
+
+    /** Number of blocks in each direct memory slab */
+    static final int BLOCKS_PER_SLAB = 1024;
+
+    /**
+     * A weak reference to an image owning tiles, compared by identity of the image
+     */
+    static final class OwnerRef extends WeakReference<RenderedImage> {
+
+        final int hash;
+
+        OwnerRef(RenderedImage owner, ReferenceQueue<RenderedImage> queue) {
+            super(owner, queue);
+            this.hash = System.identityHashCode(owner);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof OwnerRef)) {
+                return false;
+            }
+            final RenderedImage owner = get();
+            return owner != null && owner == ((OwnerRef) obj).get();
+        }
+    }
+
+    /**
+     * The tiles of an image
+     */
+    static final class OwnerTiles {
+
+        final OwnerRef ref;
+
+        final Map<Long, Entry> tiles = new HashMap<Long, Entry>();
+
+        OwnerTiles(OwnerRef ref) {
+            this.ref = ref;
+        }
+    }
+
+    /**
+     * A cached tile, also a node of the least recently used list
+     */
+    final class Entry implements CachedTile {
+
+        /** {@link #getAction()} code of a tile just added, as in the JAI default tile cache */
+        static final int ADDED = 0;
+
+        /** {@link #getAction()} code of a tile just returned by getTile */
+        static final int UPDATED_FROM_GETTILE = 5;
+
+        final OwnerTiles owner;
+
+        final long index;
+
+        final SampleModel sampleModel;
+
+        final int dataType;
+
+        final int[] bankSizes;
+
+        final int[] offsets;
+
+        final int size;
+
+        final int sampleModelTranslateX;
+
+        final int sampleModelTranslateY;
+
+        final int minX;
+
+        final int minY;
+
+        final int width;
+
+        final int height;
+
+        int[] blocks;
+
+        /** Number of copies of the tile in progress, the blocks are not reused until they end */
+        int pins;
+
+        boolean removed;
+
+        Object metric;
+
+        long timeStamp;
+
+        int action;
+
+        /** The last heap copy of the tile handed out, if any */
+        WeakReference<Raster> heapTile;
+
+        Entry previous;
+
+        Entry next;
+
+        Entry(OwnerTiles owner, long index, Raster tile, DataBuffer db, int[] bankSizes) {
+            this.owner = owner;
+            this.index = index;
+            this.sampleModel = tile.getSampleModel();
+            this.dataType = db.getDataType();
+            this.bankSizes = bankSizes;
+            this.offsets = db.getOffsets();
+            this.size = db.getSize();
+            this.sampleModelTranslateX = tile.getSampleModelTranslateX();
+            this.sampleModelTranslateY = tile.getSampleModelTranslateY();
+            this.minX = tile.getMinX();
+            this.minY = tile.getMinY();
+            this.width = tile.getWidth();
+            this.height = tile.getHeight();
+        }
+
+        long getBytes() {
+            long elements = 0;
+            for (int bankSize : bankSizes) {
+                elements += bankSize;
+            }
+            return elements * (DataBuffer.getDataTypeSize(dataType) / 8);
+        }
+
+        public RenderedImage getOwner() {
+            return owner.ref.get();
+        }
+
+        public Raster getTile() {
+            return getHeapTile(this);
+        }
+
+        public Object getTileCacheMetric() {
+            return metric;
+        }
+
+        public long getTileTimeStamp() {
+            return timeStamp;
+        }
+
+        public long getTileSize() {
+            return getBytes();
+        }
+
+        public int getAction() {
+            return action;
+        }
+    }
+
+    private final ReferenceQueue<RenderedImage> queue = new ReferenceQueue<RenderedImage>();
+
+    private final Map<OwnerRef, OwnerTiles> owners = new HashMap<OwnerRef, OwnerTiles>();
+
+    /** The removed tiles whose blocks are still being copied */
+    private final Set<Entry> pinned = new HashSet<Entry>();
+
+    /** Least recently used tile, first to be evicted */
+    private Entry head;
+
+    /** Most recently used tile */
+    private Entry tail;
+
+    private final List<ByteBuffer> slabs = new ArrayList<ByteBuffer>();
+
+    /** Stack of the free blocks */
+    private int[] freeBlocks = new int[0];
+
+    private int freeCount;
+
+    /** Number of blocks allocated so far, free or in use */
+    private int allocatedBlocks;
+
+    private long memoryCapacity;
+
+    private float memoryThreshold = 0.75f;
+
+    private Comparator<?> tileComparator;
+
+    /**
+     * Creates a cache with the {@link #DEFAULT_MEMORY_CAPACITY default capacity}
+     */
+    public OffHeapTileCache() {
+        this(DEFAULT_MEMORY_CAPACITY);
+    }
+
+    /**
+     * Creates a cache with the given capacity. The JVM direct memory limit, see the
+     * <code>-XX:MaxDirectMemorySize</code> option, must be large enough to accommodate it.
+     * 
+     * @param memoryCapacity the maximum amount of off-heap memory used by the cache, in bytes
+     */
+    public OffHeapTileCache(long memoryCapacity) {
+        if (memoryCapacity < 0) {
+            throw new IllegalArgumentException("Invalid memory capacity: " + memoryCapacity);
+        }
+        this.memoryCapacity = memoryCapacity;
+    }
+
+    public void add(RenderedImage owner, int tileX, int tileY, Raster data) {
+        add(owner, tileX, tileY, data, null);
+    }
+
+    public synchronized void add(RenderedImage owner, int tileX, int tileY, Raster data,
+            Object tileCacheMetric) {
+        expungeStaleOwners();
+        final DataBuffer db = data.getDataBuffer();
+        final int[] bankSizes = getBankSizes(db);
+        if (bankSizes == null) {
+            return;
+        }
+        OwnerTiles tiles = owners.get(new OwnerRef(owner, null));
+        if (tiles == null) {
+            final OwnerRef ref = new OwnerRef(owner, queue);
+            tiles = new OwnerTiles(ref);
+            owners.put(ref, tiles);
+        }
+        final long index = getIndex(tileX, tileY);
+        final Entry old = tiles.tiles.get(index);
+        if (old != null) {
+            remove(old);
+        }
+
+        final Entry entry = new Entry(tiles, index, data, db, bankSizes);
+        entry.metric = tileCacheMetric;
+        entry.timeStamp = System.currentTimeMillis();
+        entry.action = Entry.ADDED;
+        final int blocks = (int) ((entry.getBytes() + BLOCK_SIZE - 1) / BLOCK_SIZE);
+        if (!reserve(blocks)) {
+            return;
+        }
+        entry.blocks = new int[blocks];
+        for (int i = 0; i < blocks; i++) {
+            entry.blocks[i] = freeBlocks[--freeCount];
+        }
+        write(entry, db);
+        entry.heapTile = new WeakReference<Raster>(data);
+        tiles.tiles.put(index, entry);
+        append(entry);
+    }
+
+    public void addTiles(RenderedImage owner, java.awt.Point[] tileIndices, Raster[] tiles,
+            Object tileCacheMetric) {
+        for (int i = 0; i < tileIndices.length; i++) {
+            add(owner, tileIndices[i].x, tileIndices[i].y, tiles[i], tileCacheMetric);
+        }
+    }
+
+    public synchronized void remove(RenderedImage owner, int tileX, int tileY) {
+        expungeStaleOwners();
+        final OwnerTiles tiles = owners.get(new OwnerRef(owner, null));
+        if (tiles != null) {
+            final Entry entry = tiles.tiles.get(getIndex(tileX, tileY));
+            if (entry != null) {
+                remove(entry);
+            }
+        }
+    }
+
+    public Raster getTile(RenderedImage owner, int tileX, int tileY) {
+        final Entry entry;
+        synchronized (this) {
+            expungeStaleOwners();
+            final OwnerTiles tiles = owners.get(new OwnerRef(owner, null));
+            if (tiles == null) {
+                return null;
+            }
+            entry = tiles.tiles.get(getIndex(tileX, tileY));
+            if (entry == null) {
+                return null;
+            }
+            // most recently used now
+            unlink(entry);
+            append(entry);
+            entry.timeStamp = System.currentTimeMillis();
+            entry.action = Entry.UPDATED_FROM_GETTILE;
+        }
+        return getHeapTile(entry);
+    }
+
+    public Raster[] getTiles(RenderedImage owner) {
+        final List<Entry> entries;
+        synchronized (this) {
+            expungeStaleOwners();
+            final OwnerTiles tiles = owners.get(new OwnerRef(owner, null));
+            if (tiles == null) {
+                return null;
+            }
+            entries = new ArrayList<Entry>(tiles.tiles.values());
+        }
+        final List<Raster> result = new ArrayList<Raster>(entries.size());
+        for (Entry entry : entries) {
+            final Raster raster = getHeapTile(entry);
+            // skip the tiles removed in the meantime
+            if (raster != null) {
+                result.add(raster);
+            }
+        }
+        return result.toArray(new Raster[result.size()]);
+    }
+
+    public Raster[] getTiles(RenderedImage owner, java.awt.Point[] tileIndices) {
+        final Raster[] result = new Raster[tileIndices.length];
+        for (int i = 0; i < tileIndices.length; i++) {
+            result[i] = getTile(owner, tileIndices[i].x, tileIndices[i].y);
+        }
+        return result;
+    }
+
+    public synchronized void removeTiles(RenderedImage owner) {
+        expungeStaleOwners();
+        final OwnerTiles tiles = owners.get(new OwnerRef(owner, null));
+        if (tiles != null) {
+            removeOwner(tiles);
+        }
+    }
+
+    public synchronized void flush() {
+        while (head != null) {
+            remove(head);
+        }
+        owners.clear();
+    }
+
+    /**
+     * Evicts tiles until the memory used goes below the {@link #getMemoryThreshold() threshold}
+     */
+    public synchronized void memoryControl() {
+        expungeStaleOwners();
+        evict((long) (memoryCapacity * memoryThreshold));
+    }
+
+    /**
+     * @deprecated tiles are limited by memory only
+     */
+    public void setTileCapacity(int tileCapacity) {
+    }
+
+    /**
+     * @deprecated tiles are limited by memory only
+     */
+    public int getTileCapacity() {
+        return 0;
+    }
+
+    public synchronized void setMemoryCapacity(long memoryCapacity) {
+        if (memoryCapacity < 0) {
+            throw new IllegalArgumentException("Invalid memory capacity: " + memoryCapacity);
+        }
+        this.memoryCapacity = memoryCapacity;
+        evict(memoryCapacity);
+        releaseUnusedSlabs();
+        releaseExceedingSlabs();
+    }
+
+    public synchronized long getMemoryCapacity() {
+        return memoryCapacity;
+    }
+
+    public synchronized void setMemoryThreshold(float memoryThreshold) {
+        if (memoryThreshold < 0 || memoryThreshold > 1) {
+            throw new IllegalArgumentException("Invalid memory threshold: " + memoryThreshold);
+        }
+        this.memoryThreshold = memoryThreshold;
+    }
+
+    public synchronized float getMemoryThreshold() {
+        return memoryThreshold;
+    }
+
+    /**
+     * Sets the comparator deciding the order in which tiles are evicted, the cached tiles being
+     * compared as {@link CachedTile} instances and removed starting from the first one. When
+     * <code>null</code>, the default, tiles are evicted in least recently used order.
+     */
+    @SuppressWarnings("rawtypes")
+    public synchronized void setTileComparator(Comparator comparator) {
+        this.tileComparator = comparator;
+    }
+
+    @SuppressWarnings("rawtypes")
+    public synchronized Comparator getTileComparator() {
+        return tileComparator;
+    }
+
+    /**
+     * @return the off-heap memory used by the cached tiles, in bytes
+     */
+    public synchronized long getCacheMemoryUsed() {
+        return (long) (allocatedBlocks - freeCount) * BLOCK_SIZE;
+    }
+
+    /**
+     * @return the number of cached tiles
+     */
+    public synchronized int getCacheTileCount() {
+        int count = 0;
+        for (OwnerTiles tiles : owners.values()) {
+            count += tiles.tiles.size();
+        }
+        return count;
+    }
+
+    private static long getIndex(int tileX, int tileY) {
+        return ((long) tileX << 32) | (tileY & 0xffffffffL);
+    }
+
+    /**
+     * Drops the tiles of the images that have been garbage collected
+     */
+    private void expungeStaleOwners() {
+        Object ref;
+        while ((ref = queue.poll()) != null) {
+            // the referent is gone, but the map finds the very same reference by identity
+            final OwnerTiles tiles = owners.get(ref);
+            if (tiles != null) {
+                removeOwner(tiles);
+            }
+        }
+    }
+
+    /**
+     * Evicts tiles until the memory used is not above the given amount, in least recently used
+     * order or in the order imposed by the tile comparator
+     */
+    @SuppressWarnings("unchecked")
+    private void evict(long maxMemoryUsed) {
+        if (tileComparator == null) {
+            while (head != null && getCacheMemoryUsed() > maxMemoryUsed) {
+                remove(head);
+            }
+        } else if (getCacheMemoryUsed() > maxMemoryUsed) {
+            final List<Entry> entries = new ArrayList<Entry>();
+            for (Entry entry = head; entry != null; entry = entry.next) {
+                entries.add(entry);
+            }
+            Collections.sort(entries, (Comparator<Object>) tileComparator);
+            for (Entry entry : entries) {
+                if (getCacheMemoryUsed() <= maxMemoryUsed) {
+                    break;
+                }
+                remove(entry);
+            }
+        }
+    }
+
+    private void removeOwner(OwnerTiles tiles) {
+        for (Entry entry : new ArrayList<Entry>(tiles.tiles.values())) {
+            remove(entry);
+        }
+        owners.remove(tiles.ref);
+    }
+
+    private void remove(Entry entry) {
+        unlink(entry);
+        entry.owner.tiles.remove(entry.index);
+        entry.removed = true;
+        entry.heapTile = null;
+        if (entry.pins > 0) {
+            // the blocks are freed once the copies in progress are done
+            pinned.add(entry);
+        } else {
+            release(entry);
+        }
+    }
+
+    private void release(Entry entry) {
+        for (int block : entry.blocks) {
+            freeBlocks[freeCount++] = block;
+        }
+        entry.blocks = null;
+    }
+
+    /**
+     * @return the entries whose blocks are in use, cached or being copied
+     */
+    private List<Entry> getEntriesInUse() {
+        final List<Entry> entries = new ArrayList<Entry>(pinned);
+        for (Entry entry = head; entry != null; entry = entry.next) {
+            entries.add(entry);
+        }
+        return entries;
+    }
+
+    private void append(Entry entry) {
+        entry.previous = tail;
+        entry.next = null;
+        if (tail != null) {
+            tail.next = entry;
+        } else {
+            head = entry;
+        }
+        tail = entry;
+    }
+
+    private void unlink(Entry entry) {
+        if (entry.previous != null) {
+            entry.previous.next = entry.next;
+        } else {
+            head = entry.next;
+        }
+        if (entry.next != null) {
+            entry.next.previous = entry.previous;
+        } else {
+            tail = entry.previous;
+        }
+        entry.previous = null;
+        entry.next = null;
+    }
+
+    /**
+     * Makes sure the requested number of blocks is free, allocating new slabs or evicting tiles
+     * 
+     * @return false if the capacity is not large enough
+     */
+    private boolean reserve(int blocks) {
+        final long capacityBlocks = memoryCapacity / BLOCK_SIZE;
+        if (blocks > capacityBlocks) {
+            return false;
+        }
+        // check the budget first, free blocks are not necessarily within it
+        if (allocatedBlocks - freeCount + blocks > capacityBlocks) {
+            long target = (capacityBlocks - blocks) * BLOCK_SIZE;
+            if (tileComparator != null) {
+                // sorting is expensive, make room for more than a single tile
+                target = Math.min(target, (long) (memoryCapacity * memoryThreshold));
+            }
+            evict(target);
+        }
+        while (freeCount < blocks) {
+            if (allocatedBlocks < capacityBlocks) {
+                allocateSlab((int) Math.min(BLOCKS_PER_SLAB, capacityBlocks - allocatedBlocks));
+            } else if (head != null) {
+                remove(head);
+            } else {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void allocateSlab(int blocks) {
+        final ByteBuffer slab = ByteBuffer.allocateDirect(blocks * BLOCK_SIZE).order(
+                ByteOrder.nativeOrder());
+        // reuse the position of a released slab, if any
+        int index = slabs.indexOf(null);
+        if (index < 0) {
+            index = slabs.size();
+            slabs.add(slab);
+        } else {
+            slabs.set(index, slab);
+        }
+        if (freeBlocks.length < allocatedBlocks + blocks) {
+            final int[] grown = new int[allocatedBlocks + blocks];
+            System.arraycopy(freeBlocks, 0, grown, 0, freeCount);
+            freeBlocks = grown;
+        }
+        // blocks are numbered across slabs, slab i holding BLOCKS_PER_SLAB of them
+        final int first = index * BLOCKS_PER_SLAB;
+        for (int i = blocks - 1; i >= 0; i--) {
+            freeBlocks[freeCount++] = first + i;
+        }
+        allocatedBlocks += blocks;
+    }
+
+    /**
+     * Drops the direct memory slabs if no tile is cached, so that a capacity reduction
+     * actually gives memory back
+     */
+    private void releaseUnusedSlabs() {
+        if (head == null && pinned.isEmpty()) {
+            slabs.clear();
+            freeCount = 0;
+            allocatedBlocks = 0;
+            freeBlocks = new int[0];
+        }
+    }
+
+    /**
+     * Releases slabs until the allocated memory fits the capacity, starting from the ones with
+     * fewer blocks in use, whose tiles are moved into the free blocks of the remaining slabs.
+     * Tiles get evicted only if the remaining slabs do not have enough free blocks.
+     */
+    private void releaseExceedingSlabs() {
+        final long capacityBlocks = memoryCapacity / BLOCK_SIZE;
+        while (allocatedBlocks > capacityBlocks) {
+            final List<Entry> entries = getEntriesInUse();
+            final int[] used = new int[slabs.size()];
+            for (Entry entry : entries) {
+                for (int block : entry.blocks) {
+                    used[block / BLOCKS_PER_SLAB]++;
+                }
+            }
+            int victim = -1;
+            for (int i = 0; i < used.length; i++) {
+                if (slabs.get(i) != null && (victim < 0 || used[i] < used[victim])) {
+                    victim = i;
+                }
+            }
+            final int victimBlocks = slabs.get(victim).capacity() / BLOCK_SIZE;
+            if (freeCount - (victimBlocks - used[victim]) < used[victim]) {
+                if (head == null) {
+                    // only tiles being copied are left, the slabs are released later on
+                    return;
+                }
+                remove(head);
+                continue;
+            }
+
+            // forget about the free blocks of the victim, then move its tiles elsewhere
+            int kept = 0;
+            for (int i = 0; i < freeCount; i++) {
+                if (freeBlocks[i] / BLOCKS_PER_SLAB != victim) {
+                    freeBlocks[kept++] = freeBlocks[i];
+                }
+            }
+            freeCount = kept;
+            // copies in progress keep reading the dropped slab, which is never reused
+            for (Entry entry : entries) {
+                for (int i = 0; i < entry.blocks.length; i++) {
+                    if (entry.blocks[i] / BLOCKS_PER_SLAB == victim) {
+                        final int target = freeBlocks[--freeCount];
+                        getBlock(target).put(getBlock(entry.blocks[i]));
+                        entry.blocks[i] = target;
+                    }
+                }
+            }
+            slabs.set(victim, null);
+            allocatedBlocks -= victimBlocks;
+            while (!slabs.isEmpty() && slabs.get(slabs.size() - 1) == null) {
+                slabs.remove(slabs.size() - 1);
+            }
+        }
+    }
+
+    /**
+     * Returns the heap copy of a tile still referenced by some caller, or builds a new one. The
+     * copy is made out of the cache lock, the entry being pinned so that its blocks are not
+     * reused by other tiles in the meantime.
+     * 
+     * @return the tile, or null if it has been removed
+     */
+    private Raster getHeapTile(Entry entry) {
+        final ByteBuffer[] sources;
+        synchronized (this) {
+            if (entry.removed) {
+                return null;
+            }
+            final Raster raster = entry.heapTile == null ? null : entry.heapTile.get();
+            if (raster != null) {
+                return raster;
+            }
+            // views of the blocks, still valid if the slabs get released or the blocks moved
+            sources = new ByteBuffer[entry.blocks.length];
+            for (int i = 0; i < sources.length; i++) {
+                sources[i] = getBlock(entry.blocks[i]);
+            }
+            entry.pins++;
+        }
+        Raster raster = null;
+        try {
+            raster = read(entry, sources);
+        } finally {
+            synchronized (this) {
+                entry.pins--;
+                if (entry.removed) {
+                    if (entry.pins == 0 && pinned.remove(entry)) {
+                        release(entry);
+                        // a capacity reduction might have been waiting for these blocks
+                        releaseExceedingSlabs();
+                    }
+                } else if (raster != null) {
+                    // a concurrent copy might have been handed out already
+                    final Raster other = entry.heapTile == null ? null : entry.heapTile.get();
+                    if (other != null) {
+                        raster = other;
+                    } else {
+                        entry.heapTile = new WeakReference<Raster>(raster);
+                    }
+                }
+            }
+        }
+        return raster;
+    }
+
+    /**
+     * Drops the heap rasters held for the cached tiles, so that the next requests read them back
+     * from the off-heap memory
+     */
+    synchronized void clearHeapTiles() {
+        for (Entry entry = head; entry != null; entry = entry.next) {
+            entry.heapTile = null;
+        }
+    }
+
+    /**
+     * @return the off-heap memory allocated so far, in bytes, free or in use
+     */
+    synchronized long getAllocatedMemory() {
+        return (long) allocatedBlocks * BLOCK_SIZE;
+    }
+
+    private ByteBuffer getBlock(int block) {
+        final ByteBuffer slab = slabs.get(block / BLOCKS_PER_SLAB).duplicate();
+        final int offset = (block % BLOCKS_PER_SLAB) * BLOCK_SIZE;
+        slab.limit(offset + BLOCK_SIZE);
+        slab.position(offset);
+        return slab.slice().order(ByteOrder.nativeOrder());
+    }
+
+    /**
+     * @return the sizes of the data buffer banks, or null if the buffer is not supported
+     */
+    private static int[] getBankSizes(DataBuffer db) {
+        final int banks = db.getNumBanks();
+        final int[] sizes = new int[banks];
+        for (int i = 0; i < banks; i++) {
+            final Object bank = getBank(db, i);
+            if (bank == null) {
+                return null;
+            }
+            sizes[i] = java.lang.reflect.Array.getLength(bank);
+        }
+        return sizes;
+    }
+
+    private static Object getBank(DataBuffer db, int bank) {
+        if (db instanceof DataBufferByte) {
+            return ((DataBufferByte) db).getData(bank);
+        } else if (db instanceof DataBufferUShort) {
+            return ((DataBufferUShort) db).getData(bank);
+        } else if (db instanceof DataBufferShort) {
+            return ((DataBufferShort) db).getData(bank);
+        } else if (db instanceof DataBufferInt) {
+            return ((DataBufferInt) db).getData(bank);
+        } else if (db.getDataType() == DataBuffer.TYPE_FLOAT) {
+            return DataBufferUtils.getDataFloat(db, bank);
+        } else if (db.getDataType() == DataBuffer.TYPE_DOUBLE) {
+            return DataBufferUtils.getDataDouble(db, bank);
+        }
+        return null;
+    }
+
+    /**
+     * Copies the tile banks into the entry blocks, one after the other
+     */
+    private void write(Entry entry, DataBuffer db) {
+        int block = 0;
+        ByteBuffer target = null;
+        final int elementSize = DataBuffer.getDataTypeSize(entry.dataType) / 8;
+        for (int b = 0; b < entry.bankSizes.length; b++) {
+            final Object bank = getBank(db, b);
+            int done = 0;
+            final int length = entry.bankSizes[b];
+            while (done < length) {
+                if (target == null || !target.hasRemaining()) {
+                    target = getBlock(entry.blocks[block++]);
+                }
+                final int count = Math.min(length - done, target.remaining() / elementSize);
+                switch (entry.dataType) {
+                case DataBuffer.TYPE_BYTE:
+                    target.put((byte[]) bank, done, count);
+                    break;
+                case DataBuffer.TYPE_USHORT:
+                case DataBuffer.TYPE_SHORT:
+                    target.asShortBuffer().put((short[]) bank, done, count);
+                    break;
+                case DataBuffer.TYPE_INT:
+                    target.asIntBuffer().put((int[]) bank, done, count);
+                    break;
+                case DataBuffer.TYPE_FLOAT:
+                    target.asFloatBuffer().put((float[]) bank, done, count);
+                    break;
+                default:
+                    target.asDoubleBuffer().put((double[]) bank, done, count);
+                }
+                if (entry.dataType != DataBuffer.TYPE_BYTE) {
+                    target.position(target.position() + count * elementSize);
+                }
+                done += count;
+            }
+        }
+    }
+
+    /**
+     * Rebuilds a heap raster out of views of the entry blocks
+     */
+    private static Raster read(Entry entry, ByteBuffer[] sources) {
+        final int banks = entry.bankSizes.length;
+        final Object[] data = new Object[banks];
+        int block = 0;
+        ByteBuffer source = null;
+        final int elementSize = DataBuffer.getDataTypeSize(entry.dataType) / 8;
+        for (int b = 0; b < banks; b++) {
+            final int length = entry.bankSizes[b];
+            final Object bank;
+            switch (entry.dataType) {
+            case DataBuffer.TYPE_BYTE:
+                bank = new byte[length];
+                break;
+            case DataBuffer.TYPE_USHORT:
+            case DataBuffer.TYPE_SHORT:
+                bank = new short[length];
+                break;
+            case DataBuffer.TYPE_INT:
+                bank = new int[length];
+                break;
+            case DataBuffer.TYPE_FLOAT:
+                bank = new float[length];
+                break;
+            default:
+                bank = new double[length];
+            }
+            int done = 0;
+            while (done < length) {
+                if (source == null || !source.hasRemaining()) {
+                    source = sources[block++];
+                }
+                final int count = Math.min(length - done, source.remaining() / elementSize);
+                switch (entry.dataType) {
+                case DataBuffer.TYPE_BYTE:
+                    source.get((byte[]) bank, done, count);
+                    break;
+                case DataBuffer.TYPE_USHORT:
+                case DataBuffer.TYPE_SHORT:
+                    source.asShortBuffer().get((short[]) bank, done, count);
+                    break;
+                case DataBuffer.TYPE_INT:
+                    source.asIntBuffer().get((int[]) bank, done, count);
+                    break;
+                case DataBuffer.TYPE_FLOAT:
+                    source.asFloatBuffer().get((float[]) bank, done, count);
+                    break;
+                default:
+                    source.asDoubleBuffer().get((double[]) bank, done, count);
+                }
+                if (entry.dataType != DataBuffer.TYPE_BYTE) {
+                    source.position(source.position() + count * elementSize);
+                }
+                done += count;
+            }
+            data[b] = bank;
+        }
+
+        final DataBuffer db = createDataBuffer(entry, data);
+        final Point origin = new Point(entry.sampleModelTranslateX, entry.sampleModelTranslateY);
+        final WritableRaster raster = Raster.createWritableRaster(entry.sampleModel, db, origin);
+        if (entry.minX == origin.x && entry.minY == origin.y
+                && entry.width == entry.sampleModel.getWidth()
+                && entry.height == entry.sampleModel.getHeight()) {
+            return raster;
+        }
+        // the cached tile was a child raster
+        return raster.createWritableChild(entry.minX, entry.minY, entry.width, entry.height,
+                entry.minX, entry.minY, null);
+    }
+
+    private static DataBuffer createDataBuffer(Entry entry, Object[] data) {
+        final int banks = data.length;
+        switch (entry.dataType) {
+        case DataBuffer.TYPE_BYTE: {
+            final byte[][] arrays = new byte[banks][];
+            for (int i = 0; i < banks; i++) {
+                arrays[i] = (byte[]) data[i];
+            }
+            return new DataBufferByte(arrays, entry.size, entry.offsets);
+        }
+        case DataBuffer.TYPE_USHORT: {
+            final short[][] arrays = new short[banks][];
+            for (int i = 0; i < banks; i++) {
+                arrays[i] = (short[]) data[i];
+            }
+            return new DataBufferUShort(arrays, entry.size, entry.offsets);
+        }
+        case DataBuffer.TYPE_SHORT: {
+            final short[][] arrays = new short[banks][];
+            for (int i = 0; i < banks; i++) {
+                arrays[i] = (short[]) data[i];
+            }
+            return new DataBufferShort(arrays, entry.size, entry.offsets);
+        }
+        case DataBuffer.TYPE_INT: {
+            final int[][] arrays = new int[banks][];
+            for (int i = 0; i < banks; i++) {
+                arrays[i] = (int[]) data[i];
+            }
+            return new DataBufferInt(arrays, entry.size, entry.offsets);
+        }
+        case DataBuffer.TYPE_FLOAT: {
+            final float[][] arrays = new float[banks][];
+            for (int i = 0; i < banks; i++) {
+                arrays[i] = (float[]) data[i];
+            }
+            return DataBufferUtils.createDataBufferFloat(arrays, entry.size, entry.offsets);
+        }
+        default: {
+            final double[][] arrays = new double[banks][];
+            for (int i = 0; i < banks; i++) {
+                arrays[i] = (double[]) data[i];
+            }
+            return DataBufferUtils.createDataBufferDouble(arrays, entry.size, entry.offsets);
+        }
+        }
+    }
+}
@@ -16,23 +16,29 @@
  */
 package org.geotools.coverage.processing;
 
+import java.awt.Rectangle;
 import java.awt.geom.AffineTransform;
 import java.awt.geom.NoninvertibleTransformException;
 import java.awt.geom.Rectangle2D;
+import java.awt.image.RenderedImage;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
 import java.util.logging.Logger;
 
 import javax.media.jai.JAI;
 import javax.media.jai.OperationDescriptor;
 import javax.media.jai.ParameterBlockJAI;
+import javax.media.jai.ROI;
 import javax.media.jai.ROIShape;
+import javax.media.jai.RenderedOp;
 import javax.media.jai.StatisticsOpImage;
 import javax.media.jai.registry.RenderedRegistryMode;
 
 import org.geotools.coverage.grid.GridCoverage2D;
 import org.geotools.coverage.grid.GridGeometry2D;
+import org.geotools.factory.Hints;
 import org.geotools.geometry.DirectPosition2D;
 import org.geotools.geometry.Envelope2D;
 import org.geotools.geometry.jts.ReferencedEnvelope;
@@ -296,6 +302,45 @@ public abstract class BaseStatisticsOperationJAI extends
 		}
 	}
 
+	/**
+	 * Computes the statistics. When an {@link ExecutorService} is provided through the
+	 * {@link Hints#EXECUTOR_SERVICE} hint and the source is the result of a processing chain,
+	 * the source tiles in the region of interest are first computed in parallel with a
+	 * {@link TiledCoverageExecutor}, so that the statistics, gathered on a single thread, pull
+	 * them from the JAI tile cache rather than evaluating the chain one tile after the other.
+	 * The tile cache should be able to hold the region for this to pay off.
+	 */
+	@Override
+	protected GridCoverage2D deriveGridCoverage(final GridCoverage2D[] sources,
+			final Parameters parameters) {
+		final Hints hints = parameters.hints;
+		if (hints != null && hints.get(Hints.EXECUTOR_SERVICE) instanceof ExecutorService) {
+			final RenderedImage source = parameters.getSource();
+			if (source instanceof RenderedOp) {
+				new TiledCoverageExecutor(hints).execute(source, getRegion(parameters.parameters),
+						null);
+			}
+		}
+		return super.deriveGridCoverage(sources, parameters);
+	}
+
+	/**
+	 * @return the bounds of the region of interest of the statistics, or <code>null</code> if
+	 *         they cover the whole source
+	 */
+	private static Rectangle getRegion(final ParameterBlockJAI block) {
+		final String[] names = block.getParameterListDescriptor().getParamNames();
+		if (names != null) {
+			for (String name : names) {
+				if ("roi".equalsIgnoreCase(name)) {
+					final Object roi = block.getObjectParameter(name);
+					return roi instanceof ROI ? ((ROI) roi).getBounds() : null;
+				}
+			}
+		}
+		return null;
+	}
+
 	/**
 	 * Converte a JTS {@link Polygon}, which represents a ROI, into an AWT
 	 * {@link java.awt.Polygon} by means of the provided {@link MathTransform}.
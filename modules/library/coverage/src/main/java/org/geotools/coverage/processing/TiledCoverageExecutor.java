@@ -0,0 +1,408 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2013, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.coverage.processing;
+
+import java.awt.Rectangle;
+import java.awt.image.DataBuffer;
+import java.awt.image.Raster;
+import java.awt.image.RenderedImage;
+import java.awt.image.SampleModel;
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+
+import javax.media.jai.OpImage;
+import javax.media.jai.PlanarImage;
+import javax.media.jai.RenderedOp;
+
+import org.geotools.coverage.grid.GridCoverage2D;
+import org.geotools.factory.Hints;
+import org.geotools.util.Utilities;
+
+/**
+ * Computes the tiles of the image backing a {@linkplain GridCoverage2D grid coverage}, usually
+ * the result of a chain of coverage processing operations, on an {@link ExecutorService}.
+ *
+ * <p>
+ * JAI computes tiles lazily, on the thread asking for them, so that a chain of operations is
+ * evaluated on a single thread unless the consumer itself asks for tiles in parallel. This
+ * executor walks the requested region in read order (row by row, left to right), keeping a
+ * window of tiles being computed ahead of the consumer, and hands the tiles back to a
+ * {@link TileVisitor} in read order as well.
+ *
+ * <p>
+ * The size of the window is the minimum between the {@linkplain #setPrefetch prefetch} and the
+ * number of tiles fitting in the {@linkplain #setMemoryBudget memory budget} of the request, so
+ * that the memory held by the tiles computed but not consumed yet is bounded regardless of the
+ * executor parallelism. Tiles cached by JAI, as well as the intermediate tiles of the chain, are
+ * not accounted for.
+ *
+ * <p>
+ * The time spent computing the tiles is reported by operation. By default the whole time goes to
+ * the last operation of the chain; when {@linkplain #setProfiling profiling} is enabled the
+ * source tiles of each operation are computed before the operation ones, so that each operation
+ * gets charged for its own work only. Profiling relies on the JAI tile cache to avoid computing
+ * tiles twice and should only be enabled for diagnostic purposes.
+ *
+ * <p>
+ * The {@linkplain BaseStatisticsOperationJAI statistics operations} use it to compute their
+ * source in parallel when an executor is provided through the {@link Hints#EXECUTOR_SERVICE}
+ * hint.
+ *
+ * @source $URL$
+ */
+public class TiledCoverageExecutor {
+
+    /**
+     * Receives the computed tiles, in read order.
+     */
+    public interface TileVisitor {
+
+        /**
+         * @param tileX the tile column.
+         * @param tileY the tile row.
+         * @param tile the computed tile.
+         */
+        void visit(int tileX, int tileY, Raster tile);
+    }
+
+    /**
+     * Summary of an execution.
+     */
+    public static final class Report {
+
+        private final int tileCount;
+
+        private final long elapsedTime;
+
+        private final Map<String, Long> operationTimes;
+
+        private Report(final int tileCount, final long elapsedNanos,
+                final Map<String, AtomicLong> operationNanos) {
+            this.tileCount = tileCount;
+            this.elapsedTime = elapsedNanos / 1000000;
+            final Map<String, Long> times = new TreeMap<String, Long>();
+            for (Map.Entry<String, AtomicLong> entry : operationNanos.entrySet()) {
+                times.put(entry.getKey(), entry.getValue().get() / 1000000);
+            }
+            this.operationTimes = Collections.unmodifiableMap(times);
+        }
+
+        /**
+         * @return the number of tiles computed.
+         */
+        public int getTileCount() {
+            return tileCount;
+        }
+
+        /**
+         * @return the elapsed time, in milliseconds.
+         */
+        public long getElapsedTime() {
+            return elapsedTime;
+        }
+
+        /**
+         * @return the time, in milliseconds, spent computing tiles by operation name, summed
+         *         across all the threads involved.
+         */
+        public Map<String, Long> getOperationTimes() {
+            return operationTimes;
+        }
+
+        @Override
+        public String toString() {
+            return "Computed " + tileCount + " tiles in " + elapsedTime + "ms, operation times "
+                    + operationTimes;
+        }
+    }
+
+    /** The default memory budget of a request, in bytes. */
+    public static final long DEFAULT_MEMORY_BUDGET = 64L * 1024 * 1024;
+
+    /** The default number of tiles computed ahead of the consumer. */
+    public static final int DEFAULT_PREFETCH = 2 * Runtime.getRuntime().availableProcessors();
+
+    private final ExecutorService executor;
+
+    private long memoryBudget = DEFAULT_MEMORY_BUDGET;
+
+    private int prefetch = DEFAULT_PREFETCH;
+
+    private boolean profiling;
+
+    /**
+     * Creates an executor running on the {@link ExecutorService} provided through the
+     * {@link Hints#EXECUTOR_SERVICE} hint, if any, or on the calling thread otherwise.
+     *
+     * @param hints the {@link Hints} to look into, may be <code>null</code>.
+     */
+    public TiledCoverageExecutor(final Hints hints) {
+        this(hints != null ? (ExecutorService) hints.get(Hints.EXECUTOR_SERVICE) : null);
+    }
+
+    /**
+     * Creates an executor running on the provided {@link ExecutorService}.
+     *
+     * @param executor the {@link ExecutorService} to compute tiles on, <code>null</code> to
+     *        compute them on the calling thread.
+     */
+    public TiledCoverageExecutor(final ExecutorService executor) {
+        this.executor = executor;
+    }
+
+    public long getMemoryBudget() {
+        return memoryBudget;
+    }
+
+    /**
+     * @param memoryBudget the maximum number of bytes held by the tiles computed ahead of the
+     *        consumer. At least one tile is computed ahead regardless of its size.
+     */
+    public void setMemoryBudget(final long memoryBudget) {
+        if (memoryBudget <= 0) {
+            throw new IllegalArgumentException("Memory budget must be positive: " + memoryBudget);
+        }
+        this.memoryBudget = memoryBudget;
+    }
+
+    public int getPrefetch() {
+        return prefetch;
+    }
+
+    /**
+     * @param prefetch the maximum number of tiles computed ahead of the consumer.
+     */
+    public void setPrefetch(final int prefetch) {
+        if (prefetch <= 0) {
+            throw new IllegalArgumentException("Prefetch must be positive: " + prefetch);
+        }
+        this.prefetch = prefetch;
+    }
+
+    public boolean isProfiling() {
+        return profiling;
+    }
+
+    /**
+     * @param profiling <code>true</code> to charge each operation of the chain for its own work
+     *        only, at the cost of walking the chain for each tile.
+     */
+    public void setProfiling(final boolean profiling) {
+        this.profiling = profiling;
+    }
+
+    /**
+     * Computes the tiles of the provided coverage intersecting the requested region.
+     *
+     * @param coverage the coverage whose tiles are to be computed.
+     * @param region the region to compute, in raster space, <code>null</code> for the whole
+     *        coverage.
+     * @param visitor the {@link TileVisitor} receiving the tiles in read order, may be
+     *        <code>null</code> to just compute them, as an instance to warm up the tile cache.
+     * @return a {@link Report} of the execution.
+     * @throws CoverageProcessingException if the computation of a tile failed or the calling
+     *         thread got interrupted.
+     */
+    public Report execute(final GridCoverage2D coverage, final Rectangle region,
+            final TileVisitor visitor) {
+        Utilities.ensureNonNull("coverage", coverage);
+        return execute(coverage.getRenderedImage(), region, visitor);
+    }
+
+    /**
+     * Computes the tiles of the provided image intersecting the requested region.
+     *
+     * @see #execute(GridCoverage2D, Rectangle, TileVisitor)
+     */
+    public Report execute(final RenderedImage image, final Rectangle region,
+            final TileVisitor visitor) {
+        Utilities.ensureNonNull("image", image);
+        final long start = System.nanoTime();
+        final ConcurrentMap<String, AtomicLong> times = new ConcurrentHashMap<String, AtomicLong>();
+        final Rectangle bounds = new Rectangle(image.getMinX(), image.getMinY(), image.getWidth(),
+                image.getHeight());
+        final Rectangle area = region != null ? region.intersection(bounds) : bounds;
+        if (area.isEmpty()) {
+            return new Report(0, System.nanoTime() - start, times);
+        }
+
+        final int minTileX = PlanarImage.XToTileX(area.x, image.getTileGridXOffset(), image.getTileWidth());
+        final int minTileY = PlanarImage.YToTileY(area.y, image.getTileGridYOffset(), image.getTileHeight());
+        final int maxTileX = PlanarImage.XToTileX(area.x + area.width - 1, image.getTileGridXOffset(), image.getTileWidth());
+        final int maxTileY = PlanarImage.YToTileY(area.y + area.height - 1, image.getTileGridYOffset(), image.getTileHeight());
+        final int columns = maxTileX - minTileX + 1;
+        final int total = columns * (maxTileY - minTileY + 1);
+        final int window = getWindow(image.getSampleModel(), image.getTileWidth(), image.getTileHeight());
+
+        if (executor == null || window == 1 || total == 1) {
+            for (int i = 0; i < total; i++) {
+                final int tileX = minTileX + i % columns;
+                final int tileY = minTileY + i / columns;
+                final Raster tile = computeTile(image, tileX, tileY, times);
+                if (visitor != null) {
+                    visitor.visit(tileX, tileY, tile);
+                }
+            }
+        } else {
+            // circular buffer of the tiles being computed ahead
+            @SuppressWarnings("unchecked")
+            final FutureTask<Raster>[] tasks = new FutureTask[window];
+            int submitted = 0;
+            try {
+                for (; submitted < Math.min(window, total); submitted++) {
+                    tasks[submitted] = submit(image, minTileX + submitted % columns, minTileY
+                            + submitted / columns, times);
+                }
+                for (int i = 0; i < total; i++) {
+                    final Raster tile = tasks[i % window].get();
+                    tasks[i % window] = null;
+                    if (visitor != null) {
+                        visitor.visit(minTileX + i % columns, minTileY + i / columns, tile);
+                    }
+                    if (submitted < total) {
+                        tasks[submitted % window] = submit(image, minTileX + submitted % columns,
+                                minTileY + submitted / columns, times);
+                        submitted++;
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new CoverageProcessingException(e);
+            } catch (ExecutionException e) {
+                throw new CoverageProcessingException(e.getCause());
+            } finally {
+                for (FutureTask<Raster> task : tasks) {
+                    if (task != null) {
+                        task.cancel(true);
+                    }
+                }
+            }
+        }
+
+        final Report report = new Report(total, System.nanoTime() - start, times);
+        if (CoverageProcessor.LOGGER.isLoggable(Level.FINE)) {
+            CoverageProcessor.LOGGER.fine(report.toString());
+        }
+        return report;
+    }
+
+    /**
+     * @return the number of tiles to compute ahead of the consumer.
+     */
+    private int getWindow(final SampleModel sampleModel, final int tileWidth, final int tileHeight) {
+        final long tileSize = (long) tileWidth * tileHeight * sampleModel.getNumBands()
+                * DataBuffer.getDataTypeSize(sampleModel.getDataType()) / 8;
+        final long tiles = tileSize > 0 ? memoryBudget / tileSize : prefetch;
+        return (int) Math.max(1, Math.min(prefetch, tiles));
+    }
+
+    private FutureTask<Raster> submit(final RenderedImage image, final int tileX, final int tileY,
+            final ConcurrentMap<String, AtomicLong> times) {
+        final FutureTask<Raster> task = new FutureTask<Raster>(new Callable<Raster>() {
+
+            public Raster call() throws Exception {
+                return computeTile(image, tileX, tileY, times);
+            }
+        });
+        try {
+            executor.execute(task);
+        } catch (RejectedExecutionException e) {
+            // the pool is saturated or shut down, compute in the calling thread
+            task.run();
+        }
+        return task;
+    }
+
+    private Raster computeTile(final RenderedImage image, final int tileX, final int tileY,
+            final ConcurrentMap<String, AtomicLong> times) {
+        if (profiling) {
+            computeSources(image, new Rectangle(
+                    tileX * image.getTileWidth() + image.getTileGridXOffset(),
+                    tileY * image.getTileHeight() + image.getTileGridYOffset(),
+                    image.getTileWidth(), image.getTileHeight()), times);
+        }
+        final long start = System.nanoTime();
+        final Raster tile = image.getTile(tileX, tileY);
+        record(times, image, System.nanoTime() - start);
+        return tile;
+    }
+
+    /**
+     * Computes, depth first, the source tiles the provided image needs for computing the
+     * requested area.
+     */
+    private void computeSources(final RenderedImage image, final Rectangle area,
+            final ConcurrentMap<String, AtomicLong> times) {
+        final RenderedImage rendering = image instanceof RenderedOp ? ((RenderedOp) image).getRendering() : image;
+        if (!(rendering instanceof OpImage)) {
+            return;
+        }
+        final OpImage op = (OpImage) rendering;
+        for (int i = 0; i < op.getNumSources(); i++) {
+            // prefer the source nodes, which know their operation name, to their renderings
+            PlanarImage source = op.getSourceImage(i);
+            if (image instanceof RenderedOp && i < ((RenderedOp) image).getNumSources()
+                    && ((RenderedOp) image).getSourceObject(i) instanceof RenderedOp) {
+                source = (RenderedOp) ((RenderedOp) image).getSourceObject(i);
+            }
+            Rectangle sourceArea;
+            try {
+                sourceArea = op.mapDestRect(area, i);
+            } catch (RuntimeException e) {
+                // not all the operations can map back their areas
+                continue;
+            }
+            if (sourceArea == null || (sourceArea = sourceArea.intersection(source.getBounds())).isEmpty()) {
+                continue;
+            }
+            final int minTileX = source.XToTileX(sourceArea.x);
+            final int minTileY = source.YToTileY(sourceArea.y);
+            final int maxTileX = source.XToTileX(sourceArea.x + sourceArea.width - 1);
+            final int maxTileY = source.YToTileY(sourceArea.y + sourceArea.height - 1);
+            for (int tileY = minTileY; tileY <= maxTileY; tileY++) {
+                for (int tileX = minTileX; tileX <= maxTileX; tileX++) {
+                    computeTile(source, tileX, tileY, times);
+                }
+            }
+        }
+    }
+
+    private static void record(final ConcurrentMap<String, AtomicLong> times,
+            final RenderedImage image, final long nanos) {
+        final String name = image instanceof RenderedOp ? ((RenderedOp) image).getOperationName()
+                : image.getClass().getSimpleName();
+        AtomicLong time = times.get(name);
+        if (time == null) {
+            final AtomicLong newTime = new AtomicLong();
+            time = times.putIfAbsent(name, newTime);
+            if (time == null) {
+                time = newTime;
+            }
+        }
+        time.addAndGet(nanos);
+    }
+}
@@ -0,0 +1,269 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2013, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.coverage.grid.io.imageio;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.Point;
+import java.awt.RenderingHints;
+import java.awt.image.BandedSampleModel;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBuffer;
+import java.awt.image.PixelInterleavedSampleModel;
+import java.awt.image.Raster;
+import java.awt.image.RenderedImage;
+import java.awt.image.SampleModel;
+import java.awt.image.WritableRaster;
+import java.awt.image.renderable.ParameterBlock;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import javax.media.jai.CachedTile;
+import javax.media.jai.JAI;
+import javax.media.jai.RenderedOp;
+import javax.media.jai.TiledImage;
+
+import org.junit.Test;
+
+/**
+ * Tests the {@link OffHeapTileCache}
+ *
+ * @source $URL$
+ */
+public class OffHeapTileCacheTest {
+
+    private static final int[] DATA_TYPES = new int[] { DataBuffer.TYPE_BYTE,
+            DataBuffer.TYPE_USHORT, DataBuffer.TYPE_SHORT, DataBuffer.TYPE_INT,
+            DataBuffer.TYPE_FLOAT, DataBuffer.TYPE_DOUBLE };
+
+    private static final RenderedImage OWNER = new BufferedImage(1, 1,
+            BufferedImage.TYPE_BYTE_GRAY);
+
+    private WritableRaster buildRaster(int dataType, boolean banded, int width, int height,
+            Point location) {
+        SampleModel sm;
+        if (banded) {
+            sm = new BandedSampleModel(dataType, width, height, 3);
+        } else {
+            sm = new PixelInterleavedSampleModel(dataType, width, height, 3, 3 * width,
+                    new int[] { 0, 1, 2 });
+        }
+        WritableRaster raster = Raster.createWritableRaster(sm, location);
+        Random random = new Random(dataType);
+        for (int y = raster.getMinY(); y < raster.getMinY() + height; y++) {
+            for (int x = raster.getMinX(); x < raster.getMinX() + width; x++) {
+                for (int b = 0; b < 3; b++) {
+                    raster.setSample(x, y, b, random.nextInt(120));
+                }
+            }
+        }
+        return raster;
+    }
+
+    private void assertRasterEquals(Raster expected, Raster actual) {
+        assertEquals(expected.getMinX(), actual.getMinX());
+        assertEquals(expected.getMinY(), actual.getMinY());
+        assertEquals(expected.getWidth(), actual.getWidth());
+        assertEquals(expected.getHeight(), actual.getHeight());
+        assertEquals(expected.getNumBands(), actual.getNumBands());
+        assertEquals(expected.getSampleModel().getClass(), actual.getSampleModel().getClass());
+        assertEquals(expected.getDataBuffer().getDataType(), actual.getDataBuffer()
+                .getDataType());
+        for (int y = expected.getMinY(); y < expected.getMinY() + expected.getHeight(); y++) {
+            for (int x = expected.getMinX(); x < expected.getMinX() + expected.getWidth(); x++) {
+                for (int b = 0; b < expected.getNumBands(); b++) {
+                    assertEquals(expected.getSampleDouble(x, y, b),
+                            actual.getSampleDouble(x, y, b), 0d);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testRoundTrip() {
+        OffHeapTileCache cache = new OffHeapTileCache();
+        for (int dataType : DATA_TYPES) {
+            for (boolean banded : new boolean[] { true, false }) {
+                // large enough to span several blocks
+                WritableRaster raster = buildRaster(dataType, banded, 100, 90, new Point(100, 90));
+                cache.add(OWNER, 1, 1, raster);
+                cache.clearHeapTiles();
+                assertRasterEquals(raster, cache.getTile(OWNER, 1, 1));
+
+                // child rasters keep their own bounds
+                Raster child = raster.createChild(110, 95, 30, 20, 110, 95, null);
+                cache.add(OWNER, 2, 2, child);
+                cache.clearHeapTiles();
+                assertRasterEquals(child, cache.getTile(OWNER, 2, 2));
+            }
+        }
+        assertEquals(2, cache.getCacheTileCount());
+        assertNull(cache.getTile(OWNER, 0, 0));
+
+        cache.removeTiles(OWNER);
+        assertEquals(0, cache.getCacheTileCount());
+        assertEquals(0, cache.getCacheMemoryUsed());
+    }
+
+    @Test
+    public void testMemoryCapacity() {
+        // two tiles of three blocks each
+        OffHeapTileCache cache = new OffHeapTileCache(6 * OffHeapTileCache.BLOCK_SIZE);
+        WritableRaster raster = buildRaster(DataBuffer.TYPE_BYTE, true, 128, 128, new Point(0,
+                0));
+        cache.add(OWNER, 0, 0, raster);
+        cache.add(OWNER, 1, 0, raster);
+        assertEquals(6 * OffHeapTileCache.BLOCK_SIZE, cache.getCacheMemoryUsed());
+
+        // the least recently used tile gets evicted
+        assertNotNull(cache.getTile(OWNER, 0, 0));
+        cache.add(OWNER, 2, 0, raster);
+        assertNotNull(cache.getTile(OWNER, 0, 0));
+        assertNull(cache.getTile(OWNER, 1, 0));
+        assertNotNull(cache.getTile(OWNER, 2, 0));
+        assertEquals(6 * OffHeapTileCache.BLOCK_SIZE, cache.getCacheMemoryUsed());
+
+        // memory control goes down to the threshold
+        cache.setMemoryThreshold(0.5f);
+        cache.memoryControl();
+        assertEquals(1, cache.getCacheTileCount());
+        assertNotNull(cache.getTile(OWNER, 2, 0));
+
+        // tiles larger than the whole capacity are not cached
+        cache.add(OWNER, 3, 0, buildRaster(DataBuffer.TYPE_INT, true, 128, 128, new Point(0, 0)));
+        assertNull(cache.getTile(OWNER, 3, 0));
+
+        cache.flush();
+        assertEquals(0, cache.getCacheMemoryUsed());
+    }
+
+    @Test
+    public void testHeapTileReused() {
+        OffHeapTileCache cache = new OffHeapTileCache();
+        WritableRaster raster = buildRaster(DataBuffer.TYPE_SHORT, true, 64, 64, new Point(0, 0));
+        cache.add(OWNER, 0, 0, raster);
+
+        // the added raster is handed out as is while it's in use
+        assertSame(raster, cache.getTile(OWNER, 0, 0));
+
+        // and so is a copy
+        cache.clearHeapTiles();
+        Raster tile = cache.getTile(OWNER, 0, 0);
+        assertRasterEquals(raster, tile);
+        assertSame(tile, cache.getTile(OWNER, 0, 0));
+        assertSame(tile, cache.getTiles(OWNER)[0]);
+    }
+
+    @Test
+    public void testMemoryCapacityReduction() {
+        // two slabs, tiles of three blocks each, each tile with its own content
+        final long slab = (long) OffHeapTileCache.BLOCKS_PER_SLAB * OffHeapTileCache.BLOCK_SIZE;
+        OffHeapTileCache cache = new OffHeapTileCache(2 * slab);
+        List<WritableRaster> rasters = new ArrayList<WritableRaster>();
+        for (int i = 0; i < 400; i++) {
+            WritableRaster raster = buildRaster(DataBuffer.TYPE_BYTE, true, 128, 128, new Point(
+                    0, 0));
+            raster.setSample(0, 0, 0, i % 100);
+            rasters.add(raster);
+            cache.add(OWNER, i, 0, raster);
+        }
+        assertEquals(2 * slab, cache.getAllocatedMemory());
+
+        // the remaining tiles fit a single slab, and are moved there
+        for (int i = 1; i < 400; i += 2) {
+            cache.remove(OWNER, i, 0);
+        }
+        cache.setMemoryCapacity(slab);
+        assertEquals(slab, cache.getAllocatedMemory());
+        assertEquals(200, cache.getCacheTileCount());
+        cache.clearHeapTiles();
+        for (int i = 0; i < 400; i += 2) {
+            assertRasterEquals(rasters.get(i), cache.getTile(OWNER, i, 0));
+        }
+
+        // free blocks beyond the new budget are not reused either
+        for (int i = 400; i < 800; i++) {
+            cache.add(OWNER, i, 0, rasters.get(i - 400));
+        }
+        assertEquals(slab, cache.getAllocatedMemory());
+        assertTrue(cache.getCacheMemoryUsed() <= slab);
+
+        // tiles get evicted when moving them is not possible
+        cache.setMemoryCapacity(3 * OffHeapTileCache.BLOCK_SIZE);
+        assertTrue(cache.getAllocatedMemory() <= 3 * OffHeapTileCache.BLOCK_SIZE);
+        assertTrue(cache.getCacheTileCount() <= 1);
+    }
+
+    @Test
+    public void testTileComparator() {
+        OffHeapTileCache cache = new OffHeapTileCache(9 * OffHeapTileCache.BLOCK_SIZE);
+        WritableRaster raster = buildRaster(DataBuffer.TYPE_BYTE, true, 128, 128, new Point(0, 0));
+        cache.add(OWNER, 0, 0, raster, 2);
+        cache.add(OWNER, 1, 0, raster, 0);
+        cache.add(OWNER, 2, 0, raster, 1);
+        cache.setTileComparator(new Comparator<CachedTile>() {
+
+            public int compare(CachedTile t1, CachedTile t2) {
+                return (Integer) t1.getTileCacheMetric() - (Integer) t2.getTileCacheMetric();
+            }
+        });
+
+        // the tiles with the lowest metric go first, regardless of their usage
+        cache.setMemoryThreshold(0.4f);
+        cache.memoryControl();
+        assertEquals(1, cache.getCacheTileCount());
+        assertNotNull(cache.getTile(OWNER, 0, 0));
+    }
+
+    @Test
+    public void testOperation() {
+        OffHeapTileCache cache = new OffHeapTileCache();
+        TiledImage source = new TiledImage(0, 0, 300, 200, 0, 0, buildRaster(
+                DataBuffer.TYPE_FLOAT, true, 64, 64, new Point(0, 0)).getSampleModel(), null);
+        for (int y = 0; y < 200; y++) {
+            for (int x = 0; x < 300; x++) {
+                source.setSample(x, y, 0, x * y);
+            }
+        }
+
+        ParameterBlock pb = new ParameterBlock();
+        pb.addSource(source);
+        pb.add(new double[] { 10 });
+        RenderingHints hints = new RenderingHints(JAI.KEY_TILE_CACHE, cache);
+        RenderedOp op = JAI.create("AddConst", pb, hints);
+        Raster computed = op.getData();
+        assertEquals(op.getNumXTiles() * op.getNumYTiles(), cache.getCacheTileCount());
+
+        // the second time tiles come from the cache, read back from the off-heap memory
+        cache.clearHeapTiles();
+        Raster cached = op.getData();
+        assertRasterEquals(computed, cached);
+        assertEquals(10f, cached.getSampleFloat(0, 0, 0), 0f);
+        assertEquals(299 * 199 + 10f, cached.getSampleFloat(299, 199, 0), 0f);
+
+        cache.removeTiles(op.getRendering());
+        assertEquals(0, cache.getCacheTileCount());
+        assertEquals(0, cache.getCacheMemoryUsed());
+        op.dispose();
+    }
+}
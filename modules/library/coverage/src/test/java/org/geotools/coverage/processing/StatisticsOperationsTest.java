@@ -16,10 +16,20 @@
  */
 package org.geotools.coverage.processing;
 
+import java.awt.RenderingHints;
 import java.awt.geom.AffineTransform;
 import java.awt.image.DataBuffer;
+import java.awt.image.RenderedImage;
 import java.awt.image.WritableRaster;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import javax.media.jai.ImageLayout;
+import javax.media.jai.JAI;
 import javax.media.jai.RasterFactory;
+import javax.media.jai.operator.AddConstDescriptor;
+import javax.media.jai.operator.ConstantDescriptor;
 
 import org.opengis.geometry.Envelope;
 import org.opengis.parameter.ParameterValueGroup;
@@ -30,6 +40,7 @@ import org.geotools.coverage.grid.GridCoverage2D;
 import org.geotools.coverage.grid.GridCoverageFactory;
 import org.geotools.coverage.processing.operation.Extrema;
 import org.geotools.coverage.processing.operation.Histogram;
+import org.geotools.factory.Hints;
 import org.geotools.geometry.Envelope2D;
 import org.geotools.referencing.crs.DefaultGeographicCRS;
 import org.geotools.referencing.operation.matrix.XAffineTransform;
@@ -141,6 +152,41 @@ public final class StatisticsOperationsTest extends GridProcessingTestBase {
         assertEquals(746.0, maximum[0], 0);
     }
 
+    /**
+     * Tests the "Extrema" operation computes a processing chain on the executor provided in the
+     * hints.
+     */
+    @Test
+    public void testExtremaOnExecutor() throws Exception {
+        final ImageLayout layout = new ImageLayout();
+        layout.setTileWidth(50);
+        layout.setTileHeight(50);
+        final RenderedImage image = AddConstDescriptor.create(
+                ConstantDescriptor.create(500f, 500f, new Float[] {1f}, null), new double[] {2},
+                new RenderingHints(JAI.KEY_IMAGE_LAYOUT, layout));
+        final GridCoverage2D source = CoverageFactoryFinder.getGridCoverageFactory(null).create(
+                "chain", image, new Envelope2D(DefaultGeographicCRS.WGS84, 0, 0, 30, 30));
+
+        final ThreadPoolExecutor executor = (ThreadPoolExecutor) Executors.newFixedThreadPool(2);
+        try {
+            final AbstractOperation op = (AbstractOperation) CoverageProcessor.getInstance()
+                    .getOperation("Extrema");
+            final ParameterValueGroup params = op.getParameters();
+            final AffineTransform gridToCRS = getAffineTransform(source);
+            params.parameter("Source").setValue(source);
+            params.parameter("xPeriod").setValue(XAffineTransform.getScaleX0(gridToCRS));
+            params.parameter("yPeriod").setValue(XAffineTransform.getScaleY0(gridToCRS));
+            final GridCoverage2D coverage = (GridCoverage2D) op.doOperation(params, new Hints(
+                    Hints.EXECUTOR_SERVICE, executor));
+            assertEquals(3.0, ((double[]) coverage.getProperty("minimum"))[0], 0);
+            assertEquals(3.0, ((double[]) coverage.getProperty("maximum"))[0], 0);
+        } finally {
+            executor.shutdown();
+            assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+        }
+        assertTrue(executor.getCompletedTaskCount() > 0);
+    }
+
     /**
      * Tests the "Histogram" operation with a raster of byte values.
      * This test compare the operation results with the expected ones
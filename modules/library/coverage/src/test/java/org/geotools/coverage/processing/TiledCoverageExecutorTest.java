@@ -0,0 +1,120 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2013, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.coverage.processing;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
+import java.awt.image.Raster;
+import java.awt.image.RenderedImage;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import javax.media.jai.ImageLayout;
+import javax.media.jai.JAI;
+import javax.media.jai.operator.AddConstDescriptor;
+import javax.media.jai.operator.ConstantDescriptor;
+
+import org.geotools.factory.Hints;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests the {@link TiledCoverageExecutor}.
+ *
+ * @source $URL$
+ */
+public final class TiledCoverageExecutorTest {
+
+    private ExecutorService executor;
+
+    private RenderedImage image;
+
+    @Before
+    public void setUp() {
+        executor = Executors.newFixedThreadPool(4);
+        final ImageLayout layout = new ImageLayout();
+        layout.setTileWidth(64).setTileHeight(64);
+        final RenderingHints hints = new RenderingHints(JAI.KEY_IMAGE_LAYOUT, layout);
+        final RenderedImage constant = ConstantDescriptor.create(256f, 192f, new Double[] { 10d }, hints);
+        image = AddConstDescriptor.create(constant, new double[] { 5d }, hints);
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdown();
+    }
+
+    private List<Point> execute(final TiledCoverageExecutor tiledExecutor, final Rectangle region,
+            final List<TiledCoverageExecutor.Report> reports) {
+        final List<Point> tiles = new ArrayList<Point>();
+        reports.add(tiledExecutor.execute(image, region, new TiledCoverageExecutor.TileVisitor() {
+
+            public void visit(int tileX, int tileY, Raster tile) {
+                assertEquals(15d, tile.getSampleDouble(tile.getMinX(), tile.getMinY(), 0), 0d);
+                tiles.add(new Point(tileX, tileY));
+            }
+        }));
+        return tiles;
+    }
+
+    @Test
+    public void testReadOrder() {
+        final List<TiledCoverageExecutor.Report> reports = new ArrayList<TiledCoverageExecutor.Report>();
+        final TiledCoverageExecutor tiledExecutor = new TiledCoverageExecutor(new Hints(Hints.EXECUTOR_SERVICE, executor));
+        tiledExecutor.setPrefetch(3);
+        final List<Point> tiles = execute(tiledExecutor, null, reports);
+        assertEquals(12, tiles.size());
+        assertEquals(12, reports.get(0).getTileCount());
+        for (int i = 0; i < tiles.size(); i++) {
+            assertEquals(new Point(i % 4, i / 4), tiles.get(i));
+        }
+
+        // a sub region, with a budget allowing a single tile at a time
+        tiledExecutor.setMemoryBudget(1);
+        final List<Point> subTiles = execute(tiledExecutor, new Rectangle(70, 10, 60, 100), reports);
+        assertEquals(4, subTiles.size());
+        assertEquals(new Point(1, 0), subTiles.get(0));
+        assertEquals(new Point(2, 1), subTiles.get(3));
+
+        // outside of the image
+        assertEquals(0, execute(tiledExecutor, new Rectangle(1000, 1000, 10, 10), reports).size());
+    }
+
+    @Test
+    public void testProfiling() {
+        final List<TiledCoverageExecutor.Report> reports = new ArrayList<TiledCoverageExecutor.Report>();
+        final TiledCoverageExecutor tiledExecutor = new TiledCoverageExecutor(executor);
+        execute(tiledExecutor, null, reports);
+        assertEquals(1, reports.get(0).getOperationTimes().size());
+        assertTrue(reports.get(0).getOperationTimes().containsKey("AddConst"));
+
+        tiledExecutor.setProfiling(true);
+        execute(tiledExecutor, null, reports);
+        assertTrue(reports.get(1).getOperationTimes().containsKey("AddConst"));
+        assertTrue(reports.get(1).getOperationTimes().containsKey("Constant"));
+
+        // sequential execution gives the same tiles
+        assertEquals(12, execute(new TiledCoverageExecutor((Hints) null), null, reports).size());
+    }
+}
@@ -43,6 +43,11 @@ public final class XMath {
         // Last time we tried, it was not accurate anymore starting at 1E+23.
     };
 
+    /**
+     * The largest value below which all integers are exactly represented as doubles, 2<sup>53</sup>.
+     */
+    private static final double MAX_EXACT_INTEGER = 9007199254740992d;
+
     /**
      * The sequence of prime numbers computed so far. Will be expanded as needed.
      * We limit ourself to 16 bits numbers because they are suffisient for computing
@@ -287,6 +292,37 @@ public final class XMath {
         return Math.max(upper - asText.indexOf('.') - power, 0);
     }
 
+    /**
+     * Returns the smallest number of fraction digits <var>d</var> such that the value rounded
+     * to <var>d</var> digits reads back as the same double, that is such that
+     * {@code Math.round(|value| * 10^d) / 10^d == |value|}. As long as the scaled value is below
+     * 2<sup>53</sup> both operands of the division are exact, so the division is correctly
+     * rounded and gives the same double as parsing the decimal string: the round trip is
+     * checked without going through strings nor allocating. The digits themselves are then
+     * <code>Math.round(|value| * {@linkplain #pow10(int) pow10}(d))</code>.
+     *
+     * @param  value The value for which to find the fraction digits.
+     * @param  maxDigits The maximum amount of fraction digits to try, the powers of ten
+     *         used being exact up to 22 digits only.
+     * @return The amount of fraction digits, or -1 if there is none up to {@code maxDigits}
+     *         or the value needs more significant digits than the exact arithmetic allows
+     *         (including for NaN and infinities).
+     */
+    public static int shortestDecimalFractionDigits(final double value, int maxDigits) {
+        final double magnitude = Math.abs(value);
+        maxDigits = Math.min(maxDigits, POW10.length - 1);
+        for (int d=0; d<=maxDigits; d++) {
+            final double scaled = magnitude * POW10[d];
+            if (!(scaled < MAX_EXACT_INTEGER)) {
+                return -1;
+            }
+            if (Math.round(scaled) / POW10[d] == magnitude) {
+                return d;
+            }
+        }
+        return -1;
+    }
+
     /**
      * Returns a {@link Float#NaN NaN} number for the specified index. Valid NaN numbers have
      * bit fields ranging from {@code 0x7f800001} through {@code 0x7fffffff} or {@code 0xff800001}
@@ -60,6 +60,30 @@ public final class XMathTest {
         assertEquals(203, countDecimalFractionDigits(5.125E-200));
     }
 
+    /**
+     * Tests the {@link XMath#shortestDecimalFractionDigits} method.
+     */
+    @Test
+    public void testShortestDecimalFractionDigits() {
+        assertEquals(0,  shortestDecimalFractionDigits(0, 22));
+        assertEquals(0,  shortestDecimalFractionDigits(-65.0, 22));
+        assertEquals(1,  shortestDecimalFractionDigits(-65.5, 22));
+        assertEquals(1,  shortestDecimalFractionDigits(0.1, 22));
+        assertEquals(16, shortestDecimalFractionDigits(1/3d, 22));
+        assertEquals(-1, shortestDecimalFractionDigits(1/3d, 15));
+        assertEquals(-1, shortestDecimalFractionDigits(0.30000000000000004, 22));
+        assertEquals(20, shortestDecimalFractionDigits(5E-20, 100));
+        assertEquals(-1, shortestDecimalFractionDigits(5E-30, 100));
+        assertEquals(-1, shortestDecimalFractionDigits(1E+16, 22));
+        assertEquals(-1, shortestDecimalFractionDigits(Double.NaN, 22));
+        assertEquals(-1, shortestDecimalFractionDigits(Double.POSITIVE_INFINITY, 22));
+        for (double value : new double[] {65.123456, 1/3d, Math.PI, -123456.789, 2.5E-7}) {
+            final int digits = shortestDecimalFractionDigits(value, 22);
+            assertEquals(countDecimalFractionDigits(value), digits);
+            assertEquals(Math.abs(value), Math.round(Math.abs(value) * pow10(digits)) / pow10(digits), 0);
+        }
+    }
+
     /**
      * Tests the {@link XMath#fixRoundingError} method.
      */
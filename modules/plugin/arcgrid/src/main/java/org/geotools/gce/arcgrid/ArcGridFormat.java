@@ -68,6 +68,18 @@ public final class ArcGridFormat extends AbstractGridFormat implements Format {
 			false);
 	
 
+	/**
+	 * Indicates whether uncompressed grid files should be read by memory mapping them and
+	 * decoding the cells lazily, tile by tile, instead of parsing them all with the ImageIO
+	 * reader. The file gets indexed on the first read.
+	 */
+	public static final DefaultParameterDescriptor<Boolean> MEMORY_MAPPED = DefaultParameterDescriptor.create(
+			"MEMORY_MAPPED",
+			"Indicates whether the grid file has to be memory mapped and decoded lazily, tile by tile",
+			Boolean.class,
+			Boolean.FALSE,
+			false);
+
 	/** Caching the {@link AsciiGridsImageReaderSpi} factory. */
 	private final AsciiGridsImageReaderSpi spi = new AsciiGridsImageReaderSpi();
 
@@ -103,7 +115,7 @@ public final class ArcGridFormat extends AbstractGridFormat implements Format {
 		readParameters = new ParameterGroup(
 				new DefaultParameterDescriptorGroup(
 						mInfo,
-						new GeneralParameterDescriptor[] { READ_GRIDGEOMETRY2D }));
+						new GeneralParameterDescriptor[] { READ_GRIDGEOMETRY2D, MEMORY_MAPPED }));
 	}
 
 	/**
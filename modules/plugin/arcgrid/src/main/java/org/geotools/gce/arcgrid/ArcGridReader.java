@@ -23,6 +23,7 @@ import it.geosolutions.imageio.plugins.arcgrid.spi.AsciiGridsImageReaderSpi;
 import java.awt.Color;
 import java.awt.Rectangle;
 import java.awt.image.ColorModel;
+import java.awt.image.RenderedImage;
 import java.awt.image.SampleModel;
 import java.awt.image.renderable.ParameterBlock;
 import java.io.File;
@@ -49,7 +50,6 @@ import javax.imageio.stream.ImageInputStream;
 import javax.imageio.stream.MemoryCacheImageInputStream;
 import javax.measure.unit.Unit;
 import javax.media.jai.JAI;
-import javax.media.jai.RenderedOp;
 
 import org.geotools.coverage.Category;
 import org.geotools.coverage.GridSampleDimension;
@@ -107,6 +107,9 @@ public final class ArcGridReader extends AbstractGridCoverage2DReader implements
 	/** No data value for this dataset. */
 	private double inNoData = Double.NaN;
 
+	/** Index of the grid file cells, built on the first memory mapped read. */
+	private AsciiGridIndex index;
+
     /**
 	 * Creates a new instance of an ArcGridReader basing the decision on whether
 	 * the file is compressed or not. I assume nothing about file extension.
@@ -378,6 +381,7 @@ public final class ArcGridReader extends AbstractGridCoverage2DReader implements
 		GeneralEnvelope readEnvelope = null;
 		Rectangle requestedDim = null;
 		OverviewPolicy overviewPolicy=null;
+		boolean memoryMapped = ArcGridFormat.MEMORY_MAPPED.getDefaultValue();
 		if (params != null) {
 			final int length = params.length;
 			for (int i = 0; i < length; i++) {
@@ -391,10 +395,14 @@ public final class ArcGridReader extends AbstractGridCoverage2DReader implements
 				}
 				if (name.equals(AbstractGridFormat.OVERVIEW_POLICY.getName().toString())) {
 					overviewPolicy=(OverviewPolicy) param.getValue();
+					continue;
+				}
+				if (name.equals(ArcGridFormat.MEMORY_MAPPED.getName().toString())) {
+					memoryMapped = Boolean.TRUE.equals(param.getValue());
 				}
 			}
 		}
-		return createCoverage(readEnvelope, requestedDim, overviewPolicy);
+		return createCoverage(readEnvelope, requestedDim, overviewPolicy, memoryMapped);
 	}
 
 	/**
@@ -402,6 +410,7 @@ public final class ArcGridReader extends AbstractGridCoverage2DReader implements
 	 * 
 	 * @param requestedDim
 	 * @param readEnvelope
+	 * @param memoryMapped whether to decode the grid file lazily, see {@link ArcGridFormat#MEMORY_MAPPED}
 	 * 
 	 * 
 	 * @return a GridCoverage
@@ -409,7 +418,7 @@ public final class ArcGridReader extends AbstractGridCoverage2DReader implements
 	 * @throws java.io.IOException
 	 */
 	private GridCoverage2D createCoverage(GeneralEnvelope requestedEnvelope,
-			Rectangle requestedDim, OverviewPolicy overviewPolicy) throws IOException {
+			Rectangle requestedDim, OverviewPolicy overviewPolicy, boolean memoryMapped) throws IOException {
 
 		if (!closeMe) {
 
@@ -449,41 +458,47 @@ public final class ArcGridReader extends AbstractGridCoverage2DReader implements
 		// image and metadata
 		//
 		// //
-		final ParameterBlock pbjImageRead = new ParameterBlock();
-		// prepare input to handle possible parallelism between different
-		// readers
-		if (source instanceof File) {
-			if (!gzipped){
-			    if(inStreamSPI!=null)
-			        pbjImageRead.add(inStreamSPI.createInputStreamInstance(source, ImageIO.getUseCache(), ImageIO.getCacheDirectory()    ));
-			    else
-			        pbjImageRead.add(ImageIO.createImageInputStream(source));
-			}
-			else
-				pbjImageRead.add(ImageIO
-						.createImageInputStream(new GZIPInputStream(
-								new FileInputStream((File) source))));
-		} else if (source instanceof ImageInputStream
-				|| source instanceof InputStream)
-			pbjImageRead.add(inStream);
-		else if (source instanceof URL) {
-			if (gzipped)
-				ImageIO.createImageInputStream(new GZIPInputStream(
-						((URL) source).openConnection().getInputStream()));
-			else
-				pbjImageRead.add(ImageIO.createImageInputStream(((URL) source)
-						.openConnection().getInputStream()));
+		final RenderedImage asciiCoverage;
+		if (memoryMapped && source instanceof File && !gzipped) {
+			asciiCoverage = MappedAsciiGridImage.create(getIndex(), readP.getSourceRegion(),
+					readP.getSourceXSubsampling(), readP.getSourceYSubsampling(), hints);
+		} else {
+			final ParameterBlock pbjImageRead = new ParameterBlock();
+			// prepare input to handle possible parallelism between different
+			// readers
+			if (source instanceof File) {
+				if (!gzipped){
+				    if(inStreamSPI!=null)
+				        pbjImageRead.add(inStreamSPI.createInputStreamInstance(source, ImageIO.getUseCache(), ImageIO.getCacheDirectory()    ));
+				    else
+				        pbjImageRead.add(ImageIO.createImageInputStream(source));
+				}
+				else
+					pbjImageRead.add(ImageIO
+							.createImageInputStream(new GZIPInputStream(
+									new FileInputStream((File) source))));
+			} else if (source instanceof ImageInputStream
+					|| source instanceof InputStream)
+				pbjImageRead.add(inStream);
+			else if (source instanceof URL) {
+				if (gzipped)
+					ImageIO.createImageInputStream(new GZIPInputStream(
+							((URL) source).openConnection().getInputStream()));
+				else
+					pbjImageRead.add(ImageIO.createImageInputStream(((URL) source)
+							.openConnection().getInputStream()));
 
+			}
+			pbjImageRead.add(imageChoice);
+			pbjImageRead.add(Boolean.FALSE);
+			pbjImageRead.add(Boolean.FALSE);
+			pbjImageRead.add(Boolean.FALSE);
+			pbjImageRead.add(null);
+			pbjImageRead.add(null);
+			pbjImageRead.add(readP);
+			pbjImageRead.add(readerSPI.createReaderInstance());
+			asciiCoverage = JAI.create("ImageRead", pbjImageRead,hints);
 		}
-		pbjImageRead.add(imageChoice);
-		pbjImageRead.add(Boolean.FALSE);
-		pbjImageRead.add(Boolean.FALSE);
-		pbjImageRead.add(Boolean.FALSE);
-		pbjImageRead.add(null);
-		pbjImageRead.add(null);
-		pbjImageRead.add(readP);
-		pbjImageRead.add(readerSPI.createReaderInstance());
-		final RenderedOp asciiCoverage = JAI.create("ImageRead", pbjImageRead,hints);
 
 		// //
 		//
@@ -549,6 +564,17 @@ public final class ArcGridReader extends AbstractGridCoverage2DReader implements
 		}
 	}
 
+	/**
+	 * Returns the index of the grid file, building it on first call
+	 */
+	private synchronized AsciiGridIndex getIndex() throws IOException {
+		if (index == null) {
+			index = new AsciiGridIndex((File) source, originalGridRange.getSpan(0),
+					originalGridRange.getSpan(1));
+		}
+		return index;
+	}
+
 	/**
 	 * This method is responsible for building up an envelope according to the
 	 * definition of the crs. It assumes that X coordinate on the ascii grid
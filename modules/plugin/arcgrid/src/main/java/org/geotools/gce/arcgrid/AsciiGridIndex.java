@@ -0,0 +1,190 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2013, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.gce.arcgrid;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Locates the cells of an ASCII grid file, ESRI or GRASS, without parsing them. The file is
+ * scanned once, memory mapped a segment at a time, recording where each row starts, and where
+ * each group of {@link #STEP} cells starts inside a row, so that any area of the grid can be
+ * later decoded by parsing just the cells it contains and skipping at most {@link #STEP} cells
+ * per row.
+ * <p>
+ * Rows do not need to match the lines of the file, cells are counted as whitespace separated
+ * tokens.
+ *
+ * @source $URL$
+ */
+final class AsciiGridIndex {
+
+    /** The number of cells between two recorded positions in a row */
+    static final int STEP = 512;
+
+    /** The size of the file segments mapped while building the index */
+    static final long SEGMENT_SIZE = 64 * 1024 * 1024;
+
+    private final File file;
+
+    private final int width;
+
+    private final int height;
+
+    private final long length;
+
+    /** The position of the first cell of each row */
+    private final long[] rowOffsets;
+
+    /** The position of every {@link #STEP}-th cell of each row, relative to the row start */
+    private final int[] cellOffsets;
+
+    private final int stepsPerRow;
+
+    /**
+     * Builds the index of a grid file
+     *
+     * @param file the ASCII grid file, uncompressed
+     * @param width the number of columns declared in the header
+     * @param height the number of rows declared in the header
+     * @throws IOException if the file cannot be read or contains less cells than declared
+     */
+    AsciiGridIndex(File file, int width, int height) throws IOException {
+        this.file = file;
+        this.width = width;
+        this.height = height;
+        this.stepsPerRow = (width + STEP - 1) / STEP;
+        this.rowOffsets = new long[height];
+        this.cellOffsets = new int[height * stepsPerRow];
+
+        final RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            final FileChannel channel = raf.getChannel();
+            this.length = channel.size();
+            build(channel);
+        } finally {
+            raf.close();
+        }
+    }
+
+    private void build(FileChannel channel) throws IOException {
+        final long cells = (long) width * height;
+        long count = 0;
+        int row = 0;
+        int col = 0;
+        boolean inToken = false;
+        // header lines start with a letter, the data with a number, a sign, a dot, or a GRASS
+        // null value
+        boolean inHeader = true;
+        boolean lineStart = true;
+        for (long segment = 0; segment < length && count < cells; segment += SEGMENT_SIZE) {
+            final int size = (int) Math.min(SEGMENT_SIZE, length - segment);
+            final MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, segment,
+                    size);
+            for (int i = 0; i < size; i++) {
+                final byte b = buffer.get(i);
+                if (inHeader) {
+                    if (b == '\n' || b == '\r') {
+                        lineStart = true;
+                    } else if (lineStart && b > ' ') {
+                        if (Character.isLetter(b) && !isSpecialValueStart(buffer, i, size)) {
+                            lineStart = false;
+                        } else {
+                            inHeader = false;
+                        }
+                    }
+                    if (inHeader) {
+                        continue;
+                    }
+                }
+                if (b <= ' ') {
+                    inToken = false;
+                } else if (!inToken) {
+                    inToken = true;
+                    final long position = segment + i;
+                    if (col == 0) {
+                        rowOffsets[row] = position;
+                    }
+                    if (col % STEP == 0) {
+                        cellOffsets[row * stepsPerRow + col / STEP] = (int) (position - rowOffsets[row]);
+                    }
+                    count++;
+                    if (count == cells) {
+                        break;
+                    }
+                    if (++col == width) {
+                        col = 0;
+                        row++;
+                    }
+                }
+            }
+        }
+        if (count < cells) {
+            throw new IOException("The grid file " + file + " contains " + count
+                    + " cells, while its header declares " + cells);
+        }
+    }
+
+    /**
+     * Checks for data lines starting with a NaN, as some writers use it as the no data value
+     */
+    private static boolean isSpecialValueStart(MappedByteBuffer buffer, int i, int size) {
+        return i + 2 < size && (buffer.get(i) | 0x20) == 'n' && (buffer.get(i + 1) | 0x20) == 'a'
+                && (buffer.get(i + 2) | 0x20) == 'n'
+                && (i + 3 == size || buffer.get(i + 3) <= ' ');
+    }
+
+    File getFile() {
+        return file;
+    }
+
+    int getWidth() {
+        return width;
+    }
+
+    int getHeight() {
+        return height;
+    }
+
+    long getLength() {
+        return length;
+    }
+
+    /**
+     * @return the position of the first cell of the row
+     */
+    long getRowOffset(int row) {
+        return rowOffsets[row];
+    }
+
+    /**
+     * @return the position where the row ends, that is, where the next one starts
+     */
+    long getRowEnd(int row) {
+        return row + 1 < height ? rowOffsets[row + 1] : length;
+    }
+
+    /**
+     * @return the position of the cell at <code>col - col % STEP</code> in the row
+     */
+    long getCellOffset(int row, int col) {
+        return rowOffsets[row] + cellOffsets[row * stepsPerRow + col / STEP];
+    }
+}
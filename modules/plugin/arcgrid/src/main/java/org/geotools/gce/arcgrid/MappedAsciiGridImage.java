@@ -0,0 +1,337 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2013, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.gce.arcgrid;
+
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferFloat;
+import java.awt.image.Raster;
+import java.awt.image.SampleModel;
+import java.awt.image.WritableRaster;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Map;
+
+import javax.media.jai.ImageLayout;
+import javax.media.jai.PlanarImage;
+import javax.media.jai.RasterFactory;
+import javax.media.jai.SourcelessOpImage;
+
+import org.geotools.resources.NIOUtilities;
+
+/**
+ * A float image whose tiles are decoded on demand out of an ASCII grid file, memory mapping and
+ * parsing only the portion of the file holding the tile cells, as located by an
+ * {@link AsciiGridIndex}. Tiles are cached by the JAI tile cache like any other operation
+ * output, so large grids can be served without loading them in memory.
+ * <p>
+ * A source region and subsampling factors can be provided, with the same meaning they have in
+ * an {@link javax.imageio.ImageReadParam}.
+ *
+ * @source $URL$
+ */
+final class MappedAsciiGridImage extends SourcelessOpImage {
+
+    static final int DEFAULT_TILE_SIZE = 512;
+
+    /** The largest portion of the file mapped at once */
+    static final long MAX_MAPPING = 256 * 1024 * 1024;
+
+    /** Exactly representable powers of ten */
+    private static final double[] POWERS_OF_TEN = new double[23];
+    static {
+        POWERS_OF_TEN[0] = 1;
+        for (int i = 1; i < POWERS_OF_TEN.length; i++) {
+            POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10;
+        }
+    }
+
+    private final AsciiGridIndex index;
+
+    private final Rectangle region;
+
+    private final int xSubsampling;
+
+    private final int ySubsampling;
+
+    /**
+     * Creates a new image
+     *
+     * @param index the index of the grid file
+     * @param region the source region to read, or <code>null</code> for the whole grid
+     * @param xSubsampling the horizontal subsampling factor
+     * @param ySubsampling the vertical subsampling factor
+     * @param configuration the JAI configuration, e.g. the rendering hints of the reader
+     */
+    static MappedAsciiGridImage create(AsciiGridIndex index, Rectangle region,
+            int xSubsampling, int ySubsampling, Map<?, ?> configuration) {
+        if (xSubsampling < 1 || ySubsampling < 1) {
+            throw new IllegalArgumentException("Invalid subsampling factors: " + xSubsampling
+                    + ", " + ySubsampling);
+        }
+        final Rectangle bounds = new Rectangle(0, 0, index.getWidth(), index.getHeight());
+        Rectangle actual = bounds;
+        if (region != null) {
+            actual = region.intersection(bounds);
+            if (actual.isEmpty()) {
+                throw new IllegalArgumentException("The source region " + region
+                        + " does not intersect the grid " + bounds);
+            }
+        }
+        final SampleModel sm = sampleModel(actual, xSubsampling, ySubsampling);
+        final ImageLayout layout = new ImageLayout();
+        layout.setTileGridXOffset(0);
+        layout.setTileGridYOffset(0);
+        layout.setTileWidth(sm.getWidth());
+        layout.setTileHeight(sm.getHeight());
+        layout.setSampleModel(sm);
+        layout.setColorModel(PlanarImage.createColorModel(sm));
+        return new MappedAsciiGridImage(index, actual, xSubsampling, ySubsampling, layout,
+                configuration);
+    }
+
+    private MappedAsciiGridImage(AsciiGridIndex index, Rectangle region, int xSubsampling,
+            int ySubsampling, ImageLayout layout, Map<?, ?> configuration) {
+        super(layout, configuration, layout.getSampleModel(null), 0, 0, size(region.width,
+                xSubsampling), size(region.height, ySubsampling));
+        this.index = index;
+        this.region = region;
+        this.xSubsampling = xSubsampling;
+        this.ySubsampling = ySubsampling;
+    }
+
+    private static int size(int sourceSize, int subsampling) {
+        return (sourceSize + subsampling - 1) / subsampling;
+    }
+
+    private static SampleModel sampleModel(Rectangle region, int xSubsampling, int ySubsampling) {
+        final int tileWidth = Math.min(DEFAULT_TILE_SIZE, size(region.width, xSubsampling));
+        final int tileHeight = Math.min(DEFAULT_TILE_SIZE, size(region.height, ySubsampling));
+        return RasterFactory.createBandedSampleModel(DataBuffer.TYPE_FLOAT, tileWidth,
+                tileHeight, 1);
+    }
+
+    @Override
+    public Raster computeTile(int tileX, int tileY) {
+        final Rectangle tile = getTileRect(tileX, tileY).intersection(getBounds());
+        final WritableRaster raster = RasterFactory.createWritableRaster(getSampleModel(),
+                new Point(tileXToX(tileX), tileYToY(tileY)));
+        try {
+            decode(tile, raster);
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to read the grid file " + index.getFile(), e);
+        }
+        return raster;
+    }
+
+    /**
+     * Parses the cells of the tile, mapping the portion of the file holding them. The mappings
+     * are released as soon as the tile is parsed, rather than left to the garbage collector, so
+     * that decoding many tiles does not pile up mapped memory and file handles.
+     */
+    private void decode(Rectangle tile, WritableRaster raster) throws IOException {
+        final float[] data = ((DataBufferFloat) raster.getDataBuffer()).getData();
+        final int stride = raster.getWidth();
+        final int firstCol = region.x + tile.x * xSubsampling;
+        final int lastCol = region.x + (tile.x + tile.width - 1) * xSubsampling;
+        final int firstRow = region.y + tile.y * ySubsampling;
+        final int lastRow = region.y + (tile.y + tile.height - 1) * ySubsampling;
+
+        final RandomAccessFile raf = new RandomAccessFile(index.getFile(), "r");
+        MappedByteBuffer buffer = null;
+        try {
+            final FileChannel channel = raf.getChannel();
+            long mappingStart = 0;
+            long mappingEnd = 0;
+            final Scanner scanner = new Scanner();
+            for (int y = 0; y < tile.height; y++) {
+                final int row = firstRow + y * ySubsampling;
+                final long start = index.getCellOffset(row, firstCol);
+                final long end = lastCol + AsciiGridIndex.STEP < index.getWidth() ? index
+                        .getCellOffset(row, lastCol + AsciiGridIndex.STEP) : index.getRowEnd(row);
+                if (buffer == null || start < mappingStart || end > mappingEnd) {
+                    // map as many of the tile rows as possible at once
+                    mappingStart = start;
+                    mappingEnd = end;
+                    for (int r = row + ySubsampling; r <= lastRow; r += ySubsampling) {
+                        final long rowEnd = index.getRowEnd(r);
+                        if (rowEnd - mappingStart > MAX_MAPPING) {
+                            break;
+                        }
+                        mappingEnd = rowEnd;
+                    }
+                    NIOUtilities.clean(buffer);
+                    // not cleaned again if the new mapping fails
+                    buffer = null;
+                    buffer = channel.map(FileChannel.MapMode.READ_ONLY, mappingStart,
+                            mappingEnd - mappingStart);
+                }
+                scanner.reset(buffer, (int) (start - mappingStart), (int) (end - mappingStart));
+
+                // skip to the first cell, then parse every xSubsampling-th one
+                int col = firstCol - firstCol % AsciiGridIndex.STEP;
+                for (; col < firstCol; col++) {
+                    scanner.skip();
+                }
+                int offset = y * stride;
+                for (int x = 0; x < tile.width; x++) {
+                    data[offset++] = (float) scanner.parse();
+                    if (x < tile.width - 1) {
+                        for (int i = 1; i < xSubsampling; i++) {
+                            scanner.skip();
+                        }
+                    }
+                }
+            }
+        } finally {
+            NIOUtilities.clean(buffer);
+            raf.close();
+        }
+    }
+
+    /**
+     * Whitespace separated numbers scanner, parsing the common decimal notations without
+     * allocating objects
+     */
+    static final class Scanner {
+
+        private MappedByteBuffer buffer;
+
+        private int position;
+
+        private int limit;
+
+        void reset(MappedByteBuffer buffer, int position, int limit) {
+            this.buffer = buffer;
+            this.position = position;
+            this.limit = limit;
+        }
+
+        private void skipWhitespace() throws IOException {
+            while (position < limit && buffer.get(position) <= ' ') {
+                position++;
+            }
+            if (position == limit) {
+                throw new IOException("Unexpected end of grid data");
+            }
+        }
+
+        void skip() throws IOException {
+            skipWhitespace();
+            while (position < limit && buffer.get(position) > ' ') {
+                position++;
+            }
+        }
+
+        double parse() throws IOException {
+            skipWhitespace();
+            final int start = position;
+            byte b = buffer.get(position);
+            boolean negative = false;
+            if (b == '-' || b == '+') {
+                negative = b == '-';
+                position++;
+            }
+            long mantissa = 0;
+            int significant = 0;
+            int exponent = 0;
+            boolean digits = false;
+            boolean dot = false;
+            while (position < limit) {
+                b = buffer.get(position);
+                if (b >= '0' && b <= '9') {
+                    digits = true;
+                    if (mantissa != 0 || b != '0') {
+                        mantissa = mantissa * 10 + (b - '0');
+                        significant++;
+                    }
+                    if (dot) {
+                        exponent--;
+                    }
+                } else if (b == '.' && !dot) {
+                    dot = true;
+                } else {
+                    break;
+                }
+                position++;
+            }
+            if (digits && position < limit && (b == 'e' || b == 'E')) {
+                position++;
+                boolean negativeExponent = false;
+                if (position < limit
+                        && (buffer.get(position) == '-' || buffer.get(position) == '+')) {
+                    negativeExponent = buffer.get(position) == '-';
+                    position++;
+                }
+                int e = 0;
+                boolean exponentDigits = false;
+                while (position < limit && (b = buffer.get(position)) >= '0' && b <= '9') {
+                    e = Math.min(e * 10 + (b - '0'), 10000);
+                    exponentDigits = true;
+                    position++;
+                }
+                if (!exponentDigits) {
+                    return parseToken(start);
+                }
+                exponent += negativeExponent ? -e : e;
+            }
+            if (!digits || (position < limit && buffer.get(position) > ' ')) {
+                return parseToken(start);
+            }
+
+            // exact when both the mantissa and the power of ten are exactly representable
+            final double value;
+            if (mantissa == 0) {
+                value = 0;
+            } else if (significant > 15 || Math.abs(exponent) >= POWERS_OF_TEN.length) {
+                return parseToken(start);
+            } else if (exponent >= 0) {
+                value = mantissa * POWERS_OF_TEN[exponent];
+            } else {
+                value = mantissa / POWERS_OF_TEN[-exponent];
+            }
+            return negative ? -value : value;
+        }
+
+        /**
+         * Parses the token with the JDK, covering the rare cases the fast path does not handle
+         */
+        private double parseToken(int start) throws IOException {
+            position = start;
+            while (position < limit && buffer.get(position) > ' ') {
+                position++;
+            }
+            final byte[] bytes = new byte[position - start];
+            for (int i = 0; i < bytes.length; i++) {
+                bytes[i] = buffer.get(start + i);
+            }
+            final String token = new String(bytes, "ISO-8859-1");
+            if ("*".equals(token) || "nan".equalsIgnoreCase(token)) {
+                // GRASS null value
+                return Double.NaN;
+            }
+            try {
+                return Double.parseDouble(token);
+            } catch (NumberFormatException e) {
+                throw new IOException("Invalid grid value: " + token);
+            }
+        }
+    }
+}
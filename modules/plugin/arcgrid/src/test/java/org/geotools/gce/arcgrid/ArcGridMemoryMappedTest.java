@@ -0,0 +1,101 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2013, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.gce.arcgrid;
+
+import java.awt.Rectangle;
+import java.awt.image.Raster;
+import java.awt.image.RenderedImage;
+import java.io.File;
+
+import org.geotools.coverage.grid.GridCoverage2D;
+import org.geotools.coverage.grid.GridEnvelope2D;
+import org.geotools.coverage.grid.GridGeometry2D;
+import org.geotools.coverage.grid.io.AbstractGridFormat;
+import org.geotools.factory.Hints;
+import org.geotools.referencing.crs.DefaultGeographicCRS;
+import org.opengis.parameter.GeneralParameterValue;
+import org.opengis.parameter.ParameterValue;
+
+/**
+ * Checks the memory mapped read path of the {@link ArcGridReader} returns the same data as the
+ * ImageIO based one.
+ *
+ * @source $URL$
+ */
+public class ArcGridMemoryMappedTest extends ArcGridBaseTestCase {
+
+	public ArcGridMemoryMappedTest(String name) {
+		super(name);
+	}
+
+	@Override
+	public void runMe(File testFile) throws Exception {
+		if (testFile.getName().toLowerCase().endsWith("gz")) {
+			// compressed files are always read by ImageIO
+			return;
+		}
+		final ArcGridReader reader = new ArcGridReader(testFile, new Hints(
+				Hints.DEFAULT_COORDINATE_REFERENCE_SYSTEM, DefaultGeographicCRS.WGS84));
+		try {
+			// full read
+			GridCoverage2D expected = reader.read(null);
+			GridCoverage2D actual = reader.read(memoryMapped(null));
+			assertTrue(actual.getRenderedImage() instanceof MappedAsciiGridImage);
+			assertTrue(expected.getEnvelope2D().boundsEquals(actual.getEnvelope2D(), 0, 1, 1e-9));
+			assertSameSamples(expected.getRenderedImage(), actual.getRenderedImage());
+
+			// subsampled read
+			final GridEnvelope2D range = (GridEnvelope2D) reader.getOriginalGridRange();
+			final GridGeometry2D gg = new GridGeometry2D(new GridEnvelope2D(new Rectangle(0, 0,
+					Math.max(1, range.width / 3), Math.max(1, range.height / 2))),
+					reader.getOriginalEnvelope());
+			final ParameterValue<GridGeometry2D> ggParam = AbstractGridFormat.READ_GRIDGEOMETRY2D
+					.createValue();
+			ggParam.setValue(gg);
+			expected = reader.read(new GeneralParameterValue[] { ggParam });
+			actual = reader.read(memoryMapped(ggParam));
+			assertSameSamples(expected.getRenderedImage(), actual.getRenderedImage());
+		} finally {
+			reader.dispose();
+		}
+	}
+
+	private static GeneralParameterValue[] memoryMapped(ParameterValue<GridGeometry2D> gg) {
+		final ParameterValue<Boolean> memoryMapped = ArcGridFormat.MEMORY_MAPPED.createValue();
+		memoryMapped.setValue(Boolean.TRUE);
+		return gg == null ? new GeneralParameterValue[] { memoryMapped }
+				: new GeneralParameterValue[] { gg, memoryMapped };
+	}
+
+	private static void assertSameSamples(RenderedImage expected, RenderedImage actual) {
+		assertEquals(expected.getWidth(), actual.getWidth());
+		assertEquals(expected.getHeight(), actual.getHeight());
+		final Raster r1 = expected.getData();
+		final Raster r2 = actual.getData();
+		for (int y = 0; y < r1.getHeight(); y++) {
+			for (int x = 0; x < r1.getWidth(); x++) {
+				final double v1 = r1.getSampleDouble(r1.getMinX() + x, r1.getMinY() + y, 0);
+				final double v2 = r2.getSampleDouble(r2.getMinX() + x, r2.getMinY() + y, 0);
+				if (Double.isNaN(v1)) {
+					assertTrue(Double.isNaN(v2));
+				} else {
+					assertEquals(v1, v2, Math.abs(v1) * 1e-6);
+				}
+			}
+		}
+	}
+}
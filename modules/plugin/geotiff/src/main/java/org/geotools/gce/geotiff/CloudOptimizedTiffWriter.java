@@ -0,0 +1,736 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2013, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.gce.geotiff;
+
+import java.awt.Rectangle;
+import java.awt.color.ColorSpace;
+import java.awt.image.ColorModel;
+import java.awt.image.ComponentSampleModel;
+import java.awt.image.DataBuffer;
+import java.awt.image.IndexColorModel;
+import java.awt.image.Raster;
+import java.awt.image.RenderedImage;
+import java.awt.image.SampleModel;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.lang.reflect.Array;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.zip.Deflater;
+
+import javax.imageio.stream.ImageOutputStream;
+
+import org.opengis.util.ProgressListener;
+
+/**
+ * Writes a pyramid of images as a cloud optimized TIFF: a tiled TIFF with all the image file
+ * directories at the beginning of the file, followed by the tiles of the overviews, smallest
+ * first, and by the tiles of the full resolution image. Readers can thus get the whole structure
+ * of the file with a single read of its header, and then fetch just the tiles they need.
+ * <p>
+ * Tiles are compressed in parallel on the provided executor, if any, and written in order as
+ * they become available, keeping only a bounded number of them in memory. The directories are
+ * reserved upfront and filled in once the tile offsets are known, so the output stream must
+ * allow seeking back.
+ *
+ * @source $URL$
+ */
+final class CloudOptimizedTiffWriter {
+
+    static final int DEFAULT_TILE_SIZE = 256;
+
+    static final int TYPE_BYTE = 1;
+
+    static final int TYPE_ASCII = 2;
+
+    static final int TYPE_SHORT = 3;
+
+    static final int TYPE_LONG = 4;
+
+    static final int TYPE_RATIONAL = 5;
+
+    static final int TYPE_SBYTE = 6;
+
+    static final int TYPE_UNDEFINED = 7;
+
+    static final int TYPE_SSHORT = 8;
+
+    static final int TYPE_SLONG = 9;
+
+    static final int TYPE_SRATIONAL = 10;
+
+    static final int TYPE_FLOAT = 11;
+
+    static final int TYPE_DOUBLE = 12;
+
+    static final int TYPE_LONG8 = 16;
+
+    static final int TAG_COLOR_MAP = 320;
+
+    static final int TAG_EXTRA_SAMPLES = 338;
+
+    /**
+     * Tags describing the image layout, which are computed by this writer and never copied over
+     * from the metadata of the source image
+     */
+    static final Set<Integer> LAYOUT_TAGS = Collections.unmodifiableSet(new HashSet<Integer>(
+            Arrays.asList(254, 255, 256, 257, 258, 259, 262, 266, 273, 274, 277, 278, 279, 280,
+                    281, 282, 283, 284, 296, 301, 317, 318, 319, 320, 322, 323, 324, 325, 330,
+                    338, 339, 340, 341, 530, 532)));
+
+    /** How many tiles can be waiting to be written, per thread */
+    static final int TILES_PER_THREAD = 4;
+
+    /**
+     * A TIFF field, with its value already encoded in the file byte order
+     */
+    static final class Field implements Comparable<Field> {
+
+        final int tag;
+
+        final int type;
+
+        final long count;
+
+        byte[] value;
+
+        Field(int tag, int type, long count, byte[] value) {
+            this.tag = tag;
+            this.type = type;
+            this.count = count;
+            this.value = value;
+        }
+
+        public int compareTo(Field other) {
+            return tag - other.tag;
+        }
+    }
+
+    private final ImageOutputStream out;
+
+    private final ByteOrder order = ByteOrder.BIG_ENDIAN;
+
+    private int tileWidth = DEFAULT_TILE_SIZE;
+
+    private int tileHeight = DEFAULT_TILE_SIZE;
+
+    private int compression = TiffLayout.COMPRESSION_NONE;
+
+    private int deflateLevel = Deflater.DEFAULT_COMPRESSION;
+
+    private boolean forceBigTiff;
+
+    private ExecutorService executor;
+
+    private ProgressListener listener;
+
+    CloudOptimizedTiffWriter(ImageOutputStream out) {
+        this.out = out;
+    }
+
+    ByteOrder getByteOrder() {
+        return order;
+    }
+
+    void setTileSize(int tileWidth, int tileHeight) {
+        // the TIFF specification wants tile sizes multiple of 16
+        if (tileWidth <= 0 || tileHeight <= 0 || tileWidth % 16 != 0 || tileHeight % 16 != 0) {
+            throw new IllegalArgumentException("Tile sizes must be positive multiples of 16: "
+                    + tileWidth + "x" + tileHeight);
+        }
+        this.tileWidth = tileWidth;
+        this.tileHeight = tileHeight;
+    }
+
+    /**
+     * @param compression one of the compressions supported by the {@link TiffTileReader}
+     */
+    void setCompression(int compression) {
+        this.compression = compression;
+    }
+
+    void setDeflateLevel(int deflateLevel) {
+        this.deflateLevel = deflateLevel;
+    }
+
+    void setForceBigTiff(boolean forceBigTiff) {
+        this.forceBigTiff = forceBigTiff;
+    }
+
+    void setExecutor(ExecutorService executor) {
+        this.executor = executor;
+    }
+
+    void setProgressListener(ProgressListener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Writes the images
+     *
+     * @param levels the full resolution image, followed by its overviews, in decreasing
+     *        resolution order
+     * @param metadata additional fields for the full resolution directory, e.g., the GeoTIFF ones
+     * @throws IOException
+     */
+    void write(List<RenderedImage> levels, List<Field> metadata) throws IOException {
+        final RenderedImage image = levels.get(0);
+        final SampleModel sm = image.getSampleModel();
+        final int dataType = sm.getDataType();
+        final int bands = sm.getNumBands();
+        if (!(sm instanceof ComponentSampleModel) || dataType == DataBuffer.TYPE_UNDEFINED) {
+            throw new IOException("Cloud optimized TIFFs can only be written out of images "
+                    + "having a component sample model");
+        }
+        final int bytesPerSample = DataBuffer.getDataTypeSize(dataType) / 8;
+        final int tileBytes = tileWidth * tileHeight * bands * bytesPerSample;
+
+        // BigTIFF if the output might go beyond 4GB (compression might be ineffective)
+        long totalTiles = 0;
+        final int[] tilesAcross = new int[levels.size()];
+        final int[] tilesDown = new int[levels.size()];
+        for (int i = 0; i < levels.size(); i++) {
+            final RenderedImage level = levels.get(i);
+            tilesAcross[i] = (level.getWidth() + tileWidth - 1) / tileWidth;
+            tilesDown[i] = (level.getHeight() + tileHeight - 1) / tileHeight;
+            totalTiles += tilesAcross[i] * (long) tilesDown[i];
+        }
+        final boolean bigTiff = forceBigTiff || totalTiles * tileBytes * 1.1 >= 0xffffffffL;
+
+        // directories, with placeholder offsets and byte counts for the time being
+        final List<List<Field>> directories = new ArrayList<List<Field>>();
+        final long[] directoryOffsets = new long[levels.size()];
+        long position = bigTiff ? 16 : 8;
+        for (int i = 0; i < levels.size(); i++) {
+            final int tiles = tilesAcross[i] * tilesDown[i];
+            final List<Field> fields = createLayoutFields(levels.get(i), i > 0, bigTiff,
+                    new long[tiles], new long[tiles]);
+            if (i == 0 && metadata != null) {
+                fields.addAll(metadata);
+            }
+            Collections.sort(fields);
+            directories.add(fields);
+            directoryOffsets[i] = position;
+            position += getDirectorySize(fields, bigTiff);
+        }
+        final long dataStart = position;
+
+        // header and room for the directories
+        final long base = out.getStreamPosition();
+        final ByteBuffer header = ByteBuffer.allocate(bigTiff ? 16 : 8).order(order);
+        header.put((byte) 'M').put((byte) 'M');
+        if (bigTiff) {
+            header.putShort((short) 43).putShort((short) 8).putShort((short) 0).putLong(
+                    directoryOffsets[0]);
+        } else {
+            header.putShort((short) 42).putInt((int) directoryOffsets[0]);
+        }
+        out.write(header.array());
+        out.write(new byte[(int) (dataStart - header.capacity())]);
+
+        // tiles, smallest overview first
+        if (listener != null) {
+            listener.started();
+        }
+        final long[][] offsets = new long[levels.size()][];
+        final long[][] byteCounts = new long[levels.size()][];
+        long written = 0;
+        for (int i = levels.size() - 1; i >= 0; i--) {
+            final int tiles = tilesAcross[i] * tilesDown[i];
+            offsets[i] = new long[tiles];
+            byteCounts[i] = new long[tiles];
+            written = writeTiles(levels.get(i), tilesAcross[i], tiles, offsets[i],
+                    byteCounts[i], base, written, totalTiles);
+        }
+        final long end = out.getStreamPosition();
+
+        // now that offsets are known, fill in the directories
+        out.seek(base + (bigTiff ? 16 : 8));
+        for (int i = 0; i < levels.size(); i++) {
+            final List<Field> fields = directories.get(i);
+            for (Field field : fields) {
+                if (field.tag == TiffLayout.TAG_TILE_OFFSETS) {
+                    field.value = encodeLongs(offsets[i], bigTiff);
+                } else if (field.tag == TiffLayout.TAG_TILE_BYTE_COUNTS) {
+                    field.value = encodeLongs(byteCounts[i], bigTiff);
+                }
+            }
+            final long next = i < levels.size() - 1 ? directoryOffsets[i + 1] : 0;
+            out.write(encodeDirectory(fields, directoryOffsets[i], next, bigTiff));
+        }
+        out.seek(end);
+        out.flush();
+        if (listener != null) {
+            listener.complete();
+        }
+    }
+
+    /**
+     * Compresses and writes the tiles of a level, in row major order
+     *
+     * @return the number of tiles written so far
+     */
+    private long writeTiles(final RenderedImage image, final int tilesAcross, int tiles,
+            long[] offsets, long[] byteCounts, long base, long written, long totalTiles)
+            throws IOException {
+        if (executor == null) {
+            for (int t = 0; t < tiles; t++) {
+                final byte[] data = encodeTile(image, t % tilesAcross, t / tilesAcross);
+                offsets[t] = out.getStreamPosition() - base;
+                byteCounts[t] = data.length;
+                out.write(data);
+                progress(++written, totalTiles);
+            }
+            return written;
+        }
+
+        // keep a bounded window of tiles being compressed, write them in order
+        final int window = TILES_PER_THREAD * Runtime.getRuntime().availableProcessors();
+        final LinkedList<Future<byte[]>> pending = new LinkedList<Future<byte[]>>();
+        int next = 0;
+        int t = 0;
+        try {
+            while (t < tiles) {
+                while (next < tiles && pending.size() < window) {
+                    final int col = next % tilesAcross;
+                    final int row = next / tilesAcross;
+                    pending.add(executor.submit(new Callable<byte[]>() {
+                        public byte[] call() throws Exception {
+                            return encodeTile(image, col, row);
+                        }
+                    }));
+                    next++;
+                }
+                final byte[] data = pending.removeFirst().get();
+                offsets[t] = out.getStreamPosition() - base;
+                byteCounts[t] = data.length;
+                out.write(data);
+                t++;
+                progress(++written, totalTiles);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while compressing tiles");
+        } catch (ExecutionException e) {
+            final Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            throw (IOException) new IOException("Failed to compress tiles").initCause(cause);
+        } finally {
+            for (Future<byte[]> future : pending) {
+                future.cancel(true);
+            }
+        }
+        return written;
+    }
+
+    private void progress(long written, long total) throws IOException {
+        if (listener != null) {
+            if (listener.isCanceled()) {
+                throw new IOException("Write canceled");
+            }
+            listener.progress(100f * written / total);
+        }
+    }
+
+    /**
+     * Extracts a tile from the image, padding it to the full tile size, and compresses it
+     */
+    byte[] encodeTile(RenderedImage image, int col, int row) throws IOException {
+        final Rectangle bounds = new Rectangle(image.getMinX(), image.getMinY(),
+                image.getWidth(), image.getHeight());
+        final Rectangle rect = new Rectangle(image.getMinX() + col * tileWidth, image.getMinY()
+                + row * tileHeight, tileWidth, tileHeight).intersection(bounds);
+        final Raster raster = image.getData(rect);
+        final Object elements = raster.getDataElements(rect.x, rect.y, rect.width, rect.height,
+                null);
+        final int bands = raster.getNumDataElements();
+        final Object samples;
+        if (rect.width == tileWidth && rect.height == tileHeight) {
+            samples = elements;
+        } else {
+            samples = Array.newInstance(elements.getClass().getComponentType(), tileWidth
+                    * tileHeight * bands);
+            for (int y = 0; y < rect.height; y++) {
+                System.arraycopy(elements, y * rect.width * bands, samples, y * tileWidth
+                        * bands, rect.width * bands);
+            }
+        }
+        final byte[] bytes = toBytes(samples, order);
+        return compress(bytes, tileWidth * bands * (bytes.length / Array.getLength(samples)));
+    }
+
+    byte[] compress(byte[] data, int rowLength) throws IOException {
+        switch (compression) {
+        case TiffLayout.COMPRESSION_NONE:
+            return data;
+        case TiffLayout.COMPRESSION_DEFLATE:
+            return deflate(data, deflateLevel);
+        case TiffLayout.COMPRESSION_LZW:
+            return lzw(data);
+        case TiffLayout.COMPRESSION_PACKBITS:
+            return packBits(data, rowLength);
+        default:
+            throw new IOException("Unsupported compression " + compression);
+        }
+    }
+
+    static byte[] toBytes(Object samples, ByteOrder order) {
+        if (samples instanceof byte[]) {
+            return (byte[]) samples;
+        }
+        final int length = Array.getLength(samples);
+        final ByteBuffer bb;
+        if (samples instanceof short[]) {
+            bb = ByteBuffer.allocate(length * 2).order(order);
+            bb.asShortBuffer().put((short[]) samples);
+        } else if (samples instanceof int[]) {
+            bb = ByteBuffer.allocate(length * 4).order(order);
+            bb.asIntBuffer().put((int[]) samples);
+        } else if (samples instanceof float[]) {
+            bb = ByteBuffer.allocate(length * 4).order(order);
+            bb.asFloatBuffer().put((float[]) samples);
+        } else if (samples instanceof double[]) {
+            bb = ByteBuffer.allocate(length * 8).order(order);
+            bb.asDoubleBuffer().put((double[]) samples);
+        } else {
+            throw new IllegalArgumentException("Unsupported samples " + samples.getClass());
+        }
+        return bb.array();
+    }
+
+    static byte[] deflate(byte[] data, int level) {
+        final Deflater deflater = new Deflater(level);
+        try {
+            deflater.setInput(data);
+            deflater.finish();
+            final ByteArrayOutputStream bos = new ByteArrayOutputStream(data.length / 2 + 64);
+            final byte[] buffer = new byte[8192];
+            while (!deflater.finished()) {
+                final int n = deflater.deflate(buffer);
+                bos.write(buffer, 0, n);
+            }
+            return bos.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    /**
+     * PackBits encoding, each row being packed separately as the TIFF specification mandates
+     */
+    static byte[] packBits(byte[] data, int rowLength) {
+        final ByteArrayOutputStream bos = new ByteArrayOutputStream(data.length / 2 + 64);
+        for (int rowStart = 0; rowStart < data.length; rowStart += rowLength) {
+            final int end = Math.min(rowStart + rowLength, data.length);
+            int i = rowStart;
+            while (i < end) {
+                int run = 1;
+                while (i + run < end && run < 128 && data[i + run] == data[i]) {
+                    run++;
+                }
+                if (run >= 3) {
+                    bos.write(1 - run);
+                    bos.write(data[i]);
+                    i += run;
+                } else {
+                    // literal run, up to the next repeat of at least 3 bytes
+                    int j = i;
+                    while (j < end && j - i < 128) {
+                        if (j + 2 < end && data[j] == data[j + 1] && data[j] == data[j + 2]) {
+                            break;
+                        }
+                        j++;
+                    }
+                    bos.write(j - i - 1);
+                    bos.write(data, i, j - i);
+                    i = j;
+                }
+            }
+        }
+        return bos.toByteArray();
+    }
+
+    /**
+     * TIFF flavoured LZW encoding: most significant bit first codes, with the code width growing
+     * one code early
+     */
+    static byte[] lzw(byte[] data) {
+        final LzwOutput out = new LzwOutput(data.length / 2 + 64);
+        if (data.length == 0) {
+            out.write(256, 9);
+            out.write(257, 9);
+            return out.toByteArray();
+        }
+        final int hashSize = 9001;
+        final int[] keys = new int[hashSize];
+        final int[] codes = new int[hashSize];
+        Arrays.fill(keys, -1);
+        int next = 258;
+        int codeLength = 9;
+        out.write(256, codeLength);
+        int prefix = data[0] & 0xff;
+        for (int i = 1; i < data.length; i++) {
+            final int c = data[i] & 0xff;
+            final int key = (prefix << 8) | c;
+            int h = (key * 31) % hashSize;
+            while (keys[h] != -1 && keys[h] != key) {
+                h = h == hashSize - 1 ? 0 : h + 1;
+            }
+            if (keys[h] == key) {
+                prefix = codes[h];
+                continue;
+            }
+            out.write(prefix, codeLength);
+            keys[h] = key;
+            codes[h] = next++;
+            if (next == 4094) {
+                // table full, start over
+                out.write(256, codeLength);
+                Arrays.fill(keys, -1);
+                next = 258;
+                codeLength = 9;
+            } else if (next > (1 << codeLength) - 1) {
+                codeLength++;
+            }
+            prefix = c;
+        }
+        out.write(prefix, codeLength);
+        // the decoder adds an entry for the last code too, which can grow the code width
+        next++;
+        if (next == 4094) {
+            out.write(256, codeLength);
+            codeLength = 9;
+        } else if (next > (1 << codeLength) - 1) {
+            codeLength++;
+        }
+        out.write(257, codeLength);
+        return out.toByteArray();
+    }
+
+    /**
+     * Packs variable length codes, most significant bit first
+     */
+    static final class LzwOutput extends ByteArrayOutputStream {
+
+        int buffer;
+
+        int bits;
+
+        LzwOutput(int size) {
+            super(size);
+        }
+
+        void write(int code, int length) {
+            buffer = (buffer << length) | code;
+            bits += length;
+            while (bits >= 8) {
+                write((buffer >>> (bits - 8)) & 0xff);
+                bits -= 8;
+            }
+        }
+
+        @Override
+        public synchronized byte[] toByteArray() {
+            if (bits > 0) {
+                write((buffer << (8 - bits)) & 0xff);
+                bits = 0;
+            }
+            return super.toByteArray();
+        }
+    }
+
+    /**
+     * Builds the fields describing the layout of a level
+     */
+    List<Field> createLayoutFields(RenderedImage image, boolean overview, boolean bigTiff,
+            long[] offsets, long[] byteCounts) {
+        final SampleModel sm = image.getSampleModel();
+        final ColorModel cm = image.getColorModel();
+        final int bands = sm.getNumBands();
+        final int dataType = sm.getDataType();
+        final int bits = DataBuffer.getDataTypeSize(dataType);
+        final int sampleFormat;
+        switch (dataType) {
+        case DataBuffer.TYPE_SHORT:
+        case DataBuffer.TYPE_INT:
+            sampleFormat = TiffLayout.SAMPLE_FORMAT_INT;
+            break;
+        case DataBuffer.TYPE_FLOAT:
+        case DataBuffer.TYPE_DOUBLE:
+            sampleFormat = TiffLayout.SAMPLE_FORMAT_FLOAT;
+            break;
+        default:
+            sampleFormat = TiffLayout.SAMPLE_FORMAT_UINT;
+        }
+
+        final List<Field> fields = new ArrayList<Field>();
+        fields.add(longField(TiffLayout.TAG_NEW_SUBFILE_TYPE, overview ? 1 : 0));
+        fields.add(longField(TiffLayout.TAG_IMAGE_WIDTH, image.getWidth()));
+        fields.add(longField(TiffLayout.TAG_IMAGE_LENGTH, image.getHeight()));
+        fields.add(shortField(TiffLayout.TAG_BITS_PER_SAMPLE, repeat(bits, bands)));
+        fields.add(shortField(TiffLayout.TAG_COMPRESSION, compression));
+        fields.add(shortField(TiffLayout.TAG_SAMPLES_PER_PIXEL, bands));
+        fields.add(shortField(TiffLayout.TAG_PLANAR_CONFIGURATION, 1));
+        fields.add(longField(TiffLayout.TAG_TILE_WIDTH, tileWidth));
+        fields.add(longField(TiffLayout.TAG_TILE_LENGTH, tileHeight));
+        fields.add(new Field(TiffLayout.TAG_TILE_OFFSETS, bigTiff ? TYPE_LONG8 : TYPE_LONG,
+                offsets.length, encodeLongs(offsets, bigTiff)));
+        fields.add(new Field(TiffLayout.TAG_TILE_BYTE_COUNTS, bigTiff ? TYPE_LONG8 : TYPE_LONG,
+                byteCounts.length, encodeLongs(byteCounts, bigTiff)));
+        fields.add(shortField(TiffLayout.TAG_SAMPLE_FORMAT, repeat(sampleFormat, bands)));
+
+        // color interpretation
+        final int colorBands;
+        if (cm instanceof IndexColorModel && bands == 1) {
+            fields.add(shortField(TiffLayout.TAG_PHOTOMETRIC, 3));
+            fields.add(shortField(TAG_COLOR_MAP, createColorMap((IndexColorModel) cm, bits)));
+            colorBands = 1;
+        } else if (cm != null && cm.getColorSpace().getType() == ColorSpace.TYPE_RGB
+                && bands >= 3) {
+            fields.add(shortField(TiffLayout.TAG_PHOTOMETRIC, 2));
+            colorBands = 3;
+        } else {
+            fields.add(shortField(TiffLayout.TAG_PHOTOMETRIC, 1));
+            colorBands = 1;
+        }
+        if (bands > colorBands) {
+            final int[] extra = new int[bands - colorBands];
+            if (cm != null && cm.hasAlpha()) {
+                // associated or unassociated alpha
+                extra[0] = cm.isAlphaPremultiplied() ? 1 : 2;
+            }
+            fields.add(shortField(TAG_EXTRA_SAMPLES, extra));
+        }
+        return fields;
+    }
+
+    private static int[] createColorMap(IndexColorModel cm, int bits) {
+        final int size = 1 << bits;
+        final int[] map = new int[size * 3];
+        for (int i = 0; i < Math.min(size, cm.getMapSize()); i++) {
+            map[i] = cm.getRed(i) * 257;
+            map[size + i] = cm.getGreen(i) * 257;
+            map[2 * size + i] = cm.getBlue(i) * 257;
+        }
+        return map;
+    }
+
+    private static int[] repeat(int value, int times) {
+        final int[] result = new int[times];
+        Arrays.fill(result, value);
+        return result;
+    }
+
+    Field shortField(int tag, int... values) {
+        final ByteBuffer bb = ByteBuffer.allocate(values.length * 2).order(order);
+        for (int value : values) {
+            bb.putShort((short) value);
+        }
+        return new Field(tag, TYPE_SHORT, values.length, bb.array());
+    }
+
+    Field longField(int tag, long value) {
+        return new Field(tag, TYPE_LONG, 1, ByteBuffer.allocate(4).order(order)
+                .putInt((int) value).array());
+    }
+
+    byte[] encodeLongs(long[] values, boolean bigTiff) {
+        final ByteBuffer bb = ByteBuffer.allocate(values.length * (bigTiff ? 8 : 4)).order(order);
+        for (long value : values) {
+            if (bigTiff) {
+                bb.putLong(value);
+            } else {
+                bb.putInt((int) value);
+            }
+        }
+        return bb.array();
+    }
+
+    /**
+     * @return the size of the directory, including the values not fitting in the entries
+     */
+    static long getDirectorySize(List<Field> fields, boolean bigTiff) {
+        final int inline = bigTiff ? 8 : 4;
+        long size = (bigTiff ? 8 : 2) + fields.size() * (bigTiff ? 20 : 12) + inline;
+        for (Field field : fields) {
+            if (field.value.length > inline) {
+                // values are word aligned
+                size += (field.value.length + 1) & ~1;
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Encodes a directory, with the values not fitting in the entries right after it
+     */
+    byte[] encodeDirectory(List<Field> fields, long offset, long next, boolean bigTiff) {
+        final int inline = bigTiff ? 8 : 4;
+        final ByteBuffer bb = ByteBuffer.allocate((int) getDirectorySize(fields, bigTiff)).order(
+                order);
+        final int fixed = (bigTiff ? 8 : 2) + fields.size() * (bigTiff ? 20 : 12) + inline;
+        if (bigTiff) {
+            bb.putLong(fields.size());
+        } else {
+            bb.putShort((short) fields.size());
+        }
+        int extra = fixed;
+        for (Field field : fields) {
+            bb.putShort((short) field.tag);
+            bb.putShort((short) field.type);
+            if (bigTiff) {
+                bb.putLong(field.count);
+            } else {
+                bb.putInt((int) field.count);
+            }
+            if (field.value.length <= inline) {
+                final byte[] value = Arrays.copyOf(field.value, inline);
+                bb.put(value);
+            } else {
+                if (bigTiff) {
+                    bb.putLong(offset + extra);
+                } else {
+                    bb.putInt((int) (offset + extra));
+                }
+                final int position = bb.position();
+                bb.position(extra);
+                bb.put(field.value);
+                bb.position(position);
+                extra += (field.value.length + 1) & ~1;
+            }
+        }
+        if (bigTiff) {
+            bb.putLong(next);
+        } else {
+            bb.putInt((int) next);
+        }
+        return bb.array();
+    }
+}
@@ -0,0 +1,91 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2013, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.gce.geotiff;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+import org.geotools.util.Utilities;
+
+/**
+ * A {@link RangeReader} on a local file, using positional reads on a {@link FileChannel} so that
+ * concurrent reads do not contend on a shared file pointer.
+ *
+ * @source $URL$
+ */
+public class FileRangeReader implements RangeReader {
+
+    private final File file;
+
+    private final RandomAccessFile raf;
+
+    private final FileChannel channel;
+
+    /**
+     * Opens the file for reading
+     *
+     * @param file the file to read
+     * @throws IOException
+     */
+    public FileRangeReader(File file) throws IOException {
+        Utilities.ensureNonNull("file", file);
+        this.file = file;
+        this.raf = new RandomAccessFile(file, "r");
+        this.channel = raf.getChannel();
+    }
+
+    /**
+     * @return the file being read
+     */
+    public File getFile() {
+        return file;
+    }
+
+    public String getName() {
+        return file.getName();
+    }
+
+    public long getLength() throws IOException {
+        return channel.size();
+    }
+
+    public void read(long position, byte[] buffer, int offset, int length) throws IOException {
+        final ByteBuffer bb = ByteBuffer.wrap(buffer, offset, length);
+        long pos = position;
+        while (bb.hasRemaining()) {
+            final int read = channel.read(bb, pos);
+            if (read < 0) {
+                throw new EOFException("Reached the end of " + file + " at position " + pos
+                        + " while reading " + length + " bytes from position " + position);
+            }
+            pos += read;
+        }
+    }
+
+    public void close() throws IOException {
+        raf.close();
+    }
+
+    @Override
+    public String toString() {
+        return "FileRangeReader[" + file + "]";
+    }
+}
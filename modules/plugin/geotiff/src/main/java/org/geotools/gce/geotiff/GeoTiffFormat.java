@@ -100,6 +100,18 @@ public class GeoTiffFormat extends AbstractGridFormat implements Format {
                     "RETAIN_AXES_ORDER", Boolean.class, new Boolean[] {
                                     Boolean.TRUE, Boolean.FALSE }, Boolean.FALSE);
     
+    /**
+     * This {@link GeneralParameterValue} can be provided to the
+     * {@link GeoTiffReader}s in order to read only the tiles intersecting the
+     * requested area by byte ranges, instead of going through ImageIO. Best suited
+     * for cloud optimized GeoTIFFs, that is, tiled GeoTIFFs with internal overviews
+     * and all the directories at the beginning of the file. Sources provided as
+     * http(s) URLs or as {@link RangeReader}s are always read this way.
+     */
+    public static final DefaultParameterDescriptor<Boolean> COG_READ = new DefaultParameterDescriptor<Boolean>(
+                    "COG_READ", Boolean.class, new Boolean[] {
+                                    Boolean.TRUE, Boolean.FALSE }, Boolean.FALSE);
+    
     /** factory for getting tiff writers. */
     final static TIFFImageWriterSpi IMAGEIO_WRITER_FACTORY = new TIFFImageWriterSpi();
     
@@ -122,7 +134,7 @@ public class GeoTiffFormat extends AbstractGridFormat implements Format {
 		readParameters = new ParameterGroup(
 				new DefaultParameterDescriptorGroup(
 						mInfo,
-						new GeneralParameterDescriptor[] { READ_GRIDGEOMETRY2D,INPUT_TRANSPARENT_COLOR,SUGGESTED_TILE_SIZE }));
+						new GeneralParameterDescriptor[] { READ_GRIDGEOMETRY2D,INPUT_TRANSPARENT_COLOR,SUGGESTED_TILE_SIZE,COG_READ }));
 
 		// writing parameters
 		writeParameters = new ParameterGroup(
@@ -165,12 +177,16 @@ public class GeoTiffFormat extends AbstractGridFormat implements Format {
 				//
 				// /////////////////////////////////////////////////////////////
 				final URL url = (URL) o;
-				o = DataUtilities.urlToFile(url);
+				o = GeoTiffReader.isHttp(url) ? new HttpRangeReader(url) : DataUtilities.urlToFile(url);
 			} else if(o instanceof ImageInputStream) {
 					closeMe=false;
 			}
 			// get a stream
-			inputStream = (ImageInputStream) ((o instanceof ImageInputStream) ? o: ImageIO.createImageInputStream(o));
+			if (o instanceof RangeReader) {
+			    inputStream = new RangeReaderImageInputStream((RangeReader) o);
+			} else {
+			    inputStream = (ImageInputStream) ((o instanceof ImageInputStream) ? o: ImageIO.createImageInputStream(o));
+			}
 			if (inputStream == null) {
 				if (LOGGER.isLoggable(Level.FINE))
 					LOGGER.fine("Unable to get an ImageInputStream");
@@ -267,7 +283,7 @@ public class GeoTiffFormat extends AbstractGridFormat implements Format {
 		// source = ((CatalogEntry) source).resource();
 		// }
 
-		if (source instanceof URL) {
+		if (source instanceof URL && !GeoTiffReader.isHttp((URL) source)) {
 			URL url = (URL) source;
 
 			try {
@@ -40,8 +40,11 @@ import java.awt.Color;
 import java.awt.Rectangle;
 import java.awt.RenderingHints;
 import java.awt.geom.AffineTransform;
+import java.awt.geom.NoninvertibleTransformException;
+import java.awt.image.BufferedImage;
 import java.awt.image.ColorModel;
 import java.awt.image.SampleModel;
+import java.awt.image.WritableRaster;
 import java.awt.image.renderable.ParameterBlock;
 import java.io.File;
 import java.io.FileInputStream;
@@ -54,6 +57,7 @@ import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -144,6 +148,18 @@ public class GeoTiffReader extends AbstractGridCoverage2DReader implements GridC
 
     private int extOvrImgChoice = -1;
 
+    /** The source of byte ranges for tile based reads, see {@link GeoTiffFormat#COG_READ} */
+    private RangeReader rangeReader;
+
+    /** Whether the {@link #rangeReader} has been opened by this reader, which has to close it */
+    private boolean ownRangeReader;
+
+    /** The TIFF directories, parsed on the first tile based read */
+    private TiffLayout tiffLayout;
+
+    /** Executor for parallel tile reads, provided with the {@link Hints#EXECUTOR_SERVICE} hint */
+    private ExecutorService tileExecutor;
+
 	/**
 	 * Creates a new instance of GeoTiffReader
 	 * 
@@ -160,7 +176,8 @@ public class GeoTiffReader extends AbstractGridCoverage2DReader implements GridC
 	 * Creates a new instance of GeoTiffReader
 	 * 
 	 * @param input
-	 *            the GeoTiff file
+	 *            the GeoTiff file, which can also be a http(s) {@link URL} or a
+	 *            {@link RangeReader}, read by byte ranges
 	 * @param uHints
 	 *            user-supplied hints TODO currently are unused
 	 * @throws DataSourceException
@@ -178,7 +195,21 @@ public class GeoTiffReader extends AbstractGridCoverage2DReader implements GridC
 			// setting source
 			if (input instanceof URL) {
 				final URL sourceURL = (URL) input;
-				source = DataUtilities.urlToFile(sourceURL);
+				if (isHttp(sourceURL)) {
+				    rangeReader = new HttpRangeReader(sourceURL);
+				    ownRangeReader = true;
+				    source = rangeReader;
+				} else {
+				    source = DataUtilities.urlToFile(sourceURL);
+				}
+			} else if (input instanceof RangeReader) {
+			    rangeReader = (RangeReader) input;
+			}
+
+			// tile based reads can use a multithreaded executor if available
+			final Object executor = this.hints.get(Hints.EXECUTOR_SERVICE);
+			if (executor instanceof ExecutorService) {
+			    tileExecutor = (ExecutorService) executor;
 			}
 
 			closeMe = true;
@@ -192,6 +223,8 @@ public class GeoTiffReader extends AbstractGridCoverage2DReader implements GridC
 				closeMe = false;
 			if(source instanceof ImageInputStream )
 				inStream=(ImageInputStream) source;
+			else if (source instanceof RangeReader)
+			    inStream = new RangeReaderImageInputStream((RangeReader) source);
 			else{
 			    inStreamSPI = ImageIOExt.getImageInputStreamSPI(source);
 			    if (inStreamSPI == null)
@@ -215,6 +248,10 @@ public class GeoTiffReader extends AbstractGridCoverage2DReader implements GridC
 			//
 			// /////////////////////////////////////////////////////////////////////
 			coverageName = source instanceof File ? ((File) source).getName(): "geotiff_coverage";
+			if (source instanceof RangeReader && ((RangeReader) source).getName() != null
+			        && ((RangeReader) source).getName().length() > 0) {
+			    coverageName = ((RangeReader) source).getName();
+			}
 			final int dotIndex = coverageName.lastIndexOf('.');
 			if (dotIndex != -1 && dotIndex != coverageName.length())
 				coverageName = coverageName.substring(0, dotIndex);
@@ -235,6 +272,11 @@ public class GeoTiffReader extends AbstractGridCoverage2DReader implements GridC
 		}
 	}
 	
+    static boolean isHttp(URL url) {
+        return "http".equalsIgnoreCase(url.getProtocol())
+                || "https".equalsIgnoreCase(url.getProtocol());
+    }
+
     private void checkForExternalOverviews() {
         if (!(source instanceof File)) {
             return;
@@ -451,6 +493,7 @@ public class GeoTiffReader extends AbstractGridCoverage2DReader implements GridC
 		Color inputTransparentColor=null;
 		OverviewPolicy overviewPolicy=null;
 		int[] suggestedTileSize=null;
+		boolean tileRead = source instanceof RangeReader;
 		if (params != null) {
 
 			//
@@ -470,6 +513,10 @@ public class GeoTiffReader extends AbstractGridCoverage2DReader implements GridC
 						overviewPolicy=(OverviewPolicy) param.getValue();
 						continue;
 					}	
+					if (name.equals(GeoTiffFormat.COG_READ.getName())) {
+					    tileRead |= Boolean.TRUE.equals(param.getValue());
+					    continue;
+					}
                                         if (name.equals(AbstractGridFormat.INPUT_TRANSPARENT_COLOR.getName())) {
                                             inputTransparentColor = (Color) param.getValue();
                                             continue;
@@ -519,14 +566,25 @@ public class GeoTiffReader extends AbstractGridCoverage2DReader implements GridC
                     layout.setTileWidth(suggestedTileSize[0]);
                     newHints.add(new RenderingHints(JAI.KEY_IMAGE_LAYOUT, layout));
 		}
+		if (tileRead) {
+		    final GridCoverage2D coverage = readTiles(imageChoice, readP, requestedEnvelope,
+		            inputTransparentColor, newHints);
+		    if (coverage != null) {
+		        return coverage;
+		    }
+		}
 		final ParameterBlock pbjRead = new ParameterBlock();
         if (extOvrImgChoice >= 0 && imageChoice >= extOvrImgChoice) {
             pbjRead.add(ovrInStreamSPI.createInputStreamInstance(ovrSource, ImageIO.getUseCache(),
                     ImageIO.getCacheDirectory()));
             pbjRead.add(imageChoice - extOvrImgChoice);
         } else {
-            pbjRead.add(inStreamSPI != null ? inStreamSPI.createInputStreamInstance(source, ImageIO.getUseCache(), 
-                    ImageIO.getCacheDirectory()) : ImageIO.createImageInputStream(source));
+            if (source instanceof RangeReader) {
+                pbjRead.add(new RangeReaderImageInputStream((RangeReader) source));
+            } else {
+                pbjRead.add(inStreamSPI != null ? inStreamSPI.createInputStreamInstance(source, ImageIO.getUseCache(), 
+                        ImageIO.getCacheDirectory()) : ImageIO.createImageInputStream(source));
+            }
             pbjRead.add(imageChoice);
         }
     		pbjRead.add(Boolean.FALSE);
@@ -578,6 +636,113 @@ public class GeoTiffReader extends AbstractGridCoverage2DReader implements GridC
 
 	}
 
+    /**
+     * Reads the tiles intersecting the requested area straight out of the TIFF by byte ranges,
+     * skipping ImageIO.
+     * 
+     * @return the coverage, or <code>null</code> if the image to be read is not supported, in
+     *         which case the ImageIO based read must be used instead
+     */
+    private GridCoverage2D readTiles(int imageChoice, ImageReadParam readP,
+            GeneralEnvelope requestedEnvelope, Color inputTransparentColor, Hints newHints)
+            throws IOException {
+        if (extOvrImgChoice >= 0 && imageChoice >= extOvrImgChoice) {
+            return null;
+        }
+        final TiffLayout layout = getTiffLayout();
+        if (layout == null || imageChoice >= layout.getNumLevels()) {
+            return null;
+        }
+        final TiffLayout.Level level = layout.getLevel(imageChoice);
+        final ColorModel cm = getImageLayout().getColorModel(null);
+        if (!level.isSupported() || cm == null
+                || !cm.isCompatibleSampleModel(TiffTileReader.createSampleModel(level, 1, 1))) {
+            return null;
+        }
+
+        final Rectangle region = getLevelRegion(level, requestedEnvelope);
+        final int xSubsampling = readP.getSourceXSubsampling();
+        final int ySubsampling = readP.getSourceYSubsampling();
+        final TiffTileReader tileReader = new TiffTileReader(rangeReader, layout, tileExecutor);
+        final WritableRaster raster = tileReader.read(imageChoice, region, xSubsampling,
+                ySubsampling);
+        PlanarImage coverageRaster = PlanarImage.wrapRenderedImage(new BufferedImage(cm, raster,
+                cm.isAlphaPremultiplied(), null));
+        if (inputTransparentColor != null) {
+            coverageRaster = new ImageWorker(coverageRaster).setRenderingHints(newHints)
+                    .makeColorTransparent(inputTransparentColor).getRenderedOperation();
+        }
+        if (LOGGER.isLoggable(Level.FINE)) {
+            LOGGER.log(Level.FINE, "Coverage read by tiles: level = " + imageChoice
+                    + " region = " + region + " width = " + raster.getWidth() + " height = "
+                    + raster.getHeight());
+        }
+
+        // level to full resolution, then region and subsampling
+        final AffineTransform tempRaster2Model = new AffineTransform((AffineTransform) raster2Model);
+        tempRaster2Model.concatenate(new AffineTransform(originalGridRange.getSpan(0)
+                / (double) level.width, 0, 0, originalGridRange.getSpan(1) / (double) level.height,
+                0, 0));
+        tempRaster2Model.concatenate(new AffineTransform(xSubsampling, 0, 0, ySubsampling,
+                region.x, region.y));
+        return createCoverage(coverageRaster, ProjectiveTransform.create(tempRaster2Model));
+    }
+
+    /**
+     * Returns the TIFF directories, parsing them on the first call
+     * 
+     * @return the layout, or <code>null</code> if the source cannot be read by ranges
+     */
+    private synchronized TiffLayout getTiffLayout() throws IOException {
+        if (tiffLayout == null) {
+            if (rangeReader == null) {
+                if (!(source instanceof File)) {
+                    return null;
+                }
+                rangeReader = new FileRangeReader((File) source);
+                ownRangeReader = true;
+            }
+            tiffLayout = TiffLayout.parse(rangeReader);
+        }
+        return tiffLayout;
+    }
+
+    /**
+     * Computes the region of the level covering the requested envelope, with a pixel of
+     * tolerance, or the whole level if no envelope is requested
+     */
+    private Rectangle getLevelRegion(TiffLayout.Level level, GeneralEnvelope requestedEnvelope)
+            throws IOException {
+        final Rectangle bounds = new Rectangle(0, 0, level.width, level.height);
+        if (requestedEnvelope == null) {
+            return bounds;
+        }
+        final CoordinateReferenceSystem requestedCRS = requestedEnvelope
+                .getCoordinateReferenceSystem();
+        if (requestedCRS != null && !CRS.equalsIgnoreMetadata(requestedCRS, crs)) {
+            return bounds;
+        }
+        try {
+            final AffineTransform grid2World = new AffineTransform((AffineTransform) raster2Model);
+            grid2World.concatenate(CoverageUtilities.CENTER_TO_CORNER);
+            final GeneralEnvelope gridEnvelope = CRS.transform(
+                    ProjectiveTransform.create(grid2World.createInverse()), requestedEnvelope);
+            final double scaleX = level.width / (double) originalGridRange.getSpan(0);
+            final double scaleY = level.height / (double) originalGridRange.getSpan(1);
+            final int minX = (int) Math.floor(gridEnvelope.getMinimum(0) * scaleX) - 1;
+            final int minY = (int) Math.floor(gridEnvelope.getMinimum(1) * scaleY) - 1;
+            final int maxX = (int) Math.ceil(gridEnvelope.getMaximum(0) * scaleX) + 1;
+            final int maxY = (int) Math.ceil(gridEnvelope.getMaximum(1) * scaleY) + 1;
+            final Rectangle region = new Rectangle(minX, minY, maxX - minX, maxY - minY)
+                    .intersection(bounds);
+            return region.isEmpty() ? bounds : region;
+        } catch (NoninvertibleTransformException e) {
+            throw new DataSourceException(e);
+        } catch (TransformException e) {
+            throw new DataSourceException(e);
+        }
+    }
+
     /**
      * Returns the geotiff metadata for this geotiff file.
      * 
@@ -595,6 +760,8 @@ public class GeoTiffReader extends AbstractGridCoverage2DReader implements GridC
             }
             if (source instanceof ImageInputStream ) {
                     stream =(ImageInputStream) source;
+            } else if (source instanceof RangeReader) {
+                stream = new RangeReaderImageInputStream((RangeReader) source);
             } else {
                 inStreamSPI = ImageIOExt.getImageInputStreamSPI(source);
                 if (inStreamSPI == null) {
@@ -814,6 +981,21 @@ public class GeoTiffReader extends AbstractGridCoverage2DReader implements GridC
         return raster2Model;
     }
 
+    @Override
+    public synchronized void dispose() {
+        super.dispose();
+        if (ownRangeReader && rangeReader != null) {
+            try {
+                rangeReader.close();
+            } catch (IOException e) {
+                if (LOGGER.isLoggable(Level.FINE))
+                    LOGGER.log(Level.FINE, e.getLocalizedMessage(), e);
+            }
+            rangeReader = null;
+            tiffLayout = null;
+        }
+    }
+
 	/**
 	 * Number of coverages for this reader is 1
 	 * 
@@ -92,6 +92,16 @@ import org.geotools.coverage.grid.io.imageio.GeoToolsWriteParams;
  */
 public class GeoTiffWriteParams extends GeoToolsWriteParams {
 
+    /**
+     * Value for {@link #setNumOverviews(int)} asking to add overviews until the smallest one fits
+     * in a single tile
+     */
+    public static final int AUTO_OVERVIEWS = -1;
+
+    private boolean cloudOptimized;
+
+    private int numOverviews = AUTO_OVERVIEWS;
+
     /**
      * Default constructor.
      */
@@ -107,6 +117,47 @@ public class GeoTiffWriteParams extends GeoToolsWriteParams {
         return ((TIFFImageWriteParam) adaptee).isForceToBigTIFF();
     }
 
+    /**
+     * Asks for a cloud optimized GeoTIFF: a tiled GeoTIFF with internal overviews, having all the
+     * image file directories at the beginning of the file and the tiles of the overviews before
+     * the ones of the full resolution image, so that clients can read its structure with a single
+     * request and then fetch just the tiles they need.
+     * <p>
+     * The tile size is the one set with {@link #setTiling(int, int, int, int)}, 256x256 if none
+     * was set, and must be a multiple of 16. The supported compression types are "LZW",
+     * "Deflate" and "PackBits", the tiles are compressed in parallel using the executor found in
+     * the {@link org.geotools.factory.Hints#EXECUTOR_SERVICE} writer hint, if any, or a pool
+     * sized after the available processors otherwise.
+     *
+     * @param cloudOptimized
+     */
+    public void setCloudOptimized(final boolean cloudOptimized) {
+        this.cloudOptimized = cloudOptimized;
+    }
+
+    public boolean isCloudOptimized() {
+        return cloudOptimized;
+    }
+
+    /**
+     * Sets the number of internal overviews of a cloud optimized GeoTIFF, each one having half
+     * the resolution of the previous one. Overviews are computed by averaging the pixels of the
+     * previous level, or by subsampling it for images having a palette.
+     *
+     * @param numOverviews the number of overviews, or {@link #AUTO_OVERVIEWS} to add overviews
+     *        until the smallest one fits in a single tile
+     */
+    public void setNumOverviews(final int numOverviews) {
+        if (numOverviews < AUTO_OVERVIEWS) {
+            throw new IllegalArgumentException("Invalid number of overviews: " + numOverviews);
+        }
+        this.numOverviews = numOverviews;
+    }
+
+    public int getNumOverviews() {
+        return numOverviews;
+    }
+
     /**
      * Returns the current <code>TIFFColorConverter</code> object that
      * will be used to perform color conversion when writing the
@@ -16,21 +16,31 @@
  */
 package org.geotools.gce.geotiff;
 
+import it.geosolutions.imageio.plugins.tiff.TIFFField;
 import it.geosolutions.imageio.plugins.tiff.TIFFImageWriteParam;
 import it.geosolutions.imageioimpl.plugins.tiff.TIFFImageMetadata;
 import it.geosolutions.imageioimpl.plugins.tiff.TIFFImageWriter;
 
 import java.awt.Rectangle;
 import java.awt.geom.AffineTransform;
+import java.awt.RenderingHints;
+import java.awt.image.IndexColorModel;
 import java.awt.image.RenderedImage;
+import java.awt.image.renderable.ParameterBlock;
 import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -42,6 +52,9 @@ import javax.imageio.ImageWriter;
 import javax.imageio.metadata.IIOInvalidTreeException;
 import javax.imageio.metadata.IIOMetadata;
 import javax.imageio.stream.ImageOutputStream;
+import javax.media.jai.ImageLayout;
+import javax.media.jai.Interpolation;
+import javax.media.jai.JAI;
 
 import org.geotools.coverage.grid.GridCoverage2D;
 import org.geotools.coverage.grid.GridEnvelope2D;
@@ -268,8 +281,14 @@ public class GeoTiffWriter extends AbstractGridCoverageWriter implements
                 // write image
                 // writing ALWAYS the geophysics vew of the data
                 //
-                writeImage(((GridCoverage2D) gc).geophysics(true).getRenderedImage(), this.outStream,
-                        metadata, gtParams, listener);
+                final RenderedImage image = ((GridCoverage2D) gc).geophysics(true).getRenderedImage();
+                if (gtParams instanceof GeoTiffWriteParams
+                        && ((GeoTiffWriteParams) gtParams).isCloudOptimized()) {
+                    writeCloudOptimized(image, this.outStream, metadata,
+                            (GeoTiffWriteParams) gtParams, listener);
+                } else {
+                    writeImage(image, this.outStream, metadata, gtParams, listener);
+                }
         
                 //
                 // write tfw
@@ -451,6 +470,215 @@ public class GeoTiffWriter extends AbstractGridCoverageWriter implements
                 return true;
         }
 
+        /**
+         * Writes the provided rendered image as a cloud optimized GeoTIFF, with internal
+         * overviews, see {@link GeoTiffWriteParams#setCloudOptimized(boolean)}.
+         */
+        private void writeCloudOptimized(final RenderedImage image,
+                        final ImageOutputStream outputStream,
+                        final GeoTiffIIOMetadataEncoder geoTIFFMetadata,
+                        final GeoTiffWriteParams gtParams,
+                        final ProgressListener listener) throws IOException {
+                if (image == null || outputStream == null) {
+                        throw new NullPointerException("Some input parameters are null");
+                }
+                final CloudOptimizedTiffWriter cogWriter = new CloudOptimizedTiffWriter(outputStream);
+                int tileWidth = CloudOptimizedTiffWriter.DEFAULT_TILE_SIZE;
+                int tileHeight = CloudOptimizedTiffWriter.DEFAULT_TILE_SIZE;
+                if (gtParams.getTilingMode() == ImageWriteParam.MODE_EXPLICIT) {
+                    tileWidth = gtParams.getTileWidth();
+                    tileHeight = gtParams.getTileHeight();
+                }
+                cogWriter.setTileSize(tileWidth, tileHeight);
+                if (gtParams.getCompressionMode() == ImageWriteParam.MODE_EXPLICIT) {
+                    final String type = gtParams.getCompressionType();
+                    if ("LZW".equalsIgnoreCase(type)) {
+                        cogWriter.setCompression(TiffLayout.COMPRESSION_LZW);
+                    } else if ("Deflate".equalsIgnoreCase(type)) {
+                        cogWriter.setCompression(TiffLayout.COMPRESSION_DEFLATE);
+                        // same mapping as the ImageIO TIFF writer
+                        cogWriter.setDeflateLevel(
+                                (int) (1 + 8 * gtParams.getCompressionQuality()));
+                    } else if ("PackBits".equalsIgnoreCase(type)) {
+                        cogWriter.setCompression(TiffLayout.COMPRESSION_PACKBITS);
+                    } else if (type != null) {
+                        throw new IOException("Unsupported compression for cloud optimized "
+                                + "GeoTIFFs: " + type);
+                    }
+                }
+                cogWriter.setForceBigTiff(gtParams.isForceToBigTIFF());
+                cogWriter.setProgressListener(listener);
+
+                // the GeoTIFF tags, as the ImageIO writer would encode them
+                final TIFFImageWriter writer = (TIFFImageWriter) GeoTiffFormat.IMAGEIO_WRITER_FACTORY.createWriterInstance();
+                final List<CloudOptimizedTiffWriter.Field> fields;
+                try {
+                    final TIFFImageMetadata metadata = (TIFFImageMetadata) createGeoTiffIIOMetadata(
+                            writer, ImageTypeSpecifier.createFromRenderedImage(image),
+                            geoTIFFMetadata, gtParams.getAdaptee());
+                    fields = toCloudOptimizedFields(metadata, cogWriter.getByteOrder());
+                } finally {
+                    writer.dispose();
+                }
+
+                ExecutorService executor = null;
+                boolean ownExecutor = false;
+                if (hints != null && hints.get(Hints.EXECUTOR_SERVICE) instanceof ExecutorService) {
+                    executor = (ExecutorService) hints.get(Hints.EXECUTOR_SERVICE);
+                } else if (Runtime.getRuntime().availableProcessors() > 1) {
+                    executor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+                    ownExecutor = true;
+                }
+                cogWriter.setExecutor(executor);
+                try {
+                    cogWriter.write(buildOverviews(image, gtParams.getNumOverviews(), tileWidth,
+                            tileHeight), fields);
+                } finally {
+                    if (ownExecutor) {
+                        executor.shutdown();
+                    }
+                    try {
+                        if (!(destination instanceof ImageOutputStream))
+                            outputStream.close();
+                    } catch (Throwable e) {
+                        // eat me
+                        if (LOGGER.isLoggable(Level.WARNING)) {
+                            LOGGER.log(Level.WARNING, e.getLocalizedMessage(), e);
+                        }
+                    }
+                }
+        }
+
+        /**
+         * Builds the overviews of a cloud optimized GeoTIFF, halving the resolution at each level.
+         * Overviews are chained, so that each one is computed out of the previous one.
+         *
+         * @param numOverviews the number of overviews, or {@link GeoTiffWriteParams#AUTO_OVERVIEWS}
+         * @return the image followed by its overviews
+         */
+        static List<RenderedImage> buildOverviews(final RenderedImage image, int numOverviews,
+                final int tileWidth, final int tileHeight) {
+            if (numOverviews == GeoTiffWriteParams.AUTO_OVERVIEWS) {
+                numOverviews = 0;
+                for (int w = image.getWidth(), h = image.getHeight(); w > tileWidth
+                        || h > tileHeight; w = (w + 1) / 2, h = (h + 1) / 2) {
+                    numOverviews++;
+                }
+            }
+            final List<RenderedImage> levels = new ArrayList<RenderedImage>();
+            levels.add(image);
+            final ImageLayout layout = new ImageLayout();
+            layout.setTileWidth(tileWidth);
+            layout.setTileHeight(tileHeight);
+            final RenderingHints layoutHints = new RenderingHints(JAI.KEY_IMAGE_LAYOUT, layout);
+            RenderedImage current = image;
+            for (int i = 0; i < numOverviews && current.getWidth() > 1 && current.getHeight() > 1; i++) {
+                final ParameterBlock pb = new ParameterBlock();
+                pb.addSource(current);
+                if (current.getColorModel() instanceof IndexColorModel) {
+                    // averaging palette indexes would make no sense
+                    pb.add(0.5f).add(0.5f).add(0f).add(0f);
+                    pb.add(Interpolation.getInstance(Interpolation.INTERP_NEAREST));
+                    current = JAI.create("Scale", pb, layoutHints);
+                } else {
+                    pb.add(0.5d).add(0.5d);
+                    current = JAI.create("SubsampleAverage", pb, layoutHints);
+                }
+                levels.add(current);
+            }
+            return levels;
+        }
+
+        /**
+         * Extracts the fields of the metadata not describing the image layout (e.g., the GeoTIFF
+         * ones), encoding them for the {@link CloudOptimizedTiffWriter}
+         */
+        static List<CloudOptimizedTiffWriter.Field> toCloudOptimizedFields(
+                final TIFFImageMetadata metadata, final ByteOrder order) throws IOException {
+            final List<CloudOptimizedTiffWriter.Field> result = new ArrayList<CloudOptimizedTiffWriter.Field>();
+            for (TIFFField field : metadata.getRootIFD().getTIFFFields()) {
+                final int tag = field.getTagNumber();
+                if (CloudOptimizedTiffWriter.LAYOUT_TAGS.contains(tag)) {
+                    continue;
+                }
+                final int type = field.getType();
+                final int count = field.getCount();
+                final byte[] value;
+                switch (type) {
+                case CloudOptimizedTiffWriter.TYPE_ASCII:
+                    final StringBuilder sb = new StringBuilder();
+                    for (int i = 0; i < count; i++) {
+                        sb.append(field.getAsString(i)).append('\0');
+                    }
+                    value = sb.toString().getBytes("ISO-8859-1");
+                    result.add(new CloudOptimizedTiffWriter.Field(tag, type, value.length, value));
+                    continue;
+                case CloudOptimizedTiffWriter.TYPE_BYTE:
+                case CloudOptimizedTiffWriter.TYPE_SBYTE:
+                case CloudOptimizedTiffWriter.TYPE_UNDEFINED:
+                    value = field.getAsBytes();
+                    break;
+                case CloudOptimizedTiffWriter.TYPE_SHORT:
+                case CloudOptimizedTiffWriter.TYPE_SSHORT: {
+                    final ByteBuffer bb = ByteBuffer.allocate(count * 2).order(order);
+                    for (int i = 0; i < count; i++) {
+                        bb.putShort((short) field.getAsInt(i));
+                    }
+                    value = bb.array();
+                    break;
+                }
+                case CloudOptimizedTiffWriter.TYPE_LONG:
+                case CloudOptimizedTiffWriter.TYPE_SLONG: {
+                    final ByteBuffer bb = ByteBuffer.allocate(count * 4).order(order);
+                    for (int i = 0; i < count; i++) {
+                        bb.putInt((int) field.getAsLong(i));
+                    }
+                    value = bb.array();
+                    break;
+                }
+                case CloudOptimizedTiffWriter.TYPE_RATIONAL:
+                case CloudOptimizedTiffWriter.TYPE_SRATIONAL: {
+                    final ByteBuffer bb = ByteBuffer.allocate(count * 8).order(order);
+                    for (int i = 0; i < count; i++) {
+                        if (type == CloudOptimizedTiffWriter.TYPE_RATIONAL) {
+                            final long[] rational = field.getAsRational(i);
+                            bb.putInt((int) rational[0]).putInt((int) rational[1]);
+                        } else {
+                            final int[] rational = field.getAsSRational(i);
+                            bb.putInt(rational[0]).putInt(rational[1]);
+                        }
+                    }
+                    value = bb.array();
+                    break;
+                }
+                case CloudOptimizedTiffWriter.TYPE_FLOAT: {
+                    final ByteBuffer bb = ByteBuffer.allocate(count * 4).order(order);
+                    for (int i = 0; i < count; i++) {
+                        bb.putFloat(field.getAsFloat(i));
+                    }
+                    value = bb.array();
+                    break;
+                }
+                case CloudOptimizedTiffWriter.TYPE_DOUBLE: {
+                    final ByteBuffer bb = ByteBuffer.allocate(count * 8).order(order);
+                    for (int i = 0; i < count; i++) {
+                        bb.putDouble(field.getAsDouble(i));
+                    }
+                    value = bb.array();
+                    break;
+                }
+                default:
+                    // offsets to other directories and the like, not meaningful in the new file
+                    if (LOGGER.isLoggable(Level.FINE)) {
+                        LOGGER.fine("Skipping TIFF tag " + tag + " of type " + type);
+                    }
+                    continue;
+                }
+                result.add(new CloudOptimizedTiffWriter.Field(tag, type, count, value));
+            }
+            return result;
+        }
+
         /**
          * Creates image metadata which complies to the GeoTIFFWritingUtilities
          * specification for the given image writer, image type and
@@ -0,0 +1,206 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2013, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.gce.geotiff;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLConnection;
+
+import org.geotools.util.Utilities;
+
+/**
+ * A {@link RangeReader} fetching byte ranges from a HTTP server by means of range requests. Each
+ * read is a separate request, so callers are expected to coalesce nearby ranges. Servers not
+ * supporting range requests are handled by skipping over the unwanted part of the full response,
+ * which works, but is obviously slow.
+ *
+ * @source $URL$
+ */
+public class HttpRangeReader implements RangeReader {
+
+    /** Default connect and read timeout, in milliseconds */
+    static final int DEFAULT_TIMEOUT = 30000;
+
+    private final URL url;
+
+    private int timeout = DEFAULT_TIMEOUT;
+
+    private volatile long length = -1;
+
+    /**
+     * Creates a reader for the given http(s) URL
+     *
+     * @param url the location of the resource
+     */
+    public HttpRangeReader(URL url) {
+        Utilities.ensureNonNull("url", url);
+        final String protocol = url.getProtocol();
+        if (!"http".equalsIgnoreCase(protocol) && !"https".equalsIgnoreCase(protocol)) {
+            throw new IllegalArgumentException("Not a http(s) url: " + url);
+        }
+        this.url = url;
+    }
+
+    /**
+     * @param timeout the connect and read timeout, in milliseconds
+     */
+    public void setTimeout(int timeout) {
+        this.timeout = timeout;
+    }
+
+    public URL getURL() {
+        return url;
+    }
+
+    public String getName() {
+        final String path = url.getPath();
+        return path.substring(path.lastIndexOf('/') + 1);
+    }
+
+    public long getLength() throws IOException {
+        if (length < 0) {
+            final HttpURLConnection connection = openConnection();
+            connection.setRequestMethod("HEAD");
+            checkResponse(connection, HttpURLConnection.HTTP_OK);
+            // no body, closing the stream hands the connection back for reuse
+            consume(connection.getInputStream());
+            final long contentLength = getContentLength(connection);
+            if (contentLength < 0) {
+                throw new IOException("The server did not report the length of " + url);
+            }
+            length = contentLength;
+        }
+        return length;
+    }
+
+    public void read(long position, byte[] buffer, int offset, int length) throws IOException {
+        if (length == 0) {
+            return;
+        }
+        final HttpURLConnection connection = openConnection();
+        connection.setRequestProperty("Range", "bytes=" + position + "-"
+                + (position + length - 1));
+        final int code = checkResponse(connection, HttpURLConnection.HTTP_PARTIAL);
+        final InputStream is = connection.getInputStream();
+        try {
+            if (code == HttpURLConnection.HTTP_OK) {
+                // range request ignored, skip to the requested position
+                long toSkip = position;
+                while (toSkip > 0) {
+                    final long skipped = is.skip(toSkip);
+                    if (skipped <= 0) {
+                        if (is.read() < 0) {
+                            throw new EOFException("Reached the end of " + url
+                                    + " while skipping to " + position);
+                        }
+                        toSkip--;
+                    } else {
+                        toSkip -= skipped;
+                    }
+                }
+            }
+            int pos = offset;
+            final int end = offset + length;
+            while (pos < end) {
+                final int read = is.read(buffer, pos, end - pos);
+                if (read < 0) {
+                    throw new EOFException("Reached the end of " + url + " while reading "
+                            + length + " bytes from position " + position);
+                }
+                pos += read;
+            }
+            if (code == HttpURLConnection.HTTP_PARTIAL) {
+                // read up to the end of the response so that the connection can be kept alive,
+                // the rest of a full response is instead not worth downloading, closing the
+                // stream lets HttpURLConnection decide whether the connection can be reused
+                consume(is);
+            }
+        } finally {
+            is.close();
+        }
+    }
+
+    private HttpURLConnection openConnection() throws IOException {
+        final URLConnection connection = url.openConnection();
+        connection.setConnectTimeout(timeout);
+        connection.setReadTimeout(timeout);
+        connection.setUseCaches(false);
+        return (HttpURLConnection) connection;
+    }
+
+    /**
+     * Checks the response is either the expected one or a plain OK
+     */
+    private int checkResponse(HttpURLConnection connection, int expected) throws IOException {
+        final int code = connection.getResponseCode();
+        if (code != expected && code != HttpURLConnection.HTTP_OK) {
+            try {
+                consume(connection.getErrorStream());
+            } catch (IOException e) {
+                // the connection won't be reused, not a problem
+            }
+            throw new IOException("Unexpected response " + code + " "
+                    + connection.getResponseMessage() + " from " + url);
+        }
+        return code;
+    }
+
+    /**
+     * Reads a stream up to its end and closes it, allowing the underlying connection to be reused
+     * for the following requests to the same server
+     */
+    private static void consume(InputStream is) throws IOException {
+        if (is == null) {
+            return;
+        }
+        try {
+            final byte[] skip = new byte[4096];
+            while (is.read(skip) >= 0) {
+                // discard
+            }
+        } finally {
+            is.close();
+        }
+    }
+
+    private static long getContentLength(URLConnection connection) {
+        final String header = connection.getHeaderField("Content-Length");
+        if (header == null) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(header.trim());
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Nothing to release, each read uses its own request and the underlying connections are kept
+     * alive and pooled by {@link HttpURLConnection}
+     */
+    public void close() throws IOException {
+    }
+
+    @Override
+    public String toString() {
+        return "HttpRangeReader[" + url + "]";
+    }
+}
@@ -0,0 +1,56 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2013, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.gce.geotiff;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Provides random access to the bytes of a GeoTIFF, one byte range at a time. This is what the
+ * {@link GeoTiffReader} uses to read cloud optimized GeoTIFFs, fetching only the tiles it needs,
+ * be the file on the local disk ({@link FileRangeReader}) or on a remote server supporting HTTP
+ * range requests ({@link HttpRangeReader}).
+ * <p>
+ * Implementations must support concurrent calls to {@link #read(long, byte[], int, int)}.
+ *
+ * @source $URL$
+ */
+public interface RangeReader extends Closeable {
+
+    /**
+     * @return a name for the resource being read, used to name the coverage
+     */
+    String getName();
+
+    /**
+     * @return the total number of bytes of the resource
+     * @throws IOException
+     */
+    long getLength() throws IOException;
+
+    /**
+     * Reads exactly <code>length</code> bytes starting at the given position
+     *
+     * @param position the position of the first byte to read
+     * @param buffer the destination buffer
+     * @param offset the position in the buffer of the first byte read
+     * @param length the number of bytes to read
+     * @throws IOException if the bytes cannot be read, including the case of a range going past
+     *         the end of the resource
+     */
+    void read(long position, byte[] buffer, int offset, int length) throws IOException;
+}
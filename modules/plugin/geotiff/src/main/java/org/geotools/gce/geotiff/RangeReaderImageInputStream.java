@@ -0,0 +1,102 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2013, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.gce.geotiff;
+
+import java.io.IOException;
+
+import javax.imageio.stream.ImageInputStreamImpl;
+
+/**
+ * Exposes a {@link RangeReader} as an {@link javax.imageio.stream.ImageInputStream}, so that the
+ * ImageIO TIFF reader can parse the metadata of a GeoTIFF accessed by ranges. Small reads are
+ * served from a block buffer, larger ones are passed straight to the range reader.
+ * <p>
+ * Closing the stream does not close the underlying range reader.
+ *
+ * @source $URL$
+ */
+class RangeReaderImageInputStream extends ImageInputStreamImpl {
+
+    static final int BLOCK_SIZE = 16 * 1024;
+
+    private final RangeReader reader;
+
+    private final long length;
+
+    private final byte[] block = new byte[BLOCK_SIZE];
+
+    private long blockStart;
+
+    private int blockLength;
+
+    RangeReaderImageInputStream(RangeReader reader) throws IOException {
+        this.reader = reader;
+        this.length = reader.getLength();
+    }
+
+    @Override
+    public int read() throws IOException {
+        checkClosed();
+        if (streamPos >= length) {
+            return -1;
+        }
+        bitOffset = 0;
+        fill();
+        return block[(int) (streamPos++ - blockStart)] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        checkClosed();
+        if (off < 0 || len < 0 || off + len > b.length) {
+            throw new IndexOutOfBoundsException();
+        }
+        if (len == 0) {
+            return 0;
+        }
+        if (streamPos >= length) {
+            return -1;
+        }
+        bitOffset = 0;
+        int n = (int) Math.min(len, length - streamPos);
+        if (n >= BLOCK_SIZE) {
+            reader.read(streamPos, b, off, n);
+        } else {
+            fill();
+            n = Math.min(n, (int) (blockStart + blockLength - streamPos));
+            System.arraycopy(block, (int) (streamPos - blockStart), b, off, n);
+        }
+        streamPos += n;
+        return n;
+    }
+
+    /**
+     * Makes sure the block buffer contains the byte at the current position
+     */
+    private void fill() throws IOException {
+        if (streamPos < blockStart || streamPos >= blockStart + blockLength) {
+            blockStart = streamPos;
+            blockLength = (int) Math.min(BLOCK_SIZE, length - streamPos);
+            reader.read(blockStart, block, 0, blockLength);
+        }
+    }
+
+    @Override
+    public long length() {
+        return length;
+    }
+}
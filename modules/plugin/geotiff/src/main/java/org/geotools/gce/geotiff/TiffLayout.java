@@ -0,0 +1,490 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2013, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.gce.geotiff;
+
+import java.awt.image.DataBuffer;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * The image file directory structure of a TIFF, as needed to read its tiles by byte ranges. Each
+ * directory in the main chain becomes a {@link Level}, in file order, so that level indexes match
+ * the image indexes of the ImageIO TIFF reader (the full resolution image first, followed by the
+ * internal overviews).
+ * <p>
+ * Cloud optimized GeoTIFFs store all the directories at the beginning of the file, so they are
+ * usually parsed out of a single read of the file header.
+ *
+ * @source $URL$
+ */
+final class TiffLayout {
+
+    /** How many bytes are read in one shot at the beginning of the file */
+    static final int HEADER_SIZE = 16 * 1024;
+
+    /** Guard against cyclic or corrupted directory chains */
+    static final int MAX_DIRECTORIES = 1024;
+
+    static final int TAG_NEW_SUBFILE_TYPE = 254;
+
+    static final int TAG_IMAGE_WIDTH = 256;
+
+    static final int TAG_IMAGE_LENGTH = 257;
+
+    static final int TAG_BITS_PER_SAMPLE = 258;
+
+    static final int TAG_COMPRESSION = 259;
+
+    static final int TAG_PHOTOMETRIC = 262;
+
+    static final int TAG_STRIP_OFFSETS = 273;
+
+    static final int TAG_SAMPLES_PER_PIXEL = 277;
+
+    static final int TAG_ROWS_PER_STRIP = 278;
+
+    static final int TAG_STRIP_BYTE_COUNTS = 279;
+
+    static final int TAG_PLANAR_CONFIGURATION = 284;
+
+    static final int TAG_PREDICTOR = 317;
+
+    static final int TAG_TILE_WIDTH = 322;
+
+    static final int TAG_TILE_LENGTH = 323;
+
+    static final int TAG_TILE_OFFSETS = 324;
+
+    static final int TAG_TILE_BYTE_COUNTS = 325;
+
+    static final int TAG_SAMPLE_FORMAT = 339;
+
+    static final int COMPRESSION_NONE = 1;
+
+    static final int COMPRESSION_LZW = 5;
+
+    static final int COMPRESSION_DEFLATE = 8;
+
+    static final int COMPRESSION_PACKBITS = 32773;
+
+    static final int COMPRESSION_DEFLATE_OLD = 32946;
+
+    static final int PHOTOMETRIC_YCBCR = 6;
+
+    static final int SAMPLE_FORMAT_UINT = 1;
+
+    static final int SAMPLE_FORMAT_INT = 2;
+
+    static final int SAMPLE_FORMAT_FLOAT = 3;
+
+    /**
+     * A directory of the TIFF, with its tiles. Striped images are handled as images made of tiles
+     * as wide as the image.
+     */
+    static final class Level {
+
+        int width;
+
+        int height;
+
+        int tileWidth;
+
+        int tileHeight;
+
+        int samplesPerPixel = 1;
+
+        int bitsPerSample = 1;
+
+        int sampleFormat = SAMPLE_FORMAT_UINT;
+
+        int compression = COMPRESSION_NONE;
+
+        int predictor = 1;
+
+        int planarConfiguration = 1;
+
+        int photometric;
+
+        long subfileType;
+
+        long[] offsets;
+
+        long[] byteCounts;
+
+        /** Whether the samples have mixed sizes, not supported */
+        boolean mixedBits;
+
+        int getTilesAcross() {
+            return (width + tileWidth - 1) / tileWidth;
+        }
+
+        int getTilesDown() {
+            return (height + tileHeight - 1) / tileHeight;
+        }
+
+        /**
+         * @return the {@link DataBuffer} type of the samples, or {@link DataBuffer#TYPE_UNDEFINED}
+         *         if not supported
+         */
+        int getDataType() {
+            if (mixedBits) {
+                return DataBuffer.TYPE_UNDEFINED;
+            }
+            if (sampleFormat == SAMPLE_FORMAT_FLOAT) {
+                return bitsPerSample == 32 ? DataBuffer.TYPE_FLOAT
+                        : bitsPerSample == 64 ? DataBuffer.TYPE_DOUBLE : DataBuffer.TYPE_UNDEFINED;
+            }
+            switch (bitsPerSample) {
+            case 8:
+                return DataBuffer.TYPE_BYTE;
+            case 16:
+                return sampleFormat == SAMPLE_FORMAT_INT ? DataBuffer.TYPE_SHORT
+                        : DataBuffer.TYPE_USHORT;
+            case 32:
+                return DataBuffer.TYPE_INT;
+            default:
+                return DataBuffer.TYPE_UNDEFINED;
+            }
+        }
+
+        /**
+         * @return <code>true</code> if the tiles of this level can be decoded by the
+         *         {@link TiffTileReader}, <code>false</code> if ImageIO must be used instead
+         */
+        boolean isSupported() {
+            if (offsets == null || byteCounts == null || tileWidth <= 0 || tileHeight <= 0
+                    || offsets.length < getTilesAcross() * getTilesDown()
+                    || byteCounts.length < offsets.length) {
+                return false;
+            }
+            if (planarConfiguration != 1 && samplesPerPixel > 1) {
+                return false;
+            }
+            if (photometric == PHOTOMETRIC_YCBCR) {
+                return false;
+            }
+            if (compression != COMPRESSION_NONE && compression != COMPRESSION_LZW
+                    && compression != COMPRESSION_DEFLATE
+                    && compression != COMPRESSION_DEFLATE_OLD
+                    && compression != COMPRESSION_PACKBITS) {
+                return false;
+            }
+            final int dataType = getDataType();
+            if (dataType == DataBuffer.TYPE_UNDEFINED) {
+                return false;
+            }
+            // horizontal differencing only, and only on integral samples
+            return predictor == 1
+                    || (predictor == 2 && dataType != DataBuffer.TYPE_FLOAT && dataType != DataBuffer.TYPE_DOUBLE);
+        }
+    }
+
+    private final ByteOrder byteOrder;
+
+    private final List<Level> levels;
+
+    private TiffLayout(ByteOrder byteOrder, List<Level> levels) {
+        this.byteOrder = byteOrder;
+        this.levels = levels;
+    }
+
+    ByteOrder getByteOrder() {
+        return byteOrder;
+    }
+
+    int getNumLevels() {
+        return levels.size();
+    }
+
+    Level getLevel(int index) {
+        return levels.get(index);
+    }
+
+    /**
+     * Parses the directories of a TIFF
+     *
+     * @param reader the reader to fetch the bytes from
+     * @return the parsed layout
+     * @throws IOException if the file is not a valid TIFF
+     */
+    static TiffLayout parse(RangeReader reader) throws IOException {
+        final Parser parser = new Parser(reader);
+        return parser.parse();
+    }
+
+    /**
+     * Reads the directory chain, serving reads out of the file header whenever possible
+     */
+    private static final class Parser {
+
+        final RangeReader reader;
+
+        final long fileLength;
+
+        final byte[] header;
+
+        ByteOrder order;
+
+        boolean bigTiff;
+
+        Parser(RangeReader reader) throws IOException {
+            this.reader = reader;
+            this.fileLength = reader.getLength();
+            this.header = new byte[(int) Math.min(HEADER_SIZE, fileLength)];
+            reader.read(0, header, 0, header.length);
+        }
+
+        TiffLayout parse() throws IOException {
+            if (header.length < 8) {
+                throw new IOException("Not a TIFF file, too short");
+            }
+            if (header[0] == 'I' && header[1] == 'I') {
+                order = ByteOrder.LITTLE_ENDIAN;
+            } else if (header[0] == 'M' && header[1] == 'M') {
+                order = ByteOrder.BIG_ENDIAN;
+            } else {
+                throw new IOException("Not a TIFF file, invalid byte order marker");
+            }
+            final ByteBuffer bb = ByteBuffer.wrap(header).order(order);
+            final int magic = bb.getShort(2) & 0xffff;
+            long ifdOffset;
+            if (magic == 42) {
+                ifdOffset = bb.getInt(4) & 0xffffffffL;
+            } else if (magic == 43 && header.length >= 16) {
+                bigTiff = true;
+                ifdOffset = bb.getLong(8);
+            } else {
+                throw new IOException("Not a TIFF file, invalid magic number " + magic);
+            }
+
+            final List<Level> levels = new ArrayList<Level>();
+            final Set<Long> visited = new HashSet<Long>();
+            while (ifdOffset != 0) {
+                if (!visited.add(ifdOffset) || visited.size() > MAX_DIRECTORIES) {
+                    throw new IOException("Invalid TIFF directory chain");
+                }
+                ifdOffset = parseDirectory(ifdOffset, levels);
+            }
+            if (levels.isEmpty()) {
+                throw new IOException("The TIFF file does not contain any image");
+            }
+            return new TiffLayout(order, levels);
+        }
+
+        /**
+         * Parses a directory, returning the offset of the next one
+         */
+        long parseDirectory(long offset, List<Level> levels) throws IOException {
+            final int countSize = bigTiff ? 8 : 2;
+            final int entrySize = bigTiff ? 20 : 12;
+            final int valueSize = bigTiff ? 8 : 4;
+            ByteBuffer bb = read(offset, countSize);
+            final long count = bigTiff ? bb.getLong(0) : bb.getShort(0) & 0xffff;
+            if (count <= 0 || count > 0xffff) {
+                throw new IOException("Invalid TIFF directory at " + offset);
+            }
+            bb = read(offset + countSize, (int) count * entrySize + valueSize);
+
+            final Level level = new Level();
+            long[] stripOffsets = null, stripByteCounts = null;
+            int rowsPerStrip = -1;
+            for (int i = 0; i < count; i++) {
+                final int entry = i * entrySize;
+                final int tag = bb.getShort(entry) & 0xffff;
+                final int type = bb.getShort(entry + 2) & 0xffff;
+                final long valueCount = bigTiff ? bb.getLong(entry + 4) : bb.getInt(entry + 4) & 0xffffffffL;
+                final int valueField = entry + (bigTiff ? 12 : 8);
+                switch (tag) {
+                case TAG_NEW_SUBFILE_TYPE:
+                    level.subfileType = readValues(bb, valueField, type, valueCount)[0];
+                    break;
+                case TAG_IMAGE_WIDTH:
+                    level.width = (int) readValues(bb, valueField, type, valueCount)[0];
+                    break;
+                case TAG_IMAGE_LENGTH:
+                    level.height = (int) readValues(bb, valueField, type, valueCount)[0];
+                    break;
+                case TAG_BITS_PER_SAMPLE:
+                    final long[] bits = readValues(bb, valueField, type, valueCount);
+                    level.bitsPerSample = (int) bits[0];
+                    for (long b : bits) {
+                        level.mixedBits |= b != bits[0];
+                    }
+                    break;
+                case TAG_COMPRESSION:
+                    level.compression = (int) readValues(bb, valueField, type, valueCount)[0];
+                    break;
+                case TAG_PHOTOMETRIC:
+                    level.photometric = (int) readValues(bb, valueField, type, valueCount)[0];
+                    break;
+                case TAG_SAMPLES_PER_PIXEL:
+                    level.samplesPerPixel = (int) readValues(bb, valueField, type, valueCount)[0];
+                    break;
+                case TAG_ROWS_PER_STRIP:
+                    rowsPerStrip = (int) Math.min(Integer.MAX_VALUE, readValues(bb, valueField,
+                            type, valueCount)[0]);
+                    break;
+                case TAG_PLANAR_CONFIGURATION:
+                    level.planarConfiguration = (int) readValues(bb, valueField, type, valueCount)[0];
+                    break;
+                case TAG_PREDICTOR:
+                    level.predictor = (int) readValues(bb, valueField, type, valueCount)[0];
+                    break;
+                case TAG_TILE_WIDTH:
+                    level.tileWidth = (int) readValues(bb, valueField, type, valueCount)[0];
+                    break;
+                case TAG_TILE_LENGTH:
+                    level.tileHeight = (int) readValues(bb, valueField, type, valueCount)[0];
+                    break;
+                case TAG_TILE_OFFSETS:
+                    level.offsets = readValues(bb, valueField, type, valueCount);
+                    break;
+                case TAG_TILE_BYTE_COUNTS:
+                    level.byteCounts = readValues(bb, valueField, type, valueCount);
+                    break;
+                case TAG_STRIP_OFFSETS:
+                    stripOffsets = readValues(bb, valueField, type, valueCount);
+                    break;
+                case TAG_STRIP_BYTE_COUNTS:
+                    stripByteCounts = readValues(bb, valueField, type, valueCount);
+                    break;
+                case TAG_SAMPLE_FORMAT:
+                    final long[] formats = readValues(bb, valueField, type, valueCount);
+                    level.sampleFormat = (int) formats[0];
+                    break;
+                default:
+                    // not needed
+                }
+            }
+            if (level.offsets == null && stripOffsets != null) {
+                // a striped image, turn strips into full width tiles
+                level.tileWidth = level.width;
+                level.tileHeight = rowsPerStrip > 0 ? Math.min(rowsPerStrip, level.height)
+                        : level.height;
+                level.offsets = stripOffsets;
+                level.byteCounts = stripByteCounts;
+            }
+            levels.add(level);
+
+            final int next = (int) count * entrySize;
+            return bigTiff ? bb.getLong(next) : bb.getInt(next) & 0xffffffffL;
+        }
+
+        /**
+         * Reads the values of an integral tag, either inline or at the offset the entry points to
+         */
+        long[] readValues(ByteBuffer entries, int valueField, int type, long count)
+                throws IOException {
+            final int size = getTypeSize(type);
+            if (size < 0) {
+                throw new IOException("Unexpected TIFF field type " + type);
+            }
+            if (count <= 0 || count * size > Integer.MAX_VALUE) {
+                throw new IOException("Invalid TIFF field value count " + count);
+            }
+            final int n = (int) count;
+            final ByteBuffer values;
+            final int start;
+            if (n * size <= (bigTiff ? 8 : 4)) {
+                values = entries;
+                start = valueField;
+            } else {
+                final long offset = bigTiff ? entries.getLong(valueField) : entries
+                        .getInt(valueField) & 0xffffffffL;
+                values = read(offset, n * size);
+                start = 0;
+            }
+            final long[] result = new long[n];
+            for (int i = 0; i < n; i++) {
+                final int pos = start + i * size;
+                switch (type) {
+                case 1: // BYTE
+                case 7: // UNDEFINED
+                    result[i] = values.get(pos) & 0xff;
+                    break;
+                case 6: // SBYTE
+                    result[i] = values.get(pos);
+                    break;
+                case 3: // SHORT
+                    result[i] = values.getShort(pos) & 0xffff;
+                    break;
+                case 8: // SSHORT
+                    result[i] = values.getShort(pos);
+                    break;
+                case 4: // LONG
+                case 13: // IFD
+                    result[i] = values.getInt(pos) & 0xffffffffL;
+                    break;
+                case 9: // SLONG
+                    result[i] = values.getInt(pos);
+                    break;
+                default: // LONG8, SLONG8, IFD8
+                    result[i] = values.getLong(pos);
+                }
+            }
+            return result;
+        }
+
+        /**
+         * @return the size of the integral TIFF types, -1 for the others
+         */
+        static int getTypeSize(int type) {
+            switch (type) {
+            case 1:
+            case 6:
+            case 7:
+                return 1;
+            case 3:
+            case 8:
+                return 2;
+            case 4:
+            case 9:
+            case 13:
+                return 4;
+            case 16:
+            case 17:
+            case 18:
+                return 8;
+            default:
+                return -1;
+            }
+        }
+
+        /**
+         * Returns the requested bytes, out of the header if possible
+         */
+        ByteBuffer read(long offset, int length) throws IOException {
+            if (offset < 0 || offset + length > fileLength) {
+                throw new IOException("Invalid TIFF offset " + offset);
+            }
+            final byte[] bytes;
+            if (offset + length <= header.length) {
+                bytes = Arrays.copyOfRange(header, (int) offset, (int) offset + length);
+            } else {
+                bytes = new byte[length];
+                reader.read(offset, bytes, 0, length);
+            }
+            return ByteBuffer.wrap(bytes).order(order);
+        }
+    }
+}
@@ -0,0 +1,580 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2013, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.gce.geotiff;
+
+import java.awt.Rectangle;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferDouble;
+import java.awt.image.DataBufferFloat;
+import java.awt.image.DataBufferInt;
+import java.awt.image.DataBufferShort;
+import java.awt.image.DataBufferUShort;
+import java.awt.image.PixelInterleavedSampleModel;
+import java.awt.image.Raster;
+import java.awt.image.SampleModel;
+import java.awt.image.WritableRaster;
+import java.io.IOException;
+import java.lang.reflect.Array;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+import org.geotools.gce.geotiff.TiffLayout.Level;
+
+/**
+ * Reads a region of a {@link TiffLayout.Level} by fetching and decoding only the tiles
+ * intersecting it. The byte ranges of the tiles are sorted and coalesced, so that tiles stored
+ * close to each other are fetched with a single read, then the reads and the tile decoding are
+ * spread over an executor, if any.
+ * <p>
+ * Supports uncompressed, LZW, Deflate and PackBits compressed tiles, with optional horizontal
+ * differencing, see {@link Level#isSupported()}.
+ *
+ * @source $URL$
+ */
+final class TiffTileReader {
+
+    /** Gaps between tiles smaller than this are read along, to save a request */
+    static final int MAX_GAP = 32 * 1024;
+
+    /** Maximum size of a coalesced read */
+    static final int MAX_RANGE = 8 * 1024 * 1024;
+
+    /** A tile to be read, and its position in the file */
+    static final class Tile {
+
+        final int col;
+
+        final int row;
+
+        final long offset;
+
+        final int byteCount;
+
+        Tile(int col, int row, long offset, int byteCount) {
+            this.col = col;
+            this.row = row;
+            this.offset = offset;
+            this.byteCount = byteCount;
+        }
+    }
+
+    /** A set of tiles fetched with a single read */
+    static final class Range {
+
+        final long start;
+
+        long end;
+
+        final List<Tile> tiles = new ArrayList<Tile>();
+
+        byte[] data;
+
+        Range(Tile first) {
+            this.start = first.offset;
+            this.end = first.offset + first.byteCount;
+            this.tiles.add(first);
+        }
+    }
+
+    private final RangeReader reader;
+
+    private final TiffLayout layout;
+
+    private final ExecutorService executor;
+
+    /**
+     * @param reader the source of the bytes
+     * @param layout the layout of the TIFF
+     * @param executor the executor to run reads and decoding on, or <code>null</code> to use the
+     *        calling thread
+     */
+    TiffTileReader(RangeReader reader, TiffLayout layout, ExecutorService executor) {
+        this.reader = reader;
+        this.layout = layout;
+        this.executor = executor;
+    }
+
+    /**
+     * Reads a region of a level, with subsampling
+     *
+     * @param levelIndex the level to read
+     * @param region the region to read, in level pixels
+     * @param xSubsampling the column subsampling factor
+     * @param ySubsampling the row subsampling factor
+     * @return a raster with origin in 0,0 and pixel interleaved samples
+     * @throws IOException
+     */
+    WritableRaster read(int levelIndex, Rectangle region, int xSubsampling, int ySubsampling)
+            throws IOException {
+        final Level level = layout.getLevel(levelIndex);
+        final int width = (region.width + xSubsampling - 1) / xSubsampling;
+        final int height = (region.height + ySubsampling - 1) / ySubsampling;
+        final WritableRaster raster = Raster.createWritableRaster(
+                createSampleModel(level, width, height), null);
+        final Target target = new Target(level, region, xSubsampling, ySubsampling, raster);
+
+        final List<Range> ranges = collectRanges(level, region, xSubsampling, ySubsampling);
+        if (executor == null) {
+            for (Range range : ranges) {
+                fetch(range);
+                for (Tile tile : range.tiles) {
+                    target.copy(tile, decode(level, tile, range));
+                }
+            }
+            return raster;
+        }
+
+        // fetch the ranges in parallel, decoding tiles as soon as their range is available
+        final CompletionService<Range> fetches = new ExecutorCompletionService<Range>(executor);
+        for (final Range range : ranges) {
+            fetches.submit(new Callable<Range>() {
+                public Range call() throws Exception {
+                    fetch(range);
+                    return range;
+                }
+            });
+        }
+        final List<Future<?>> decodes = new ArrayList<Future<?>>();
+        try {
+            for (int i = 0; i < ranges.size(); i++) {
+                final Range range = fetches.take().get();
+                for (final Tile tile : range.tiles) {
+                    decodes.add(executor.submit(new Callable<Void>() {
+                        public Void call() throws Exception {
+                            target.copy(tile, decode(level, tile, range));
+                            return null;
+                        }
+                    }));
+                }
+            }
+            for (Future<?> decode : decodes) {
+                decode.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while reading tiles");
+        } catch (ExecutionException e) {
+            final Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            throw (IOException) new IOException("Failed to read tiles").initCause(cause);
+        } finally {
+            for (Future<?> decode : decodes) {
+                decode.cancel(true);
+            }
+        }
+        return raster;
+    }
+
+    /**
+     * Creates the sample model of the rasters returned for the given level
+     */
+    static SampleModel createSampleModel(Level level, int width, int height) {
+        final int bands = level.samplesPerPixel;
+        final int[] bandOffsets = new int[bands];
+        for (int i = 0; i < bands; i++) {
+            bandOffsets[i] = i;
+        }
+        return new PixelInterleavedSampleModel(level.getDataType(), width, height, bands, bands
+                * width, bandOffsets);
+    }
+
+    /**
+     * Collects the tiles intersecting the region, and groups them in ranges
+     */
+    List<Range> collectRanges(Level level, Rectangle region, int xSubsampling, int ySubsampling) {
+        final int tilesAcross = level.getTilesAcross();
+        final int minCol = region.x / level.tileWidth;
+        final int maxCol = (region.x + region.width - 1) / level.tileWidth;
+        final int minRow = region.y / level.tileHeight;
+        final int maxRow = (region.y + region.height - 1) / level.tileHeight;
+        final List<Tile> tiles = new ArrayList<Tile>();
+        for (int row = minRow; row <= maxRow; row++) {
+            if (!hasSample(row * level.tileHeight, (row + 1) * level.tileHeight, region.y,
+                    ySubsampling)) {
+                continue;
+            }
+            for (int col = minCol; col <= maxCol; col++) {
+                if (!hasSample(col * level.tileWidth, (col + 1) * level.tileWidth, region.x,
+                        xSubsampling)) {
+                    continue;
+                }
+                final int index = row * tilesAcross + col;
+                final long byteCount = level.byteCounts[index];
+                // sparse tiles are left empty
+                if (byteCount > 0) {
+                    tiles.add(new Tile(col, row, level.offsets[index], (int) byteCount));
+                }
+            }
+        }
+        Collections.sort(tiles, new Comparator<Tile>() {
+            public int compare(Tile t1, Tile t2) {
+                return t1.offset < t2.offset ? -1 : (t1.offset == t2.offset ? 0 : 1);
+            }
+        });
+
+        final List<Range> ranges = new ArrayList<Range>();
+        Range current = null;
+        for (Tile tile : tiles) {
+            final long end = tile.offset + tile.byteCount;
+            if (current != null && tile.offset - current.end <= MAX_GAP
+                    && Math.max(end, current.end) - current.start <= MAX_RANGE) {
+                current.end = Math.max(end, current.end);
+                current.tiles.add(tile);
+            } else {
+                current = new Range(tile);
+                ranges.add(current);
+            }
+        }
+        return ranges;
+    }
+
+    /**
+     * @return <code>true</code> if the [start, end) interval contains a sampled position
+     */
+    static boolean hasSample(int start, int end, int origin, int subsampling) {
+        if (start <= origin) {
+            return end > origin;
+        }
+        final int first = origin + (start - origin + subsampling - 1) / subsampling * subsampling;
+        return first < end;
+    }
+
+    void fetch(Range range) throws IOException {
+        final byte[] data = new byte[(int) (range.end - range.start)];
+        reader.read(range.start, data, 0, data.length);
+        range.data = data;
+    }
+
+    /**
+     * Decodes a tile into an array of pixel interleaved samples
+     */
+    Object decode(Level level, Tile tile, Range range) throws IOException {
+        // the last strip may be shorter than the others
+        final int rows = level.tileWidth == level.width ? Math.min(level.tileHeight, level.height
+                - tile.row * level.tileHeight) : level.tileHeight;
+        final int bytesPerSample = level.bitsPerSample / 8;
+        final int samples = rows * level.tileWidth * level.samplesPerPixel;
+        final int offset = (int) (tile.offset - range.start);
+        final byte[] bytes = decompress(level.compression, range.data, offset, tile.byteCount,
+                samples * bytesPerSample);
+        final Object result = toSamples(bytes, level.getDataType(), samples,
+                layout.getByteOrder());
+        if (level.predictor == 2) {
+            undoDifferencing(result, level.tileWidth * level.samplesPerPixel,
+                    level.samplesPerPixel);
+        }
+        return result;
+    }
+
+    static byte[] decompress(int compression, byte[] data, int offset, int length, int expected)
+            throws IOException {
+        switch (compression) {
+        case TiffLayout.COMPRESSION_NONE:
+            final byte[] result = new byte[expected];
+            System.arraycopy(data, offset, result, 0, Math.min(length, expected));
+            return result;
+        case TiffLayout.COMPRESSION_LZW:
+            return lzw(data, offset, length, expected);
+        case TiffLayout.COMPRESSION_DEFLATE:
+        case TiffLayout.COMPRESSION_DEFLATE_OLD:
+            return inflate(data, offset, length, expected);
+        case TiffLayout.COMPRESSION_PACKBITS:
+            return packBits(data, offset, length, expected);
+        default:
+            throw new IOException("Unsupported TIFF compression " + compression);
+        }
+    }
+
+    static byte[] inflate(byte[] data, int offset, int length, int expected) throws IOException {
+        final byte[] result = new byte[expected];
+        final Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(data, offset, length);
+            int pos = 0;
+            while (pos < expected) {
+                final int inflated = inflater.inflate(result, pos, expected - pos);
+                if (inflated == 0
+                        && (inflater.finished() || inflater.needsInput() || inflater
+                                .needsDictionary())) {
+                    break;
+                }
+                pos += inflated;
+            }
+        } catch (DataFormatException e) {
+            throw (IOException) new IOException("Invalid deflate compressed tile").initCause(e);
+        } finally {
+            inflater.end();
+        }
+        return result;
+    }
+
+    static byte[] packBits(byte[] data, int offset, int length, int expected) {
+        final byte[] result = new byte[expected];
+        int in = offset;
+        final int end = offset + length;
+        int out = 0;
+        while (out < expected && in < end) {
+            final int n = data[in++];
+            if (n >= 0) {
+                final int count = Math.min(Math.min(n + 1, expected - out), end - in);
+                System.arraycopy(data, in, result, out, count);
+                in += n + 1;
+                out += count;
+            } else if (n != -128 && in < end) {
+                final int count = Math.min(1 - n, expected - out);
+                final byte value = data[in++];
+                for (int i = 0; i < count; i++) {
+                    result[out++] = value;
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * TIFF flavoured LZW: most significant bit first codes, with the code width growing one
+     * code early
+     */
+    static byte[] lzw(byte[] data, int offset, int length, int expected) {
+        final byte[] result = new byte[expected];
+        final int[] prefix = new int[4096];
+        final byte[] suffix = new byte[4096];
+        final byte[] first = new byte[4096];
+        final int[] lengths = new int[4096];
+        for (int i = 0; i < 256; i++) {
+            prefix[i] = -1;
+            suffix[i] = (byte) i;
+            first[i] = (byte) i;
+            lengths[i] = 1;
+        }
+        int next = 258;
+        int codeLength = 9;
+        int old = -1;
+        int in = offset;
+        final int end = offset + length;
+        int bitBuffer = 0;
+        int bits = 0;
+        int out = 0;
+        while (out < expected) {
+            while (bits < codeLength) {
+                if (in >= end) {
+                    return result;
+                }
+                bitBuffer = (bitBuffer << 8) | (data[in++] & 0xff);
+                bits += 8;
+            }
+            final int code = (bitBuffer >>> (bits - codeLength)) & ((1 << codeLength) - 1);
+            bits -= codeLength;
+            if (code == 257) {
+                break;
+            } else if (code == 256) {
+                next = 258;
+                codeLength = 9;
+                old = -1;
+                continue;
+            }
+            if (old == -1) {
+                if (code > 255) {
+                    // corrupted stream
+                    break;
+                }
+                result[out++] = (byte) code;
+                old = code;
+                continue;
+            }
+            if (code > next || next >= 4096) {
+                // corrupted stream
+                break;
+            }
+            // add the new entry, which is needed right away in the code == next case
+            prefix[next] = old;
+            suffix[next] = code < next ? first[code] : first[old];
+            first[next] = first[old];
+            lengths[next] = lengths[old] + 1;
+            next++;
+
+            // write out the string of the code, backwards
+            final int stringEnd = out + lengths[code];
+            int c = code;
+            for (int p = stringEnd - 1; p >= out; p--) {
+                if (p < expected) {
+                    result[p] = suffix[c];
+                }
+                c = prefix[c];
+            }
+            out = stringEnd;
+
+            if (next + 1 >= (1 << codeLength) && codeLength < 12) {
+                codeLength++;
+            }
+            old = code;
+        }
+        return result;
+    }
+
+    static Object toSamples(byte[] bytes, int dataType, int samples, ByteOrder order) {
+        final ByteBuffer bb = ByteBuffer.wrap(bytes).order(order);
+        switch (dataType) {
+        case DataBuffer.TYPE_BYTE:
+            return bytes;
+        case DataBuffer.TYPE_USHORT:
+        case DataBuffer.TYPE_SHORT:
+            final short[] shorts = new short[samples];
+            bb.asShortBuffer().get(shorts);
+            return shorts;
+        case DataBuffer.TYPE_INT:
+            final int[] ints = new int[samples];
+            bb.asIntBuffer().get(ints);
+            return ints;
+        case DataBuffer.TYPE_FLOAT:
+            final float[] floats = new float[samples];
+            bb.asFloatBuffer().get(floats);
+            return floats;
+        case DataBuffer.TYPE_DOUBLE:
+            final double[] doubles = new double[samples];
+            bb.asDoubleBuffer().get(doubles);
+            return doubles;
+        default:
+            throw new IllegalArgumentException("Unsupported data type " + dataType);
+        }
+    }
+
+    /**
+     * Undoes the horizontal differencing predictor, row by row
+     */
+    static void undoDifferencing(Object samples, int rowLength, int pixelStride) {
+        if (samples instanceof byte[]) {
+            final byte[] a = (byte[]) samples;
+            for (int row = 0; row < a.length; row += rowLength) {
+                for (int i = row + pixelStride; i < row + rowLength; i++) {
+                    a[i] += a[i - pixelStride];
+                }
+            }
+        } else if (samples instanceof short[]) {
+            final short[] a = (short[]) samples;
+            for (int row = 0; row < a.length; row += rowLength) {
+                for (int i = row + pixelStride; i < row + rowLength; i++) {
+                    a[i] += a[i - pixelStride];
+                }
+            }
+        } else if (samples instanceof int[]) {
+            final int[] a = (int[]) samples;
+            for (int row = 0; row < a.length; row += rowLength) {
+                for (int i = row + pixelStride; i < row + rowLength; i++) {
+                    a[i] += a[i - pixelStride];
+                }
+            }
+        }
+    }
+
+    /**
+     * Copies decoded tiles into the output raster, applying the subsampling. Tiles write
+     * disjoint parts of the output so they can be copied concurrently.
+     */
+    static final class Target {
+
+        final Level level;
+
+        final Rectangle region;
+
+        final int xSubsampling;
+
+        final int ySubsampling;
+
+        final int width;
+
+        final Object bank;
+
+        Target(Level level, Rectangle region, int xSubsampling, int ySubsampling,
+                WritableRaster raster) {
+            this.level = level;
+            this.region = region;
+            this.xSubsampling = xSubsampling;
+            this.ySubsampling = ySubsampling;
+            this.width = raster.getWidth();
+            this.bank = getBank(raster.getDataBuffer());
+        }
+
+        void copy(Tile tile, Object samples) {
+            final int bands = level.samplesPerPixel;
+            final int tileX = tile.col * level.tileWidth;
+            final int tileY = tile.row * level.tileHeight;
+            final int rowLength = level.tileWidth * bands;
+            final int rows = Array.getLength(samples) / rowLength;
+            final int minX = Math.max(tileX, region.x);
+            final int maxX = Math.min(Math.min(tileX + level.tileWidth, level.width), region.x
+                    + region.width);
+            final int minY = Math.max(tileY, region.y);
+            final int maxY = Math.min(tileY + rows, region.y + region.height);
+            // first sampled positions
+            final int startX = region.x + (minX - region.x + xSubsampling - 1) / xSubsampling
+                    * xSubsampling;
+            final int startY = region.y + (minY - region.y + ySubsampling - 1) / ySubsampling
+                    * ySubsampling;
+            for (int y = startY; y < maxY; y += ySubsampling) {
+                final int srcRow = (y - tileY) * rowLength;
+                final int dstRow = (y - region.y) / ySubsampling * width;
+                if (xSubsampling == 1) {
+                    if (startX < maxX) {
+                        System.arraycopy(samples, srcRow + (startX - tileX) * bands, bank,
+                                (dstRow + startX - region.x) * bands, (maxX - startX) * bands);
+                    }
+                } else {
+                    for (int x = startX; x < maxX; x += xSubsampling) {
+                        System.arraycopy(samples, srcRow + (x - tileX) * bands, bank, (dstRow
+                                + (x - region.x) / xSubsampling) * bands, bands);
+                    }
+                }
+            }
+        }
+
+        static Object getBank(DataBuffer buffer) {
+            switch (buffer.getDataType()) {
+            case DataBuffer.TYPE_BYTE:
+                return ((DataBufferByte) buffer).getData();
+            case DataBuffer.TYPE_USHORT:
+                return ((DataBufferUShort) buffer).getData();
+            case DataBuffer.TYPE_SHORT:
+                return ((DataBufferShort) buffer).getData();
+            case DataBuffer.TYPE_INT:
+                return ((DataBufferInt) buffer).getData();
+            case DataBuffer.TYPE_FLOAT:
+                return ((DataBufferFloat) buffer).getData();
+            case DataBuffer.TYPE_DOUBLE:
+                return ((DataBufferDouble) buffer).getData();
+            default:
+                throw new IllegalArgumentException("Unsupported data type "
+                        + buffer.getDataType());
+            }
+        }
+    }
+}
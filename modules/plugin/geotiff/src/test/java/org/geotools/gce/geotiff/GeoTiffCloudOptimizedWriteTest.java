@@ -0,0 +1,165 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2013, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.gce.geotiff;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.Rectangle;
+import java.awt.image.Raster;
+import java.awt.image.RenderedImage;
+import java.io.File;
+
+import org.geotools.coverage.CoverageFactoryFinder;
+import org.geotools.coverage.grid.GridCoverage2D;
+import org.geotools.coverage.grid.io.imageio.GeoToolsWriteParams;
+import org.geotools.geometry.jts.ReferencedEnvelope;
+import org.geotools.referencing.crs.DefaultGeographicCRS;
+import org.geotools.test.TestData;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.opengis.parameter.GeneralParameterValue;
+import org.opengis.parameter.ParameterValue;
+
+/**
+ * Tests writing cloud optimized GeoTIFFs with the {@link GeoTiffWriter}
+ *
+ * @source $URL$
+ */
+public class GeoTiffCloudOptimizedWriteTest {
+
+    private static final int SIZE = 500;
+
+    private GridCoverage2D coverage;
+
+    private File file;
+
+    @Before
+    public void setUp() throws Exception {
+        final float[][] data = new float[SIZE][SIZE];
+        for (int y = 0; y < SIZE; y++) {
+            for (int x = 0; x < SIZE; x++) {
+                data[y][x] = x * 1000 + y;
+            }
+        }
+        coverage = CoverageFactoryFinder.getGridCoverageFactory(null).create("cog", data,
+                new ReferencedEnvelope(0, 50, 0, 50, DefaultGeographicCRS.WGS84));
+        file = new File(TestData.file(GeoTiffReaderTest.class, "."), "cog.tif");
+    }
+
+    @After
+    public void tearDown() {
+        file.delete();
+    }
+
+    private void write(String compression, int numOverviews) throws Exception {
+        final GeoTiffWriter writer = new GeoTiffWriter(file);
+        final GeoTiffWriteParams wp = new GeoTiffWriteParams();
+        wp.setCloudOptimized(true);
+        wp.setNumOverviews(numOverviews);
+        if (compression != null) {
+            wp.setCompressionMode(GeoTiffWriteParams.MODE_EXPLICIT);
+            wp.setCompressionType(compression);
+        }
+        wp.setTilingMode(GeoToolsWriteParams.MODE_EXPLICIT);
+        wp.setTiling(128, 128);
+        final ParameterValue<GeoToolsWriteParams> value = GeoTiffFormat.GEOTOOLS_WRITE_PARAMS
+                .createValue();
+        value.setValue(wp);
+        writer.write(coverage, new GeneralParameterValue[] { value });
+        writer.dispose();
+    }
+
+    private static void assertSameSamples(RenderedImage expected, RenderedImage actual) {
+        assertEquals(expected.getWidth(), actual.getWidth());
+        assertEquals(expected.getHeight(), actual.getHeight());
+        final Raster r1 = expected.getData();
+        final Raster r2 = actual.getData();
+        for (int y = 0; y < r1.getHeight(); y++) {
+            for (int x = 0; x < r1.getWidth(); x++) {
+                assertEquals(r1.getSampleDouble(r1.getMinX() + x, r1.getMinY() + y, 0),
+                        r2.getSampleDouble(r2.getMinX() + x, r2.getMinY() + y, 0), 0d);
+            }
+        }
+    }
+
+    @Test
+    public void testLayout() throws Exception {
+        write("Deflate", GeoTiffWriteParams.AUTO_OVERVIEWS);
+
+        // the whole structure is read with the first request
+        final GeoTiffTileReadTest.CountingRangeReader rangeReader = new GeoTiffTileReadTest.CountingRangeReader(
+                file);
+        try {
+            final TiffLayout layout = TiffLayout.parse(rangeReader);
+            assertEquals(1, rangeReader.reads.get());
+
+            // 500 -> 250 -> 125, fitting in a tile
+            assertEquals(3, layout.getNumLevels());
+            assertEquals(SIZE, layout.getLevel(0).width);
+            assertEquals(SIZE / 2, layout.getLevel(1).width);
+            assertEquals(SIZE / 4, layout.getLevel(2).height);
+
+            // directories first, then tiles, smallest overview first
+            long previous = 0;
+            for (int i = layout.getNumLevels() - 1; i >= 0; i--) {
+                final TiffLayout.Level level = layout.getLevel(i);
+                assertEquals(128, level.tileWidth);
+                assertEquals(TiffLayout.COMPRESSION_DEFLATE, level.compression);
+                for (long offset : level.offsets) {
+                    assertTrue(offset > previous);
+                    previous = offset;
+                }
+            }
+
+            // overviews average the previous level
+            final TiffTileReader tileReader = new TiffTileReader(rangeReader, layout, null);
+            final Raster full = tileReader.read(0, new Rectangle(0, 0, SIZE, SIZE), 1, 1);
+            final Raster overview = tileReader.read(1, new Rectangle(0, 0, SIZE / 2, SIZE / 2),
+                    1, 1);
+            for (int y = 0; y < SIZE / 2; y += 17) {
+                for (int x = 0; x < SIZE / 2; x += 13) {
+                    final double expected = (full.getSampleDouble(2 * x, 2 * y, 0)
+                            + full.getSampleDouble(2 * x + 1, 2 * y, 0)
+                            + full.getSampleDouble(2 * x, 2 * y + 1, 0) + full.getSampleDouble(
+                            2 * x + 1, 2 * y + 1, 0)) / 4;
+                    assertEquals(expected, overview.getSampleDouble(x, y, 0), 1e-3);
+                }
+            }
+        } finally {
+            rangeReader.close();
+        }
+    }
+
+    @Test
+    public void testReadBack() throws Exception {
+        for (String compression : new String[] { null, "LZW", "Deflate", "PackBits" }) {
+            write(compression, 1);
+            final GeoTiffReader reader = new GeoTiffReader(file);
+            try {
+                assertEquals(1, reader.getNumOverviews());
+                assertTrue(coverage.getEnvelope2D().boundsEquals(
+                        reader.getOriginalEnvelope(), 0, 1, 1e-9));
+                final GridCoverage2D read = reader.read(null);
+                assertSameSamples(coverage.getRenderedImage(), read.getRenderedImage());
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+}
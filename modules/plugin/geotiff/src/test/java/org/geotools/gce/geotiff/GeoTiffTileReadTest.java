@@ -0,0 +1,211 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2013, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.gce.geotiff;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.Rectangle;
+import java.awt.geom.Point2D;
+import java.awt.image.Raster;
+import java.awt.image.RenderedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.geotools.coverage.CoverageFactoryFinder;
+import org.geotools.coverage.grid.GridCoverage2D;
+import org.geotools.coverage.grid.GridEnvelope2D;
+import org.geotools.coverage.grid.GridGeometry2D;
+import org.geotools.coverage.grid.io.AbstractGridFormat;
+import org.geotools.coverage.grid.io.imageio.GeoToolsWriteParams;
+import org.geotools.factory.Hints;
+import org.geotools.geometry.GeneralEnvelope;
+import org.geotools.geometry.jts.ReferencedEnvelope;
+import org.geotools.referencing.crs.DefaultGeographicCRS;
+import org.geotools.test.TestData;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.opengis.parameter.GeneralParameterValue;
+import org.opengis.parameter.ParameterValue;
+
+/**
+ * Tests the tile based, range reading path of the {@link GeoTiffReader}
+ *
+ * @source $URL$
+ */
+public class GeoTiffTileReadTest {
+
+    private static final int SIZE = 500;
+
+    private File file;
+
+    private ExecutorService executor;
+
+    /**
+     * A range reader counting the bytes it reads
+     */
+    static class CountingRangeReader extends FileRangeReader {
+
+        final AtomicLong bytesRead = new AtomicLong();
+
+        final AtomicLong reads = new AtomicLong();
+
+        CountingRangeReader(File file) throws IOException {
+            super(file);
+        }
+
+        @Override
+        public void read(long position, byte[] buffer, int offset, int length) throws IOException {
+            reads.incrementAndGet();
+            bytesRead.addAndGet(length);
+            super.read(position, buffer, offset, length);
+        }
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        executor = Executors.newFixedThreadPool(4);
+
+        // a tiled, LZW compressed GeoTIFF
+        final float[][] data = new float[SIZE][SIZE];
+        for (int y = 0; y < SIZE; y++) {
+            for (int x = 0; x < SIZE; x++) {
+                data[y][x] = x * 1000 + y;
+            }
+        }
+        final GridCoverage2D coverage = CoverageFactoryFinder.getGridCoverageFactory(null).create(
+                "tiled", data,
+                new ReferencedEnvelope(0, 50, 0, 50, DefaultGeographicCRS.WGS84));
+        file = new File(TestData.file(GeoTiffReaderTest.class, "."), "tileRead.tif");
+        final GeoTiffWriter writer = new GeoTiffWriter(file);
+        final GeoTiffWriteParams wp = new GeoTiffWriteParams();
+        wp.setCompressionMode(GeoTiffWriteParams.MODE_EXPLICIT);
+        wp.setCompressionType("LZW");
+        wp.setTilingMode(GeoToolsWriteParams.MODE_EXPLICIT);
+        wp.setTiling(64, 64);
+        final ParameterValue<GeoToolsWriteParams> value = GeoTiffFormat.GEOTOOLS_WRITE_PARAMS
+                .createValue();
+        value.setValue(wp);
+        writer.write(coverage, new GeneralParameterValue[] { value });
+        writer.dispose();
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdown();
+        file.delete();
+    }
+
+    private static GeneralParameterValue[] tileRead() {
+        final ParameterValue<Boolean> tileRead = GeoTiffFormat.COG_READ.createValue();
+        tileRead.setValue(Boolean.TRUE);
+        return new GeneralParameterValue[] { tileRead };
+    }
+
+    private static void assertSameSamples(RenderedImage expected, RenderedImage actual) {
+        assertEquals(expected.getWidth(), actual.getWidth());
+        assertEquals(expected.getHeight(), actual.getHeight());
+        assertEquals(expected.getSampleModel().getNumBands(), actual.getSampleModel()
+                .getNumBands());
+        final Raster r1 = expected.getData();
+        final Raster r2 = actual.getData();
+        final int bands = r1.getNumBands();
+        final double[] p1 = r1.getPixels(r1.getMinX(), r1.getMinY(), r1.getWidth(),
+                r1.getHeight(), new double[r1.getWidth() * r1.getHeight() * bands]);
+        final double[] p2 = r2.getPixels(r2.getMinX(), r2.getMinY(), r2.getWidth(),
+                r2.getHeight(), new double[r2.getWidth() * r2.getHeight() * bands]);
+        for (int i = 0; i < p1.length; i++) {
+            assertEquals(p1[i], p2[i], 0d);
+        }
+    }
+
+    @Test
+    public void testFullRead() throws Exception {
+        final GeoTiffReader reader = new GeoTiffReader(file, new Hints(
+                Hints.EXECUTOR_SERVICE, executor));
+        try {
+            final GridCoverage2D expected = reader.read(null);
+            final GridCoverage2D actual = reader.read(tileRead());
+            assertTrue(expected.getEnvelope2D().boundsEquals(actual.getEnvelope2D(), 0, 1, 1e-9));
+            assertSameSamples(expected.getRenderedImage(), actual.getRenderedImage());
+        } finally {
+            reader.dispose();
+        }
+    }
+
+    @Test
+    public void testReadOnlyIntersectingTiles() throws Exception {
+        final CountingRangeReader rangeReader = new CountingRangeReader(file);
+        final GeoTiffReader reader = new GeoTiffReader(rangeReader);
+        try {
+            assertEquals("tileRead", reader.getGridCoverageNames()[0]);
+            rangeReader.bytesRead.set(0);
+
+            // a 50x50 pixels area in the middle
+            final ParameterValue<GridGeometry2D> gg = AbstractGridFormat.READ_GRIDGEOMETRY2D
+                    .createValue();
+            final GeneralEnvelope envelope = new GeneralEnvelope(new ReferencedEnvelope(20, 25,
+                    20, 25, DefaultGeographicCRS.WGS84));
+            gg.setValue(new GridGeometry2D(new GridEnvelope2D(new Rectangle(0, 0, 50, 50)),
+                    envelope));
+            final GridCoverage2D coverage = reader.read(new GeneralParameterValue[] { gg });
+            assertNotNull(coverage);
+            assertTrue(coverage.getEnvelope2D().contains(envelope.getMinimum(0),
+                    envelope.getMinimum(1), envelope.getSpan(0), envelope.getSpan(1)));
+            final RenderedImage image = coverage.getRenderedImage();
+            assertTrue(image.getWidth() < 100 && image.getHeight() < 100);
+            assertTrue(rangeReader.bytesRead.get() < file.length() / 4);
+
+            // the samples still map to the right pixels of the full image
+            final GeoTiffReader fullReader = new GeoTiffReader(file);
+            final GridCoverage2D full = fullReader.read(null);
+            final Point2D position = new Point2D.Double(22.51, 22.51);
+            final double[] expected = full.evaluate(position, (double[]) null);
+            final double[] actual = coverage.evaluate(position, (double[]) null);
+            fullReader.dispose();
+            assertEquals(expected[0], actual[0], 0d);
+            assertEquals(225 * 1000 + (SIZE - 226), actual[0], 0d);
+        } finally {
+            reader.dispose();
+            rangeReader.close();
+        }
+    }
+
+    @Test
+    public void testTestData() throws Exception {
+        final File[] files = TestData.file(GeoTiffReaderTest.class, ".").listFiles();
+        for (File tiff : files) {
+            final String path = tiff.getAbsolutePath().toLowerCase();
+            if (!path.endsWith("tif") && !path.endsWith("tiff") || path.contains("no_crs")) {
+                continue;
+            }
+            final GeoTiffReader reader = new GeoTiffReader(tiff);
+            try {
+                final RenderedImage expected = reader.read(null).getRenderedImage();
+                final RenderedImage actual = reader.read(tileRead()).getRenderedImage();
+                assertSameSamples(expected, actual);
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+}
@@ -56,6 +56,7 @@ import org.apache.commons.beanutils.MethodUtils;
 import org.geotools.coverage.grid.GridEnvelope2D;
 import org.geotools.data.DataUtilities;
 import org.geotools.factory.Hints;
+import org.geotools.gce.imagemosaic.GranuleReaderPool.PooledReader;
 import org.geotools.geometry.DirectPosition2D;
 import org.geotools.geometry.jts.JTS;
 import org.geotools.geometry.jts.ReferencedEnvelope;
@@ -290,6 +291,7 @@ public class GranuleDescriptor {
 		// create the base grid to world transformation
 		ImageInputStream inStream = null;
 		ImageReader reader = null;
+		boolean poolReader = false;
 		try {
 			//
 			//get info about the raster we have to read
@@ -401,15 +403,24 @@ public class GranuleDescriptor {
 			    overviewsController = new OverviewsController(highestRes, numberOfOvervies, overviewsResolution);
 			}
                         //////////////////////////////////////////////////////////////////////////
-			
+
+			// the header has been parsed already, keep the reader for later reads if we can
+			poolReader = !ignoreMetadata;
+
 
 		} catch (IllegalStateException e) {
 			throw new IllegalArgumentException(e);
-			
+
 		} catch (IOException e) {
 			throw new IllegalArgumentException(e);
 		} finally {
-		    // close/dispose stream and readers
+		    // hand the reader over to the pool, if any, otherwise close/dispose stream and readers
+		    final GranuleReaderPool readerPool = poolReader ? GranuleReaderPool.lookup(hints) : null;
+		    if (readerPool != null
+		            && readerPool.offer(granuleUrl, getReaderContext(hints), inStream, reader)) {
+		        inStream = null;
+		        reader = null;
+		    }
 			try {
 				if(inStream != null){
 					inStream.close();
@@ -424,6 +435,14 @@ public class GranuleDescriptor {
 		}
 	}
 	
+	/**
+	 * Returns what {@link #customizeReaderInitialization(ImageReader, Hints)} customizes a reader
+	 * with, pooled readers are only reused with the same customization.
+	 */
+	private static Object getReaderContext(Hints hints) {
+	    return hints != null ? hints.get(Utils.AUXILIARY_FILES_PATH) : null;
+	}
+
 	private boolean customizeReaderInitialization(ImageReader reader, Hints hints) {
             String classString = reader.getClass().getName();
             // Special Management for NetCDF readers to set external Auxiliary File
@@ -646,26 +665,42 @@ public class GranuleDescriptor {
 
 		ImageInputStream inStream=null;
 		ImageReader reader=null;
+		// readers can be reused only when reading directly, deferred reads own them
+		final GranuleReaderPool readerPool = request.getReadType() == ReadType.DIRECT_READ
+		        && cachedReaderSPI != null ? GranuleReaderPool.lookup(hints) : null;
+		PooledReader pooledReader = null;
+		boolean reuseReader = false;
 		try {
 			//
 			//get info about the raster we have to read
 			//
-			
+
 			// get a stream
 		        assert cachedStreamSPI!=null:"no cachedStreamSPI available!";
-                        inStream = cachedStreamSPI.createInputStreamInstance(granuleUrl, ImageIO.getUseCache(), ImageIO.getCacheDirectory());
+		        if (readerPool != null) {
+		            pooledReader = readerPool.borrow(granuleUrl, getReaderContext(hints),
+		                    cachedStreamSPI, cachedReaderSPI);
+		            if (pooledReader == null)
+		                return null;
+		            inStream = pooledReader.getStream();
+		            reader = pooledReader.getReader();
+		        } else {
+		            inStream = cachedStreamSPI.createInputStreamInstance(granuleUrl, ImageIO.getUseCache(), ImageIO.getCacheDirectory());
+		        }
 			if(inStream==null)
 				return null;
-			
-	
-			// get a reader and try to cache the relevant SPI
-			if(cachedReaderSPI==null){
-				reader = ImageIOExt.getImageioReader(inStream);
-				if(reader!=null)
-					cachedReaderSPI=reader.getOriginatingProvider();
+
+
+			// get a reader (unless the pool gave us one) and try to cache the relevant SPI
+			if(pooledReader==null){
+				if(cachedReaderSPI==null){
+					reader = ImageIOExt.getImageioReader(inStream);
+					if(reader!=null)
+						cachedReaderSPI=reader.getOriginatingProvider();
+				}
+				else
+					reader=cachedReaderSPI.createReaderInstance();
 			}
-			else
-				reader=cachedReaderSPI.createReaderInstance();
 			if(reader==null) {
 				if (LOGGER.isLoggable(java.util.logging.Level.WARNING)){
 					LOGGER.warning(new StringBuilder("Unable to get s reader for granuleDescriptor ").append(this.toString())
@@ -673,9 +708,11 @@ public class GranuleDescriptor {
 				}
 				return null;
 			}
-			// set input
-			customizeReaderInitialization(reader, hints);
-			reader.setInput(inStream);
+			// set input, unless a pooled reader has been set up by a previous request already
+			if (pooledReader == null || !pooledReader.isInitialized()) {
+			    customizeReaderInitialization(reader, hints);
+			    reader.setInput(inStream);
+			}
 			
 			// Checking for heterogeneous granules
 			if (request.isHeterogeneousGranules()){
@@ -720,8 +757,9 @@ public class GranuleDescriptor {
 				if (LOGGER.isLoggable(java.util.logging.Level.FINE)){
 					LOGGER.fine("Got empty area for granuleDescriptor "+this.toString()+
 					        " with request "+request.toString()+" Resulting in no granule loaded: Empty result");
-					
+
 				}
+				reuseReader = true;
 				return null;
 
 			} else if (LOGGER.isLoggable(java.util.logging.Level.FINER)){
@@ -753,7 +791,8 @@ public class GranuleDescriptor {
 			try {
 				// read
 				raster= request.getReadType().read(readParameters,imageIndex, granuleUrl, selectedlevel.rasterDimensions, reader, hints,false);
-				
+				reuseReader = raster != null;
+
 			} catch (Throwable e) {
 				if (LOGGER.isLoggable(java.util.logging.Level.FINE)){
 					LOGGER.log(java.util.logging.Level.FINE,
@@ -946,6 +985,16 @@ public class GranuleDescriptor {
 			return null;
 
                 } finally {
+                    if (pooledReader != null) {
+                        // give the reader back for the next requests, unless something went wrong with it
+                        if (reuseReader) {
+                            readerPool.release(pooledReader);
+                        } else {
+                            readerPool.invalidate(pooledReader);
+                        }
+                        inStream = null;
+                        reader = null;
+                    }
                     try {
                         if (request.getReadType() != ReadType.JAI_IMAGEREAD && inStream != null) {
                             inStream.close();
@@ -0,0 +1,322 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2013, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.gce.imagemosaic;
+
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.geotools.gce.imagemosaic.GranuleDescriptor.GranuleLoadingResult;
+import org.geotools.util.Utilities;
+
+/**
+ * Schedules the {@link GranuleLoader}s of a single request on a shared {@link ExecutorService},
+ * handing back the loaded granules as soon as they complete rather than in submission order.
+ *
+ * <p>
+ * The scheduler allows a request to:
+ * <ul>
+ * <li>cap the number of granules being loaded concurrently, so that a single request touching
+ * lots of granules does not take over the shared pool. Granules exceeding the cap are queued
+ * locally and submitted, in submission order, as soon as a running load completes;</li>
+ * <li>set a deadline after which the outstanding loads are cancelled.</li>
+ * </ul>
+ *
+ * <p>
+ * Granules are grouped in {@link Batch}es, one per mosaic to be produced, sharing the cap and the
+ * deadline of the request. Each {@link Batch} is meant to be consumed by a single thread, and
+ * cancelling it, explicitly or because its consumer ran out of time, only affects its own loads.
+ */
+class GranuleLoadingScheduler {
+
+    /** Logger. */
+    private final static Logger LOGGER = org.geotools.util.logging.Logging.getLogger(GranuleLoadingScheduler.class);
+
+    /**
+     * A granule load, remembering its position in the submission order of its {@link Batch},
+     * which is the order in which granules must be mosaicked.
+     */
+    final class GranuleLoadingTask extends FutureTask<GranuleLoadingResult> {
+
+        private final Batch batch;
+
+        private final int index;
+
+        private GranuleLoadingTask(final Callable<GranuleLoadingResult> loader, final Batch batch, final int index) {
+            super(loader);
+            this.batch = batch;
+            this.index = index;
+        }
+
+        /**
+         * @return the position of this granule in the submission order of its {@link Batch}.
+         */
+        int getIndex() {
+            return index;
+        }
+
+        @Override
+        public void run() {
+            try {
+                super.run();
+            } finally {
+                // the slot is freed only once the executor thread is done with the task, even
+                // when it got cancelled while running
+                taskDone();
+            }
+        }
+
+        @Override
+        protected void done() {
+            synchronized (GranuleLoadingScheduler.this) {
+                batch.outstanding.remove(this);
+            }
+            batch.completed.add(this);
+        }
+    }
+
+    /**
+     * The granules to be loaded for a single mosaic.
+     */
+    final class Batch {
+
+        /** Tasks completed but not yet consumed, in completion order */
+        private final BlockingQueue<GranuleLoadingTask> completed = new LinkedBlockingQueue<GranuleLoadingTask>();
+
+        /** Tasks of this batch not completed yet, either pending or handed over to the executor */
+        private final Set<GranuleLoadingTask> outstanding = new LinkedHashSet<GranuleLoadingTask>();
+
+        private int scheduled;
+
+        private int consumed;
+
+        private boolean cancelled;
+
+        private Batch() {
+        }
+
+        /**
+         * Schedules the provided {@link GranuleLoader}.
+         *
+         * @param loader the {@link GranuleLoader} to schedule.
+         */
+        void submit(final Callable<GranuleLoadingResult> loader) {
+            Utilities.ensureNonNull("loader", loader);
+            final GranuleLoadingTask task;
+            synchronized (GranuleLoadingScheduler.this) {
+                if (cancelled) {
+                    throw new IllegalStateException("Granule loading has been cancelled already");
+                }
+                task = new GranuleLoadingTask(loader, this, scheduled++);
+                outstanding.add(task);
+                if (maxConcurrency > 0 && running >= maxConcurrency) {
+                    pending.add(task);
+                    return;
+                }
+                running++;
+            }
+            execute(task);
+        }
+
+        /**
+         * @return the number of granules scheduled so far in this batch.
+         */
+        int getScheduled() {
+            synchronized (GranuleLoadingScheduler.this) {
+                return scheduled;
+            }
+        }
+
+        /**
+         * Waits for the next granule of this batch to complete its loading.
+         *
+         * @return the next completed {@link GranuleLoadingTask}, or <code>null</code> if all the
+         *         scheduled granules have been consumed already or the loading has been cancelled,
+         *         as an instance because the deadline expired.
+         * @throws InterruptedException in case the calling thread gets interrupted while waiting,
+         *         the outstanding loads of this batch get cancelled as well.
+         */
+        GranuleLoadingTask next() throws InterruptedException {
+            synchronized (GranuleLoadingScheduler.this) {
+                if (consumed >= scheduled || cancelled) {
+                    return null;
+                }
+            }
+            final GranuleLoadingTask task;
+            try {
+                if (deadline > 0) {
+                    final long timeout = deadline - System.currentTimeMillis();
+                    task = timeout > 0 ? completed.poll(timeout, TimeUnit.MILLISECONDS) : completed.poll();
+                } else {
+                    task = completed.take();
+                }
+            } catch (InterruptedException e) {
+                cancel();
+                throw e;
+            }
+            if (task == null) {
+                if (LOGGER.isLoggable(Level.WARNING)) {
+                    LOGGER.warning("Granule loading deadline expired, cancelling the outstanding granule loads");
+                }
+                cancel();
+                return null;
+            }
+            synchronized (GranuleLoadingScheduler.this) {
+                consumed++;
+            }
+            return task;
+        }
+
+        /**
+         * Cancels the loads of this batch not completed yet. Granules already loaded, and the
+         * loads of the other batches, are left untouched.
+         */
+        void cancel() {
+            final List<GranuleLoadingTask> toCancel;
+            synchronized (GranuleLoadingScheduler.this) {
+                if (cancelled) {
+                    return;
+                }
+                cancelled = true;
+                toCancel = new LinkedList<GranuleLoadingTask>(outstanding);
+                pending.removeAll(toCancel);
+            }
+            for (GranuleLoadingTask task : toCancel) {
+                task.cancel(true);
+            }
+        }
+
+        /**
+         * @return <code>true</code> if this batch has been cancelled, either explicitly or
+         *         because of the deadline expiring.
+         */
+        boolean isCancelled() {
+            synchronized (GranuleLoadingScheduler.this) {
+                return cancelled;
+            }
+        }
+    }
+
+    private final ExecutorService executor;
+
+    private final int maxConcurrency;
+
+    private final long deadline;
+
+    /** Tasks waiting for a free slot, in submission order */
+    private final LinkedList<GranuleLoadingTask> pending = new LinkedList<GranuleLoadingTask>();
+
+    /** The batches created so far */
+    private final List<Batch> batches = new LinkedList<Batch>();
+
+    private int running;
+
+    /**
+     * Creates a new scheduler.
+     *
+     * @param executor the {@link ExecutorService} to run the granule loads on.
+     * @param maxConcurrency the maximum number of granules loaded concurrently for this request,
+     *        a non positive value meaning no limit.
+     * @param deadline the time, in milliseconds since the epoch, after which the loads still
+     *        outstanding get cancelled. A non positive value means no deadline.
+     */
+    GranuleLoadingScheduler(final ExecutorService executor, final int maxConcurrency, final long deadline) {
+        Utilities.ensureNonNull("executor", executor);
+        this.executor = executor;
+        this.maxConcurrency = maxConcurrency;
+        this.deadline = deadline;
+    }
+
+    /**
+     * @return a new {@link Batch} of granules sharing the limits of this scheduler.
+     */
+    Batch newBatch() {
+        final Batch batch = new Batch();
+        synchronized (this) {
+            batches.add(batch);
+        }
+        return batch;
+    }
+
+    /**
+     * Cancels the loads of all the batches not completed yet, as an instance because the request
+     * failed. Granules already loaded are left untouched.
+     */
+    void cancel() {
+        final List<Batch> toCancel;
+        synchronized (this) {
+            toCancel = new LinkedList<Batch>(batches);
+        }
+        for (Batch batch : toCancel) {
+            batch.cancel();
+        }
+    }
+
+    /**
+     * @return the number of granule loads currently handed over to the executor.
+     */
+    synchronized int getRunning() {
+        return running;
+    }
+
+    /**
+     * Frees the slot of a completed task, submitting the next pending one if any. Once the
+     * deadline expired the pending tasks are not worth starting anymore, and get cancelled.
+     */
+    private void taskDone() {
+        GranuleLoadingTask next = null;
+        final List<GranuleLoadingTask> expired = new LinkedList<GranuleLoadingTask>();
+        synchronized (this) {
+            running--;
+            if (deadline > 0 && System.currentTimeMillis() > deadline) {
+                expired.addAll(pending);
+                pending.clear();
+            } else if (!pending.isEmpty()) {
+                next = pending.removeFirst();
+                running++;
+            }
+        }
+        for (GranuleLoadingTask task : expired) {
+            task.cancel(true);
+        }
+        if (next != null) {
+            execute(next);
+        }
+    }
+
+    private void execute(final GranuleLoadingTask task) {
+        try {
+            executor.execute(task);
+        } catch (RejectedExecutionException e) {
+            // the shared pool is saturated or shut down, load in the caller thread
+            if (LOGGER.isLoggable(Level.FINE)) {
+                LOGGER.log(Level.FINE, "Granule loading task rejected, running it in the current thread", e);
+            }
+            task.run();
+        }
+    }
+}
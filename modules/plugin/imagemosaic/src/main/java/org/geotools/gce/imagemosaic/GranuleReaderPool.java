@@ -0,0 +1,608 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2013, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.gce.imagemosaic;
+
+import java.io.IOException;
+import java.lang.ref.WeakReference;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.spi.ImageInputStreamSpi;
+import javax.imageio.spi.ImageReaderSpi;
+import javax.imageio.stream.ImageInputStream;
+
+import org.geotools.factory.Hints;
+import org.geotools.util.Utilities;
+
+/**
+ * A keyed pool of ready to use {@link ImageReader}s for the granules of a mosaic.
+ *
+ * <p>
+ * Opening a granule means creating an {@link ImageInputStream}, instantiating an
+ * {@link ImageReader} and letting it parse the file header (TIFF IFDs, GeoTIFF metadata, ...).
+ * For small requests on hot granules this dominates the read time, hence this pool keeps
+ * the reader/stream couples that have been used so far open, keyed by granule {@link URL},
+ * and hands them out again to the next request hitting the same granule. Readers are also keyed
+ * by the context they have been customized with, as an instance the auxiliary files path, since
+ * the customization happens only once, before the reader gets its input.
+ *
+ * <p>
+ * The pool is bounded in the total number of open handles (hence, of open files). When the
+ * limit is reached the least recently used idle handle is closed to make room; when no idle
+ * handle can be closed a transient handle is returned, which gets closed as soon as it is
+ * released. Idle handles are also closed once they have not been used for longer than the
+ * configured idle timeout, checked periodically in a background thread as well, so that an idle
+ * mosaic releases its files too.
+ *
+ * <p>
+ * Only {@link ReadType#DIRECT_READ} takes advantage of the pool, since with
+ * {@link ReadType#JAI_IMAGEREAD} the reader is owned by the deferred image.
+ *
+ * <p>
+ * The pool to use can be provided through the {@link Utils#GRANULE_READER_POOL} hint, its owner
+ * being in charge of clearing it. Otherwise, when enabled through the {@value #ENABLED_KEY}
+ * system property, each {@link ImageMosaicReader} creates its own pool, configured through the
+ * {@value #MAX_TOTAL_KEY}, {@value #MAX_IDLE_PER_GRANULE_KEY} and {@value #IDLE_TIMEOUT_KEY}
+ * system properties, and disposes it along with the reader. In both cases the readers of the
+ * granules removed from the mosaic are closed.
+ */
+public final class GranuleReaderPool {
+
+    /** Logger. */
+    private final static Logger LOGGER = org.geotools.util.logging.Logging.getLogger(GranuleReaderPool.class);
+
+    /** System property enabling a pool for each mosaic. */
+    public static final String ENABLED_KEY = "org.geotools.imagemosaic.readerPool";
+
+    /** System property setting the maximum number of open handles for each mosaic. */
+    public static final String MAX_TOTAL_KEY = "org.geotools.imagemosaic.readerPool.maxTotal";
+
+    /** System property setting the maximum number of idle handles per granule. */
+    public static final String MAX_IDLE_PER_GRANULE_KEY = "org.geotools.imagemosaic.readerPool.maxIdlePerGranule";
+
+    /** System property setting the idle timeout, in milliseconds. */
+    public static final String IDLE_TIMEOUT_KEY = "org.geotools.imagemosaic.readerPool.idleTimeout";
+
+    public static final int DEFAULT_MAX_TOTAL = 128;
+
+    public static final int DEFAULT_MAX_IDLE_PER_GRANULE = 4;
+
+    public static final long DEFAULT_IDLE_TIMEOUT = 60 * 1000;
+
+    /** Minimum delay between two idle eviction sweeps */
+    private static final long EVICTION_PERIOD = 1000;
+
+    /** Closes the expired idle handles of the pools in the background */
+    private static final Timer EVICTOR = new Timer("GT granule reader pool evictor", true);
+
+    /**
+     * A pooled {@link ImageReader} together with the {@link ImageInputStream} it reads from.
+     */
+    public static final class PooledReader {
+
+        final URL granuleUrl;
+
+        /** What the reader has been customized with, before setting its input */
+        final Object context;
+
+        final ImageInputStream stream;
+
+        final ImageReader reader;
+
+        /** Whether this handle is accounted for in the pool or will be closed on release */
+        final boolean pooled;
+
+        long lastUsed;
+
+        PooledReader(URL granuleUrl, Object context, ImageInputStream stream, ImageReader reader,
+                boolean pooled) {
+            this.granuleUrl = granuleUrl;
+            this.context = context;
+            this.stream = stream;
+            this.reader = reader;
+            this.pooled = pooled;
+        }
+
+        public ImageReader getReader() {
+            return reader;
+        }
+
+        public ImageInputStream getStream() {
+            return stream;
+        }
+
+        public URL getGranuleUrl() {
+            return granuleUrl;
+        }
+
+        /**
+         * @return <code>true</code> if the reader already had its input set, hence it
+         *         already went through the header parsing.
+         */
+        public boolean isInitialized() {
+            return reader.getInput() != null;
+        }
+
+        void close() {
+            try {
+                stream.close();
+            } catch (Throwable t) {
+                if (LOGGER.isLoggable(Level.FINE)) {
+                    LOGGER.log(Level.FINE, t.getLocalizedMessage(), t);
+                }
+            } finally {
+                try {
+                    reader.dispose();
+                } catch (Throwable t) {
+                    // swallow the exception, we are just trying to close as much stuff as possible
+                }
+            }
+        }
+    }
+
+    private final int maxTotal;
+
+    private final int maxIdlePerGranule;
+
+    private final long idleTimeout;
+
+    /** Idle handles per granule, most recently used last */
+    private final Map<URL, LinkedList<PooledReader>> idle = new HashMap<URL, LinkedList<PooledReader>>();
+
+    /** Number of pooled handles currently open, either idle or borrowed */
+    private int open;
+
+    private int idleCount;
+
+    private long lastEviction;
+
+    private boolean closed;
+
+    /**
+     * Creates a new pool.
+     *
+     * @param maxTotal maximum number of open handles kept by the pool.
+     * @param maxIdlePerGranule maximum number of idle handles kept for a single granule.
+     * @param idleTimeout time, in milliseconds, after which an unused handle gets closed.
+     *        A non positive value disables the idle eviction.
+     */
+    public GranuleReaderPool(final int maxTotal, final int maxIdlePerGranule, final long idleTimeout) {
+        if (maxTotal <= 0) {
+            throw new IllegalArgumentException("Illegal maxTotal value: " + maxTotal);
+        }
+        if (maxIdlePerGranule <= 0) {
+            throw new IllegalArgumentException("Illegal maxIdlePerGranule value: " + maxIdlePerGranule);
+        }
+        this.maxTotal = maxTotal;
+        this.maxIdlePerGranule = maxIdlePerGranule;
+        this.idleTimeout = idleTimeout;
+        if (idleTimeout > 0) {
+            final long period = Math.max(EVICTION_PERIOD, idleTimeout / 2);
+            EVICTOR.schedule(new Evictor(this), period, period);
+        }
+    }
+
+    /**
+     * Creates a pool configured through the {@value #MAX_TOTAL_KEY},
+     * {@value #MAX_IDLE_PER_GRANULE_KEY} and {@value #IDLE_TIMEOUT_KEY} system properties.
+     */
+    public static GranuleReaderPool create() {
+        return new GranuleReaderPool(
+                Integer.getInteger(MAX_TOTAL_KEY, DEFAULT_MAX_TOTAL),
+                Integer.getInteger(MAX_IDLE_PER_GRANULE_KEY, DEFAULT_MAX_IDLE_PER_GRANULE),
+                Long.getLong(IDLE_TIMEOUT_KEY, DEFAULT_IDLE_TIMEOUT));
+    }
+
+    /**
+     * Returns the pool to use for the provided hints, or <code>null</code> if pooling is disabled.
+     *
+     * @param hints the {@link Hints} in use, may be <code>null</code>.
+     * @return the {@link GranuleReaderPool} to use, or <code>null</code>.
+     */
+    public static GranuleReaderPool lookup(final Hints hints) {
+        if (hints != null && hints.containsKey(Utils.GRANULE_READER_POOL)) {
+            final Object pool = hints.get(Utils.GRANULE_READER_POOL);
+            if (pool instanceof GranuleReaderPool) {
+                return (GranuleReaderPool) pool;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Borrows a reader for the specified granule, with no customization, see
+     * {@link #borrow(URL, Object, ImageInputStreamSpi, ImageReaderSpi)}.
+     */
+    public PooledReader borrow(final URL granuleUrl, final ImageInputStreamSpi streamSpi,
+            final ImageReaderSpi readerSpi) throws IOException {
+        return borrow(granuleUrl, null, streamSpi, readerSpi);
+    }
+
+    /**
+     * Borrows a reader for the specified granule, opening a new one if no idle reader is
+     * available. The returned handle must be given back through {@link #release(PooledReader)}
+     * or {@link #invalidate(PooledReader)}.
+     *
+     * <p>
+     * Newly opened readers have no input set yet (see {@link PooledReader#isInitialized()}),
+     * so that the caller can customize them before setting the provided stream as input.
+     * Readers already initialized are handed out only when they have been customized with the
+     * same context.
+     *
+     * @param granuleUrl the granule to read.
+     * @param context what the reader is customized with, may be <code>null</code>.
+     * @param streamSpi the {@link ImageInputStreamSpi} to use to open the granule.
+     * @param readerSpi the {@link ImageReaderSpi} to use to create the reader.
+     * @return a {@link PooledReader} or <code>null</code> in case no stream or reader could be created.
+     * @throws IOException
+     */
+    public PooledReader borrow(final URL granuleUrl, final Object context,
+            final ImageInputStreamSpi streamSpi, final ImageReaderSpi readerSpi) throws IOException {
+        Utilities.ensureNonNull("granuleUrl", granuleUrl);
+        Utilities.ensureNonNull("streamSpi", streamSpi);
+        Utilities.ensureNonNull("readerSpi", readerSpi);
+
+        final List<PooledReader> toClose = new ArrayList<PooledReader>();
+        boolean pooled = false;
+        try {
+            synchronized (this) {
+                evictExpired(toClose);
+                final LinkedList<PooledReader> handles = idle.get(granuleUrl);
+                if (handles != null) {
+                    // most recently used first
+                    for (Iterator<PooledReader> it = handles.descendingIterator(); it.hasNext();) {
+                        final PooledReader handle = it.next();
+                        if (Utilities.equals(context, handle.context)) {
+                            it.remove();
+                            idleCount--;
+                            if (handles.isEmpty()) {
+                                idle.remove(granuleUrl);
+                            }
+                            return handle;
+                        }
+                    }
+                }
+                if (!closed) {
+                    if (open >= maxTotal) {
+                        evictEldest(toClose);
+                    }
+                    if (open < maxTotal) {
+                        open++;
+                        pooled = true;
+                    }
+                }
+            }
+        } finally {
+            close(toClose);
+        }
+
+        // open the granule outside of the lock
+        ImageInputStream stream = null;
+        ImageReader reader = null;
+        try {
+            stream = streamSpi.createInputStreamInstance(granuleUrl, ImageIO.getUseCache(), ImageIO.getCacheDirectory());
+            if (stream != null) {
+                reader = readerSpi.createReaderInstance();
+                if (reader != null) {
+                    final PooledReader handle = new PooledReader(granuleUrl, context, stream,
+                            reader, pooled);
+                    stream = null;
+                    reader = null;
+                    pooled = false;
+                    return handle;
+                }
+            }
+            return null;
+        } finally {
+            if (pooled) {
+                synchronized (this) {
+                    open--;
+                }
+            }
+            if (reader != null) {
+                reader.dispose();
+            }
+            if (stream != null) {
+                try {
+                    stream.close();
+                } catch (Throwable t) {
+                    // swallow the exception, we are just trying to close as much stuff as possible
+                }
+            }
+        }
+    }
+
+    /**
+     * Hands over to this pool a reader with no customization, see
+     * {@link #offer(URL, Object, ImageInputStream, ImageReader)}.
+     */
+    public boolean offer(final URL granuleUrl, final ImageInputStream stream, final ImageReader reader) {
+        return offer(granuleUrl, null, stream, reader);
+    }
+
+    /**
+     * Hands over to this pool a reader which has been opened elsewhere, as an instance while
+     * setting up the granule, so that it can be reused by the next requests.
+     *
+     * @param granuleUrl the granule the reader is reading from.
+     * @param context what the reader has been customized with, may be <code>null</code>.
+     * @param stream the {@link ImageInputStream} set as input of the reader.
+     * @param reader the {@link ImageReader} to pool.
+     * @return <code>true</code> if the pool took ownership of the reader, <code>false</code> if
+     *         the caller is still responsible for closing it.
+     */
+    public boolean offer(final URL granuleUrl, final Object context,
+            final ImageInputStream stream, final ImageReader reader) {
+        Utilities.ensureNonNull("granuleUrl", granuleUrl);
+        if (stream == null || reader == null || reader.getInput() != stream) {
+            return false;
+        }
+        final List<PooledReader> toClose = new ArrayList<PooledReader>();
+        try {
+            synchronized (this) {
+                final LinkedList<PooledReader> handles = idle.get(granuleUrl);
+                if (closed || (handles != null && handles.size() >= maxIdlePerGranule)) {
+                    return false;
+                }
+                evictExpired(toClose);
+                if (open >= maxTotal) {
+                    evictEldest(toClose);
+                    if (open >= maxTotal) {
+                        return false;
+                    }
+                }
+                open++;
+            }
+        } finally {
+            close(toClose);
+        }
+        release(new PooledReader(granuleUrl, context, stream, reader, true));
+        return true;
+    }
+
+    /**
+     * Gives back a reader borrowed from this pool, making it available for the next requests
+     * on the same granule.
+     *
+     * @param handle the {@link PooledReader} to release.
+     */
+    public void release(final PooledReader handle) {
+        if (handle == null) {
+            return;
+        }
+        if (!handle.pooled) {
+            handle.close();
+            return;
+        }
+        final List<PooledReader> toClose = new ArrayList<PooledReader>();
+        synchronized (this) {
+            LinkedList<PooledReader> handles = idle.get(handle.granuleUrl);
+            if (closed || (handles != null && handles.size() >= maxIdlePerGranule)) {
+                open--;
+                toClose.add(handle);
+            } else {
+                if (handles == null) {
+                    handles = new LinkedList<PooledReader>();
+                    idle.put(handle.granuleUrl, handles);
+                }
+                handle.lastUsed = System.currentTimeMillis();
+                handles.addLast(handle);
+                idleCount++;
+            }
+            evictExpired(toClose);
+        }
+        close(toClose);
+    }
+
+    /**
+     * Closes a reader borrowed from this pool which should not be reused, as an instance
+     * because an error occurred while using it.
+     *
+     * @param handle the {@link PooledReader} to close.
+     */
+    public void invalidate(final PooledReader handle) {
+        if (handle == null) {
+            return;
+        }
+        if (handle.pooled) {
+            synchronized (this) {
+                open--;
+            }
+        }
+        handle.close();
+    }
+
+    /**
+     * Closes all the idle readers for the specified granule, as an instance since it has been
+     * removed from the mosaic or modified on disk.
+     *
+     * @param granuleUrl the granule to evict.
+     */
+    public void evict(final URL granuleUrl) {
+        List<PooledReader> toClose = null;
+        synchronized (this) {
+            final LinkedList<PooledReader> handles = idle.remove(granuleUrl);
+            if (handles != null) {
+                toClose = handles;
+                open -= handles.size();
+                idleCount -= handles.size();
+            }
+        }
+        close(toClose);
+    }
+
+    /**
+     * Closes all the idle readers. Readers currently borrowed are closed upon release.
+     *
+     * @param dispose if <code>true</code> the pool won't keep any reader open afterwards.
+     */
+    public void clear(final boolean dispose) {
+        final List<PooledReader> toClose = new ArrayList<PooledReader>();
+        synchronized (this) {
+            for (LinkedList<PooledReader> handles : idle.values()) {
+                toClose.addAll(handles);
+            }
+            idle.clear();
+            open -= idleCount;
+            idleCount = 0;
+            closed |= dispose;
+        }
+        close(toClose);
+    }
+
+    /**
+     * Closes the idle readers unused for longer than the idle timeout.
+     */
+    void evictExpired() {
+        final List<PooledReader> toClose = new ArrayList<PooledReader>();
+        synchronized (this) {
+            evictExpired(toClose);
+        }
+        close(toClose);
+    }
+
+    synchronized boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * @return the number of readers currently open and accounted for by this pool.
+     */
+    public synchronized int getOpenCount() {
+        return open;
+    }
+
+    /**
+     * @return the number of readers currently waiting in this pool to be reused.
+     */
+    public synchronized int getIdleCount() {
+        return idleCount;
+    }
+
+    public int getMaxTotal() {
+        return maxTotal;
+    }
+
+    public int getMaxIdlePerGranule() {
+        return maxIdlePerGranule;
+    }
+
+    public long getIdleTimeout() {
+        return idleTimeout;
+    }
+
+    /**
+     * Collects the idle handles unused for longer than the idle timeout. Must be called while
+     * holding the lock on this pool.
+     */
+    private void evictExpired(final List<PooledReader> toClose) {
+        if (idleTimeout <= 0 || idleCount == 0) {
+            return;
+        }
+        final long now = System.currentTimeMillis();
+        if (now - lastEviction < EVICTION_PERIOD) {
+            return;
+        }
+        lastEviction = now;
+        for (Iterator<LinkedList<PooledReader>> it = idle.values().iterator(); it.hasNext();) {
+            final LinkedList<PooledReader> handles = it.next();
+            // handles are sorted by last usage, the oldest come first
+            while (!handles.isEmpty() && now - handles.getFirst().lastUsed > idleTimeout) {
+                toClose.add(handles.removeFirst());
+                open--;
+                idleCount--;
+            }
+            if (handles.isEmpty()) {
+                it.remove();
+            }
+        }
+    }
+
+    /**
+     * Collects the least recently used idle handle, if any. Must be called while holding
+     * the lock on this pool.
+     */
+    private void evictEldest(final List<PooledReader> toClose) {
+        URL eldestKey = null;
+        long eldestTime = Long.MAX_VALUE;
+        for (Map.Entry<URL, LinkedList<PooledReader>> entry : idle.entrySet()) {
+            final PooledReader first = entry.getValue().getFirst();
+            if (first.lastUsed < eldestTime) {
+                eldestTime = first.lastUsed;
+                eldestKey = entry.getKey();
+            }
+        }
+        if (eldestKey != null) {
+            final LinkedList<PooledReader> handles = idle.get(eldestKey);
+            toClose.add(handles.removeFirst());
+            if (handles.isEmpty()) {
+                idle.remove(eldestKey);
+            }
+            open--;
+            idleCount--;
+        }
+    }
+
+    /**
+     * Periodically evicts the expired handles of a pool, until it is closed or garbage collected
+     */
+    private static final class Evictor extends TimerTask {
+
+        private final WeakReference<GranuleReaderPool> pool;
+
+        Evictor(GranuleReaderPool pool) {
+            this.pool = new WeakReference<GranuleReaderPool>(pool);
+        }
+
+        @Override
+        public void run() {
+            final GranuleReaderPool pool = this.pool.get();
+            if (pool == null || pool.isClosed()) {
+                cancel();
+                return;
+            }
+            try {
+                pool.evictExpired();
+            } catch (Throwable t) {
+                // keep the timer thread alive
+                if (LOGGER.isLoggable(Level.FINE)) {
+                    LOGGER.log(Level.FINE, t.getLocalizedMessage(), t);
+                }
+            }
+        }
+    }
+
+    private static void close(final List<PooledReader> handles) {
+        if (handles == null) {
+            return;
+        }
+        for (PooledReader handle : handles) {
+            handle.close();
+        }
+    }
+}
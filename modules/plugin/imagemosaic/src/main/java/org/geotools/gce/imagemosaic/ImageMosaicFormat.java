@@ -137,6 +137,14 @@ public final class ImageMosaicFormat extends AbstractGridFormat implements Forma
     public static final ParameterDescriptor<Boolean> ALLOW_MULTITHREADING = new DefaultParameterDescriptor<Boolean>(
             "AllowMultithreading", Boolean.class, new Boolean[]{Boolean.TRUE,Boolean.FALSE}, Boolean.FALSE);
     
+    /** Control the maximum number of granules loaded concurrently for a single request when multithreading is allowed, -1 means no limit.*/
+    public static final ParameterDescriptor<Integer> MAX_CONCURRENT_GRANULE_LOADS = new DefaultParameterDescriptor<Integer>(
+            "MaxConcurrentGranuleLoads", Integer.class, null, Integer.valueOf(-1));
+
+    /** Control the time, in milliseconds, after which the granules still loading for a request are skipped, -1 means no timeout.*/
+    public static final ParameterDescriptor<Long> GRANULE_LOADING_TIMEOUT = new DefaultParameterDescriptor<Long>(
+            "GranuleLoadingTimeout", Long.class, null, Long.valueOf(-1));
+
     /** Control the footprint management.*/
     public static final ParameterDescriptor<Boolean> HANDLE_FOOTPRINT = new DefaultParameterDescriptor<Boolean>(
             "HandleFootprint", Boolean.class, new Boolean[]{Boolean.TRUE,Boolean.FALSE}, Boolean.TRUE);
@@ -198,6 +206,8 @@ public final class ImageMosaicFormat extends AbstractGridFormat implements Forma
                 SUGGESTED_TILE_SIZE,
                 ALLOW_MULTITHREADING,
                 MAX_ALLOWED_TILES,
+                MAX_CONCURRENT_GRANULE_LOADS,
+                GRANULE_LOADING_TIMEOUT,
                 TIME,
                 ELEVATION,
                 FILTER,
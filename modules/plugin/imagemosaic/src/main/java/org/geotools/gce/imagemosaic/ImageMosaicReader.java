@@ -163,6 +163,9 @@ public class ImageMosaicReader extends AbstractGridCoverage2DReader implements S
 
 	String typeName;
 
+	/** The granule reader pool created by this reader, if any, disposed along with it */
+	GranuleReaderPool readerPool;
+
     /**
      * Constructor.
      * 
@@ -198,6 +201,13 @@ public class ImageMosaicReader extends AbstractGridCoverage2DReader implements S
         if (this.hints.containsKey(Hints.MAX_ALLOWED_TILES))
             this.maxAllowedTiles = ((Integer) this.hints.get(Hints.MAX_ALLOWED_TILES));
 
+        // reuse the granule readers across requests, unless the caller provided its own pool
+        if (!this.hints.containsKey(Utils.GRANULE_READER_POOL)
+                && Boolean.getBoolean(GranuleReaderPool.ENABLED_KEY)) {
+            readerPool = GranuleReaderPool.create();
+            this.hints.add(new Hints(Utils.GRANULE_READER_POOL, readerPool));
+        }
+
         //
         // Check source
         //
@@ -677,6 +687,11 @@ public class ImageMosaicReader extends AbstractGridCoverage2DReader implements S
             } catch (Exception e) {
                 if (LOGGER.isLoggable(Level.FINE))
                     LOGGER.log(Level.FINE, e.getLocalizedMessage(), e);
+            } finally {
+                if (readerPool != null) {
+                    readerPool.clear(true);
+                    readerPool = null;
+                }
             }
         }
     }
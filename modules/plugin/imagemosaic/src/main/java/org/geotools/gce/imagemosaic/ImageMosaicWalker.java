@@ -444,6 +444,7 @@ public class ImageMosaicWalker implements Runnable {
 
                         final CatalogConfigurationBean catalogConfigurationBean = new CatalogConfigurationBean();
                         catalogConfigurationBean.setCaching(IndexerUtils.getParameterAsBoolean(Prop.CACHING, indexer));
+                        catalogConfigurationBean.setPackedIndex(IndexerUtils.getParameterAsBoolean(Prop.PACKED_INDEX, indexer));
                         catalogConfigurationBean.setAbsolutePath(IndexerUtils.getParameterAsBoolean(Prop.ABSOLUTE_PATH, indexer));
                         
                         catalogConfigurationBean.setLocationAttribute(IndexerUtils.getParameter(Prop.LOCATION_ATTRIBUTE, indexer));
@@ -1350,6 +1351,9 @@ public class ImageMosaicWalker implements Runnable {
 
         if (props.containsKey(Prop.CACHING))
             IndexerUtils.setParam(parameters, props, Prop.CACHING);
+
+        if (props.containsKey(Prop.PACKED_INDEX))
+            IndexerUtils.setParam(parameters, props, Prop.PACKED_INDEX);
         
         if (props.containsKey(Prop.ROOT_MOSAIC_DIR)) {
             // Overriding root mosaic directory
@@ -1440,6 +1444,9 @@ public class ImageMosaicWalker implements Runnable {
                             + imposedBBox.getMaxX() + "," + imposedBBox.getMaxY());
         }
         properties.setProperty(Utils.Prop.CACHING, Boolean.toString(catalogConfigurationBean.isCaching()));
+        if (catalogConfigurationBean.isPackedIndex()) {
+            properties.setProperty(Utils.Prop.PACKED_INDEX, Boolean.toString(true));
+        }
         if (mosaicConfiguration.getAuxiliaryFilePath() != null) {
             properties.setProperty(Utils.Prop.AUXILIARY_FILE, mosaicConfiguration.getAuxiliaryFilePath());
         }
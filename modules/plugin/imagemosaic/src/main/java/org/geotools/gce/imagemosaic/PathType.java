@@ -40,7 +40,7 @@ public enum PathType {
 	RELATIVE{
 
 		@Override
-		URL resolvePath(final String parentLocation,final  String location) {
+		public URL resolvePath(final String parentLocation,final  String location) {
 			// initial checks
 			Utilities.ensureNonNull("parentLocation", parentLocation);
 			Utilities.ensureNonNull("location", location);
@@ -75,7 +75,7 @@ public enum PathType {
 	ABSOLUTE{
 
 		@Override
-		URL resolvePath(final String parentLocation,final  String location) {
+		public URL resolvePath(final String parentLocation,final  String location) {
 
 			Utilities.ensureNonNull("location", location);
 			if(LOGGER.isLoggable(Level.FINE))
@@ -132,7 +132,7 @@ public enum PathType {
 	 *         this method is applied. This method might return <code>null</code>
 	 *         in case something bad happens.
 	 */
-	abstract URL resolvePath(
+	public abstract URL resolvePath(
 			final String parentLocation,
 			final String location);
 	
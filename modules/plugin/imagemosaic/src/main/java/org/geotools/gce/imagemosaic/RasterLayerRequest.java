@@ -102,6 +102,15 @@ class RasterLayerRequest {
 
 	private boolean multithreadingAllowed;
 
+	/** Max number of granules loaded concurrently for this request, -1 for no limit. */
+	private int maxConcurrentGranuleLoads=ImageMosaicFormat.MAX_CONCURRENT_GRANULE_LOADS.getDefaultValue().intValue();
+
+	/** Max time, in milliseconds, allowed for loading the granules of this request, -1 for no limit. */
+	private long granuleLoadingTimeout=ImageMosaicFormat.GRANULE_LOADING_TIMEOUT.getDefaultValue().longValue();
+
+	/** Time at which this request has been created, the granule loading timeout is relative to it. */
+	private final long creationTime=System.currentTimeMillis();
+
 	private List<?> requestedTimes;
 
 	private List<?> elevation;
@@ -139,6 +148,22 @@ class RasterLayerRequest {
 		return multithreadingAllowed;
 	}
 
+	/**
+	 * @return the maximum number of granules to be loaded concurrently for this request,
+	 *         a non positive value meaning no limit.
+	 */
+	public int getMaxConcurrentGranuleLoads() {
+		return maxConcurrentGranuleLoads;
+	}
+
+	/**
+	 * @return the time, in milliseconds since the epoch, after which the granules still loading
+	 *         for this request get skipped, or -1 if there is no deadline.
+	 */
+	public long getLoadingDeadline() {
+		return granuleLoadingTimeout > 0 ? creationTime + granuleLoadingTimeout : -1;
+	}
+
 	public DecimationPolicy getDecimationPolicy() {
 	        return decimationPolicy;
 	}
@@ -613,6 +638,22 @@ class RasterLayerRequest {
 			multithreadingAllowed = ((Boolean) value).booleanValue();
 			return;
 		}	 	
+
+		if (name.equals(ImageMosaicFormat.MAX_CONCURRENT_GRANULE_LOADS.getName())) {
+        	final Object value = param.getValue();
+        	if(value==null)
+        		return;
+			maxConcurrentGranuleLoads = param.intValue();
+			return;
+		}
+
+		if (name.equals(ImageMosaicFormat.GRANULE_LOADING_TIMEOUT.getName())) {
+        	final Object value = param.getValue();
+        	if(value==null)
+        		return;
+			granuleLoadingTimeout = ((Number) value).longValue();
+			return;
+		}
 		
 		if (name.equals(ImageMosaicFormat.HANDLE_FOOTPRINT.getName())) {
                     final Object value = param.getValue();
@@ -303,27 +303,33 @@ class RasterLayerResponse{
          * Constructor.
          * 
          * @param granuleFilter the {@link Filter} we are supposed to use to select granules for this {@link GranuleCollector}.
-         * @param dryRun whether we need to make 
+         * @param dryRun whether we need to make
+         * @param loadingScheduler the {@link GranuleLoadingScheduler} to load granules with, <code>null</code>
+         *        for loading them in the current thread
          */
-        private GranuleCollector(Filter granuleFilter, boolean dryRun) {
+        private GranuleCollector(Filter granuleFilter, boolean dryRun, GranuleLoadingScheduler loadingScheduler) {
             this.granuleFilter = granuleFilter;
             this.dryRun = dryRun;
+            this.loadingBatch = loadingScheduler != null ? loadingScheduler.newBatch() : null;
             inputTransparentColor = request.getInputTransparentColor();
             doInputTransparency = inputTransparentColor != null&&!footprintManagement;
         }
 
         /** The number of collected granules.**/
         private int granulesNumber;
-        
+
         /** {@link Filter} instance used to collect granule.*/
         private final Filter granuleFilter;
-        
+
         /**We can request a dry run (no tasks are spawn) with this member.*/
         private final boolean dryRun;
 
         /** The final lists for granules to be computed, splitted per dimension value.*/
         private final List<Future<GranuleLoadingResult>> granulesFutures = new ArrayList<Future<GranuleLoadingResult>>();
 
+        /** The granules being loaded in multithreading, streamed back as they complete.*/
+        private final GranuleLoadingScheduler.Batch loadingBatch;
+
         private double[][] sourceThreshold;
 
         private boolean hasAlpha;
@@ -354,9 +360,15 @@ class RasterLayerResponse{
                 }
                 final GranuleLoader loader = new GranuleLoader(baseReadParameters, imageChoice, mosaicBBox, finalWorldToGridCorner, granuleDescriptor, request, hints);
                 if (!dryRun) {
-                    if (multithreadingAllowed && rasterManager.parentReader.multiThreadedLoader != null) {
+                    final long deadline = request.getLoadingDeadline();
+                    if (loadingBatch != null) {
                         // MULTITHREADED EXECUTION submitting the task
-                        granulesFutures.add(rasterManager.parentReader.multiThreadedLoader.submit(loader));
+                        loadingBatch.submit(loader);
+                    } else if (deadline > 0 && System.currentTimeMillis() > deadline) {
+                        // SINGLE THREADED Execution, we are out of time already
+                        if (LOGGER.isLoggable(Level.FINE)) {
+                            LOGGER.fine("Granule loading deadline expired, skipping the granule " + granuleDescriptor.toString());
+                        }
                     } else {
                         // SINGLE THREADED Execution, we defer the execution to when we have done the loading
                         final FutureTask<GranuleLoadingResult> task = new FutureTask<GranuleLoadingResult>(loader);
@@ -397,58 +409,18 @@ class RasterLayerResponse{
            // execute them all
            final StringBuilder paths = new StringBuilder();
            final List<MosaicElement> returnValues= new ArrayList<RasterLayerResponse.MosaicElement>();
+           if (loadingBatch != null) {
+               collectLoadingBatch(returnValues, paths);
+           }
            // collect sources for the current dimension and then process them
            for (Future<GranuleLoadingResult> future :granulesFutures) {
                      
                 try {
                     // get the resulting RenderedImage
                     final GranuleLoadingResult result = future.get();
-                    if (result == null) {
-                        if (LOGGER.isLoggable(Level.FINE)){
-                            LOGGER.log(Level.FINE, "Unable to load the raster for granule with request " + request.toString());
-                        }
+                    if (!isLoaded(result)) {
                         continue;
                     }
-                    final RenderedImage loadedImage = result.getRaster();
-                    if (loadedImage == null) {
-                        if (LOGGER.isLoggable(Level.FINE)) {
-                           LOGGER.log(Level.FINE,
-                                   "Unable to load the raster for granuleDescriptor " +result.granuleUrl+ " with request "+request.toString()
-                           );
-                       }
-                       continue;
-                   }
-                   
-                   // now process it
-                    if (sourceThreshold == null) {
-                            //
-                            // We check here if the images have an alpha channel or some
-                            // other sort of transparency. In case we have transparency
-                            // I also save the index of the transparent channel.
-                            //
-                            // Specifically, I have to check if the loaded image have
-                            // transparency, because if we do a ROI and/or we have a
-                            // transparent color to set we have to remove it.
-                            //
-                            final ColorModel cm = loadedImage.getColorModel();
-                            hasAlpha = cm.hasAlpha();
-                            if (hasAlpha || doInputTransparency){
-                                alphaIndex = new int[] { cm.getNumComponents() - 1 };
-                            }
-
-                            //
-                            // we set the input threshold accordingly to the input
-                            // image data type. I find the default value (which is 0) very bad
-                            // for data type other than byte and ushort. With float and double
-                            // it can cut off a large par of the dynamic.
-                            //
-                            sourceThreshold = new double[][] { { CoverageUtilities.getMosaicThreshold(loadedImage.getSampleModel().getDataType()) } };                                                                  
-                   }                                    
-
-                   // moving on
-                   if (LOGGER.isLoggable(Level.FINE)) {
-                       LOGGER.fine("Adding to mosaic granule " +result.granuleUrl);
-                   }
 
                    // path management
                    File inputFile = DataUtilities.urlToFile(result.granuleUrl);
@@ -456,12 +428,7 @@ class RasterLayerResponse{
                    paths.append(canonicalPath).append(",");
                    
                    // add to the mosaic collection, with preprocessing
-                   // TODO pluggable mechanism for processing (artifacts,etc...)
-                   MosaicElement input = preProcessGranuleRaster(
-                                           loadedImage,
-                                           result,
-                                           canonicalPath);  
-                   returnValues.add(input);
+                   returnValues.add(processGranule(result, canonicalPath));
                    
                 } catch (Exception e) {
                     if (LOGGER.isLoggable(Level.INFO)){
@@ -482,6 +449,121 @@ class RasterLayerResponse{
            return new MosaicInputs(doInputTransparency, hasAlpha, returnValues, sourceThreshold);
         }
 
+        /**
+         * Collects the granules loaded in multithreading, pre-processing each of them as soon as its
+         * loading completes, while keeping the original granules order for the mosaic. Granules
+         * which did not make it before the loading deadline are left out.
+         * 
+         * @param returnValues the list where to add the {@link MosaicElement}s
+         * @param paths the granules paths
+         */
+        private void collectLoadingBatch(final List<MosaicElement> returnValues, final StringBuilder paths) {
+            final int size = loadingBatch.getScheduled();
+            final MosaicElement[] elements = new MosaicElement[size];
+            final String[] elementsPaths = new String[size];
+            try {
+                GranuleLoadingScheduler.GranuleLoadingTask task;
+                while ((task = loadingBatch.next()) != null) {
+                    if (task.isCancelled()) {
+                        continue;
+                    }
+                    try {
+                        final GranuleLoadingResult result = task.get();
+                        if (!isLoaded(result)) {
+                            continue;
+                        }
+                        final String canonicalPath = DataUtilities.urlToFile(result.granuleUrl).getCanonicalPath();
+                        elements[task.getIndex()] = processGranule(result, canonicalPath);
+                        elementsPaths[task.getIndex()] = canonicalPath;
+                    } catch (Exception e) {
+                        if (LOGGER.isLoggable(Level.INFO)){
+                            LOGGER.info("Adding to mosaic failed, original request was " + request);
+                        }
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                if (LOGGER.isLoggable(Level.INFO)){
+                    LOGGER.info("Interrupted while loading granules, original request was " + request);
+                }
+            }
+
+            // back to the original order
+            for (int i = 0; i < size; i++) {
+                if (elements[i] != null) {
+                    returnValues.add(elements[i]);
+                    paths.append(elementsPaths[i]).append(",");
+                }
+            }
+            granulesPaths = paths.length() > 1 ? paths.substring(0, paths.length() - 1) : "";
+        }
+
+        /**
+         * Checks whether the provided {@link GranuleLoadingResult} contains a loaded raster.
+         */
+        private boolean isLoaded(final GranuleLoadingResult result) {
+            if (result == null) {
+                if (LOGGER.isLoggable(Level.FINE)){
+                    LOGGER.log(Level.FINE, "Unable to load the raster for granule with request " + request.toString());
+                }
+                return false;
+            }
+            if (result.getRaster() == null) {
+                if (LOGGER.isLoggable(Level.FINE)) {
+                   LOGGER.log(Level.FINE,
+                           "Unable to load the raster for granuleDescriptor " +result.granuleUrl+ " with request "+request.toString()
+                   );
+               }
+               return false;
+            }
+            return true;
+        }
+
+        /**
+         * Turns a loaded granule into a {@link MosaicElement}.
+         */
+        private MosaicElement processGranule(final GranuleLoadingResult result, final String canonicalPath) {
+            final RenderedImage loadedImage = result.getRaster();
+
+           // now process it
+            if (sourceThreshold == null) {
+                    //
+                    // We check here if the images have an alpha channel or some
+                    // other sort of transparency. In case we have transparency
+                    // I also save the index of the transparent channel.
+                    //
+                    // Specifically, I have to check if the loaded image have
+                    // transparency, because if we do a ROI and/or we have a
+                    // transparent color to set we have to remove it.
+                    //
+                    final ColorModel cm = loadedImage.getColorModel();
+                    hasAlpha = cm.hasAlpha();
+                    if (hasAlpha || doInputTransparency){
+                        alphaIndex = new int[] { cm.getNumComponents() - 1 };
+                    }
+
+                    //
+                    // we set the input threshold accordingly to the input
+                    // image data type. I find the default value (which is 0) very bad
+                    // for data type other than byte and ushort. With float and double
+                    // it can cut off a large par of the dynamic.
+                    //
+                    sourceThreshold = new double[][] { { CoverageUtilities.getMosaicThreshold(loadedImage.getSampleModel().getDataType()) } };                                                                  
+           }                                    
+
+           // moving on
+           if (LOGGER.isLoggable(Level.FINE)) {
+               LOGGER.fine("Adding to mosaic granule " +result.granuleUrl);
+           }
+
+           // add to the mosaic collection, with preprocessing
+           // TODO pluggable mechanism for processing (artifacts,etc...)
+           return preProcessGranuleRaster(
+                                   loadedImage,
+                                   result,
+                                   canonicalPath);  
+        }
+
         private MosaicElement preProcessGranuleRaster(
             	RenderedImage granule,  
             	final GranuleLoadingResult result, 
@@ -797,6 +879,9 @@ class RasterLayerResponse{
         /** The internal collectors for incoming granules. */
         private List<GranuleCollector> granuleCollectors = new ArrayList<GranuleCollector>();
 
+        /** The scheduler for granules loaded in multithreading, <code>null</code> otherwise. */
+        private GranuleLoadingScheduler loadingScheduler;
+
         /**
          * Default {@link Constructor}
          */
@@ -819,6 +904,14 @@ class RasterLayerResponse{
             // get merge behavior as per request
             mergeBehavior = request.getMergeBehavior();
 
+            // are we loading granules in multithreading?
+            if (!dryRun && multithreadingAllowed && rasterManager.parentReader.multiThreadedLoader != null) {
+                loadingScheduler = new GranuleLoadingScheduler(
+                        rasterManager.parentReader.multiThreadedLoader,
+                        request.getMaxConcurrentGranuleLoads(),
+                        request.getLoadingDeadline());
+            }
+
             // prepare dimensions management if needed, that is in case we use stacking
             if (mergeBehavior.equals(MergeBehavior.STACK)) {
 
@@ -853,7 +946,7 @@ class RasterLayerResponse{
 
                     if (multipleSelectionEntry == null) {
                         // Simpler case... no multiple selections. All filter have already been combined
-                        granuleCollectors.add(new GranuleCollector(andFilter, dryRun));
+                        granuleCollectors.add(new GranuleCollector(andFilter, dryRun, loadingScheduler));
                     } else {
                         final String domainName = multipleSelectionEntry.getKey() + DomainDescriptor.DOMAIN_SUFFIX;
 
@@ -866,7 +959,7 @@ class RasterLayerResponse{
 
                             // combine that filter with the previously merged ones
                             Filter combinedFilter = andFilter == null ? valueFilter : FeatureUtilities.DEFAULT_FILTER_FACTORY.and(andFilter, valueFilter);
-                            granuleCollectors.add(new GranuleCollector(combinedFilter, dryRun));
+                            granuleCollectors.add(new GranuleCollector(combinedFilter, dryRun, loadingScheduler));
                         }
                     }
                 }
@@ -876,7 +969,7 @@ class RasterLayerResponse{
             // we were asked
             // let's use a default marker
             if (granuleCollectors.isEmpty()) {
-                granuleCollectors.add(new GranuleCollector(Filter.INCLUDE, dryRun));
+                granuleCollectors.add(new GranuleCollector(Filter.INCLUDE, dryRun, loadingScheduler));
             }
         }
 
@@ -939,6 +1032,15 @@ class RasterLayerResponse{
             }
         }
         
+        /**
+         * Cancels the loading of the granules still outstanding, if any.
+         */
+        private void dispose() {
+            if (loadingScheduler != null) {
+                loadingScheduler.cancel();
+            }
+        }
+
         /**
          * This method is responsible for producing the final mosaic.
          * 
@@ -1229,10 +1331,16 @@ class RasterLayerResponse{
 
             // === collect granules
             final MosaicProducer visitor = new MosaicProducer();
-            rasterManager.getGranuleDescriptors(query, visitor);   
-            
-            // get those granules and create the final mosaic
-            RenderedImage returnValue = visitor.produce();
+            RenderedImage returnValue = null;
+            try {
+                rasterManager.getGranuleDescriptors(query, visitor);
+
+                // get those granules and create the final mosaic
+                returnValue = visitor.produce();
+            } finally {
+                // make sure we don't leave loading tasks behind us in case of failures
+                visitor.dispose();
+            }
 
             //
             // Did we actually load anything?? Notice that it might happen that
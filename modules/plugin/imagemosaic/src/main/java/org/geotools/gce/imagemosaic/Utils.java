@@ -132,6 +132,9 @@ public class Utils {
 
     public final static Key MOSAIC_READER = new Key(ImageMosaicReader.class);
 
+    /** {@link GranuleReaderPool} to be used to reuse granule readers across requests */
+    public final static Key GRANULE_READER_POOL = new Key(GranuleReaderPool.class);
+
     public static final String RANGE_SPLITTER_CHAR = ";";
 
     public final static String INDEXER_PROPERTIES = "indexer.properties";
@@ -205,6 +208,7 @@ public class Utils {
         public static final String RESOLUTION_LEVELS = "ResolutionLevels";
         public static final String PROPERTY_COLLECTORS = "PropertyCollectors";
         public final static String CACHING= "Caching";
+        public final static String PACKED_INDEX = "PackedIndex";
     }
         /**
      * Extracts a bbox from a filter in case there is at least one.
@@ -503,6 +507,13 @@ public class Utils {
 			}
 		}
 
+		//
+		// packed multidimensional index
+		//
+		if (properties.containsKey(Prop.PACKED_INDEX)) {
+			catalogConfigurationBean.setPackedIndex(Boolean.valueOf(properties.getProperty(Prop.PACKED_INDEX).trim()));
+		}
+
 		//
 		// name is not optional
 		//
@@ -38,6 +38,9 @@ public class CatalogConfigurationBean {
     /** we want to use caching for our index. */
     private boolean caching = Utils.DEFAULT_CONFIGURATION_CACHING;
 
+    /** we want to keep a packed, multidimensional, index of the granules in memory. */
+    private boolean packedIndex;
+
     private boolean heterogeneous;
 
     /**
@@ -88,6 +91,14 @@ public class CatalogConfigurationBean {
         this.caching = caching;
     }
 
+    public boolean isPackedIndex() {
+        return packedIndex;
+    }
+
+    public void setPackedIndex(final boolean packedIndex) {
+        this.packedIndex = packedIndex;
+    }
+
     /**
      * @return the suggestedSPI
      */
@@ -18,6 +18,7 @@ package org.geotools.gce.imagemosaic.catalog;
 
 import java.io.IOException;
 import java.io.Serializable;
+import java.net.URL;
 import java.util.Collection;
 import java.util.HashSet;
 import java.util.Map;
@@ -40,6 +41,7 @@ import org.geotools.data.QueryCapabilities;
 import org.geotools.data.Transaction;
 import org.geotools.data.collection.ListFeatureCollection;
 import org.geotools.data.simple.SimpleFeatureCollection;
+import org.geotools.data.simple.SimpleFeatureIterator;
 import org.geotools.data.simple.SimpleFeatureSource;
 import org.geotools.data.simple.SimpleFeatureStore;
 import org.geotools.data.store.ContentFeatureSource;
@@ -50,6 +52,7 @@ import org.geotools.feature.SchemaException;
 import org.geotools.feature.collection.AbstractFeatureVisitor;
 import org.geotools.feature.visitor.FeatureCalc;
 import org.geotools.gce.imagemosaic.GranuleDescriptor;
+import org.geotools.gce.imagemosaic.GranuleReaderPool;
 import org.geotools.gce.imagemosaic.ImageMosaicReader;
 import org.geotools.gce.imagemosaic.PathType;
 import org.geotools.gce.imagemosaic.Utils;
@@ -306,7 +309,15 @@ class GTDataStoreGranuleCatalog extends GranuleCatalog {
                 // create a writer that appends this features
                 fs = (SimpleFeatureStore) tileIndexStore.getFeatureSource(typeName);
                 final int retVal = fs.getCount(query);
+                // the pooled readers of the removed granules have to go as well
+                final GranuleReaderPool readerPool = GranuleReaderPool.lookup(hints);
+                final Set<URL> locations = readerPool != null ? getLocations(fs, query) : null;
                 fs.removeFeatures(query.getFilter());
+                if (locations != null) {
+                    for (URL location : locations) {
+                        readerPool.evict(location);
+                    }
+                }
 
                 // update bounds
                 bounds.put(typeName, tileIndexStore.getFeatureSource(typeName).getBounds());
@@ -325,6 +336,30 @@ class GTDataStoreGranuleCatalog extends GranuleCatalog {
         }
     }
 
+    /**
+     * Returns the locations of the granules matching a query
+     */
+    private Set<URL> getLocations(SimpleFeatureSource fs, Query query) throws IOException {
+        final Set<URL> locations = new HashSet<URL>();
+        final Query locationQuery = new Query(query);
+        locationQuery.setPropertyNames(new String[] { locationAttribute });
+        final SimpleFeatureIterator it = fs.getFeatures(locationQuery).features();
+        try {
+            while (it.hasNext()) {
+                final String location = (String) it.next().getAttribute(locationAttribute);
+                if (location != null) {
+                    final URL url = pathType.resolvePath(parentLocation, location);
+                    if (url != null) {
+                        locations.add(url);
+                    }
+                }
+            }
+        } finally {
+            it.close();
+        }
+        return locations;
+    }
+
     @Override
     public void addGranules(final String typeName, final Collection<SimpleFeature> granules,
             final Transaction transaction) throws IOException {
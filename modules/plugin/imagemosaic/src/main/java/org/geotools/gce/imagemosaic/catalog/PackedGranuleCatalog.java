@@ -0,0 +1,467 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2013, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.gce.imagemosaic.catalog;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.geotools.data.DataStoreFactorySpi;
+import org.geotools.data.Query;
+import org.geotools.data.QueryCapabilities;
+import org.geotools.data.Transaction;
+import org.geotools.data.collection.ListFeatureCollection;
+import org.geotools.data.simple.SimpleFeatureCollection;
+import org.geotools.data.simple.SimpleFeatureIterator;
+import org.geotools.factory.Hints;
+import org.geotools.feature.SchemaException;
+import org.geotools.feature.visitor.FeatureCalc;
+import org.geotools.gce.imagemosaic.GranuleDescriptor;
+import org.geotools.util.Utilities;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
+import org.opengis.filter.Filter;
+import org.opengis.filter.sort.SortBy;
+import org.opengis.geometry.BoundingBox;
+
+/**
+ * A {@link GranuleCatalog} keeping the granules of a {@link GTDataStoreGranuleCatalog} in a
+ * {@link PackedGranuleIndex}, one per type.
+ *
+ * <p>
+ * Differently from the {@link STRTreeGranuleCatalog}, which only indexes the granules footprints,
+ * this catalog also indexes the numeric and temporal attributes of the index schema, that is the
+ * start and end attributes of the time, elevation and additional domains of the mosaic, so that
+ * dimensional queries, as the ones issued for each time and elevation of a request, skip whole
+ * groups of granules instead of evaluating the filter on each one of them. The query filter is
+ * only evaluated on the granules surviving the index lookup, on the columns of the index, and
+ * features are only built for the granules handed out.
+ *
+ * <p>
+ * Granules added through {@link #addGranules(String, Collection, Transaction)} are added to the
+ * index as soon as their transaction gets committed, without reloading it.
+ */
+class PackedGranuleCatalog extends GranuleCatalog {
+
+    /** Logger. */
+    private final static Logger LOGGER = org.geotools.util.logging.Logging.getLogger(PackedGranuleCatalog.class);
+
+    /**
+     * Keeps track of the granules added within a {@link Transaction}, which get indexed on commit.
+     */
+    private final class PendingGranules implements Transaction.State {
+
+        private final Map<String, List<SimpleFeature>> granules = new HashMap<String, List<SimpleFeature>>();
+
+        private synchronized void add(final String typeName, final Collection<SimpleFeature> features) {
+            List<SimpleFeature> list = granules.get(typeName);
+            if (list == null) {
+                list = new ArrayList<SimpleFeature>();
+                granules.put(typeName, list);
+            }
+            list.addAll(features);
+        }
+
+        public synchronized void setTransaction(Transaction transaction) {
+            if (transaction == null) {
+                granules.clear();
+            }
+        }
+
+        public void addAuthorization(String AuthID) throws IOException {
+        }
+
+        public synchronized void commit() throws IOException {
+            for (Map.Entry<String, List<SimpleFeature>> entry : granules.entrySet()) {
+                indexGranules(entry.getKey(), entry.getValue());
+            }
+            granules.clear();
+        }
+
+        public synchronized void rollback() throws IOException {
+            granules.clear();
+        }
+    }
+
+    private final GTDataStoreGranuleCatalog wrappedCatalogue;
+
+    /** The indexes, loaded on first use, by type name */
+    private final Map<String, PackedGranuleIndex> indexes = new HashMap<String, PackedGranuleIndex>();
+
+    private final ReadWriteLock rwLock = new ReentrantReadWriteLock(true);
+
+    private boolean disposed;
+
+    public PackedGranuleCatalog(final Map<String, Serializable> params, final DataStoreFactorySpi spi, final Hints hints) {
+        super(hints);
+        Utilities.ensureNonNull("params", params);
+        this.wrappedCatalogue = new GTDataStoreGranuleCatalog(params, false, spi, hints);
+    }
+
+    /**
+     * Returns the index for the requested type, loading it if needed.
+     *
+     * @param typeName the type name.
+     * @param readLock the read lock held by the caller, temporarily upgraded to the write lock in
+     *        case the index needs to be loaded.
+     * @return the {@link PackedGranuleIndex} for the provided type.
+     */
+    private PackedGranuleIndex getIndex(final String typeName, final Lock readLock) throws IOException {
+        PackedGranuleIndex index = indexes.get(typeName);
+        if (index != null) {
+            return index;
+        }
+        final Lock writeLock = rwLock.writeLock();
+        try {
+            // upgrade the read lock to write lock
+            readLock.unlock();
+            writeLock.lock();
+
+            index = indexes.get(typeName);
+            if (index == null) {
+                index = loadIndex(typeName);
+                indexes.put(typeName, index);
+            }
+            return index;
+        } finally {
+            // get read lock again
+            readLock.lock();
+            // leave write lock
+            writeLock.unlock();
+        }
+    }
+
+    private PackedGranuleIndex loadIndex(final String typeName) throws IOException {
+        final SimpleFeatureType schema = wrappedCatalogue.getType(typeName);
+        if (schema == null) {
+            throw new IOException("Unable to find the granules type " + typeName);
+        }
+        final long start = System.currentTimeMillis();
+        final PackedGranuleIndex index = new PackedGranuleIndex(schema);
+        final SimpleFeatureIterator it = wrappedCatalogue.getGranules(new Query(typeName)).features();
+        try {
+            while (it.hasNext()) {
+                index.add(it.next());
+            }
+        } finally {
+            it.close();
+        }
+        index.pack();
+        if (LOGGER.isLoggable(Level.FINE)) {
+            LOGGER.fine("Packed index for type " + typeName + " with " + index.getCount()
+                    + " granules loaded in " + (System.currentTimeMillis() - start) + "ms");
+        }
+        return index;
+    }
+
+    /**
+     * Adds the provided granules to the index of their type, if already loaded.
+     */
+    private void indexGranules(final String typeName, final Collection<SimpleFeature> granules) {
+        final Lock lock = rwLock.writeLock();
+        try {
+            lock.lock();
+            final PackedGranuleIndex index = indexes.get(typeName);
+            if (index == null) {
+                // will be loaded, new granules included, on first use
+                return;
+            }
+            for (SimpleFeature granule : granules) {
+                index.add(granule);
+            }
+            if (index.needsPacking()) {
+                index.pack();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private String getTypeName(final Query q) {
+        String typeName = q.getTypeName();
+        if (typeName == null) {
+            final String[] typeNames = wrappedCatalogue.getTypeNames();
+            if (typeNames != null && typeNames.length == 1) {
+                typeName = typeNames[0];
+            }
+        }
+        if (typeName == null) {
+            throw new IllegalArgumentException("Unable to determine the granules type for query " + q);
+        }
+        return typeName;
+    }
+
+    /**
+     * Collects the slots of the granules matching the provided {@link Query}, sorted as
+     * requested.
+     */
+    private List<Integer> getMatchingSlots(final PackedGranuleIndex index, final Query q) {
+        final Filter filter = q.getFilter() != null ? q.getFilter() : Filter.INCLUDE;
+        final SortBy[] sortBy = q.getSortBy();
+        final boolean sorting = sortBy != null && sortBy.length > 0;
+        final int maxGranules = q.getMaxFeatures();
+        final List<Integer> slots = new ArrayList<Integer>();
+        final PackedGranuleIndex.Predicate predicate = index.compile(filter);
+        index.query(index.getConstraints(filter), new PackedGranuleIndex.SlotVisitor() {
+
+            public boolean visit(int slot) {
+                if (predicate.evaluate(slot)) {
+                    slots.add(slot);
+                }
+                // when sorting we need all the granules before cutting
+                return sorting || maxGranules <= 0 || slots.size() < maxGranules;
+            }
+        });
+        if (sorting) {
+            Collections.sort(slots, index.getComparator(sortBy));
+            if (maxGranules > 0 && slots.size() > maxGranules) {
+                return slots.subList(0, maxGranules);
+            }
+        }
+        return slots;
+    }
+
+    @Override
+    public SimpleFeatureCollection getGranules(Query q) throws IOException {
+        Utilities.ensureNonNull("q", q);
+        q = mergeHints(q);
+        final String typeName = getTypeName(q);
+        final Lock lock = rwLock.readLock();
+        try {
+            lock.lock();
+            checkStore();
+            final PackedGranuleIndex index = getIndex(typeName, lock);
+            final ListFeatureCollection retVal = new ListFeatureCollection(index.getSchema());
+            for (Integer slot : getMatchingSlots(index, q)) {
+                retVal.add(index.getFeature(slot));
+            }
+            return retVal;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void getGranuleDescriptors(Query q, GranuleCatalogVisitor visitor) throws IOException {
+        Utilities.ensureNonNull("q", q);
+        Utilities.ensureNonNull("visitor", visitor);
+        q = mergeHints(q);
+        final String typeName = getTypeName(q);
+        final Lock lock = rwLock.readLock();
+        try {
+            lock.lock();
+            checkStore();
+            final PackedGranuleIndex index = getIndex(typeName, lock);
+            for (Integer slot : getMatchingSlots(index, q)) {
+                // descriptors are created lazily, concurrent readers might create the same
+                // descriptor twice, which is harmless
+                GranuleDescriptor granule = index.getGranule(slot);
+                if (granule == null) {
+                    granule = new GranuleDescriptor(index.getFeature(slot),
+                            wrappedCatalogue.suggestedRasterSPI, wrappedCatalogue.pathType,
+                            wrappedCatalogue.locationAttribute, wrappedCatalogue.parentLocation,
+                            wrappedCatalogue.heterogeneous, hints);
+                    index.setGranule(slot, granule);
+                }
+                visitor.visit(granule, null);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public int getGranulesCount(Query q) throws IOException {
+        Utilities.ensureNonNull("q", q);
+        q = mergeHints(q);
+        final String typeName = getTypeName(q);
+        final Lock lock = rwLock.readLock();
+        try {
+            lock.lock();
+            checkStore();
+            final PackedGranuleIndex index = getIndex(typeName, lock);
+            final Query unsorted = new Query(q);
+            unsorted.setSortBy(null);
+            return getMatchingSlots(index, unsorted).size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void computeAggregateFunction(Query q, FeatureCalc function) throws IOException {
+        Utilities.ensureNonNull("q", q);
+        Utilities.ensureNonNull("function", function);
+        q = mergeHints(q);
+        final String typeName = getTypeName(q);
+        final Lock lock = rwLock.readLock();
+        try {
+            lock.lock();
+            checkStore();
+            final PackedGranuleIndex index = getIndex(typeName, lock);
+            final Query unsorted = new Query(q);
+            unsorted.setSortBy(null);
+            for (Integer slot : getMatchingSlots(index, unsorted)) {
+                function.visit(index.getFeature(slot));
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void addGranules(String typeName, Collection<SimpleFeature> granules,
+            Transaction transaction) throws IOException {
+        Utilities.ensureNonNull("granules", granules);
+        wrappedCatalogue.addGranules(typeName, granules, transaction);
+        if (transaction == null || transaction == Transaction.AUTO_COMMIT) {
+            indexGranules(typeName, granules);
+        } else {
+            synchronized (transaction) {
+                PendingGranules pending = (PendingGranules) transaction.getState(this);
+                if (pending == null) {
+                    pending = new PendingGranules();
+                    transaction.putState(this, pending);
+                }
+                pending.add(typeName, new ArrayList<SimpleFeature>(granules));
+            }
+        }
+    }
+
+    @Override
+    public int removeGranules(Query query) {
+        Utilities.ensureNonNull("query", query);
+        final Lock lock = rwLock.writeLock();
+        try {
+            lock.lock();
+            final int removed = wrappedCatalogue.removeGranules(query);
+            final String typeName = query.getTypeName();
+            if (typeName == null) {
+                // we cannot tell which index is affected, reload them on next use
+                if (removed != 0) {
+                    indexes.clear();
+                }
+                return removed;
+            }
+            final PackedGranuleIndex index = indexes.get(typeName);
+            if (index == null) {
+                return removed;
+            }
+            if (removed < 0) {
+                // something went wrong, reload the index on next use
+                indexes.remove(typeName);
+                return removed;
+            }
+            if (removed > 0) {
+                final Filter filter = query.getFilter() != null ? query.getFilter() : Filter.INCLUDE;
+                final List<Integer> slots = new ArrayList<Integer>();
+                final PackedGranuleIndex.Predicate predicate = index.compile(filter);
+                index.query(index.getConstraints(filter), new PackedGranuleIndex.SlotVisitor() {
+
+                    public boolean visit(int slot) {
+                        if (predicate.evaluate(slot)) {
+                            slots.add(slot);
+                        }
+                        return true;
+                    }
+                });
+                for (Integer slot : slots) {
+                    index.remove(slot);
+                }
+                if (index.needsPacking()) {
+                    index.pack();
+                }
+            }
+            return removed;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void createType(String namespace, String typeName, String typeSpec) throws IOException,
+            SchemaException {
+        wrappedCatalogue.createType(namespace, typeName, typeSpec);
+    }
+
+    @Override
+    public void createType(SimpleFeatureType featureType) throws IOException {
+        wrappedCatalogue.createType(featureType);
+    }
+
+    @Override
+    public void createType(String identification, String typeSpec) throws SchemaException,
+            IOException {
+        wrappedCatalogue.createType(identification, typeSpec);
+    }
+
+    @Override
+    public BoundingBox getBounds(String typeName) {
+        return wrappedCatalogue.getBounds(typeName);
+    }
+
+    @Override
+    public QueryCapabilities getQueryCapabilities(String typeName) {
+        return wrappedCatalogue.getQueryCapabilities(typeName);
+    }
+
+    @Override
+    public SimpleFeatureType getType(String typeName) throws IOException {
+        return wrappedCatalogue.getType(typeName);
+    }
+
+    @Override
+    public String[] getTypeNames() {
+        return wrappedCatalogue.getTypeNames();
+    }
+
+    @Override
+    public void dispose() {
+        final Lock lock = rwLock.writeLock();
+        try {
+            lock.lock();
+            try {
+                wrappedCatalogue.dispose();
+            } catch (Exception e) {
+                if (LOGGER.isLoggable(Level.FINE))
+                    LOGGER.log(Level.FINE, e.getLocalizedMessage(), e);
+            }
+        } finally {
+            indexes.clear();
+            disposed = true;
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @throws IllegalStateException
+     */
+    private void checkStore() throws IllegalStateException {
+        if (disposed)
+            throw new IllegalStateException("The underlying store has already been disposed!");
+    }
+}
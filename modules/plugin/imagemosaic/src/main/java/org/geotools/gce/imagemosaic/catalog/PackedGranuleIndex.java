@@ -0,0 +1,1251 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2013, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.gce.imagemosaic.catalog;
+
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.geotools.feature.simple.SimpleFeatureBuilder;
+import org.geotools.gce.imagemosaic.GranuleDescriptor;
+import org.geotools.util.Converters;
+import org.geotools.util.Utilities;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
+import org.opengis.feature.type.AttributeDescriptor;
+import org.opengis.feature.type.GeometryDescriptor;
+import org.opengis.filter.And;
+import org.opengis.filter.BinaryComparisonOperator;
+import org.opengis.filter.Filter;
+import org.opengis.filter.Id;
+import org.opengis.filter.Not;
+import org.opengis.filter.Or;
+import org.opengis.filter.PropertyIsBetween;
+import org.opengis.filter.PropertyIsEqualTo;
+import org.opengis.filter.PropertyIsGreaterThan;
+import org.opengis.filter.PropertyIsGreaterThanOrEqualTo;
+import org.opengis.filter.PropertyIsLessThan;
+import org.opengis.filter.PropertyIsLessThanOrEqualTo;
+import org.opengis.filter.PropertyIsNull;
+import org.opengis.filter.expression.Expression;
+import org.opengis.filter.expression.Literal;
+import org.opengis.filter.expression.PropertyName;
+import org.opengis.filter.identity.Identifier;
+import org.opengis.filter.sort.SortBy;
+import org.opengis.filter.sort.SortOrder;
+import org.opengis.filter.spatial.BBOX;
+import org.opengis.geometry.BoundingBox;
+
+import com.vividsolutions.jts.geom.Envelope;
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.GeometryFactory;
+
+/**
+ * A packed, in memory, multidimensional index over the granules of a single type.
+ *
+ * <p>
+ * Each granule is indexed by its footprint envelope and by the values of the numeric and temporal
+ * attributes of the index schema, which are the ones backing the time, elevation and additional
+ * numeric domains of a mosaic. Envelopes and values are kept in flat primitive arrays; granules
+ * are sorted in Sort-Tile-Recursive order over all the indexed dimensions and grouped in nodes of
+ * {@link #NODE_CAPACITY} elements, whose bounds are kept in primitive arrays as well, level by
+ * level, up to a root level of at most {@link #NODE_CAPACITY} nodes.
+ *
+ * <p>
+ * Granules are stored by column rather than as {@link SimpleFeature}s: footprints, identifiers,
+ * interned strings and the attributes whose type a double does not represent exactly each have
+ * their own column. Filters are compiled into {@link Predicate}s evaluated on the columns, a
+ * feature only gets built for the parts of a filter a column cannot answer, and when handing
+ * granules out through {@link #getFeature(int)}. Double attributes holding NaN read back as
+ * <code>null</code>, timestamps are kept to the millisecond.
+ *
+ * <p>
+ * Granules added after the index has been packed are appended to an unsorted tail which is
+ * scanned linearly, and merged in the packed part as soon as it grows too large. Removed granules
+ * are only marked as such until the next repacking.
+ *
+ * <p>
+ * This class is not thread safe, callers are responsible for guarding it with a read/write lock.
+ */
+final class PackedGranuleIndex {
+
+    /** The maximum number of children of a node */
+    static final int NODE_CAPACITY = 16;
+
+    /** Attributes stored in the geometries column */
+    private static final int GEOMETRY = 0;
+
+    /** Attributes stored in the values column, as doubles */
+    private static final int VALUE = 1;
+
+    /** Attributes stored in a strings column */
+    private static final int STRING = 2;
+
+    /** Attributes stored in an objects column */
+    private static final int OBJECT = 3;
+
+    /** The minimum size of the unpacked tail triggering a repack */
+    private static final int MIN_TAIL = 256;
+
+    /**
+     * Receives the slots of the granules matching a query.
+     */
+    interface SlotVisitor {
+
+        /**
+         * @param slot the slot of the matching granule.
+         * @return <code>false</code> to stop the visit.
+         */
+        boolean visit(int slot);
+    }
+
+    /**
+     * The conservative bounds, in index space, of the granules possibly matching a
+     * {@link Filter}. The filter itself still needs to be evaluated on the granules falling
+     * within these bounds.
+     */
+    final class Constraints {
+
+        private boolean empty;
+
+        private boolean spatial;
+
+        private double minX = Double.NEGATIVE_INFINITY;
+
+        private double minY = Double.NEGATIVE_INFINITY;
+
+        private double maxX = Double.POSITIVE_INFINITY;
+
+        private double maxY = Double.POSITIVE_INFINITY;
+
+        private final double[] mins = new double[dimensions];
+
+        private final double[] maxs = new double[dimensions];
+
+        private Constraints() {
+            Arrays.fill(mins, Double.NEGATIVE_INFINITY);
+            Arrays.fill(maxs, Double.POSITIVE_INFINITY);
+        }
+
+        /**
+         * @return <code>true</code> if no granule can match the filter.
+         */
+        boolean isEmpty() {
+            return empty;
+        }
+
+        private boolean isBounded(final int dimension) {
+            return mins[dimension] != Double.NEGATIVE_INFINITY
+                    || maxs[dimension] != Double.POSITIVE_INFINITY;
+        }
+
+        private void intersect(final Constraints that) {
+            if (that.empty) {
+                empty = true;
+                return;
+            }
+            if (that.spatial) {
+                if (spatial) {
+                    minX = Math.max(minX, that.minX);
+                    minY = Math.max(minY, that.minY);
+                    maxX = Math.min(maxX, that.maxX);
+                    maxY = Math.min(maxY, that.maxY);
+                } else {
+                    spatial = true;
+                    minX = that.minX;
+                    minY = that.minY;
+                    maxX = that.maxX;
+                    maxY = that.maxY;
+                }
+                if (minX > maxX || minY > maxY) {
+                    empty = true;
+                }
+            }
+            for (int i = 0; i < dimensions; i++) {
+                mins[i] = Math.max(mins[i], that.mins[i]);
+                maxs[i] = Math.min(maxs[i], that.maxs[i]);
+                if (mins[i] > maxs[i]) {
+                    empty = true;
+                }
+            }
+        }
+
+        private void union(final Constraints that, final boolean first) {
+            if (first) {
+                empty = false;
+                spatial = that.spatial;
+                minX = that.minX;
+                minY = that.minY;
+                maxX = that.maxX;
+                maxY = that.maxY;
+                System.arraycopy(that.mins, 0, mins, 0, dimensions);
+                System.arraycopy(that.maxs, 0, maxs, 0, dimensions);
+                return;
+            }
+            if (spatial && that.spatial) {
+                minX = Math.min(minX, that.minX);
+                minY = Math.min(minY, that.minY);
+                maxX = Math.max(maxX, that.maxX);
+                maxY = Math.max(maxY, that.maxY);
+            } else {
+                spatial = false;
+                minX = minY = Double.NEGATIVE_INFINITY;
+                maxX = maxY = Double.POSITIVE_INFINITY;
+            }
+            for (int i = 0; i < dimensions; i++) {
+                mins[i] = Math.min(mins[i], that.mins[i]);
+                maxs[i] = Math.max(maxs[i], that.maxs[i]);
+            }
+        }
+
+        private boolean overlaps(final double[] envelopes, final double[] lows,
+                final double[] highs, final int offset) {
+            if (spatial
+                    && (envelopes[4 * offset] > maxX || envelopes[4 * offset + 1] > maxY
+                            || envelopes[4 * offset + 2] < minX || envelopes[4 * offset + 3] < minY)) {
+                return false;
+            }
+            for (int i = 0; i < dimensions; i++) {
+                // NaN values (null attributes) never satisfy a comparison
+                if (isBounded(i)
+                        && !(highs[dimensions * offset + i] >= mins[i] && lows[dimensions * offset + i] <= maxs[i])) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    private final SimpleFeatureType schema;
+
+    /** The names of the indexed attributes */
+    private final String[] attributes;
+
+    /** Whether the indexed attributes are temporal or numeric ones */
+    private final boolean[] temporal;
+
+    /** Whether the indexed attributes are represented exactly by their value */
+    private final boolean[] exact;
+
+    private final int dimensions;
+
+    /** The number of used slots, removed granules included */
+    private int size;
+
+    /** The number of slots sorted and covered by the nodes */
+    private int packed;
+
+    private int removed;
+
+    /** How each attribute of the schema is stored */
+    private final int[] kinds;
+
+    /** The column of each attribute of the schema, within the storage of its kind */
+    private final int[] columns;
+
+    /** The feature identifiers, <code>null</code> for removed granules */
+    private String[] fids = new String[NODE_CAPACITY];
+
+    /** The default geometries */
+    private Geometry[] geometries = new Geometry[NODE_CAPACITY];
+
+    /** The string attributes, interned per column */
+    private String[][] strings;
+
+    private final List<Map<String, String>> stringPools = new ArrayList<Map<String, String>>();
+
+    /** The attributes not represented exactly by the other columns */
+    private Object[][] objects;
+
+    private GranuleDescriptor[] granules = new GranuleDescriptor[NODE_CAPACITY];
+
+    /** minX, minY, maxX, maxY of each granule */
+    private double[] envelopes = new double[4 * NODE_CAPACITY];
+
+    /** The indexed attribute values of each granule, NaN for null values */
+    private double[] values;
+
+    /** Nodes bounds, level 0 nodes grouping granules, level i nodes grouping level i-1 nodes */
+    private double[][] nodeEnvelopes = new double[0][];
+
+    private double[][] nodeMins = new double[0][];
+
+    private double[][] nodeMaxs = new double[0][];
+
+    private int[] nodeCounts = new int[0];
+
+    /**
+     * Creates an empty index for granules of the provided type.
+     *
+     * @param schema the {@link SimpleFeatureType} of the granules to index.
+     */
+    PackedGranuleIndex(final SimpleFeatureType schema) {
+        Utilities.ensureNonNull("schema", schema);
+        this.schema = schema;
+        final int count = schema.getAttributeCount();
+        this.kinds = new int[count];
+        this.columns = new int[count];
+        final List<String> names = new ArrayList<String>();
+        final List<Class<?>> bindings = new ArrayList<Class<?>>();
+        int stringColumns = 0;
+        int objectColumns = 0;
+        for (int a = 0; a < count; a++) {
+            final AttributeDescriptor descriptor = schema.getDescriptor(a);
+            final Class<?> binding = descriptor.getType().getBinding();
+            if (descriptor == schema.getGeometryDescriptor()) {
+                kinds[a] = GEOMETRY;
+            } else if (descriptor instanceof GeometryDescriptor) {
+                kinds[a] = OBJECT;
+                columns[a] = objectColumns++;
+            } else if (Number.class.isAssignableFrom(binding) || Date.class.isAssignableFrom(binding)) {
+                names.add(descriptor.getLocalName());
+                bindings.add(binding);
+                if (isExact(binding)) {
+                    kinds[a] = VALUE;
+                    columns[a] = names.size() - 1;
+                } else {
+                    kinds[a] = OBJECT;
+                    columns[a] = objectColumns++;
+                }
+            } else if (binding == String.class) {
+                kinds[a] = STRING;
+                columns[a] = stringColumns++;
+                stringPools.add(new HashMap<String, String>());
+            } else {
+                kinds[a] = OBJECT;
+                columns[a] = objectColumns++;
+            }
+        }
+        this.attributes = names.toArray(new String[names.size()]);
+        this.dimensions = attributes.length;
+        this.temporal = new boolean[dimensions];
+        this.exact = new boolean[dimensions];
+        for (int i = 0; i < dimensions; i++) {
+            temporal[i] = Date.class.isAssignableFrom(bindings.get(i));
+            exact[i] = isExact(bindings.get(i));
+        }
+        this.values = new double[dimensions * NODE_CAPACITY];
+        this.strings = new String[stringColumns][NODE_CAPACITY];
+        this.objects = new Object[objectColumns][NODE_CAPACITY];
+    }
+
+    /**
+     * @return <code>true</code> if values of the provided type survive the round trip to a double.
+     */
+    private static boolean isExact(final Class<?> binding) {
+        return binding == Integer.class || binding == Short.class || binding == Byte.class
+                || binding == Double.class || binding == Date.class || binding == Timestamp.class
+                || binding == java.sql.Date.class || binding == Time.class;
+    }
+
+    SimpleFeatureType getSchema() {
+        return schema;
+    }
+
+    /**
+     * @return the names of the indexed, non spatial, attributes.
+     */
+    String[] getIndexedAttributes() {
+        return attributes.clone();
+    }
+
+    /**
+     * @return the number of granules in this index.
+     */
+    int getCount() {
+        return size - removed;
+    }
+
+    /**
+     * @return the number of granules not covered by the packed nodes yet.
+     */
+    int getTailSize() {
+        return size - packed;
+    }
+
+    /**
+     * Builds the feature of a granule out of its columns.
+     *
+     * @param slot the slot of the granule.
+     * @return a new {@link SimpleFeature}, <code>null</code> if the granule has been removed.
+     */
+    SimpleFeature getFeature(final int slot) {
+        if (fids[slot] == null) {
+            return null;
+        }
+        final Object[] attributeValues = new Object[kinds.length];
+        for (int a = 0; a < kinds.length; a++) {
+            attributeValues[a] = getAttribute(slot, a);
+        }
+        return SimpleFeatureBuilder.build(schema, attributeValues, fids[slot]);
+    }
+
+    private Object getAttribute(final int slot, final int attribute) {
+        switch (kinds[attribute]) {
+        case GEOMETRY:
+            return geometries[slot];
+        case STRING:
+            return strings[columns[attribute]][slot];
+        case OBJECT:
+            return objects[columns[attribute]][slot];
+        default:
+            final double value = values[dimensions * slot + columns[attribute]];
+            if (Double.isNaN(value)) {
+                return null;
+            }
+            final Class<?> binding = schema.getDescriptor(attribute).getType().getBinding();
+            if (binding == Double.class) {
+                return Double.valueOf(value);
+            } else if (binding == Integer.class) {
+                return Integer.valueOf((int) value);
+            } else if (binding == Short.class) {
+                return Short.valueOf((short) value);
+            } else if (binding == Byte.class) {
+                return Byte.valueOf((byte) value);
+            } else if (binding == Timestamp.class) {
+                return new Timestamp((long) value);
+            } else if (binding == java.sql.Date.class) {
+                return new java.sql.Date((long) value);
+            } else if (binding == Time.class) {
+                return new Time((long) value);
+            }
+            return new Date((long) value);
+        }
+    }
+
+    GranuleDescriptor getGranule(final int slot) {
+        return granules[slot];
+    }
+
+    void setGranule(final int slot, final GranuleDescriptor granule) {
+        granules[slot] = granule;
+    }
+
+    /**
+     * Appends a granule to the unpacked tail of this index.
+     *
+     * @param feature the granule to add.
+     */
+    void add(final SimpleFeature feature) {
+        Utilities.ensureNonNull("feature", feature);
+        if (size == fids.length) {
+            resize(size + (size >> 1) + 1);
+        }
+        final int slot = size++;
+        fids[slot] = feature.getID();
+        granules[slot] = null;
+
+        // envelope, granules without a footprint never match spatial queries
+        final Object geometry = feature.getDefaultGeometry();
+        geometries[slot] = geometry instanceof Geometry ? (Geometry) geometry : null;
+        final Envelope envelope = geometries[slot] != null ? geometries[slot].getEnvelopeInternal() : null;
+        if (envelope != null && !envelope.isNull()) {
+            envelopes[4 * slot] = envelope.getMinX();
+            envelopes[4 * slot + 1] = envelope.getMinY();
+            envelopes[4 * slot + 2] = envelope.getMaxX();
+            envelopes[4 * slot + 3] = envelope.getMaxY();
+        } else {
+            envelopes[4 * slot] = envelopes[4 * slot + 1] = Double.POSITIVE_INFINITY;
+            envelopes[4 * slot + 2] = envelopes[4 * slot + 3] = Double.NEGATIVE_INFINITY;
+        }
+        for (int i = 0; i < dimensions; i++) {
+            values[dimensions * slot + i] = toDouble(i, feature.getAttribute(attributes[i]));
+        }
+        for (int a = 0; a < kinds.length; a++) {
+            if (kinds[a] == STRING) {
+                final Object value = feature.getAttribute(a);
+                strings[columns[a]][slot] = value != null ? intern(columns[a], value.toString()) : null;
+            } else if (kinds[a] == OBJECT) {
+                objects[columns[a]][slot] = feature.getAttribute(a);
+            }
+        }
+    }
+
+    private String intern(final int column, final String value) {
+        final Map<String, String> pool = stringPools.get(column);
+        final String interned = pool.get(value);
+        if (interned != null) {
+            return interned;
+        }
+        pool.put(value, value);
+        return value;
+    }
+
+    private void resize(final int capacity) {
+        fids = Arrays.copyOf(fids, capacity);
+        geometries = Arrays.copyOf(geometries, capacity);
+        granules = Arrays.copyOf(granules, capacity);
+        envelopes = Arrays.copyOf(envelopes, 4 * capacity);
+        values = Arrays.copyOf(values, dimensions * capacity);
+        for (int c = 0; c < strings.length; c++) {
+            strings[c] = Arrays.copyOf(strings[c], capacity);
+        }
+        for (int c = 0; c < objects.length; c++) {
+            objects[c] = Arrays.copyOf(objects[c], capacity);
+        }
+    }
+
+    /**
+     * Marks the provided slot as removed.
+     *
+     * @param slot the slot to remove.
+     */
+    void remove(final int slot) {
+        if (fids[slot] != null) {
+            fids[slot] = null;
+            geometries[slot] = null;
+            granules[slot] = null;
+            for (int c = 0; c < strings.length; c++) {
+                strings[c][slot] = null;
+            }
+            for (int c = 0; c < objects.length; c++) {
+                objects[c][slot] = null;
+            }
+            removed++;
+        }
+    }
+
+    /**
+     * @return <code>true</code> if the unpacked tail or the removed granules are large enough
+     *         for a repack to pay off.
+     */
+    boolean needsPacking() {
+        final int threshold = Math.max(MIN_TAIL, packed >> 2);
+        return size - packed > threshold || removed > threshold;
+    }
+
+    /**
+     * Drops the removed granules, sorts all the granules in Sort-Tile-Recursive order and
+     * rebuilds the nodes.
+     */
+    void pack() {
+        // collect live granules
+        final int count = size - removed;
+        int[] order = new int[count];
+        for (int slot = 0, i = 0; slot < size; slot++) {
+            if (fids[slot] != null) {
+                order[i++] = slot;
+            }
+        }
+
+        // sorting keys, the envelope center plus the indexed values, skipping constant keys
+        final int stride = 2 + dimensions;
+        final double[] keys = new double[stride * size];
+        final double[] keyMins = new double[stride];
+        final double[] keyMaxs = new double[stride];
+        Arrays.fill(keyMins, Double.POSITIVE_INFINITY);
+        Arrays.fill(keyMaxs, Double.NEGATIVE_INFINITY);
+        for (int i = 0; i < count; i++) {
+            final int slot = order[i];
+            keys[stride * slot] = (envelopes[4 * slot] + envelopes[4 * slot + 2]) / 2;
+            keys[stride * slot + 1] = (envelopes[4 * slot + 1] + envelopes[4 * slot + 3]) / 2;
+            System.arraycopy(values, dimensions * slot, keys, stride * slot + 2, dimensions);
+            for (int k = 0; k < stride; k++) {
+                final double key = keys[stride * slot + k];
+                if (!Double.isNaN(key)) {
+                    keyMins[k] = Math.min(keyMins[k], key);
+                    keyMaxs[k] = Math.max(keyMaxs[k], key);
+                }
+            }
+        }
+        int active = 0;
+        final int[] activeKeys = new int[stride];
+        for (int k = 0; k < stride; k++) {
+            if (keyMins[k] < keyMaxs[k]) {
+                activeKeys[active++] = k;
+            }
+        }
+        strSort(order, 0, count, keys, stride, Arrays.copyOf(activeKeys, active), 0);
+
+        // permute the granules
+        final int capacity = Math.max(count, NODE_CAPACITY);
+        final String[] newFids = new String[capacity];
+        final Geometry[] newGeometries = new Geometry[capacity];
+        final GranuleDescriptor[] newGranules = new GranuleDescriptor[capacity];
+        final double[] newEnvelopes = new double[4 * capacity];
+        final double[] newValues = new double[dimensions * capacity];
+        final String[][] newStrings = new String[strings.length][capacity];
+        final Object[][] newObjects = new Object[objects.length][capacity];
+        for (int i = 0; i < count; i++) {
+            final int slot = order[i];
+            newFids[i] = fids[slot];
+            newGeometries[i] = geometries[slot];
+            newGranules[i] = granules[slot];
+            System.arraycopy(envelopes, 4 * slot, newEnvelopes, 4 * i, 4);
+            System.arraycopy(values, dimensions * slot, newValues, dimensions * i, dimensions);
+            for (int c = 0; c < strings.length; c++) {
+                newStrings[c][i] = strings[c][slot];
+            }
+            for (int c = 0; c < objects.length; c++) {
+                newObjects[c][i] = objects[c][slot];
+            }
+        }
+        fids = newFids;
+        geometries = newGeometries;
+        granules = newGranules;
+        envelopes = newEnvelopes;
+        values = newValues;
+        strings = newStrings;
+        objects = newObjects;
+        size = packed = count;
+        removed = 0;
+
+        // build the nodes bottom up
+        final List<double[]> levelEnvelopes = new ArrayList<double[]>();
+        final List<double[]> levelMins = new ArrayList<double[]>();
+        final List<double[]> levelMaxs = new ArrayList<double[]>();
+        final List<Integer> levelCounts = new ArrayList<Integer>();
+        double[] childEnvelopes = envelopes;
+        double[] childMins = values;
+        double[] childMaxs = values;
+        int childCount = count;
+        while (childCount > NODE_CAPACITY || (levelCounts.isEmpty() && childCount > 0)) {
+            final int nodes = (childCount + NODE_CAPACITY - 1) / NODE_CAPACITY;
+            final double[] nodeEnvelope = new double[4 * nodes];
+            final double[] nodeMin = new double[dimensions * nodes];
+            final double[] nodeMax = new double[dimensions * nodes];
+            for (int node = 0; node < nodes; node++) {
+                nodeEnvelope[4 * node] = nodeEnvelope[4 * node + 1] = Double.POSITIVE_INFINITY;
+                nodeEnvelope[4 * node + 2] = nodeEnvelope[4 * node + 3] = Double.NEGATIVE_INFINITY;
+                for (int i = 0; i < dimensions; i++) {
+                    nodeMin[dimensions * node + i] = Double.POSITIVE_INFINITY;
+                    nodeMax[dimensions * node + i] = Double.NEGATIVE_INFINITY;
+                }
+                final int end = Math.min(childCount, (node + 1) * NODE_CAPACITY);
+                for (int child = node * NODE_CAPACITY; child < end; child++) {
+                    nodeEnvelope[4 * node] = Math.min(nodeEnvelope[4 * node], childEnvelopes[4 * child]);
+                    nodeEnvelope[4 * node + 1] = Math.min(nodeEnvelope[4 * node + 1], childEnvelopes[4 * child + 1]);
+                    nodeEnvelope[4 * node + 2] = Math.max(nodeEnvelope[4 * node + 2], childEnvelopes[4 * child + 2]);
+                    nodeEnvelope[4 * node + 3] = Math.max(nodeEnvelope[4 * node + 3], childEnvelopes[4 * child + 3]);
+                    for (int i = 0; i < dimensions; i++) {
+                        final double min = childMins[dimensions * child + i];
+                        final double max = childMaxs[dimensions * child + i];
+                        // NaN values are skipped, Math.min/max would propagate them
+                        if (min < nodeMin[dimensions * node + i]) {
+                            nodeMin[dimensions * node + i] = min;
+                        }
+                        if (max > nodeMax[dimensions * node + i]) {
+                            nodeMax[dimensions * node + i] = max;
+                        }
+                    }
+                }
+            }
+            levelEnvelopes.add(nodeEnvelope);
+            levelMins.add(nodeMin);
+            levelMaxs.add(nodeMax);
+            levelCounts.add(nodes);
+            childEnvelopes = nodeEnvelope;
+            childMins = nodeMin;
+            childMaxs = nodeMax;
+            childCount = nodes;
+        }
+        final int levels = levelCounts.size();
+        nodeEnvelopes = levelEnvelopes.toArray(new double[levels][]);
+        nodeMins = levelMins.toArray(new double[levels][]);
+        nodeMaxs = levelMaxs.toArray(new double[levels][]);
+        nodeCounts = new int[levels];
+        for (int i = 0; i < levels; i++) {
+            nodeCounts[i] = levelCounts.get(i);
+        }
+    }
+
+    /**
+     * Visits the granules falling within the provided {@link Constraints}.
+     *
+     * @param constraints the {@link Constraints} to be satisfied, as returned by
+     *        {@link #getConstraints(Filter)}.
+     * @param visitor the {@link SlotVisitor} receiving the matching slots.
+     */
+    void query(final Constraints constraints, final SlotVisitor visitor) {
+        Utilities.ensureNonNull("constraints", constraints);
+        Utilities.ensureNonNull("visitor", visitor);
+        if (constraints.isEmpty()) {
+            return;
+        }
+        final int top = nodeCounts.length - 1;
+        if (top >= 0) {
+            for (int node = 0; node < nodeCounts[top]; node++) {
+                if (!visitNode(top, node, constraints, visitor)) {
+                    return;
+                }
+            }
+        }
+        for (int slot = packed; slot < size; slot++) {
+            if (fids[slot] != null && constraints.overlaps(envelopes, values, values, slot)
+                    && !visitor.visit(slot)) {
+                return;
+            }
+        }
+    }
+
+    private boolean visitNode(final int level, final int node, final Constraints constraints,
+            final SlotVisitor visitor) {
+        if (!constraints.overlaps(nodeEnvelopes[level], nodeMins[level], nodeMaxs[level], node)) {
+            return true;
+        }
+        final int start = node * NODE_CAPACITY;
+        if (level == 0) {
+            final int end = Math.min(packed, start + NODE_CAPACITY);
+            for (int slot = start; slot < end; slot++) {
+                if (fids[slot] != null && constraints.overlaps(envelopes, values, values, slot)
+                        && !visitor.visit(slot)) {
+                    return false;
+                }
+            }
+        } else {
+            final int end = Math.min(nodeCounts[level - 1], start + NODE_CAPACITY);
+            for (int child = start; child < end; child++) {
+                if (!visitNode(level - 1, child, constraints, visitor)) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Computes the bounds, in index space, of the granules possibly matching the provided
+     * {@link Filter}. Only {@link BBOX} filters and comparisons between an indexed attribute and
+     * a literal, possibly combined through {@link And} and {@link Or}, contribute to the bounds,
+     * anything else leaves them open.
+     *
+     * @param filter the {@link Filter} to analyze, <code>null</code> meaning
+     *        {@link Filter#INCLUDE}.
+     * @return the resulting {@link Constraints}.
+     */
+    Constraints getConstraints(final Filter filter) {
+        final Constraints constraints = new Constraints();
+        if (filter == null || filter == Filter.INCLUDE) {
+            return constraints;
+        }
+        if (filter == Filter.EXCLUDE) {
+            constraints.empty = true;
+        } else if (filter instanceof And) {
+            for (Filter child : ((And) filter).getChildren()) {
+                constraints.intersect(getConstraints(child));
+                if (constraints.empty) {
+                    break;
+                }
+            }
+        } else if (filter instanceof Or) {
+            boolean first = true;
+            for (Filter child : ((Or) filter).getChildren()) {
+                final Constraints childConstraints = getConstraints(child);
+                if (!childConstraints.empty) {
+                    constraints.union(childConstraints, first);
+                    first = false;
+                }
+            }
+            constraints.empty = first;
+        } else if (filter instanceof BBOX) {
+            final BoundingBox bbox = ((BBOX) filter).getBounds();
+            if (bbox != null && !bbox.isEmpty()) {
+                constraints.spatial = true;
+                constraints.minX = bbox.getMinX();
+                constraints.minY = bbox.getMinY();
+                constraints.maxX = bbox.getMaxX();
+                constraints.maxY = bbox.getMaxY();
+            }
+        } else if (filter instanceof PropertyIsBetween) {
+            final PropertyIsBetween between = (PropertyIsBetween) filter;
+            final int dimension = getDimension(between.getExpression());
+            if (dimension >= 0) {
+                constraints.mins[dimension] = lower(toDouble(dimension, between.getLowerBoundary()));
+                constraints.maxs[dimension] = upper(toDouble(dimension, between.getUpperBoundary()));
+            }
+        } else if (filter instanceof BinaryComparisonOperator) {
+            addComparison(constraints, (BinaryComparisonOperator) filter);
+        }
+        for (int i = 0; i < dimensions && !constraints.empty; i++) {
+            constraints.empty = constraints.mins[i] > constraints.maxs[i];
+        }
+        return constraints;
+    }
+
+    private void addComparison(final Constraints constraints, final BinaryComparisonOperator comparison) {
+        int dimension = getDimension(comparison.getExpression1());
+        Expression literal = comparison.getExpression2();
+        boolean propertyFirst = true;
+        if (dimension < 0) {
+            dimension = getDimension(comparison.getExpression2());
+            literal = comparison.getExpression1();
+            propertyFirst = false;
+        }
+        if (dimension < 0 || !(literal instanceof Literal)) {
+            return;
+        }
+        final double value = toDouble(dimension, literal);
+        if (Double.isNaN(value)) {
+            return;
+        }
+        // strict comparisons are relaxed, the filter gets evaluated on the candidates anyway
+        final boolean upperBound;
+        if (comparison instanceof PropertyIsEqualTo) {
+            constraints.mins[dimension] = lower(value);
+            constraints.maxs[dimension] = upper(value);
+            return;
+        } else if (comparison instanceof PropertyIsLessThan
+                || comparison instanceof PropertyIsLessThanOrEqualTo) {
+            upperBound = propertyFirst;
+        } else if (comparison instanceof PropertyIsGreaterThan
+                || comparison instanceof PropertyIsGreaterThanOrEqualTo) {
+            upperBound = !propertyFirst;
+        } else {
+            return;
+        }
+        if (upperBound) {
+            constraints.maxs[dimension] = upper(value);
+        } else {
+            constraints.mins[dimension] = lower(value);
+        }
+    }
+
+    /**
+     * A {@link Filter} compiled against the columns of this index.
+     */
+    abstract class Predicate {
+
+        /**
+         * @param slot the slot of a granule.
+         * @return <code>true</code> if the granule matches.
+         */
+        abstract boolean evaluate(int slot);
+    }
+
+    /**
+     * Compiles the provided {@link Filter} into a {@link Predicate} evaluated on the columns of
+     * this index. Identifier, {@link BBOX} and null checks, comparisons between an attribute and
+     * a literal on the indexed attributes, and equality on string attributes, possibly combined
+     * through {@link And}, {@link Or} and {@link Not}, never build a feature; anything else is
+     * evaluated on the feature of the granule.
+     *
+     * @param filter the {@link Filter} to compile, <code>null</code> meaning
+     *        {@link Filter#INCLUDE}.
+     * @return the resulting {@link Predicate}.
+     */
+    Predicate compile(final Filter filter) {
+        if (filter == null || filter == Filter.INCLUDE) {
+            return new Predicate() {
+                boolean evaluate(int slot) {
+                    return true;
+                }
+            };
+        } else if (filter == Filter.EXCLUDE) {
+            return new Predicate() {
+                boolean evaluate(int slot) {
+                    return false;
+                }
+            };
+        } else if (filter instanceof And || filter instanceof Or) {
+            final boolean and = filter instanceof And;
+            final List<Filter> children = and ? ((And) filter).getChildren() : ((Or) filter).getChildren();
+            final Predicate[] predicates = new Predicate[children.size()];
+            for (int i = 0; i < predicates.length; i++) {
+                predicates[i] = compile(children.get(i));
+            }
+            return new Predicate() {
+                boolean evaluate(int slot) {
+                    for (Predicate predicate : predicates) {
+                        if (predicate.evaluate(slot) != and) {
+                            return !and;
+                        }
+                    }
+                    return and;
+                }
+            };
+        } else if (filter instanceof Not) {
+            final Predicate predicate = compile(((Not) filter).getFilter());
+            return new Predicate() {
+                boolean evaluate(int slot) {
+                    return !predicate.evaluate(slot);
+                }
+            };
+        } else if (filter instanceof Id) {
+            final Set<String> ids = new HashSet<String>();
+            for (Identifier identifier : ((Id) filter).getIdentifiers()) {
+                ids.add(String.valueOf(identifier.getID()));
+            }
+            return new Predicate() {
+                boolean evaluate(int slot) {
+                    return ids.contains(fids[slot]);
+                }
+            };
+        }
+        Predicate predicate = null;
+        if (filter instanceof BBOX) {
+            predicate = compileBBOX((BBOX) filter);
+        } else if (filter instanceof PropertyIsNull) {
+            predicate = compileNull((PropertyIsNull) filter);
+        } else if (filter instanceof PropertyIsBetween) {
+            predicate = compileBetween((PropertyIsBetween) filter);
+        } else if (filter instanceof BinaryComparisonOperator) {
+            predicate = compileComparison((BinaryComparisonOperator) filter);
+        }
+        if (predicate != null) {
+            return predicate;
+        }
+        return new Predicate() {
+            boolean evaluate(int slot) {
+                return filter.evaluate(getFeature(slot));
+            }
+        };
+    }
+
+    private Predicate compileBBOX(final BBOX bbox) {
+        final int attribute = getAttribute(bbox.getExpression1());
+        if (attribute < 0 || kinds[attribute] != GEOMETRY || !(bbox.getExpression2() instanceof Literal)) {
+            return null;
+        }
+        final BoundingBox bounds = bbox.getBounds();
+        if (bounds == null) {
+            return null;
+        }
+        final double minX = bounds.getMinX();
+        final double minY = bounds.getMinY();
+        final double maxX = bounds.getMaxX();
+        final double maxY = bounds.getMaxY();
+        final Geometry polygon = new GeometryFactory().toGeometry(new Envelope(minX, maxX, minY, maxY));
+        return new Predicate() {
+            boolean evaluate(int slot) {
+                final int offset = 4 * slot;
+                if (geometries[slot] == null || envelopes[offset] > maxX || envelopes[offset + 1] > maxY
+                        || envelopes[offset + 2] < minX || envelopes[offset + 3] < minY) {
+                    return false;
+                }
+                if ((envelopes[offset] >= minX && envelopes[offset + 1] >= minY
+                        && envelopes[offset + 2] <= maxX && envelopes[offset + 3] <= maxY)
+                        || geometries[slot].isRectangle()) {
+                    return true;
+                }
+                return geometries[slot].intersects(polygon);
+            }
+        };
+    }
+
+    private Predicate compileNull(final PropertyIsNull isNull) {
+        final int attribute = getAttribute(isNull.getExpression());
+        if (attribute < 0) {
+            return null;
+        }
+        return new Predicate() {
+            boolean evaluate(int slot) {
+                switch (kinds[attribute]) {
+                case GEOMETRY:
+                    return geometries[slot] == null;
+                case STRING:
+                    return strings[columns[attribute]][slot] == null;
+                case OBJECT:
+                    return objects[columns[attribute]][slot] == null;
+                default:
+                    return Double.isNaN(values[dimensions * slot + columns[attribute]]);
+                }
+            }
+        };
+    }
+
+    private Predicate compileBetween(final PropertyIsBetween between) {
+        final int dimension = getDimension(between.getExpression());
+        if (dimension < 0 || !exact[dimension] || !(between.getLowerBoundary() instanceof Literal)
+                || !(between.getUpperBoundary() instanceof Literal)) {
+            return null;
+        }
+        final double lower = toDouble(dimension, between.getLowerBoundary());
+        final double upper = toDouble(dimension, between.getUpperBoundary());
+        if (Double.isNaN(lower) || Double.isNaN(upper)) {
+            return null;
+        }
+        return new Predicate() {
+            boolean evaluate(int slot) {
+                final double value = values[dimensions * slot + dimension];
+                return value >= lower && value <= upper;
+            }
+        };
+    }
+
+    private Predicate compileComparison(final BinaryComparisonOperator comparison) {
+        int attribute = getAttribute(comparison.getExpression1());
+        Expression literal = comparison.getExpression2();
+        boolean propertyFirst = true;
+        if (attribute < 0) {
+            attribute = getAttribute(comparison.getExpression2());
+            literal = comparison.getExpression1();
+            propertyFirst = false;
+        }
+        if (attribute < 0 || !(literal instanceof Literal)) {
+            return null;
+        }
+
+        // string equality
+        if (kinds[attribute] == STRING) {
+            final Object value = ((Literal) literal).getValue();
+            if (!(comparison instanceof PropertyIsEqualTo) || !(value instanceof String)) {
+                return null;
+            }
+            final int column = columns[attribute];
+            final String text = (String) value;
+            final boolean matchCase = comparison.isMatchingCase();
+            return new Predicate() {
+                boolean evaluate(int slot) {
+                    final String s = strings[column][slot];
+                    return s != null && (matchCase ? s.equals(text) : s.equalsIgnoreCase(text));
+                }
+            };
+        }
+
+        // numeric and temporal comparisons
+        if (kinds[attribute] != VALUE) {
+            return null;
+        }
+        final int dimension = columns[attribute];
+        final double value = toDouble(dimension, literal);
+        if (Double.isNaN(value)) {
+            return null;
+        }
+        final int operator;
+        if (comparison instanceof PropertyIsEqualTo) {
+            operator = 0;
+        } else if (comparison instanceof PropertyIsLessThan) {
+            operator = propertyFirst ? -2 : 2;
+        } else if (comparison instanceof PropertyIsLessThanOrEqualTo) {
+            operator = propertyFirst ? -1 : 1;
+        } else if (comparison instanceof PropertyIsGreaterThan) {
+            operator = propertyFirst ? 2 : -2;
+        } else if (comparison instanceof PropertyIsGreaterThanOrEqualTo) {
+            operator = propertyFirst ? 1 : -1;
+        } else {
+            return null;
+        }
+        return new Predicate() {
+            boolean evaluate(int slot) {
+                // NaN values (null attributes) never satisfy a comparison
+                final double v = values[dimensions * slot + dimension];
+                switch (operator) {
+                case 0:
+                    return v == value;
+                case -2:
+                    return v < value;
+                case -1:
+                    return v <= value;
+                case 1:
+                    return v >= value;
+                default:
+                    return v > value;
+                }
+            }
+        };
+    }
+
+    /**
+     * Returns a {@link Comparator} sorting slots as requested, working on the columns,
+     * <code>null</code> values first.
+     *
+     * @param sortBy the requested sorting.
+     */
+    Comparator<Integer> getComparator(final SortBy[] sortBy) {
+        final int[] sortAttributes = new int[sortBy.length];
+        for (int i = 0; i < sortBy.length; i++) {
+            // natural order on the identifiers
+            sortAttributes[i] = sortBy[i].getPropertyName() == null ? -1 : getAttribute(sortBy[i].getPropertyName());
+            if (sortBy[i].getPropertyName() != null && sortAttributes[i] < 0) {
+                throw new IllegalArgumentException("Unable to sort on " + sortBy[i].getPropertyName());
+            }
+        }
+        return new Comparator<Integer>() {
+
+            @SuppressWarnings("unchecked")
+            public int compare(Integer s1, Integer s2) {
+                for (int i = 0; i < sortBy.length; i++) {
+                    final int attribute = sortAttributes[i];
+                    int result;
+                    if (attribute < 0) {
+                        result = fids[s1].compareTo(fids[s2]);
+                    } else if (kinds[attribute] == VALUE) {
+                        final double v1 = values[dimensions * s1 + columns[attribute]];
+                        final double v2 = values[dimensions * s2 + columns[attribute]];
+                        if (Double.isNaN(v1)) {
+                            result = Double.isNaN(v2) ? 0 : -1;
+                        } else {
+                            result = Double.isNaN(v2) ? 1 : Double.compare(v1, v2);
+                        }
+                    } else {
+                        final Comparable<Object> v1 = (Comparable<Object>) getAttribute(s1, attribute);
+                        final Comparable<Object> v2 = (Comparable<Object>) getAttribute(s2, attribute);
+                        if (v1 == null) {
+                            result = v2 == null ? 0 : -1;
+                        } else {
+                            result = v2 == null ? 1 : v1.compareTo(v2);
+                        }
+                    }
+                    if (result != 0) {
+                        return sortBy[i].getSortOrder() == SortOrder.DESCENDING ? -result : result;
+                    }
+                }
+                return 0;
+            }
+        };
+    }
+
+    /**
+     * @return the index, in the schema, of the attribute referred to by the provided
+     *         {@link Expression}, <code>-1</code> if it is not a plain property name.
+     */
+    private int getAttribute(final Expression expression) {
+        if (!(expression instanceof PropertyName)) {
+            return -1;
+        }
+        String name = ((PropertyName) expression).getPropertyName();
+        if (name == null) {
+            return -1;
+        }
+        final int prefix = name.lastIndexOf(':');
+        if (prefix >= 0) {
+            name = name.substring(prefix + 1);
+        }
+        if (name.length() == 0 && schema.getGeometryDescriptor() != null) {
+            // the default geometry
+            name = schema.getGeometryDescriptor().getLocalName();
+        }
+        for (int a = 0; a < kinds.length; a++) {
+            if (schema.getDescriptor(a).getLocalName().equals(name)) {
+                return a;
+            }
+        }
+        return -1;
+    }
+
+    private int getDimension(final Expression expression) {
+        if (!(expression instanceof PropertyName)) {
+            return -1;
+        }
+        String name = ((PropertyName) expression).getPropertyName();
+        if (name == null) {
+            return -1;
+        }
+        final int prefix = name.lastIndexOf(':');
+        if (prefix >= 0) {
+            name = name.substring(prefix + 1);
+        }
+        for (int i = 0; i < dimensions; i++) {
+            if (attributes[i].equals(name)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private double toDouble(final int dimension, Object value) {
+        if (value instanceof Literal) {
+            value = ((Literal) value).getValue();
+        } else if (value instanceof Expression) {
+            return Double.NaN;
+        }
+        if (value == null) {
+            return Double.NaN;
+        }
+        if (temporal[dimension]) {
+            final Date date = value instanceof Date ? (Date) value : Converters.convert(value, Date.class);
+            return date != null ? date.getTime() : Double.NaN;
+        }
+        final Number number = value instanceof Number ? (Number) value : Converters.convert(value, Double.class);
+        return number != null ? number.doubleValue() : Double.NaN;
+    }
+
+    /** Accounts for the rounding of long values when converted to double */
+    private static double lower(final double value) {
+        return Double.isNaN(value) ? Double.NEGATIVE_INFINITY : Math.nextAfter(value, Double.NEGATIVE_INFINITY);
+    }
+
+    private static double upper(final double value) {
+        return Double.isNaN(value) ? Double.POSITIVE_INFINITY : Math.nextUp(value);
+    }
+
+    /**
+     * Sorts the provided slots in Sort-Tile-Recursive order: slots are sorted on the first key,
+     * cut in slices, each slice is sorted on the next key and so on.
+     */
+    private static void strSort(final int[] order, final int from, final int to,
+            final double[] keys, final int stride, final int[] activeKeys, final int key) {
+        final int count = to - from;
+        if (key >= activeKeys.length || count <= NODE_CAPACITY) {
+            return;
+        }
+        sort(order, from, to, keys, stride, activeKeys[key]);
+        if (key == activeKeys.length - 1) {
+            return;
+        }
+        final int leaves = (count + NODE_CAPACITY - 1) / NODE_CAPACITY;
+        final int slices = (int) Math.ceil(Math.pow(leaves, 1d / (activeKeys.length - key)));
+        final int sliceSize = NODE_CAPACITY * ((leaves + slices - 1) / slices);
+        for (int start = from; start < to; start += sliceSize) {
+            strSort(order, start, Math.min(to, start + sliceSize), keys, stride, activeKeys, key + 1);
+        }
+    }
+
+    /** Sorts a range of slots on one of their keys, NaN keys go last */
+    private static void sort(final int[] order, int from, int to, final double[] keys,
+            final int stride, final int key) {
+        while (to - from > 16) {
+            final double a = keys[stride * order[from] + key];
+            final double b = keys[stride * order[(from + to) >>> 1] + key];
+            final double c = keys[stride * order[to - 1] + key];
+            final double pivot = Double.compare(a, b) < 0 ? (Double.compare(b, c) < 0 ? b
+                    : Double.compare(a, c) < 0 ? c : a) : (Double.compare(a, c) < 0 ? a
+                    : Double.compare(b, c) < 0 ? c : b);
+            int i = from;
+            int j = to - 1;
+            while (i <= j) {
+                while (Double.compare(keys[stride * order[i] + key], pivot) < 0) {
+                    i++;
+                }
+                while (Double.compare(keys[stride * order[j] + key], pivot) > 0) {
+                    j--;
+                }
+                if (i <= j) {
+                    final int tmp = order[i];
+                    order[i++] = order[j];
+                    order[j--] = tmp;
+                }
+            }
+            // recurse on the smaller partition
+            if (j + 1 - from < to - i) {
+                sort(order, from, j + 1, keys, stride, key);
+                from = i;
+            } else {
+                sort(order, i, to, keys, stride, key);
+                to = j + 1;
+            }
+        }
+        for (int i = from + 1; i < to; i++) {
+            final int slot = order[i];
+            final double value = keys[stride * slot + key];
+            int j = i - 1;
+            while (j >= from && Double.compare(keys[stride * order[j] + key], value) > 0) {
+                order[j + 1] = order[j];
+                j--;
+            }
+            order[j + 1] = slot;
+        }
+    }
+}
@@ -0,0 +1,199 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2013, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.gce.imagemosaic;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.geotools.gce.imagemosaic.GranuleDescriptor.GranuleLoadingResult;
+import org.geotools.gce.imagemosaic.GranuleLoadingScheduler.Batch;
+import org.geotools.gce.imagemosaic.GranuleLoadingScheduler.GranuleLoadingTask;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Testing {@link GranuleLoadingScheduler} class, with granule loads simply taking their time.
+ */
+public class GranuleLoadingSchedulerTest extends Assert {
+
+    /**
+     * A granule load taking the given time, keeping track of the loads running concurrently.
+     */
+    static class SlowLoader implements Callable<GranuleLoadingResult> {
+
+        final long delay;
+
+        final AtomicInteger running;
+
+        final AtomicInteger maxRunning;
+
+        final AtomicInteger loaded;
+
+        SlowLoader(long delay, AtomicInteger running, AtomicInteger maxRunning, AtomicInteger loaded) {
+            this.delay = delay;
+            this.running = running;
+            this.maxRunning = maxRunning;
+            this.loaded = loaded;
+        }
+
+        public GranuleLoadingResult call() throws Exception {
+            final int current = running.incrementAndGet();
+            try {
+                synchronized (maxRunning) {
+                    if (current > maxRunning.get()) {
+                        maxRunning.set(current);
+                    }
+                }
+                Thread.sleep(delay);
+                loaded.incrementAndGet();
+                return null;
+            } finally {
+                running.decrementAndGet();
+            }
+        }
+    }
+
+    private ExecutorService executor;
+
+    private AtomicInteger running;
+
+    private AtomicInteger maxRunning;
+
+    private AtomicInteger loaded;
+
+    @Before
+    public void setup() {
+        executor = Executors.newFixedThreadPool(8);
+        running = new AtomicInteger();
+        maxRunning = new AtomicInteger();
+        loaded = new AtomicInteger();
+    }
+
+    @After
+    public void tearDown() throws InterruptedException {
+        executor.shutdownNow();
+        executor.awaitTermination(10, TimeUnit.SECONDS);
+    }
+
+    private SlowLoader loader(long delay) {
+        return new SlowLoader(delay, running, maxRunning, loaded);
+    }
+
+    @Test
+    public void testConcurrencyCap() throws Exception {
+        final GranuleLoadingScheduler scheduler = new GranuleLoadingScheduler(executor, 2, -1);
+        final Batch first = scheduler.newBatch();
+        final Batch second = scheduler.newBatch();
+        for (int i = 0; i < 6; i++) {
+            first.submit(loader(50));
+            second.submit(loader(50));
+        }
+        assertEquals(2, scheduler.getRunning());
+
+        // all the granules get loaded, never more than two at a time across the batches
+        final boolean[] seen = new boolean[6];
+        GranuleLoadingTask task;
+        int count = 0;
+        while ((task = first.next()) != null) {
+            assertFalse(task.isCancelled());
+            seen[task.getIndex()] = true;
+            count++;
+        }
+        assertEquals(6, count);
+        for (boolean s : seen) {
+            assertTrue(s);
+        }
+        count = 0;
+        while (second.next() != null) {
+            count++;
+        }
+        assertEquals(6, count);
+        assertEquals(12, loaded.get());
+        assertEquals(2, maxRunning.get());
+    }
+
+    @Test
+    public void testDeadline() throws Exception {
+        final long deadline = System.currentTimeMillis() + 300;
+        final GranuleLoadingScheduler scheduler = new GranuleLoadingScheduler(executor, 1, deadline);
+        final Batch batch = scheduler.newBatch();
+        batch.submit(loader(10));
+        batch.submit(loader(10000));
+        batch.submit(loader(10));
+
+        // the first granule makes it, then the deadline expires while the second is loading
+        GranuleLoadingTask task = batch.next();
+        assertNotNull(task);
+        assertEquals(0, task.getIndex());
+        assertNull(batch.next());
+        assertTrue(System.currentTimeMillis() >= deadline);
+        assertTrue(System.currentTimeMillis() < deadline + 5000);
+        assertTrue(batch.isCancelled());
+
+        // the running load has been interrupted and the pending one never started
+        final long limit = System.currentTimeMillis() + 5000;
+        while (scheduler.getRunning() > 0 && System.currentTimeMillis() < limit) {
+            Thread.sleep(10);
+        }
+        assertEquals(0, scheduler.getRunning());
+        assertEquals(1, loaded.get());
+        try {
+            batch.submit(loader(10));
+            fail("A cancelled batch should not accept more granules");
+        } catch (IllegalStateException e) {
+            // fine
+        }
+    }
+
+    @Test
+    public void testCancelOnlyAffectsTheBatch() throws Exception {
+        final GranuleLoadingScheduler scheduler = new GranuleLoadingScheduler(executor, 1, -1);
+        final Batch cancelled = scheduler.newBatch();
+        final Batch other = scheduler.newBatch();
+        final CountDownLatch started = new CountDownLatch(1);
+        cancelled.submit(new Callable<GranuleLoadingResult>() {
+            public GranuleLoadingResult call() throws Exception {
+                started.countDown();
+                Thread.sleep(10000);
+                return null;
+            }
+        });
+        cancelled.submit(loader(10));
+        other.submit(loader(10));
+        other.submit(loader(10));
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+
+        // the slot held by the cancelled batch goes to the other one
+        cancelled.cancel();
+        assertNull(cancelled.next());
+        int count = 0;
+        GranuleLoadingTask task;
+        while ((task = other.next()) != null) {
+            assertFalse(task.isCancelled());
+            count++;
+        }
+        assertEquals(2, count);
+        assertEquals(2, loaded.get());
+        assertFalse(other.isCancelled());
+    }
+}
@@ -0,0 +1,230 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2013, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.gce.imagemosaic;
+
+import it.geosolutions.imageioimpl.plugins.tiff.TIFFImageReaderSpi;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+
+import javax.imageio.spi.ImageInputStreamSpi;
+import javax.imageio.spi.ImageReaderSpi;
+
+import org.apache.commons.io.FileUtils;
+import org.geotools.coverage.grid.GridCoverage2D;
+import org.geotools.coverage.grid.io.GranuleStore;
+import org.geotools.factory.Hints;
+import org.geotools.gce.imagemosaic.GranuleReaderPool.PooledReader;
+import org.geotools.image.io.ImageIOExt;
+import org.geotools.test.TestData;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.opengis.filter.Filter;
+import org.opengis.parameter.GeneralParameterValue;
+import org.opengis.parameter.ParameterValue;
+
+/**
+ * Testing {@link GranuleReaderPool} class.
+ */
+public class GranuleReaderPoolTest extends Assert {
+
+    private static final ImageReaderSpi spi = new TIFFImageReaderSpi();
+
+    private URL granuleA;
+
+    private URL granuleB;
+
+    private ImageInputStreamSpi streamSpi;
+
+    @Before
+    public void setup() throws IOException {
+        granuleA = TestData.url(this, "/overview/0/D220161A.tif");
+        granuleB = TestData.url(this, "/overview/0/1/D220361A.tif");
+        streamSpi = ImageIOExt.getImageInputStreamSPI(granuleA, true);
+        assertNotNull(streamSpi);
+    }
+
+    @Test
+    public void testReuse() throws IOException {
+        final GranuleReaderPool pool = new GranuleReaderPool(4, 2, -1);
+        PooledReader handle = pool.borrow(granuleA, streamSpi, spi);
+        assertNotNull(handle);
+        assertFalse(handle.isInitialized());
+        handle.getReader().setInput(handle.getStream());
+        assertEquals(1, pool.getOpenCount());
+        pool.release(handle);
+        assertEquals(1, pool.getIdleCount());
+
+        // the same reader comes back, already initialized
+        PooledReader reused = pool.borrow(granuleA, streamSpi, spi);
+        assertSame(handle, reused);
+        assertTrue(reused.isInitialized());
+        assertEquals(0, pool.getIdleCount());
+        assertTrue(reused.getReader().getWidth(0) > 0);
+
+        // a broken reader is not pooled anymore
+        pool.invalidate(reused);
+        assertEquals(0, pool.getOpenCount());
+        assertEquals(0, pool.getIdleCount());
+        pool.clear(true);
+    }
+
+    @Test
+    public void testBounds() throws IOException {
+        final GranuleReaderPool pool = new GranuleReaderPool(2, 1, -1);
+        PooledReader first = pool.borrow(granuleA, streamSpi, spi);
+        PooledReader second = pool.borrow(granuleA, streamSpi, spi);
+        assertEquals(2, pool.getOpenCount());
+
+        // limit reached, nothing idle to close, we get a transient reader
+        PooledReader third = pool.borrow(granuleB, streamSpi, spi);
+        assertNotNull(third);
+        assertEquals(2, pool.getOpenCount());
+        pool.release(third);
+        assertEquals(0, pool.getIdleCount());
+
+        // only one idle reader per granule
+        pool.release(first);
+        pool.release(second);
+        assertEquals(1, pool.getIdleCount());
+        assertEquals(1, pool.getOpenCount());
+
+        // the idle reader on granule A gets closed to make room
+        PooledReader other = pool.borrow(granuleB, streamSpi, spi);
+        PooledReader another = pool.borrow(granuleB, streamSpi, spi);
+        assertEquals(2, pool.getOpenCount());
+        assertEquals(0, pool.getIdleCount());
+        pool.release(other);
+        pool.release(another);
+
+        pool.evict(granuleB);
+        assertEquals(0, pool.getOpenCount());
+        pool.clear(true);
+    }
+
+    @Test
+    public void testOffer() throws IOException {
+        final GranuleReaderPool pool = new GranuleReaderPool(1, 1, -1);
+        PooledReader handle = pool.borrow(granuleA, streamSpi, spi);
+        // not initialized readers are rejected
+        assertFalse(pool.offer(granuleA, handle.getStream(), handle.getReader()));
+        handle.getReader().setInput(handle.getStream());
+        pool.invalidate(handle);
+
+        final PooledReader transientHandle = new GranuleReaderPool(1, 1, -1).borrow(granuleA, streamSpi, spi);
+        transientHandle.getReader().setInput(transientHandle.getStream());
+        assertTrue(pool.offer(granuleA, transientHandle.getStream(), transientHandle.getReader()));
+        assertEquals(1, pool.getIdleCount());
+        assertSame(transientHandle.getReader(), pool.borrow(granuleA, streamSpi, spi).getReader());
+
+        pool.clear(true);
+        assertFalse(pool.offer(granuleA, transientHandle.getStream(), transientHandle.getReader()));
+    }
+
+    @Test
+    public void testContext() throws IOException {
+        final GranuleReaderPool pool = new GranuleReaderPool(4, 2, -1);
+        PooledReader handle = pool.borrow(granuleA, "aux", streamSpi, spi);
+        handle.getReader().setInput(handle.getStream());
+        pool.release(handle);
+
+        // a reader customized differently is not reused
+        PooledReader other = pool.borrow(granuleA, null, streamSpi, spi);
+        assertNotSame(handle, other);
+        assertFalse(other.isInitialized());
+        assertSame(handle, pool.borrow(granuleA, "aux", streamSpi, spi));
+        pool.invalidate(other);
+        pool.invalidate(handle);
+        pool.clear(true);
+    }
+
+    @Test
+    public void testIdleEviction() throws Exception {
+        final GranuleReaderPool pool = new GranuleReaderPool(4, 2, 10);
+        PooledReader handle = pool.borrow(granuleA, streamSpi, spi);
+        handle.getReader().setInput(handle.getStream());
+        pool.release(handle);
+        assertEquals(1, pool.getIdleCount());
+
+        // closed in the background, without using the pool anymore
+        for (int i = 0; i < 50 && pool.getOpenCount() > 0; i++) {
+            Thread.sleep(100);
+        }
+        assertEquals(0, pool.getOpenCount());
+        assertEquals(0, pool.getIdleCount());
+        pool.clear(true);
+    }
+
+    @Test
+    public void testMosaic() throws Exception {
+        final File workDir = new File(TestData.file(this, "."), "readerPool");
+        if (workDir.exists()) {
+            FileUtils.deleteDirectory(workDir);
+        }
+        FileUtils.copyDirectory(TestData.file(this, "rgb"), workDir);
+
+        final GranuleReaderPool pool = new GranuleReaderPool(64, 2, -1);
+        ImageMosaicReader reader = new ImageMosaicReader(workDir, new Hints(
+                Utils.GRANULE_READER_POOL, pool));
+        try {
+            final ParameterValue<Boolean> direct = ImageMosaicFormat.USE_JAI_IMAGEREAD.createValue();
+            direct.setValue(false);
+            GridCoverage2D coverage = reader.read(new GeneralParameterValue[] { direct });
+            assertNotNull(coverage);
+            coverage.dispose(true);
+            final int open = pool.getOpenCount();
+            assertTrue(open > 0);
+            assertEquals(open, pool.getIdleCount());
+
+            // the next read reuses the same readers
+            coverage = reader.read(new GeneralParameterValue[] { direct });
+            coverage.dispose(true);
+            assertEquals(open, pool.getOpenCount());
+
+            // the readers of the removed granules are closed
+            final String name = reader.getGridCoverageNames()[0];
+            final GranuleStore store = (GranuleStore) reader.getGranules(name, false);
+            assertTrue(store.removeGranules(Filter.INCLUDE) > 0);
+            assertEquals(0, pool.getOpenCount());
+        } finally {
+            reader.dispose();
+            pool.clear(true);
+            FileUtils.deleteDirectory(workDir);
+        }
+
+        // a pool created by the mosaic is disposed with it
+        System.setProperty(GranuleReaderPool.ENABLED_KEY, "true");
+        try {
+            FileUtils.copyDirectory(TestData.file(this, "rgb"), workDir);
+            reader = new ImageMosaicReader(workDir, new Hints());
+            final GranuleReaderPool owned = reader.readerPool;
+            assertNotNull(owned);
+            final ParameterValue<Boolean> direct = ImageMosaicFormat.USE_JAI_IMAGEREAD.createValue();
+            direct.setValue(false);
+            reader.read(new GeneralParameterValue[] { direct }).dispose(true);
+            assertTrue(owned.getIdleCount() > 0);
+            reader.dispose();
+            assertEquals(0, owned.getOpenCount());
+            assertTrue(owned.isClosed());
+        } finally {
+            System.clearProperty(GranuleReaderPool.ENABLED_KEY);
+            FileUtils.deleteDirectory(workDir);
+        }
+    }
+}
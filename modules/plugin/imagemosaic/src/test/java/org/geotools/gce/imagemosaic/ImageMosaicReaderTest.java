@@ -44,6 +44,8 @@ import java.util.List;
 import java.util.Properties;
 import java.util.Set;
 import java.util.TimeZone;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.logging.Logger;
 
 import javax.swing.JFrame;
@@ -1463,6 +1465,29 @@ public class ImageMosaicReaderTest extends Assert{
         assertEquals(255, pixel[3]);
     }
     
+    @Test
+    public void testMultithreadedLoadingLimits() throws Exception {
+        final ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            final AbstractGridFormat format = TestUtils.getFormat(rgbURL);
+            final ImageMosaicReader reader = TestUtils.getReader(rgbURL, format,
+                    new Hints(Hints.EXECUTOR_SERVICE, executor));
+
+            final ParameterValue<Boolean> multithreading = ImageMosaicFormat.ALLOW_MULTITHREADING.createValue();
+            multithreading.setValue(true);
+            // load one granule at a time, with a generous deadline
+            final ParameterValue<Integer> maxLoads = ImageMosaicFormat.MAX_CONCURRENT_GRANULE_LOADS.createValue();
+            maxLoads.setValue(1);
+            final ParameterValue<Long> timeout = ImageMosaicFormat.GRANULE_LOADING_TIMEOUT.createValue();
+            timeout.setValue(60000l);
+
+            TestUtils.checkCoverage(reader, new GeneralParameterValue[] { multithreading, maxLoads, timeout },
+                    "multithreaded loading limits");
+        } finally {
+            executor.shutdown();
+        }
+    }
+
     @Test
     //@Ignore
     public void testRequestInOut() throws Exception {
@@ -0,0 +1,262 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2013, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.gce.imagemosaic.catalog;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.geotools.factory.CommonFactoryFinder;
+import org.geotools.feature.simple.SimpleFeatureBuilder;
+import org.geotools.feature.simple.SimpleFeatureTypeBuilder;
+import org.geotools.geometry.jts.JTS;
+import org.geotools.geometry.jts.ReferencedEnvelope;
+import org.geotools.referencing.crs.DefaultGeographicCRS;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
+import org.opengis.filter.Filter;
+import org.opengis.filter.FilterFactory2;
+import org.opengis.filter.sort.SortBy;
+import org.opengis.filter.sort.SortOrder;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.GeometryFactory;
+import com.vividsolutions.jts.geom.Polygon;
+
+/**
+ * Testing {@link PackedGranuleIndex} class.
+ */
+public class PackedGranuleIndexTest extends Assert {
+
+    private static final FilterFactory2 FF = CommonFactoryFinder.getFilterFactory2();
+
+    private static final long DAY = 24 * 3600 * 1000L;
+
+    private SimpleFeatureBuilder fb;
+
+    private List<SimpleFeature> granules;
+
+    private PackedGranuleIndex index;
+
+    @Before
+    public void setup() {
+        SimpleFeatureTypeBuilder tb = new SimpleFeatureTypeBuilder();
+        tb.setName("granules");
+        tb.add("the_geom", Polygon.class, DefaultGeographicCRS.WGS84);
+        tb.add("location", String.class);
+        tb.add("time", Date.class);
+        tb.add("elevation", Double.class);
+        SimpleFeatureType schema = tb.buildFeatureType();
+        fb = new SimpleFeatureBuilder(schema);
+
+        // a 10x10 grid of footprints, 10 times and 3 elevations each
+        granules = new ArrayList<SimpleFeature>();
+        index = new PackedGranuleIndex(schema);
+        for (int t = 0; t < 10; t++) {
+            for (int z = 0; z < 3; z++) {
+                for (int i = 0; i < 10; i++) {
+                    for (int j = 0; j < 10; j++) {
+                        SimpleFeature granule = buildGranule(i, j, t, z);
+                        granules.add(granule);
+                        index.add(granule);
+                    }
+                }
+            }
+        }
+        index.pack();
+    }
+
+    private SimpleFeature buildGranule(int i, int j, int t, Integer z) {
+        fb.add(JTS.toGeometry(new ReferencedEnvelope(i * 10, i * 10 + 10, j * 10, j * 10 + 10, DefaultGeographicCRS.WGS84)));
+        fb.add("granule_" + i + "_" + j + "_" + t + "_" + z + ".tif");
+        fb.add(new Date(t * DAY));
+        fb.add(z == null ? null : Double.valueOf(z * 100));
+        return fb.buildFeature(null);
+    }
+
+    private Set<SimpleFeature> query(Filter filter) {
+        final Set<SimpleFeature> result = new HashSet<SimpleFeature>();
+        final PackedGranuleIndex.Predicate predicate = index.compile(filter);
+        index.query(index.getConstraints(filter), new PackedGranuleIndex.SlotVisitor() {
+
+            public boolean visit(int slot) {
+                if (predicate.evaluate(slot)) {
+                    assertTrue(result.add(index.getFeature(slot)));
+                }
+                return true;
+            }
+        });
+        return result;
+    }
+
+    private Set<SimpleFeature> scan(Filter filter) {
+        final Set<SimpleFeature> result = new HashSet<SimpleFeature>();
+        for (SimpleFeature granule : granules) {
+            if (filter.evaluate(granule)) {
+                result.add(granule);
+            }
+        }
+        return result;
+    }
+
+    private void assertQuery(Filter filter, int expected) {
+        Set<SimpleFeature> result = query(filter);
+        assertEquals(scan(filter), result);
+        assertEquals(expected, result.size());
+    }
+
+    @Test
+    public void testIndexedAttributes() {
+        assertArrayEquals(new String[] { "time", "elevation" }, index.getIndexedAttributes());
+        assertEquals(3000, index.getCount());
+        assertEquals(0, index.getTailSize());
+    }
+
+    @Test
+    public void testQueries() {
+        Filter time = FF.equal(FF.property("time"), FF.literal(new Date(3 * DAY)), true);
+        Filter elevation = FF.equal(FF.property("elevation"), FF.literal(200), true);
+        Filter bbox = FF.bbox("the_geom", 12, 12, 28, 18, null);
+
+        assertQuery(Filter.INCLUDE, 3000);
+        assertQuery(Filter.EXCLUDE, 0);
+        assertQuery(time, 300);
+        assertQuery(FF.and(time, elevation), 100);
+        assertQuery(FF.and(FF.and(time, elevation), bbox), 2);
+        assertQuery(FF.or(FF.and(time, elevation), FF.and(bbox, elevation)), 118);
+
+        // ranges, with literals on either side and in string form
+        Filter range = FF.and(
+                FF.lessOrEqual(FF.literal(new Date(2 * DAY)), FF.property("time")),
+                FF.less(FF.property("time"), FF.literal(new Date(4 * DAY))));
+        assertQuery(range, 600);
+        assertQuery(FF.between(FF.property("elevation"), FF.literal(50), FF.literal("250")), 2000);
+        assertQuery(FF.greater(FF.property("elevation"), FF.literal(1000)), 0);
+
+        // not indexed parts of the filter are still honored
+        Filter location = FF.like(FF.property("location"), "granule_1_1_*");
+        assertQuery(FF.and(location, time), 3);
+        assertQuery(FF.not(time), 2700);
+    }
+
+    @Test
+    public void testUpdates() {
+        // granules in the tail, with a null elevation too
+        SimpleFeature added = buildGranule(0, 0, 20, 1);
+        SimpleFeature nullElevation = buildGranule(0, 0, 20, null);
+        index.add(added);
+        index.add(nullElevation);
+        granules.add(added);
+        granules.add(nullElevation);
+        assertEquals(2, index.getTailSize());
+
+        Filter time = FF.equal(FF.property("time"), FF.literal(new Date(20 * DAY)), true);
+        assertQuery(time, 2);
+        assertQuery(FF.and(time, FF.lessOrEqual(FF.property("elevation"), FF.literal(100))), 1);
+
+        // remove all the granules at a given time
+        final Filter removed = FF.equal(FF.property("time"), FF.literal(new Date(0)), true);
+        final List<Integer> slots = new ArrayList<Integer>();
+        final PackedGranuleIndex.Predicate predicate = index.compile(removed);
+        index.query(index.getConstraints(removed), new PackedGranuleIndex.SlotVisitor() {
+
+            public boolean visit(int slot) {
+                if (predicate.evaluate(slot)) {
+                    slots.add(slot);
+                }
+                return true;
+            }
+        });
+        for (Integer slot : slots) {
+            index.remove(slot);
+        }
+        granules.removeAll(scan(removed));
+        assertEquals(2702, index.getCount());
+        assertFalse(index.needsPacking());
+        assertQuery(removed, 0);
+        assertQuery(Filter.INCLUDE, 2702);
+
+        // repacking preserves the contents
+        index.pack();
+        assertEquals(0, index.getTailSize());
+        assertQuery(Filter.INCLUDE, 2702);
+        assertQuery(time, 2);
+        assertQuery(FF.bbox("the_geom", 0, 0, 5, 5, null), 29);
+    }
+
+    @Test
+    public void testColumnPredicates() {
+        // string equality, null checks, identifiers
+        assertQuery(FF.equal(FF.property("location"), FF.literal("granule_1_2_3_2.tif"), true), 1);
+        assertQuery(FF.equal(FF.property("location"), FF.literal("GRANULE_1_2_3_2.TIF"), false), 1);
+        assertQuery(FF.equal(FF.property("location"), FF.literal("GRANULE_1_2_3_2.TIF"), true), 0);
+        assertQuery(FF.isNull(FF.property("elevation")), 0);
+        assertQuery(FF.not(FF.isNull(FF.property("location"))), 3000);
+        assertQuery(FF.id(Collections.singleton(FF.featureId(granules.get(42).getID()))), 1);
+
+        // a footprint whose envelope, but not its geometry, intersects the bbox
+        SimpleFeature triangle = fb.buildFeature(null, new Object[] {
+                new GeometryFactory().createPolygon(new Coordinate[] { new Coordinate(200, 200),
+                        new Coordinate(210, 200), new Coordinate(200, 210), new Coordinate(200, 200) }),
+                "triangle.tif", new Date(0), Double.valueOf(0) });
+        index.add(triangle);
+        granules.add(triangle);
+        assertQuery(FF.bbox("the_geom", 208, 208, 220, 220, null), 0);
+        assertQuery(FF.bbox("the_geom", 201, 201, 220, 220, null), 1);
+        assertQuery(FF.bbox("", 201, 201, 220, 220, null), 1);
+    }
+
+    @Test
+    public void testFeatures() {
+        // features are rebuilt from the columns as they were added
+        final Set<SimpleFeature> all = query(Filter.INCLUDE);
+        assertEquals(new HashSet<SimpleFeature>(granules), all);
+    }
+
+    @Test
+    public void testSorting() {
+        final List<Integer> slots = new ArrayList<Integer>();
+        index.query(index.getConstraints(Filter.INCLUDE), new PackedGranuleIndex.SlotVisitor() {
+
+            public boolean visit(int slot) {
+                slots.add(slot);
+                return true;
+            }
+        });
+        Collections.sort(slots, index.getComparator(new SortBy[] {
+                FF.sort("time", SortOrder.DESCENDING), FF.sort("location", SortOrder.ASCENDING) }));
+        SimpleFeature previous = null;
+        for (Integer slot : slots) {
+            SimpleFeature feature = index.getFeature(slot);
+            if (previous != null) {
+                int time = ((Date) previous.getAttribute("time")).compareTo((Date) feature.getAttribute("time"));
+                assertTrue(time >= 0);
+                if (time == 0) {
+                    assertTrue(((String) previous.getAttribute("location")).compareTo(
+                            (String) feature.getAttribute("location")) < 0);
+                }
+            }
+            previous = feature;
+        }
+    }
+}
@@ -33,6 +33,7 @@ import org.geotools.data.DataUtilities;
 import org.geotools.data.PrjFileReader;
 import org.geotools.factory.Hints;
 import org.geotools.gce.imagemosaic.ImageMosaicFormat;
+import org.geotools.parameter.DefaultParameterDescriptor;
 import org.geotools.parameter.DefaultParameterDescriptorGroup;
 import org.geotools.parameter.ParameterGroup;
 import org.opengis.coverage.grid.Format;
@@ -54,6 +55,17 @@ public final class ImagePyramidFormat extends AbstractGridFormat implements Form
 
 	/** Logger. */
 	private final static Logger LOGGER = org.geotools.util.logging.Logging.getLogger("org.geotools.gce.imagepyramid");
+
+	/**
+	 * Asks the reader to open, in background, the mosaics of the levels next to the one used for
+	 * the current request, so that zooming in or out does not pay their initialization cost.
+	 */
+	public static final DefaultParameterDescriptor<Boolean> PREFETCH_ADJACENT_LEVELS = DefaultParameterDescriptor.create(
+			"PrefetchAdjacentLevels",
+			"Whether the mosaics of the levels next to the requested one should be opened in background",
+			Boolean.class,
+			Boolean.FALSE,
+			false);
 	
         /**
 	 * Creates an instance and sets the metadata.
@@ -87,7 +99,8 @@ public final class ImagePyramidFormat extends AbstractGridFormat implements Form
                 ImageMosaicFormat.MAX_ALLOWED_TILES,
                 ImageMosaicFormat.ELEVATION,
                 ImageMosaicFormat.TIME,
-                ImageMosaicFormat.FADING}));
+                ImageMosaicFormat.FADING,
+                PREFETCH_ADJACENT_LEVELS}));
 
 		// reading parameters
 		writeParameters = null;
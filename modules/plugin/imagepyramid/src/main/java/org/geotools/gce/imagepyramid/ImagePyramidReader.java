@@ -17,16 +17,29 @@
 package org.geotools.gce.imagepyramid;
 
 import java.awt.Rectangle;
+import java.awt.image.RenderedImage;
 import java.io.BufferedInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.UnsupportedEncodingException;
+import java.lang.ref.WeakReference;
 import java.net.URL;
 import java.nio.channels.Channels;
-import java.util.Map.Entry;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Properties;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -138,10 +151,273 @@ public final class ImagePyramidReader extends AbstractGridCoverage2DReader imple
 	private String[] levelsDirs;
 
 	/**
-	 * Cache of {@link ImageMosaicReader} objects for the different levels.
-	 * 
-	 */    
-	private ConcurrentHashMap<Integer, ImageMosaicReader> readers =new ConcurrentHashMap<Integer, ImageMosaicReader>();
+	 * Default time after which the mosaic reader of a level that is not being used gets disposed,
+	 * in milliseconds.
+	 */
+	public static final long DEFAULT_LEVEL_READER_TIMEOUT = 10 * 60 * 1000;
+
+	/** Minimum delay between two idle disposal sweeps */
+	private static final long DISPOSAL_PERIOD = 1000;
+
+	/** Disposes the idle mosaic readers of the pyramids in the background */
+	private static final Timer DISPOSER = new Timer("GT image pyramid level disposer", true);
+
+	/**
+	 * Executor opening the mosaics of the adjacent levels when no
+	 * {@link Hints#EXECUTOR_SERVICE} is provided.
+	 */
+	private static ExecutorService prefetchExecutor;
+
+	/**
+	 * The mosaic readers of the different levels, opened on demand.
+	 */
+	private LevelReader[] levelReaders;
+
+	private volatile boolean disposed;
+
+	private volatile long levelReaderTimeout = DEFAULT_LEVEL_READER_TIMEOUT;
+
+	/** The task disposing the idle mosaic readers, null if they are kept open */
+	private IdleDisposal idleDisposal;
+
+	/**
+	 * Holds the {@link ImageMosaicReader} of a level. The reader is created by the first thread
+	 * asking for it, or in background when prefetching, while other threads wait for it rather
+	 * than opening their own copy. Readers not used for a while are disposed, and recreated when
+	 * needed again. A reader is in use while reading, and then as long as the coverages it
+	 * returned are not disposed nor garbage collected, as their images may load the tiles lazily.
+	 */
+	private final class LevelReader {
+
+		private final int level;
+
+		private ImageMosaicReader reader;
+
+		private FutureTask<ImageMosaicReader> creation;
+
+		/** The number of reads currently using the reader, which cannot be disposed meanwhile */
+		private int users;
+
+		/** The images of the coverages returned and not disposed yet */
+		private final List<WeakReference<RenderedImage>> images = new ArrayList<WeakReference<RenderedImage>>();
+
+		private long lastAccess;
+
+		LevelReader(int level) {
+			this.level = level;
+		}
+
+		/**
+		 * Returns the reader, creating it if needed. Must be paired with a {@link #release()}.
+		 */
+		ImageMosaicReader acquire() throws IOException {
+			final FutureTask<ImageMosaicReader> task;
+			boolean run = false;
+			synchronized (this) {
+				users++;
+				lastAccess = System.currentTimeMillis();
+				if (reader != null) {
+					return reader;
+				}
+				if (creation == null) {
+					creation = new Creation();
+					run = true;
+				}
+				task = creation;
+			}
+			try {
+				if (run) {
+					task.run();
+				}
+				return task.get();
+			} catch (InterruptedException e) {
+				release();
+				Thread.currentThread().interrupt();
+				throw new IOException("Interrupted while opening the mosaic of level " + level);
+			} catch (ExecutionException e) {
+				release();
+				final Throwable cause = e.getCause();
+				if (cause instanceof IOException) {
+					throw (IOException) cause;
+				}
+				throw new DataSourceException("Failed to open the mosaic of level " + level, cause);
+			}
+		}
+
+		synchronized void release() {
+			users--;
+			lastAccess = System.currentTimeMillis();
+		}
+
+		/**
+		 * Keeps the reader in use until the image is forgotten or garbage collected
+		 */
+		synchronized void retain(RenderedImage image) {
+			images.add(new WeakReference<RenderedImage>(image));
+		}
+
+		synchronized void forget(RenderedImage image) {
+			for (Iterator<WeakReference<RenderedImage>> it = images.iterator(); it.hasNext();) {
+				final RenderedImage retained = it.next().get();
+				if (retained == null || retained == image) {
+					it.remove();
+				}
+			}
+			lastAccess = System.currentTimeMillis();
+		}
+
+		private boolean isInUse() {
+			if (users > 0) {
+				return true;
+			}
+			// drop the images garbage collected without their coverage being disposed
+			for (Iterator<WeakReference<RenderedImage>> it = images.iterator(); it.hasNext();) {
+				if (it.next().get() == null) {
+					it.remove();
+				}
+			}
+			return !images.isEmpty();
+		}
+
+		/**
+		 * Starts creating the reader in background, if not already available
+		 */
+		void prefetch(ExecutorService executor) {
+			final FutureTask<ImageMosaicReader> task;
+			synchronized (this) {
+				if (reader != null || creation != null) {
+					return;
+				}
+				creation = new Creation();
+				task = creation;
+			}
+			executor.execute(task);
+		}
+
+		synchronized boolean isOpen() {
+			return reader != null;
+		}
+
+		/**
+		 * Disposes the reader if it has not been used for longer than the timeout
+		 */
+		synchronized void disposeIfIdle(long now, long timeout) {
+			if (reader != null && !isInUse() && now - lastAccess > timeout) {
+				if (LOGGER.isLoggable(Level.FINE)) {
+					LOGGER.fine("Disposing the idle mosaic reader of level " + level);
+				}
+				dispose();
+			}
+		}
+
+		synchronized void dispose() {
+			if (reader != null) {
+				try {
+					reader.dispose();
+				} catch (Exception e) {
+					if (LOGGER.isLoggable(Level.FINE)) {
+						LOGGER.log(Level.FINE, e.getLocalizedMessage(), e);
+					}
+				}
+				reader = null;
+			}
+			images.clear();
+		}
+
+		/**
+		 * Creates the reader, publishing it once done
+		 */
+		private final class Creation extends FutureTask<ImageMosaicReader> {
+
+			Creation() {
+				super(new Callable<ImageMosaicReader>() {
+					public ImageMosaicReader call() throws Exception {
+						return createLevelReader(level);
+					}
+				});
+			}
+
+			@Override
+			protected void done() {
+				synchronized (LevelReader.this) {
+					if (creation != this) {
+						return;
+					}
+					creation = null;
+					try {
+						reader = get();
+						lastAccess = System.currentTimeMillis();
+						if (disposed) {
+							dispose();
+						}
+					} catch (Exception e) {
+						// reported to the threads waiting for it, if any
+						if (LOGGER.isLoggable(Level.FINE)) {
+							LOGGER.log(Level.FINE, e.getLocalizedMessage(), e);
+						}
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * A coverage read from a level, keeping the mosaic reader of the level in use until disposed
+	 */
+	private static final class LevelCoverage extends GridCoverage2D {
+
+		private static final long serialVersionUID = -6330981938546406224L;
+
+		private transient LevelReader levelReader;
+
+		LevelCoverage(CharSequence name, GridCoverage2D coverage, LevelReader levelReader) {
+			super(name, coverage);
+			this.levelReader = levelReader;
+			levelReader.retain(image);
+		}
+
+		@Override
+		public synchronized boolean dispose(boolean force) {
+			if (!super.dispose(force)) {
+				return false;
+			}
+			if (levelReader != null) {
+				levelReader.forget(image);
+				levelReader = null;
+			}
+			return true;
+		}
+	}
+
+	/**
+	 * Periodically disposes the idle mosaic readers of a pyramid, until it is disposed or garbage
+	 * collected
+	 */
+	private static final class IdleDisposal extends TimerTask {
+
+		private final WeakReference<ImagePyramidReader> reader;
+
+		IdleDisposal(ImagePyramidReader reader) {
+			this.reader = new WeakReference<ImagePyramidReader>(reader);
+		}
+
+		@Override
+		public void run() {
+			final ImagePyramidReader reader = this.reader.get();
+			if (reader == null || reader.disposed) {
+				cancel();
+				return;
+			}
+			try {
+				reader.disposeIdleReaders();
+			} catch (Throwable t) {
+				// keep the timer thread alive
+				if (LOGGER.isLoggable(Level.FINE)) {
+					LOGGER.log(Level.FINE, t.getLocalizedMessage(), t);
+				}
+			}
+		}
+	}
 
 	/**
 	 * Constructor for an {@link ImagePyramidReader}.
@@ -287,6 +563,12 @@ public final class ImagePyramidReader extends AbstractGridCoverage2DReader imple
 			final GridToEnvelopeMapper geMapper= new GridToEnvelopeMapper(originalGridRange,originalEnvelope);
 			geMapper.setPixelAnchor(PixelInCell.CELL_CORNER);
 			raster2Model= geMapper.createTransform();
+
+			levelReaders = new LevelReader[numOverviews + 1];
+			for (int i = 0; i < levelReaders.length; i++) {
+				levelReaders[i] = new LevelReader(i);
+			}
+			scheduleIdleDisposal();
 			
 		         if(LOGGER.isLoggable(Level.FINE)){
 		                LOGGER.fine("Parsed pyramid properties file at:"+sourceURL.toExternalForm());
@@ -335,6 +617,7 @@ public final class ImagePyramidReader extends AbstractGridCoverage2DReader imple
 		GeneralEnvelope requestedEnvelope = null;
 		Rectangle dim = null;
 		OverviewPolicy overviewPolicy=null;
+		boolean prefetch = ImagePyramidFormat.PREFETCH_ADJACENT_LEVELS.getDefaultValue();
 		if (params != null) {
 			// /////////////////////////////////////////////////////////////////////
 			//
@@ -359,6 +642,10 @@ public final class ImagePyramidReader extends AbstractGridCoverage2DReader imple
 						overviewPolicy = (OverviewPolicy) param.getValue();
 						continue;
 					}
+					if (name.equals(ImagePyramidFormat.PREFETCH_ADJACENT_LEVELS.getName().toString())) {
+						prefetch = Boolean.TRUE.equals(param.getValue());
+						continue;
+					}
 				}
 			}
 		}
@@ -366,7 +653,7 @@ public final class ImagePyramidReader extends AbstractGridCoverage2DReader imple
 		//
 		// Loading tiles
 		//
-		return loadTiles(requestedEnvelope, dim, params, overviewPolicy);
+		return loadTiles(requestedEnvelope, dim, params, overviewPolicy, prefetch);
 	}
 
 	/**
@@ -378,12 +665,13 @@ public final class ImagePyramidReader extends AbstractGridCoverage2DReader imple
 	 * @param dim
 	 * @param params
 	 * @param overviewPolicy
+	 * @param prefetch whether to open the mosaics of the adjacent levels in background
 	 * @return A {@link GridCoverage}, well actually a {@link GridCoverage2D}.
 	 * @throws IOException
 	 */
 	private GridCoverage2D loadTiles(GeneralEnvelope requestedEnvelope,
-			Rectangle dim, GeneralParameterValue[] params, OverviewPolicy overviewPolicy)
-			throws IOException {
+			Rectangle dim, GeneralParameterValue[] params, OverviewPolicy overviewPolicy,
+			boolean prefetch) throws IOException {
 
 		
 		//
@@ -427,7 +715,7 @@ public final class ImagePyramidReader extends AbstractGridCoverage2DReader imple
 		requestedEnvelope.setCoordinateReferenceSystem(this.crs);
 		// ok we got something to return
 		try {
-			return loadRequestedTiles(requestedEnvelope, dim, params,overviewPolicy);
+			return loadRequestedTiles(requestedEnvelope, dim, params,overviewPolicy, prefetch);
 		} catch (TransformException e) {
 			throw new DataSourceException(e);
 		}
@@ -445,6 +733,7 @@ public final class ImagePyramidReader extends AbstractGridCoverage2DReader imple
 	 * @param singleImageROIThreshold
 	 * @param dim
 	 * @param overviewPolicy 
+	 * @param prefetch
 	 * @param ggParam
 	 * @return A {@link GridCoverage}, well actually a {@link GridCoverage2D}.
 	 * @throws TransformException
@@ -458,7 +747,8 @@ public final class ImagePyramidReader extends AbstractGridCoverage2DReader imple
 			GeneralEnvelope requestedEnvelope,
 			Rectangle dim, 
 			GeneralParameterValue[] params, 
-			OverviewPolicy overviewPolicy)
+			OverviewPolicy overviewPolicy,
+			boolean prefetch)
 			throws TransformException, IOException {
 
 		// if we get here we have something to load
@@ -476,55 +766,140 @@ public final class ImagePyramidReader extends AbstractGridCoverage2DReader imple
 		// 
 		
                 // light check to see if this reader had been disposed, not synching for performance. 
-                if (readers == null) {
+                if (disposed) {
                     throw new IllegalStateException("This ImagePyramidReader has already been disposed");
                 }
 		
-                ImageMosaicReader reader = readers.get(imageChoice);
-                if (reader == null) {
-        
-                    //
-                    // we must create the underlying mosaic 
-                    //
-                    final String levelDirName = levelsDirs[imageChoice.intValue()];
-                    final URL parentUrl = DataUtilities.getParentUrl(sourceURL);
-                    // look for a shapefile first
-                    final String extension = new StringBuilder(levelDirName).append("/").append(coverageName).append(".shp").toString();
-                    final URL shpFileUrl = DataUtilities.extendURL(parentUrl, extension);
-                    if (shpFileUrl.getProtocol() != null
-                            && shpFileUrl.getProtocol().equalsIgnoreCase("file")
-                            && !DataUtilities.urlToFile(shpFileUrl).exists())
-                        reader = new ImageMosaicReader(DataUtilities.extendURL(parentUrl, levelDirName), hints);
-                    else
-                        reader = new ImageMosaicReader(shpFileUrl, hints);
-                    final ImageMosaicReader putByOtherThreadJustNow =readers.putIfAbsent(imageChoice, reader);
-                    if(putByOtherThreadJustNow!=null){
-                        // some other thread just did inserted this
-                        try{
-                            reader.dispose();
-                        } catch (Exception e) {
-                            if(LOGGER.isLoggable(Level.FINE)){
-                                LOGGER.log(Level.FINE,e.getLocalizedMessage(),e);
-                            }
-                        }
-                        
-                        //use the other one
-                        reader=putByOtherThreadJustNow;
-                    }
-        
+		final LevelReader levelReader = levelReaders[imageChoice.intValue()];
+		final ImageMosaicReader reader = levelReader.acquire();
+		try {
+			if (prefetch) {
+				prefetchLevels(imageChoice.intValue());
+			}
+
+			//
+			// Abusing of the created ImageMosaicreader for getting a
+			// gridcoverage2d, then rename it
+			//
+			GridCoverage2D mosaicCoverage = reader.read(params);
+			if(mosaicCoverage != null) {
+			    return new LevelCoverage(coverageName, mosaicCoverage, levelReader);
+			} else {
+			    // the mosaic can still return null in corner cases, handle that gracefully
+			    return null;
+			}
+		} finally {
+			levelReader.release();
 		}
+	}
 
-	
-		//
-		// Abusing of the created ImageMosaicreader for getting a
-		// gridcoverage2d, then rename it
-		//
-		GridCoverage2D mosaicCoverage = reader.read(params);
-		if(mosaicCoverage != null) {
-		    return new GridCoverage2D(coverageName, mosaicCoverage);
+	/**
+	 * Creates the mosaic reader for a level
+	 */
+	private ImageMosaicReader createLevelReader(int level) throws IOException {
+		final String levelDirName = levelsDirs[level];
+		final URL parentUrl = DataUtilities.getParentUrl(sourceURL);
+		// look for a shapefile first
+		final String extension = new StringBuilder(levelDirName).append("/").append(coverageName).append(".shp").toString();
+		final URL shpFileUrl = DataUtilities.extendURL(parentUrl, extension);
+		if (shpFileUrl.getProtocol() != null
+				&& shpFileUrl.getProtocol().equalsIgnoreCase("file")
+				&& !DataUtilities.urlToFile(shpFileUrl).exists())
+			return new ImageMosaicReader(DataUtilities.extendURL(parentUrl, levelDirName), hints);
+		else
+			return new ImageMosaicReader(shpFileUrl, hints);
+	}
+
+	/**
+	 * Opens in background the mosaics of the levels next to the given one
+	 */
+	private void prefetchLevels(int level) {
+		ExecutorService executor = null;
+		final Object hint = hints.get(Hints.EXECUTOR_SERVICE);
+		if (hint instanceof ExecutorService) {
+			executor = (ExecutorService) hint;
 		} else {
-		    // the mosaic can still return null in corner cases, handle that gracefully
-		    return null;
+			executor = getPrefetchExecutor();
+		}
+		for (int adjacent = level - 1; adjacent <= level + 1; adjacent += 2) {
+			if (adjacent >= 0 && adjacent < levelReaders.length) {
+				levelReaders[adjacent].prefetch(executor);
+			}
+		}
+	}
+
+	private static synchronized ExecutorService getPrefetchExecutor() {
+		if (prefetchExecutor == null) {
+			final int threads = Runtime.getRuntime().availableProcessors();
+			final ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 60,
+					TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+						public Thread newThread(Runnable r) {
+							final Thread thread = new Thread(r, "ImagePyramidPrefetch");
+							thread.setDaemon(true);
+							return thread;
+						}
+					});
+			executor.allowCoreThreadTimeOut(true);
+			prefetchExecutor = executor;
+		}
+		return prefetchExecutor;
+	}
+
+	/**
+	 * Disposes the mosaic readers that have not been used for longer than the
+	 * {@link #getLevelReaderTimeout() timeout}
+	 */
+	void disposeIdleReaders() {
+		final long timeout = levelReaderTimeout;
+		if (timeout < 0 || levelReaders == null) {
+			return;
+		}
+		final long now = System.currentTimeMillis();
+		for (LevelReader levelReader : levelReaders) {
+			levelReader.disposeIfIdle(now, timeout);
+		}
+	}
+
+	/**
+	 * Checks if the mosaic reader of a level is currently open
+	 */
+	boolean isLevelReaderOpen(int level) {
+		return levelReaders[level].isOpen();
+	}
+
+	/**
+	 * Returns the time after which the mosaic reader of a level that is not being used gets
+	 * disposed, in milliseconds
+	 */
+	public long getLevelReaderTimeout() {
+		return levelReaderTimeout;
+	}
+
+	/**
+	 * Sets the time after which the mosaic reader of a level that is not being used gets
+	 * disposed
+	 * 
+	 * @param levelReaderTimeout the timeout in milliseconds, or a negative value to keep the
+	 *        readers open until this reader is disposed
+	 */
+	public void setLevelReaderTimeout(long levelReaderTimeout) {
+		this.levelReaderTimeout = levelReaderTimeout;
+		scheduleIdleDisposal();
+	}
+
+	/**
+	 * Schedules the disposal of the idle mosaic readers according to the current timeout
+	 */
+	private synchronized void scheduleIdleDisposal() {
+		if (idleDisposal != null) {
+			idleDisposal.cancel();
+			idleDisposal = null;
+		}
+		final long timeout = levelReaderTimeout;
+		if (timeout >= 0 && !disposed) {
+			final long period = Math.max(DISPOSAL_PERIOD, timeout / 2);
+			idleDisposal = new IdleDisposal(this);
+			DISPOSER.schedule(idleDisposal, period, period);
 		}
 	}
 
@@ -534,9 +909,16 @@ public final class ImagePyramidReader extends AbstractGridCoverage2DReader imple
 	@Override
 	public synchronized void dispose() {
 		super.dispose();
-		for(Entry<Integer, ImageMosaicReader> element:readers.entrySet())
-		    element.getValue().dispose();
-		readers.clear();
+		disposed = true;
+		if (idleDisposal != null) {
+			idleDisposal.cancel();
+			idleDisposal = null;
+		}
+		// null if the constructor failed before parsing the pyramid properties
+		if (levelReaders != null) {
+			for (LevelReader levelReader : levelReaders)
+			    levelReader.dispose();
+		}
 	}
 	
 	/**
@@ -587,6 +587,69 @@ public class ImagePyramidReaderTest extends Assert {
 
 	}
 
+	/**
+	 * Tests the mosaics of the levels adjacent to the requested one are opened in background, and
+	 * idle ones are disposed
+	 */
+	@Test
+	public void testLevelReadersLifecycle() throws Exception {
+		final URL testFile = TestData.getResource(this, "goodpyramid/"+TEST_FILE);
+		final ImagePyramidReader reader = new ImagePyramidFormat().getReader(testFile);
+		assertNotNull(reader);
+		try {
+			// request level 1, prefetching levels 0 and 2
+			final ParameterValue<GridGeometry2D> gg = ImageMosaicFormat.READ_GRIDGEOMETRY2D.createValue();
+			final GeneralEnvelope oldEnvelop = reader.getOriginalEnvelope();
+			final GeneralEnvelope cropEnvelope = new GeneralEnvelope(new double[] {
+					oldEnvelop.getLowerCorner().getOrdinate(0),
+					oldEnvelop.getLowerCorner().getOrdinate(1) }, new double[] {
+					oldEnvelop.getLowerCorner().getOrdinate(0) + oldEnvelop.getSpan(0) / 2,
+					oldEnvelop.getLowerCorner().getOrdinate(1) + oldEnvelop.getSpan(1) / 2 });
+			cropEnvelope.setCoordinateReferenceSystem(DefaultGeographicCRS.WGS84);
+			gg.setValue(new GridGeometry2D(new GridEnvelope2D(new Rectangle(0, 0, 125, 125)),
+					cropEnvelope));
+			final ParameterValue<Boolean> prefetch = ImagePyramidFormat.PREFETCH_ADJACENT_LEVELS.createValue();
+			prefetch.setValue(Boolean.TRUE);
+			GridCoverage2D coverage = reader.read(new GeneralParameterValue[] { gg, prefetch });
+			assertNotNull(coverage);
+			assertTrue(reader.isLevelReaderOpen(1));
+			final long timeout = System.currentTimeMillis() + 10000;
+			while ((!reader.isLevelReaderOpen(0) || !reader.isLevelReaderOpen(2))
+					&& System.currentTimeMillis() < timeout) {
+				Thread.sleep(10);
+			}
+			assertTrue(reader.isLevelReaderOpen(0));
+			assertTrue(reader.isLevelReaderOpen(2));
+			assertFalse(reader.isLevelReaderOpen(3));
+
+			// the level of the coverage is kept while it is not disposed
+			reader.setLevelReaderTimeout(0);
+			Thread.sleep(10);
+			reader.disposeIdleReaders();
+			assertTrue(reader.isLevelReaderOpen(1));
+			assertFalse(reader.isLevelReaderOpen(0));
+			assertFalse(reader.isLevelReaderOpen(2));
+
+			// all idle, disposed in background
+			coverage.dispose(true);
+			final long disposal = System.currentTimeMillis() + 10000;
+			while (reader.isLevelReaderOpen(1) && System.currentTimeMillis() < disposal) {
+				Thread.sleep(10);
+			}
+			for (int level = 0; level < 4; level++) {
+				assertFalse(reader.isLevelReaderOpen(level));
+			}
+
+			// reopened on demand
+			reader.setLevelReaderTimeout(ImagePyramidReader.DEFAULT_LEVEL_READER_TIMEOUT);
+			coverage = reader.read(new GeneralParameterValue[] { gg });
+			assertNotNull(coverage);
+			assertTrue(reader.isLevelReaderOpen(1));
+		} finally {
+			reader.dispose();
+		}
+	}
+
 	/**
 	 * Testing {@link ImagePyramidReader} by cropping requesting a the worst
 	 * availaible resolution.
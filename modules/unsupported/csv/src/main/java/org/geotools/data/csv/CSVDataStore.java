@@ -7,13 +7,20 @@ import java.io.IOException;
 import java.io.Reader;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.commons.io.FileUtils;
+import org.geotools.data.FeatureReader;
 import org.geotools.data.Query;
 import org.geotools.data.store.ContentDataStore;
 import org.geotools.data.store.ContentEntry;
 import org.geotools.data.store.ContentFeatureSource;
 import org.geotools.feature.NameImpl;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
 import org.opengis.feature.type.Name;
 
 import com.csvreader.CsvReader;
@@ -29,6 +36,12 @@ public class CSVDataStore extends ContentDataStore {
     // constructor start
     File file;
     
+    /** the record positions of the file, checked against the file before use */
+    private CSVRowIndex index;
+    
+    /** parses the blocks of the parallel reads, lazily created */
+    private ExecutorService executor;
+    
     public CSVDataStore( File file ){
         this.file = file;
     }
@@ -45,8 +58,130 @@ public class CSVDataStore extends ContentDataStore {
         return csvReader;
     }
 
+    /**
+     * Replaces the file with the one written by a {@link CSVFeatureWriter}. The new contents are
+     * moved next to the file and renamed over it, rather than copied into it, so that the readers
+     * still mapping the file keep the previous contents instead of seeing them change under them.
+     */
     void write(File tempFile) throws IOException {
-        FileUtils.copyFile(tempFile, this.file);
+        File directory = file.getAbsoluteFile().getParentFile();
+        File replacement = File.createTempFile(file.getName(), ".tmp", directory);
+        try {
+            if (!replacement.delete() || !tempFile.renameTo(replacement)) {
+                // the temporary file is on another file system
+                FileUtils.copyFile(tempFile, replacement);
+                tempFile.delete();
+            }
+            synchronized (this) {
+                if (!replacement.renameTo(file)) {
+                    replace(replacement, directory);
+                }
+                // the length and date may not change with the records
+                index = null;
+                CSVRowIndex.getSidecar(file).delete();
+            }
+        } finally {
+            replacement.delete();
+        }
+    }
+
+    /**
+     * Replaces the file on the platforms that do not rename over an existing file, keeping the
+     * original aside until the replacement is in place.
+     */
+    private void replace(File replacement, File directory) throws IOException {
+        File original = File.createTempFile(file.getName(), ".bak", directory);
+        if (!original.delete() || !file.renameTo(original)) {
+            throw new IOException("Cannot replace " + file + ", is it still being read?");
+        }
+        if (!replacement.renameTo(file)) {
+            original.renameTo(file);
+            throw new IOException("Cannot replace " + file + " with " + replacement);
+        }
+        original.delete();
+    }
+
+    /**
+     * Reads the features of a query mapping the file in memory and parsing it in parallel,
+     * see {@link CSVParallelFeatureReader}.
+     * 
+     * @param schema the feature type of the file
+     * @param retype whether to return the query properties only
+     * @param filter whether to drop the features not matching the query filter
+     */
+    FeatureReader<SimpleFeatureType, SimpleFeature> readParallel(SimpleFeatureType schema,
+            Query query, boolean retype, boolean filter) throws IOException {
+        CSVMappedFile csv = new CSVMappedFile(file);
+        try {
+            return new CSVParallelFeatureReader(csv, getRowIndex(csv), schema, schema
+                    .getTypeName(), query, retype, filter, getExecutor());
+        } catch (RuntimeException e) {
+            csv.close();
+            throw e;
+        }
+    }
+
+    /**
+     * @return the number of records, or -1 if too many to be counted as an int
+     */
+    int getRowCount() throws IOException {
+        CSVRowIndex rows;
+        synchronized (this) {
+            rows = index;
+        }
+        if (rows == null || !rows.isValid(file)) {
+            CSVMappedFile csv = new CSVMappedFile(file);
+            try {
+                rows = getRowIndex(csv);
+            } finally {
+                csv.close();
+            }
+        }
+        return rows.getRowCount() > Integer.MAX_VALUE ? -1 : (int) rows.getRowCount();
+    }
+
+    /**
+     * Returns the record positions of the file, reading or building the index as needed
+     * 
+     * @param csv the file as mapped by the caller, that the index shall match
+     */
+    synchronized CSVRowIndex getRowIndex(CSVMappedFile csv) {
+        if (index == null || !index.isValid(file) || index.sourceLength != csv.length) {
+            index = CSVRowIndex.open(file);
+            if (index == null || index.sourceLength != csv.length) {
+                index = CSVRowIndex.build(csv);
+            }
+        }
+        return index;
+    }
+
+    /**
+     * @return the executor parsing the blocks of the parallel reads, one thread per processor
+     */
+    synchronized ExecutorService getExecutor() {
+        if (executor == null) {
+            final AtomicInteger count = new AtomicInteger();
+            executor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(),
+                    new ThreadFactory() {
+                        public Thread newThread(Runnable r) {
+                            Thread thread = new Thread(r, "csv-reader-" + count.incrementAndGet());
+                            thread.setDaemon(true);
+                            return thread;
+                        }
+                    });
+        }
+        return executor;
+    }
+
+    @Override
+    public void dispose() {
+        synchronized (this) {
+            if (executor != null) {
+                executor.shutdown();
+                executor = null;
+            }
+        }
+        super.dispose();
     }
 
     // createTypeNames start
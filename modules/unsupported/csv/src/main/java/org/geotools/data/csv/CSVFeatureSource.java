@@ -4,15 +4,14 @@ import java.io.IOException;
 
 import org.geotools.data.FeatureReader;
 import org.geotools.data.Query;
-import org.geotools.data.simple.SimpleFeatureIterator;
 import org.geotools.data.store.ContentEntry;
-import org.geotools.data.store.ContentFeatureCollection;
 import org.geotools.data.store.ContentFeatureSource;
 import org.geotools.feature.simple.SimpleFeatureTypeBuilder;
 import org.geotools.geometry.jts.ReferencedEnvelope;
 import org.geotools.referencing.crs.DefaultGeographicCRS;
 import org.opengis.feature.simple.SimpleFeature;
 import org.opengis.feature.simple.SimpleFeatureType;
+import org.opengis.filter.Filter;
 
 import com.csvreader.CsvReader;
 import com.vividsolutions.jts.geom.Point;
@@ -42,7 +41,11 @@ public class CSVFeatureSource extends ContentFeatureSource {
     protected ReferencedEnvelope getBoundsInternal(Query query) throws IOException {
         ReferencedEnvelope bounds = new ReferencedEnvelope( getSchema().getCoordinateReferenceSystem() );
         
-        FeatureReader<SimpleFeatureType, SimpleFeature> featureReader = getReaderInternal(query);
+        // only the location needs to be parsed
+        Query locations = new Query(query);
+        locations.setPropertyNames(new String[] { CSVParallelFeatureReader.LOCATION });
+        FeatureReader<SimpleFeatureType, SimpleFeature> featureReader = getDataStore()
+                .readParallel(getSchema(), locations, true, true);
         try {
             while( featureReader.hasNext() ){
                 SimpleFeature feature = featureReader.next();
@@ -56,36 +59,45 @@ public class CSVFeatureSource extends ContentFeatureSource {
     }
 
     protected int getCountInternal(Query query) throws IOException {
-        ContentFeatureCollection cfc = this.getFeatures(query);
+        if (query.getFilter() == Filter.INCLUDE) {
+            return getDataStore().getRowCount();
+        }
+        // only the filter attributes need to be parsed
+        Query matches = new Query(query);
+        matches.setPropertyNames(Query.NO_NAMES);
+        FeatureReader<SimpleFeatureType, SimpleFeature> featureReader = getDataStore()
+                .readParallel(getSchema(), matches, true, true);
         int count = 0;
-        SimpleFeatureIterator iter = cfc.features();
-        while(iter.hasNext()) {
-            iter.next();
-            count++;
+        try {
+            while (featureReader.hasNext()) {
+                featureReader.next();
+                count++;
+            }
+        } finally {
+            featureReader.close();
         }
-        iter.close();
         return count;
-//        CsvReader reader = getDataStore().read();
-//        try {
-//            boolean connect = reader.readHeaders();
-//            if( connect == false ){
-//                throw new IOException("Unable to connect");
-//            }
-//            int count = 0;
-//            while( reader.readRecord() ){
-//                count += 1;
-//            }
-//            return count;
-//        }
-//        finally {
-//            reader.close();
-//        }
     }
 
     protected FeatureReader<SimpleFeatureType, SimpleFeature> getReaderInternal(Query query)
             throws IOException {
-        // Note we ignore 'query' because querying/filtering is handled in superclasses.
-        return new CSVFeatureReader( getState() );
+        return getDataStore().readParallel(getSchema(), query, true, true);
+    }
+
+    /**
+     * The filter is evaluated while parsing
+     */
+    @Override
+    protected boolean canFilter() {
+        return true;
+    }
+
+    /**
+     * Only the columns needed by the query are parsed
+     */
+    @Override
+    protected boolean canRetype() {
+        return true;
     }
 
     protected SimpleFeatureType buildFeatureType() throws IOException {
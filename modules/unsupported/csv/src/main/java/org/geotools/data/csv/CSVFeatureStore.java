@@ -5,15 +5,15 @@ import java.io.IOException;
 import org.geotools.data.FeatureReader;
 import org.geotools.data.FeatureWriter;
 import org.geotools.data.Query;
-import org.geotools.data.simple.SimpleFeatureIterator;
+import org.geotools.data.Transaction;
 import org.geotools.data.store.ContentEntry;
-import org.geotools.data.store.ContentFeatureCollection;
 import org.geotools.data.store.ContentFeatureStore;
 import org.geotools.feature.simple.SimpleFeatureTypeBuilder;
 import org.geotools.geometry.jts.ReferencedEnvelope;
 import org.geotools.referencing.crs.DefaultGeographicCRS;
 import org.opengis.feature.simple.SimpleFeature;
 import org.opengis.feature.simple.SimpleFeatureType;
+import org.opengis.filter.Filter;
 
 import com.csvreader.CsvReader;
 import com.vividsolutions.jts.geom.Point;
@@ -48,7 +48,11 @@ public class CSVFeatureStore extends ContentFeatureStore {
     protected ReferencedEnvelope getBoundsInternal(Query query) throws IOException {
         ReferencedEnvelope bounds = new ReferencedEnvelope( getSchema().getCoordinateReferenceSystem() );
         
-        FeatureReader<SimpleFeatureType, SimpleFeature> featureReader = getReaderInternal(query);
+        // only the location needs to be parsed
+        Query locations = new Query(query);
+        locations.setPropertyNames(new String[] { CSVParallelFeatureReader.LOCATION });
+        FeatureReader<SimpleFeatureType, SimpleFeature> featureReader = getDataStore()
+                .readParallel(getSchema(), locations, true, true);
         try {
             while( featureReader.hasNext() ){
                 SimpleFeature feature = featureReader.next();
@@ -62,38 +66,33 @@ public class CSVFeatureStore extends ContentFeatureStore {
     }
 
     protected int getCountInternal(Query query) throws IOException {
-        ContentFeatureCollection cfc = this.getFeatures(query);
+        if (query.getFilter() == Filter.INCLUDE) {
+            return getDataStore().getRowCount();
+        }
+        // only the filter attributes need to be parsed
+        Query matches = new Query(query);
+        matches.setPropertyNames(Query.NO_NAMES);
+        FeatureReader<SimpleFeatureType, SimpleFeature> featureReader = getDataStore()
+                .readParallel(getSchema(), matches, true, true);
         int count = 0;
-        SimpleFeatureIterator iter = cfc.features();
-        while(iter.hasNext()) {
-            iter.next();
-            count++;
+        try {
+            while (featureReader.hasNext()) {
+                featureReader.next();
+                count++;
+            }
+        } finally {
+            featureReader.close();
         }
-        iter.close();
         return count;
-//
-//        
-//        CsvReader reader = getDataStore().read();
-//        try {
-//            boolean connect = reader.readHeaders();
-//            if( connect == false ){
-//                throw new IOException("Unable to connect");
-//            }
-//            int count = 0;
-//            while( reader.readRecord() ){
-//                count += 1;
-//            }
-//            return count;
-//        }
-//        finally {
-//            reader.close();
-//        }
     }
 
     protected FeatureReader<SimpleFeatureType, SimpleFeature> getReaderInternal(Query query)
             throws IOException {
-        // Note we ignore 'query' because querying/filtering is handled in superclasses.
-        return new CSVFeatureReader( getState() );
+        // filtering and retyping are still handled in superclasses, as the writers and
+        // transactions need, the parallel reader drops mismatches early outside transactions
+        boolean autoCommit = getTransaction() == null
+                || getTransaction() == Transaction.AUTO_COMMIT;
+        return getDataStore().readParallel(getSchema(), query, false, autoCommit);
     }
 
     protected SimpleFeatureType buildFeatureType() throws IOException {
@@ -0,0 +1,334 @@
+package org.geotools.data.csv;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.geotools.resources.NIOUtilities;
+
+/**
+ * A CSV file mapped in memory, parsed directly from the mapped bytes.
+ * <p>
+ * Parsing follows the defaults of the {@code CsvReader} used by {@link CSVFeatureReader}:
+ * comma separated fields, optionally quoted with {@code "} and quotes escaped by doubling them,
+ * leading and trailing blanks trimmed, records ended by {@code \n}, {@code \r} or {@code \r\n}
+ * outside quotes, empty records skipped. Text is decoded with the platform charset, as
+ * {@code FileReader} does, so the charset has to encode the delimiters on single bytes.
+ * <p>
+ * Files larger than 2GB are mapped in several segments. The parsing methods are thread safe,
+ * each thread using its own {@link Record}.
+ *
+ * @source $URL$
+ */
+class CSVMappedFile {
+
+    static final int SEGMENT_SHIFT = 30;
+
+    static final long SEGMENT_MASK = (1L << SEGMENT_SHIFT) - 1;
+
+    /** Exact powers of ten, for the fast number parsing */
+    static final double[] POWERS = new double[23];
+    static {
+        POWERS[0] = 1;
+        for (int i = 1; i < POWERS.length; i++) {
+            POWERS[i] = POWERS[i - 1] * 10;
+        }
+    }
+
+    final File file;
+
+    final long length;
+
+    final Charset charset;
+
+    private MappedByteBuffer[] segments;
+
+    private final String[] headers;
+
+    private final long dataStart;
+
+    CSVMappedFile(File file) throws IOException {
+        this.file = file;
+        this.charset = Charset.defaultCharset();
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = raf.getChannel();
+            length = channel.size();
+            int count = (int) ((length + SEGMENT_MASK) >>> SEGMENT_SHIFT);
+            segments = new MappedByteBuffer[count];
+            for (int i = 0; i < count; i++) {
+                long start = (long) i << SEGMENT_SHIFT;
+                segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, start,
+                        Math.min(1L << SEGMENT_SHIFT, length - start));
+            }
+        } finally {
+            // the mapping stays valid after the channel is closed
+            raf.close();
+        }
+
+        long start = skipEmpty(0);
+        if (start >= length) {
+            close();
+            throw new IOException("Unable to read csv header");
+        }
+        List<String> names = new ArrayList<String>();
+        Record record = new Record(0);
+        record.collect = names;
+        dataStart = parse(start, record);
+        headers = names.toArray(new String[names.size()]);
+    }
+
+    /**
+     * @return the column names
+     */
+    String[] getHeaders() {
+        return headers;
+    }
+
+    /**
+     * @return the position of the first record after the header
+     */
+    long getDataStart() {
+        return skipEmpty(dataStart);
+    }
+
+    final byte get(long position) {
+        return segments[(int) (position >>> SEGMENT_SHIFT)].get((int) (position & SEGMENT_MASK));
+    }
+
+    /**
+     * @return the position of the first record starting at or after the specified one, skipping
+     *         empty lines, or the file length if there is none
+     */
+    long skipEmpty(long position) {
+        while (position < length) {
+            byte b = get(position);
+            if (b != '\n' && b != '\r') {
+                break;
+            }
+            position++;
+        }
+        return position;
+    }
+
+    /**
+     * Parses the record at the specified position, storing the columns the record asks for
+     * 
+     * @param record
+     *            the parsed values, or null to just skip the record
+     * @return the position following the record
+     */
+    long parse(long position, Record record) {
+        int column = 0;
+        while (true) {
+            // leading blanks
+            while (position < length) {
+                byte b = get(position);
+                if (b != ' ' && b != '\t') {
+                    break;
+                }
+                position++;
+            }
+
+            int mode = record == null ? Record.SKIP : record.mode(column);
+            if (position < length && get(position) == '"') {
+                position++;
+                int size = 0;
+                while (position < length) {
+                    byte b = get(position++);
+                    if (b == '"') {
+                        if (position < length && get(position) == '"') {
+                            position++;
+                        } else {
+                            break;
+                        }
+                    }
+                    if (mode != Record.SKIP) {
+                        record.append(size++, b);
+                    }
+                }
+                // anything between the closing quote and the delimiter is dropped
+                while (position < length) {
+                    byte b = get(position);
+                    if (b == ',' || b == '\n' || b == '\r') {
+                        break;
+                    }
+                    position++;
+                }
+                if (mode != Record.SKIP) {
+                    record.set(column, mode, size, this);
+                }
+            } else {
+                long start = position;
+                while (position < length) {
+                    byte b = get(position);
+                    if (b == ',' || b == '\n' || b == '\r') {
+                        break;
+                    }
+                    position++;
+                }
+                if (mode != Record.SKIP) {
+                    long end = position;
+                    while (end > start && (get(end - 1) == ' ' || get(end - 1) == '\t')) {
+                        end--;
+                    }
+                    if (mode == Record.NUMBER) {
+                        record.numbers[column] = parseNumber(start, end, record);
+                    } else {
+                        int size = (int) (end - start);
+                        for (int i = 0; i < size; i++) {
+                            record.append(i, get(start + i));
+                        }
+                        record.set(column, mode, size, this);
+                    }
+                }
+            }
+            column++;
+
+            if (position >= length) {
+                return position;
+            }
+            byte b = get(position++);
+            if (b != ',') {
+                if (b == '\r' && position < length && get(position) == '\n') {
+                    position++;
+                }
+                return position;
+            }
+        }
+    }
+
+    /**
+     * Parses a decimal number, exactly, falling back on {@link Double#parseDouble(String)} for
+     * anything but plain decimals with up to 18 significant digits
+     */
+    double parseNumber(long start, long end, Record record) {
+        long position = start;
+        boolean negative = false;
+        if (position < end && (get(position) == '-' || get(position) == '+')) {
+            negative = get(position) == '-';
+            position++;
+        }
+        long mantissa = 0;
+        int digits = 0;
+        int scale = 0;
+        boolean dot = false;
+        boolean any = false;
+        for (; position < end; position++) {
+            byte b = get(position);
+            if (b >= '0' && b <= '9') {
+                if (digits == 18) {
+                    return parseNumberSlow(start, end, record);
+                }
+                mantissa = mantissa * 10 + (b - '0');
+                if (mantissa != 0) {
+                    digits++;
+                }
+                if (dot) {
+                    scale++;
+                }
+                any = true;
+            } else if (b == '.' && !dot) {
+                dot = true;
+            } else {
+                return parseNumberSlow(start, end, record);
+            }
+        }
+        if (!any || scale >= POWERS.length || mantissa >= 1L << 53) {
+            return parseNumberSlow(start, end, record);
+        }
+        double value = scale == 0 ? mantissa : mantissa / POWERS[scale];
+        return negative ? -value : value;
+    }
+
+    private double parseNumberSlow(long start, long end, Record record) {
+        int size = (int) (end - start);
+        for (int i = 0; i < size; i++) {
+            record.append(i, get(start + i));
+        }
+        return Double.parseDouble(new String(record.bytes, 0, size, charset));
+    }
+
+    /**
+     * Releases the mapping. No thread shall be parsing when this method is called.
+     */
+    void close() {
+        if (segments != null) {
+            for (MappedByteBuffer segment : segments) {
+                NIOUtilities.clean(segment, true);
+            }
+            segments = null;
+        }
+    }
+
+    /**
+     * The values parsed from a record, and the columns to parse
+     */
+    static class Record {
+
+        static final int SKIP = 0;
+
+        static final int TEXT = 1;
+
+        static final int NUMBER = 2;
+
+        final int[] modes;
+
+        final String[] texts;
+
+        final double[] numbers;
+
+        byte[] bytes = new byte[256];
+
+        /** when set all the columns are parsed as text and collected here */
+        List<String> collect;
+
+        Record(int columns) {
+            modes = new int[columns];
+            texts = new String[columns];
+            numbers = new double[columns];
+        }
+
+        int mode(int column) {
+            if (collect != null) {
+                return TEXT;
+            }
+            return column < modes.length ? modes[column] : SKIP;
+        }
+
+        /**
+         * Clears the values, columns missing from a record are empty
+         */
+        void clear() {
+            for (int i = 0; i < modes.length; i++) {
+                texts[i] = "";
+                numbers[i] = Double.NaN;
+            }
+        }
+
+        void append(int i, byte b) {
+            if (i == bytes.length) {
+                byte[] grown = new byte[bytes.length * 2];
+                System.arraycopy(bytes, 0, grown, 0, bytes.length);
+                bytes = grown;
+            }
+            bytes[i] = b;
+        }
+
+        void set(int column, int mode, int size, CSVMappedFile file) {
+            String text = new String(bytes, 0, size, file.charset);
+            if (collect != null) {
+                collect.add(text);
+            } else if (mode == NUMBER) {
+                numbers[column] = Double.parseDouble(text.trim());
+            } else {
+                texts[column] = text;
+            }
+        }
+    }
+}
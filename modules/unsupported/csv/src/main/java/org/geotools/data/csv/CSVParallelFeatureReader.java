@@ -0,0 +1,481 @@
+package org.geotools.data.csv;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.geotools.data.DataUtilities;
+import org.geotools.data.FeatureReader;
+import org.geotools.data.Query;
+import org.geotools.feature.simple.SimpleFeatureBuilder;
+import org.geotools.feature.simple.SimpleFeatureTypeBuilder;
+import org.geotools.filter.visitor.ExtractBoundsFilterVisitor;
+import org.geotools.geometry.jts.JTSFactoryFinder;
+import org.geotools.geometry.jts.ReferencedEnvelope;
+import org.geotools.referencing.CRS;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
+import org.opengis.filter.Filter;
+import org.opengis.filter.Id;
+import org.opengis.filter.identity.Identifier;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.Envelope;
+import com.vividsolutions.jts.geom.GeometryFactory;
+
+/**
+ * Reads a {@link CSVMappedFile} block by block, parsing the blocks ahead in parallel and
+ * returning their features in file order.
+ * <p>
+ * Only the columns needed by the query properties and filter are parsed. The filter is
+ * evaluated while parsing, points outside its bounds being skipped before building the
+ * feature. Feature id filters only scan the blocks holding the requested rows.
+ *
+ * @source $URL$
+ */
+class CSVParallelFeatureReader implements FeatureReader<SimpleFeatureType, SimpleFeature> {
+
+    static final String LOCATION = "Location";
+
+    private final CSVMappedFile csv;
+
+    private final ExecutorService executor;
+
+    private final int maxInFlight;
+
+    /** the features returned */
+    private final SimpleFeatureType featureType;
+
+    /** the features built while parsing, more attributes than returned when filtering needs */
+    private final SimpleFeatureType readType;
+
+    private final String typeName;
+
+    private final Filter filter;
+
+    private final Envelope bounds;
+
+    /** the attribute each column goes to, -1 for none */
+    private final int[] attributes;
+
+    private final int[] modes;
+
+    private final int latColumn;
+
+    private final int lonColumn;
+
+    /** the index of the location in the read type, -1 if not read */
+    private final int location;
+
+    private final List<Block> blocks;
+
+    private int nextBlock;
+
+    private final LinkedList<Task> inFlight = new LinkedList<Task>();
+
+    private List<SimpleFeature> current = Collections.emptyList();
+
+    private int position;
+
+    private boolean closed;
+
+    /**
+     * @param csv
+     *            the file to read, closed with the reader
+     * @param index
+     *            the record positions of the file
+     * @param schema
+     *            the feature type of the file
+     * @param typeName
+     *            the prefix of the feature ids
+     * @param query
+     *            the features to read
+     * @param retype
+     *            whether to return the query properties only, otherwise the features have all
+     *            the attributes, those not needed by the query being left empty
+     * @param filter
+     *            whether to drop the features not matching the filter, otherwise only the
+     *            attributes it needs are parsed. Feature id filters always select the rows read.
+     * @param executor
+     *            the executor parsing the blocks, null to parse them in the calling thread
+     */
+    CSVParallelFeatureReader(CSVMappedFile csv, CSVRowIndex index, SimpleFeatureType schema,
+            String typeName, Query query, boolean retype, boolean filter,
+            ExecutorService executor) {
+        this.csv = csv;
+        this.typeName = typeName;
+        this.maxInFlight = 2 * Runtime.getRuntime().availableProcessors();
+        Filter queryFilter = query.getFilter() == null ? Filter.INCLUDE : query.getFilter();
+        this.filter = filter ? queryFilter : Filter.INCLUDE;
+
+        // the attributes to parse
+        List<String> all = Arrays.asList(DataUtilities.attributeNames(schema));
+        Set<String> requested = new LinkedHashSet<String>();
+        if (query.getPropertyNames() == Query.ALL_NAMES) {
+            requested.addAll(all);
+        } else {
+            requested.addAll(Arrays.asList(query.getPropertyNames()));
+        }
+        Set<String> needed = new LinkedHashSet<String>(requested);
+        for (String name : DataUtilities.attributeNames(queryFilter, schema)) {
+            if (!all.contains(name)) {
+                // not a plain attribute, read everything to be safe
+                needed.addAll(all);
+                break;
+            }
+            needed.add(name);
+        }
+        if (retype && query.getPropertyNames() != Query.ALL_NAMES) {
+            featureType = SimpleFeatureTypeBuilder.retype(schema, new ArrayList<String>(
+                    requested));
+            readType = needed.equals(requested) ? featureType : SimpleFeatureTypeBuilder
+                    .retype(schema, new ArrayList<String>(needed));
+        } else {
+            featureType = readType = schema;
+        }
+
+        // map the columns on the read attributes
+        String[] headers = csv.getHeaders();
+        attributes = new int[headers.length];
+        modes = new int[headers.length];
+        int lat = -1;
+        int lon = -1;
+        boolean readLocation = needed.contains(LOCATION);
+        for (int i = 0; i < headers.length; i++) {
+            attributes[i] = -1;
+            if ("lat".equalsIgnoreCase(headers[i])) {
+                lat = i;
+                modes[i] = readLocation ? CSVMappedFile.Record.NUMBER : CSVMappedFile.Record.SKIP;
+            } else if ("lon".equalsIgnoreCase(headers[i])) {
+                lon = i;
+                modes[i] = readLocation ? CSVMappedFile.Record.NUMBER : CSVMappedFile.Record.SKIP;
+            } else if (needed.contains(headers[i])) {
+                attributes[i] = readType.indexOf(headers[i]);
+                modes[i] = CSVMappedFile.Record.TEXT;
+            }
+        }
+        latColumn = lat;
+        lonColumn = lon;
+        location = readLocation ? readType.indexOf(LOCATION) : -1;
+        bounds = location >= 0 ? pointBounds(this.filter, schema) : null;
+
+        blocks = queryFilter instanceof Id ? idBlocks((Id) queryFilter, index)
+                : allBlocks(index);
+        // not worth a thread switch for a single block
+        this.executor = blocks.size() > 1 ? executor : null;
+    }
+
+    /**
+     * @return the bounds points have to be in to match the filter, or null if unknown
+     */
+    static Envelope pointBounds(Filter filter, SimpleFeatureType schema) {
+        if (filter == Filter.INCLUDE) {
+            return null;
+        }
+        Envelope envelope = (Envelope) filter.accept(ExtractBoundsFilterVisitor.BOUNDS_VISITOR,
+                null);
+        if (envelope == null || envelope.isNull() || Double.isInfinite(envelope.getWidth())
+                || Double.isInfinite(envelope.getHeight())) {
+            return null;
+        }
+        if (envelope instanceof ReferencedEnvelope) {
+            ReferencedEnvelope referenced = (ReferencedEnvelope) envelope;
+            if (referenced.getCoordinateReferenceSystem() != null
+                    && !CRS.equalsIgnoreMetadata(referenced.getCoordinateReferenceSystem(),
+                            schema.getCoordinateReferenceSystem())) {
+                return null;
+            }
+        }
+        return envelope;
+    }
+
+    private List<Block> allBlocks(CSVRowIndex index) {
+        List<Block> blocks = new ArrayList<Block>(index.getBlockCount());
+        for (int i = 0; i < index.getBlockCount(); i++) {
+            blocks.add(new Block((long) i * CSVRowIndex.BLOCK_SIZE, index.blocks[i], index
+                    .getBlockRows(i), null));
+        }
+        return blocks;
+    }
+
+    /**
+     * @return the blocks holding the rows of the ids, the ids being the type name followed by
+     *         the row number
+     */
+    private List<Block> idBlocks(Id id, CSVRowIndex index) {
+        String prefix = typeName + ".";
+        long[] rows = new long[id.getIdentifiers().size()];
+        int count = 0;
+        for (Identifier identifier : id.getIdentifiers()) {
+            String fid = identifier.getID().toString();
+            if (fid.startsWith(prefix)) {
+                try {
+                    long row = Long.parseLong(fid.substring(prefix.length())) - 1;
+                    if (row >= 0 && row < index.getRowCount()) {
+                        rows[count++] = row;
+                    }
+                } catch (NumberFormatException e) {
+                    // not one of ours
+                }
+            }
+        }
+        Arrays.sort(rows, 0, count);
+
+        List<Block> blocks = new ArrayList<Block>();
+        int i = 0;
+        while (i < count) {
+            int block = (int) (rows[i] / CSVRowIndex.BLOCK_SIZE);
+            int start = i;
+            while (i < count && rows[i] / CSVRowIndex.BLOCK_SIZE == block) {
+                i++;
+            }
+            long[] blockRows = Arrays.copyOfRange(rows, start, i);
+            blocks.add(new Block((long) block * CSVRowIndex.BLOCK_SIZE, index.blocks[block], index
+                    .getBlockRows(block), blockRows));
+        }
+        return blocks;
+    }
+
+    public SimpleFeatureType getFeatureType() {
+        return featureType;
+    }
+
+    public boolean hasNext() throws IOException {
+        while (position >= current.size()) {
+            if (!fetch()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public SimpleFeature next() throws IOException, IllegalArgumentException,
+            NoSuchElementException {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        return current.get(position++);
+    }
+
+    /**
+     * Moves to the features of the next block
+     * 
+     * @return false if there are no more blocks
+     */
+    private boolean fetch() throws IOException {
+        if (closed) {
+            return false;
+        }
+        schedule();
+        Task task = inFlight.poll();
+        if (task == null) {
+            return false;
+        }
+        try {
+            task.done.await();
+        } catch (InterruptedException e) {
+            close();
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while reading " + csv.file);
+        }
+        if (task.failure != null) {
+            close();
+            if (task.failure instanceof IOException) {
+                throw (IOException) task.failure;
+            }
+            throw new IOException("Error reading " + csv.file + " at row "
+                    + (task.block.firstRow + 1), task.failure);
+        }
+        current = task.features;
+        position = 0;
+        return true;
+    }
+
+    /**
+     * Keeps the next blocks being parsed
+     */
+    private void schedule() {
+        if (executor == null) {
+            if (inFlight.isEmpty() && nextBlock < blocks.size()) {
+                Task task = new Task(blocks.get(nextBlock++));
+                inFlight.add(task);
+                task.run();
+            }
+            return;
+        }
+        while (inFlight.size() < maxInFlight && nextBlock < blocks.size()) {
+            Task task = new Task(blocks.get(nextBlock++));
+            inFlight.add(task);
+            try {
+                executor.execute(task);
+            } catch (RejectedExecutionException e) {
+                task.run();
+            }
+        }
+    }
+
+    /**
+     * Cancels the pending blocks and waits for those being parsed before releasing the file
+     */
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        boolean interrupted = false;
+        for (Task task : inFlight) {
+            if (!task.cancel()) {
+                while (true) {
+                    try {
+                        task.done.await();
+                        break;
+                    } catch (InterruptedException e) {
+                        interrupted = true;
+                    }
+                }
+            }
+        }
+        inFlight.clear();
+        current = Collections.emptyList();
+        csv.close();
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * A range of records, and the rows to read in it
+     */
+    static class Block {
+
+        final long firstRow;
+
+        final long start;
+
+        final int rows;
+
+        /** the rows to read, all if null */
+        final long[] selected;
+
+        Block(long firstRow, long start, int rows, long[] selected) {
+            this.firstRow = firstRow;
+            this.start = start;
+            this.rows = rows;
+            this.selected = selected;
+        }
+    }
+
+    /**
+     * Parses a block into its matching features
+     */
+    class Task implements Runnable {
+
+        static final int PENDING = 0;
+
+        static final int RUNNING = 1;
+
+        static final int CANCELLED = 2;
+
+        final Block block;
+
+        final AtomicInteger state = new AtomicInteger(PENDING);
+
+        final CountDownLatch done = new CountDownLatch(1);
+
+        List<SimpleFeature> features;
+
+        Throwable failure;
+
+        Task(Block block) {
+            this.block = block;
+        }
+
+        /**
+         * @return true if the task will not run, false if it is running or ran
+         */
+        boolean cancel() {
+            if (state.compareAndSet(PENDING, CANCELLED)) {
+                done.countDown();
+                return true;
+            }
+            return false;
+        }
+
+        public void run() {
+            if (!state.compareAndSet(PENDING, RUNNING)) {
+                return;
+            }
+            try {
+                features = parse(block);
+            } catch (Throwable t) {
+                failure = t;
+            } finally {
+                done.countDown();
+            }
+        }
+    }
+
+    List<SimpleFeature> parse(Block block) {
+        List<SimpleFeature> features = new ArrayList<SimpleFeature>(block.selected == null ? Math
+                .min(block.rows, 1024) : block.selected.length);
+        SimpleFeatureBuilder builder = new SimpleFeatureBuilder(readType);
+        SimpleFeatureBuilder retyper = readType == featureType ? null : new SimpleFeatureBuilder(
+                featureType);
+        GeometryFactory geometryFactory = JTSFactoryFinder.getGeometryFactory(null);
+        CSVMappedFile.Record record = new CSVMappedFile.Record(modes.length);
+        System.arraycopy(modes, 0, record.modes, 0, modes.length);
+
+        long position = block.start;
+        int selected = 0;
+        for (int i = 0; i < block.rows; i++) {
+            long row = block.firstRow + i;
+            if (block.selected != null) {
+                if (selected == block.selected.length) {
+                    break;
+                }
+                if (block.selected[selected] != row) {
+                    position = csv.skipEmpty(csv.parse(position, null));
+                    continue;
+                }
+                selected++;
+            }
+            record.clear();
+            position = csv.skipEmpty(csv.parse(position, record));
+
+            Coordinate coordinate = null;
+            if (location >= 0) {
+                coordinate = new Coordinate(lonColumn >= 0 ? record.numbers[lonColumn] : 0,
+                        latColumn >= 0 ? record.numbers[latColumn] : 0);
+                if (bounds != null && !bounds.contains(coordinate)) {
+                    continue;
+                }
+                builder.set(location, geometryFactory.createPoint(coordinate));
+            }
+            for (int c = 0; c < attributes.length; c++) {
+                if (attributes[c] >= 0) {
+                    builder.set(attributes[c], record.texts[c]);
+                }
+            }
+            SimpleFeature feature = builder.buildFeature(typeName + "." + (row + 1));
+            if (filter != Filter.INCLUDE && !filter.evaluate(feature)) {
+                continue;
+            }
+            if (retyper != null) {
+                feature = SimpleFeatureBuilder.retype(feature, retyper);
+            }
+            features.add(feature);
+        }
+        return features;
+    }
+}
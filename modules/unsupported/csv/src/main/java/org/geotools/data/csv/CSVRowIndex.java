@@ -0,0 +1,177 @@
+package org.geotools.data.csv;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.geotools.util.logging.Logging;
+
+/**
+ * The position of every {@link #BLOCK_SIZE}th record of a CSV file.
+ * <p>
+ * Blocks of records are the unit of the parallel reads, and locate a row by number scanning at
+ * most a block. The index is saved in a sidecar file, named after the CSV one plus the
+ * {@value #EXTENSION} extension, holding the length and modification time of the CSV file it
+ * was built for.
+ *
+ * @source $URL$
+ */
+class CSVRowIndex {
+
+    static final Logger LOGGER = Logging.getLogger(CSVRowIndex.class);
+
+    static final String EXTENSION = ".cix";
+
+    static final int MAGIC = 0x43495831;
+
+    static final int BLOCK_SIZE = 4096;
+
+    final long sourceLength;
+
+    final long sourceModified;
+
+    final long rowCount;
+
+    /** the position of the first record of each block */
+    final long[] blocks;
+
+    CSVRowIndex(long sourceLength, long sourceModified, long rowCount, long[] blocks) {
+        this.sourceLength = sourceLength;
+        this.sourceModified = sourceModified;
+        this.rowCount = rowCount;
+        this.blocks = blocks;
+    }
+
+    /**
+     * @return whether the index still matches the CSV file
+     */
+    boolean isValid(File source) {
+        return source.length() == sourceLength && source.lastModified() == sourceModified;
+    }
+
+    /**
+     * @return the number of records, not counting the header
+     */
+    long getRowCount() {
+        return rowCount;
+    }
+
+    int getBlockCount() {
+        return blocks.length;
+    }
+
+    /**
+     * @return the number of records of a block
+     */
+    int getBlockRows(int block) {
+        return (int) Math.min(BLOCK_SIZE, rowCount - (long) block * BLOCK_SIZE);
+    }
+
+    static File getSidecar(File source) {
+        return new File(source.getParentFile(), source.getName() + EXTENSION);
+    }
+
+    /**
+     * Reads the index of a CSV file
+     * 
+     * @return the index, or null if missing, corrupted or stale
+     */
+    static CSVRowIndex open(File source) {
+        File sidecar = getSidecar(source);
+        if (!sidecar.exists()) {
+            return null;
+        }
+        try {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(
+                    new FileInputStream(sidecar)));
+            try {
+                if (in.readInt() != MAGIC || in.readInt() != BLOCK_SIZE) {
+                    return null;
+                }
+                long length = in.readLong();
+                long modified = in.readLong();
+                long rows = in.readLong();
+                long[] blocks = new long[blockCount(rows)];
+                for (int i = 0; i < blocks.length; i++) {
+                    blocks[i] = in.readLong();
+                }
+                CSVRowIndex index = new CSVRowIndex(length, modified, rows, blocks);
+                return index.isValid(source) ? index : null;
+            } finally {
+                in.close();
+            }
+        } catch (IOException e) {
+            LOGGER.log(Level.FINE, "Discarding CSV index " + sidecar, e);
+            return null;
+        }
+    }
+
+    /**
+     * Scans a CSV file for its record positions, saving the index if the sidecar file can be
+     * written
+     */
+    static CSVRowIndex build(CSVMappedFile csv) {
+        long length = csv.file.length();
+        long modified = csv.file.lastModified();
+
+        long[] blocks = new long[16];
+        long rows = 0;
+        long position = csv.getDataStart();
+        while (position < csv.length) {
+            if (rows % BLOCK_SIZE == 0) {
+                int block = (int) (rows / BLOCK_SIZE);
+                if (block == blocks.length) {
+                    blocks = Arrays.copyOf(blocks, block * 2);
+                }
+                blocks[block] = position;
+            }
+            rows++;
+            position = csv.skipEmpty(csv.parse(position, null));
+        }
+        CSVRowIndex index = new CSVRowIndex(length, modified, rows, Arrays.copyOf(blocks,
+                blockCount(rows)));
+
+        File sidecar = getSidecar(csv.file);
+        try {
+            index.write(sidecar);
+        } catch (IOException e) {
+            // the index is small, keeping it in memory only is fine
+            LOGGER.log(Level.FINE, "Could not save CSV index " + sidecar, e);
+            sidecar.delete();
+        }
+        return index;
+    }
+
+    static int blockCount(long rows) {
+        long count = (rows + BLOCK_SIZE - 1) / BLOCK_SIZE;
+        if (count > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Too many records to index: " + rows);
+        }
+        return (int) count;
+    }
+
+    void write(File sidecar) throws IOException {
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                new FileOutputStream(sidecar)));
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(BLOCK_SIZE);
+            out.writeLong(sourceLength);
+            out.writeLong(sourceModified);
+            out.writeLong(rowCount);
+            for (long block : blocks) {
+                out.writeLong(block);
+            }
+        } finally {
+            out.close();
+        }
+    }
+}
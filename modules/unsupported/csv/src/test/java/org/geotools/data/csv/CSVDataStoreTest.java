@@ -89,6 +89,7 @@ public class CSVDataStoreTest {
     @After
     public void deleteTestFile() {
         testFile.delete();
+        CSVRowIndex.getSidecar(testFile).delete();
     }
 
     /**
@@ -0,0 +1,261 @@
+package org.geotools.data.csv;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.geotools.data.Query;
+import org.geotools.data.simple.SimpleFeatureCollection;
+import org.geotools.data.simple.SimpleFeatureIterator;
+import org.geotools.data.simple.SimpleFeatureSource;
+import org.geotools.data.simple.SimpleFeatureStore;
+import org.geotools.data.store.ContentFeatureSource;
+import org.geotools.factory.CommonFactoryFinder;
+import org.geotools.geometry.jts.ReferencedEnvelope;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.filter.Filter;
+import org.opengis.filter.FilterFactory2;
+import org.opengis.filter.identity.FeatureId;
+
+import com.vividsolutions.jts.geom.Point;
+
+/**
+ * Test the memory mapped, parallel read path of the CSVDataStore
+ *
+ * @source $URL$
+ */
+public class CSVParallelFeatureReaderTest {
+
+    private static final int ROWS = 3 * CSVRowIndex.BLOCK_SIZE + 100;
+
+    private static final FilterFactory2 ff = CommonFactoryFinder.getFilterFactory2(null);
+
+    private File testFile;
+
+    private CSVDataStore store;
+
+    /**
+     * A grid of points spanning several index blocks, with quoted values and empty lines
+     */
+    @Before
+    public void createTestFile() throws IOException {
+        File tempDir = new File(new File("./target"), "/csvParallelTest");
+        tempDir.mkdirs();
+        testFile = new File(tempDir, "grid.csv");
+        BufferedWriter writer = new BufferedWriter(new FileWriter(testFile));
+        writer.append("LAT, LON, NAME, \"VALUE\"");
+        writer.newLine();
+        for (int i = 0; i < ROWS; i++) {
+            double lat = (i / 100) * 0.5;
+            double lon = (i % 100) - 50.25;
+            writer.append(lat + "," + lon + ",");
+            if (i % 10 == 0) {
+                // quoted, with the delimiters inside
+                writer.append("\"row, \"\"" + i + "\"\"\nnext\"");
+            } else {
+                writer.append(" row " + i + " ");
+            }
+            writer.append("," + (i % 7));
+            writer.append(i % 3 == 0 ? "\r\n" : "\n");
+            if (i % 1000 == 0) {
+                writer.newLine();
+            }
+        }
+        writer.close();
+        store = new CSVDataStore(testFile);
+    }
+
+    @After
+    public void deleteTestFile() {
+        store.dispose();
+        testFile.delete();
+        CSVRowIndex.getSidecar(testFile).delete();
+    }
+
+    private List<SimpleFeature> read(SimpleFeatureCollection features) {
+        List<SimpleFeature> result = new ArrayList<SimpleFeature>();
+        SimpleFeatureIterator it = features.features();
+        try {
+            while (it.hasNext()) {
+                result.add(it.next());
+            }
+        } finally {
+            it.close();
+        }
+        return result;
+    }
+
+    private String name(int row) {
+        return row % 10 == 0 ? "row, \"" + row + "\"\nnext" : "row " + row;
+    }
+
+    @Test
+    public void testReadAll() throws Exception {
+        SimpleFeatureSource source = store.getFeatureSource("grid");
+        assertEquals(ROWS, source.getCount(Query.ALL));
+        assertTrue(CSVRowIndex.getSidecar(testFile).exists());
+
+        List<SimpleFeature> features = read(source.getFeatures());
+        assertEquals(ROWS, features.size());
+        for (int i = 0; i < ROWS; i++) {
+            SimpleFeature f = features.get(i);
+            assertEquals("grid." + (i + 1), f.getID());
+            Point p = (Point) f.getDefaultGeometry();
+            assertEquals((i / 100) * 0.5, p.getY(), 0d);
+            assertEquals((i % 100) - 50.25, p.getX(), 0d);
+            assertEquals(name(i), f.getAttribute("NAME"));
+            assertEquals(String.valueOf(i % 7), f.getAttribute("VALUE"));
+        }
+
+        ReferencedEnvelope bounds = source.getBounds();
+        assertEquals(-50.25, bounds.getMinX(), 0d);
+        assertEquals(48.75, bounds.getMaxX(), 0d);
+        assertEquals(0, bounds.getMinY(), 0d);
+        assertEquals(((ROWS - 1) / 100) * 0.5, bounds.getMaxY(), 0d);
+    }
+
+    @Test
+    public void testSameAsCsvReader() throws Exception {
+        List<SimpleFeature> features = read(store.getFeatureSource("grid").getFeatures());
+        CSVFeatureReader reader = new CSVFeatureReader(store.getFeatureSource("grid")
+                .getState());
+        try {
+            for (SimpleFeature expected : features) {
+                assertTrue(reader.hasNext());
+                SimpleFeature actual = reader.next();
+                assertEquals(expected.getID(), actual.getID());
+                assertEquals(expected.getAttributes(), actual.getAttributes());
+            }
+            assertFalse(reader.hasNext());
+        } finally {
+            reader.close();
+        }
+    }
+
+    @Test
+    public void testFilterAndRetype() throws Exception {
+        // the writable file gets a store, which lets the superclass filter and retype
+        ContentFeatureSource writable = store.getFeatureSource("grid");
+        assertTrue(writable instanceof CSVFeatureStore);
+        checkFilterAndRetype(writable);
+        checkFilterAndRetype(new CSVFeatureSource(writable.getEntry(), Query.ALL));
+    }
+
+    private void checkFilterAndRetype(SimpleFeatureSource source) throws IOException {
+        Filter filter = ff.and(ff.bbox("Location", -10, 20, 10.5, 40, null),
+                ff.equals(ff.property("VALUE"), ff.literal("3")));
+        Query query = new Query("grid", filter, new String[] { "NAME" });
+        List<SimpleFeature> features = read(source.getFeatures(query));
+
+        Set<String> expected = new HashSet<String>();
+        for (int i = 0; i < ROWS; i++) {
+            double lat = (i / 100) * 0.5;
+            double lon = (i % 100) - 50.25;
+            if (lon >= -10 && lon <= 10.5 && lat >= 20 && lat <= 40 && i % 7 == 3) {
+                expected.add("grid." + (i + 1));
+            }
+        }
+        Set<String> actual = new HashSet<String>();
+        for (SimpleFeature f : features) {
+            assertEquals(1, f.getAttributeCount());
+            assertNull(f.getDefaultGeometry());
+            actual.add(f.getID());
+        }
+        assertFalse(expected.isEmpty());
+        assertEquals(expected, actual);
+        assertEquals(expected.size(), source.getCount(query));
+    }
+
+    @Test
+    public void testFids() throws Exception {
+        SimpleFeatureSource source = store.getFeatureSource("grid");
+        Set<FeatureId> fids = new HashSet<FeatureId>();
+        int[] rows = { 1, 10, 4096, 4097, 8193, ROWS };
+        for (int row : rows) {
+            fids.add(ff.featureId("grid." + row));
+        }
+        fids.add(ff.featureId("grid." + (ROWS + 1)));
+        fids.add(ff.featureId("other.1"));
+        List<SimpleFeature> features = read(source.getFeatures(ff.id(fids)));
+        assertEquals(rows.length, features.size());
+        for (int i = 0; i < rows.length; i++) {
+            SimpleFeature f = features.get(i);
+            assertEquals("grid." + rows[i], f.getID());
+            assertEquals(name(rows[i] - 1), f.getAttribute("NAME"));
+        }
+    }
+
+    @Test
+    public void testIndexReuse() throws Exception {
+        assertEquals(ROWS, store.getFeatureSource("grid").getCount(Query.ALL));
+        File sidecar = CSVRowIndex.getSidecar(testFile);
+        long modified = sidecar.lastModified();
+
+        CSVDataStore other = new CSVDataStore(testFile);
+        try {
+            assertEquals(ROWS, other.getFeatureSource("grid").getCount(Query.ALL));
+            assertEquals(modified, sidecar.lastModified());
+        } finally {
+            other.dispose();
+        }
+
+        // a stale index is rebuilt
+        BufferedWriter writer = new BufferedWriter(new FileWriter(testFile, true));
+        writer.append("1,2,added,3");
+        writer.newLine();
+        writer.close();
+        assertEquals(ROWS + 1, store.getFeatureSource("grid").getCount(Query.ALL));
+        List<SimpleFeature> last = read(store.getFeatureSource("grid").getFeatures(
+                ff.id(ff.featureId("grid." + (ROWS + 1)))));
+        assertEquals(1, last.size());
+        assertEquals("added", last.get(0).getAttribute("NAME"));
+    }
+
+    @Test
+    public void testWriteWhileReading() throws Exception {
+        SimpleFeatureStore rows = (SimpleFeatureStore) store.getFeatureSource("grid");
+        SimpleFeatureIterator it = rows.getFeatures().features();
+        try {
+            assertTrue(it.hasNext());
+            assertEquals("grid.1", it.next().getID());
+
+            // the open reader keeps the contents it started with
+            rows.removeFeatures(ff.less(ff.property("VALUE"), ff.literal(3)));
+            int count = 1;
+            while (it.hasNext()) {
+                SimpleFeature f = it.next();
+                assertEquals(name(count), f.getAttribute("NAME"));
+                count++;
+            }
+            assertEquals(ROWS, count);
+        } finally {
+            it.close();
+        }
+
+        int remaining = 0;
+        for (int i = 0; i < ROWS; i++) {
+            if (i % 7 >= 3) {
+                remaining++;
+            }
+        }
+        assertEquals(remaining, rows.getCount(Query.ALL));
+        assertEquals(remaining, read(rows.getFeatures()).size());
+        File[] left = testFile.getParentFile().listFiles();
+        for (File file : left) {
+            assertFalse(file.getName(), file.getName().endsWith(".tmp"));
+        }
+    }
+}
@@ -0,0 +1,135 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2013, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.data.geojson;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.geotools.data.Query;
+import org.geotools.data.store.ContentDataStore;
+import org.geotools.data.store.ContentEntry;
+import org.geotools.data.store.ContentFeatureSource;
+import org.geotools.feature.NameImpl;
+import org.geotools.util.logging.Logging;
+import org.opengis.feature.type.Name;
+
+/**
+ * A read only data store over a GeoJSON file, holding a single feature type named after the file.
+ * <p>
+ * On first access the file is indexed into a sidecar file, named after the GeoJSON one plus the
+ * {@value GeoJSONIndex#EXTENSION} extension, which is reused by later instances for as long as
+ * the file does not change. Bounding box and feature id queries then read the matching features
+ * only, seeking to them, while the other queries stream the whole file. When the sidecar cannot
+ * be written the index is kept in a temporary file instead.
+ * </p>
+ * 
+ * @source $URL$
+ */
+public class GeoJSONDataStore extends ContentDataStore {
+
+    static final Logger LOGGER = Logging.getLogger(GeoJSONDataStore.class);
+
+    final File file;
+
+    private GeoJSONIndex index;
+
+    private File temporaryIndex;
+
+    public GeoJSONDataStore(File file) {
+        this.file = file;
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * @return the name of the feature type, the file name without extension
+     */
+    String getTypeName() {
+        String name = file.getName();
+        int dot = name.lastIndexOf('.');
+        return dot > 0 ? name.substring(0, dot) : name;
+    }
+
+    /**
+     * @return the prefix of the identifiers given to features without one
+     */
+    String getIdPrefix() {
+        return getTypeName() + ".";
+    }
+
+    @Override
+    protected List<Name> createTypeNames() throws IOException {
+        return Collections.singletonList((Name) new NameImpl(getNamespaceURI(), getTypeName()));
+    }
+
+    @Override
+    protected ContentFeatureSource createFeatureSource(ContentEntry entry) throws IOException {
+        return new GeoJSONFeatureSource(entry, Query.ALL);
+    }
+
+    /**
+     * Returns the index of the file, opening or building it as needed
+     */
+    synchronized GeoJSONIndex getIndex() throws IOException {
+        if (index != null && index.isValid(file)) {
+            return index;
+        }
+        File sidecar = new File(file.getParentFile(), file.getName() + GeoJSONIndex.EXTENSION);
+        index = GeoJSONIndex.open(file, temporaryIndex != null ? temporaryIndex : sidecar);
+        if (index == null) {
+            File target = sidecar;
+            if (temporaryIndex != null || !canWrite(sidecar)) {
+                if (temporaryIndex == null) {
+                    temporaryIndex = File.createTempFile(getTypeName(), GeoJSONIndex.EXTENSION);
+                    temporaryIndex.deleteOnExit();
+                }
+                target = temporaryIndex;
+            }
+            if (LOGGER.isLoggable(Level.FINE)) {
+                LOGGER.fine("Indexing " + file + " into " + target);
+            }
+            index = GeoJSONIndex.build(file, target, getIdPrefix());
+        }
+        return index;
+    }
+
+    static boolean canWrite(File sidecar) {
+        if (sidecar.exists()) {
+            return sidecar.canWrite();
+        }
+        File directory = sidecar.getAbsoluteFile().getParentFile();
+        return directory != null && directory.canWrite();
+    }
+
+    @Override
+    public void dispose() {
+        synchronized (this) {
+            index = null;
+            if (temporaryIndex != null) {
+                temporaryIndex.delete();
+                temporaryIndex = null;
+            }
+        }
+        super.dispose();
+    }
+}
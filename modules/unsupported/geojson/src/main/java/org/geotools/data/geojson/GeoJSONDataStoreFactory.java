@@ -0,0 +1,89 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2013, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.data.geojson;
+
+import java.awt.RenderingHints.Key;
+import java.io.File;
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.Map;
+
+import org.geotools.data.DataStore;
+import org.geotools.data.DataStoreFactorySpi;
+import org.geotools.util.KVP;
+
+/**
+ * Creates {@link GeoJSONDataStore} instances over .geojson and .json files.
+ * 
+ * @source $URL$
+ */
+public class GeoJSONDataStoreFactory implements DataStoreFactorySpi {
+
+    private static final String[] EXTENSIONS = { "geojson", "json" };
+
+    public static final Param FILE_PARAM = new Param("file", File.class, "GeoJSON file", true,
+            null, new KVP(Param.EXT, EXTENSIONS[0]));
+
+    public String getDisplayName() {
+        return "GeoJSON";
+    }
+
+    public String getDescription() {
+        return "GeoJSON file, indexed for bounding box and feature id queries";
+    }
+
+    public Param[] getParametersInfo() {
+        return new Param[] { FILE_PARAM };
+    }
+
+    public boolean canProcess(Map<String, Serializable> params) {
+        try {
+            File file = (File) FILE_PARAM.lookUp(params);
+            if (file != null) {
+                String path = file.getPath().toLowerCase();
+                for (String extension : EXTENSIONS) {
+                    if (path.endsWith("." + extension)) {
+                        return true;
+                    }
+                }
+            }
+        } catch (IOException e) {
+            // ignore
+        }
+        return false;
+    }
+
+    public boolean isAvailable() {
+        return true;
+    }
+
+    public Map<Key, ?> getImplementationHints() {
+        return null;
+    }
+
+    public DataStore createDataStore(Map<String, Serializable> params) throws IOException {
+        File file = (File) FILE_PARAM.lookUp(params);
+        if (!file.exists()) {
+            throw new IOException("GeoJSON file not found: " + file);
+        }
+        return new GeoJSONDataStore(file);
+    }
+
+    public DataStore createNewDataStore(Map<String, Serializable> params) throws IOException {
+        throw new UnsupportedOperationException("GeoJSON data store is read only");
+    }
+}
@@ -0,0 +1,144 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2013, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.data.geojson;
+
+import java.io.ByteArrayInputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.util.NoSuchElementException;
+
+import org.geotools.data.FeatureReader;
+import org.geotools.data.store.ContentState;
+import org.geotools.geojson.stream.GeoJSONReader;
+import org.geotools.geojson.stream.GeoJSONTokenizer;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
+
+/**
+ * Reads the features of a GeoJSON file, either streaming the whole file or reading the byte
+ * ranges located by the index.
+ * 
+ * @source $URL$
+ */
+class GeoJSONFeatureReader implements FeatureReader<SimpleFeatureType, SimpleFeature> {
+
+    private final ContentState state;
+
+    private final GeoJSONReader reader;
+
+    /** the file stream, when streaming */
+    private InputStream in;
+
+    /** the file, when reading the hits */
+    private RandomAccessFile file;
+
+    private GeoJSONTokenizer tokenizer;
+
+    private GeoJSONIndex.Hits hits;
+
+    private int hit;
+
+    private byte[] bytes;
+
+    private SimpleFeature next;
+
+    /**
+     * Streams all the features of the file
+     */
+    GeoJSONFeatureReader(ContentState state, GeoJSONDataStore store) throws IOException {
+        this.state = state;
+        this.in = new FileInputStream(store.getFile());
+        this.reader = new GeoJSONReader(in, store.getGeometryFactory());
+        init(store);
+    }
+
+    /**
+     * Reads the features at the specified byte ranges
+     */
+    GeoJSONFeatureReader(ContentState state, GeoJSONDataStore store, GeoJSONIndex.Hits hits)
+            throws IOException {
+        this.state = state;
+        this.hits = hits;
+        this.file = new RandomAccessFile(store.getFile(), "r");
+        this.tokenizer = new GeoJSONTokenizer(new ByteArrayInputStream(new byte[0]));
+        this.reader = new GeoJSONReader(tokenizer, store.getGeometryFactory());
+        init(store);
+    }
+
+    private void init(GeoJSONDataStore store) {
+        reader.setFeatureType(getFeatureType());
+        reader.setCRS(getFeatureType().getCoordinateReferenceSystem());
+        reader.setIdPrefix(store.getIdPrefix());
+    }
+
+    public SimpleFeatureType getFeatureType() {
+        return state.getFeatureType();
+    }
+
+    public boolean hasNext() throws IOException {
+        if (next == null) {
+            next = read();
+        }
+        return next != null;
+    }
+
+    public SimpleFeature next() throws IOException, IllegalArgumentException,
+            NoSuchElementException {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        SimpleFeature feature = next;
+        next = null;
+        return feature;
+    }
+
+    private SimpleFeature read() throws IOException {
+        if (hits == null) {
+            return in != null ? reader.read() : null;
+        }
+        if (file == null || hit >= hits.size) {
+            return null;
+        }
+        long offset = hits.offsets[hit];
+        int length = hits.lengths[hit];
+        hit++;
+        if (bytes == null || bytes.length < length) {
+            bytes = new byte[Math.max(length, 8192)];
+        }
+        file.seek(offset);
+        file.readFully(bytes, 0, length);
+        tokenizer.reset(new ByteArrayInputStream(bytes, 0, length), offset);
+        return reader.readFeature();
+    }
+
+    public void close() throws IOException {
+        reader.close();
+        try {
+            if (in != null) {
+                in.close();
+            }
+            if (file != null) {
+                file.close();
+            }
+        } finally {
+            in = null;
+            file = null;
+        }
+    }
+}
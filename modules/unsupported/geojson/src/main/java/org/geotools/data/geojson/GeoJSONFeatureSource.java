@@ -0,0 +1,139 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2013, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.data.geojson;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.geotools.data.FeatureReader;
+import org.geotools.data.Query;
+import org.geotools.data.store.ContentEntry;
+import org.geotools.data.store.ContentFeatureSource;
+import org.geotools.feature.simple.SimpleFeatureTypeBuilder;
+import org.geotools.filter.visitor.ExtractBoundsFilterVisitor;
+import org.geotools.geojson.stream.GeoJSONReader;
+import org.geotools.geometry.jts.ReferencedEnvelope;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
+import org.opengis.feature.type.AttributeDescriptor;
+import org.opengis.feature.type.GeometryDescriptor;
+import org.opengis.filter.Filter;
+import org.opengis.filter.Id;
+import org.opengis.filter.identity.Identifier;
+
+import com.vividsolutions.jts.geom.Envelope;
+
+/**
+ * Reads the features of a {@link GeoJSONDataStore}, using its index to preselect the features
+ * matching bounding box and feature id filters. The filters are still fully evaluated on the
+ * features read.
+ * 
+ * @source $URL$
+ */
+public class GeoJSONFeatureSource extends ContentFeatureSource {
+
+    public GeoJSONFeatureSource(ContentEntry entry, Query query) {
+        super(entry, query);
+    }
+
+    @Override
+    public GeoJSONDataStore getDataStore() {
+        return (GeoJSONDataStore) super.getDataStore();
+    }
+
+    @Override
+    protected SimpleFeatureType buildFeatureType() throws IOException {
+        InputStream in = new FileInputStream(getDataStore().getFile());
+        try {
+            GeoJSONReader reader = new GeoJSONReader(in, getDataStore().getGeometryFactory());
+            SimpleFeatureTypeBuilder builder = new SimpleFeatureTypeBuilder();
+            builder.init(reader.getFeatureType());
+            builder.setName(entry.getName());
+            return builder.buildFeatureType();
+        } finally {
+            in.close();
+        }
+    }
+
+    @Override
+    protected ReferencedEnvelope getBoundsInternal(Query query) throws IOException {
+        if (query.getFilter() != Filter.INCLUDE) {
+            // let the caller go through the features
+            return null;
+        }
+        ReferencedEnvelope bounds = new ReferencedEnvelope(getSchema()
+                .getCoordinateReferenceSystem());
+        Envelope envelope = getDataStore().getIndex().getBounds();
+        if (envelope != null) {
+            bounds.expandToInclude(envelope);
+        }
+        return bounds;
+    }
+
+    @Override
+    protected int getCountInternal(Query query) throws IOException {
+        if (query.getFilter() != Filter.INCLUDE) {
+            return -1;
+        }
+        return getDataStore().getIndex().getCount();
+    }
+
+    @Override
+    protected FeatureReader<SimpleFeatureType, SimpleFeature> getReaderInternal(Query query)
+            throws IOException {
+        // the filter is evaluated afterwards, here it only narrows down the features read
+        GeoJSONDataStore store = getDataStore();
+        Filter filter = query.getFilter();
+        GeoJSONIndex.Hits hits = null;
+        if (filter instanceof Id) {
+            List<String> ids = new ArrayList<String>();
+            for (Identifier id : ((Id) filter).getIdentifiers()) {
+                ids.add(id.getID().toString());
+            }
+            hits = store.getIndex().lookup(ids);
+        } else if (filter != Filter.INCLUDE && isSingleGeometry()) {
+            Envelope envelope = (Envelope) filter.accept(
+                    ExtractBoundsFilterVisitor.BOUNDS_VISITOR, null);
+            if (envelope != null && !envelope.isNull()
+                    && !Double.isInfinite(envelope.getWidth())
+                    && !Double.isInfinite(envelope.getHeight())) {
+                hits = store.getIndex().query(envelope);
+            }
+        }
+
+        if (hits != null) {
+            return new GeoJSONFeatureReader(getState(), store, hits);
+        }
+        return new GeoJSONFeatureReader(getState(), store);
+    }
+
+    /**
+     * @return whether the default geometry is the only one, which the index is about
+     */
+    boolean isSingleGeometry() throws IOException {
+        int count = 0;
+        for (AttributeDescriptor descriptor : getSchema().getAttributeDescriptors()) {
+            if (descriptor instanceof GeometryDescriptor) {
+                count++;
+            }
+        }
+        return count == 1;
+    }
+}
@@ -0,0 +1,614 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2013, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.data.geojson;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.geotools.geojson.stream.GeoJSONReader;
+import org.geotools.util.logging.Logging;
+import org.opengis.feature.simple.SimpleFeature;
+
+import com.vividsolutions.jts.geom.Envelope;
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.GeometryFactory;
+
+/**
+ * A sidecar index of a GeoJSON file, locating its features by bounds and identifier.
+ * <p>
+ * The index file holds:
+ * <ul>
+ * <li>a header, with the length and modification time of the indexed file, the feature count
+ * and the total bounds;</li>
+ * <li>a packed R-tree of the feature bounds, the features being sorted along a Hilbert curve
+ * and grouped {@link #NODE_SIZE} by {@link #NODE_SIZE} up to the root. The nodes are stored
+ * level by level from the root, leaves last, each one with its bounds and either the byte range
+ * of its feature or the range of its children;</li>
+ * <li>the byte ranges of the features sorted by the hash of their identifier.</li>
+ * </ul>
+ * The file is memory mapped, and answering a query allocates nothing but the result.
+ * </p>
+ * <p>
+ * Features without geometry are indexed by identifier only. An index is stale, and has to be
+ * rebuilt, as soon as the indexed file length or modification time change.
+ * </p>
+ * 
+ * @source $URL$
+ */
+class GeoJSONIndex {
+
+    static final Logger LOGGER = Logging.getLogger(GeoJSONIndex.class);
+
+    /** the extension appended to the indexed file name */
+    static final String EXTENSION = ".gjx";
+
+    static final int MAGIC = 0x474A4958;
+
+    static final int VERSION = 1;
+
+    /** the number of children of the tree nodes */
+    static final int NODE_SIZE = 16;
+
+    static final int HEADER_SIZE = 72;
+
+    /** bounds, offset and length */
+    static final int NODE_BYTES = 44;
+
+    /** identifier hash, offset and length */
+    static final int ID_BYTES = 16;
+
+    private final long sourceLength;
+
+    private final long sourceModified;
+
+    private final int count;
+
+    private final Envelope bounds;
+
+    private final MappedByteBuffer buffer;
+
+    /** the index of the first leaf node */
+    private final int leafStart;
+
+    private final int nodeCount;
+
+    private final int idStart;
+
+    private GeoJSONIndex(MappedByteBuffer buffer) throws IOException {
+        this.buffer = buffer;
+        if (buffer.capacity() < HEADER_SIZE || buffer.getInt(0) != MAGIC
+                || buffer.getInt(4) != VERSION) {
+            throw new IOException("Not a GeoJSON index");
+        }
+        sourceLength = buffer.getLong(8);
+        sourceModified = buffer.getLong(16);
+        count = (int) buffer.getLong(24);
+        bounds = new Envelope();
+        if (count > 0 && buffer.getDouble(40) <= buffer.getDouble(56)) {
+            bounds.init(buffer.getDouble(40), buffer.getDouble(56), buffer.getDouble(48),
+                    buffer.getDouble(64));
+        }
+        nodeCount = nodeCount(count);
+        leafStart = nodeCount - count;
+        idStart = HEADER_SIZE + nodeCount * NODE_BYTES;
+        if (buffer.capacity() != idStart + (long) count * ID_BYTES) {
+            throw new IOException("Truncated GeoJSON index");
+        }
+    }
+
+    /**
+     * Opens the index of a file
+     * 
+     * @return the index, or null if missing, corrupted or stale
+     */
+    static GeoJSONIndex open(File source, File indexFile) {
+        if (!indexFile.exists()) {
+            return null;
+        }
+        try {
+            GeoJSONIndex index = new GeoJSONIndex(map(indexFile));
+            return index.isValid(source) ? index : null;
+        } catch (IOException e) {
+            LOGGER.log(Level.FINE, "Discarding GeoJSON index " + indexFile, e);
+            return null;
+        }
+    }
+
+    /**
+     * Indexes a file, writing the index to the specified file
+     */
+    static GeoJSONIndex build(File source, File indexFile, String idPrefix) throws IOException {
+        long length = source.length();
+        long modified = source.lastModified();
+
+        Entries entries = new Entries();
+        InputStream in = new FileInputStream(source);
+        try {
+            GeoJSONReader reader = new GeoJSONReader(in, new GeometryFactory());
+            reader.setIdPrefix(idPrefix);
+            SimpleFeature feature;
+            while ((feature = reader.read()) != null) {
+                Geometry geometry = (Geometry) feature.getDefaultGeometry();
+                Envelope envelope = geometry != null ? geometry.getEnvelopeInternal() : null;
+                entries.add(reader.getFeatureStart(),
+                        (int) (reader.getFeatureEnd() - reader.getFeatureStart()), envelope,
+                        feature.getID() != null ? feature.getID().hashCode() : 0);
+            }
+        } finally {
+            in.close();
+        }
+
+        File temp = new File(indexFile.getParentFile(), indexFile.getName() + ".tmp");
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                new FileOutputStream(temp), 64 * 1024));
+        try {
+            entries.write(out, length, modified);
+        } finally {
+            out.close();
+        }
+        if (indexFile.exists() && !indexFile.delete()) {
+            temp.delete();
+            throw new IOException("Could not replace " + indexFile);
+        }
+        if (!temp.renameTo(indexFile)) {
+            temp.delete();
+            throw new IOException("Could not create " + indexFile);
+        }
+        return new GeoJSONIndex(map(indexFile));
+    }
+
+    static MappedByteBuffer map(File file) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = raf.getChannel();
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("GeoJSON index too large to be mapped: " + file);
+            }
+            // the mapping stays valid after the channel is closed
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        } finally {
+            raf.close();
+        }
+    }
+
+    /**
+     * @return the total number of nodes of a tree with the specified number of leaves
+     */
+    static int nodeCount(int leaves) {
+        long total = leaves;
+        long level = leaves;
+        while (level > 1) {
+            level = (level + NODE_SIZE - 1) / NODE_SIZE;
+            total += level;
+        }
+        if (total > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Too many features to index: " + leaves);
+        }
+        return (int) total;
+    }
+
+    /**
+     * @return whether the index still matches the indexed file
+     */
+    boolean isValid(File source) {
+        return source.length() == sourceLength && source.lastModified() == sourceModified;
+    }
+
+    /**
+     * @return the number of features
+     */
+    int getCount() {
+        return count;
+    }
+
+    /**
+     * @return the bounds of all the features, null if none has a geometry
+     */
+    Envelope getBounds() {
+        return bounds.isNull() ? null : new Envelope(bounds);
+    }
+
+    /**
+     * @return the byte ranges of the features whose bounds intersect the envelope, in file order
+     */
+    Hits query(Envelope envelope) {
+        Hits hits = new Hits();
+        if (count == 0) {
+            return hits;
+        }
+        double minX = envelope.getMinX();
+        double minY = envelope.getMinY();
+        double maxX = envelope.getMaxX();
+        double maxY = envelope.getMaxY();
+
+        int[] stack = new int[64];
+        int top = 0;
+        stack[top++] = 0;
+        while (top > 0) {
+            int node = stack[--top];
+            int position = HEADER_SIZE + node * NODE_BYTES;
+            if (buffer.getDouble(position) > maxX || buffer.getDouble(position + 8) > maxY
+                    || buffer.getDouble(position + 16) < minX
+                    || buffer.getDouble(position + 24) < minY) {
+                continue;
+            }
+            long offset = buffer.getLong(position + 32);
+            int length = buffer.getInt(position + 40);
+            if (node >= leafStart) {
+                hits.add(offset, length);
+            } else {
+                // children are consecutive nodes
+                if (top + length > stack.length) {
+                    stack = Arrays.copyOf(stack, Math.max(stack.length * 2, top + length));
+                }
+                for (int i = length - 1; i >= 0; i--) {
+                    stack[top++] = (int) offset + i;
+                }
+            }
+        }
+        hits.sort();
+        return hits;
+    }
+
+    /**
+     * @return the byte ranges of the features that may have the specified identifiers, in file
+     *         order
+     */
+    Hits lookup(Collection<String> ids) {
+        Hits hits = new Hits();
+        for (String id : ids) {
+            int hash = id.hashCode();
+            // binary search of the first entry with the hash
+            int low = 0;
+            int high = count;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (buffer.getInt(idStart + mid * ID_BYTES) < hash) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            for (int i = low; i < count; i++) {
+                int position = idStart + i * ID_BYTES;
+                if (buffer.getInt(position) != hash) {
+                    break;
+                }
+                hits.add(buffer.getLong(position + 4), buffer.getInt(position + 12));
+            }
+        }
+        hits.sort();
+        return hits;
+    }
+
+    /**
+     * The byte ranges of the features matching a query
+     */
+    static class Hits {
+
+        long[] offsets = new long[16];
+
+        int[] lengths = new int[16];
+
+        int size;
+
+        void add(long offset, int length) {
+            if (size == offsets.length) {
+                offsets = Arrays.copyOf(offsets, size * 2);
+                lengths = Arrays.copyOf(lengths, size * 2);
+            }
+            offsets[size] = offset;
+            lengths[size] = length;
+            size++;
+        }
+
+        /**
+         * Sorts the ranges in file order, dropping duplicates
+         */
+        void sort() {
+            if (size < 2) {
+                return;
+            }
+            sort(0, size - 1);
+            int count = 1;
+            for (int i = 1; i < size; i++) {
+                if (offsets[i] != offsets[count - 1]) {
+                    offsets[count] = offsets[i];
+                    lengths[count] = lengths[i];
+                    count++;
+                }
+            }
+            size = count;
+        }
+
+        private void sort(int low, int high) {
+            while (low < high) {
+                long pivot = offsets[(low + high) >>> 1];
+                int i = low;
+                int j = high;
+                while (i <= j) {
+                    while (offsets[i] < pivot) {
+                        i++;
+                    }
+                    while (offsets[j] > pivot) {
+                        j--;
+                    }
+                    if (i <= j) {
+                        long offset = offsets[i];
+                        offsets[i] = offsets[j];
+                        offsets[j] = offset;
+                        int length = lengths[i];
+                        lengths[i] = lengths[j];
+                        lengths[j] = length;
+                        i++;
+                        j--;
+                    }
+                }
+                // recurse on the smaller side
+                if (j - low < high - i) {
+                    sort(low, j);
+                    low = i;
+                } else {
+                    sort(i, high);
+                    high = j;
+                }
+            }
+        }
+    }
+
+    /**
+     * The features collected while indexing, in primitive arrays
+     */
+    static class Entries {
+
+        long[] offsets = new long[1024];
+
+        int[] lengths = new int[1024];
+
+        int[] hashes = new int[1024];
+
+        /** minx, miny, maxx, maxy, NaN for features without geometry */
+        double[] envelopes = new double[4 * 1024];
+
+        int size;
+
+        final Envelope bounds = new Envelope();
+
+        void add(long offset, int length, Envelope envelope, int hash) {
+            if (size == offsets.length) {
+                int capacity = size * 2;
+                offsets = Arrays.copyOf(offsets, capacity);
+                lengths = Arrays.copyOf(lengths, capacity);
+                hashes = Arrays.copyOf(hashes, capacity);
+                envelopes = Arrays.copyOf(envelopes, 4 * capacity);
+            }
+            offsets[size] = offset;
+            lengths[size] = length;
+            hashes[size] = hash;
+            if (envelope != null && !envelope.isNull()) {
+                envelopes[4 * size] = envelope.getMinX();
+                envelopes[4 * size + 1] = envelope.getMinY();
+                envelopes[4 * size + 2] = envelope.getMaxX();
+                envelopes[4 * size + 3] = envelope.getMaxY();
+                bounds.expandToInclude(envelope);
+            } else {
+                Arrays.fill(envelopes, 4 * size, 4 * size + 4, Double.NaN);
+            }
+            size++;
+        }
+
+        void write(DataOutputStream out, long sourceLength, long sourceModified)
+                throws IOException {
+            int nodeCount = nodeCount(size);
+            int leafStart = nodeCount - size;
+
+            // the tree nodes, leaves sorted along the hilbert curve of their centers
+            double[] minX = new double[nodeCount];
+            double[] minY = new double[nodeCount];
+            double[] maxX = new double[nodeCount];
+            double[] maxY = new double[nodeCount];
+            long[] nodeOffsets = new long[nodeCount];
+            int[] nodeLengths = new int[nodeCount];
+
+            int[] order = hilbertOrder();
+            for (int i = 0; i < size; i++) {
+                int k = order[i];
+                int node = leafStart + i;
+                if (Double.isNaN(envelopes[4 * k])) {
+                    // never matches a query
+                    minX[node] = minY[node] = Double.POSITIVE_INFINITY;
+                    maxX[node] = maxY[node] = Double.NEGATIVE_INFINITY;
+                } else {
+                    minX[node] = envelopes[4 * k];
+                    minY[node] = envelopes[4 * k + 1];
+                    maxX[node] = envelopes[4 * k + 2];
+                    maxY[node] = envelopes[4 * k + 3];
+                }
+                nodeOffsets[node] = offsets[k];
+                nodeLengths[node] = lengths[k];
+            }
+
+            // parent levels up to the root
+            int levelStart = leafStart;
+            int levelSize = size;
+            while (levelSize > 1) {
+                int parentSize = (levelSize + NODE_SIZE - 1) / NODE_SIZE;
+                int parentStart = levelStart - parentSize;
+                for (int p = 0; p < parentSize; p++) {
+                    int node = parentStart + p;
+                    int first = levelStart + p * NODE_SIZE;
+                    int last = Math.min(first + NODE_SIZE, levelStart + levelSize);
+                    minX[node] = minY[node] = Double.POSITIVE_INFINITY;
+                    maxX[node] = maxY[node] = Double.NEGATIVE_INFINITY;
+                    for (int c = first; c < last; c++) {
+                        minX[node] = Math.min(minX[node], minX[c]);
+                        minY[node] = Math.min(minY[node], minY[c]);
+                        maxX[node] = Math.max(maxX[node], maxX[c]);
+                        maxY[node] = Math.max(maxY[node], maxY[c]);
+                    }
+                    nodeOffsets[node] = first;
+                    nodeLengths[node] = last - first;
+                }
+                levelStart = parentStart;
+                levelSize = parentSize;
+            }
+
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(sourceLength);
+            out.writeLong(sourceModified);
+            out.writeLong(size);
+            out.writeInt(NODE_SIZE);
+            out.writeInt(0);
+            if (bounds.isNull()) {
+                out.writeDouble(Double.POSITIVE_INFINITY);
+                out.writeDouble(Double.POSITIVE_INFINITY);
+                out.writeDouble(Double.NEGATIVE_INFINITY);
+                out.writeDouble(Double.NEGATIVE_INFINITY);
+            } else {
+                out.writeDouble(bounds.getMinX());
+                out.writeDouble(bounds.getMinY());
+                out.writeDouble(bounds.getMaxX());
+                out.writeDouble(bounds.getMaxY());
+            }
+            for (int i = 0; i < nodeCount; i++) {
+                out.writeDouble(minX[i]);
+                out.writeDouble(minY[i]);
+                out.writeDouble(maxX[i]);
+                out.writeDouble(maxY[i]);
+                out.writeLong(nodeOffsets[i]);
+                out.writeInt(nodeLengths[i]);
+            }
+
+            // the identifiers, sorted by hash and then by offset
+            long[] keys = new long[size];
+            for (int i = 0; i < size; i++) {
+                keys[i] = ((long) hashes[i] << 32) | i;
+            }
+            Arrays.sort(keys);
+            for (int i = 0; i < size; i++) {
+                int k = (int) (keys[i] & 0xFFFFFFFFL);
+                out.writeInt(hashes[k]);
+                out.writeLong(offsets[k]);
+                out.writeInt(lengths[k]);
+            }
+        }
+
+        /**
+         * @return the entries sorted along the hilbert curve of their centers, those without
+         *         geometry last
+         */
+        int[] hilbertOrder() {
+            double width = bounds.isNull() ? 0 : bounds.getWidth();
+            double height = bounds.isNull() ? 0 : bounds.getHeight();
+            long[] keys = new long[size];
+            for (int i = 0; i < size; i++) {
+                long hilbert;
+                if (Double.isNaN(envelopes[4 * i])) {
+                    hilbert = 0xFFFFFFFFL;
+                } else {
+                    double x = (envelopes[4 * i] + envelopes[4 * i + 2]) / 2;
+                    double y = (envelopes[4 * i + 1] + envelopes[4 * i + 3]) / 2;
+                    int hx = width > 0 ? (int) (0xFFFF * (x - bounds.getMinX()) / width) : 0;
+                    int hy = height > 0 ? (int) (0xFFFF * (y - bounds.getMinY()) / height) : 0;
+                    hilbert = hilbert(hx, hy);
+                }
+                keys[i] = (hilbert << 32) | i;
+            }
+            // the hilbert values are unsigned 32 bits, shifted they sort as signed longs
+            for (int i = 0; i < size; i++) {
+                keys[i] ^= Long.MIN_VALUE;
+            }
+            Arrays.sort(keys);
+            int[] order = new int[size];
+            for (int i = 0; i < size; i++) {
+                order[i] = (int) (keys[i] & 0xFFFFFFFFL);
+            }
+            return order;
+        }
+    }
+
+    /**
+     * @return the position of a point along the hilbert curve of a 65536 x 65536 grid
+     */
+    static long hilbert(int x, int y) {
+        int a = x ^ y;
+        int b = 0xFFFF ^ a;
+        int c = 0xFFFF ^ (x | y);
+        int d = x & (y ^ 0xFFFF);
+
+        int A = a | (b >> 1);
+        int B = (a >> 1) ^ a;
+        int C = ((c >> 1) ^ (b & (d >> 1))) ^ c;
+        int D = ((a & (c >> 1)) ^ (d >> 1)) ^ d;
+
+        a = A;
+        b = B;
+        c = C;
+        d = D;
+        A = ((a & (a >> 2)) ^ (b & (b >> 2)));
+        B = ((a & (b >> 2)) ^ (b & ((a ^ b) >> 2)));
+        C ^= ((a & (c >> 2)) ^ (b & (d >> 2)));
+        D ^= ((b & (c >> 2)) ^ ((a ^ b) & (d >> 2)));
+
+        a = A;
+        b = B;
+        c = C;
+        d = D;
+        A = ((a & (a >> 4)) ^ (b & (b >> 4)));
+        B = ((a & (b >> 4)) ^ (b & ((a ^ b) >> 4)));
+        C ^= ((a & (c >> 4)) ^ (b & (d >> 4)));
+        D ^= ((b & (c >> 4)) ^ ((a ^ b) & (d >> 4)));
+
+        a = A;
+        b = B;
+        c = C;
+        d = D;
+        C ^= ((a & (c >> 8)) ^ (b & (d >> 8)));
+        D ^= ((b & (c >> 8)) ^ ((a ^ b) & (d >> 8)));
+
+        a = C ^ (C >> 1);
+        b = D ^ (D >> 1);
+
+        int i0 = x ^ y;
+        int i1 = b | (0xFFFF ^ (i0 | a));
+
+        i0 = (i0 | (i0 << 8)) & 0x00FF00FF;
+        i0 = (i0 | (i0 << 4)) & 0x0F0F0F0F;
+        i0 = (i0 | (i0 << 2)) & 0x33333333;
+        i0 = (i0 | (i0 << 1)) & 0x55555555;
+
+        i1 = (i1 | (i1 << 8)) & 0x00FF00FF;
+        i1 = (i1 | (i1 << 4)) & 0x0F0F0F0F;
+        i1 = (i1 | (i1 << 2)) & 0x33333333;
+        i1 = (i1 | (i1 << 1)) & 0x55555555;
+
+        return ((i1 << 1) | i0) & 0xFFFFFFFFL;
+    }
+}
@@ -0,0 +1,128 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2013, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.geojson.stream;
+
+import org.geotools.math.XMath;
+
+/**
+ * Formats doubles in plain decimal notation with the fewest digits that read back as the same
+ * value, optionally capping the number of decimals.
+ * <p>
+ * The number of decimals reading back as the same value is found with
+ * {@link XMath#shortestDecimalFractionDigits(double, int)}, without going through strings. When
+ * there is none within the decimals cap the value is rounded at the cap, and values too large or
+ * too small for the exact arithmetic fall back on {@link Double#toString(double)}.
+ * </p>
+ * <p>
+ * Instances are immutable and can be shared among threads.
+ * </p>
+ * 
+ * @source $URL$
+ */
+public class DoubleFormatter {
+
+    /** the most decimals the exact arithmetic can handle */
+    public static final int MAX_DECIMALS = 17;
+
+    /** the largest value whose integers are all exactly representable as doubles */
+    private static final double MAX_EXACT = 1L << 53;
+
+    private static final long[] LONG_POW10 = new long[MAX_DECIMALS + 1];
+    static {
+        LONG_POW10[0] = 1;
+        for (int i = 1; i <= MAX_DECIMALS; i++) {
+            LONG_POW10[i] = LONG_POW10[i - 1] * 10;
+        }
+    }
+
+    private final int decimals;
+
+    /**
+     * Creates a formatter writing the shortest exact representation of values
+     */
+    public DoubleFormatter() {
+        this(-1);
+    }
+
+    /**
+     * Creates a formatter rounding values to the specified number of decimals, or writing their
+     * shortest exact representation if negative
+     */
+    public DoubleFormatter(int decimals) {
+        this.decimals = decimals;
+    }
+
+    /**
+     * @return the number of decimals values are rounded to, negative if not rounded
+     */
+    public int getDecimals() {
+        return decimals;
+    }
+
+    /**
+     * Appends the formatted value to the buffer
+     */
+    public StringBuilder format(double value, StringBuilder sb) {
+        double abs = Math.abs(value);
+        int max = decimals < 0 || decimals > MAX_DECIMALS ? MAX_DECIMALS : decimals;
+        int shortest = XMath.shortestDecimalFractionDigits(abs, max);
+        if (shortest >= 0) {
+            return append(value < 0, Math.round(abs * XMath.pow10(shortest)), shortest, sb);
+        }
+        if (decimals >= 0 && decimals <= MAX_DECIMALS) {
+            double scaled = abs * XMath.pow10(decimals);
+            if (scaled < MAX_EXACT) {
+                return append(value < 0, Math.round(scaled), decimals, sb);
+            }
+        }
+        // NaN, infinities and values outside of the exact range
+        return sb.append(value);
+    }
+
+    /**
+     * @return the formatted value
+     */
+    public String format(double value) {
+        return format(value, new StringBuilder(24)).toString();
+    }
+
+    private static StringBuilder append(boolean negative, long digits, int decimals,
+            StringBuilder sb) {
+        if (digits == 0) {
+            return sb.append('0');
+        }
+        // drop the trailing zeros
+        while (decimals > 0 && digits % 10 == 0) {
+            digits /= 10;
+            decimals--;
+        }
+        if (negative) {
+            sb.append('-');
+        }
+        long pow = LONG_POW10[decimals];
+        sb.append(digits / pow);
+        if (decimals > 0) {
+            sb.append('.');
+            long fraction = digits % pow;
+            for (long p = pow / 10; p > fraction && p > 1; p /= 10) {
+                sb.append('0');
+            }
+            sb.append(fraction);
+        }
+        return sb;
+    }
+}
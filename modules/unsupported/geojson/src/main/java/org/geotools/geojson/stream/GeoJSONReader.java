@@ -0,0 +1,843 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2013, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.geojson.stream;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.geotools.feature.FeatureIterator;
+import org.geotools.feature.simple.SimpleFeatureBuilder;
+import org.geotools.feature.simple.SimpleFeatureTypeBuilder;
+import org.geotools.geojson.GeoJSONUtil;
+import org.geotools.geojson.stream.GeoJSONTokenizer.Token;
+import org.geotools.referencing.CRS;
+import org.geotools.util.Converters;
+import org.geotools.util.logging.Logging;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
+import org.opengis.feature.type.AttributeDescriptor;
+import org.opengis.referencing.crs.CoordinateReferenceSystem;
+
+import com.vividsolutions.jts.geom.CoordinateSequence;
+import com.vividsolutions.jts.geom.CoordinateSequenceFactory;
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.GeometryFactory;
+import com.vividsolutions.jts.geom.LineString;
+import com.vividsolutions.jts.geom.LinearRing;
+import com.vividsolutions.jts.geom.Polygon;
+
+/**
+ * Streams the features of a GeoJSON document, pulling tokens out of the raw bytes.
+ * <p>
+ * Unlike {@link org.geotools.geojson.feature.FeatureJSON#streamFeatureCollection(Object)}, which
+ * goes through a char stream and boxes every ordinate, coordinates are parsed straight into
+ * primitive arrays and then into the {@link CoordinateSequence} of the geometry factory, and only
+ * the current feature is held in memory, so that arbitrarily large collections can be read.
+ * </p>
+ * <p>
+ * The document can be either a FeatureCollection or a single Feature. The feature type can be
+ * provided up front with {@link #setFeatureType(SimpleFeatureType)}, in which case the values are
+ * converted to the attribute bindings and the properties not in the type are skipped. Otherwise it
+ * is inferred from the first {@link #setSampleSize(int) sample} features, which are buffered in
+ * the meantime: properties appearing only after the sample are dropped. The inferred type is
+ * structured as the one built by {@link org.geotools.geojson.feature.FeatureJSON}, the geometry
+ * being held by a default "geometry" attribute.
+ * </p>
+ * <p>
+ * The reader records the byte offsets delimiting the last feature read, which allow indexing a
+ * document and later reading a single feature with {@link #readFeature()} out of a stream
+ * positioned at its offset.
+ * </p>
+ * 
+ * @source $URL$
+ */
+public class GeoJSONReader implements FeatureIterator<SimpleFeature> {
+
+    static final Logger LOGGER = Logging.getLogger(GeoJSONReader.class);
+
+    /** the default number of features the feature type is inferred from */
+    public static final int DEFAULT_SAMPLE_SIZE = 100;
+
+    private final GeoJSONTokenizer tokenizer;
+
+    private final GeometryFactory geometryFactory;
+
+    private final CoordinateSequenceFactory sequenceFactory;
+
+    private final SimpleDateFormat dateFormat;
+
+    private SimpleFeatureType featureType;
+
+    private String typeName = "feature";
+
+    private String idPrefix;
+
+    private int sampleSize = DEFAULT_SAMPLE_SIZE;
+
+    private CoordinateReferenceSystem crs;
+
+    private SimpleFeatureBuilder builder;
+
+    private Map<String, Integer> indexes;
+
+    /** the attribute holding the feature geometry, null if none */
+    private String geometryName;
+
+    private int geometryIndex = -1;
+
+    private boolean started;
+
+    /** true when reading the members of a feature collection */
+    private boolean collection;
+
+    private boolean done;
+
+    /** the raw features read ahead while inferring the feature type */
+    private LinkedList<RawFeature> sample;
+
+    private final RawFeature raw = new RawFeature();
+
+    private SimpleFeature next;
+
+    private long featureStart = -1;
+
+    private long featureEnd = -1;
+
+    /** ordinates of the positions being parsed, three slots per position */
+    private double[] ordinates = new double[3 * 64];
+
+    private int positions;
+
+    private int dimension;
+
+    public GeoJSONReader(InputStream in) {
+        this(in, new GeometryFactory());
+    }
+
+    public GeoJSONReader(InputStream in, GeometryFactory geometryFactory) {
+        this(new GeoJSONTokenizer(in), geometryFactory);
+    }
+
+    /**
+     * Reads the tokens of the specified tokenizer, which allows reading from a stream positioned
+     * at an arbitrary offset
+     */
+    public GeoJSONReader(GeoJSONTokenizer tokenizer, GeometryFactory geometryFactory) {
+        this.tokenizer = tokenizer;
+        this.geometryFactory = geometryFactory;
+        this.sequenceFactory = geometryFactory.getCoordinateSequenceFactory();
+        this.dateFormat = (SimpleDateFormat) GeoJSONUtil.DATE_FORMAT.clone();
+    }
+
+    /**
+     * Sets the feature type of the features, instead of inferring it
+     */
+    public void setFeatureType(SimpleFeatureType featureType) {
+        this.featureType = featureType;
+        this.geometryName = featureType.getGeometryDescriptor() != null ? featureType
+                .getGeometryDescriptor().getLocalName() : null;
+        this.builder = null;
+    }
+
+    /**
+     * Returns the feature type of the features, inferring it from the first features when not
+     * provided
+     */
+    public SimpleFeatureType getFeatureType() throws IOException {
+        if (featureType == null) {
+            inferFeatureType();
+        }
+        return featureType;
+    }
+
+    /**
+     * Sets the name of the inferred feature type, "feature" by default
+     */
+    public void setTypeName(String typeName) {
+        this.typeName = typeName;
+    }
+
+    /**
+     * Sets the prefix of the identifiers given to features without one, which are then followed
+     * by the byte offset of the feature and thus stable among reads. When not set such features
+     * get random identifiers.
+     */
+    public void setIdPrefix(String idPrefix) {
+        this.idPrefix = idPrefix;
+    }
+
+    /**
+     * Sets the number of features the feature type is inferred from
+     */
+    public void setSampleSize(int sampleSize) {
+        this.sampleSize = Math.max(1, sampleSize);
+    }
+
+    /**
+     * Returns the crs declared by the document, or by the first feature, if any
+     */
+    public CoordinateReferenceSystem getCRS() {
+        return crs;
+    }
+
+    public void setCRS(CoordinateReferenceSystem crs) {
+        this.crs = crs;
+    }
+
+    /**
+     * @return the byte offset at which the last feature returned starts
+     */
+    public long getFeatureStart() {
+        return featureStart;
+    }
+
+    /**
+     * @return the byte offset right after the last feature returned
+     */
+    public long getFeatureEnd() {
+        return featureEnd;
+    }
+
+    /**
+     * Reads the next feature of the document
+     * 
+     * @return the next feature, or null when there are no more
+     */
+    public SimpleFeature read() throws IOException {
+        if (featureType == null) {
+            inferFeatureType();
+        }
+        if (sample != null && !sample.isEmpty()) {
+            RawFeature feature = sample.removeFirst();
+            featureStart = feature.start;
+            featureEnd = feature.end;
+            return build(feature);
+        }
+        sample = null;
+        if (!readRaw(raw)) {
+            return null;
+        }
+        featureStart = raw.start;
+        featureEnd = raw.end;
+        return build(raw);
+    }
+
+    /**
+     * Reads a single Feature object the stream is positioned at, such as one previously located
+     * by {@link #getFeatureStart()}. The feature type must have been set.
+     */
+    public SimpleFeature readFeature() throws IOException {
+        if (featureType == null) {
+            throw new IllegalStateException("The feature type must be set to read single features");
+        }
+        Token token = tokenizer.next();
+        if (token != Token.START_OBJECT) {
+            throw new IOException("Expected a feature object " + tokenizer.getLocation());
+        }
+        raw.clear();
+        raw.start = tokenizer.getTokenOffset();
+        readFeatureMembers(raw);
+        raw.end = tokenizer.getOffset();
+        featureStart = raw.start;
+        featureEnd = raw.end;
+        return build(raw);
+    }
+
+    public boolean hasNext() {
+        if (next == null && !done) {
+            try {
+                next = read();
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+            done = next == null;
+        }
+        return next != null;
+    }
+
+    public SimpleFeature next() throws NoSuchElementException {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        SimpleFeature feature = next;
+        next = null;
+        return feature;
+    }
+
+    /**
+     * Stops reading; the stream is left to the caller to close
+     */
+    public void close() {
+        done = true;
+        next = null;
+        sample = null;
+    }
+
+    //
+    // feature type
+    //
+    private void inferFeatureType() throws IOException {
+        sample = new LinkedList<RawFeature>();
+        Map<String, Class<?>> bindings = new LinkedHashMap<String, Class<?>>();
+        Class<?> geometryBinding = null;
+        while (sample.size() < sampleSize) {
+            RawFeature feature = new RawFeature();
+            if (!readRaw(feature)) {
+                break;
+            }
+            sample.add(feature);
+            if (feature.geometry != null) {
+                geometryBinding = merge(geometryBinding, feature.geometry.getClass());
+            }
+            for (int i = 0; i < feature.names.size(); i++) {
+                String name = feature.names.get(i);
+                Object value = feature.values.get(i);
+                Class<?> binding = bindings.get(name);
+                if (value != null) {
+                    bindings.put(name, merge(binding, value.getClass()));
+                } else if (!bindings.containsKey(name)) {
+                    bindings.put(name, null);
+                }
+            }
+        }
+
+        SimpleFeatureTypeBuilder typeBuilder = new SimpleFeatureTypeBuilder();
+        typeBuilder.setName(typeName);
+        typeBuilder.setNamespaceURI("http://geotools.org");
+        typeBuilder.setCRS(crs);
+        for (Map.Entry<String, Class<?>> entry : bindings.entrySet()) {
+            Class<?> binding = entry.getValue();
+            typeBuilder.add(entry.getKey(), binding != null ? binding : Object.class);
+        }
+        geometryName = null;
+        if (geometryBinding != null && !bindings.containsKey("geometry")) {
+            geometryName = "geometry";
+            typeBuilder.add(geometryName, geometryBinding);
+            typeBuilder.setDefaultGeometry(geometryName);
+        }
+        featureType = typeBuilder.buildFeatureType();
+        builder = null;
+    }
+
+    /**
+     * Merges the bindings of the values of a same property
+     */
+    static Class<?> merge(Class<?> binding, Class<?> other) {
+        if (binding == null || binding == other) {
+            return other;
+        }
+        if (Number.class.isAssignableFrom(binding) && Number.class.isAssignableFrom(other)) {
+            return Double.class;
+        }
+        if (Geometry.class.isAssignableFrom(binding) && Geometry.class.isAssignableFrom(other)) {
+            return Geometry.class;
+        }
+        if (List.class.isAssignableFrom(binding) && List.class.isAssignableFrom(other)) {
+            return List.class;
+        }
+        if (Map.class.isAssignableFrom(binding) && Map.class.isAssignableFrom(other)) {
+            return Map.class;
+        }
+        if (isScalar(binding) && isScalar(other)) {
+            return String.class;
+        }
+        return Object.class;
+    }
+
+    static boolean isScalar(Class<?> binding) {
+        return binding == String.class || binding == Boolean.class
+                || Number.class.isAssignableFrom(binding);
+    }
+
+    //
+    // features
+    //
+    private SimpleFeature build(RawFeature feature) throws IOException {
+        if (builder == null) {
+            builder = new SimpleFeatureBuilder(featureType);
+            indexes = new HashMap<String, Integer>();
+            List<AttributeDescriptor> descriptors = featureType.getAttributeDescriptors();
+            for (int i = 0; i < descriptors.size(); i++) {
+                indexes.put(descriptors.get(i).getLocalName(), i);
+            }
+            geometryIndex = geometryName != null ? featureType.indexOf(geometryName) : -1;
+        }
+
+        for (int i = 0; i < feature.names.size(); i++) {
+            Integer index = indexes.get(feature.names.get(i));
+            if (index != null && index != geometryIndex) {
+                set(index, feature.values.get(i));
+            }
+        }
+        if (geometryIndex >= 0) {
+            set(geometryIndex, feature.geometry);
+        }
+        String id = feature.id;
+        if (id == null && idPrefix != null) {
+            id = idPrefix + feature.start;
+        }
+        return builder.buildFeature(id);
+    }
+
+    private void set(int index, Object value) throws IOException {
+        Class<?> binding = featureType.getDescriptor(index).getType().getBinding();
+        if (value != null && !binding.isInstance(value)) {
+            Object converted = null;
+            if (Date.class.isAssignableFrom(binding) && value instanceof String) {
+                try {
+                    converted = Converters.convert(dateFormat.parse((String) value), binding);
+                } catch (ParseException e) {
+                    // fall back on the converters
+                }
+            }
+            if (converted == null) {
+                converted = Converters.convert(value, binding);
+            }
+            if (converted == null && LOGGER.isLoggable(Level.FINE)) {
+                LOGGER.fine("Could not convert " + value + " to " + binding.getSimpleName()
+                        + " for " + featureType.getDescriptor(index).getLocalName());
+            }
+            value = converted;
+        }
+        builder.set(index, value);
+    }
+
+    /**
+     * Reads the next raw feature of the document
+     * 
+     * @return false when there are no more features
+     */
+    private boolean readRaw(RawFeature feature) throws IOException {
+        feature.clear();
+        if (!started) {
+            started = true;
+            return readDocument(feature);
+        }
+        if (!collection) {
+            return false;
+        }
+        Token token = tokenizer.next();
+        if (token == Token.END_ARRAY) {
+            collection = false;
+            return false;
+        }
+        if (token != Token.START_OBJECT) {
+            throw new IOException("Expected a feature object " + tokenizer.getLocation());
+        }
+        feature.start = tokenizer.getTokenOffset();
+        readFeatureMembers(feature);
+        feature.end = tokenizer.getOffset();
+        return true;
+    }
+
+    /**
+     * Reads the top level object up to the first feature of a collection, or the whole object
+     * for a single feature
+     */
+    private boolean readDocument(RawFeature feature) throws IOException {
+        Token token = tokenizer.next();
+        if (token != Token.START_OBJECT) {
+            throw new IOException("Expected a GeoJSON object " + tokenizer.getLocation());
+        }
+        feature.start = tokenizer.getTokenOffset();
+        while ((token = tokenizer.next()) == Token.FIELD_NAME) {
+            String name = tokenizer.getString();
+            if ("features".equals(name)) {
+                if (tokenizer.next() != Token.START_ARRAY) {
+                    throw new IOException("Expected the features array "
+                            + tokenizer.getLocation());
+                }
+                collection = true;
+                return readRaw(feature);
+            }
+            readFeatureMember(name, feature);
+        }
+        feature.end = tokenizer.getOffset();
+        // a single feature
+        return "Feature".equals(feature.type)
+                || (feature.type == null && (feature.geometry != null || !feature.names.isEmpty()));
+    }
+
+    private void readFeatureMembers(RawFeature feature) throws IOException {
+        Token token;
+        while ((token = tokenizer.next()) == Token.FIELD_NAME) {
+            readFeatureMember(tokenizer.getString(), feature);
+        }
+        if (token != Token.END_OBJECT) {
+            throw new IOException("Unexpected " + token + " " + tokenizer.getLocation());
+        }
+    }
+
+    private void readFeatureMember(String name, RawFeature feature) throws IOException {
+        Token token = tokenizer.next();
+        if ("type".equals(name) && token == Token.STRING) {
+            feature.type = tokenizer.getString();
+        } else if ("id".equals(name)) {
+            Object id = readValue(token);
+            feature.id = id != null ? id.toString() : null;
+        } else if ("geometry".equals(name)) {
+            Object geometry = readValue(token);
+            if (geometry != null && !(geometry instanceof Geometry)) {
+                throw new IOException("Invalid geometry " + tokenizer.getLocation());
+            }
+            feature.geometry = (Geometry) geometry;
+        } else if ("properties".equals(name) && token == Token.START_OBJECT) {
+            while ((token = tokenizer.next()) == Token.FIELD_NAME) {
+                feature.names.add(tokenizer.getString());
+                feature.values.add(readValue(tokenizer.next()));
+            }
+        } else if ("crs".equals(name)) {
+            Object value = readValue(token);
+            if (crs == null && value instanceof Map) {
+                crs = decodeCRS((Map<?, ?>) value);
+            }
+        } else {
+            // bbox and foreign members
+            tokenizer.skipValue(token);
+        }
+    }
+
+    /**
+     * Reads a value as a String, Long, Double, Boolean, List, Map or, for objects defining a
+     * geometry, Geometry
+     */
+    private Object readValue(Token token) throws IOException {
+        switch (token) {
+        case STRING:
+            return tokenizer.getString();
+        case NUMBER:
+            return tokenizer.isIntegral() ? (Object) tokenizer.getLong() : (Object) tokenizer
+                    .getDouble();
+        case TRUE:
+            return Boolean.TRUE;
+        case FALSE:
+            return Boolean.FALSE;
+        case NULL:
+            return null;
+        case START_ARRAY:
+            List<Object> list = new ArrayList<Object>();
+            while ((token = tokenizer.next()) != Token.END_ARRAY) {
+                list.add(readValue(token));
+            }
+            return list;
+        case START_OBJECT:
+            return readObject();
+        default:
+            throw new IOException("Unexpected " + token + " " + tokenizer.getLocation());
+        }
+    }
+
+    private Object readObject() throws IOException {
+        String type = null;
+        Object coordinates = null;
+        List<Geometry> geometries = null;
+        Map<String, Object> map = null;
+        Token token;
+        while ((token = tokenizer.next()) == Token.FIELD_NAME) {
+            String name = tokenizer.getString();
+            token = tokenizer.next();
+            if ("type".equals(name) && token == Token.STRING) {
+                type = tokenizer.getString();
+            } else if ("coordinates".equals(name) && token == Token.START_ARRAY) {
+                coordinates = readCoordinates(tokenizer.next());
+            } else if ("geometries".equals(name) && token == Token.START_ARRAY) {
+                geometries = new ArrayList<Geometry>();
+                while ((token = tokenizer.next()) != Token.END_ARRAY) {
+                    Object geometry = readValue(token);
+                    if (!(geometry instanceof Geometry)) {
+                        throw new IOException("Invalid geometry " + tokenizer.getLocation());
+                    }
+                    geometries.add((Geometry) geometry);
+                }
+            } else if ("bbox".equals(name) || "crs".equals(name)) {
+                tokenizer.skipValue(token);
+            } else {
+                if (map == null) {
+                    map = new LinkedHashMap<String, Object>();
+                }
+                map.put(name, readValue(token));
+            }
+        }
+        if (coordinates != null) {
+            return createGeometry(type, coordinates);
+        }
+        if (geometries != null && "GeometryCollection".equals(type)) {
+            return geometryFactory.createGeometryCollection(geometries
+                    .toArray(new Geometry[geometries.size()]));
+        }
+        if (map == null) {
+            map = new LinkedHashMap<String, Object>();
+        }
+        if (type != null) {
+            map.put("type", type);
+        }
+        return map;
+    }
+
+    //
+    // geometries
+    //
+    /**
+     * Reads a coordinates array, the opening bracket being consumed and the first token inside
+     * it being given.
+     * 
+     * @return a double[] for a single position, a {@link CoordinateSequence} for an array of
+     *         positions, or a list of the nested arrays otherwise
+     */
+    private Object readCoordinates(Token first) throws IOException {
+        if (first == Token.NUMBER) {
+            positions = 0;
+            dimension = 2;
+            readPosition();
+            double[] position = new double[dimension];
+            System.arraycopy(ordinates, 0, position, 0, dimension);
+            return position;
+        }
+        if (first == Token.END_ARRAY) {
+            return new ArrayList<Object>();
+        }
+        if (first != Token.START_ARRAY) {
+            throw new IOException("Invalid coordinates " + tokenizer.getLocation());
+        }
+        Token token = tokenizer.next();
+        if (token == Token.NUMBER) {
+            // an array of positions
+            positions = 0;
+            dimension = 2;
+            readPosition();
+            while ((token = tokenizer.next()) != Token.END_ARRAY) {
+                if (token != Token.START_ARRAY || tokenizer.next() != Token.NUMBER) {
+                    throw new IOException("Invalid position " + tokenizer.getLocation());
+                }
+                readPosition();
+            }
+            return createSequence();
+        }
+        List<Object> nested = new ArrayList<Object>();
+        nested.add(readCoordinates(token));
+        while ((token = tokenizer.next()) != Token.END_ARRAY) {
+            if (token != Token.START_ARRAY) {
+                throw new IOException("Invalid coordinates " + tokenizer.getLocation());
+            }
+            nested.add(readCoordinates(tokenizer.next()));
+        }
+        return nested;
+    }
+
+    /**
+     * Reads the ordinates of a position, the first one being the current token, into the next
+     * slots of the ordinate buffer; ordinates past the third are ignored
+     */
+    private void readPosition() throws IOException {
+        if (3 * positions + 3 > ordinates.length) {
+            double[] grown = new double[ordinates.length * 2];
+            System.arraycopy(ordinates, 0, grown, 0, 3 * positions);
+            ordinates = grown;
+        }
+        int offset = 3 * positions;
+        ordinates[offset] = tokenizer.getDouble();
+        ordinates[offset + 2] = Double.NaN;
+        int count = 1;
+        Token token;
+        while ((token = tokenizer.next()) == Token.NUMBER) {
+            if (count < 3) {
+                ordinates[offset + count] = tokenizer.getDouble();
+            }
+            count++;
+        }
+        if (token != Token.END_ARRAY || count < 2) {
+            throw new IOException("Invalid position " + tokenizer.getLocation());
+        }
+        if (count > 2) {
+            dimension = 3;
+        }
+        positions++;
+    }
+
+    private CoordinateSequence createSequence() {
+        CoordinateSequence sequence = sequenceFactory.create(positions, dimension);
+        for (int i = 0; i < positions; i++) {
+            sequence.setOrdinate(i, CoordinateSequence.X, ordinates[3 * i]);
+            sequence.setOrdinate(i, CoordinateSequence.Y, ordinates[3 * i + 1]);
+            if (dimension > 2) {
+                sequence.setOrdinate(i, CoordinateSequence.Z, ordinates[3 * i + 2]);
+            }
+        }
+        return sequence;
+    }
+
+    private Geometry createGeometry(String type, Object coordinates) throws IOException {
+        boolean empty = coordinates instanceof List && ((List<?>) coordinates).isEmpty();
+        if ("Point".equals(type)) {
+            if (empty) {
+                return geometryFactory.createPoint((CoordinateSequence) null);
+            }
+            if (coordinates instanceof double[]) {
+                double[] position = (double[]) coordinates;
+                CoordinateSequence sequence = sequenceFactory.create(1, position.length);
+                for (int i = 0; i < position.length; i++) {
+                    sequence.setOrdinate(0, i, position[i]);
+                }
+                return geometryFactory.createPoint(sequence);
+            }
+        } else if ("LineString".equals(type)) {
+            if (empty || coordinates instanceof CoordinateSequence) {
+                return geometryFactory.createLineString(sequence(coordinates));
+            }
+        } else if ("MultiPoint".equals(type)) {
+            if (empty || coordinates instanceof CoordinateSequence) {
+                return geometryFactory.createMultiPoint(sequence(coordinates));
+            }
+        } else if ("Polygon".equals(type)) {
+            if (empty) {
+                return geometryFactory.createPolygon(null, null);
+            }
+            if (isList(coordinates, CoordinateSequence.class)) {
+                return createPolygon((List<?>) coordinates);
+            }
+        } else if ("MultiLineString".equals(type)) {
+            if (empty) {
+                return geometryFactory.createMultiLineString(null);
+            }
+            if (isList(coordinates, CoordinateSequence.class)) {
+                List<?> list = (List<?>) coordinates;
+                LineString[] lines = new LineString[list.size()];
+                for (int i = 0; i < lines.length; i++) {
+                    lines[i] = geometryFactory.createLineString((CoordinateSequence) list.get(i));
+                }
+                return geometryFactory.createMultiLineString(lines);
+            }
+        } else if ("MultiPolygon".equals(type)) {
+            if (empty) {
+                return geometryFactory.createMultiPolygon(null);
+            }
+            if (isList(coordinates, List.class)) {
+                List<?> list = (List<?>) coordinates;
+                Polygon[] polygons = new Polygon[list.size()];
+                for (int i = 0; i < polygons.length; i++) {
+                    List<?> rings = (List<?>) list.get(i);
+                    if (!rings.isEmpty() && !isList(rings, CoordinateSequence.class)) {
+                        break;
+                    }
+                    polygons[i] = rings.isEmpty() ? geometryFactory.createPolygon(null, null)
+                            : createPolygon(rings);
+                }
+                if (polygons.length == 0 || polygons[polygons.length - 1] != null) {
+                    return geometryFactory.createMultiPolygon(polygons);
+                }
+            }
+        } else {
+            throw new IOException("Unknown geometry type " + type + " "
+                    + tokenizer.getLocation());
+        }
+        throw new IOException("Invalid coordinates for " + type + " " + tokenizer.getLocation());
+    }
+
+    private CoordinateSequence sequence(Object coordinates) {
+        return coordinates instanceof CoordinateSequence ? (CoordinateSequence) coordinates
+                : sequenceFactory.create(0, 2);
+    }
+
+    private Polygon createPolygon(List<?> rings) {
+        LinearRing shell = geometryFactory.createLinearRing((CoordinateSequence) rings.get(0));
+        LinearRing[] holes = new LinearRing[rings.size() - 1];
+        for (int i = 0; i < holes.length; i++) {
+            holes[i] = geometryFactory.createLinearRing((CoordinateSequence) rings.get(i + 1));
+        }
+        return geometryFactory.createPolygon(shell, holes);
+    }
+
+    private static boolean isList(Object coordinates, Class<?> elements) {
+        if (!(coordinates instanceof List)) {
+            return false;
+        }
+        for (Object element : (List<?>) coordinates) {
+            if (!elements.isInstance(element)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Decodes a named or EPSG crs object, as {@link org.geotools.geojson.feature.FeatureJSON}
+     * does
+     */
+    static CoordinateReferenceSystem decodeCRS(Map<?, ?> object) {
+        Object properties = object.get("properties");
+        if (!(properties instanceof Map)) {
+            return null;
+        }
+        Object value = ((Map<?, ?>) properties).get("name");
+        if (value == null) {
+            value = ((Map<?, ?>) properties).get("code");
+        }
+        if (value == null) {
+            return null;
+        }
+        try {
+            return CRS.decode(value.toString());
+        } catch (Exception e) {
+            try {
+                return CRS.decode("EPSG:" + value.toString());
+            } catch (Exception e1) {
+                LOGGER.log(Level.FINE, "Could not decode crs " + value, e1);
+                return null;
+            }
+        }
+    }
+
+    /**
+     * The members of a feature as they are read
+     */
+    static class RawFeature {
+        String type;
+
+        String id;
+
+        Geometry geometry;
+
+        List<String> names = new ArrayList<String>();
+
+        List<Object> values = new ArrayList<Object>();
+
+        long start;
+
+        long end;
+
+        void clear() {
+            type = null;
+            id = null;
+            geometry = null;
+            names.clear();
+            values.clear();
+            start = end = -1;
+        }
+    }
+}
@@ -0,0 +1,603 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2013, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.geojson.stream;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * A pull tokenizer reading json straight out of UTF-8 bytes.
+ * <p>
+ * Numbers are parsed in place into primitive values, without going through strings for the
+ * common case, and member names are recycled among objects, so that scanning large documents
+ * allocates little more than the string values. The tokenizer is lenient about separators: it
+ * tells member names from string values but does not validate the position of commas and
+ * colons.
+ * </p>
+ * <p>
+ * The tokenizer tracks the absolute byte offset of each token, which allows recording the
+ * position of values in the stream and reading them back later from there.
+ * </p>
+ * 
+ * @source $URL$
+ */
+public class GeoJSONTokenizer {
+
+    /**
+     * The json tokens
+     */
+    public static enum Token {
+        START_OBJECT, END_OBJECT, START_ARRAY, END_ARRAY, FIELD_NAME, STRING, NUMBER, TRUE, FALSE,
+        NULL, EOF
+    }
+
+    private static final double[] POW10 = new double[23];
+    static {
+        POW10[0] = 1;
+        for (int i = 1; i < POW10.length; i++) {
+            POW10[i] = POW10[i - 1] * 10;
+        }
+    }
+
+    /** the largest mantissa exactly representable as a double */
+    private static final long MAX_EXACT = 1L << 53;
+
+    private static final int NAME_CACHE_SIZE = 256;
+
+    private InputStream in;
+
+    private final byte[] buffer;
+
+    private int position;
+
+    private int limit;
+
+    /** the absolute offset of the first byte in the buffer */
+    private long bufferOffset;
+
+    private long tokenOffset;
+
+    /** object nesting, true for objects and false for arrays */
+    private boolean[] stack = new boolean[32];
+
+    private int depth;
+
+    private boolean expectName;
+
+    private char[] chars = new char[64];
+
+    private int length;
+
+    private byte[] digits = new byte[32];
+
+    private final String[] names = new String[NAME_CACHE_SIZE];
+
+    private String string;
+
+    private double number;
+
+    private long longValue;
+
+    private boolean integral;
+
+    /**
+     * Tokenizes a stream positioned at its beginning
+     */
+    public GeoJSONTokenizer(InputStream in) {
+        this(in, 0);
+    }
+
+    /**
+     * Tokenizes a stream positioned at the given offset, for instance right where a previously
+     * recorded value starts
+     */
+    public GeoJSONTokenizer(InputStream in, long offset) {
+        this.in = in;
+        this.buffer = new byte[64 * 1024];
+        this.bufferOffset = offset;
+    }
+
+    /**
+     * Restarts tokenizing on a new stream positioned at the given offset, recycling the buffers
+     */
+    public void reset(InputStream in, long offset) {
+        this.in = in;
+        this.bufferOffset = offset;
+        this.position = 0;
+        this.limit = 0;
+        this.depth = 0;
+        this.expectName = false;
+    }
+
+    /**
+     * @return the next token
+     */
+    public Token next() throws IOException {
+        int c = skipSeparators();
+        tokenOffset = bufferOffset + position - 1;
+        switch (c) {
+        case -1:
+            tokenOffset = getOffset();
+            return Token.EOF;
+        case '{':
+            push(true);
+            expectName = true;
+            return Token.START_OBJECT;
+        case '}':
+            pop();
+            return Token.END_OBJECT;
+        case '[':
+            push(false);
+            expectName = false;
+            return Token.START_ARRAY;
+        case ']':
+            pop();
+            return Token.END_ARRAY;
+        case '"':
+            if (expectName) {
+                expectName = false;
+                readString();
+                string = name();
+                return Token.FIELD_NAME;
+            }
+            readString();
+            string = new String(chars, 0, length);
+            return Token.STRING;
+        case 't':
+            literal("rue");
+            return Token.TRUE;
+        case 'f':
+            literal("alse");
+            return Token.FALSE;
+        case 'n':
+            literal("ull");
+            return Token.NULL;
+        default:
+            if (c == '-' || (c >= '0' && c <= '9')) {
+                readNumber(c);
+                return Token.NUMBER;
+            }
+            throw error("Unexpected character '" + (char) c + "'");
+        }
+    }
+
+    /**
+     * Skips the value starting with the given token, that is, the whole object or array if the
+     * token starts one
+     */
+    public void skipValue(Token token) throws IOException {
+        if (token != Token.START_OBJECT && token != Token.START_ARRAY) {
+            return;
+        }
+        final int target = depth - 1;
+        while (depth > target) {
+            int c = skipSeparators();
+            switch (c) {
+            case -1:
+                throw error("Unexpected end of input");
+            case '{':
+                push(true);
+                break;
+            case '[':
+                push(false);
+                break;
+            case '}':
+            case ']':
+                pop();
+                break;
+            case '"':
+                skipString();
+                break;
+            default:
+                // numbers and literals
+                while (true) {
+                    int b = peek();
+                    if (b == -1 || b == ',' || b == '}' || b == ']' || isWhitespace(b)) {
+                        break;
+                    }
+                    position++;
+                }
+            }
+        }
+        expectName = false;
+    }
+
+    /**
+     * @return the value of the last {@link Token#STRING} or {@link Token#FIELD_NAME}
+     */
+    public String getString() {
+        return string;
+    }
+
+    /**
+     * @return the value of the last {@link Token#NUMBER}
+     */
+    public double getDouble() {
+        return number;
+    }
+
+    /**
+     * @return whether the last {@link Token#NUMBER} has neither fraction nor exponent and fits a
+     *         long
+     */
+    public boolean isIntegral() {
+        return integral;
+    }
+
+    /**
+     * @return the value of the last {@link Token#NUMBER}, when {@link #isIntegral() integral}
+     */
+    public long getLong() {
+        return longValue;
+    }
+
+    /**
+     * @return the absolute byte offset at which the last token starts
+     */
+    public long getTokenOffset() {
+        return tokenOffset;
+    }
+
+    /**
+     * @return the absolute byte offset right after the last token
+     */
+    public long getOffset() {
+        return bufferOffset + position;
+    }
+
+    /**
+     * @return the current nesting level, zero at the top level
+     */
+    public int getDepth() {
+        return depth;
+    }
+
+    /**
+     * @return a description of the current position, for error messages
+     */
+    public String getLocation() {
+        return "at byte " + tokenOffset;
+    }
+
+    private IOException error(String message) {
+        return new IOException(message + " " + getLocation());
+    }
+
+    private void push(boolean object) {
+        if (depth == stack.length) {
+            boolean[] grown = new boolean[depth * 2];
+            System.arraycopy(stack, 0, grown, 0, depth);
+            stack = grown;
+        }
+        stack[depth++] = object;
+    }
+
+    private void pop() throws IOException {
+        if (depth == 0) {
+            throw error("Unbalanced closing bracket");
+        }
+        depth--;
+        expectName = false;
+    }
+
+    private int read() throws IOException {
+        if (position == limit && !fill()) {
+            return -1;
+        }
+        return buffer[position++] & 0xFF;
+    }
+
+    private int peek() throws IOException {
+        if (position == limit && !fill()) {
+            return -1;
+        }
+        return buffer[position] & 0xFF;
+    }
+
+    private boolean fill() throws IOException {
+        bufferOffset += limit;
+        position = 0;
+        limit = 0;
+        int read;
+        do {
+            read = in.read(buffer, 0, buffer.length);
+        } while (read == 0);
+        if (read < 0) {
+            return false;
+        }
+        limit = read;
+        return true;
+    }
+
+    private static boolean isWhitespace(int c) {
+        return c == ' ' || c == '\n' || c == '\r' || c == '\t';
+    }
+
+    private int skipSeparators() throws IOException {
+        while (true) {
+            int c = read();
+            if (c == ',') {
+                expectName = depth > 0 && stack[depth - 1];
+            } else if (c != ':' && !isWhitespace(c)) {
+                return c;
+            }
+        }
+    }
+
+    private void literal(String rest) throws IOException {
+        for (int i = 0; i < rest.length(); i++) {
+            if (read() != rest.charAt(i)) {
+                throw error("Invalid literal");
+            }
+        }
+    }
+
+    private void append(char c) {
+        if (length == chars.length) {
+            char[] grown = new char[length * 2];
+            System.arraycopy(chars, 0, grown, 0, length);
+            chars = grown;
+        }
+        chars[length++] = c;
+    }
+
+    /**
+     * Decodes a string into the char buffer, the opening quote being already consumed
+     */
+    private void readString() throws IOException {
+        length = 0;
+        while (true) {
+            // fast path for plain ascii
+            while (position < limit) {
+                byte b = buffer[position];
+                if (b == '"' || b == '\\' || b < 0x20) {
+                    break;
+                }
+                append((char) b);
+                position++;
+            }
+            int c = read();
+            if (c == -1) {
+                throw error("Unterminated string");
+            } else if (c == '"') {
+                return;
+            } else if (c == '\\') {
+                readEscape();
+            } else if (c < 0x80) {
+                append((char) c);
+            } else {
+                readMultiByte(c);
+            }
+        }
+    }
+
+    private void readEscape() throws IOException {
+        int c = read();
+        switch (c) {
+        case '"':
+        case '\\':
+        case '/':
+            append((char) c);
+            break;
+        case 'b':
+            append('\b');
+            break;
+        case 'f':
+            append('\f');
+            break;
+        case 'n':
+            append('\n');
+            break;
+        case 'r':
+            append('\r');
+            break;
+        case 't':
+            append('\t');
+            break;
+        case 'u':
+            int value = 0;
+            for (int i = 0; i < 4; i++) {
+                int digit = Character.digit(read(), 16);
+                if (digit < 0) {
+                    throw error("Invalid unicode escape");
+                }
+                value = (value << 4) | digit;
+            }
+            append((char) value);
+            break;
+        default:
+            throw error("Invalid escape");
+        }
+    }
+
+    private void readMultiByte(int c) throws IOException {
+        int codePoint;
+        int continuation;
+        if ((c & 0xE0) == 0xC0) {
+            codePoint = c & 0x1F;
+            continuation = 1;
+        } else if ((c & 0xF0) == 0xE0) {
+            codePoint = c & 0x0F;
+            continuation = 2;
+        } else if ((c & 0xF8) == 0xF0) {
+            codePoint = c & 0x07;
+            continuation = 3;
+        } else {
+            throw error("Invalid UTF-8 byte");
+        }
+        for (int i = 0; i < continuation; i++) {
+            int b = read();
+            if ((b & 0xC0) != 0x80) {
+                throw error("Invalid UTF-8 sequence");
+            }
+            codePoint = (codePoint << 6) | (b & 0x3F);
+        }
+        if (codePoint >= 0x10000) {
+            codePoint -= 0x10000;
+            append((char) (0xD800 + (codePoint >> 10)));
+            append((char) (0xDC00 + (codePoint & 0x3FF)));
+        } else {
+            append((char) codePoint);
+        }
+    }
+
+    private void skipString() throws IOException {
+        while (true) {
+            int c = read();
+            if (c == -1) {
+                throw error("Unterminated string");
+            } else if (c == '"') {
+                return;
+            } else if (c == '\\') {
+                read();
+            }
+        }
+    }
+
+    /**
+     * @return the decoded member name, recycling the string of a previous equal name
+     */
+    private String name() {
+        int hash = 0;
+        for (int i = 0; i < length; i++) {
+            hash = 31 * hash + chars[i];
+        }
+        int slot = (hash ^ (hash >>> 16)) & (NAME_CACHE_SIZE - 1);
+        String cached = names[slot];
+        if (cached != null && cached.length() == length) {
+            boolean equal = true;
+            for (int i = 0; i < length && equal; i++) {
+                equal = cached.charAt(i) == chars[i];
+            }
+            if (equal) {
+                return cached;
+            }
+        }
+        String name = new String(chars, 0, length);
+        names[slot] = name;
+        return name;
+    }
+
+    private void readNumber(int first) throws IOException {
+        int count = 0;
+        digits[count++] = (byte) first;
+        while (true) {
+            int c = peek();
+            if ((c >= '0' && c <= '9') || c == '.' || c == 'e' || c == 'E' || c == '+'
+                    || c == '-') {
+                if (count == digits.length) {
+                    byte[] grown = new byte[count * 2];
+                    System.arraycopy(digits, 0, grown, 0, count);
+                    digits = grown;
+                }
+                digits[count++] = (byte) c;
+                position++;
+            } else {
+                break;
+            }
+        }
+        parseNumber(count);
+    }
+
+    /**
+     * Parses the number in the digits buffer, exactly when the mantissa fits 53 bits and the
+     * power of ten is exact, falling back on {@link Double#parseDouble} otherwise
+     */
+    private void parseNumber(int count) throws IOException {
+        int i = 0;
+        boolean negative = digits[0] == '-';
+        if (negative) {
+            i++;
+        }
+        long mantissa = 0;
+        int significant = 0;
+        int exponent = 0;
+        boolean overflow = false;
+        boolean fraction = false;
+        boolean any = false;
+        for (; i < count; i++) {
+            int c = digits[i];
+            if (c >= '0' && c <= '9') {
+                any = true;
+                if (significant < 18) {
+                    mantissa = mantissa * 10 + (c - '0');
+                    if (mantissa > 0) {
+                        significant++;
+                    }
+                    if (fraction) {
+                        exponent--;
+                    }
+                } else {
+                    overflow = true;
+                    if (!fraction) {
+                        exponent++;
+                    }
+                }
+            } else if (c == '.' && !fraction) {
+                fraction = true;
+            } else {
+                break;
+            }
+        }
+        if (!any) {
+            throw error("Invalid number");
+        }
+        boolean hasExponent = false;
+        if (i < count) {
+            if (digits[i] != 'e' && digits[i] != 'E') {
+                throw error("Invalid number");
+            }
+            hasExponent = true;
+            i++;
+            boolean negativeExponent = false;
+            if (i < count && (digits[i] == '+' || digits[i] == '-')) {
+                negativeExponent = digits[i] == '-';
+                i++;
+            }
+            if (i == count) {
+                throw error("Invalid number");
+            }
+            int value = 0;
+            for (; i < count; i++) {
+                int c = digits[i];
+                if (c < '0' || c > '9') {
+                    throw error("Invalid number");
+                }
+                if (value < 100000) {
+                    value = value * 10 + (c - '0');
+                }
+            }
+            exponent += negativeExponent ? -value : value;
+        }
+
+        integral = !fraction && !hasExponent && !overflow;
+        if (integral) {
+            longValue = negative ? -mantissa : mantissa;
+            number = negative ? -(double) mantissa : mantissa;
+        } else if (!overflow && mantissa < MAX_EXACT && exponent >= -22 && exponent <= 22) {
+            double value = exponent >= 0 ? mantissa * POW10[exponent] : mantissa
+                    / POW10[-exponent];
+            number = negative ? -value : value;
+        } else {
+            try {
+                number = Double.parseDouble(new String(digits, 0, count, "US-ASCII"));
+            } catch (NumberFormatException e) {
+                throw error("Invalid number");
+            }
+        }
+    }
+}
@@ -0,0 +1,803 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2013, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.geojson.stream;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.IdentityHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import org.geotools.feature.FeatureCollection;
+import org.geotools.feature.FeatureIterator;
+import org.geotools.geojson.GeoJSONUtil;
+import org.geotools.referencing.CRS;
+import org.geotools.util.Converters;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
+import org.opengis.feature.type.AttributeDescriptor;
+import org.opengis.feature.type.GeometryDescriptor;
+import org.opengis.geometry.BoundingBox;
+import org.opengis.referencing.FactoryException;
+import org.opengis.referencing.crs.CoordinateReferenceSystem;
+
+import com.vividsolutions.jts.geom.CoordinateSequence;
+import com.vividsolutions.jts.geom.Envelope;
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.GeometryCollection;
+import com.vividsolutions.jts.geom.LineString;
+import com.vividsolutions.jts.geom.MultiLineString;
+import com.vividsolutions.jts.geom.MultiPoint;
+import com.vividsolutions.jts.geom.MultiPolygon;
+import com.vividsolutions.jts.geom.Point;
+import com.vividsolutions.jts.geom.Polygon;
+
+/**
+ * Streams features out as GeoJSON, writing the text directly instead of building json objects.
+ * <p>
+ * Features are encoded after a write plan computed once per feature type, which holds the escaped
+ * property names and the way each attribute is written according to its binding. Ordinates are
+ * formatted with a {@link DoubleFormatter}, rounded to the configured number of decimals. The
+ * documents are laid out as the ones of {@link org.geotools.geojson.feature.FeatureJSON}, save
+ * for features without geometry, which get an explicit null one.
+ * </p>
+ * <p>
+ * Collections can be written in one go with {@link #writeFeatureCollection(FeatureCollection)} or
+ * piecewise:
+ * <pre>
+ * GeoJSONWriter writer = new GeoJSONWriter(out);
+ * writer.writeStartFeatureCollection(crs, bounds);
+ * while (...) {
+ *     writer.writeFeature(feature);
+ * }
+ * writer.writeEndFeatureCollection();
+ * writer.flush();
+ * </pre>
+ * When an {@link #setExecutor(ExecutorService) executor} is set, collections are split into
+ * chunks of features encoded concurrently and written in order, which requires the iterator not
+ * to recycle the features it returns.
+ * </p>
+ * 
+ * @source $URL$
+ */
+public class GeoJSONWriter {
+
+    /** the default number of features encoded by a parallel task */
+    public static final int DEFAULT_CHUNK_SIZE = 1000;
+
+    /** the amount of buffered text past which it is written out */
+    static final int FLUSH_SIZE = 16 * 1024;
+
+    static final int OBJECT = 0;
+
+    static final int INTEGRAL = 1;
+
+    static final int REAL = 2;
+
+    static final int BOOLEAN = 3;
+
+    static final int STRING = 4;
+
+    static final int DATE = 5;
+
+    static final int GEOMETRY = 6;
+
+    static final int ENVELOPE = 7;
+
+    private final Writer out;
+
+    private DoubleFormatter formatter = new DoubleFormatter(4);
+
+    private final DoubleFormatter realFormatter = new DoubleFormatter();
+
+    private boolean encodeFeatureBounds;
+
+    private boolean encodeFeatureCRS;
+
+    private boolean encodeNullValues;
+
+    private ExecutorService executor;
+
+    private int chunkSize = DEFAULT_CHUNK_SIZE;
+
+    private final Map<SimpleFeatureType, FeaturePlan> plans = new IdentityHashMap<SimpleFeatureType, FeaturePlan>();
+
+    private SimpleFeatureType lastType;
+
+    private FeaturePlan lastPlan;
+
+    private final Encoder encoder = new Encoder();
+
+    private char[] chars = new char[FLUSH_SIZE];
+
+    /** whether a feature has been written in the current collection */
+    private boolean first = true;
+
+    public GeoJSONWriter(Writer out) {
+        this.out = out;
+    }
+
+    /**
+     * Writes UTF-8 text to the stream
+     */
+    public GeoJSONWriter(OutputStream out) {
+        this(new OutputStreamWriter(out, Charset.forName("UTF-8")));
+    }
+
+    /**
+     * Sets the number of decimals ordinates are rounded to, 4 by default as for
+     * {@link org.geotools.geojson.geom.GeometryJSON}, or a negative number to write them with
+     * full precision
+     */
+    public void setDecimals(int decimals) {
+        this.formatter = new DoubleFormatter(decimals);
+    }
+
+    public int getDecimals() {
+        return formatter.getDecimals();
+    }
+
+    /**
+     * Sets whether each feature gets a "bbox" member
+     */
+    public void setEncodeFeatureBounds(boolean encodeFeatureBounds) {
+        this.encodeFeatureBounds = encodeFeatureBounds;
+        clearPlans();
+    }
+
+    public boolean isEncodeFeatureBounds() {
+        return encodeFeatureBounds;
+    }
+
+    /**
+     * Sets whether each feature gets a "crs" member
+     */
+    public void setEncodeFeatureCRS(boolean encodeFeatureCRS) {
+        this.encodeFeatureCRS = encodeFeatureCRS;
+        clearPlans();
+    }
+
+    public boolean isEncodeFeatureCRS() {
+        return encodeFeatureCRS;
+    }
+
+    /**
+     * Sets whether properties with null values are written
+     */
+    public void setEncodeNullValues(boolean encodeNullValues) {
+        this.encodeNullValues = encodeNullValues;
+    }
+
+    public boolean isEncodeNullValues() {
+        return encodeNullValues;
+    }
+
+    /**
+     * Sets the executor encoding collections in parallel, null to encode them in the calling
+     * thread
+     */
+    public void setExecutor(ExecutorService executor) {
+        this.executor = executor;
+    }
+
+    /**
+     * Sets the number of features encoded by each parallel task
+     */
+    public void setChunkSize(int chunkSize) {
+        this.chunkSize = Math.max(1, chunkSize);
+    }
+
+    public int getChunkSize() {
+        return chunkSize;
+    }
+
+    /**
+     * Writes a whole feature collection, with its crs and bounds when requested
+     */
+    public void writeFeatureCollection(
+            FeatureCollection<SimpleFeatureType, SimpleFeature> features, boolean encodeCRS,
+            boolean encodeBounds) throws IOException {
+        CoordinateReferenceSystem crs = null;
+        BoundingBox bounds = null;
+        if (encodeCRS || encodeBounds) {
+            bounds = features.getBounds();
+            crs = encodeCRS ? bounds.getCoordinateReferenceSystem() : null;
+            bounds = encodeBounds ? bounds : null;
+        }
+        writeStartFeatureCollection(crs, bounds);
+        FeatureIterator<SimpleFeature> it = features.features();
+        try {
+            if (executor == null) {
+                while (it.hasNext()) {
+                    writeFeature(it.next());
+                }
+            } else {
+                writeParallel(it);
+            }
+        } finally {
+            it.close();
+        }
+        writeEndFeatureCollection();
+        flush();
+    }
+
+    /**
+     * Writes a whole feature collection
+     */
+    public void writeFeatureCollection(FeatureCollection<SimpleFeatureType, SimpleFeature> features)
+            throws IOException {
+        writeFeatureCollection(features, false, false);
+    }
+
+    /**
+     * Starts a feature collection, the crs and bounds being optional
+     */
+    public void writeStartFeatureCollection(CoordinateReferenceSystem crs, BoundingBox bounds)
+            throws IOException {
+        StringBuilder sb = encoder.sb;
+        sb.append("{\"type\":\"FeatureCollection\",");
+        if (bounds != null) {
+            sb.append("\"bbox\":");
+            encoder.bounds(bounds.getMinX(), bounds.getMinY(), bounds.getMaxX(),
+                    bounds.getMaxY());
+            sb.append(',');
+        }
+        if (crs != null) {
+            sb.append("\"crs\":").append(crs(crs)).append(',');
+        }
+        sb.append("\"features\":[");
+        first = true;
+    }
+
+    /**
+     * Ends a feature collection
+     */
+    public void writeEndFeatureCollection() throws IOException {
+        encoder.sb.append("]}");
+        drain(encoder.sb, false);
+    }
+
+    /**
+     * Writes a feature, as a member of the current collection if one was started
+     */
+    public void writeFeature(SimpleFeature feature) throws IOException {
+        if (!first) {
+            encoder.sb.append(',');
+        }
+        first = false;
+        encoder.feature(plan(feature.getFeatureType()), feature);
+        drain(encoder.sb, false);
+    }
+
+    /**
+     * Writes a geometry
+     */
+    public void writeGeometry(Geometry geometry) throws IOException {
+        encoder.geometry(geometry);
+        drain(encoder.sb, false);
+    }
+
+    /**
+     * Writes out all the buffered text and flushes the underlying writer
+     */
+    public void flush() throws IOException {
+        drain(encoder.sb, true);
+        out.flush();
+    }
+
+    /**
+     * Flushes and closes the underlying writer
+     */
+    public void close() throws IOException {
+        flush();
+        out.close();
+    }
+
+    private void writeParallel(FeatureIterator<SimpleFeature> it) throws IOException {
+        // bound the number of encoded chunks waiting to be written
+        int maxPending = 2 * Runtime.getRuntime().availableProcessors();
+        LinkedList<Future<StringBuilder>> pending = new LinkedList<Future<StringBuilder>>();
+        try {
+            while (it.hasNext()) {
+                final List<SimpleFeature> chunk = new ArrayList<SimpleFeature>(chunkSize);
+                final List<FeaturePlan> chunkPlans = new ArrayList<FeaturePlan>(chunkSize);
+                while (chunk.size() < chunkSize && it.hasNext()) {
+                    SimpleFeature feature = it.next();
+                    chunk.add(feature);
+                    chunkPlans.add(plan(feature.getFeatureType()));
+                }
+                pending.add(executor.submit(new Callable<StringBuilder>() {
+                    public StringBuilder call() throws Exception {
+                        Encoder encoder = new Encoder();
+                        for (int i = 0; i < chunk.size(); i++) {
+                            encoder.sb.append(',');
+                            encoder.feature(chunkPlans.get(i), chunk.get(i));
+                        }
+                        return encoder.sb;
+                    }
+                }));
+                if (pending.size() >= maxPending) {
+                    writeChunk(pending.removeFirst());
+                }
+            }
+            while (!pending.isEmpty()) {
+                writeChunk(pending.removeFirst());
+            }
+        } finally {
+            for (Future<StringBuilder> future : pending) {
+                future.cancel(true);
+            }
+        }
+    }
+
+    private void writeChunk(Future<StringBuilder> future) throws IOException {
+        StringBuilder sb;
+        try {
+            sb = future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while encoding features");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            throw (IOException) new IOException("Failed to encode features").initCause(cause);
+        }
+        if (first && sb.length() > 0) {
+            // no separator before the first feature
+            sb.deleteCharAt(0);
+        }
+        first = false;
+        drain(encoder.sb, true);
+        drain(sb, true);
+    }
+
+    /**
+     * Writes out and clears the buffered text, when large enough unless forced
+     */
+    private void drain(StringBuilder sb, boolean force) throws IOException {
+        int length = sb.length();
+        if (length == 0 || (!force && length < FLUSH_SIZE)) {
+            return;
+        }
+        for (int start = 0; start < length; start += chars.length) {
+            int end = Math.min(length, start + chars.length);
+            sb.getChars(start, end, chars, 0);
+            out.write(chars, 0, end - start);
+        }
+        sb.setLength(0);
+    }
+
+    private void clearPlans() {
+        plans.clear();
+        lastType = null;
+        lastPlan = null;
+    }
+
+    private FeaturePlan plan(SimpleFeatureType featureType) throws IOException {
+        if (featureType == lastType) {
+            return lastPlan;
+        }
+        FeaturePlan plan = plans.get(featureType);
+        if (plan == null) {
+            plan = new FeaturePlan(featureType);
+            plans.put(featureType, plan);
+        }
+        lastType = featureType;
+        lastPlan = plan;
+        return plan;
+    }
+
+    String crs(CoordinateReferenceSystem crs) throws IOException {
+        String identifier;
+        try {
+            identifier = CRS.lookupIdentifier(crs, true);
+        } catch (FactoryException e) {
+            throw (IOException) new IOException("Error looking up crs identifier").initCause(e);
+        }
+        StringBuilder sb = new StringBuilder("{\"type\":\"name\",\"properties\":{\"name\":");
+        if (identifier != null) {
+            string(identifier, sb);
+        } else {
+            sb.append("null");
+        }
+        return sb.append("}}").toString();
+    }
+
+    static int kind(Class<?> binding) {
+        if (binding == Integer.class || binding == Long.class || binding == Short.class
+                || binding == Byte.class) {
+            return INTEGRAL;
+        }
+        if (binding == Double.class || binding == Float.class) {
+            return REAL;
+        }
+        if (binding == Boolean.class) {
+            return BOOLEAN;
+        }
+        if (binding == String.class) {
+            return STRING;
+        }
+        if (Date.class.isAssignableFrom(binding)) {
+            return DATE;
+        }
+        if (Geometry.class.isAssignableFrom(binding)) {
+            return GEOMETRY;
+        }
+        if (Envelope.class.isAssignableFrom(binding) || BoundingBox.class.isAssignableFrom(binding)) {
+            return ENVELOPE;
+        }
+        return OBJECT;
+    }
+
+    /**
+     * How the features of a type are written
+     */
+    class FeaturePlan {
+
+        /** the attributes written as properties */
+        final int[] indexes;
+
+        /** the escaped property names, followed by the colon */
+        final String[] keys;
+
+        final int[] kinds;
+
+        final int geometryIndex;
+
+        /** the crs member, followed by a comma, or null */
+        final String crs;
+
+        FeaturePlan(SimpleFeatureType featureType) throws IOException {
+            GeometryDescriptor geometry = featureType.getGeometryDescriptor();
+            geometryIndex = geometry != null ? featureType.indexOf(geometry.getLocalName()) : -1;
+
+            int count = featureType.getAttributeCount() - (geometryIndex >= 0 ? 1 : 0);
+            indexes = new int[count];
+            keys = new String[count];
+            kinds = new int[count];
+            int i = 0;
+            for (int index = 0; index < featureType.getAttributeCount(); index++) {
+                if (index == geometryIndex) {
+                    continue;
+                }
+                AttributeDescriptor descriptor = featureType.getDescriptor(index);
+                indexes[i] = index;
+                keys[i] = string(descriptor.getLocalName(), new StringBuilder())
+                        .append(':').toString();
+                kinds[i] = kind(descriptor.getType().getBinding());
+                i++;
+            }
+
+            CoordinateReferenceSystem crs = featureType.getCoordinateReferenceSystem();
+            this.crs = encodeFeatureCRS && crs != null ? "\"crs\":" + crs(crs) + "," : null;
+        }
+    }
+
+    /**
+     * Encodes text into a buffer; the encoders of parallel tasks share nothing but the immutable
+     * plans and formatters
+     */
+    class Encoder {
+
+        final StringBuilder sb = new StringBuilder(FLUSH_SIZE + 1024);
+
+        SimpleDateFormat dateFormat;
+
+        void feature(FeaturePlan plan, SimpleFeature feature) {
+            sb.append("{\"type\":\"Feature\",");
+            if (plan.crs != null) {
+                sb.append(plan.crs);
+            }
+            if (encodeFeatureBounds) {
+                BoundingBox bounds = feature.getBounds();
+                sb.append("\"bbox\":");
+                bounds(bounds.getMinX(), bounds.getMinY(), bounds.getMaxX(), bounds.getMaxY());
+                sb.append(',');
+            }
+
+            sb.append("\"geometry\":");
+            Object geometry = plan.geometryIndex >= 0 ? feature.getAttribute(plan.geometryIndex)
+                    : null;
+            if (geometry instanceof Geometry) {
+                geometry((Geometry) geometry);
+            } else {
+                sb.append("null");
+            }
+
+            sb.append(",\"properties\":{");
+            boolean written = false;
+            for (int i = 0; i < plan.indexes.length; i++) {
+                Object value = feature.getAttribute(plan.indexes[i]);
+                if (value == null && !encodeNullValues) {
+                    continue;
+                }
+                if (written) {
+                    sb.append(',');
+                }
+                written = true;
+                sb.append(plan.keys[i]);
+                value(plan.kinds[i], value);
+            }
+            sb.append("},\"id\":");
+            if (feature.getID() != null) {
+                string(feature.getID(), sb);
+            } else {
+                sb.append("null");
+            }
+            sb.append('}');
+        }
+
+        void value(int kind, Object value) {
+            if (value == null) {
+                sb.append("null");
+                return;
+            }
+            // the binding may be looser than the actual value
+            if (kind == OBJECT) {
+                kind = kind(value.getClass());
+            }
+            switch (kind) {
+            case INTEGRAL:
+                if (value instanceof Long) {
+                    sb.append(((Long) value).longValue());
+                } else if (value instanceof Number) {
+                    sb.append(((Number) value).intValue());
+                } else {
+                    value(OBJECT, value);
+                }
+                break;
+            case REAL:
+                if (value instanceof Number) {
+                    real(((Number) value).doubleValue());
+                } else {
+                    value(OBJECT, value);
+                }
+                break;
+            case BOOLEAN:
+                sb.append(value);
+                break;
+            case DATE:
+                if (dateFormat == null) {
+                    dateFormat = (SimpleDateFormat) GeoJSONUtil.DATE_FORMAT.clone();
+                }
+                string(dateFormat.format((Date) value), sb);
+                break;
+            case GEOMETRY:
+                geometry((Geometry) value);
+                break;
+            case ENVELOPE:
+                if (value instanceof BoundingBox) {
+                    BoundingBox b = (BoundingBox) value;
+                    bounds(b.getMinX(), b.getMinY(), b.getMaxX(), b.getMaxY());
+                } else {
+                    Envelope e = (Envelope) value;
+                    bounds(e.getMinX(), e.getMinY(), e.getMaxX(), e.getMaxY());
+                }
+                break;
+            case STRING:
+                if (value instanceof String) {
+                    string((String) value, sb);
+                    break;
+                }
+                // fall through
+            default:
+                if (value instanceof Number) {
+                    // big decimals and the like
+                    sb.append(value);
+                } else {
+                    String str = Converters.convert(value, String.class);
+                    string(str != null ? str : value.toString(), sb);
+                }
+            }
+        }
+
+        /**
+         * Writes a real property value, keeping a decimal point as java does
+         */
+        void real(double value) {
+            if (Double.isNaN(value) || Double.isInfinite(value)) {
+                sb.append("null");
+                return;
+            }
+            int start = sb.length();
+            realFormatter.format(value, sb);
+            for (int i = start; i < sb.length(); i++) {
+                char c = sb.charAt(i);
+                if (c == '.' || c == 'E') {
+                    return;
+                }
+            }
+            sb.append(".0");
+        }
+
+        void bounds(double minX, double minY, double maxX, double maxY) {
+            sb.append('[');
+            ordinate(minX);
+            sb.append(',');
+            ordinate(minY);
+            sb.append(',');
+            ordinate(maxX);
+            sb.append(',');
+            ordinate(maxY);
+            sb.append(']');
+        }
+
+        void ordinate(double value) {
+            if (Double.isNaN(value) || Double.isInfinite(value)) {
+                sb.append("null");
+            } else {
+                formatter.format(value, sb);
+            }
+        }
+
+        void geometry(Geometry geometry) {
+            if (geometry instanceof Point) {
+                sb.append("{\"type\":\"Point\",\"coordinates\":");
+                CoordinateSequence sequence = ((Point) geometry).getCoordinateSequence();
+                if (sequence.size() == 0) {
+                    sb.append("[]");
+                } else {
+                    position(sequence, 0);
+                }
+            } else if (geometry instanceof LineString) {
+                sb.append("{\"type\":\"LineString\",\"coordinates\":");
+                positions(((LineString) geometry).getCoordinateSequence());
+            } else if (geometry instanceof Polygon) {
+                sb.append("{\"type\":\"Polygon\",\"coordinates\":");
+                rings((Polygon) geometry);
+            } else if (geometry instanceof MultiPoint) {
+                sb.append("{\"type\":\"MultiPoint\",\"coordinates\":[");
+                for (int i = 0; i < geometry.getNumGeometries(); i++) {
+                    if (i > 0) {
+                        sb.append(',');
+                    }
+                    position(((Point) geometry.getGeometryN(i)).getCoordinateSequence(), 0);
+                }
+                sb.append(']');
+            } else if (geometry instanceof MultiLineString) {
+                sb.append("{\"type\":\"MultiLineString\",\"coordinates\":[");
+                for (int i = 0; i < geometry.getNumGeometries(); i++) {
+                    if (i > 0) {
+                        sb.append(',');
+                    }
+                    positions(((LineString) geometry.getGeometryN(i)).getCoordinateSequence());
+                }
+                sb.append(']');
+            } else if (geometry instanceof MultiPolygon) {
+                sb.append("{\"type\":\"MultiPolygon\",\"coordinates\":[");
+                for (int i = 0; i < geometry.getNumGeometries(); i++) {
+                    if (i > 0) {
+                        sb.append(',');
+                    }
+                    rings((Polygon) geometry.getGeometryN(i));
+                }
+                sb.append(']');
+            } else if (geometry instanceof GeometryCollection) {
+                sb.append("{\"type\":\"GeometryCollection\",\"geometries\":[");
+                for (int i = 0; i < geometry.getNumGeometries(); i++) {
+                    if (i > 0) {
+                        sb.append(',');
+                    }
+                    geometry(geometry.getGeometryN(i));
+                }
+                sb.append(']');
+            } else {
+                throw new IllegalArgumentException("Unable to encode object " + geometry);
+            }
+            sb.append('}');
+        }
+
+        void rings(Polygon polygon) {
+            sb.append('[');
+            if (!polygon.isEmpty()) {
+                positions(polygon.getExteriorRing().getCoordinateSequence());
+                for (int i = 0; i < polygon.getNumInteriorRing(); i++) {
+                    sb.append(',');
+                    positions(polygon.getInteriorRingN(i).getCoordinateSequence());
+                }
+            }
+            sb.append(']');
+        }
+
+        void positions(CoordinateSequence sequence) {
+            sb.append('[');
+            for (int i = 0; i < sequence.size(); i++) {
+                if (i > 0) {
+                    sb.append(',');
+                }
+                position(sequence, i);
+            }
+            sb.append(']');
+        }
+
+        void position(CoordinateSequence sequence, int i) {
+            sb.append('[');
+            ordinate(sequence.getOrdinate(i, CoordinateSequence.X));
+            sb.append(',');
+            ordinate(sequence.getOrdinate(i, CoordinateSequence.Y));
+            if (sequence.getDimension() > 2) {
+                double z = sequence.getOrdinate(i, CoordinateSequence.Z);
+                if (!Double.isNaN(z)) {
+                    sb.append(',');
+                    ordinate(z);
+                }
+            }
+            sb.append(']');
+        }
+    }
+
+    /**
+     * Appends a quoted string, escaped as json-simple does
+     */
+    static StringBuilder string(String s, StringBuilder sb) {
+        sb.append('"');
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            switch (c) {
+            case '"':
+                sb.append("\\\"");
+                break;
+            case '\\':
+                sb.append("\\\\");
+                break;
+            case '/':
+                sb.append("\\/");
+                break;
+            case '\b':
+                sb.append("\\b");
+                break;
+            case '\f':
+                sb.append("\\f");
+                break;
+            case '\n':
+                sb.append("\\n");
+                break;
+            case '\r':
+                sb.append("\\r");
+                break;
+            case '\t':
+                sb.append("\\t");
+                break;
+            default:
+                if (c < 0x20 || (c >= 0x7F && c <= 0x9F) || (c >= 0x2000 && c <= 0x20FF)) {
+                    sb.append("\\u");
+                    String hex = Integer.toHexString(c).toUpperCase();
+                    for (int k = hex.length(); k < 4; k++) {
+                        sb.append('0');
+                    }
+                    sb.append(hex);
+                } else {
+                    sb.append(c);
+                }
+            }
+        }
+        return sb.append('"');
+    }
+}
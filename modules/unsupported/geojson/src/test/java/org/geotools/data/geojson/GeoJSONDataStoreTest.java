@@ -0,0 +1,252 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2013, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.data.geojson;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Serializable;
+import java.io.Writer;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import junit.framework.TestCase;
+
+import org.geotools.data.DataStore;
+import org.geotools.data.Query;
+import org.geotools.data.simple.SimpleFeatureCollection;
+import org.geotools.data.simple.SimpleFeatureIterator;
+import org.geotools.data.simple.SimpleFeatureSource;
+import org.geotools.factory.CommonFactoryFinder;
+import org.geotools.geometry.jts.ReferencedEnvelope;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.filter.Filter;
+import org.opengis.filter.FilterFactory2;
+import org.opengis.filter.identity.FeatureId;
+
+import com.vividsolutions.jts.geom.Envelope;
+import com.vividsolutions.jts.geom.Geometry;
+
+/**
+ * 
+ *
+ * @source $URL$
+ */
+public class GeoJSONDataStoreTest extends TestCase {
+
+    static final FilterFactory2 ff = CommonFactoryFinder.getFilterFactory2(null);
+
+    File directory;
+
+    File file;
+
+    DataStore store;
+
+    @Override
+    protected void setUp() throws Exception {
+        directory = File.createTempFile("geojson", "test");
+        directory.delete();
+        directory.mkdirs();
+        file = new File(directory, "grid.geojson");
+        writeGrid(20, 10);
+
+        Map<String, Serializable> params = new HashMap<String, Serializable>();
+        params.put(GeoJSONDataStoreFactory.FILE_PARAM.key, file);
+        store = new GeoJSONDataStoreFactory().createDataStore(params);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        store.dispose();
+        for (File f : directory.listFiles()) {
+            f.delete();
+        }
+        directory.delete();
+    }
+
+    /**
+     * Writes a grid of points, half of them without identifier, plus a feature without geometry
+     */
+    void writeGrid(int width, int height) throws IOException {
+        Writer w = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+        try {
+            w.write("{\"type\":\"FeatureCollection\",\"features\":[\n");
+            for (int x = 0; x < width; x++) {
+                for (int y = 0; y < height; y++) {
+                    w.write("{\"type\":\"Feature\",");
+                    if (x % 2 == 0) {
+                        w.write("\"id\":\"p." + x + "." + y + "\",");
+                    }
+                    w.write("\"geometry\":{\"type\":\"Point\",\"coordinates\":[" + x + "," + y
+                            + "]},\"properties\":{\"x\":" + x + ",\"name\":\"" + x + "-" + y
+                            + "\"}},\n");
+                }
+            }
+            w.write("{\"type\":\"Feature\",\"id\":\"nogeom\",\"geometry\":null,"
+                    + "\"properties\":{\"x\":-1,\"name\":\"none\"}}\n");
+            w.write("]}");
+        } finally {
+            w.close();
+        }
+    }
+
+    Set<String> ids(SimpleFeatureCollection features) {
+        Set<String> ids = new HashSet<String>();
+        SimpleFeatureIterator it = features.features();
+        try {
+            while (it.hasNext()) {
+                assertTrue(ids.add(it.next().getID()));
+            }
+        } finally {
+            it.close();
+        }
+        return ids;
+    }
+
+    public void testFactory() throws Exception {
+        GeoJSONDataStoreFactory factory = new GeoJSONDataStoreFactory();
+        Map<String, Serializable> params = new HashMap<String, Serializable>();
+        params.put(GeoJSONDataStoreFactory.FILE_PARAM.key, file);
+        assertTrue(factory.canProcess(params));
+        params.put(GeoJSONDataStoreFactory.FILE_PARAM.key, new File("test.shp"));
+        assertFalse(factory.canProcess(params));
+
+        assertEquals(1, store.getTypeNames().length);
+        assertEquals("grid", store.getTypeNames()[0]);
+        assertNotNull(store.getSchema("grid").getGeometryDescriptor());
+    }
+
+    public void testCountAndBounds() throws Exception {
+        SimpleFeatureSource source = store.getFeatureSource("grid");
+        assertEquals(201, source.getCount(Query.ALL));
+        ReferencedEnvelope bounds = source.getBounds();
+        assertEquals(0, bounds.getMinX(), 0d);
+        assertEquals(0, bounds.getMinY(), 0d);
+        assertEquals(19, bounds.getMaxX(), 0d);
+        assertEquals(9, bounds.getMaxY(), 0d);
+        assertEquals(201, ids(source.getFeatures()).size());
+    }
+
+    public void testBBox() throws Exception {
+        SimpleFeatureSource source = store.getFeatureSource("grid");
+        String geom = source.getSchema().getGeometryDescriptor().getLocalName();
+        Envelope[] boxes = { new Envelope(2.5, 6.5, 1.5, 3.5), new Envelope(0, 0, 0, 0),
+                new Envelope(18.5, 30, -5, 4), new Envelope(100, 200, 100, 200),
+                new Envelope(-1, 20, -1, 10) };
+        for (Envelope box : boxes) {
+            Filter bbox = ff.bbox(geom, box.getMinX(), box.getMinY(), box.getMaxX(),
+                    box.getMaxY(), null);
+
+            // brute force
+            Set<String> expected = new HashSet<String>();
+            SimpleFeatureIterator it = source.getFeatures().features();
+            try {
+                while (it.hasNext()) {
+                    SimpleFeature f = it.next();
+                    Geometry g = (Geometry) f.getDefaultGeometry();
+                    if (g != null && box.intersects(g.getEnvelopeInternal())) {
+                        expected.add(f.getID());
+                    }
+                }
+            } finally {
+                it.close();
+            }
+            assertEquals(box.toString(), expected, ids(source.getFeatures(bbox)));
+
+            // the bounding box and the rest of the filter
+            Filter and = ff.and(bbox, ff.greater(ff.property("x"), ff.literal(3)));
+            Set<String> greater = ids(source.getFeatures(and));
+            for (String id : greater) {
+                assertTrue(expected.contains(id));
+            }
+            for (SimpleFeature f : toArray(source.getFeatures(and))) {
+                assertTrue(((Number) f.getAttribute("x")).intValue() > 3);
+            }
+        }
+        assertEquals(4 * 2, ids(source.getFeatures(ff.bbox(geom, 2.5, 1.5, 6.5, 3.5, null)))
+                .size());
+    }
+
+    SimpleFeature[] toArray(SimpleFeatureCollection features) {
+        return features.toArray(new SimpleFeature[features.size()]);
+    }
+
+    public void testFids() throws Exception {
+        SimpleFeatureSource source = store.getFeatureSource("grid");
+
+        // an identifier generated for a feature without one
+        SimpleFeatureCollection generated = source.getFeatures(ff.equals(ff.property("name"),
+                ff.literal("3-4")));
+        Set<String> ids = ids(generated);
+        assertEquals(1, ids.size());
+        String generatedId = ids.iterator().next();
+        assertTrue(generatedId.startsWith("grid."));
+
+        Set<FeatureId> fids = new HashSet<FeatureId>();
+        fids.add(ff.featureId("p.2.3"));
+        fids.add(ff.featureId("nogeom"));
+        fids.add(ff.featureId(generatedId));
+        fids.add(ff.featureId("missing"));
+        Set<String> expected = new HashSet<String>();
+        expected.add("p.2.3");
+        expected.add("nogeom");
+        expected.add(generatedId);
+        assertEquals(expected, ids(source.getFeatures(ff.id(fids))));
+
+        SimpleFeature f = toArray(source.getFeatures(ff.id(Collections.singleton(ff
+                .featureId("p.2.3")))))[0];
+        assertEquals("2-3", f.getAttribute("name"));
+        assertEquals(2, ((Number) f.getAttribute("x")).intValue());
+        assertEquals(3, ((Geometry) f.getDefaultGeometry()).getCoordinate().y, 0d);
+    }
+
+    public void testIndexReuse() throws Exception {
+        SimpleFeatureSource source = store.getFeatureSource("grid");
+        assertEquals(201, source.getCount(Query.ALL));
+        File sidecar = new File(directory, "grid.geojson" + GeoJSONIndex.EXTENSION);
+        assertTrue(sidecar.exists());
+        long modified = sidecar.lastModified();
+        long length = sidecar.length();
+
+        // a new store reuses the index
+        GeoJSONDataStore other = new GeoJSONDataStore(file);
+        try {
+            assertEquals(201, other.getFeatureSource("grid").getCount(Query.ALL));
+            assertEquals(modified, sidecar.lastModified());
+            assertEquals(length, sidecar.length());
+        } finally {
+            other.dispose();
+        }
+
+        // a changed file gets indexed again
+        long fileModified = file.lastModified();
+        writeGrid(5, 5);
+        file.setLastModified(fileModified + 2000);
+        other = new GeoJSONDataStore(file);
+        try {
+            assertEquals(26, other.getFeatureSource("grid").getCount(Query.ALL));
+            assertEquals(26, ids(other.getFeatureSource("grid").getFeatures()).size());
+            assertFalse(length == sidecar.length());
+        } finally {
+            other.dispose();
+        }
+    }
+}
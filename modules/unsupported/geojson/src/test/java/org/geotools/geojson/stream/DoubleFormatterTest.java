@@ -0,0 +1,83 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2013, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.geojson.stream;
+
+import java.math.BigDecimal;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+/**
+ * 
+ *
+ * @source $URL$
+ */
+public class DoubleFormatterTest extends TestCase {
+
+    public void testShortest() {
+        DoubleFormatter formatter = new DoubleFormatter();
+        assertEquals("0", formatter.format(0d));
+        assertEquals("0", formatter.format(-0d));
+        assertEquals("12", formatter.format(12d));
+        assertEquals("-3.25", formatter.format(-3.25));
+        assertEquals("0.1", formatter.format(0.1));
+        assertEquals("0.30000000000000004", formatter.format(0.1 + 0.2));
+        assertEquals("0.001", formatter.format(0.001));
+        assertEquals("12.000001", formatter.format(12.000001));
+        assertEquals("1.0E20", formatter.format(1e20));
+        assertEquals("NaN", formatter.format(Double.NaN));
+    }
+
+    public void testRoundTrip() {
+        DoubleFormatter formatter = new DoubleFormatter();
+        Random random = new Random(7);
+        for (int i = 0; i < 100000; i++) {
+            double value = (random.nextDouble() - 0.5) * Math.pow(10, random.nextInt(24) - 12);
+            if (i % 2 == 0) {
+                value = Math.round(value * 1e7) / 1e7;
+            }
+            String formatted = formatter.format(value);
+            assertEquals(formatted, value, Double.parseDouble(formatted), 0d);
+            if (formatted.indexOf('E') < 0) {
+                // no longer than the shortest representation
+                int shortest = new BigDecimal(Double.toString(value)).stripTrailingZeros()
+                        .precision();
+                assertTrue(formatted, new BigDecimal(formatted).precision() <= shortest);
+            }
+        }
+    }
+
+    public void testDecimals() {
+        DoubleFormatter formatter = new DoubleFormatter(4);
+        assertEquals("1.2346", formatter.format(1.23456789));
+        assertEquals("-1.2346", formatter.format(-1.23456789));
+        assertEquals("1.5", formatter.format(1.5));
+        assertEquals("1", formatter.format(1.00001));
+        assertEquals("0.0001", formatter.format(0.00005));
+        assertEquals("0", formatter.format(-0.00001));
+        assertEquals("1.0E20", formatter.format(1e20));
+
+        Random random = new Random(11);
+        for (int i = 0; i < 10000; i++) {
+            double value = (random.nextDouble() - 0.5) * 1000;
+            String formatted = formatter.format(value);
+            assertEquals(formatted, value, Double.parseDouble(formatted), 0.00005 + 1e-12);
+            int dot = formatted.indexOf('.');
+            assertTrue(formatted, dot < 0 || formatted.length() - dot - 1 <= 4);
+        }
+    }
+}
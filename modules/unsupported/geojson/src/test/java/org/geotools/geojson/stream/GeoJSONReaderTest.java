@@ -0,0 +1,234 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2013, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.geojson.stream;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Date;
+import java.util.List;
+
+import org.geotools.feature.simple.SimpleFeatureTypeBuilder;
+import org.geotools.geojson.GeoJSONTestSupport;
+import org.geotools.geojson.GeoJSONUtil;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
+
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.GeometryFactory;
+import com.vividsolutions.jts.geom.LineString;
+import com.vividsolutions.jts.geom.Point;
+import com.vividsolutions.jts.geom.impl.PackedCoordinateSequenceFactory;
+import com.vividsolutions.jts.io.WKTReader;
+
+/**
+ * 
+ *
+ * @source $URL$
+ */
+public class GeoJSONReaderTest extends GeoJSONTestSupport {
+
+    GeoJSONReader reader(String json) throws IOException {
+        return new GeoJSONReader(stream(json));
+    }
+
+    InputStream stream(String json) throws IOException {
+        return new ByteArrayInputStream(json.getBytes("UTF-8"));
+    }
+
+    String featureText(int val) {
+        return "{'type': 'Feature', " + 
+            "'geometry': {'type': 'Point', 'coordinates': [" + (val + 0.1) + "," + (val + 0.1) + "]}, " + 
+            "'properties': {'int': " + val + ", 'double': " + (val + 0.1) + ", 'string': '" + toString(val) + "'}, " + 
+            "'id': 'feature." + val + "'}";
+    }
+
+    String collectionText(int count) {
+        StringBuilder sb = new StringBuilder("{'type': 'FeatureCollection', 'bbox': [0, 0, 1, 1], "
+                + "'crs': {'type': 'name', 'properties': {'name': 'EPSG:4326'}}, 'features': [");
+        for (int i = 0; i < count; i++) {
+            sb.append(featureText(i % 5)).append(",");
+        }
+        sb.setLength(sb.length() - 1);
+        sb.append("]}");
+        return strip(sb.toString());
+    }
+
+    public void testInferredType() throws Exception {
+        GeoJSONReader reader = reader(collectionText(3));
+        SimpleFeatureType type = reader.getFeatureType();
+        assertEquals("feature", type.getTypeName());
+        assertEquals(Long.class, type.getDescriptor("int").getType().getBinding());
+        assertEquals(Double.class, type.getDescriptor("double").getType().getBinding());
+        assertEquals(String.class, type.getDescriptor("string").getType().getBinding());
+        assertEquals(Point.class, type.getGeometryDescriptor().getType().getBinding());
+        assertEquals("geometry", type.getGeometryDescriptor().getLocalName());
+        assertNotNull(type.getCoordinateReferenceSystem());
+
+        for (int i = 0; i < 3; i++) {
+            assertTrue(reader.hasNext());
+            SimpleFeature f = reader.next();
+            assertEquals("feature." + i, f.getID());
+            assertEquals(Long.valueOf(i), f.getAttribute("int"));
+            assertEquals(i + 0.1, f.getAttribute("double"));
+            assertEquals(toString(i), f.getAttribute("string"));
+            assertTrue(new WKTReader().read("POINT (" + (i + 0.1) + " " + (i + 0.1) + ")")
+                    .equals((Geometry) f.getDefaultGeometry()));
+        }
+        assertFalse(reader.hasNext());
+        reader.close();
+    }
+
+    public void testProvidedType() throws Exception {
+        SimpleFeatureTypeBuilder tb = new SimpleFeatureTypeBuilder();
+        tb.setName("dated");
+        tb.add("int", Integer.class);
+        tb.add("date", Date.class);
+        tb.add("geometry", Geometry.class);
+        SimpleFeatureType type = tb.buildFeatureType();
+
+        Date date = new Date(1234567890000L);
+        String json = strip("{'type': 'FeatureCollection', 'features': [{'type': 'Feature', "
+                + "'properties': {'int': 3, 'date': '" + GeoJSONUtil.DATE_FORMAT.format(date)
+                + "', 'skipped': [1, {'a': 2}]}, 'geometry': null}]}");
+        GeoJSONReader reader = reader(json);
+        reader.setFeatureType(type);
+        assertSame(type, reader.getFeatureType());
+        SimpleFeature f = reader.next();
+        assertEquals(Integer.valueOf(3), f.getAttribute("int"));
+        assertEquals(date, f.getAttribute("date"));
+        assertNull(f.getDefaultGeometry());
+        assertFalse(reader.hasNext());
+    }
+
+    public void testSingleFeature() throws Exception {
+        GeoJSONReader reader = reader(strip(featureText(2)));
+        SimpleFeature f = reader.next();
+        assertEquals("feature.2", f.getID());
+        assertEquals("two", f.getAttribute("string"));
+        assertFalse(reader.hasNext());
+    }
+
+    public void testSample() throws Exception {
+        String json = strip("{'type': 'FeatureCollection', 'features': ["
+                + "{'type': 'Feature', 'properties': {'a': 1, 'b': 'x'}, 'geometry': null},"
+                + "{'type': 'Feature', 'properties': {'a': 1.5, 'b': 2, 'c': true}, "
+                + "'geometry': {'type': 'LineString', 'coordinates': [[0, 0], [1, 1]]}},"
+                + "{'type': 'Feature', 'properties': {'a': 3, 'd': 'late'}, "
+                + "'geometry': {'type': 'Point', 'coordinates': [0, 0]}}]}");
+        GeoJSONReader reader = reader(json);
+        reader.setSampleSize(2);
+        SimpleFeatureType type = reader.getFeatureType();
+        assertEquals(Double.class, type.getDescriptor("a").getType().getBinding());
+        assertEquals(String.class, type.getDescriptor("b").getType().getBinding());
+        assertEquals(Boolean.class, type.getDescriptor("c").getType().getBinding());
+        assertNull(type.getDescriptor("d"));
+        assertEquals(LineString.class, type.getGeometryDescriptor().getType().getBinding());
+
+        assertEquals(1d, reader.next().getAttribute("a"));
+        assertEquals("2", reader.next().getAttribute("b"));
+        // a point does not fit the sampled line string geometry
+        SimpleFeature f = reader.next();
+        assertEquals(3d, f.getAttribute("a"));
+        assertFalse(reader.hasNext());
+    }
+
+    public void testGeometries() throws Exception {
+        String[][] geometries = {
+                { "{'type': 'Point', 'coordinates': [1, 2, 3]}", "POINT (1 2 3)" },
+                { "{'coordinates': [[1, 2], [3, 4]], 'type': 'MultiPoint'}", "MULTIPOINT ((1 2), (3 4))" },
+                { "{'type': 'LineString', 'coordinates': [[1, 2], [3, 4], [5, 6]]}", "LINESTRING (1 2, 3 4, 5 6)" },
+                { "{'type': 'MultiLineString', 'coordinates': [[[1, 2], [3, 4]], [[5, 6], [7, 8]]]}",
+                        "MULTILINESTRING ((1 2, 3 4), (5 6, 7 8))" },
+                { "{'type': 'Polygon', 'coordinates': [[[0, 0], [10, 0], [10, 10], [0, 0]], [[1, 1], [2, 1], [2, 2], [1, 1]]]}",
+                        "POLYGON ((0 0, 10 0, 10 10, 0 0), (1 1, 2 1, 2 2, 1 1))" },
+                { "{'type': 'MultiPolygon', 'coordinates': [[[[0, 0], [1, 0], [1, 1], [0, 0]]], [[[5, 5], [6, 5], [6, 6], [5, 5]]]]}",
+                        "MULTIPOLYGON (((0 0, 1 0, 1 1, 0 0)), ((5 5, 6 5, 6 6, 5 5)))" },
+                { "{'type': 'GeometryCollection', 'geometries': [{'type': 'Point', 'coordinates': [1, 2]}, "
+                        + "{'type': 'LineString', 'coordinates': [[1, 2], [3, 4]]}]}",
+                        "GEOMETRYCOLLECTION (POINT (1 2), LINESTRING (1 2, 3 4))" },
+                { "{'type': 'LineString', 'coordinates': []}", "LINESTRING EMPTY" },
+                { "{'type': 'Polygon', 'coordinates': []}", "POLYGON EMPTY" } };
+        WKTReader wkt = new WKTReader();
+        for (String[] geometry : geometries) {
+            GeoJSONReader reader = new GeoJSONReader(stream(strip("{'type': 'Feature', 'geometry': "
+                    + geometry[0] + ", 'properties': {}}")), new GeometryFactory(
+                    new PackedCoordinateSequenceFactory()));
+            Geometry actual = (Geometry) reader.next().getDefaultGeometry();
+            Geometry expected = wkt.read(geometry[1]);
+            assertEquals(geometry[1], expected.getGeometryType(), actual.getGeometryType());
+            assertTrue(geometry[1], expected.equalsExact(actual));
+        }
+
+        GeoJSONReader reader = reader(strip("{'type': 'Feature', 'geometry': "
+                + "{'type': 'LineString', 'coordinates': [[1, 2, 3], [4, 5, 6]]}}"));
+        LineString line = (LineString) reader.next().getDefaultGeometry();
+        assertEquals(6d, line.getCoordinateN(1).z);
+
+        try {
+            reader(strip("{'type': 'Feature', 'geometry': {'type': 'Point', 'coordinates': [[1, 2]]}}"))
+                    .read();
+            fail("Invalid coordinates should fail");
+        } catch (IOException e) {
+            // expected
+        }
+    }
+
+    public void testPropertyValues() throws Exception {
+        GeoJSONReader reader = reader(strip("{'type': 'Feature', 'id': 12, 'properties': "
+                + "{'list': [1, 'a', [2.5]], 'map': {'k': null}, "
+                + "'point': {'type': 'Point', 'coordinates': [1, 2]}}}"));
+        SimpleFeature f = reader.next();
+        assertEquals("12", f.getID());
+        List<?> list = (List<?>) f.getAttribute("list");
+        assertEquals(3, list.size());
+        assertEquals(1L, list.get(0));
+        assertEquals("a", list.get(1));
+        assertEquals(2.5, ((List<?>) list.get(2)).get(0));
+        assertTrue(((java.util.Map<?, ?>) f.getAttribute("map")).containsKey("k"));
+        assertTrue(f.getAttribute("point") instanceof Point);
+    }
+
+    public void testOffsets() throws Exception {
+        String json = collectionText(1000);
+        byte[] bytes = json.getBytes("UTF-8");
+        GeoJSONReader reader = new GeoJSONReader(new ByteArrayInputStream(bytes));
+        SimpleFeatureType type = reader.getFeatureType();
+        long[] starts = new long[1000];
+        String[] ids = new String[1000];
+        for (int i = 0; i < 1000; i++) {
+            SimpleFeature f = reader.next();
+            starts[i] = reader.getFeatureStart();
+            ids[i] = f.getID();
+            assertEquals(strip(featureText(i % 5)),
+                    json.substring((int) reader.getFeatureStart(), (int) reader.getFeatureEnd()));
+        }
+        assertFalse(reader.hasNext());
+
+        // read back single features at their offsets
+        for (int i : new int[] { 0, 499, 999 }) {
+            ByteArrayInputStream in = new ByteArrayInputStream(bytes);
+            in.skip(starts[i]);
+            GeoJSONReader single = new GeoJSONReader(new GeoJSONTokenizer(in, starts[i]),
+                    new GeometryFactory());
+            single.setFeatureType(type);
+            SimpleFeature f = single.readFeature();
+            assertEquals(ids[i], f.getID());
+            assertEquals(starts[i], single.getFeatureStart());
+        }
+    }
+}
@@ -0,0 +1,158 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2013, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.geojson.stream;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Random;
+
+import org.geotools.geojson.GeoJSONTestSupport;
+import org.geotools.geojson.stream.GeoJSONTokenizer.Token;
+
+/**
+ * 
+ *
+ * @source $URL$
+ */
+public class GeoJSONTokenizerTest extends GeoJSONTestSupport {
+
+    GeoJSONTokenizer tokenizer(String json) throws IOException {
+        return new GeoJSONTokenizer(new ByteArrayInputStream(json.getBytes("UTF-8")));
+    }
+
+    public void testTokens() throws Exception {
+        GeoJSONTokenizer t = tokenizer(strip("{'a': [1, 'b', true, false, null], 'c': {'d': 'e'}}"));
+        assertEquals(Token.START_OBJECT, t.next());
+        assertEquals(Token.FIELD_NAME, t.next());
+        assertEquals("a", t.getString());
+        assertEquals(Token.START_ARRAY, t.next());
+        assertEquals(Token.NUMBER, t.next());
+        assertTrue(t.isIntegral());
+        assertEquals(1, t.getLong());
+        assertEquals(Token.STRING, t.next());
+        assertEquals("b", t.getString());
+        assertEquals(Token.TRUE, t.next());
+        assertEquals(Token.FALSE, t.next());
+        assertEquals(Token.NULL, t.next());
+        assertEquals(Token.END_ARRAY, t.next());
+        assertEquals(Token.FIELD_NAME, t.next());
+        assertEquals("c", t.getString());
+        assertEquals(Token.START_OBJECT, t.next());
+        assertEquals(Token.FIELD_NAME, t.next());
+        assertEquals(Token.STRING, t.next());
+        assertEquals("e", t.getString());
+        assertEquals(Token.END_OBJECT, t.next());
+        assertEquals(Token.END_OBJECT, t.next());
+        assertEquals(Token.EOF, t.next());
+    }
+
+    public void testSkipValue() throws Exception {
+        GeoJSONTokenizer t = tokenizer(strip("{'a': {'b': [1, {'c': 'd]}'}], 'e': -1.5e3}, 'f': 2}"));
+        assertEquals(Token.START_OBJECT, t.next());
+        assertEquals(Token.FIELD_NAME, t.next());
+        t.skipValue(t.next());
+        assertEquals(Token.FIELD_NAME, t.next());
+        assertEquals("f", t.getString());
+        assertEquals(Token.NUMBER, t.next());
+        assertEquals(2d, t.getDouble());
+        assertEquals(Token.END_OBJECT, t.next());
+        assertEquals(0, t.getDepth());
+    }
+
+    public void testStrings() throws Exception {
+        String value = "a\u00e8\u4e2d\ud83d\ude00";
+        GeoJSONTokenizer t = tokenizer("[\"" + value + "\", \"\\\"\\\\\\/\\n\\u00e8\"]");
+        assertEquals(Token.START_ARRAY, t.next());
+        assertEquals(Token.STRING, t.next());
+        assertEquals(value, t.getString());
+        assertEquals(Token.STRING, t.next());
+        assertEquals("\"\\/\n\u00e8", t.getString());
+    }
+
+    public void testNumbers() throws Exception {
+        String[] numbers = { "0", "-0", "12", "-3.25", "0.1", "1e10", "1E-7", "2.5e+3",
+                "123456789012345678901234567890", "0.30000000000000004", "4.9e-324",
+                "1.7976931348623157e308", "9007199254740993", "-9223372036854775808",
+                "123.456789012345678" };
+        for (String number : numbers) {
+            GeoJSONTokenizer t = tokenizer(number);
+            assertEquals(Token.NUMBER, t.next());
+            assertEquals(number, Double.parseDouble(number), t.getDouble());
+        }
+
+        Random random = new Random(42);
+        StringBuilder sb = new StringBuilder("[");
+        double[] values = new double[10000];
+        for (int i = 0; i < values.length; i++) {
+            double value = (random.nextDouble() - 0.5) * Math.pow(10, random.nextInt(20) - 10);
+            if (i % 2 == 0) {
+                // typical coordinates
+                value = Math.round(value * 1e6) / 1e6;
+            }
+            values[i] = value;
+            sb.append(value).append(",");
+        }
+        sb.setLength(sb.length() - 1);
+        sb.append("]");
+        GeoJSONTokenizer t = tokenizer(sb.toString());
+        assertEquals(Token.START_ARRAY, t.next());
+        for (int i = 0; i < values.length; i++) {
+            assertEquals(Token.NUMBER, t.next());
+            assertEquals(values[i], t.getDouble());
+        }
+        assertEquals(Token.END_ARRAY, t.next());
+    }
+
+    public void testOffsets() throws Exception {
+        // a stream returning few bytes at a time, to cross buffer boundaries
+        StringBuilder sb = new StringBuilder("[");
+        for (int i = 0; i < 20000; i++) {
+            sb.append("{\"n\": ").append(i).append("},");
+        }
+        sb.setLength(sb.length() - 1);
+        sb.append("]");
+        final String json = sb.toString();
+        InputStream in = new ByteArrayInputStream(json.getBytes("UTF-8")) {
+            public synchronized int read(byte[] b, int off, int len) {
+                return super.read(b, off, Math.min(len, 7));
+            }
+        };
+        GeoJSONTokenizer t = new GeoJSONTokenizer(in);
+        assertEquals(Token.START_ARRAY, t.next());
+        for (int i = 0; i < 20000; i++) {
+            assertEquals(Token.START_OBJECT, t.next());
+            long start = t.getTokenOffset();
+            t.skipValue(Token.START_OBJECT);
+            assertEquals("{\"n\": " + i + "}", json.substring((int) start, (int) t.getOffset()));
+        }
+        assertEquals(Token.END_ARRAY, t.next());
+    }
+
+    public void testInvalid() throws Exception {
+        for (String json : new String[] { "[tru]", "[1.e]", "[\"abc", "@", "]" }) {
+            try {
+                GeoJSONTokenizer t = tokenizer(json);
+                while (t.next() != Token.EOF)
+                    ;
+                fail(json);
+            } catch (IOException e) {
+                // expected
+            }
+        }
+    }
+}
@@ -0,0 +1,199 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2013, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.geojson.stream;
+
+import java.io.ByteArrayInputStream;
+import java.io.StringWriter;
+import java.util.Date;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.geotools.data.collection.ListFeatureCollection;
+import org.geotools.feature.DefaultFeatureCollection;
+import org.geotools.feature.simple.SimpleFeatureBuilder;
+import org.geotools.feature.simple.SimpleFeatureTypeBuilder;
+import org.geotools.geojson.GeoJSONTestSupport;
+import org.geotools.geojson.feature.FeatureJSON;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.GeometryFactory;
+import com.vividsolutions.jts.io.WKTReader;
+
+/**
+ * 
+ *
+ * @source $URL$
+ */
+public class GeoJSONWriterTest extends GeoJSONTestSupport {
+
+    SimpleFeatureType featureType;
+
+    SimpleFeatureBuilder fb;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+
+        SimpleFeatureTypeBuilder tb = new SimpleFeatureTypeBuilder();
+        tb.setName("feature");
+        tb.setSRS("EPSG:4326");
+        tb.add("int", Integer.class);
+        tb.add("double", Double.class);
+        tb.add("string", String.class);
+        tb.add("geometry", Geometry.class);
+        featureType = tb.buildFeatureType();
+        fb = new SimpleFeatureBuilder(featureType);
+    }
+
+    SimpleFeature feature(int val) {
+        fb.add(val);
+        fb.add(val + 0.1);
+        fb.add(toString(val % 5));
+        fb.add(new GeometryFactory().createPoint(new Coordinate(val + 0.1, val + 0.1)));
+        return fb.buildFeature("feature." + val);
+    }
+
+    ListFeatureCollection collection(int count) {
+        ListFeatureCollection collection = new ListFeatureCollection(featureType);
+        for (int i = 0; i < count; i++) {
+            collection.add(feature(i));
+        }
+        return collection;
+    }
+
+    String write(ListFeatureCollection features, GeoJSONWriter writer, StringWriter out)
+            throws Exception {
+        writer.writeFeatureCollection(features);
+        return out.toString();
+    }
+
+    public void testSameAsFeatureJSON() throws Exception {
+        DefaultFeatureCollection features = new DefaultFeatureCollection(null, featureType);
+        for (int i = 0; i < 3; i++) {
+            features.add(feature(i));
+        }
+        StringWriter out = new StringWriter();
+        new GeoJSONWriter(out).writeFeatureCollection(features);
+        String json = out.toString();
+        assertEquals(new FeatureJSON().toString(features), json);
+    }
+
+    public void testCollectionMembers() throws Exception {
+        StringWriter out = new StringWriter();
+        GeoJSONWriter writer = new GeoJSONWriter(out);
+        writer.setEncodeFeatureBounds(true);
+        writer.setEncodeFeatureCRS(true);
+        writer.writeFeatureCollection(collection(1), true, true);
+        assertEquals(strip("{'type':'FeatureCollection','bbox':[0.1,0.1,0.1,0.1],"
+                + "'crs':{'type':'name','properties':{'name':'EPSG:4326'}},'features':["
+                + "{'type':'Feature','crs':{'type':'name','properties':{'name':'EPSG:4326'}},"
+                + "'bbox':[0.1,0.1,0.1,0.1],'geometry':{'type':'Point','coordinates':[0.1,0.1]},"
+                + "'properties':{'int':0,'double':0.1,'string':'zero'},'id':'feature.0'}]}"),
+                out.toString());
+    }
+
+    public void testValues() throws Exception {
+        SimpleFeatureTypeBuilder tb = new SimpleFeatureTypeBuilder();
+        tb.setName("values");
+        tb.add("name", String.class);
+        tb.add("real", Double.class);
+        tb.add("date", Date.class);
+        tb.add("object", Object.class);
+        tb.add("missing", String.class);
+        tb.add("geometry", Geometry.class);
+        SimpleFeature feature = SimpleFeatureBuilder.build(tb.buildFeatureType(), new Object[] {
+                "a \"quoted\"\n/path", 2d, new Date(0), 12L, null, null }, "v.1");
+
+        StringWriter out = new StringWriter();
+        GeoJSONWriter writer = new GeoJSONWriter(out);
+        writer.writeFeature(feature);
+        writer.flush();
+        assertEquals("{\"type\":\"Feature\",\"geometry\":null,\"properties\":{"
+                + "\"name\":\"a \\\"quoted\\\"\\n\\/path\",\"real\":2.0,"
+                + "\"date\":\"1970-01-01T00:00:00.000+0000\",\"object\":12},\"id\":\"v.1\"}",
+                out.toString());
+
+        out = new StringWriter();
+        writer = new GeoJSONWriter(out);
+        writer.setEncodeNullValues(true);
+        writer.writeFeature(feature);
+        writer.flush();
+        assertTrue(out.toString().contains("\"missing\":null"));
+    }
+
+    public void testGeometries() throws Exception {
+        String[] wkts = { "POINT (1 2 3)", "MULTIPOINT ((1 2), (3 4))",
+                "LINESTRING (1.123456 2, 3 4, 5 6)", "MULTILINESTRING ((1 2, 3 4), (5 6, 7 8))",
+                "POLYGON ((0 0, 10 0, 10 10, 0 0), (1 1, 2 1, 2 2, 1 1))",
+                "MULTIPOLYGON (((0 0, 1 0, 1 1, 0 0)), ((5 5, 6 5, 6 6, 5 5)))",
+                "GEOMETRYCOLLECTION (POINT (1 2), LINESTRING (1 2, 3 4))", "LINESTRING EMPTY",
+                "POLYGON EMPTY" };
+        WKTReader wkt = new WKTReader();
+        for (String text : wkts) {
+            Geometry geometry = wkt.read(text);
+            StringWriter out = new StringWriter();
+            GeoJSONWriter writer = new GeoJSONWriter(out);
+            writer.setDecimals(-1);
+            writer.writeGeometry(geometry);
+            writer.flush();
+
+            GeoJSONReader reader = new GeoJSONReader(new ByteArrayInputStream(
+                    ("{\"type\":\"Feature\",\"geometry\":" + out + "}").getBytes("UTF-8")));
+            Geometry read = (Geometry) reader.next().getDefaultGeometry();
+            assertTrue(text, geometry.equalsExact(read));
+        }
+
+        StringWriter out = new StringWriter();
+        GeoJSONWriter writer = new GeoJSONWriter(out);
+        writer.setDecimals(2);
+        writer.writeGeometry(wkt.read("LINESTRING (1.123456 2, -3.999 4.006)"));
+        writer.flush();
+        assertEquals(strip("{'type':'LineString','coordinates':[[1.12,2],[-4,4.01]]}"),
+                out.toString());
+    }
+
+    public void testParallel() throws Exception {
+        ListFeatureCollection features = collection(2500);
+        StringWriter out = new StringWriter();
+        String expected = write(features, new GeoJSONWriter(out), out);
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            for (int chunkSize : new int[] { 1, 7, 1000, 5000 }) {
+                out = new StringWriter();
+                GeoJSONWriter writer = new GeoJSONWriter(out);
+                writer.setExecutor(executor);
+                writer.setChunkSize(chunkSize);
+                assertEquals(expected, write(features, writer, out));
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        GeoJSONReader reader = new GeoJSONReader(new ByteArrayInputStream(
+                expected.getBytes("UTF-8")));
+        int count = 0;
+        while (reader.hasNext()) {
+            assertEquals("feature." + count, reader.next().getID());
+            count++;
+        }
+        assertEquals(2500, count);
+    }
+}
@@ -17,6 +17,10 @@
  */
 package org.geotools.process.vector;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
 import javax.measure.unit.NonSI;
 import javax.measure.unit.SI;
 import javax.measure.unit.Unit;
@@ -27,20 +31,25 @@ import org.geotools.coverage.grid.GridCoverageFactory;
 import org.geotools.data.Query;
 import org.geotools.data.simple.SimpleFeatureCollection;
 import org.geotools.data.simple.SimpleFeatureIterator;
+import org.geotools.factory.CommonFactoryFinder;
 import org.geotools.factory.Hints;
 import org.geotools.filter.text.cql2.CQLException;
 import org.geotools.filter.text.ecql.ECQL;
 import org.geotools.geometry.jts.ReferencedEnvelope;
 import org.geotools.process.ProcessException;
+import org.geotools.process.Processors;
 import org.geotools.process.factory.DescribeParameter;
 import org.geotools.process.factory.DescribeProcess;
 import org.geotools.process.factory.DescribeResult;
 import org.geotools.referencing.CRS;
+import org.geotools.util.WeakValueHashMap;
 import org.opengis.coverage.grid.GridCoverage;
 import org.opengis.coverage.grid.GridGeometry;
 import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.filter.And;
 import org.opengis.filter.Filter;
 import org.opengis.filter.expression.Expression;
+import org.opengis.filter.spatial.BBOX;
 import org.opengis.referencing.FactoryException;
 import org.opengis.referencing.crs.CoordinateReferenceSystem;
 import org.opengis.referencing.operation.MathTransform;
@@ -88,6 +97,11 @@ import com.vividsolutions.jts.geom.Geometry;
  * <li><b>outputBBOX</b> (M) - The georeferenced bounding box of the output area
  * <li><b>outputWidth</b> (M) - The width of the output raster
  * <li><b>outputHeight</b> (M) - The height of the output raster
+ * <li><b>pyramidKey</b> (O) - Identifies the data set (e.g. layer and filter) the input points
+ * come from. When provided, and the process is used as a rendering transformation, the points are
+ * binned once in a {@link HeatmapPyramid} cached under this key, and later requests compute the
+ * surface from the pyramid instead of the points. The key must identify immutable data, see
+ * {@link HeatmapPyramid#getCacheKey(String, String, CoordinateReferenceSystem)}
  * </ul>
  * The output of the process is a {@linkplain GridCoverage2D} with a single band, with cell values
  * in the range [0, 1].
@@ -109,7 +123,12 @@ import com.vividsolutions.jts.geom.Geometry;
  * </ul>
  * When used as an Rendering Transformation the data query is rewritten to expand the query BBOX, to
  * ensure that enough data points are queried to make the computed surface stable under panning and
- * zooming.
+ * zooming. If a <code>pyramidKey</code> is provided the first query reads the whole data set, so
+ * that the pyramid can be built, and the following ones, as long as the pyramid is fine enough
+ * for the requested resolution, read no data at all. The decision taken in <tt>invertQuery</tt>
+ * is stored in the hints of the query it returns, and handed over to the following
+ * <tt>execute</tt> call as long as that query is referenced, so that a pyramid is only ever built
+ * out of the whole data set, and is never built out of a filtered or empty one.
  * 
  * <p>
  * 
@@ -134,6 +153,7 @@ public class HeatmapProcess implements VectorProcess {
             @DescribeParameter(name = "outputBBOX", description = "Bounding box of the output") ReferencedEnvelope argOutputEnv,
             @DescribeParameter(name = "outputWidth", description = "Width of output raster in pixels") Integer argOutputWidth,
             @DescribeParameter(name = "outputHeight", description = "Height of output raster in pixels") Integer argOutputHeight,
+            @DescribeParameter(name = "pyramidKey", description = "Identifier of the input data set. If provided the data points are binned in a multi-resolution pyramid cached under this key and reused by later requests", min = 0, max = 1) String pyramidKey,
 
             ProgressListener monitor) throws ProcessException {
 
@@ -184,17 +204,54 @@ public class HeatmapProcess implements VectorProcess {
          */
         HeatmapSurface heatMap = new HeatmapSurface(radiusCells, argOutputEnv, gridWidth,
                 gridHeight);
-        try {
-            extractPoints(obsFeatures, valueAttr, trans, heatMap);
-        } catch (CQLException e) {
-            throw new ProcessException(e);
+        String cacheKey = null;
+        HeatmapPyramid pyramid = null;
+        int level = -1;
+        boolean buildPyramid = false;
+        if (pyramidKey != null) {
+            cacheKey = HeatmapPyramid.getCacheKey(pyramidKey, valueAttr, dstCRS);
+            PyramidPlan plan = PLANS.remove(cacheKey);
+            if (plan != null && !cacheKey.equals(plan.cacheKey)) {
+                plan = null;
+            }
+            if (plan != null && plan.pyramid != null) {
+                // the query excluded all the data, the pyramid seen there is the only source
+                pyramid = plan.pyramid;
+                level = Math.max(0, pyramid.getLevel(heatMap.getCellSize()));
+            } else {
+                pyramid = HeatmapPyramid.getCached(cacheKey);
+                if (pyramid != null) {
+                    level = pyramid.getLevel(heatMap.getCellSize());
+                }
+                // only the whole data set, as read when the pyramid was missing, can build it
+                buildPyramid = plan != null && pyramid == null;
+            }
+        }
+        if (level >= 0) {
+            pyramid.accumulate(heatMap, level);
+        } else {
+            HeatmapPyramid newPyramid = null;
+            if (buildPyramid) {
+                newPyramid = createPyramid(obsFeatures, dstCRS);
+            }
+            try {
+                extractPoints(obsFeatures, valueAttr, trans, heatMap, newPyramid);
+            } catch (CQLException e) {
+                throw new ProcessException(e);
+            }
+            if (newPyramid != null && !newPyramid.isEmpty()) {
+                HeatmapPyramid.cache(cacheKey, newPyramid);
+            }
         }
 
         /**
          * --------------- Do the processing ------------------------------
          */
         // Stopwatch sw = new Stopwatch();
-        // compute the heatmap at the specified resolution
+        // compute the heatmap at the specified resolution, using all the cores for large grids
+        if ((long) gridWidth * gridHeight > PARALLEL_THRESHOLD) {
+            heatMap.setExecutor(Processors.getSharedExecutor());
+        }
         float[][] heatMapGrid = heatMap.computeSurface();
 
         // flip now, since grid size may be smaller
@@ -214,6 +271,71 @@ public class HeatmapProcess implements VectorProcess {
         return gridCov;
     }
 
+    /**
+     * Number of grid cells above which the surface is computed in parallel
+     */
+    private static final long PARALLEL_THRESHOLD = 1024 * 1024;
+
+    /**
+     * The pyramid handling decided by {@link #invertQuery}, stored in the hints of the query it
+     * returns and handed over to the {@link #execute} call following it
+     */
+    private static class PyramidPlan {
+
+        final String cacheKey;
+
+        /**
+         * The pyramid the surface is computed from, or <code>null</code> if the whole data set has
+         * been requested to build it
+         */
+        final HeatmapPyramid pyramid;
+
+        PyramidPlan(String cacheKey, HeatmapPyramid pyramid) {
+            this.cacheKey = cacheKey;
+            this.pyramid = pyramid;
+        }
+    }
+
+    /**
+     * The query hint holding the {@link PyramidPlan}
+     */
+    static final Hints.Key PYRAMID_PLAN = new Hints.Key(PyramidPlan.class);
+
+    /**
+     * The plans held by the hints of the queries returned by {@link #invertQuery}, by cache key.
+     * The plans are weakly referenced, so they go away with their query even if {@link #execute}
+     * is never called.
+     */
+    private static final Map<String, PyramidPlan> PLANS = new WeakValueHashMap<String, PyramidPlan>();
+
+    /**
+     * Stores the plan in the query hints, and makes it available to {@link #execute}
+     */
+    private static void setPlan(Query query, PyramidPlan plan) {
+        query.getHints().put(PYRAMID_PLAN, plan);
+        PLANS.put(plan.cacheKey, plan);
+    }
+
+    /**
+     * Creates an empty pyramid covering the data set, in the output CRS
+     */
+    private static HeatmapPyramid createPyramid(SimpleFeatureCollection obsFeatures,
+            CoordinateReferenceSystem dstCRS) {
+        ReferencedEnvelope bounds = obsFeatures.getBounds();
+        if (bounds == null || bounds.isNull()) {
+            return null;
+        }
+        try {
+            if (bounds.getCoordinateReferenceSystem() != null
+                    && !CRS.equalsIgnoreMetadata(bounds.getCoordinateReferenceSystem(), dstCRS)) {
+                bounds = bounds.transform(dstCRS, true);
+            }
+        } catch (Exception e) {
+            throw new ProcessException("Failed to compute the data set bounds in the output CRS", e);
+        }
+        return new HeatmapPyramid(bounds, HeatmapPyramid.DEFAULT_SIZE);
+    }
+
     /*
      * An approximate value for the length of a degree at the equator in meters. This doesn't have
      * to be precise, since it is only used to convert values which are themselves rough
@@ -276,6 +398,10 @@ public class HeatmapProcess implements VectorProcess {
      * Note that in order to pass validation, all parameters named here must also appear in the
      * parameter list of the <tt>execute</tt> method, even if they are not used there.
      * 
+     * When a <code>pyramidKey</code> is provided and the pyramid has not been built yet the bounding
+     * box filter is removed, so that the whole data set is read, while if the cached pyramid can
+     * serve the request no data is read at all.
+     * 
      * @param argRadiusPixels the feature type attribute that contains the observed surface value
      * @param targetQuery the query used against the data source
      * @param targetGridGeometry the grid geometry of the destination image
@@ -287,10 +413,42 @@ public class HeatmapProcess implements VectorProcess {
             @DescribeParameter(name = "outputBBOX", description = "Georeferenced bounding box of the output") ReferencedEnvelope argOutputEnv,
             @DescribeParameter(name = "outputWidth", description = "Width of the output raster") Integer argOutputWidth,
             @DescribeParameter(name = "outputHeight", description = "Height of the output raster") Integer argOutputHeight,
+            @DescribeParameter(name = "weightAttr", description = "Name of the attribute to use for data point weight", min = 0, max = 1) String valueAttr,
+            @DescribeParameter(name = "pixelsPerCell", description = "Resolution at which to compute the heatmap (in pixels)", min = 0, max = 1) Integer argPixelsPerCell,
+            @DescribeParameter(name = "pyramidKey", description = "Identifier of the input data set", min = 0, max = 1) String pyramidKey,
 
             Query targetQuery, GridGeometry targetGridGeometry) throws ProcessException {
 
         // TODO: handle different CRSes in input and output
+        if (pyramidKey != null) {
+            String cacheKey = HeatmapPyramid.getCacheKey(pyramidKey, valueAttr,
+                    argOutputEnv.getCoordinateReferenceSystem());
+            // forget the plan of an earlier query, this one is going to be filtered
+            PLANS.remove(cacheKey);
+            HeatmapPyramid pyramid = HeatmapPyramid.getCached(cacheKey);
+            if (pyramid == null) {
+                // read the whole data set, the pyramid will be built out of it
+                setPlan(targetQuery, new PyramidPlan(cacheKey, null));
+                targetQuery.setFilter(removeBBox(targetQuery.getFilter()));
+                targetQuery.setProperties(null);
+                targetQuery.getHints().put(Hints.GEOMETRY_DISTANCE, 0.0);
+                return targetQuery;
+            }
+            int pixelsPerCell = 1;
+            if (argPixelsPerCell != null && argPixelsPerCell > 1) {
+                pixelsPerCell = argPixelsPerCell;
+            }
+            double cellSize = Math.min(argOutputEnv.getWidth()
+                    / (argOutputWidth / pixelsPerCell - 1), argOutputEnv.getHeight()
+                    / (argOutputHeight / pixelsPerCell - 1));
+            if (pyramid.getLevel(cellSize) >= 0) {
+                // the surface is going to be computed from the pyramid, keep it at hand in case
+                // it gets evicted from the cache in the meantime
+                setPlan(targetQuery, new PyramidPlan(cacheKey, pyramid));
+                targetQuery.setFilter(Filter.EXCLUDE);
+                return targetQuery;
+            }
+        }
         
         int radiusPixels = argRadiusPixels > 0 ? argRadiusPixels : 0;
         // input parameters are required, so should be non-null
@@ -321,6 +479,29 @@ public class HeatmapProcess implements VectorProcess {
         return outputWidth / outputEnv.getWidth();
     }
     
+    /**
+     * Removes the bounding box filters restricting the data set to the output area
+     */
+    private Filter removeBBox(Filter filter) {
+        if (filter instanceof BBOX) {
+            return Filter.INCLUDE;
+        } else if (filter instanceof And) {
+            List<Filter> children = new ArrayList<Filter>();
+            for (Filter child : ((And) filter).getChildren()) {
+                if (!(child instanceof BBOX)) {
+                    children.add(child);
+                }
+            }
+            if (children.isEmpty()) {
+                return Filter.INCLUDE;
+            } else if (children.size() == 1) {
+                return children.get(0);
+            }
+            return CommonFactoryFinder.getFilterFactory2(null).and(children);
+        }
+        return filter;
+    }
+
     private Filter expandBBox(Filter filter, double distance) {
         return (Filter) filter.accept(new BBOXExpandingFilterVisitor(distance, distance, distance,
                 distance), null);
@@ -328,6 +509,15 @@ public class HeatmapProcess implements VectorProcess {
 
     public static void extractPoints(SimpleFeatureCollection obsPoints, String attrName,
             MathTransform trans, HeatmapSurface heatMap) throws CQLException {
+        extractPoints(obsPoints, attrName, trans, heatMap, null);
+    }
+
+    /**
+     * Adds the data points to the surface, and to the pyramid being built, if any.
+     */
+    public static void extractPoints(SimpleFeatureCollection obsPoints, String attrName,
+            MathTransform trans, HeatmapSurface heatMap, HeatmapPyramid pyramid)
+            throws CQLException {
         Expression attrExpr = null;
         if (attrName != null) {
             attrExpr = ECQL.toExpression(attrName);
@@ -359,6 +549,9 @@ public class HeatmapProcess implements VectorProcess {
                     Coordinate pobs = new Coordinate(dstPt[0], dstPt[1], val);
 
                     heatMap.addPoint(pobs.x, pobs.y, val);
+                    if (pyramid != null) {
+                        pyramid.addPoint(pobs.x, pobs.y, val);
+                    }
                 } catch (Exception e) {
                     // just carry on for now (debugging)
                     // throw new ProcessException("Expression " + attrExpr +
@@ -0,0 +1,281 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2013, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.process.vector;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.geotools.referencing.CRS;
+import org.opengis.referencing.crs.CoordinateReferenceSystem;
+
+import com.vividsolutions.jts.geom.Envelope;
+
+/**
+ * A multi-resolution pyramid of the total weight of the data points falling in square cells,
+ * used to feed a {@link HeatmapSurface} without having to read again all the data points.
+ * <p>
+ * The finest level covers the data envelope with a grid having the requested number of cells
+ * along its longest side, each coarser level halves the resolution of the previous one, up to a
+ * single cell. A surface is fed with the coarsest level that is still at least as fine as its own
+ * grid, so the cost of feeding it is proportional to the number of cells in the output, and not
+ * to the number of data points.
+ * <p>
+ * Pyramids can be shared among requests, see {@link #getCached(String)}. The cache holds at most
+ * {@link #MAX_CACHED_KEY} pyramids, evicting the least recently used one.
+ */
+public class HeatmapPyramid {
+
+    /**
+     * The default number of cells along the longest side of the finest level
+     */
+    public static final int DEFAULT_SIZE = 2048;
+
+    /**
+     * The system property setting the maximum number of cached pyramids, 4 by default
+     */
+    public static final String MAX_CACHED_KEY = "org.geotools.process.heatmap.maxCachedPyramids";
+
+    static final int MAX_CACHED = Integer.getInteger(MAX_CACHED_KEY, 4);
+
+    /**
+     * The cached pyramids, by access order, the least recently used one being evicted when there
+     * are too many
+     */
+    private static final Map<String, HeatmapPyramid> CACHE = new LinkedHashMap<String, HeatmapPyramid>(
+            16, 0.75f, true) {
+
+        private static final long serialVersionUID = -2425385786925451165L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, HeatmapPyramid> eldest) {
+            return size() > MAX_CACHED;
+        }
+    };
+
+    private final Envelope envelope;
+
+    private final double cellSize;
+
+    /**
+     * The levels, as XY matrices with (0,0) being the bottom left corner, like the
+     * {@link HeatmapSurface} grids
+     */
+    private float[][][] levels;
+
+    private boolean packed;
+
+    private boolean empty = true;
+
+    /**
+     * Creates a new, empty pyramid
+     *
+     * @param envelope the envelope of the data points
+     * @param size the number of cells along the longest side of the finest level
+     */
+    public HeatmapPyramid(Envelope envelope, int size) {
+        if (envelope == null || envelope.isNull()) {
+            throw new IllegalArgumentException("The pyramid envelope must not be empty");
+        }
+        if (size < 1) {
+            throw new IllegalArgumentException("The pyramid size must be positive: " + size);
+        }
+        this.envelope = new Envelope(envelope);
+        double span = Math.max(envelope.getWidth(), envelope.getHeight());
+        // a single point or a line along an axis
+        this.cellSize = span > 0 ? span / size : 1;
+        int xSize = Math.max(1, (int) Math.ceil(envelope.getWidth() / cellSize));
+        int ySize = Math.max(1, (int) Math.ceil(envelope.getHeight() / cellSize));
+        this.levels = new float[][][] { new float[xSize][ySize] };
+    }
+
+    /**
+     * Adds a data point to the finest level of the pyramid. Points outside of the pyramid
+     * envelope are ignored.
+     *
+     * @param x the X ordinate of the point
+     * @param y the Y ordinate of the point
+     * @param value the data value of the point
+     */
+    public void addPoint(double x, double y, double value) {
+        if (packed) {
+            throw new IllegalStateException("The pyramid has already been packed");
+        }
+        if (!envelope.contains(x, y)) {
+            return;
+        }
+        float[][] grid = levels[0];
+        int i = Math.min((int) ((x - envelope.getMinX()) / cellSize), grid.length - 1);
+        int j = Math.min((int) ((y - envelope.getMinY()) / cellSize), grid[0].length - 1);
+        grid[i][j] += value;
+        empty = false;
+    }
+
+    /**
+     * @return <code>true</code> if no data point fell in the pyramid envelope
+     */
+    public boolean isEmpty() {
+        return empty;
+    }
+
+    /**
+     * Builds the coarser levels of the pyramid. No more points can be added afterwards.
+     */
+    public void pack() {
+        if (packed) {
+            return;
+        }
+        int count = 1;
+        for (int size = Math.max(levels[0].length, levels[0][0].length); size > 1; size = (size + 1) / 2) {
+            count++;
+        }
+        float[][][] result = new float[count][][];
+        result[0] = levels[0];
+        for (int level = 1; level < count; level++) {
+            float[][] finer = result[level - 1];
+            float[][] coarser = new float[(finer.length + 1) / 2][(finer[0].length + 1) / 2];
+            for (int i = 0; i < finer.length; i++) {
+                float[] column = finer[i];
+                float[] target = coarser[i / 2];
+                for (int j = 0; j < column.length; j++) {
+                    target[j / 2] += column[j];
+                }
+            }
+            result[level] = coarser;
+        }
+        levels = result;
+        packed = true;
+    }
+
+    /**
+     * @return the number of levels, which is 1 until the pyramid gets packed
+     */
+    public int getNumLevels() {
+        return levels.length;
+    }
+
+    /**
+     * @param level a level of the pyramid
+     * @return the size of the cells of the level
+     */
+    public double getCellSize(int level) {
+        return cellSize * (1 << level);
+    }
+
+    /**
+     * Picks the level to use for a grid with the given cell size
+     *
+     * @param gridCellSize the cell size of the target grid
+     * @return the coarsest level whose cells are not larger than the requested ones, or -1 if even
+     *         the finest level is too coarse
+     */
+    public int getLevel(double gridCellSize) {
+        int result = -1;
+        for (int level = 0; level < levels.length && getCellSize(level) <= gridCellSize; level++) {
+            result = level;
+        }
+        return result;
+    }
+
+    /**
+     * Adds the weights of a level to a surface, each cell contributing with its total weight as a
+     * data point in its center. Only the cells falling in the surface computation grid are visited.
+     *
+     * @param surface the surface to feed
+     * @param level the pyramid level to use
+     */
+    public void accumulate(HeatmapSurface surface, int level) {
+        if (!packed) {
+            throw new IllegalStateException("The pyramid must be packed before being used");
+        }
+        float[][] grid = levels[level];
+        double size = getCellSize(level);
+        Envelope target = surface.getBufferedEnvelope().intersection(envelope);
+        if (target.isNull()) {
+            return;
+        }
+        int minI = Math.max(0, (int) ((target.getMinX() - envelope.getMinX()) / size));
+        int maxI = Math.min(grid.length - 1, (int) ((target.getMaxX() - envelope.getMinX()) / size));
+        int minJ = Math.max(0, (int) ((target.getMinY() - envelope.getMinY()) / size));
+        int maxJ = Math.min(grid[0].length - 1,
+                (int) ((target.getMaxY() - envelope.getMinY()) / size));
+        for (int i = minI; i <= maxI; i++) {
+            double x = envelope.getMinX() + (i + 0.5) * size;
+            float[] column = grid[i];
+            for (int j = minJ; j <= maxJ; j++) {
+                if (column[j] != 0) {
+                    surface.addPoint(x, envelope.getMinY() + (j + 0.5) * size, column[j]);
+                }
+            }
+        }
+    }
+
+    /**
+     * Builds the key identifying a pyramid in the cache. Cached pyramids are never invalidated
+     * when the data set changes, so the data key must identify immutable data, for instance by
+     * including a version of the data set, or {@link #uncache(String)} must be called on change.
+     *
+     * @param dataKey identifies the data set the pyramid is built from
+     * @param weightAttr the weight attribute, if any
+     * @param crs the coordinate reference system the pyramid is computed in
+     * @return the cache key
+     */
+    public static String getCacheKey(String dataKey, String weightAttr,
+            CoordinateReferenceSystem crs) {
+        String srs = crs == null ? null : CRS.toSRS(crs);
+        if (srs == null && crs != null) {
+            srs = crs.toWKT();
+        }
+        return dataKey + "|" + weightAttr + "|" + srs;
+    }
+
+    /**
+     * Returns a previously cached pyramid
+     *
+     * @param key the cache key, see {@link #getCacheKey(String, String, CoordinateReferenceSystem)}
+     * @return the pyramid, or <code>null</code> if not found
+     */
+    public static HeatmapPyramid getCached(String key) {
+        synchronized (CACHE) {
+            return CACHE.get(key);
+        }
+    }
+
+    /**
+     * Caches a pyramid for later usage, evicting the least recently used one if the cache is
+     * full. The pyramid must have been built out of the whole data set identified by the key.
+     *
+     * @param key the cache key, see {@link #getCacheKey(String, String, CoordinateReferenceSystem)}
+     * @param pyramid a packed pyramid
+     */
+    public static void cache(String key, HeatmapPyramid pyramid) {
+        pyramid.pack();
+        synchronized (CACHE) {
+            CACHE.put(key, pyramid);
+        }
+    }
+
+    /**
+     * Removes a pyramid from the cache, to be used when the data it's been built from changes
+     *
+     * @param key the cache key, see {@link #getCacheKey(String, String, CoordinateReferenceSystem)}
+     */
+    public static void uncache(String key) {
+        synchronized (CACHE) {
+            CACHE.remove(key);
+        }
+    }
+}
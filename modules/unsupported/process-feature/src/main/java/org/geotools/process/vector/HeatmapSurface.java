@@ -17,6 +17,15 @@
  */
 package org.geotools.process.vector;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import org.geotools.process.ProcessException;
+
 import com.vividsolutions.jts.geom.Envelope;
 
 /**
@@ -29,6 +38,9 @@ import com.vividsolutions.jts.geom.Envelope;
  * "edge effects" from distorting the surface within the requested envelope.
  * <p>
  * The values in the output surface are normalized to lie in the range [0, 1].
+ * <p>
+ * The blur passes work on independent rows, so when an {@link ExecutorService} is provided
+ * large grids are split in strips of rows which are blurred in parallel.
  * 
  * @author Martin Davis, OpenGeo
  * 
@@ -39,6 +51,11 @@ public class HeatmapSurface {
      */
     private static final int GAUSSIAN_APPROX_ITER = 4;
 
+    /**
+     * Minimum number of cells in a strip blurred as a separate task
+     */
+    private static final int MIN_STRIP_CELLS = 64 * 1024;
+
     private Envelope srcEnv;
 
     private int xSize;
@@ -51,6 +68,8 @@ public class HeatmapSurface {
 
     private int kernelRadiusGrid;
 
+    private ExecutorService executor;
+
     /**
      * Creates a new heatmap surface.
      * 
@@ -86,6 +105,40 @@ public class HeatmapSurface {
         grid = new float[xSizeExp][ySizeExp];
     }
 
+    /**
+     * Sets the executor used to blur the grid in parallel strips.
+     * 
+     * @param executor the executor, or <code>null</code> to compute the surface in the calling
+     *        thread
+     */
+    public void setExecutor(ExecutorService executor) {
+        this.executor = executor;
+    }
+
+    /**
+     * Returns the size of the grid cells. The grid is assumed to be isotropic, the smallest side
+     * of the cells is returned otherwise.
+     * 
+     * @return the cell size, in data space units
+     */
+    public double getCellSize() {
+        return Math.min(srcEnv.getWidth() / (xSize - 1), srcEnv.getHeight() / (ySize - 1));
+    }
+
+    /**
+     * Returns the area covered by the computation grid, that is, the data space envelope expanded
+     * by the kernel radius. Only the data points in this area affect the surface.
+     * 
+     * @return the buffered envelope
+     */
+    public Envelope getBufferedEnvelope() {
+        double dx = srcEnv.getWidth() / (xSize - 1);
+        double dy = srcEnv.getHeight() / (ySize - 1);
+        return new Envelope(srcEnv.getMinX() - kernelRadiusGrid * dx, srcEnv.getMinX()
+                + (xSize + kernelRadiusGrid) * dx, srcEnv.getMinY() - kernelRadiusGrid * dy,
+                srcEnv.getMinY() + (ySize + kernelRadiusGrid) * dy);
+    }
+
     /**
      * Adds a new data point to the surface. Data points can be coincident.
      * 
@@ -102,7 +155,7 @@ public class HeatmapSurface {
         int gj = gridTrans.j(y) + kernelRadiusGrid;
 
         // check if point falls outside grid - skip it if so
-        if (gi < 0 || gi > grid.length || gj < 0 || gj > grid[0].length)
+        if (gi < 0 || gi >= grid.length || gj < 0 || gj >= grid[0].length)
             return;
         
         grid[gi][gj] += value;
@@ -231,15 +284,56 @@ public class HeatmapSurface {
         return val;
     }
 
-    private void boxBlur(int kernelRadius, float[][] input, float[][] output) {
+    private void boxBlur(final int kernelRadius, final float[][] input, final float[][] output) {
+        final int width = input.length;
+        final int height = input[0].length;
+        int strips = 1;
+        if (executor != null) {
+            strips = Math.min(height, (width * height) / MIN_STRIP_CELLS);
+            strips = Math.min(strips, 4 * Runtime.getRuntime().availableProcessors());
+        }
+        if (strips <= 1) {
+            boxBlur(kernelRadius, input, output, 0, height);
+            return;
+        }
+
+        // blur strips of rows in parallel, each task writes its own rows of the output
+        List<Future<Void>> futures = new ArrayList<Future<Void>>(strips);
+        try {
+            for (int s = 0; s < strips; s++) {
+                final int jStart = (int) ((long) height * s / strips);
+                final int jEnd = (int) ((long) height * (s + 1) / strips);
+                futures.add(executor.submit(new Callable<Void>() {
+
+                    public Void call() throws Exception {
+                        boxBlur(kernelRadius, input, output, jStart, jEnd);
+                        return null;
+                    }
+                }));
+            }
+            for (Future<Void> future : futures) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ProcessException("Interrupted while computing the heatmap", e);
+        } catch (ExecutionException e) {
+            throw new ProcessException("Failed to compute the heatmap", e.getCause());
+        } finally {
+            for (Future<Void> future : futures) {
+                future.cancel(true);
+            }
+        }
+    }
+
+    private void boxBlur(int kernelRadius, float[][] input, float[][] output, int jStart, int jEnd) {
         int width = input.length;
-        int height = input[0].length;
 
         // init moving average total
         float kernelVal = kernelVal(kernelRadius);
         // System.out.println("boxblur: radius = " + kernelRadius + " kernel val = " + kernelVal);
 
-        for (int j = 0; j < height; j++) {
+        for (int j = jStart; j < jEnd; j++) {
 
             double tot = 0.0;
 
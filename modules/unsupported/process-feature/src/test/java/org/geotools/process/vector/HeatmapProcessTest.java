@@ -16,12 +16,17 @@
  */
 package org.geotools.process.vector;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
 import java.awt.geom.Point2D;
 
 import org.geotools.coverage.grid.GridCoverage2D;
+import org.geotools.data.Query;
 import org.geotools.data.simple.SimpleFeatureCollection;
+import org.geotools.factory.CommonFactoryFinder;
 import org.geotools.feature.DefaultFeatureCollection;
 import org.geotools.feature.simple.SimpleFeatureBuilder;
 import org.geotools.feature.simple.SimpleFeatureTypeBuilder;
@@ -29,6 +34,8 @@ import org.geotools.geometry.jts.ReferencedEnvelope;
 import org.geotools.referencing.crs.DefaultGeographicCRS;
 import org.junit.Test;
 import org.opengis.feature.simple.SimpleFeatureType;
+import org.opengis.filter.Filter;
+import org.opengis.filter.FilterFactory2;
 import org.opengis.util.ProgressListener;
 
 import com.vividsolutions.jts.geom.Coordinate;
@@ -42,6 +49,8 @@ import com.vividsolutions.jts.geom.impl.PackedCoordinateSequenceFactory;
  * 
  */
 public class HeatmapProcessTest {
+
+    private static final FilterFactory2 FF = CommonFactoryFinder.getFilterFactory2(null);
     
     /**
      * A test of a simple surface, validating that the process
@@ -75,6 +84,7 @@ public class HeatmapProcessTest {
                 bounds, // outputEnv
                 100, // outputWidth
                 100, // outputHeight
+                null, // pyramidKey
                 monitor // monitor)
         );
         
@@ -97,6 +107,105 @@ public class HeatmapProcessTest {
 
     }
 
+    /**
+     * Checks the surface computed out of a cached pyramid matches the one computed from the data
+     * points.
+     */
+    @Test
+    public void testPyramidSurface() {
+        ReferencedEnvelope bounds = new ReferencedEnvelope(0, 10, 0, 10, DefaultGeographicCRS.WGS84);
+        Coordinate[] data = new Coordinate[] { new Coordinate(4, 4), new Coordinate(4, 6),
+                new Coordinate(100, 100) };
+        SimpleFeatureCollection fc = createPoints(data, bounds);
+        String key = "testPyramidSurface";
+        HeatmapPyramid.uncache(HeatmapPyramid.getCacheKey(key, null,
+                DefaultGeographicCRS.WGS84));
+
+        // the first request reads the whole data set and builds the pyramid out of it
+        HeatmapProcess process = new HeatmapProcess();
+        Query query = process.invertQuery(20, bounds, 100, 100, null, 1, key, new Query("data",
+                FF.bbox("shape", 0, 0, 10, 10, null)), null);
+        assertEquals(Filter.INCLUDE, query.getFilter());
+        GridCoverage2D direct = process.execute(fc, 20, null, 1, bounds, 100, 100, key, null);
+        HeatmapPyramid pyramid = HeatmapPyramid.getCached(HeatmapPyramid.getCacheKey(key, null,
+                DefaultGeographicCRS.WGS84));
+        assertNotNull(pyramid);
+        assertTrue(pyramid.getNumLevels() > 1);
+
+        // the following ones do not need the data points anymore, even if the pyramid gets
+        // evicted between the query and the execution
+        query = process.invertQuery(20, bounds, 100, 100, null, 1, key, new Query("data",
+                FF.bbox("shape", 0, 0, 10, 10, null)), null);
+        assertEquals(Filter.EXCLUDE, query.getFilter());
+        HeatmapPyramid.uncache(HeatmapPyramid.getCacheKey(key, null, DefaultGeographicCRS.WGS84));
+        GridCoverage2D cov = process.execute(new DefaultFeatureCollection(null, fc.getSchema()),
+                20, null, 1, bounds, 100, 100, key, null);
+        float center1 = coverageValue(cov, 4, 4);
+        float center2 = coverageValue(cov, 4, 6);
+        float midway = coverageValue(cov, 4, 5);
+        float far = coverageValue(cov, 9, 9);
+        assertTrue(Math.abs(center1 - center2) < center1 / 10);
+        assertTrue(midway > center1 / 2);
+        assertTrue(far < center1 / 1000);
+        for (double[] p : new double[][] { { 4, 4 }, { 4, 5 }, { 5, 5 }, { 3, 7 } }) {
+            float expected = coverageValue(direct, p[0], p[1]);
+            assertEquals(expected, coverageValue(cov, p[0], p[1]), expected / 10);
+        }
+    }
+
+    /**
+     * Checks a pyramid is never built out of data that might have been filtered, or is empty
+     */
+    @Test
+    public void testPyramidNotCached() {
+        ReferencedEnvelope bounds = new ReferencedEnvelope(0, 10, 0, 10, DefaultGeographicCRS.WGS84);
+        SimpleFeatureCollection fc = createPoints(new Coordinate[] { new Coordinate(4, 4) },
+                bounds);
+        String key = "testPyramidNotCached";
+        String cacheKey = HeatmapPyramid.getCacheKey(key, null, DefaultGeographicCRS.WGS84);
+        HeatmapPyramid.uncache(cacheKey);
+
+        // direct executions do not know whether the data set has been filtered
+        HeatmapProcess process = new HeatmapProcess();
+        process.execute(fc, 20, null, 1, bounds, 100, 100, key, null);
+        assertNull(HeatmapPyramid.getCached(cacheKey));
+
+        // the whole data set was requested, but it turned out to be empty
+        process.invertQuery(20, bounds, 100, 100, null, 1, key, new Query("data"), null);
+        process.execute(new DefaultFeatureCollection(null, fc.getSchema()), 20, null, 1, bounds,
+                100, 100, key, null);
+        assertNull(HeatmapPyramid.getCached(cacheKey));
+    }
+
+    /**
+     * Checks the plan travels with the query, and the cache evicts the least recently used
+     * pyramids
+     */
+    @Test
+    public void testPyramidCacheBounded() {
+        ReferencedEnvelope bounds = new ReferencedEnvelope(0, 10, 0, 10, DefaultGeographicCRS.WGS84);
+        String key = "testPyramidCacheBounded";
+        HeatmapPyramid.uncache(HeatmapPyramid.getCacheKey(key + 0, null,
+                DefaultGeographicCRS.WGS84));
+        Query query = new HeatmapProcess().invertQuery(20, bounds, 100, 100, null, 1, key + 0,
+                new Query("data"), null);
+        assertNotNull(query.getHints().get(HeatmapProcess.PYRAMID_PLAN));
+
+        for (int i = 0; i <= HeatmapPyramid.MAX_CACHED; i++) {
+            HeatmapPyramid pyramid = new HeatmapPyramid(bounds, 16);
+            pyramid.addPoint(4, 4, 1);
+            HeatmapPyramid.cache(HeatmapPyramid.getCacheKey(key + i, null,
+                    DefaultGeographicCRS.WGS84), pyramid);
+        }
+        assertNull(HeatmapPyramid.getCached(HeatmapPyramid.getCacheKey(key + 0, null,
+                DefaultGeographicCRS.WGS84)));
+        for (int i = 1; i <= HeatmapPyramid.MAX_CACHED; i++) {
+            String cacheKey = HeatmapPyramid.getCacheKey(key + i, null, DefaultGeographicCRS.WGS84);
+            assertNotNull(HeatmapPyramid.getCached(cacheKey));
+            HeatmapPyramid.uncache(cacheKey);
+        }
+    }
+
     private float coverageValue(GridCoverage2D cov, double x, double y)
     {
         float[] covVal = new float[1];
@@ -0,0 +1,695 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2013, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.process.raster;
+
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.awt.image.ColorModel;
+import java.awt.image.DataBuffer;
+import java.awt.image.Raster;
+import java.awt.image.RenderedImage;
+import java.awt.image.SampleModel;
+import java.awt.image.WritableRaster;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Vector;
+
+import javax.media.jai.ImageLayout;
+import javax.media.jai.OpImage;
+import javax.media.jai.PlanarImage;
+import javax.media.jai.RasterFactory;
+
+import org.geotools.coverage.CoverageFactoryFinder;
+import org.geotools.coverage.GridSampleDimension;
+import org.geotools.coverage.grid.GridCoverage2D;
+import org.geotools.process.ProcessException;
+import org.opengis.coverage.grid.GridCoverage;
+import org.opengis.filter.expression.Add;
+import org.opengis.filter.expression.BinaryExpression;
+import org.opengis.filter.expression.Divide;
+import org.opengis.filter.expression.Expression;
+import org.opengis.filter.expression.Function;
+import org.opengis.filter.expression.Literal;
+import org.opengis.filter.expression.Multiply;
+import org.opengis.filter.expression.PropertyName;
+import org.opengis.filter.expression.Subtract;
+
+/**
+ * Evaluates an arithmetic expression over the bands of any number of coverages sharing the same
+ * grid, producing a single band floating point coverage.
+ * <p>
+ * The expression is a filter {@link Expression}, usually parsed from ECQL, e.g.
+ * <code>(nir - red) / (nir + red)</code>. Property names refer to the coverages by name, and pick
+ * their first band, or a specific band with a zero based <code>bN</code> suffix, e.g.
+ * <code>landsat.b3</code>. The four arithmetic operators are supported, along with the
+ * <code>abs, sqrt, exp, log, floor, ceil, rint, round, sin, cos, tan, asin, acos, atan,
+ * toDegrees, toRadians, pow, min, max, atan2</code> functions.
+ * <p>
+ * The expression is compiled once into a flat program, constant sub-expressions being folded, and
+ * the program is run a tile row at a time over arrays of doubles, so the whole expression is
+ * computed in a single pass without materializing any intermediate image. Pixels having a no data
+ * value in any of the referenced bands, or resulting in a NaN or infinite value, are set to the
+ * output no data value. Tiles are computed on demand, as the output image gets read.
+ *
+ * @source $URL$
+ */
+public class BandMath {
+
+    /** Binary operation codes */
+    static final int ADD = 0, SUBTRACT = 1, MULTIPLY = 2, DIVIDE = 3, POW = 4, MIN = 5, MAX = 6,
+            ATAN2 = 7;
+
+    /** Unary operation codes, following the binary ones */
+    static final int ABS = 8, SQRT = 9, EXP = 10, LOG = 11, FLOOR = 12, CEIL = 13, RINT = 14,
+            ROUND = 15, SIN = 16, COS = 17, TAN = 18, ASIN = 19, ACOS = 20, ATAN = 21,
+            TO_DEGREES = 22, TO_RADIANS = 23;
+
+    /** Forms of the binary operations: register and register, register and constant, constant and register */
+    static final int RR = 0, RC = 1, CR = 2;
+
+    static final Map<String, Integer> FUNCTIONS = new HashMap<String, Integer>();
+    static {
+        FUNCTIONS.put("pow", POW);
+        FUNCTIONS.put("min", MIN);
+        FUNCTIONS.put("max", MAX);
+        FUNCTIONS.put("atan2", ATAN2);
+        FUNCTIONS.put("abs", ABS);
+        FUNCTIONS.put("sqrt", SQRT);
+        FUNCTIONS.put("exp", EXP);
+        FUNCTIONS.put("log", LOG);
+        FUNCTIONS.put("floor", FLOOR);
+        FUNCTIONS.put("ceil", CEIL);
+        FUNCTIONS.put("rint", RINT);
+        FUNCTIONS.put("round", ROUND);
+        FUNCTIONS.put("sin", SIN);
+        FUNCTIONS.put("cos", COS);
+        FUNCTIONS.put("tan", TAN);
+        FUNCTIONS.put("asin", ASIN);
+        FUNCTIONS.put("acos", ACOS);
+        FUNCTIONS.put("atan", ATAN);
+        FUNCTIONS.put("toDegrees", TO_DEGREES);
+        FUNCTIONS.put("toRadians", TO_RADIANS);
+    }
+
+    /** Untiled sources are computed in tiles of this size */
+    static final int DEFAULT_TILE_SIZE = 512;
+
+    /**
+     * The result of compiling a sub-expression, either a constant or a register
+     */
+    static final class Operand {
+
+        final boolean constant;
+
+        final double value;
+
+        final int register;
+
+        Operand(double value) {
+            this.constant = true;
+            this.value = value;
+            this.register = -1;
+        }
+
+        Operand(int register) {
+            this.constant = false;
+            this.value = Double.NaN;
+            this.register = register;
+        }
+    }
+
+    /**
+     * A band read by the program
+     */
+    static final class Input {
+
+        final GridCoverage2D coverage;
+
+        final int band;
+
+        final int register;
+
+        /** Index of the source image in the sources array */
+        int source;
+
+        double[] noData;
+
+        Input(GridCoverage2D coverage, int band, int register) {
+            this.coverage = coverage;
+            this.band = band;
+            this.register = register;
+        }
+    }
+
+    /**
+     * Computes the output tiles on demand, running the program over the tile area
+     */
+    static final class BandMathOpImage extends OpImage {
+
+        final BandMath math;
+
+        /** The offset of each source from the reference image */
+        final int[] dx;
+
+        final int[] dy;
+
+        BandMathOpImage(BandMath math, ImageLayout layout) {
+            super(wrap(math.sources), layout, null, false);
+            this.math = math;
+            final RenderedImage image = math.reference.getRenderedImage();
+            this.dx = new int[math.sources.size()];
+            this.dy = new int[dx.length];
+            for (int i = 0; i < dx.length; i++) {
+                dx[i] = math.sources.get(i).getMinX() - image.getMinX();
+                dy[i] = math.sources.get(i).getMinY() - image.getMinY();
+            }
+        }
+
+        static Vector<Object> wrap(List<RenderedImage> sources) {
+            final Vector<Object> result = new Vector<Object>();
+            for (RenderedImage source : sources) {
+                result.add(PlanarImage.wrapRenderedImage(source));
+            }
+            return result;
+        }
+
+        @Override
+        public Raster computeTile(int tileX, int tileY) {
+            final WritableRaster tile = createWritableRaster(sampleModel, new Point(
+                    tileXToX(tileX), tileYToY(tileY)));
+            math.computeTile(tile, tile.getBounds().intersection(getBounds()));
+            return tile;
+        }
+
+        @Override
+        public Rectangle mapSourceRect(Rectangle sourceRect, int sourceIndex) {
+            return new Rectangle(sourceRect.x - dx[sourceIndex], sourceRect.y - dy[sourceIndex],
+                    sourceRect.width, sourceRect.height);
+        }
+
+        @Override
+        public Rectangle mapDestRect(Rectangle destRect, int sourceIndex) {
+            return new Rectangle(destRect.x + dx[sourceIndex], destRect.y + dy[sourceIndex],
+                    destRect.width, destRect.height);
+        }
+    }
+
+    private final Map<String, GridCoverage2D> coverages;
+
+    private final GridCoverage2D reference;
+
+    private final List<Input> inputs = new ArrayList<Input>();
+
+    /** The compiled program, one entry per instruction in each array */
+    private int[] codes = new int[8];
+
+    private int[] forms = new int[8];
+
+    private int[] targets = new int[8];
+
+    private int[] left = new int[8];
+
+    private int[] right = new int[8];
+
+    private double[] constants = new double[8];
+
+    private int instructions;
+
+    private int registers;
+
+    private final Operand result;
+
+    /** The distinct source images, and their offset from the reference image */
+    private final List<RenderedImage> sources = new ArrayList<RenderedImage>();
+
+    private double noData = Double.NaN;
+
+    /**
+     * Compiles the expression
+     * 
+     * @param expression the expression to evaluate
+     * @param coverages the coverages the expression refers to, by name. They must all share the
+     *        same grid.
+     * @throws IllegalArgumentException if the expression is not supported or refers to unknown
+     *         coverages or bands
+     * @throws ProcessException if the coverages do not share the same grid
+     */
+    public BandMath(Expression expression, Map<String, GridCoverage2D> coverages)
+            throws IllegalArgumentException, ProcessException {
+        if (coverages == null || coverages.isEmpty()) {
+            throw new IllegalArgumentException("At least one coverage is required");
+        }
+        this.coverages = coverages;
+        this.result = compile(expression);
+        if (inputs.isEmpty()) {
+            throw new IllegalArgumentException("The expression does not refer to any coverage: "
+                    + expression);
+        }
+        this.reference = inputs.get(0).coverage;
+
+        final Map<RenderedImage, Integer> images = new IdentityHashMap<RenderedImage, Integer>();
+        for (Input input : inputs) {
+            if (input.coverage != reference) {
+                BaseCoverageAlgebraProcess.checkCompatibleCoverages(reference, input.coverage);
+            }
+            final RenderedImage image = input.coverage.getRenderedImage();
+            Integer source = images.get(image);
+            if (source == null) {
+                source = sources.size();
+                images.put(image, source);
+                sources.add(image);
+            }
+            input.source = source;
+            input.noData = input.coverage.getSampleDimension(input.band).getNoDataValues();
+        }
+    }
+
+    /**
+     * Sets the value of the output pixels that cannot be computed, NaN by default
+     */
+    public void setNoData(double noData) {
+        this.noData = noData;
+    }
+
+    public double getNoData() {
+        return noData;
+    }
+
+    /**
+     * @return the number of instructions of the compiled program, constant folding included
+     */
+    int getInstructionCount() {
+        return instructions;
+    }
+
+    /**
+     * Evaluates the expression over the whole grid. The output tiles are computed as they get
+     * requested, and cached, by the JAI machinery, which also takes care of computing them in
+     * parallel when prefetched.
+     * 
+     * @param name the name of the output coverage
+     * @return a single band coverage of floats
+     */
+    public GridCoverage2D execute(String name) {
+        final RenderedImage image = reference.getRenderedImage();
+        int tileWidth = image.getTileWidth();
+        int tileHeight = image.getTileHeight();
+        if (tileWidth > 2 * DEFAULT_TILE_SIZE || tileHeight > 2 * DEFAULT_TILE_SIZE) {
+            tileWidth = Math.min(tileWidth, DEFAULT_TILE_SIZE);
+            tileHeight = Math.min(tileHeight, DEFAULT_TILE_SIZE);
+        }
+        final SampleModel sm = RasterFactory.createBandedSampleModel(DataBuffer.TYPE_FLOAT,
+                tileWidth, tileHeight, 1);
+        final ColorModel cm = PlanarImage.createColorModel(sm);
+        final ImageLayout layout = new ImageLayout(image.getMinX(), image.getMinY(),
+                image.getWidth(), image.getHeight(), image.getMinX(), image.getMinY(), tileWidth,
+                tileHeight, sm, cm);
+        final RenderedImage output = new BandMathOpImage(this, layout);
+
+        final Map<String, Object> properties = new HashMap<String, Object>();
+        if (!Double.isNaN(noData)) {
+            properties.put("GC_NODATA", noData);
+        }
+        final List<GridCoverage> sourceCoverages = new ArrayList<GridCoverage>();
+        for (Input input : inputs) {
+            if (!sourceCoverages.contains(input.coverage)) {
+                sourceCoverages.add(input.coverage);
+            }
+        }
+        return CoverageFactoryFinder.getGridCoverageFactory(null).create(name, output,
+                reference.getGridGeometry(), new GridSampleDimension[] { new GridSampleDimension(
+                        name) }, sourceCoverages.toArray(new GridCoverage[sourceCoverages.size()]),
+                properties);
+    }
+
+    /**
+     * Runs the program over the rows of a tile
+     */
+    void computeTile(WritableRaster tile, Rectangle bounds) {
+        if (bounds.isEmpty()) {
+            return;
+        }
+        final int width = bounds.width;
+        final double[][] values = new double[registers][width];
+        final boolean[] invalid = new boolean[width];
+        final float[] row = new float[width];
+
+        // the source data, translated to the reference image space
+        final Raster[] data = new Raster[sources.size()];
+        final int[] dx = new int[data.length];
+        final int[] dy = new int[data.length];
+        final RenderedImage image = reference.getRenderedImage();
+        for (int i = 0; i < data.length; i++) {
+            final RenderedImage source = sources.get(i);
+            dx[i] = source.getMinX() - image.getMinX();
+            dy[i] = source.getMinY() - image.getMinY();
+            data[i] = source.getData(new Rectangle(bounds.x + dx[i], bounds.y + dy[i], width,
+                    bounds.height));
+        }
+
+        for (int y = bounds.y; y < bounds.y + bounds.height; y++) {
+            Arrays.fill(invalid, false);
+            for (Input input : inputs) {
+                final double[] target = values[input.register];
+                data[input.source].getSamples(bounds.x + dx[input.source], y + dy[input.source],
+                        width, 1, input.band, target);
+                final double[] nd = input.noData;
+                if (nd != null) {
+                    for (int k = 0; k < nd.length; k++) {
+                        final double value = nd[k];
+                        for (int i = 0; i < width; i++) {
+                            if (target[i] == value) {
+                                invalid[i] = true;
+                            }
+                        }
+                    }
+                }
+            }
+            run(values, width);
+
+            if (result.constant) {
+                Arrays.fill(row, (float) result.value);
+            } else {
+                final double[] computed = values[result.register];
+                for (int i = 0; i < width; i++) {
+                    row[i] = (float) computed[i];
+                }
+            }
+            for (int i = 0; i < width; i++) {
+                final float value = row[i];
+                if (invalid[i] || Float.isNaN(value) || Float.isInfinite(value)) {
+                    row[i] = (float) noData;
+                }
+            }
+            tile.setSamples(bounds.x, y, width, 1, 0, row);
+        }
+    }
+
+    /**
+     * Runs all the instructions, each one over the whole row
+     */
+    private void run(double[][] values, int width) {
+        for (int p = 0; p < instructions; p++) {
+            final int code = codes[p];
+            final int form = forms[p];
+            final double[] t = values[targets[p]];
+            final double[] a = form == CR ? null : values[left[p]];
+            final double[] b = form == RR && code < ABS ? values[right[p]] : null;
+            final double c = constants[p];
+            switch (code) {
+            case ADD:
+                if (form == RR) {
+                    for (int i = 0; i < width; i++) {
+                        t[i] = a[i] + b[i];
+                    }
+                } else if (form == RC) {
+                    for (int i = 0; i < width; i++) {
+                        t[i] = a[i] + c;
+                    }
+                } else {
+                    final double[] r = values[right[p]];
+                    for (int i = 0; i < width; i++) {
+                        t[i] = c + r[i];
+                    }
+                }
+                break;
+            case SUBTRACT:
+                if (form == RR) {
+                    for (int i = 0; i < width; i++) {
+                        t[i] = a[i] - b[i];
+                    }
+                } else if (form == RC) {
+                    for (int i = 0; i < width; i++) {
+                        t[i] = a[i] - c;
+                    }
+                } else {
+                    final double[] r = values[right[p]];
+                    for (int i = 0; i < width; i++) {
+                        t[i] = c - r[i];
+                    }
+                }
+                break;
+            case MULTIPLY:
+                if (form == RR) {
+                    for (int i = 0; i < width; i++) {
+                        t[i] = a[i] * b[i];
+                    }
+                } else if (form == RC) {
+                    for (int i = 0; i < width; i++) {
+                        t[i] = a[i] * c;
+                    }
+                } else {
+                    final double[] r = values[right[p]];
+                    for (int i = 0; i < width; i++) {
+                        t[i] = c * r[i];
+                    }
+                }
+                break;
+            case DIVIDE:
+                if (form == RR) {
+                    for (int i = 0; i < width; i++) {
+                        t[i] = a[i] / b[i];
+                    }
+                } else if (form == RC) {
+                    for (int i = 0; i < width; i++) {
+                        t[i] = a[i] / c;
+                    }
+                } else {
+                    final double[] r = values[right[p]];
+                    for (int i = 0; i < width; i++) {
+                        t[i] = c / r[i];
+                    }
+                }
+                break;
+            default:
+                if (code < ABS) {
+                    if (form == RR) {
+                        for (int i = 0; i < width; i++) {
+                            t[i] = apply(code, a[i], b[i]);
+                        }
+                    } else if (form == RC) {
+                        for (int i = 0; i < width; i++) {
+                            t[i] = apply(code, a[i], c);
+                        }
+                    } else {
+                        final double[] r = values[right[p]];
+                        for (int i = 0; i < width; i++) {
+                            t[i] = apply(code, c, r[i]);
+                        }
+                    }
+                } else {
+                    for (int i = 0; i < width; i++) {
+                        t[i] = apply(code, a[i]);
+                    }
+                }
+            }
+        }
+    }
+
+    static double apply(int code, double a, double b) {
+        switch (code) {
+        case ADD:
+            return a + b;
+        case SUBTRACT:
+            return a - b;
+        case MULTIPLY:
+            return a * b;
+        case DIVIDE:
+            return a / b;
+        case POW:
+            return Math.pow(a, b);
+        case MIN:
+            return Math.min(a, b);
+        case MAX:
+            return Math.max(a, b);
+        case ATAN2:
+            return Math.atan2(a, b);
+        default:
+            throw new IllegalArgumentException("Not a binary operation: " + code);
+        }
+    }
+
+    static double apply(int code, double a) {
+        switch (code) {
+        case ABS:
+            return Math.abs(a);
+        case SQRT:
+            return Math.sqrt(a);
+        case EXP:
+            return Math.exp(a);
+        case LOG:
+            return Math.log(a);
+        case FLOOR:
+            return Math.floor(a);
+        case CEIL:
+            return Math.ceil(a);
+        case RINT:
+            return Math.rint(a);
+        case ROUND:
+            return Math.floor(a + 0.5);
+        case SIN:
+            return Math.sin(a);
+        case COS:
+            return Math.cos(a);
+        case TAN:
+            return Math.tan(a);
+        case ASIN:
+            return Math.asin(a);
+        case ACOS:
+            return Math.acos(a);
+        case ATAN:
+            return Math.atan(a);
+        case TO_DEGREES:
+            return Math.toDegrees(a);
+        case TO_RADIANS:
+            return Math.toRadians(a);
+        default:
+            throw new IllegalArgumentException("Not a unary operation: " + code);
+        }
+    }
+
+    private Operand compile(Expression expression) {
+        if (expression instanceof Literal) {
+            final Double value = expression.evaluate(null, Double.class);
+            if (value == null) {
+                throw new IllegalArgumentException("Not a numeric literal: " + expression);
+            }
+            return new Operand(value);
+        } else if (expression instanceof PropertyName) {
+            return compileInput(((PropertyName) expression).getPropertyName());
+        } else if (expression instanceof BinaryExpression) {
+            final BinaryExpression binary = (BinaryExpression) expression;
+            final int code;
+            if (expression instanceof Add) {
+                code = ADD;
+            } else if (expression instanceof Subtract) {
+                code = SUBTRACT;
+            } else if (expression instanceof Multiply) {
+                code = MULTIPLY;
+            } else if (expression instanceof Divide) {
+                code = DIVIDE;
+            } else {
+                throw new IllegalArgumentException("Unsupported operation: " + expression);
+            }
+            return emit(code, compile(binary.getExpression1()), compile(binary.getExpression2()));
+        } else if (expression instanceof Function) {
+            final Function function = (Function) expression;
+            // type specific variants, e.g. abs_2, are all computed on doubles
+            final String name = function.getName().replaceAll("_\\d+$", "");
+            final Integer code = FUNCTIONS.get(name);
+            if (code == null) {
+                throw new IllegalArgumentException("Unsupported function: " + function.getName());
+            }
+            final List<Expression> parameters = function.getParameters();
+            final int arity = code < ABS ? 2 : 1;
+            if (parameters.size() != arity) {
+                throw new IllegalArgumentException("Function " + name + " expects " + arity
+                        + " arguments");
+            }
+            final Operand a = compile(parameters.get(0));
+            return emit(code, a, arity == 2 ? compile(parameters.get(1)) : null);
+        }
+        throw new IllegalArgumentException("Unsupported expression: " + expression);
+    }
+
+    /**
+     * Resolves a coverage name, with an optional band suffix, to an input register
+     */
+    private Operand compileInput(String name) {
+        GridCoverage2D coverage = coverages.get(name);
+        int band = 0;
+        if (coverage == null) {
+            // ECQL turns name.b1 into name/b1
+            final int separator = Math.max(name.lastIndexOf('/'), name.lastIndexOf('.'));
+            if (separator > 0 && name.length() > separator + 2
+                    && name.charAt(separator + 1) == 'b') {
+                coverage = coverages.get(name.substring(0, separator));
+                try {
+                    band = Integer.parseInt(name.substring(separator + 2));
+                } catch (NumberFormatException e) {
+                    coverage = null;
+                }
+            }
+        }
+        if (coverage == null) {
+            throw new IllegalArgumentException("Unknown coverage: " + name);
+        }
+        if (band < 0 || band >= coverage.getNumSampleDimensions()) {
+            throw new IllegalArgumentException("Coverage " + coverage.getName() + " has no band "
+                    + band);
+        }
+        for (Input input : inputs) {
+            if (input.coverage == coverage && input.band == band) {
+                return new Operand(input.register);
+            }
+        }
+        final Input input = new Input(coverage, band, registers++);
+        inputs.add(input);
+        return new Operand(input.register);
+    }
+
+    /**
+     * Adds an instruction, or folds it if all of its operands are constants
+     */
+    private Operand emit(int code, Operand a, Operand b) {
+        if (b == null) {
+            if (a.constant) {
+                return new Operand(apply(code, a.value));
+            }
+        } else if (a.constant && b.constant) {
+            return new Operand(apply(code, a.value, b.value));
+        }
+
+        if (instructions == codes.length) {
+            final int size = instructions * 2;
+            codes = copy(codes, size);
+            forms = copy(forms, size);
+            targets = copy(targets, size);
+            left = copy(left, size);
+            right = copy(right, size);
+            final double[] grown = new double[size];
+            System.arraycopy(constants, 0, grown, 0, instructions);
+            constants = grown;
+        }
+        codes[instructions] = code;
+        if (b == null || (!a.constant && !b.constant)) {
+            forms[instructions] = RR;
+            left[instructions] = a.register;
+            right[instructions] = b == null ? -1 : b.register;
+        } else if (b.constant) {
+            forms[instructions] = RC;
+            left[instructions] = a.register;
+            constants[instructions] = b.value;
+        } else {
+            forms[instructions] = CR;
+            constants[instructions] = a.value;
+            right[instructions] = b.register;
+        }
+        targets[instructions] = registers++;
+        return new Operand(targets[instructions++]);
+    }
+
+    private static int[] copy(int[] array, int size) {
+        final int[] result = new int[size];
+        System.arraycopy(array, 0, result, 0, array.length);
+        return result;
+    }
+}
@@ -0,0 +1,72 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2013, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.process.raster;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.geotools.coverage.grid.GridCoverage2D;
+import org.geotools.filter.text.cql2.CQLException;
+import org.geotools.filter.text.ecql.ECQL;
+import org.geotools.process.ProcessException;
+import org.geotools.process.factory.DescribeParameter;
+import org.geotools.process.factory.DescribeProcess;
+import org.geotools.process.factory.DescribeResult;
+import org.opengis.util.ProgressListener;
+
+/**
+ * Evaluates an ECQL arithmetic expression over the bands of a set of coverages, in a single pass,
+ * using a {@link BandMath} engine. Coverages are referred to by name, e.g.
+ * <code>(nir - red) / (nir + red)</code>, or by name and band, e.g. <code>landsat.b3</code>.
+ * 
+ * The coverages need to have the same envelope and same resolution (same gridGeometry).
+ * 
+ * @source $URL$
+ */
+@DescribeProcess(title = "Band Math", description = "Returns a raster generated by evaluating an arithmetic expression pixel-by-pixel over the bands of the source rasters. Source rasters must have the same bounding box and resolution.")
+public class BandMathProcess implements RasterProcess {
+
+    @DescribeResult(name = "result", description = "Computed raster")
+    public GridCoverage2D execute(
+            @DescribeParameter(name = "coverage", description = "Input rasters, referred to by name in the expression", min = 1) GridCoverage2D[] coverages,
+            @DescribeParameter(name = "expression", description = "ECQL arithmetic expression, e.g. (nir - red) / (nir + red). A band other than the first is selected with a zero based suffix, e.g. landsat.b3") String expression,
+            @DescribeParameter(name = "nodata", description = "Value of the pixels that cannot be computed (default is NaN)", min = 0) Double noData,
+            ProgressListener progressListener) throws ProcessException {
+        if (coverages == null || coverages.length == 0) {
+            throw new ProcessException("At least one coverage is required");
+        }
+        final Map<String, GridCoverage2D> named = new LinkedHashMap<String, GridCoverage2D>();
+        for (GridCoverage2D coverage : coverages) {
+            named.put(coverage.getName().toString(), coverage);
+        }
+
+        final BandMath math;
+        try {
+            math = new BandMath(ECQL.toExpression(expression), named);
+        } catch (CQLException e) {
+            throw new ProcessException("Invalid band math expression: " + expression, e);
+        } catch (IllegalArgumentException e) {
+            throw new ProcessException(e.getMessage(), e);
+        }
+        if (noData != null) {
+            math.setNoData(noData);
+        }
+
+        return math.execute("bandMath");
+    }
+
+}
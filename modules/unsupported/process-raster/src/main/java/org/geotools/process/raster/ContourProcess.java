@@ -21,13 +21,17 @@ import java.awt.geom.AffineTransform;
 import java.awt.image.RenderedImage;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.LinkedList;
 import java.util.List;
+import java.util.NoSuchElementException;
 
 import javax.media.jai.JAI;
 import javax.media.jai.ParameterBlockJAI;
+import javax.media.jai.ROI;
 import javax.media.jai.RenderedOp;
 
 import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.GeometryFactory;
 import com.vividsolutions.jts.geom.LineString;
 import com.vividsolutions.jts.geom.util.AffineTransformation;
 
@@ -41,7 +45,12 @@ import org.geotools.coverage.grid.GridCoverage2D;
 import org.geotools.coverage.grid.ViewType;
 import org.geotools.data.collection.ListFeatureCollection;
 import org.geotools.data.simple.SimpleFeatureCollection;
+import org.geotools.data.simple.SimpleFeatureIterator;
+import org.geotools.factory.GeoTools;
+import org.geotools.feature.collection.BaseSimpleFeatureCollection;
 import org.geotools.feature.simple.SimpleFeatureBuilder;
+import org.geotools.geometry.jts.JTSFactoryFinder;
+import org.geotools.geometry.jts.ReferencedEnvelope;
 import org.geotools.image.jai.Registry;
 import org.geotools.process.ProcessException;
 import org.geotools.process.factory.DescribeParameter;
@@ -51,6 +60,7 @@ import org.geotools.resources.i18n.Vocabulary;
 import org.geotools.resources.i18n.VocabularyKeys;
 import org.geotools.util.NumberRange;
 
+import org.opengis.feature.simple.SimpleFeature;
 import org.opengis.feature.simple.SimpleFeatureType;
 import org.opengis.metadata.spatial.PixelOrientation;
 import org.opengis.util.InternationalString;
@@ -69,6 +79,11 @@ import org.opengis.util.ProgressListener;
  * Contours are returned as a feature collection, where each feature has, as its default
  * geometry, a {@linkplain LineString} for the contour ("the_geom"), and the contour
  * value as the {@code Double} attribute "value".
+ * <p>
+ * When the {@code tiled} argument is set the contours are traced by a
+ * {@link TiledContourExtractor} instead, one row of tiles at a time with the tiles of a row
+ * processed in parallel, and the features are streamed out as the lines get completed, so that
+ * large rasters can be contoured in bounded memory. Smoothing is not supported in this mode.
  * 
  * @author Simone Giannecchini, GeoSolutions
  * @since 8.0
@@ -82,6 +97,9 @@ public class ContourProcess implements RasterProcess {
     private static final InternationalString NO_DATA = Vocabulary
             .formatInternational(VocabularyKeys.NODATA);
 
+    private static final GeometryFactory GEOMETRY_FACTORY = JTSFactoryFinder
+            .getGeometryFactory(GeoTools.getDefaultHints());
+
     static {
         Registry.registerRIF(JAI.getDefaultInstance(), new ContourDescriptor(), new ContourRIF(),
                 Registry.JAI_TOOLS_PRODUCT);
@@ -121,7 +139,7 @@ public class ContourProcess implements RasterProcess {
             double[] levels, Double interval, Boolean simplify, Boolean smooth, Geometry roi,
             ProgressListener progressListener) throws ProcessException {
         ContourProcess process = new ContourProcess();
-        return process.execute(gc2d, band, levels, interval, simplify, smooth, roi,
+        return process.execute(gc2d, band, levels, interval, simplify, smooth, roi, null,
                 progressListener);
     }
 
@@ -134,6 +152,7 @@ public class ContourProcess implements RasterProcess {
             @DescribeParameter(name = "simplify", description = "Indicates whether contour lines are simplified", min = 0) Boolean simplify,
             @DescribeParameter(name = "smooth", description = "Indicates whether contour lines are smoothed using Bezier smoothing", min = 0) Boolean smooth,
             @DescribeParameter(name = "roi", description = "Geometry delineating the region of interest (in raster coordinate system)", min = 0) Geometry roi,
+            @DescribeParameter(name = "tiled", description = "Indicates whether contours are traced tile by tile in parallel and streamed out as they are completed, using bounded memory. Smoothing is not supported in this mode", min = 0) Boolean tiled,
             ProgressListener progressListener) throws ProcessException {
 
         //
@@ -194,6 +213,13 @@ public class ContourProcess implements RasterProcess {
         // get the rendered image
         final RenderedImage raster = gc2d.getRenderedImage();
 
+        if (Boolean.TRUE.equals(tiled) && !Boolean.TRUE.equals(smooth)) {
+            return new TiledContourCollection(gc2d, raster, band != null ? band : 0,
+                    hasValues ? levels : null, interval, noDataList,
+                    roi != null ? CoverageUtilities.prepareROI(roi, mt2D) : null,
+                    simplify == null || simplify, mt2D);
+        }
+
         // perform jai operation
         ParameterBlockJAI pb = new ParameterBlockJAI("Contour");
         pb.setSource("source0", raster);
@@ -263,4 +289,146 @@ public class ContourProcess implements RasterProcess {
 
     }
 
+    /**
+     * A feature collection tracing the contours with a {@link TiledContourExtractor} while it's
+     * being iterated
+     */
+    static final class TiledContourCollection extends BaseSimpleFeatureCollection {
+
+        final RenderedImage raster;
+
+        final int band;
+
+        final double[] levels;
+
+        final Double interval;
+
+        final List<Object> noData;
+
+        final ROI roi;
+
+        final boolean simplify;
+
+        final AffineTransform mt2D;
+
+        /** Computed on first request along with the bounds, each pass traces the whole raster */
+        int size = -1;
+
+        ReferencedEnvelope bounds;
+
+        TiledContourCollection(GridCoverage2D gc2d, RenderedImage raster, int band,
+                double[] levels, Double interval, List<Object> noData, ROI roi,
+                boolean simplify, AffineTransform mt2D) {
+            super(CoverageUtilities.createFeatureType(gc2d, LineString.class));
+            this.raster = raster;
+            this.band = band;
+            this.levels = levels;
+            this.interval = interval;
+            this.noData = noData;
+            this.roi = roi;
+            this.simplify = simplify;
+            this.mt2D = mt2D;
+        }
+
+        @Override
+        public SimpleFeatureIterator features() {
+            TiledContourExtractor extractor = new TiledContourExtractor(raster, band, levels,
+                    interval, noData, roi, simplify, GEOMETRY_FACTORY);
+            return new TiledContourIterator(extractor, getSchema(), mt2D);
+        }
+
+        @Override
+        public synchronized int size() {
+            computeSizeAndBounds();
+            return size;
+        }
+
+        @Override
+        public synchronized ReferencedEnvelope getBounds() {
+            computeSizeAndBounds();
+            return new ReferencedEnvelope(bounds);
+        }
+
+        private void computeSizeAndBounds() {
+            if (size >= 0) {
+                return;
+            }
+            ReferencedEnvelope envelope = new ReferencedEnvelope(getSchema()
+                    .getCoordinateReferenceSystem());
+            int count = 0;
+            SimpleFeatureIterator it = features();
+            try {
+                while (it.hasNext()) {
+                    envelope.include(it.next().getBounds());
+                    count++;
+                }
+            } finally {
+                it.close();
+            }
+            bounds = envelope;
+            size = count;
+        }
+    }
+
+    /**
+     * Pulls the contours out of the extractor one row of tiles at a time
+     */
+    static final class TiledContourIterator implements SimpleFeatureIterator {
+
+        final TiledContourExtractor extractor;
+
+        final SimpleFeatureBuilder builder;
+
+        final AffineTransformation jtsTransformation;
+
+        final LinkedList<LineString> lines = new LinkedList<LineString>();
+
+        boolean closed;
+
+        int index;
+
+        TiledContourIterator(TiledContourExtractor extractor, SimpleFeatureType schema,
+                AffineTransform mt2D) {
+            this.extractor = extractor;
+            this.builder = new SimpleFeatureBuilder(schema);
+            this.jtsTransformation = new AffineTransformation(mt2D.getScaleX(),
+                    mt2D.getShearX(), mt2D.getTranslateX(), mt2D.getShearY(), mt2D.getScaleY(),
+                    mt2D.getTranslateY());
+            extractor.setExecutor(CoverageUtilities.getTileExecutor());
+        }
+
+        public boolean hasNext() {
+            if (closed) {
+                return false;
+            }
+            while (lines.isEmpty() && extractor.hasMoreRows()) {
+                lines.addAll(extractor.nextRow());
+            }
+            if (lines.isEmpty()) {
+                close();
+                return false;
+            }
+            return true;
+        }
+
+        public SimpleFeature next() throws NoSuchElementException {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            LineString line = lines.removeFirst();
+            Double value = (Double) line.getUserData();
+            line.setUserData(null);
+            line.apply(jtsTransformation);
+            builder.set("the_geom", line);
+            builder.set("value", value);
+            return builder.buildFeature(String.valueOf(index++));
+        }
+
+        public void close() {
+            // the shared executor has no outstanding tasks of ours between rows
+            closed = true;
+            lines.clear();
+        }
+    }
+
 }
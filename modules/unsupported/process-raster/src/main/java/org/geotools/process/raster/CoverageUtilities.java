@@ -4,6 +4,7 @@ import java.awt.geom.AffineTransform;
 import java.awt.geom.NoninvertibleTransformException;
 import java.awt.image.DataBuffer;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
 
 import javax.media.jai.ROI;
 
@@ -13,6 +14,7 @@ import org.geotools.coverage.grid.GridCoverage2D;
 import org.geotools.feature.simple.SimpleFeatureTypeBuilder;
 import org.geotools.geometry.jts.JTS;
 import org.geotools.process.ProcessException;
+import org.geotools.process.Processors;
 import org.geotools.referencing.operation.transform.AffineTransform2D;
 import org.geotools.resources.ClassChanger;
 import org.geotools.util.Utilities;
@@ -297,6 +299,17 @@ public class CoverageUtilities {
 	    }
 	}
 
+	/**
+	 * Returns the thread pool shared by all the processes working on the tiles of a raster in
+	 * parallel, that is {@link Processors#getSharedExecutor()}. Callers must not shut it down,
+	 * they cancel the tasks they submitted instead.
+	 * 
+	 * @return the shared {@link ExecutorService}.
+	 */
+	public static ExecutorService getTileExecutor() {
+	    return Processors.getSharedExecutor();
+	}
+
 //	public static <T extends Number & Comparable> Range<T> convertRange(Range src, Class<T> type) {
 //	    return new Range<T>(convert(src.getMin(), type), src.isMinIncluded(), convert(src.getMax(),
 //	            type), src.isMaxIncluded());
@@ -21,10 +21,13 @@ import java.awt.geom.AffineTransform;
 import java.awt.image.RenderedImage;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.LinkedList;
 import java.util.List;
+import java.util.NoSuchElementException;
 
 import javax.media.jai.JAI;
 import javax.media.jai.ParameterBlockJAI;
+import javax.media.jai.ROI;
 import javax.media.jai.RenderedOp;
 
 import org.jaitools.media.jai.vectorize.VectorizeDescriptor;
@@ -32,6 +35,7 @@ import org.jaitools.media.jai.vectorize.VectorizeRIF;
 import org.jaitools.numeric.Range;
 
 import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.GeometryFactory;
 import com.vividsolutions.jts.geom.Polygon;
 import com.vividsolutions.jts.geom.util.AffineTransformation;
 
@@ -41,10 +45,16 @@ import org.geotools.process.factory.DescribeResult;
 import org.geotools.coverage.grid.GridCoverage2D;
 import org.geotools.data.collection.ListFeatureCollection;
 import org.geotools.data.simple.SimpleFeatureCollection;
+import org.geotools.data.simple.SimpleFeatureIterator;
+import org.geotools.factory.GeoTools;
+import org.geotools.feature.collection.BaseSimpleFeatureCollection;
 import org.geotools.feature.simple.SimpleFeatureBuilder;
+import org.geotools.geometry.jts.JTSFactoryFinder;
+import org.geotools.geometry.jts.ReferencedEnvelope;
 import org.geotools.image.jai.Registry;
 import org.geotools.process.ProcessException;
 
+import org.opengis.feature.simple.SimpleFeature;
 import org.opengis.feature.simple.SimpleFeatureType;
 import org.opengis.metadata.spatial.PixelOrientation;
 import org.opengis.util.ProgressListener;
@@ -61,6 +71,12 @@ import org.opengis.util.ProgressListener;
  * objects) can be provided to pre-classify the input coverage values into intervals. 
  * Vectorizing can also be restricted to a sub-area of the coverage and/or a subset
  * of raster values (by defining values to treat as no-data).
+ * <p>
+ * When the {@code tiled} argument is set the raster is vectorized by a
+ * {@link TiledPolygonExtractor} instead, one row of tiles at a time with the tiles of a row
+ * processed in parallel, and the features are streamed out as the polygons get completed, so that
+ * large rasters can be vectorized in bounded memory. In this mode boundaries between regions are
+ * always vectorized, {@code insideEdges = false} is only supported by the non tiled mode.
  * 
  * @author Simone Giannecchini, GeoSolutions
  * @since 8.0
@@ -75,6 +91,9 @@ public class PolygonExtractionProcess implements RasterProcess {
         Registry.registerRIF(JAI.getDefaultInstance(), new VectorizeDescriptor(), new VectorizeRIF(), Registry.JAI_TOOLS_PRODUCT);
     }
 
+    private static final GeometryFactory GEOMETRY_FACTORY = JTSFactoryFinder
+            .getGeometryFactory(GeoTools.getDefaultHints());
+
     /**
      * Executes the raster to vector process.
      * 
@@ -98,6 +117,9 @@ public class PolygonExtractionProcess implements RasterProcess {
      *     treated as NODATA; values in the first {@code Range} are classified to 1, those
      *     in the second {@code Range} to 2 etc.
      * 
+     * @param tiled whether to vectorize the raster tile by tile in parallel, streaming out the
+     *     polygons as they are completed; defaults to {@code false}
+     * 
      * @param progressListener an optional listener
      * 
      * @return a feature collection where each feature has a {@code Polygon} ("the_geom")
@@ -117,6 +139,7 @@ public class PolygonExtractionProcess implements RasterProcess {
             collectionType = Number.class, min = 0) Collection<Number> noDataValues,
             @DescribeParameter(name = "ranges", description = "Specifier for a value range in the format ( START ; END ).  START and END values are optional. [ and ] can also be used as brackets, to indicate inclusion of the relevant range endpoint.", 
             collectionType = Range.class, min = 0) List<Range> classificationRanges,
+            @DescribeParameter(name = "tiled", description = "Indicates whether the raster is vectorized tile by tile in parallel, streaming out the polygons as they are completed, using bounded memory. Boundaries between regions are always vectorized in this mode", min = 0) Boolean tiled,
             ProgressListener progressListener)
             throws ProcessException {
 
@@ -167,6 +190,13 @@ public class PolygonExtractionProcess implements RasterProcess {
         // get the rendered image
         final RenderedImage raster = coverage.getRenderedImage();
 
+        if (Boolean.TRUE.equals(tiled) && !Boolean.FALSE.equals(insideEdges)) {
+            // the classified raster has a single band
+            return new TiledPolygonCollection(coverage, raster, hasClassificationRanges ? 0
+                    : band, outsideValues, roi != null ? CoverageUtilities.prepareROI(roi, mt2D)
+                    : null, mt2D);
+        }
+
         // perform jai operation
         ParameterBlockJAI pb = new ParameterBlockJAI("Vectorize");
         pb.setSource("source0", raster);
@@ -215,4 +245,136 @@ public class PolygonExtractionProcess implements RasterProcess {
         //return value
         return featureCollection;
     }
+
+    /**
+     * A feature collection vectorizing the raster with a {@link TiledPolygonExtractor} while it's
+     * being iterated
+     */
+    static final class TiledPolygonCollection extends BaseSimpleFeatureCollection {
+
+        final RenderedImage raster;
+
+        final int band;
+
+        final List<Number> outsideValues;
+
+        final ROI roi;
+
+        final AffineTransform mt2D;
+
+        /** Computed on first request along with the bounds, each pass vectorizes the whole raster */
+        int size = -1;
+
+        ReferencedEnvelope bounds;
+
+        TiledPolygonCollection(GridCoverage2D coverage, RenderedImage raster, int band,
+                List<Number> outsideValues, ROI roi, AffineTransform mt2D) {
+            super(CoverageUtilities.createFeatureType(coverage, Polygon.class));
+            this.raster = raster;
+            this.band = band;
+            this.outsideValues = outsideValues;
+            this.roi = roi;
+            this.mt2D = mt2D;
+        }
+
+        @Override
+        public SimpleFeatureIterator features() {
+            TiledPolygonExtractor extractor = new TiledPolygonExtractor(raster, band,
+                    outsideValues, roi, GEOMETRY_FACTORY);
+            return new TiledPolygonIterator(extractor, getSchema(), mt2D);
+        }
+
+        @Override
+        public synchronized int size() {
+            computeSizeAndBounds();
+            return size;
+        }
+
+        @Override
+        public synchronized ReferencedEnvelope getBounds() {
+            computeSizeAndBounds();
+            return new ReferencedEnvelope(bounds);
+        }
+
+        private void computeSizeAndBounds() {
+            if (size >= 0) {
+                return;
+            }
+            ReferencedEnvelope envelope = new ReferencedEnvelope(getSchema()
+                    .getCoordinateReferenceSystem());
+            int count = 0;
+            SimpleFeatureIterator it = features();
+            try {
+                while (it.hasNext()) {
+                    envelope.include(it.next().getBounds());
+                    count++;
+                }
+            } finally {
+                it.close();
+            }
+            bounds = envelope;
+            size = count;
+        }
+    }
+
+    /**
+     * Pulls the polygons out of the extractor one row of tiles at a time
+     */
+    static final class TiledPolygonIterator implements SimpleFeatureIterator {
+
+        final TiledPolygonExtractor extractor;
+
+        final SimpleFeatureBuilder builder;
+
+        final AffineTransformation jtsTransformation;
+
+        final LinkedList<Polygon> polygons = new LinkedList<Polygon>();
+
+        boolean closed;
+
+        int index;
+
+        TiledPolygonIterator(TiledPolygonExtractor extractor, SimpleFeatureType schema,
+                AffineTransform mt2D) {
+            this.extractor = extractor;
+            this.builder = new SimpleFeatureBuilder(schema);
+            this.jtsTransformation = new AffineTransformation(mt2D.getScaleX(),
+                    mt2D.getShearX(), mt2D.getTranslateX(), mt2D.getShearY(), mt2D.getScaleY(),
+                    mt2D.getTranslateY());
+            extractor.setExecutor(CoverageUtilities.getTileExecutor());
+        }
+
+        public boolean hasNext() {
+            if (closed) {
+                return false;
+            }
+            while (polygons.isEmpty() && extractor.hasMoreRows()) {
+                polygons.addAll(extractor.nextRow());
+            }
+            if (polygons.isEmpty()) {
+                close();
+                return false;
+            }
+            return true;
+        }
+
+        public SimpleFeature next() throws NoSuchElementException {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            Polygon polygon = polygons.removeFirst();
+            Double value = (Double) polygon.getUserData();
+            polygon.setUserData(null);
+            polygon.apply(jtsTransformation);
+            builder.set("the_geom", polygon);
+            builder.set("value", value);
+            return builder.buildFeature(String.valueOf(index++));
+        }
+
+        public void close() {
+            // the shared executor has no outstanding tasks of ours between rows
+            closed = true;
+            polygons.clear();
+        }
+    }
 }
@@ -18,22 +18,20 @@
 package org.geotools.process.raster;
 
 import java.awt.Rectangle;
+import java.awt.image.Raster;
 import java.awt.image.RenderedImage;
 import java.io.IOException;
 import java.util.NoSuchElementException;
 
 import javax.media.jai.PlanarImage;
-import javax.media.jai.iterator.RectIter;
-import javax.media.jai.iterator.RectIterFactory;
 
 import org.geotools.coverage.grid.GridCoverage2D;
 import org.geotools.data.simple.SimpleFeatureCollection;
 import org.geotools.data.simple.SimpleFeatureIterator;
 import org.geotools.factory.GeoTools;
-import org.geotools.feature.DefaultFeatureCollection;
-import org.geotools.feature.collection.AdaptorFeatureCollection;
 import org.geotools.feature.collection.BaseSimpleFeatureCollection;
-import org.geotools.feature.simple.SimpleFeatureBuilder;
+import org.geotools.feature.simple.SimpleFeatureImpl;
+import org.geotools.filter.identity.FeatureIdImpl;
 import org.geotools.geometry.jts.JTS;
 import org.geotools.geometry.jts.JTSFactoryFinder;
 import org.geotools.geometry.jts.ReferencedEnvelope;
@@ -43,19 +41,35 @@ import org.geotools.process.factory.DescribeProcess;
 import org.geotools.process.factory.DescribeResult;
 import org.geotools.referencing.CRS;
 import org.geotools.resources.geometry.XRectangle2D;
+import org.geotools.util.NullProgressListener;
 import org.geotools.util.Utilities;
+import org.opengis.feature.FeatureVisitor;
 import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.type.AttributeDescriptor;
 import org.opengis.geometry.MismatchedDimensionException;
 import org.opengis.metadata.spatial.PixelOrientation;
 import org.opengis.referencing.operation.MathTransform2D;
 import org.opengis.referencing.operation.TransformException;
+import org.opengis.util.ProgressListener;
 
+import com.vividsolutions.jts.algorithm.locate.IndexedPointInAreaLocator;
 import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.CoordinateSequence;
+import com.vividsolutions.jts.geom.Envelope;
+import com.vividsolutions.jts.geom.Geometry;
 import com.vividsolutions.jts.geom.GeometryFactory;
+import com.vividsolutions.jts.geom.Location;
 import com.vividsolutions.jts.geom.Point;
 
 /**
  * A process that wraps a {@link GridCoverage2D} as a collection of point feature.
+ * <p>
+ * The collection is lazy, its iterators walk the raster tile by tile, reading one tile row at a
+ * time, so only the features being returned are ever built. Pixels can be subsampled with a
+ * stride, and restricted to the ones whose center falls inside a region of interest, tiles
+ * outside of the region not being read at all. Iterators and visitors can be asked to work with
+ * a single feature instance updated in place at each pixel, so that aggregating over the pixels
+ * does not allocate a feature per pixel, when their consumer does not hold on the features.
  * 
  * @author Simone Giannecchini, GeoSolutions
  * 
@@ -67,24 +81,31 @@ public class RasterAsPointCollectionProcess implements RasterProcess {
 
     @DescribeResult(name = "result", description = "Point features")
     public SimpleFeatureCollection execute(
-            @DescribeParameter(name = "data", description = "Input raster") GridCoverage2D gc2d)
+            @DescribeParameter(name = "data", description = "Input raster") GridCoverage2D gc2d,
+            @DescribeParameter(name = "stride", description = "Distance in pixels between the returned points, along both axes (default = 1)", min = 0, defaultValue = "1") Integer stride,
+            @DescribeParameter(name = "roi", description = "Geometry delineating the region of interest (in raster coordinate system), only the pixels whose center falls inside it are returned", min = 0) Geometry roi,
+            @DescribeParameter(name = "reuseFeatures", description = "Whether the iterators and visitors get the same feature instance updated in place at each pixel, for consumers not holding on the features (default = false)", min = 0, defaultValue = "false") Boolean reuseFeatures)
             throws ProcessException {
         if (gc2d ==null) {
             throw new ProcessException("Invalid input, source grid coverage should be not null");
         }
+        if (stride != null && stride < 1) {
+            throw new ProcessException("Invalid stride, it should be a positive integer: " + stride);
+        }
         
         //return value
         try {
-			return new RasterAsPointFeatureCollection(gc2d);
-		} catch (IOException e) {
-			 throw new ProcessException("Unable to wrap provided grid coverage",e);
-		}
+            return new RasterAsPointFeatureCollection(gc2d, stride == null ? 1 : stride, roi,
+                    Boolean.TRUE.equals(reuseFeatures));
+        } catch (IOException e) {
+            throw new ProcessException("Unable to wrap provided grid coverage",e);
+        }
 
     }
 
     /**
-     * TODO @see {@link AdaptorFeatureCollection}
-     * TODO @ee {@link DefaultFeatureCollection}
+     * A feature collection lazily mapping the pixels of a coverage to points
+     * 
      * @author simboss
      *
      */
@@ -98,193 +119,458 @@ public class RasterAsPointCollectionProcess implements RasterProcess {
     	/**
     	 * The {@link GridCoverage2D} that we want to expose as a point feature collection.
     	 */
-		final GridCoverage2D gc2d;
-		
-		/**
-		 * Number of points in this collections is as many as width*height.
-		 */
-		final  int size;
-
-		/**
-		 * Grid to world transformation at the upper left corner of the raster space.
-		 */
-		final MathTransform2D mt2D;
-
-		/**
-		 * The bounding box for this feature collection
-		 */
-		private ReferencedEnvelope bounds;
-
-		/**
-		 * Raster bounds for this coverage
-		 */
-		final  Rectangle rasterBounds;
-
-		/**
-		 * Number of bands
-		 */
-		final int numBands;
-		
-		public RasterAsPointFeatureCollection(final GridCoverage2D gc2d) throws IOException {
-        	super(CoverageUtilities.createFeatureType(gc2d, Point.class));
-            this.gc2d=gc2d;
-            
+        final GridCoverage2D gc2d;
+
+        /**
+         * Grid to world transformation at the upper left corner of the raster space.
+         */
+        final MathTransform2D mt2D;
+
+        /**
+         * The bounding box for this feature collection
+         */
+        private ReferencedEnvelope bounds;
+
+        /**
+         * Raster bounds for this coverage
+         */
+        final Rectangle rasterBounds;
+
+        /**
+         * The pixels that can be returned, the raster bounds restricted to the region of interest
+         */
+        final Rectangle area;
+
+        /**
+         * Number of bands
+         */
+        final int numBands;
+
+        final int stride;
+
+        /**
+         * Locates the pixel centers in the region of interest, in raster space, if any
+         */
+        final IndexedPointInAreaLocator roiLocator;
+
+        final boolean reuseFeatures;
+
+        /**
+         * Number of points, computed lazily when a region of interest is used
+         */
+        private int size = -1;
+
+        public RasterAsPointFeatureCollection(final GridCoverage2D gc2d, int stride,
+                Geometry roi, boolean reuseFeatures) throws IOException {
+            super(CoverageUtilities.createFeatureType(gc2d, Point.class));
+            this.gc2d = gc2d;
+            this.stride = stride;
+            this.reuseFeatures = reuseFeatures;
+
             //
             // get various elements from this coverage
             //
-            // SIZE
-            final RenderedImage raster=gc2d.getRenderedImage();
-            size=raster.getWidth()*raster.getHeight();
-            
+            final RenderedImage raster = gc2d.getRenderedImage();
+
             // GRID TO WORLD
-            mt2D= gc2d.getGridGeometry().getGridToCRS2D(PixelOrientation.UPPER_LEFT);
-            
-            // BOUNDS take into account that we want to map center coordinates
+            mt2D = gc2d.getGridGeometry().getGridToCRS2D(PixelOrientation.UPPER_LEFT);
+
             rasterBounds = PlanarImage.wrapRenderedImage(raster).getBounds();
-            final XRectangle2D rasterBounds_=new XRectangle2D(raster.getMinX()+0.5, raster.getMinY()+0.5, raster.getWidth()-1,  raster.getHeight()-1);
             try {
-				bounds = new ReferencedEnvelope(CRS.transform(mt2D, rasterBounds_, null),gc2d.getCoordinateReferenceSystem2D());
-			} catch (MismatchedDimensionException e) {
-				final IOException ioe= new IOException();
-				ioe.initCause(e);
-				throw ioe;
-			} catch (TransformException e) {
-				final IOException ioe= new IOException();
-				ioe.initCause(e);
-				throw ioe;
-			}
-			
-			// BANDS
-			numBands = gc2d.getNumSampleDimensions();
-            
+                // ROI, moved to raster space
+                Rectangle area = new Rectangle(rasterBounds);
+                if (roi != null) {
+                    final Geometry rasterRoi = JTS.transform(roi, mt2D.inverse());
+                    roiLocator = new IndexedPointInAreaLocator(rasterRoi);
+                    // the pixels whose center can fall inside the region
+                    final Envelope envelope = rasterRoi.getEnvelopeInternal();
+                    final int minX = (int) Math.ceil(envelope.getMinX() - 0.5);
+                    final int minY = (int) Math.ceil(envelope.getMinY() - 0.5);
+                    final int maxX = (int) Math.floor(envelope.getMaxX() - 0.5);
+                    final int maxY = (int) Math.floor(envelope.getMaxY() - 0.5);
+                    area = area.intersection(new Rectangle(minX, minY, maxX - minX + 1, maxY
+                            - minY + 1));
+                } else {
+                    roiLocator = null;
+                    size = count(rasterBounds.width) * count(rasterBounds.height);
+                }
+                this.area = area;
+
+                // BOUNDS take into account that we want to map center coordinates
+                if (area.isEmpty()) {
+                    bounds = new ReferencedEnvelope(gc2d.getCoordinateReferenceSystem2D());
+                    size = 0;
+                } else {
+                    final XRectangle2D rasterBounds_ = new XRectangle2D(area.x + 0.5,
+                            area.y + 0.5, area.width - 1, area.height - 1);
+                    bounds = new ReferencedEnvelope(CRS.transform(mt2D, rasterBounds_, null),
+                            gc2d.getCoordinateReferenceSystem2D());
+                }
+            } catch (MismatchedDimensionException e) {
+                final IOException ioe = new IOException();
+                ioe.initCause(e);
+                throw ioe;
+            } catch (TransformException e) {
+                final IOException ioe = new IOException();
+                ioe.initCause(e);
+                throw ioe;
+            }
+
+            // BANDS
+            numBands = gc2d.getNumSampleDimensions();
         }
-        
+
+        /**
+         * @return the number of pixels picked by the stride over the given span
+         */
+        private int count(int span) {
+            return (span + stride - 1) / stride;
+        }
+
         @Override
         public SimpleFeatureIterator features() {
             return new RasterAsPointFeatureIterator(this);
         }
 
-		@Override
-		public int size() {
-			return size;
-		}
+        /**
+         * Feeds the visitor with a feature per pixel, or with a single feature updated in place
+         * at each pixel if features are reused
+         */
+        @Override
+        public void accepts(FeatureVisitor visitor, ProgressListener progress) throws IOException {
+            final float total = progress != null ? size() : 0;
+            if (progress == null) {
+                progress = new NullProgressListener();
+            }
+            final PixelCursor cursor = new PixelCursor(this);
+            final PixelFeature feature = new PixelFeature(this);
+            float position = 0;
+            progress.started();
+            try {
+                while (!progress.isCanceled() && cursor.next()) {
+                    try {
+                        feature.update(cursor);
+                    } catch (TransformException e) {
+                        throw new IOException("Failed to compute the location of pixel "
+                                + cursor.x + "," + cursor.y, e);
+                    }
+                    visitor.visit(reuseFeatures ? feature.feature : feature.copy());
+                    if (total > 0) {
+                        progress.progress(position++ / total);
+                    }
+                }
+            } finally {
+                progress.complete();
+            }
+        }
+
+        @Override
+        public synchronized int size() {
+            if (size < 0) {
+                // count the pixels falling in the region of interest
+                final PixelCursor cursor = new PixelCursor(this);
+                cursor.readValues = false;
+                int count = 0;
+                while (cursor.next()) {
+                    count++;
+                }
+                size = count;
+            }
+            return size;
+        }
 
-		@Override
-		public ReferencedEnvelope getBounds() {
-			return new ReferencedEnvelope(bounds);
-		}
+        @Override
+        public ReferencedEnvelope getBounds() {
+            return new ReferencedEnvelope(bounds);
+        }
+    }
+
+    /**
+     * Walks the selected pixels of the raster, tile by tile, and row by row inside each tile
+     */
+    private final static class PixelCursor {
+
+        private final RasterAsPointFeatureCollection fc;
+
+        private final RenderedImage image;
+
+        private final int stride;
+
+        private final int minTileX, minTileY, maxTileX, maxTileY;
+
+        private final Coordinate center = new Coordinate();
+
+        /** The tile being walked */
+        private int tileX, tileY;
+
+        /** The part of the current tile being walked, null before the first tile */
+        private Rectangle tileArea;
+
+        private Raster tile;
+
+        private boolean rowLoaded;
+
+        /** Whether the band values are read, they are not needed to count the pixels */
+        boolean readValues = true;
+
+        /** The current row values, all bands interleaved */
+        double[] row;
+
+        /** The current pixel */
+        int x, y;
+
+        PixelCursor(RasterAsPointFeatureCollection fc) {
+            this.fc = fc;
+            this.image = fc.gc2d.getRenderedImage();
+            this.stride = fc.stride;
+            final Rectangle area = fc.area;
+            if (area.isEmpty()) {
+                minTileX = minTileY = 0;
+                maxTileX = maxTileY = -1;
+            } else {
+                minTileX = tileIndex(area.x, image.getTileGridXOffset(), image.getTileWidth());
+                minTileY = tileIndex(area.y, image.getTileGridYOffset(), image.getTileHeight());
+                maxTileX = tileIndex(area.x + area.width - 1, image.getTileGridXOffset(),
+                        image.getTileWidth());
+                maxTileY = tileIndex(area.y + area.height - 1, image.getTileGridYOffset(),
+                        image.getTileHeight());
+            }
+            this.tileX = minTileX - 1;
+            this.tileY = minTileY;
+        }
+
+        private static int tileIndex(int pixel, int offset, int size) {
+            return (int) Math.floor((pixel - offset) / (double) size);
+        }
+
+        /**
+         * @return the first pixel at or after the given one picked by the stride
+         */
+        private int first(int pixel, int origin) {
+            final int remainder = (pixel - origin) % stride;
+            return remainder == 0 ? pixel : pixel + stride - remainder;
+        }
+
+        /**
+         * Moves to the next pixel
+         * 
+         * @return false if there are no more pixels
+         */
+        boolean next() {
+            for (;;) {
+                if (rowLoaded) {
+                    for (x += stride; x < tileArea.x + tileArea.width; x += stride) {
+                        if (accept()) {
+                            return true;
+                        }
+                    }
+                    rowLoaded = false;
+                    y += stride;
+                }
+                if (tileArea != null && y < tileArea.y + tileArea.height) {
+                    if (readValues) {
+                        final int length = tileArea.width * fc.numBands;
+                        if (row == null || row.length < length) {
+                            row = new double[length];
+                        }
+                        tile.getPixels(tileArea.x, y, tileArea.width, 1, row);
+                    }
+                    rowLoaded = true;
+                    x = first(tileArea.x, fc.rasterBounds.x) - stride;
+                } else if (!nextTile()) {
+                    return false;
+                }
+            }
+        }
+
+        private boolean accept() {
+            if (fc.roiLocator == null) {
+                return true;
+            }
+            center.x = x + 0.5;
+            center.y = y + 0.5;
+            return fc.roiLocator.locate(center) != Location.EXTERIOR;
+        }
+
+        /**
+         * Moves to the next tile having pixels picked by the stride
+         */
+        private boolean nextTile() {
+            for (;;) {
+                tileX++;
+                if (tileX > maxTileX) {
+                    tileX = minTileX;
+                    tileY++;
+                }
+                if (tileY > maxTileY) {
+                    tile = null;
+                    tileArea = null;
+                    return false;
+                }
+                final Rectangle tileBounds = new Rectangle(image.getTileGridXOffset() + tileX
+                        * image.getTileWidth(), image.getTileGridYOffset() + tileY
+                        * image.getTileHeight(), image.getTileWidth(), image.getTileHeight());
+                final Rectangle area = tileBounds.intersection(fc.area);
+                if (area.isEmpty()
+                        || first(area.x, fc.rasterBounds.x) >= area.x + area.width
+                        || first(area.y, fc.rasterBounds.y) >= area.y + area.height) {
+                    continue;
+                }
+                tileArea = area;
+                tile = readValues ? image.getTile(tileX, tileY) : null;
+                y = first(area.y, fc.rasterBounds.y);
+                return true;
+            }
+        }
+
+        /**
+         * @return the position of the first band of the current pixel in the row
+         */
+        int offset() {
+            return (x - tileArea.x) * fc.numBands;
+        }
+
+        /**
+         * @return the position of the current pixel in the raster, used as the feature id
+         */
+        int pixelIndex() {
+            return (y - fc.rasterBounds.y) * fc.rasterBounds.width + (x - fc.rasterBounds.x);
+        }
+    }
+
+    /**
+     * A feature whose attribute values, geometry and id are updated in place from a cursor
+     */
+    private final static class PixelFeature {
+
+        private final RasterAsPointFeatureCollection fc;
+
+        final Object[] values;
+
+        final Point point;
+
+        final FeatureIdImpl id = new FeatureIdImpl("0");
+
+        final SimpleFeature feature;
+
+        /** The binding of each band attribute */
+        private final Class<?>[] bindings;
+
+        private final double[] position = new double[2];
+
+        PixelFeature(RasterAsPointFeatureCollection fc) {
+            this.fc = fc;
+            this.values = new Object[fc.getSchema().getAttributeCount()];
+            this.point = RasterAsPointFeatureCollection.geometryFactory.createPoint(new Coordinate());
+            this.values[0] = point;
+            this.feature = new SimpleFeatureImpl(values, fc.getSchema(), id, false);
+            this.bindings = new Class<?>[fc.numBands];
+            for (int i = 0; i < bindings.length; i++) {
+                final AttributeDescriptor descriptor = fc.getSchema().getDescriptor(i + 1);
+                bindings[i] = descriptor.getType().getBinding();
+            }
+        }
+
+        void update(PixelCursor cursor) throws TransformException {
+            // POINT
+            position[0] = cursor.x + 0.5;
+            position[1] = cursor.y + 0.5;
+            fc.mt2D.transform(position, 0, position, 0, 1);
+            final CoordinateSequence cs = point.getCoordinateSequence();
+            cs.setOrdinate(0, 0, position[0]);
+            cs.setOrdinate(0, 1, position[1]);
+            point.geometryChanged();
+
+            // VALUES
+            final double[] row = cursor.row;
+            final int offset = cursor.offset();
+            for (int b = 0; b < bindings.length; b++) {
+                values[b + 1] = convert(row[offset + b], bindings[b]);
+            }
+
+            // ID
+            id.setID(String.valueOf(cursor.pixelIndex()));
+        }
+
+        /**
+         * @return a copy of the current feature the caller can hold on
+         */
+        SimpleFeature copy() {
+            final Object[] copy = values.clone();
+            copy[0] = RasterAsPointFeatureCollection.geometryFactory.createPoint(new Coordinate(
+                    point.getX(), point.getY()));
+            return new SimpleFeatureImpl(copy, fc.getSchema(), new FeatureIdImpl(id.getID()),
+                    false);
+        }
+
+        private static Object convert(double value, Class<?> binding) {
+            if (binding == Byte.class) {
+                return (byte) value;
+            } else if (binding == Short.class) {
+                return (short) value;
+            } else if (binding == Integer.class) {
+                return (int) value;
+            } else if (binding == Float.class) {
+                return (float) value;
+            }
+            return value;
+        }
     }
 
     private final static class RasterAsPointFeatureIterator implements SimpleFeatureIterator {
-    	
-    	private final double[] temp;
 
-    	private final SimpleFeatureBuilder fb;
-    	
-    	private final RasterAsPointFeatureCollection fc;
-        
-        private int index=0;
-        
-        private final int size;
+        private final RasterAsPointFeatureCollection fc;
 
-		private final RectIter iterator;
+        private final PixelCursor cursor;
 
-		private final Coordinate coord= new Coordinate();
+        private final PixelFeature flyweight;
+
+        private boolean ready;
+
+        private boolean done;
 
         public RasterAsPointFeatureIterator(final RasterAsPointFeatureCollection fc) {
 
-        	//checks
-        	Utilities.ensureNonNull("fc", fc);
-        	
-        	//get elements
-        	this.fc= fc;
-            this.fb = new SimpleFeatureBuilder(fc.getSchema());
-            this.size=fc.size;
-            
-            // create an iterator that only goes forward, it is the fastest one
-            iterator= RectIterFactory.create(fc.gc2d.getRenderedImage(), null);
+            //checks
+            Utilities.ensureNonNull("fc", fc);
 
-            //
-            //start the iterator
-            //
-            iterator.startLines();
-            if(iterator.finishedLines())
-            	throw new NoSuchElementException("Index beyond size:"+index+">"+size);
-            iterator.startPixels();
-            if(iterator.finishedPixels())
-            	throw new NoSuchElementException("Index beyond size:"+index+">"+size);   
-            
-            // appo
-            temp= new double[fc.numBands];
+            //get elements
+            this.fc = fc;
+            this.cursor = new PixelCursor(fc);
+            this.flyweight = new PixelFeature(fc);
         }
 
         /**
          * Closes this iterator
          */
         public void close() {
-        	// NO OP
+            // NO OP
         }
 
         /**
          * Tells us whether or not we have more elements to iterate on.
          */
         public boolean hasNext() {
-            return index<size;
+            if (!ready && !done) {
+                ready = cursor.next();
+                done = !ready;
+            }
+            return ready;
         }
 
         public SimpleFeature next() throws NoSuchElementException {
-            if(!hasNext())
-            	throw new NoSuchElementException("Index beyond size:"+index+">"+size);
-            
-            // iterate
-            if(iterator.finishedPixels())
-            	throw new NoSuchElementException("Index beyond size:"+index+">"+size);
-            if(iterator.finishedLines())
-            	throw new NoSuchElementException("Index beyond size:"+index+">"+size);                    
-            
-            // ID
-            final int id=index;
-            
-            // POINT
-            // can we reuse the coord?
-            coord.x= 0.5+fc.rasterBounds.x+index%fc.rasterBounds.width;
-            coord.y=0.5+ fc.rasterBounds.y+index/fc.rasterBounds.width ;
-            final Point point = RasterAsPointFeatureCollection.geometryFactory.createPoint( coord );
+            if (!hasNext()) {
+                throw new NoSuchElementException("No more pixels to iterate over");
+            }
+            ready = false;
             try {
-				fb.add(JTS.transform(point, fc.mt2D));
-			} catch (MismatchedDimensionException e) {
-				final NoSuchElementException nse= new NoSuchElementException();
-				nse.initCause(e);
-				throw nse;
-			} catch (TransformException e) {
-				final NoSuchElementException nse= new NoSuchElementException();
-				nse.initCause(e);
-				throw nse;
-			}
-            
-			// VALUES
-            // loop on bands
-			iterator.getPixel(temp);
-			for(double d:temp){
-				// I exploit the internal converters to go from double to whatever the type is
-				// TODO is this correct or we can do more.
-				fb.add(d);
-			}
-			
-            
-            // do we need to wrap the line??
-            if(iterator.nextPixelDone()){
-            	if(!iterator.nextLineDone())
-            		iterator.startPixels();
+                flyweight.update(cursor);
+            } catch (TransformException e) {
+                final NoSuchElementException nse = new NoSuchElementException();
+                nse.initCause(e);
+                throw nse;
             }
-            
-            // return
-            final SimpleFeature returnValue= fb.buildFeature(String.valueOf(id));
-            
-            // increase index and iterator
-            index++;
-            
-            return returnValue;
+            return fc.reuseFeatures ? flyweight.feature : flyweight.copy();
         }
 
     }
@@ -21,8 +21,12 @@ import java.awt.geom.AffineTransform;
 import java.awt.geom.NoninvertibleTransformException;
 import java.awt.image.RenderedImage;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.NoSuchElementException;
+import java.util.SortedMap;
 
 import javax.media.jai.JAI;
 import javax.media.jai.ROI;
@@ -94,13 +98,16 @@ public class RasterZonalStatistics implements RasterProcess {
             @DescribeParameter(name = "band", description = "Source band used to compute statistics (default is 0)", min = 0, defaultValue = "0") Integer band,
             @DescribeParameter(name = "zones", description = "Zone polygon features for which to compute statistics") SimpleFeatureCollection zones,
             @DescribeParameter(name = "classification", description = "Raster whose values will be used as classes for the statistical analysis. Each zone reports statistics partitioned by classes according to the values of the raster. Must be a single band raster with integer values.", 
-            min = 0) GridCoverage2D classification) {
+            min = 0) GridCoverage2D classification,
+            @DescribeParameter(name = "singlePass", description = "If true all the zones are computed reading the raster once, tile by tile, instead of once per zone. Faster when there are many zones, but all the results are computed before the first one is returned (default is false)", min = 0, defaultValue = "false") Boolean singlePass) {
         int iband = 0;
         if (band != null) {
             iband = band;
         }
 
-        return new RasterZonalStatisticsCollection(coverage, iband, zones, classification);
+        RasterZonalStatisticsCollection result = new RasterZonalStatisticsCollection(coverage, iband, zones, classification);
+        result.singlePass = Boolean.TRUE.equals(singlePass);
+        return result;
     }
 
     /**
@@ -117,6 +124,8 @@ public class RasterZonalStatistics implements RasterProcess {
 
         GridCoverage2D classification;
 
+        boolean singlePass;
+
         public RasterZonalStatisticsCollection(GridCoverage2D coverage, int band,
                 SimpleFeatureCollection zones, GridCoverage2D classification) {
             super(zones);
@@ -155,11 +164,134 @@ public class RasterZonalStatistics implements RasterProcess {
 
         @Override
         public SimpleFeatureIterator features() {
+            if (singlePass) {
+                return new SinglePassZonalStatisticsIterator(delegate, coverage, band,
+                        targetSchema, classification);
+            }
             return new RasterZonalStatisticsIterator(delegate.features(), coverage, band,
                     targetSchema, classification);
         }
     }
 
+    /**
+     * An iterator computing the statistics of all the zones with a single scan of the raster, using
+     * {@link SinglePassZonalStatistics}, on the first access
+     */
+    static class SinglePassZonalStatisticsIterator implements SimpleFeatureIterator {
+
+        SimpleFeatureCollection zones;
+
+        SimpleFeatureBuilder builder;
+
+        GridCoverage2D dataCoverage;
+
+        int band;
+
+        GridCoverage2D classification;
+
+        Iterator<SimpleFeature> features;
+
+        public SinglePassZonalStatisticsIterator(SimpleFeatureCollection zones,
+                GridCoverage2D coverage, int band, SimpleFeatureType targetSchema,
+                GridCoverage2D classification) {
+            this.zones = zones;
+            this.builder = new SimpleFeatureBuilder(targetSchema);
+            this.dataCoverage = coverage;
+            this.band = band;
+            this.classification = classification;
+        }
+
+        public void close() {
+            features = Collections.<SimpleFeature> emptyList().iterator();
+        }
+
+        public boolean hasNext() {
+            if (features == null) {
+                features = computeFeatures().iterator();
+            }
+            return features.hasNext();
+        }
+
+        public SimpleFeature next() throws NoSuchElementException {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            return features.next();
+        }
+
+        private List<SimpleFeature> computeFeatures() {
+            // gather all the zones, in the coverage crs
+            List<SimpleFeature> zoneFeatures = new ArrayList<SimpleFeature>();
+            List<Geometry> geometries = new ArrayList<Geometry>();
+            CoordinateReferenceSystem dataCrs = dataCoverage.getCoordinateReferenceSystem();
+            CoordinateReferenceSystem zonesCrs = builder.getFeatureType().getGeometryDescriptor()
+                    .getCoordinateReferenceSystem();
+            SimpleFeatureIterator fi = zones.features();
+            try {
+                MathTransform tx = null;
+                if (!CRS.equalsIgnoreMetadata(zonesCrs, dataCrs)) {
+                    tx = CRS.findMathTransform(zonesCrs, dataCrs, true);
+                }
+                while (fi.hasNext()) {
+                    SimpleFeature zone = fi.next();
+                    Geometry zoneGeom = (Geometry) zone.getDefaultGeometry();
+                    if (zoneGeom != null && tx != null) {
+                        zoneGeom = JTS.transform(zoneGeom, tx);
+                    }
+                    zoneFeatures.add(zone);
+                    geometries.add(zoneGeom);
+                }
+            } catch (Exception e) {
+                throw new ProcessException("Failed to reproject the zones to the coverage crs", e);
+            } finally {
+                fi.close();
+            }
+
+            // compute the statistics, tiles being processed in parallel
+            SinglePassZonalStatistics engine = new SinglePassZonalStatistics(dataCoverage, band,
+                    classification);
+            engine.setExecutor(CoverageUtilities.getTileExecutor());
+            List<SortedMap<Integer, SinglePassZonalStatistics.Accumulator>> stats = engine
+                    .compute(geometries);
+
+            // build the resulting features
+            List<SimpleFeature> result = new ArrayList<SimpleFeature>();
+            for (int i = 0; i < zoneFeatures.size(); i++) {
+                SimpleFeature zone = zoneFeatures.get(i);
+                SortedMap<Integer, SinglePassZonalStatistics.Accumulator> zoneStats = stats.get(i);
+                if (zoneStats != null && zoneStats.isEmpty() && classification == null) {
+                    // the zone does not cover any valid pixel
+                    zoneStats.put(SinglePassZonalStatistics.NO_CLASS,
+                            new SinglePassZonalStatistics.Accumulator());
+                }
+                if (zoneStats != null) {
+                    for (Map.Entry<Integer, SinglePassZonalStatistics.Accumulator> entry : zoneStats
+                            .entrySet()) {
+                        builder.addAll(zone.getAttributes());
+                        if (classification != null) {
+                            builder.add(entry.getKey());
+                        }
+                        addStatsToFeature(entry.getValue());
+                        result.add(builder.buildFeature(zone.getID()));
+                    }
+                } else {
+                    builder.addAll(zone.getAttributes());
+                    result.add(builder.buildFeature(zone.getID()));
+                }
+            }
+            return result;
+        }
+
+        void addStatsToFeature(SinglePassZonalStatistics.Accumulator stats) {
+            builder.add(stats.getCount());
+            builder.add(stats.getMin());
+            builder.add(stats.getMax());
+            builder.add(stats.getSum());
+            builder.add(stats.getMean());
+            builder.add(stats.getStandardDeviation());
+        }
+    }
+
     /**
      * An iterator computing statistics as we go
      */
@@ -0,0 +1,531 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2013, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.process.raster;
+
+import java.awt.Rectangle;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.NoninvertibleTransformException;
+import java.awt.image.Raster;
+import java.awt.image.RenderedImage;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import javax.media.jai.PlanarImage;
+
+import org.geotools.coverage.Category;
+import org.geotools.coverage.GridSampleDimension;
+import org.geotools.coverage.grid.GridCoverage2D;
+import org.geotools.coverage.grid.GridGeometry2D;
+import org.geotools.geometry.jts.JTS;
+import org.geotools.geometry.jts.ReferencedEnvelope;
+import org.geotools.process.ProcessException;
+import org.geotools.referencing.operation.transform.ProjectiveTransform;
+import org.geotools.util.NumberRange;
+import org.geotools.util.Utilities;
+import org.opengis.metadata.spatial.PixelOrientation;
+import org.opengis.referencing.operation.MathTransform;
+import org.opengis.referencing.operation.TransformException;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.Envelope;
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.LineString;
+import com.vividsolutions.jts.geom.Polygon;
+import com.vividsolutions.jts.index.strtree.STRtree;
+import com.vividsolutions.jts.simplify.DouglasPeuckerSimplifier;
+
+/**
+ * Computes zonal statistics for any number of zones reading the raster once.
+ *
+ * <p>
+ * Zones are moved to raster space and indexed by their bounds, then the raster is scanned tile by
+ * tile: for each tile the zones intersecting it are rasterized, row by row, into the spans of
+ * pixels whose center falls inside the zone, and the pixels of the spans are accumulated in the
+ * statistics of the zone. Tiles can be processed in parallel on an {@link ExecutorService}, each
+ * tile collecting its own partial statistics which are merged as the tiles complete. Within a tile
+ * each zone is scanned with an active edge list, its edges being sorted by their lowest row, so
+ * the cost is proportional to the raster size plus the zones perimeters times the number of tiles
+ * they intersect, rather than to the raster size times the number of zones.
+ *
+ * <p>
+ * Pixels are selected the same way as {@link RasterZonalStatistics} does, that is zones are
+ * simplified to the raster resolution and pixels are considered inside a zone if their center is.
+ * Overlapping zones are supported, each one of them gets the pixels it covers.
+ */
+public class SinglePassZonalStatistics {
+
+    /** The class all pixels belong to when no classification raster is provided */
+    public static final Integer NO_CLASS = Integer.valueOf(0);
+
+    /**
+     * Streaming statistics for a single zone and class. Accumulators for disjoint sets of pixels
+     * can be merged.
+     */
+    public static final class Accumulator {
+
+        private long count;
+
+        private double sum;
+
+        private double min = Double.POSITIVE_INFINITY;
+
+        private double max = Double.NEGATIVE_INFINITY;
+
+        private double mean;
+
+        /** Sum of the squared differences from the mean */
+        private double m2;
+
+        Accumulator() {
+        }
+
+        void add(final double value) {
+            count++;
+            sum += value;
+            if (value < min) {
+                min = value;
+            }
+            if (value > max) {
+                max = value;
+            }
+            final double delta = value - mean;
+            mean += delta / count;
+            m2 += delta * (value - mean);
+        }
+
+        void merge(final Accumulator that) {
+            if (that.count == 0) {
+                return;
+            }
+            if (count == 0) {
+                count = that.count;
+                sum = that.sum;
+                min = that.min;
+                max = that.max;
+                mean = that.mean;
+                m2 = that.m2;
+            } else {
+                final long total = count + that.count;
+                final double delta = that.mean - mean;
+                m2 += that.m2 + delta * delta * count * that.count / total;
+                mean += delta * that.count / total;
+                count = total;
+                sum += that.sum;
+                min = Math.min(min, that.min);
+                max = Math.max(max, that.max);
+            }
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public double getSum() {
+            return sum;
+        }
+
+        public double getMin() {
+            return count > 0 ? min : Double.NaN;
+        }
+
+        public double getMax() {
+            return count > 0 ? max : Double.NaN;
+        }
+
+        public double getMean() {
+            return count > 0 ? mean : Double.NaN;
+        }
+
+        /**
+         * @return the sample standard deviation.
+         */
+        public double getStandardDeviation() {
+            return count > 1 ? Math.sqrt(m2 / (count - 1)) : Double.NaN;
+        }
+    }
+
+    /**
+     * A zone in raster space, as a flat list of edges sorted by their lowest y
+     */
+    private static final class Zone {
+
+        private final int index;
+
+        /** x1, y1, x2, y2 for each edge, with y1 < y2, sorted by y1 */
+        private final double[] edges;
+
+        private final Envelope bounds;
+
+        private Zone(final int index, final Geometry geometry) {
+            this.index = index;
+            this.bounds = geometry.getEnvelopeInternal();
+            final List<LineString> rings = new ArrayList<LineString>();
+            for (int i = 0; i < geometry.getNumGeometries(); i++) {
+                final Geometry part = geometry.getGeometryN(i);
+                if (part instanceof Polygon) {
+                    final Polygon polygon = (Polygon) part;
+                    rings.add(polygon.getExteriorRing());
+                    for (int j = 0; j < polygon.getNumInteriorRing(); j++) {
+                        rings.add(polygon.getInteriorRingN(j));
+                    }
+                }
+            }
+            // horizontal edges never cross a scan line, the others are oriented upwards
+            final List<Coordinate[]> sorted = new ArrayList<Coordinate[]>();
+            for (LineString ring : rings) {
+                final Coordinate[] coordinates = ring.getCoordinates();
+                for (int i = 1; i < coordinates.length; i++) {
+                    final Coordinate c1 = coordinates[i - 1];
+                    final Coordinate c2 = coordinates[i];
+                    if (c1.y < c2.y) {
+                        sorted.add(new Coordinate[] { c1, c2 });
+                    } else if (c2.y < c1.y) {
+                        sorted.add(new Coordinate[] { c2, c1 });
+                    }
+                }
+            }
+            Collections.sort(sorted, new Comparator<Coordinate[]>() {
+
+                public int compare(Coordinate[] e1, Coordinate[] e2) {
+                    return Double.compare(e1[0].y, e2[0].y);
+                }
+            });
+            edges = new double[4 * sorted.size()];
+            int offset = 0;
+            for (Coordinate[] edge : sorted) {
+                edges[offset++] = edge[0].x;
+                edges[offset++] = edge[0].y;
+                edges[offset++] = edge[1].x;
+                edges[offset++] = edge[1].y;
+            }
+        }
+    }
+
+    /**
+     * Scans a zone by increasing y, keeping the list of the edges crossing the current scan line,
+     * so that each edge is visited only while the scan lines cross it.
+     */
+    private static final class EdgeScanner {
+
+        private final double[] edges;
+
+        /** The first edge not yet activated */
+        private int next;
+
+        /** Offsets of the active edges */
+        private int[] active = new int[16];
+
+        private int activeCount;
+
+        private double[] crossings = new double[16];
+
+        private EdgeScanner(final Zone zone) {
+            this.edges = zone.edges;
+        }
+
+        /**
+         * Computes the x coordinates where the horizontal line at the provided y crosses the zone
+         * boundary, sorted. Pairs of consecutive crossings delimit the inside of the zone
+         * (even-odd rule). Must be called with increasing values of y.
+         *
+         * @return the number of crossings, available in {@link #crossings}.
+         */
+        private int scan(final double y) {
+            // activate the edges starting at or before the scan line
+            while (next < edges.length && edges[next + 1] <= y) {
+                if (activeCount == active.length) {
+                    active = Arrays.copyOf(active, 2 * activeCount);
+                }
+                active[activeCount++] = next;
+                next += 4;
+            }
+            // drop the edges ending before the scan line, intersect the others
+            int kept = 0;
+            for (int i = 0; i < activeCount; i++) {
+                final int edge = active[i];
+                final double y2 = edges[edge + 3];
+                if (y < y2) {
+                    active[kept] = edge;
+                    final double x1 = edges[edge];
+                    final double y1 = edges[edge + 1];
+                    if (kept == crossings.length) {
+                        crossings = Arrays.copyOf(crossings, 2 * kept);
+                    }
+                    crossings[kept++] = x1 + (y - y1) * (edges[edge + 2] - x1) / (y2 - y1);
+                }
+            }
+            activeCount = kept;
+            Arrays.sort(crossings, 0, kept);
+            return kept;
+        }
+    }
+
+    private final GridCoverage2D coverage;
+
+    private final int band;
+
+    private final RenderedImage classificationRaster;
+
+    private final List<NumberRange<Double>> noDataRanges = new ArrayList<NumberRange<Double>>();
+
+    private ExecutorService executor;
+
+    /**
+     * Creates a new engine.
+     *
+     * @param coverage the coverage to compute statistics for.
+     * @param band the band to compute statistics for.
+     * @param classification an optional raster whose integer values partition the statistics of
+     *        each zone, may be <code>null</code>.
+     */
+    public SinglePassZonalStatistics(final GridCoverage2D coverage, final int band,
+            final GridCoverage2D classification) {
+        Utilities.ensureNonNull("coverage", coverage);
+        this.coverage = coverage;
+        this.band = band;
+        if (classification != null) {
+            final double[] nodataarr = classification.getSampleDimension(0).getNoDataValues();
+            final double nodata = nodataarr != null ? nodataarr[0] : Double.NaN;
+            // this will adapt the classification image to the projection and image layout
+            // of the data coverage
+            this.classificationRaster = GridCoverage2DRIA.create(classification, coverage, nodata);
+        } else {
+            this.classificationRaster = null;
+        }
+
+        // no data ranges, as found in the categories of the coverage
+        final GridSampleDimension sampleDimension = coverage.getSampleDimension(0);
+        final List<Category> categories = sampleDimension.getCategories();
+        if (categories != null) {
+            for (Category category : categories) {
+                if (category.getName().toString().equalsIgnoreCase("no data")) {
+                    final NumberRange<?> range = category.getRange();
+                    if (!Double.isNaN(range.getMinimum()) && !Double.isNaN(range.getMaximum())) {
+                        noDataRanges.add(NumberRange.create(range.getMinimum(), range.getMaximum()));
+                    }
+                    break;
+                }
+            }
+        }
+    }
+
+    /**
+     * @param executor the {@link ExecutorService} tiles are processed on, <code>null</code> to
+     *        process them in the calling thread.
+     */
+    public void setExecutor(final ExecutorService executor) {
+        this.executor = executor;
+    }
+
+    /**
+     * Computes the statistics of the provided zones.
+     *
+     * @param zones the zones, in the coverage coordinate reference system. <code>null</code>
+     *        elements are allowed.
+     * @return for each zone, in the same order, the statistics by class, {@link #NO_CLASS} being
+     *         the only class when no classification raster has been provided, or
+     *         <code>null</code> if the zone does not intersect the coverage.
+     * @throws ProcessException if the computation fails.
+     */
+    public List<SortedMap<Integer, Accumulator>> compute(final List<Geometry> zones) {
+        Utilities.ensureNonNull("zones", zones);
+        final List<SortedMap<Integer, Accumulator>> results = new ArrayList<SortedMap<Integer, Accumulator>>(zones.size());
+
+        // move the zones to raster space and index them
+        final STRtree index = new STRtree();
+        try {
+            final MathTransform w2gTransform = getWorldToGrid();
+            final ReferencedEnvelope coverageEnvelope = new ReferencedEnvelope(coverage.getEnvelope2D());
+            final Geometry coverageGeometry = JTS.toGeometry((Envelope) coverageEnvelope);
+            for (int i = 0; i < zones.size(); i++) {
+                Geometry geometry = zones.get(i);
+                if (geometry == null || !coverageEnvelope.intersects(geometry.getEnvelopeInternal())) {
+                    results.add(null);
+                    continue;
+                }
+                if (!coverageEnvelope.contains(geometry.getEnvelopeInternal())) {
+                    geometry = coverageGeometry.intersection(geometry);
+                }
+                // simplify the geometry so that it's as precise as the coverage
+                final Geometry rasterGeometry = DouglasPeuckerSimplifier.simplify(
+                        JTS.transform(geometry, w2gTransform), 1);
+                results.add(new TreeMap<Integer, Accumulator>());
+                if (!rasterGeometry.isEmpty()) {
+                    final Zone zone = new Zone(i, rasterGeometry);
+                    index.insert(zone.bounds, zone);
+                }
+            }
+        } catch (TransformException e) {
+            throw new ProcessException("Failed to move the zones to raster space", e);
+        }
+        index.build();
+
+        // scan the raster tile by tile
+        final RenderedImage image = coverage.getRenderedImage();
+        final Rectangle bounds = new Rectangle(image.getMinX(), image.getMinY(), image.getWidth(), image.getHeight());
+        final List<Rectangle> tiles = new ArrayList<Rectangle>();
+        for (int tileY = image.getMinTileY(); tileY < image.getMinTileY() + image.getNumYTiles(); tileY++) {
+            for (int tileX = image.getMinTileX(); tileX < image.getMinTileX() + image.getNumXTiles(); tileX++) {
+                final Rectangle tile = new Rectangle(
+                        PlanarImage.tileXToX(tileX, image.getTileGridXOffset(), image.getTileWidth()),
+                        PlanarImage.tileYToY(tileY, image.getTileGridYOffset(), image.getTileHeight()),
+                        image.getTileWidth(), image.getTileHeight()).intersection(bounds);
+                if (!tile.isEmpty()) {
+                    tiles.add(tile);
+                }
+            }
+        }
+        if (executor == null || tiles.size() == 1) {
+            for (Rectangle tile : tiles) {
+                merge(results, processTile(image, tile, index));
+            }
+        } else {
+            final CompletionService<Map<Integer, Map<Integer, Accumulator>>> completion = new ExecutorCompletionService<Map<Integer, Map<Integer, Accumulator>>>(executor);
+            final List<Future<Map<Integer, Map<Integer, Accumulator>>>> futures = new ArrayList<Future<Map<Integer, Map<Integer, Accumulator>>>>(tiles.size());
+            try {
+                // keep a bounded number of tiles, and partial results, in flight
+                final int window = 2 * Runtime.getRuntime().availableProcessors();
+                int submitted = 0;
+                for (int completed = 0; completed < tiles.size(); completed++) {
+                    while (submitted < tiles.size() && submitted - completed < window) {
+                        final Rectangle tile = tiles.get(submitted++);
+                        futures.add(completion.submit(new Callable<Map<Integer, Map<Integer, Accumulator>>>() {
+
+                            public Map<Integer, Map<Integer, Accumulator>> call() throws Exception {
+                                return processTile(image, tile, index);
+                            }
+                        }));
+                    }
+                    merge(results, completion.take().get());
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new ProcessException("Interrupted while computing zonal statistics", e);
+            } catch (ExecutionException e) {
+                throw new ProcessException("Failed to compute zonal statistics", e.getCause());
+            } finally {
+                for (Future<?> future : futures) {
+                    future.cancel(true);
+                }
+            }
+        }
+        return results;
+    }
+
+    private MathTransform getWorldToGrid() {
+        // same transformation used by RasterZonalStatistics, lines up the polygons where they are
+        // supposed to be in raster space
+        final AffineTransform dataG2WCorrected = new AffineTransform(
+                (AffineTransform) ((GridGeometry2D) coverage.getGridGeometry())
+                        .getGridToCRS2D(PixelOrientation.UPPER_LEFT));
+        try {
+            return ProjectiveTransform.create(dataG2WCorrected.createInverse());
+        } catch (NoninvertibleTransformException e) {
+            throw new IllegalArgumentException(e.getLocalizedMessage());
+        }
+    }
+
+    private static void merge(final List<SortedMap<Integer, Accumulator>> results,
+            final Map<Integer, Map<Integer, Accumulator>> partial) {
+        for (Map.Entry<Integer, Map<Integer, Accumulator>> zone : partial.entrySet()) {
+            final SortedMap<Integer, Accumulator> classes = results.get(zone.getKey());
+            for (Map.Entry<Integer, Accumulator> entry : zone.getValue().entrySet()) {
+                final Accumulator accumulator = classes.get(entry.getKey());
+                if (accumulator == null) {
+                    classes.put(entry.getKey(), entry.getValue());
+                } else {
+                    accumulator.merge(entry.getValue());
+                }
+            }
+        }
+    }
+
+    /**
+     * Accumulates the pixels of a tile in the statistics of the zones covering them.
+     *
+     * @return the partial statistics, by zone index and class.
+     */
+    @SuppressWarnings("unchecked")
+    private Map<Integer, Map<Integer, Accumulator>> processTile(final RenderedImage image,
+            final Rectangle tile, final STRtree index) {
+        final Map<Integer, Map<Integer, Accumulator>> partial = new HashMap<Integer, Map<Integer, Accumulator>>();
+        final List<Zone> zones = index.query(new Envelope(tile.x, tile.x + tile.width, tile.y, tile.y + tile.height));
+        if (zones.isEmpty()) {
+            return partial;
+        }
+        final Raster data = image.getData(tile);
+        final Raster classes = classificationRaster != null ? classificationRaster.getData(tile) : null;
+        for (Zone zone : zones) {
+            Map<Integer, Accumulator> zoneStats = partial.get(zone.index);
+            final int minY = Math.max(tile.y, (int) Math.floor(zone.bounds.getMinY()));
+            final int maxY = Math.min(tile.y + tile.height - 1, (int) Math.ceil(zone.bounds.getMaxY()));
+            final EdgeScanner scanner = new EdgeScanner(zone);
+            for (int y = minY; y <= maxY; y++) {
+                final int count = scanner.scan(y + 0.5);
+                final double[] crossings = scanner.crossings;
+                for (int i = 0; i + 1 < count; i += 2) {
+                    // pixels whose center is within the span
+                    final int minX = Math.max(tile.x, (int) Math.ceil(crossings[i] - 0.5));
+                    final int maxX = Math.min(tile.x + tile.width - 1, (int) Math.floor(crossings[i + 1] - 0.5));
+                    for (int x = minX; x <= maxX; x++) {
+                        final double value = data.getSampleDouble(x, y, band);
+                        if (isNoData(value)) {
+                            continue;
+                        }
+                        if (zoneStats == null) {
+                            zoneStats = new HashMap<Integer, Accumulator>();
+                            partial.put(zone.index, zoneStats);
+                        }
+                        final Integer classId = classes != null ? Integer.valueOf(classes.getSample(x, y, 0)) : NO_CLASS;
+                        Accumulator accumulator = zoneStats.get(classId);
+                        if (accumulator == null) {
+                            accumulator = new Accumulator();
+                            zoneStats.put(classId, accumulator);
+                        }
+                        accumulator.add(value);
+                    }
+                }
+            }
+        }
+        return partial;
+    }
+
+    private boolean isNoData(final double value) {
+        if (Double.isNaN(value)) {
+            return true;
+        }
+        for (NumberRange<Double> range : noDataRanges) {
+            if (range.contains((Number) value)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
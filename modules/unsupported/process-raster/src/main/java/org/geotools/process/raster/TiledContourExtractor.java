@@ -0,0 +1,695 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2013, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.process.raster;
+
+import java.awt.Rectangle;
+import java.awt.image.RenderedImage;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import javax.media.jai.ROI;
+
+import org.geotools.process.ProcessException;
+import org.geotools.util.Utilities;
+import org.jaitools.numeric.Range;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.GeometryFactory;
+import com.vividsolutions.jts.geom.LineString;
+
+/**
+ * Extracts contour lines from a raster one row of tiles at a time, tracing the tiles of a row in
+ * parallel.
+ * <p>
+ * Contours are traced with marching squares over the cells formed by four adjacent pixel
+ * centers. Each tile reads one extra row and column of pixels, so that the cells along the tile
+ * boundaries are traced exactly once, and the contour crossings on the boundary edges, shared
+ * with the neighbour tiles, are computed identically on both sides. Lines are joined by the grid
+ * edge they cross, not by their coordinates, which makes stitching across tiles exact.
+ * <p>
+ * Lines are returned as soon as they cannot grow anymore, that is, once the row of tiles below
+ * them has been traced: only the raster of a single row of tiles and the lines crossing the
+ * lower boundary of the current row are kept in memory, regardless of the raster size.
+ * <p>
+ * Lines are returned in raster space, with integer coordinates at pixel centers, and carry their
+ * contour level as the {@link LineString#getUserData() user data}, like the JAITools contour
+ * operation does.
+ *
+ * @source $URL$
+ */
+public class TiledContourExtractor {
+
+    /** The default size of the tiles traced as a single task */
+    public static final int DEFAULT_TILE_SIZE = 512;
+
+    /**
+     * A line being traced, kept as a deque of coordinates and the grid edges crossed by its two
+     * end points.
+     */
+    static final class Piece {
+
+        final double level;
+
+        double[] coords = new double[16];
+
+        int head = 8;
+
+        int tail = 8;
+
+        long start;
+
+        long end;
+
+        Piece(double level, long start, double x1, double y1, long end, double x2, double y2) {
+            this.level = level;
+            this.start = start;
+            this.end = end;
+            addLast(x1, y1);
+            addLast(x2, y2);
+        }
+
+        int size() {
+            return (tail - head) / 2;
+        }
+
+        boolean isClosed() {
+            return start == end && size() > 2;
+        }
+
+        double x(int i) {
+            return coords[head + 2 * i];
+        }
+
+        double y(int i) {
+            return coords[head + 2 * i + 1];
+        }
+
+        void addLast(double x, double y) {
+            if (tail + 2 > coords.length) {
+                grow();
+            }
+            coords[tail++] = x;
+            coords[tail++] = y;
+        }
+
+        void addFirst(double x, double y) {
+            if (head < 2) {
+                grow();
+            }
+            coords[--head] = y;
+            coords[--head] = x;
+        }
+
+        private void grow() {
+            final int size = tail - head;
+            final double[] grown = new double[2 * coords.length + 16];
+            final int newHead = (grown.length - size) / 2 & ~1;
+            System.arraycopy(coords, head, grown, newHead, size);
+            coords = grown;
+            head = newHead;
+            tail = newHead + size;
+        }
+    }
+
+    /**
+     * Joins pieces sharing an end edge. Each grid edge is shared by at most two cells, so it can
+     * be the open end of at most one piece at a time.
+     */
+    static final class Stitcher {
+
+        final Map<Long, Piece> ends = new HashMap<Long, Piece>();
+
+        /**
+         * Adds a piece, joining it with the pieces sharing its end edges.
+         *
+         * @return the resulting piece if it got closed, <code>null</code> otherwise
+         */
+        Piece add(Piece piece) {
+            Piece other = ends.get(piece.start);
+            if (other != null) {
+                remove(other);
+                piece = merge(other, piece, piece.start);
+            }
+            if (piece.isClosed()) {
+                return piece;
+            }
+            other = ends.get(piece.end);
+            if (other != null) {
+                remove(other);
+                piece = merge(other, piece, piece.end);
+            }
+            if (piece.isClosed()) {
+                return piece;
+            }
+            ends.put(piece.start, piece);
+            ends.put(piece.end, piece);
+            return null;
+        }
+
+        void remove(Piece piece) {
+            ends.remove(piece.start);
+            ends.remove(piece.end);
+        }
+
+        /**
+         * @return the open pieces, each reported once
+         */
+        List<Piece> getOpenPieces() {
+            final Map<Piece, Piece> unique = new IdentityHashMap<Piece, Piece>();
+            for (Piece piece : ends.values()) {
+                unique.put(piece, piece);
+            }
+            return new ArrayList<Piece>(unique.keySet());
+        }
+
+        /**
+         * Joins two pieces at the given edge, copying the smaller piece into the larger one
+         */
+        private static Piece merge(Piece a, Piece b, long edge) {
+            final Piece big = a.size() >= b.size() ? a : b;
+            final Piece small = big == a ? b : a;
+            final int n = small.size();
+            if (big.end == edge) {
+                if (small.start == edge) {
+                    for (int i = 1; i < n; i++) {
+                        big.addLast(small.x(i), small.y(i));
+                    }
+                    big.end = small.end;
+                } else {
+                    for (int i = n - 2; i >= 0; i--) {
+                        big.addLast(small.x(i), small.y(i));
+                    }
+                    big.end = small.start;
+                }
+            } else {
+                if (small.end == edge) {
+                    for (int i = n - 2; i >= 0; i--) {
+                        big.addFirst(small.x(i), small.y(i));
+                    }
+                    big.start = small.start;
+                } else {
+                    for (int i = 1; i < n; i++) {
+                        big.addFirst(small.x(i), small.y(i));
+                    }
+                    big.start = small.end;
+                }
+            }
+            return big;
+        }
+    }
+
+    /** The pieces traced in a tile */
+    static final class TileResult {
+
+        final List<Piece> complete = new ArrayList<Piece>();
+
+        final List<Piece> open = new ArrayList<Piece>();
+    }
+
+    private final RenderedImage image;
+
+    private final int band;
+
+    private final double[] levels;
+
+    private final double interval;
+
+    private final List<Object> noData;
+
+    private final ROI roi;
+
+    private final boolean simplify;
+
+    private final GeometryFactory geometryFactory;
+
+    private ExecutorService executor;
+
+    private int tileWidth = DEFAULT_TILE_SIZE;
+
+    private int tileHeight = DEFAULT_TILE_SIZE;
+
+    /** The first row of pixels of the next row of tiles */
+    private int nextRow;
+
+    /** The lines crossing the lower boundary of the rows traced so far, by level */
+    private final Map<Double, Stitcher> pending = new HashMap<Double, Stitcher>();
+
+    /**
+     * Creates a new extractor
+     *
+     * @param image the raster to contour
+     * @param band the band to contour
+     * @param levels the contour levels, or <code>null</code> to use the interval instead
+     * @param interval the interval between contour levels, used if no levels are provided
+     * @param noData the no data values, as {@link Number} or {@link Range} objects, or
+     *        <code>null</code>
+     * @param roi the region of interest in raster space, or <code>null</code>
+     * @param simplify whether to remove co-linear vertices from the lines
+     * @param geometryFactory the factory used to build the lines
+     */
+    public TiledContourExtractor(RenderedImage image, int band, double[] levels, Double interval,
+            List<Object> noData, ROI roi, boolean simplify, GeometryFactory geometryFactory) {
+        Utilities.ensureNonNull("image", image);
+        Utilities.ensureNonNull("geometryFactory", geometryFactory);
+        if ((levels == null || levels.length == 0) && (interval == null || !(interval > 0))) {
+            throw new IllegalArgumentException("Either levels or a positive interval must be provided");
+        }
+        this.image = image;
+        this.band = band;
+        if (levels != null && levels.length > 0) {
+            this.levels = levels.clone();
+            Arrays.sort(this.levels);
+            this.interval = Double.NaN;
+        } else {
+            this.levels = null;
+            this.interval = interval;
+        }
+        this.noData = noData;
+        this.roi = roi;
+        this.simplify = simplify;
+        this.geometryFactory = geometryFactory;
+        // follow the image tiling, unless the tiles are huge
+        if (image.getTileWidth() <= 2 * DEFAULT_TILE_SIZE) {
+            this.tileWidth = image.getTileWidth();
+        }
+        if (image.getTileHeight() <= 2 * DEFAULT_TILE_SIZE) {
+            this.tileHeight = image.getTileHeight();
+        }
+        this.nextRow = image.getMinY();
+    }
+
+    /**
+     * @param executor the executor the tiles of a row are traced on, <code>null</code> to trace
+     *        them in the calling thread
+     */
+    public void setExecutor(ExecutorService executor) {
+        this.executor = executor;
+    }
+
+    /**
+     * Sets the size of the tiles traced as a single task. Defaults to the image tile size, unless
+     * larger than twice {@link #DEFAULT_TILE_SIZE}.
+     */
+    public void setTileSize(int tileWidth, int tileHeight) {
+        if (tileWidth < 1 || tileHeight < 1) {
+            throw new IllegalArgumentException("Invalid tile size " + tileWidth + "x" + tileHeight);
+        }
+        this.tileWidth = tileWidth;
+        this.tileHeight = tileHeight;
+    }
+
+    /**
+     * @return <code>true</code> if there are more rows of tiles to trace, or lines to return
+     */
+    public boolean hasMoreRows() {
+        return nextRow < image.getMinY() + image.getHeight() - 1 || !pending.isEmpty();
+    }
+
+    /**
+     * Traces the next row of tiles.
+     *
+     * @return the lines completed by this row, possibly empty
+     */
+    public List<LineString> nextRow() {
+        final List<LineString> result = new ArrayList<LineString>();
+        final int maxY = image.getMinY() + image.getHeight() - 1;
+        final int maxX = image.getMinX() + image.getWidth() - 1;
+        if (nextRow >= maxY) {
+            // flush the lines waiting for a row that does not exist
+            for (Stitcher stitcher : pending.values()) {
+                for (Piece piece : stitcher.getOpenPieces()) {
+                    result.add(toLineString(piece));
+                }
+            }
+            pending.clear();
+            return result;
+        }
+
+        // trace the tiles of the row, the cells of a tile are between its first and last pixels
+        final int y0 = nextRow;
+        final int y1 = Math.min(y0 + tileHeight, maxY);
+        final List<Rectangle> tiles = new ArrayList<Rectangle>();
+        for (int x0 = image.getMinX(); x0 < maxX; x0 += tileWidth) {
+            final int x1 = Math.min(x0 + tileWidth, maxX);
+            tiles.add(new Rectangle(x0, y0, x1 - x0 + 1, y1 - y0 + 1));
+        }
+        final List<TileResult> results = new ArrayList<TileResult>(tiles.size());
+        if (executor == null || tiles.size() == 1) {
+            for (Rectangle tile : tiles) {
+                results.add(traceTile(tile));
+            }
+        } else {
+            final List<Future<TileResult>> futures = new ArrayList<Future<TileResult>>();
+            try {
+                for (final Rectangle tile : tiles) {
+                    futures.add(executor.submit(new Callable<TileResult>() {
+
+                        public TileResult call() throws Exception {
+                            return traceTile(tile);
+                        }
+                    }));
+                }
+                for (Future<TileResult> future : futures) {
+                    results.add(future.get());
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new ProcessException("Interrupted while tracing contours", e);
+            } catch (ExecutionException e) {
+                throw new ProcessException("Failed to trace contours", e.getCause());
+            } finally {
+                for (Future<TileResult> future : futures) {
+                    future.cancel(true);
+                }
+            }
+        }
+        nextRow = y1;
+
+        // stitch the lines crossing the tile boundaries, in tile order
+        for (TileResult tileResult : results) {
+            for (Piece piece : tileResult.complete) {
+                result.add(toLineString(piece));
+            }
+            for (Piece piece : tileResult.open) {
+                Stitcher stitcher = pending.get(piece.level);
+                if (stitcher == null) {
+                    stitcher = new Stitcher();
+                    pending.put(piece.level, stitcher);
+                }
+                final Piece closed = stitcher.add(piece);
+                if (closed != null) {
+                    result.add(toLineString(closed));
+                }
+            }
+        }
+
+        // lines not reaching the next row of tiles are complete
+        for (Map.Entry<Double, Stitcher> entry : new ArrayList<Map.Entry<Double, Stitcher>>(pending.entrySet())) {
+            final Stitcher stitcher = entry.getValue();
+            for (Piece piece : stitcher.getOpenPieces()) {
+                if (!isOnRowBoundary(piece.start, y1, maxY) && !isOnRowBoundary(piece.end, y1, maxY)) {
+                    stitcher.remove(piece);
+                    result.add(toLineString(piece));
+                }
+            }
+            if (stitcher.ends.isEmpty()) {
+                pending.remove(entry.getKey());
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Grid edge identifiers: horizontal edges go from (x, y) to (x + 1, y), vertical ones from (x,
+     * y) to (x, y + 1)
+     */
+    private long edgeId(int x, int y, boolean vertical) {
+        final long width = image.getWidth() + 1;
+        final long id = (long) (y - image.getMinY()) * width + (x - image.getMinX());
+        return (id << 1) | (vertical ? 1 : 0);
+    }
+
+    private int edgeX(long edge) {
+        return (int) ((edge >> 1) % (image.getWidth() + 1)) + image.getMinX();
+    }
+
+    private int edgeY(long edge) {
+        return (int) ((edge >> 1) / (image.getWidth() + 1)) + image.getMinY();
+    }
+
+    private boolean isOnRowBoundary(long edge, int y, int maxY) {
+        return y < maxY && (edge & 1) == 0 && edgeY(edge) == y;
+    }
+
+    /**
+     * Checks if an edge is shared with a neighbour tile
+     */
+    private boolean isOnSeam(long edge, Rectangle tile) {
+        final int x = edgeX(edge);
+        final int y = edgeY(edge);
+        final int x1 = tile.x + tile.width - 1;
+        final int y1 = tile.y + tile.height - 1;
+        if ((edge & 1) == 1) {
+            return (x == tile.x && x > image.getMinX())
+                    || (x == x1 && x1 < image.getMinX() + image.getWidth() - 1);
+        } else {
+            return (y == tile.y && y > image.getMinY())
+                    || (y == y1 && y1 < image.getMinY() + image.getHeight() - 1);
+        }
+    }
+
+    /**
+     * Reads a tile, with no data and out of ROI pixels set to NaN
+     */
+    private double[] readTile(Rectangle tile) {
+        final double[] values = image.getData(tile).getSamples(tile.x, tile.y, tile.width,
+                tile.height, band, (double[]) null);
+        if (noData != null && !noData.isEmpty()) {
+            for (int i = 0; i < values.length; i++) {
+                if (isNoData(values[i])) {
+                    values[i] = Double.NaN;
+                }
+            }
+        }
+        if (roi != null && !roi.contains(tile)) {
+            for (int y = 0; y < tile.height; y++) {
+                for (int x = 0; x < tile.width; x++) {
+                    if (!roi.contains(tile.x + x, tile.y + y)) {
+                        values[y * tile.width + x] = Double.NaN;
+                    }
+                }
+            }
+        }
+        return values;
+    }
+
+    @SuppressWarnings("unchecked")
+    private boolean isNoData(double value) {
+        for (Object nd : noData) {
+            if (nd instanceof Number) {
+                if (((Number) nd).doubleValue() == value) {
+                    return true;
+                }
+            } else if (nd instanceof Range && ((Range<Double>) nd).contains(value)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Traces all the contours in a tile, joining the lines within the tile
+     */
+    private TileResult traceTile(Rectangle tile) {
+        final TileResult result = new TileResult();
+        if (roi != null && !roi.intersects(tile)) {
+            return result;
+        }
+        final double[] values = readTile(tile);
+
+        // the levels crossing this tile
+        double min = Double.POSITIVE_INFINITY;
+        double max = Double.NEGATIVE_INFINITY;
+        for (double value : values) {
+            if (value < min) {
+                min = value;
+            }
+            if (value > max) {
+                max = value;
+            }
+        }
+        if (!(min < max)) {
+            return result;
+        }
+        final double[] tileLevels;
+        if (levels != null) {
+            tileLevels = levels;
+        } else {
+            final long first = (long) Math.ceil(min / interval);
+            final long last = (long) Math.floor(max / interval);
+            tileLevels = new double[(int) Math.max(0, last - first + 1)];
+            for (int i = 0; i < tileLevels.length; i++) {
+                tileLevels[i] = (first + i) * interval;
+            }
+        }
+
+        for (double level : tileLevels) {
+            if (level <= min || level > max) {
+                // no pixel below, or no pixel above
+                continue;
+            }
+            final Stitcher stitcher = new Stitcher();
+            for (int y = 0; y < tile.height - 1; y++) {
+                for (int x = 0; x < tile.width - 1; x++) {
+                    traceCell(tile, values, x, y, level, stitcher, result.complete);
+                }
+            }
+            for (Piece piece : stitcher.getOpenPieces()) {
+                if (isOnSeam(piece.start, tile) || isOnSeam(piece.end, tile)) {
+                    result.open.add(piece);
+                } else {
+                    result.complete.add(piece);
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Marching squares on the cell whose top left corner is the pixel (x, y) of the tile
+     */
+    private void traceCell(Rectangle tile, double[] values, int x, int y, double level,
+            Stitcher stitcher, List<Piece> closed) {
+        final int w = tile.width;
+        final double a = values[y * w + x];
+        final double b = values[y * w + x + 1];
+        final double c = values[(y + 1) * w + x + 1];
+        final double d = values[(y + 1) * w + x];
+        if (Double.isNaN(a) || Double.isNaN(b) || Double.isNaN(c) || Double.isNaN(d)) {
+            return;
+        }
+        final int index = (a >= level ? 1 : 0) | (b >= level ? 2 : 0) | (c >= level ? 4 : 0)
+                | (d >= level ? 8 : 0);
+        // edges: 0 top (a-b), 1 right (b-c), 2 bottom (d-c), 3 left (a-d)
+        switch (index) {
+        case 0:
+        case 15:
+            return;
+        case 1:
+        case 14:
+            segment(tile, values, x, y, level, 0, 3, stitcher, closed);
+            break;
+        case 2:
+        case 13:
+            segment(tile, values, x, y, level, 0, 1, stitcher, closed);
+            break;
+        case 4:
+        case 11:
+            segment(tile, values, x, y, level, 1, 2, stitcher, closed);
+            break;
+        case 8:
+        case 7:
+            segment(tile, values, x, y, level, 2, 3, stitcher, closed);
+            break;
+        case 3:
+        case 12:
+            segment(tile, values, x, y, level, 1, 3, stitcher, closed);
+            break;
+        case 6:
+        case 9:
+            segment(tile, values, x, y, level, 0, 2, stitcher, closed);
+            break;
+        case 5:
+        case 10:
+            // saddle, disambiguated with the average value in the cell center
+            final boolean centerAbove = (a + b + c + d) / 4 >= level;
+            if (centerAbove == (index == 5)) {
+                // the above corners are connected, the lines cut the other two corners
+                segment(tile, values, x, y, level, 0, 1, stitcher, closed);
+                segment(tile, values, x, y, level, 2, 3, stitcher, closed);
+            } else {
+                segment(tile, values, x, y, level, 0, 3, stitcher, closed);
+                segment(tile, values, x, y, level, 1, 2, stitcher, closed);
+            }
+            break;
+        }
+    }
+
+    private void segment(Rectangle tile, double[] values, int x, int y, double level, int e1,
+            int e2, Stitcher stitcher, List<Piece> closed) {
+        final double[] p1 = new double[2];
+        final double[] p2 = new double[2];
+        final long id1 = crossing(tile, values, x, y, level, e1, p1);
+        final long id2 = crossing(tile, values, x, y, level, e2, p2);
+        final Piece piece = stitcher.add(new Piece(level, id1, p1[0], p1[1], id2, p2[0], p2[1]));
+        if (piece != null) {
+            closed.add(piece);
+        }
+    }
+
+    /**
+     * Computes where a level crosses an edge of a cell. The computation only depends on the two
+     * pixels of the edge, taken in raster order, so it gives the same result in both the cells,
+     * and tiles, sharing the edge.
+     *
+     * @return the edge identifier
+     */
+    private long crossing(Rectangle tile, double[] values, int x, int y, double level, int edge,
+            double[] point) {
+        final int w = tile.width;
+        // the edge start pixel, in tile coordinates, and orientation
+        int sx = x;
+        int sy = y;
+        boolean vertical = false;
+        switch (edge) {
+        case 1:
+            sx = x + 1;
+            vertical = true;
+            break;
+        case 2:
+            sy = y + 1;
+            break;
+        case 3:
+            vertical = true;
+            break;
+        }
+        final double v0 = values[sy * w + sx];
+        final double v1 = vertical ? values[(sy + 1) * w + sx] : values[sy * w + sx + 1];
+        final double t = (level - v0) / (v1 - v0);
+        final int gx = tile.x + sx;
+        final int gy = tile.y + sy;
+        if (vertical) {
+            point[0] = gx;
+            point[1] = gy + t;
+        } else {
+            point[0] = gx + t;
+            point[1] = gy;
+        }
+        return edgeId(gx, gy, vertical);
+    }
+
+    private LineString toLineString(Piece piece) {
+        final int n = piece.size();
+        final List<Coordinate> coordinates = new ArrayList<Coordinate>(n);
+        for (int i = 0; i < n; i++) {
+            final Coordinate c = new Coordinate(piece.x(i), piece.y(i));
+            if (simplify && coordinates.size() >= 2) {
+                final Coordinate a = coordinates.get(coordinates.size() - 2);
+                final Coordinate b = coordinates.get(coordinates.size() - 1);
+                final double cross = (b.x - a.x) * (c.y - a.y) - (b.y - a.y) * (c.x - a.x);
+                if (Math.abs(cross) < 1e-10) {
+                    // b is co-linear
+                    coordinates.set(coordinates.size() - 1, c);
+                    continue;
+                }
+            }
+            coordinates.add(c);
+        }
+        final LineString line = geometryFactory.createLineString(coordinates
+                .toArray(new Coordinate[coordinates.size()]));
+        line.setUserData(piece.level);
+        return line;
+    }
+}
@@ -0,0 +1,589 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2013, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.process.raster;
+
+import java.awt.Rectangle;
+import java.awt.image.RenderedImage;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import javax.media.jai.ROI;
+
+import org.geotools.process.ProcessException;
+import org.geotools.util.Utilities;
+
+import com.vividsolutions.jts.algorithm.CGAlgorithms;
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.GeometryFactory;
+import com.vividsolutions.jts.geom.LinearRing;
+import com.vividsolutions.jts.geom.Polygon;
+
+/**
+ * Vectorizes the regions of uniform value of a raster one row of tiles at a time, labelling the
+ * tiles of a row in parallel.
+ * <p>
+ * Each tile labels its 4-connected regions and collects their boundary pixel edges. Regions
+ * having the same value on the two sides of a tile boundary are then merged, the edges along the
+ * boundary cancelling out, and a region is turned into a {@link Polygon} as soon as it cannot grow
+ * anymore, that is, once the row of tiles below it has been labelled. Only the raster of a single
+ * row of tiles and the regions touching the lower boundary of the current row are kept in memory,
+ * regardless of the raster size.
+ * <p>
+ * Polygons are returned in raster space, with pixel corners at integer coordinates, and carry
+ * their value as the {@link Polygon#getUserData() user data}, like the JAITools vectorize
+ * operation does. Classification ranges can be applied beforehand with the (tile based) range
+ * lookup operation, see {@link RangeLookupProcess}.
+ *
+ * @source $URL$
+ */
+public class TiledPolygonExtractor {
+
+    /** The default size of the tiles labelled as a single task */
+    public static final int DEFAULT_TILE_SIZE = 512;
+
+    /** Directions, in clockwise order in raster space (y axis pointing down) */
+    private static final int EAST = 0, SOUTH = 1, WEST = 2, NORTH = 3;
+
+    /** Turns in order of preference when tracing: right, straight, left */
+    private static final int[] TURNS = { 1, 0, 3 };
+
+    /**
+     * A region of uniform value, possibly spanning several tiles. Regions are merged with a
+     * union-find structure, the root holding the boundary edges of the whole group.
+     */
+    static final class Region {
+
+        final double value;
+
+        /** Boundary edges, see {@link TiledPolygonExtractor#edge(int, int, boolean, int)} */
+        long[] edges = new long[8];
+
+        int size;
+
+        Region parent;
+
+        /** The last row in which a part of the region touched the lower row boundary */
+        int touchRow = -1;
+
+        Region(double value) {
+            this.value = value;
+        }
+
+        void add(long edge) {
+            if (size == edges.length) {
+                edges = Arrays.copyOf(edges, size * 2);
+            }
+            edges[size++] = edge;
+        }
+
+        Region find() {
+            Region root = this;
+            while (root.parent != null) {
+                root = root.parent;
+            }
+            // path compression
+            Region r = this;
+            while (r != root) {
+                Region next = r.parent;
+                r.parent = root;
+                r = next;
+            }
+            return root;
+        }
+    }
+
+    /** The regions labelled in a tile, and the labels along the tile boundaries */
+    static final class TileResult {
+
+        final Rectangle tile;
+
+        final List<Region> regions = new ArrayList<Region>();
+
+        Region[] top, bottom, left, right;
+
+        TileResult(Rectangle tile) {
+            this.tile = tile;
+        }
+    }
+
+    private final RenderedImage image;
+
+    private final int band;
+
+    private final Collection<? extends Number> outsideValues;
+
+    private final ROI roi;
+
+    private final GeometryFactory geometryFactory;
+
+    private ExecutorService executor;
+
+    private int tileWidth = DEFAULT_TILE_SIZE;
+
+    private int tileHeight = DEFAULT_TILE_SIZE;
+
+    /** The first row of pixels of the next row of tiles */
+    private int nextRow;
+
+    /** The number of rows of tiles labelled so far */
+    private int rowCount;
+
+    /** The regions along the last line of pixels labelled so far */
+    private Region[] pendingBottom;
+
+    /**
+     * Creates a new extractor
+     *
+     * @param image the raster to vectorize
+     * @param band the band to vectorize
+     * @param outsideValues the values to treat as no data, or <code>null</code>
+     * @param roi the region of interest in raster space, or <code>null</code>
+     * @param geometryFactory the factory used to build the polygons
+     */
+    public TiledPolygonExtractor(RenderedImage image, int band,
+            Collection<? extends Number> outsideValues, ROI roi, GeometryFactory geometryFactory) {
+        Utilities.ensureNonNull("image", image);
+        Utilities.ensureNonNull("geometryFactory", geometryFactory);
+        this.image = image;
+        this.band = band;
+        this.outsideValues = outsideValues;
+        this.roi = roi;
+        this.geometryFactory = geometryFactory;
+        // follow the image tiling, unless the tiles are huge
+        if (image.getTileWidth() <= 2 * DEFAULT_TILE_SIZE) {
+            this.tileWidth = image.getTileWidth();
+        }
+        if (image.getTileHeight() <= 2 * DEFAULT_TILE_SIZE) {
+            this.tileHeight = image.getTileHeight();
+        }
+        this.nextRow = image.getMinY();
+        this.pendingBottom = new Region[image.getWidth()];
+    }
+
+    /**
+     * @param executor the executor the tiles of a row are labelled on, <code>null</code> to label
+     *        them in the calling thread
+     */
+    public void setExecutor(ExecutorService executor) {
+        this.executor = executor;
+    }
+
+    /**
+     * Sets the size of the tiles labelled as a single task. Defaults to the image tile size, unless
+     * larger than twice {@link #DEFAULT_TILE_SIZE}.
+     */
+    public void setTileSize(int tileWidth, int tileHeight) {
+        if (tileWidth < 1 || tileHeight < 1) {
+            throw new IllegalArgumentException("Invalid tile size " + tileWidth + "x" + tileHeight);
+        }
+        this.tileWidth = tileWidth;
+        this.tileHeight = tileHeight;
+    }
+
+    /**
+     * @return <code>true</code> if there are more rows of tiles to vectorize
+     */
+    public boolean hasMoreRows() {
+        return nextRow < image.getMinY() + image.getHeight();
+    }
+
+    /**
+     * Vectorizes the next row of tiles.
+     *
+     * @return the polygons completed by this row, possibly empty
+     */
+    public List<Polygon> nextRow() {
+        final int maxX = image.getMinX() + image.getWidth();
+        final int maxY = image.getMinY() + image.getHeight();
+        final int y0 = nextRow;
+        final int y1 = Math.min(y0 + tileHeight, maxY);
+        final boolean lastRow = y1 == maxY;
+
+        // label the tiles of the row
+        final List<Rectangle> tiles = new ArrayList<Rectangle>();
+        for (int x0 = image.getMinX(); x0 < maxX; x0 += tileWidth) {
+            tiles.add(new Rectangle(x0, y0, Math.min(tileWidth, maxX - x0), y1 - y0));
+        }
+        final List<TileResult> results = new ArrayList<TileResult>(tiles.size());
+        if (executor == null || tiles.size() == 1) {
+            for (Rectangle tile : tiles) {
+                results.add(labelTile(tile));
+            }
+        } else {
+            final List<Future<TileResult>> futures = new ArrayList<Future<TileResult>>();
+            try {
+                for (final Rectangle tile : tiles) {
+                    futures.add(executor.submit(new Callable<TileResult>() {
+
+                        public TileResult call() throws Exception {
+                            return labelTile(tile);
+                        }
+                    }));
+                }
+                for (Future<TileResult> future : futures) {
+                    results.add(future.get());
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new ProcessException("Interrupted while vectorizing", e);
+            } catch (ExecutionException e) {
+                throw new ProcessException("Failed to vectorize", e.getCause());
+            } finally {
+                for (Future<TileResult> future : futures) {
+                    future.cancel(true);
+                }
+            }
+        }
+        nextRow = y1;
+        final int row = rowCount++;
+
+        // merge the regions across the tile boundaries
+        for (int i = 0; i < results.size(); i++) {
+            final TileResult result = results.get(i);
+            if (i > 0) {
+                final Region[] left = results.get(i - 1).right;
+                for (int y = 0; y < left.length; y++) {
+                    union(left[y], result.left[y]);
+                }
+            }
+            for (int x = 0; x < result.top.length; x++) {
+                union(pendingBottom[result.tile.x - image.getMinX() + x], result.top[x]);
+            }
+        }
+
+        // the regions reaching the next row of tiles cannot be completed yet
+        final Region[] previousBottom = pendingBottom;
+        pendingBottom = new Region[image.getWidth()];
+        if (!lastRow) {
+            for (TileResult result : results) {
+                for (int x = 0; x < result.bottom.length; x++) {
+                    final Region region = result.bottom[x];
+                    if (region != null) {
+                        region.find().touchRow = row;
+                        pendingBottom[result.tile.x - image.getMinX() + x] = region;
+                    }
+                }
+            }
+        }
+
+        // build the polygons of the other regions, each one once
+        final Map<Region, Region> completed = new IdentityHashMap<Region, Region>();
+        final List<Polygon> polygons = new ArrayList<Polygon>();
+        for (TileResult result : results) {
+            for (Region region : result.regions) {
+                complete(region.find(), row, completed, polygons);
+            }
+        }
+        for (Region region : previousBottom) {
+            if (region != null) {
+                complete(region.find(), row, completed, polygons);
+            }
+        }
+        return polygons;
+    }
+
+    private void complete(Region root, int row, Map<Region, Region> completed,
+            List<Polygon> polygons) {
+        if (root.touchRow != row && !completed.containsKey(root)) {
+            completed.put(root, root);
+            polygons.add(toPolygon(root));
+        }
+    }
+
+    private static void union(Region a, Region b) {
+        if (a == null || b == null || a.value != b.value) {
+            return;
+        }
+        Region ra = a.find();
+        Region rb = b.find();
+        if (ra == rb) {
+            return;
+        }
+        // copy the smaller set of edges in the larger one
+        if (ra.size < rb.size) {
+            Region swap = ra;
+            ra = rb;
+            rb = swap;
+        }
+        for (int i = 0; i < rb.size; i++) {
+            ra.add(rb.edges[i]);
+        }
+        rb.edges = null;
+        rb.size = 0;
+        rb.parent = ra;
+        ra.touchRow = Math.max(ra.touchRow, rb.touchRow);
+    }
+
+    /**
+     * Reads a tile, setting no data and out of ROI pixels to NaN
+     */
+    private double[] readTile(Rectangle tile) {
+        final double[] values = image.getData(tile).getSamples(tile.x, tile.y, tile.width,
+                tile.height, band, (double[]) null);
+        if (outsideValues != null && !outsideValues.isEmpty()) {
+            for (int i = 0; i < values.length; i++) {
+                for (Number outside : outsideValues) {
+                    if (outside.doubleValue() == values[i]) {
+                        values[i] = Double.NaN;
+                        break;
+                    }
+                }
+            }
+        }
+        if (roi != null && !roi.contains(tile)) {
+            for (int y = 0; y < tile.height; y++) {
+                for (int x = 0; x < tile.width; x++) {
+                    if (!roi.contains(tile.x + x, tile.y + y)) {
+                        values[y * tile.width + x] = Double.NaN;
+                    }
+                }
+            }
+        }
+        return values;
+    }
+
+    /**
+     * Labels the 4-connected regions of a tile and collects their boundary edges
+     */
+    private TileResult labelTile(Rectangle tile) {
+        final TileResult result = new TileResult(tile);
+        final int w = tile.width;
+        final int h = tile.height;
+        final double[] values = roi == null || roi.intersects(tile) ? readTile(tile) : null;
+
+        // union-find over the pixels, NaN pixels are not labelled
+        final int[] labels = new int[w * h];
+        for (int y = 0, i = 0; y < h; y++) {
+            for (int x = 0; x < w; x++, i++) {
+                if (values == null || Double.isNaN(values[i])) {
+                    labels[i] = -1;
+                    continue;
+                }
+                labels[i] = i;
+                if (x > 0 && values[i - 1] == values[i]) {
+                    link(labels, i - 1, i);
+                }
+                if (y > 0 && values[i - w] == values[i]) {
+                    link(labels, i - w, i);
+                }
+            }
+        }
+
+        // map the label roots to regions
+        final Region[] regions = new Region[w * h];
+        for (int i = 0; i < labels.length; i++) {
+            if (labels[i] >= 0) {
+                final int root = root(labels, i);
+                if (regions[root] == null) {
+                    regions[root] = new Region(values[root]);
+                    result.regions.add(regions[root]);
+                }
+                regions[i] = regions[root];
+            }
+        }
+
+        // boundary edges
+        final int gx0 = tile.x - image.getMinX();
+        final int gy0 = tile.y - image.getMinY();
+        for (int y = 0, i = 0; y < h; y++) {
+            for (int x = 0; x < w; x++, i++) {
+                final Region region = regions[i];
+                if (region == null) {
+                    continue;
+                }
+                if (y == 0 || regions[i - w] != region) {
+                    region.add(edge(gx0 + x, gy0 + y, false, 0));
+                }
+                if (y == h - 1 || regions[i + w] != region) {
+                    region.add(edge(gx0 + x, gy0 + y + 1, false, 1));
+                }
+                if (x == 0 || regions[i - 1] != region) {
+                    region.add(edge(gx0 + x, gy0 + y, true, 0));
+                }
+                if (x == w - 1 || regions[i + 1] != region) {
+                    region.add(edge(gx0 + x + 1, gy0 + y, true, 1));
+                }
+            }
+        }
+
+        // the labels along the tile boundaries
+        result.top = Arrays.copyOfRange(regions, 0, w);
+        result.bottom = Arrays.copyOfRange(regions, (h - 1) * w, h * w);
+        result.left = new Region[h];
+        result.right = new Region[h];
+        for (int y = 0; y < h; y++) {
+            result.left[y] = regions[y * w];
+            result.right[y] = regions[y * w + w - 1];
+        }
+        return result;
+    }
+
+    private static int root(int[] labels, int i) {
+        while (labels[i] != i) {
+            // path halving
+            labels[i] = labels[labels[i]];
+            i = labels[i];
+        }
+        return i;
+    }
+
+    private static void link(int[] labels, int a, int b) {
+        final int ra = root(labels, a);
+        final int rb = root(labels, b);
+        // the smallest index wins, so that the root is the first pixel of the region
+        if (ra < rb) {
+            labels[rb] = ra;
+        } else if (rb < ra) {
+            labels[ra] = rb;
+        }
+    }
+
+    /**
+     * Encodes a pixel edge. Horizontal edges go from vertex (x, y) to (x + 1, y), vertical ones
+     * from (x, y) to (x, y + 1), vertices being relative to the image origin. The side is 0 when
+     * the region is below, or right of, the edge, 1 otherwise, so that the same edge seen from
+     * two adjacent pixels differs only in the lowest bit.
+     */
+    private long edge(int x, int y, boolean vertical, int side) {
+        final long vertex = (long) y * (image.getWidth() + 1) + x;
+        return (((vertex << 1) | (vertical ? 1 : 0)) << 1) | side;
+    }
+
+    /**
+     * Traces the boundary of a region into a polygon. Edges are directed so that the region is on
+     * their right, when turning at a vertex the rightmost edge is followed, which keeps apart the
+     * pixels of the region touching only at a corner.
+     */
+    private Polygon toPolygon(Region region) {
+        // drop the edges shared by merged tiles
+        final long[] sorted = Arrays.copyOf(region.edges, region.size);
+        Arrays.sort(sorted);
+        final long stride = image.getWidth() + 1;
+        long[] keys = new long[sorted.length];
+        int count = 0;
+        for (int i = 0; i < sorted.length; i++) {
+            if (i + 1 < sorted.length && (sorted[i] >> 1) == (sorted[i + 1] >> 1)) {
+                i++;
+                continue;
+            }
+            // turn the edge into a start vertex and direction
+            final long e = sorted[i];
+            final int side = (int) (e & 1);
+            final boolean vertical = ((e >> 1) & 1) == 1;
+            final long vertex = e >> 2;
+            final long start;
+            final int direction;
+            if (!vertical) {
+                start = side == 0 ? vertex : vertex + 1;
+                direction = side == 0 ? EAST : WEST;
+            } else {
+                start = side == 0 ? vertex + stride : vertex;
+                direction = side == 0 ? NORTH : SOUTH;
+            }
+            keys[count++] = start * 4 + direction;
+        }
+        keys = Arrays.copyOf(keys, count);
+        Arrays.sort(keys);
+
+        // trace the rings
+        final boolean[] visited = new boolean[count];
+        final List<LinearRing> rings = new ArrayList<LinearRing>();
+        LinearRing shell = null;
+        double shellArea = -1;
+        for (int first = 0; first < count; first++) {
+            if (visited[first]) {
+                continue;
+            }
+            visited[first] = true;
+            final List<Coordinate> coords = new ArrayList<Coordinate>();
+            final long firstVertex = keys[first] >> 2;
+            final int firstDirection = (int) (keys[first] & 3);
+            long vertex = firstVertex;
+            int direction = firstDirection;
+            while (true) {
+                vertex = next(vertex, direction, stride);
+                // preference: right turn, straight, left turn
+                int chosen = -1;
+                int chosenDirection = -1;
+                for (int turn : TURNS) {
+                    final int d = (direction + turn) & 3;
+                    final int k = Arrays.binarySearch(keys, vertex * 4 + d);
+                    if (k >= 0 && (!visited[k] || k == first)) {
+                        chosen = k;
+                        chosenDirection = d;
+                        break;
+                    }
+                }
+                if (chosen < 0) {
+                    throw new IllegalStateException("Open region boundary at vertex " + vertex);
+                }
+                if (chosenDirection != direction) {
+                    coords.add(coordinate(vertex, stride));
+                }
+                if (chosen == first) {
+                    break;
+                }
+                visited[chosen] = true;
+                direction = chosenDirection;
+            }
+            coords.add(new Coordinate(coords.get(0)));
+            final LinearRing ring = geometryFactory.createLinearRing(coords
+                    .toArray(new Coordinate[coords.size()]));
+            final double area = Math.abs(CGAlgorithms.signedArea(ring.getCoordinates()));
+            if (area > shellArea) {
+                if (shell != null) {
+                    rings.add(shell);
+                }
+                shell = ring;
+                shellArea = area;
+            } else {
+                rings.add(ring);
+            }
+        }
+
+        // a 4-connected region has a single outer boundary, the other rings are holes
+        final Polygon polygon = geometryFactory.createPolygon(shell,
+                rings.toArray(new LinearRing[rings.size()]));
+        polygon.setUserData(region.value);
+        return polygon;
+    }
+
+    private static long next(long vertex, int direction, long stride) {
+        switch (direction) {
+        case EAST:
+            return vertex + 1;
+        case SOUTH:
+            return vertex + stride;
+        case WEST:
+            return vertex - 1;
+        default:
+            return vertex - stride;
+        }
+    }
+
+    private Coordinate coordinate(long vertex, long stride) {
+        return new Coordinate(image.getMinX() + vertex % stride, image.getMinY() + vertex / stride);
+    }
+}
@@ -0,0 +1,185 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2013, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.process.raster;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.awt.Rectangle;
+import java.awt.image.DataBuffer;
+import java.awt.image.Raster;
+import java.awt.image.SampleModel;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.media.jai.RasterFactory;
+import javax.media.jai.TiledImage;
+
+import org.geotools.coverage.CoverageFactoryFinder;
+import org.geotools.coverage.grid.GridCoverage2D;
+import org.geotools.filter.text.ecql.ECQL;
+import org.geotools.geometry.jts.ReferencedEnvelope;
+import org.geotools.process.ProcessException;
+import org.junit.Test;
+
+/**
+ * Tests the {@link BandMath} engine and the {@link BandMathProcess}
+ *
+ * @source $URL$
+ */
+public class BandMathTest {
+
+    private static final int WIDTH = 100;
+
+    private static final int HEIGHT = 70;
+
+    /**
+     * Builds a coverage tiled in 16x16 tiles, band b of pixel (x, y) being (b + 1) * x + y
+     */
+    private GridCoverage2D buildCoverage(String name, int bands) {
+        SampleModel sm = RasterFactory.createBandedSampleModel(DataBuffer.TYPE_FLOAT, 16, 16,
+                bands);
+        TiledImage image = new TiledImage(0, 0, WIDTH, HEIGHT, 0, 0, sm, null);
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH; x++) {
+                for (int b = 0; b < bands; b++) {
+                    image.setSample(x, y, b, (float) ((b + 1) * x + y));
+                }
+            }
+        }
+        return CoverageFactoryFinder.getGridCoverageFactory(null).create(name, image,
+                new ReferencedEnvelope(0, WIDTH, 0, HEIGHT, null));
+    }
+
+    private GridCoverage2D evaluate(String expression, Map<String, GridCoverage2D> coverages)
+            throws Exception {
+        BandMath math = new BandMath(ECQL.toExpression(expression), coverages);
+        return math.execute("result");
+    }
+
+    @Test
+    public void testNormalizedDifference() throws Exception {
+        Map<String, GridCoverage2D> coverages = new HashMap<String, GridCoverage2D>();
+        // nir = 2x + y, red = x + y
+        GridCoverage2D landsat = buildCoverage("landsat", 2);
+        coverages.put("landsat", landsat);
+        GridCoverage2D result = evaluate("(landsat.b1 - landsat) / (landsat.b1 + landsat)",
+                coverages);
+        assertEquals(landsat.getEnvelope(), result.getEnvelope());
+        Raster data = result.getRenderedImage().getData();
+        assertEquals(DataBuffer.TYPE_FLOAT, data.getDataBuffer().getDataType());
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH; x++) {
+                float actual = data.getSampleFloat(x, y, 0);
+                if (x == 0 && y == 0) {
+                    // 0 / 0
+                    assertTrue(Float.isNaN(actual));
+                } else {
+                    assertEquals((float) x / (3 * x + 2 * y), actual, 1e-6);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testMultipleCoverages() throws Exception {
+        Map<String, GridCoverage2D> coverages = new HashMap<String, GridCoverage2D>();
+        coverages.put("a", buildCoverage("a", 1));
+        coverages.put("b", buildCoverage("b", 3));
+        BandMath math = new BandMath(ECQL.toExpression("max(a, b.b2) * (2 + 3) - sqrt(4)"),
+                coverages);
+        // the constants are folded
+        assertEquals(3, math.getInstructionCount());
+        math.setNoData(-1);
+        Raster data = math.execute("result").getRenderedImage().getData();
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH; x++) {
+                assertEquals((3 * x + y) * 5 - 2, data.getSampleFloat(x, y, 0), 0f);
+            }
+        }
+    }
+
+    @Test
+    public void testNoData() throws Exception {
+        Map<String, GridCoverage2D> coverages = new HashMap<String, GridCoverage2D>();
+        coverages.put("a", buildCoverage("a", 1));
+        BandMath math = new BandMath(ECQL.toExpression("1 / (a - 10)"), coverages);
+        math.setNoData(-9999);
+        GridCoverage2D result = math.execute("result");
+        Raster data = result.getRenderedImage().getData();
+        // x + y = 10 divides by zero
+        assertEquals(-9999f, data.getSampleFloat(4, 6, 0), 0f);
+        assertEquals(1f, data.getSampleFloat(5, 6, 0), 0f);
+        assertEquals(-9999d, ((Number) result.getProperty("GC_NODATA")).doubleValue(), 0d);
+    }
+
+    @Test
+    public void testInvalidExpressions() throws Exception {
+        Map<String, GridCoverage2D> coverages = new HashMap<String, GridCoverage2D>();
+        coverages.put("a", buildCoverage("a", 1));
+        for (String expression : new String[] { "c + 1", "a.b1", "strLength(a)", "3" }) {
+            try {
+                new BandMath(ECQL.toExpression(expression), coverages);
+                fail("Expression should have been rejected: " + expression);
+            } catch (IllegalArgumentException e) {
+                // fine
+            }
+        }
+    }
+
+    @Test
+    public void testProcess() throws Exception {
+        GridCoverage2D a = buildCoverage("a", 1);
+        GridCoverage2D b = buildCoverage("b", 1);
+        GridCoverage2D result = new BandMathProcess().execute(new GridCoverage2D[] { a, b },
+                "a + b * 2", null, null);
+        Raster data = result.getRenderedImage().getData();
+        assertEquals(3 * (7 + 5), data.getSampleFloat(7, 5, 0), 0f);
+
+        try {
+            new BandMathProcess().execute(new GridCoverage2D[] { a }, "a +", null, null);
+            fail("The expression is not valid");
+        } catch (ProcessException e) {
+            // fine
+        }
+    }
+
+    @Test
+    public void testTilesComputedOnDemand() throws Exception {
+        SampleModel sm = RasterFactory.createBandedSampleModel(DataBuffer.TYPE_FLOAT, 16, 16, 1);
+        final AtomicInteger reads = new AtomicInteger();
+        TiledImage image = new TiledImage(0, 0, WIDTH, HEIGHT, 0, 0, sm, null) {
+            @Override
+            public Raster getData(Rectangle region) {
+                reads.incrementAndGet();
+                return super.getData(region);
+            }
+        };
+        Map<String, GridCoverage2D> coverages = new HashMap<String, GridCoverage2D>();
+        coverages.put("a", CoverageFactoryFinder.getGridCoverageFactory(null).create("a", image,
+                new ReferencedEnvelope(0, WIDTH, 0, HEIGHT, null)));
+
+        // nothing gets computed until the output is read, and then only the tiles requested
+        GridCoverage2D result = evaluate("a * 2", coverages);
+        assertEquals(0, reads.get());
+        Raster tile = result.getRenderedImage().getTile(1, 1);
+        assertEquals(1, reads.get());
+        assertEquals(2 * (20 + 17), tile.getSampleFloat(20, 17, 0), 0f);
+    }
+}
@@ -63,6 +63,18 @@ public class ContourProcessTest {
      */
     @Test
     public void singleContourInVerticalGradient() {
+        assertSingleContourInVerticalGradient(null);
+    }
+
+    /**
+     * Same as {@link #singleContourInVerticalGradient()}, tracing the contours tile by tile.
+     */
+    @Test
+    public void singleContourInVerticalGradientTiled() {
+        assertSingleContourInVerticalGradient(true);
+    }
+
+    private void assertSingleContourInVerticalGradient(Boolean tiled) {
         final int COVERAGE_COLS = 10;
         final int COVERAGE_ROWS = 2;
         
@@ -81,7 +93,7 @@ public class ContourProcessTest {
         final double levelValue = (DATA_MIN + DATA_MAX) / 2; 
         
         SimpleFeatureCollection fc = process.execute(
-                cov, 0, new double[] {levelValue}, null, null, null, null, null);
+                cov, 0, new double[] {levelValue}, null, null, null, null, tiled, null);
 
         // Should be a single contour
         assertEquals(1, fc.size());
@@ -128,7 +140,11 @@ public class ContourProcessTest {
         GridCoverage2D cov = createVerticalGradient(10, 10, null, 0, 10);
 
         // Run process asking for contours at level = 20
-        SimpleFeatureCollection fc = process.execute(cov, 0, new double[20], null, null, null, null, null);
+        SimpleFeatureCollection fc = process.execute(cov, 0, new double[20], null, null, null, null, null, null);
+        assertNotNull(fc);
+        assertTrue(fc.isEmpty());
+
+        fc = process.execute(cov, 0, new double[20], null, null, null, null, true, null);
         assertNotNull(fc);
         assertTrue(fc.isEmpty());
     }
@@ -0,0 +1,228 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2013, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.process.raster;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.image.DataBuffer;
+import java.awt.image.SampleModel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+
+import javax.media.jai.RasterFactory;
+import javax.media.jai.TiledImage;
+
+import org.geotools.coverage.CoverageFactoryFinder;
+import org.geotools.coverage.grid.GridCoverage2D;
+import org.geotools.data.simple.SimpleFeatureCollection;
+import org.geotools.data.simple.SimpleFeatureIterator;
+import org.geotools.geometry.jts.JTS;
+import org.geotools.geometry.jts.ReferencedEnvelope;
+import org.junit.Before;
+import org.junit.Test;
+import org.opengis.feature.Feature;
+import org.opengis.feature.FeatureVisitor;
+import org.opengis.feature.simple.SimpleFeature;
+
+import com.vividsolutions.jts.geom.Envelope;
+import com.vividsolutions.jts.geom.Point;
+
+/**
+ * Tests the {@link RasterAsPointCollectionProcess}
+ *
+ * @source $URL$
+ */
+public class RasterAsPointCollectionProcessTest {
+
+    private static final int WIDTH = 50;
+
+    private static final int HEIGHT = 40;
+
+    private GridCoverage2D coverage;
+
+    @Before
+    public void setUp() {
+        // small tiles, pixel (x, y) holds x * 100 + y
+        SampleModel sm = RasterFactory.createBandedSampleModel(DataBuffer.TYPE_FLOAT, 16, 16, 1);
+        TiledImage image = new TiledImage(0, 0, WIDTH, HEIGHT, 0, 0, sm, null);
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH; x++) {
+                image.setSample(x, y, 0, x * 100 + y);
+            }
+        }
+        coverage = CoverageFactoryFinder.getGridCoverageFactory(null).create("test", image,
+                new ReferencedEnvelope(0, WIDTH, 0, HEIGHT, null));
+    }
+
+    /**
+     * Checks the features match their pixel, and returns their ids
+     */
+    private Set<String> check(SimpleFeatureCollection fc) {
+        Set<String> ids = new HashSet<String>();
+        SimpleFeatureIterator it = fc.features();
+        try {
+            while (it.hasNext()) {
+                SimpleFeature feature = it.next();
+                check(feature);
+                assertTrue(ids.add(feature.getID()));
+            }
+        } finally {
+            it.close();
+        }
+        return ids;
+    }
+
+    /**
+     * Checks the feature matches its pixel
+     */
+    private void check(SimpleFeature feature) {
+        int index = Integer.parseInt(feature.getID());
+        int x = index % WIDTH;
+        int y = index / WIDTH;
+        Point point = (Point) feature.getDefaultGeometry();
+        assertEquals(x + 0.5, point.getX(), 1e-9);
+        assertEquals(HEIGHT - y - 0.5, point.getY(), 1e-9);
+        assertEquals(x * 100 + y, ((Number) feature.getAttribute(1)).intValue());
+    }
+
+    @Test
+    public void testAllPixels() {
+        SimpleFeatureCollection fc = new RasterAsPointCollectionProcess().execute(coverage, null,
+                null, null);
+        assertEquals(WIDTH * HEIGHT, fc.size());
+        assertEquals(WIDTH * HEIGHT, check(fc).size());
+        ReferencedEnvelope bounds = fc.getBounds();
+        assertEquals(0.5, bounds.getMinX(), 1e-9);
+        assertEquals(WIDTH - 0.5, bounds.getMaxX(), 1e-9);
+        assertEquals(0.5, bounds.getMinY(), 1e-9);
+        assertEquals(HEIGHT - 0.5, bounds.getMaxY(), 1e-9);
+    }
+
+    @Test
+    public void testStride() {
+        SimpleFeatureCollection fc = new RasterAsPointCollectionProcess().execute(coverage, 3,
+                null, null);
+        assertEquals(17 * 14, fc.size());
+        Set<String> ids = check(fc);
+        assertEquals(17 * 14, ids.size());
+        for (String id : ids) {
+            int index = Integer.parseInt(id);
+            assertEquals(0, index % WIDTH % 3);
+            assertEquals(0, index / WIDTH % 3);
+        }
+    }
+
+    @Test
+    public void testRegionOfInterest() {
+        SimpleFeatureCollection fc = new RasterAsPointCollectionProcess().execute(coverage, null,
+                JTS.toGeometry(new Envelope(10, 20, 10, 20)), null);
+        assertEquals(100, fc.size());
+        Set<String> ids = check(fc);
+        assertEquals(100, ids.size());
+        for (String id : ids) {
+            int index = Integer.parseInt(id);
+            assertTrue(index % WIDTH >= 10 && index % WIDTH < 20);
+            assertTrue(index / WIDTH >= 20 && index / WIDTH < 30);
+        }
+
+        // with a stride too
+        fc = new RasterAsPointCollectionProcess().execute(coverage, 4,
+                JTS.toGeometry(new Envelope(10, 20, 10, 20)), null);
+        // columns 12 and 16, rows 20, 24 and 28
+        assertEquals(6, fc.size());
+        assertEquals(6, check(fc).size());
+    }
+
+    @Test
+    public void testFlyweight() throws Exception {
+        SimpleFeatureCollection fc = new RasterAsPointCollectionProcess().execute(coverage, null,
+                null, true);
+        SimpleFeatureIterator it = fc.features();
+        try {
+            SimpleFeature first = it.next();
+            String id = first.getID();
+            assertSame(first, it.next());
+            assertFalse(id.equals(first.getID()));
+        } finally {
+            it.close();
+        }
+
+        fc = new RasterAsPointCollectionProcess().execute(coverage, null, null, null);
+        it = fc.features();
+        try {
+            assertNotSame(it.next(), it.next());
+        } finally {
+            it.close();
+        }
+    }
+
+    @Test
+    public void testVisitor() throws Exception {
+        SimpleFeatureCollection fc = new RasterAsPointCollectionProcess().execute(coverage, 2,
+                null, true);
+        final long[] sum = new long[1];
+        final Set<Feature> instances = Collections
+                .newSetFromMap(new IdentityHashMap<Feature, Boolean>());
+        fc.accepts(new FeatureVisitor() {
+
+            public void visit(Feature feature) {
+                sum[0] += ((Number) ((SimpleFeature) feature).getAttribute(1)).longValue();
+                instances.add(feature);
+            }
+        }, null);
+
+        long expected = 0;
+        for (int y = 0; y < HEIGHT; y += 2) {
+            for (int x = 0; x < WIDTH; x += 2) {
+                expected += x * 100 + y;
+            }
+        }
+        assertEquals(expected, sum[0]);
+        // a single feature is updated in place
+        assertEquals(1, instances.size());
+    }
+
+    @Test
+    public void testVisitorCollecting() throws Exception {
+        SimpleFeatureCollection fc = new RasterAsPointCollectionProcess().execute(coverage, 3,
+                JTS.toGeometry(new Envelope(10, 30, 10, 30)), null);
+        final List<SimpleFeature> features = new ArrayList<SimpleFeature>();
+        fc.accepts(new FeatureVisitor() {
+
+            public void visit(Feature feature) {
+                features.add((SimpleFeature) feature);
+            }
+        }, null);
+
+        // the collected features are still intact once the visit is over
+        assertEquals(fc.size(), features.size());
+        Set<String> ids = new HashSet<String>();
+        for (SimpleFeature feature : features) {
+            check(feature);
+            assertTrue(ids.add(feature.getID()));
+        }
+        assertEquals(check(fc), ids);
+    }
+}
@@ -0,0 +1,124 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2013, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.process.raster;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.image.RenderedImage;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.geotools.coverage.CoverageFactoryFinder;
+import org.geotools.geometry.jts.ReferencedEnvelope;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.vividsolutions.jts.geom.GeometryFactory;
+import com.vividsolutions.jts.geom.LineString;
+
+/**
+ * Tests the {@link TiledContourExtractor}, checking lines are stitched across tile boundaries.
+ *
+ * @source $URL$
+ */
+public class TiledContourExtractorTest {
+
+    private static final int SIZE = 100;
+
+    private ExecutorService executor;
+
+    private RenderedImage cone;
+
+    @Before
+    public void setUp() {
+        executor = Executors.newFixedThreadPool(4);
+        // the distance from the raster center
+        float[][] data = new float[SIZE][SIZE];
+        for (int y = 0; y < SIZE; y++) {
+            for (int x = 0; x < SIZE; x++) {
+                data[y][x] = (float) Math.hypot(x - 50.3, y - 49.7);
+            }
+        }
+        cone = CoverageFactoryFinder.getGridCoverageFactory(null)
+                .create("cone", data, new ReferencedEnvelope(0, SIZE, 0, SIZE, null))
+                .getRenderedImage();
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdown();
+    }
+
+    private List<LineString> extract(TiledContourExtractor extractor) {
+        List<LineString> lines = new ArrayList<LineString>();
+        while (extractor.hasMoreRows()) {
+            lines.addAll(extractor.nextRow());
+        }
+        return lines;
+    }
+
+    @Test
+    public void testRingAcrossTiles() {
+        for (int tileSize : new int[] { 7, 16, SIZE }) {
+            TiledContourExtractor extractor = new TiledContourExtractor(cone, 0,
+                    new double[] { 20 }, null, null, null, true, new GeometryFactory());
+            extractor.setTileSize(tileSize, tileSize);
+            extractor.setExecutor(executor);
+            List<LineString> lines = extract(extractor);
+            assertEquals("tile size " + tileSize, 1, lines.size());
+            LineString ring = lines.get(0);
+            assertTrue(ring.isClosed());
+            assertTrue(ring.isSimple());
+            assertEquals(20d, (Double) ring.getUserData(), 0d);
+            assertEquals(2 * Math.PI * 20, ring.getLength(), 1);
+        }
+    }
+
+    @Test
+    public void testIntervalAndNoData() {
+        // rings up to 40, arcs cut by the raster border above
+        TiledContourExtractor extractor = new TiledContourExtractor(cone, 0, null, 10d, null,
+                null, true, new GeometryFactory());
+        extractor.setTileSize(13, 11);
+        List<LineString> lines = extract(extractor);
+        int rings = 0;
+        for (LineString line : lines) {
+            if (line.isClosed()) {
+                assertTrue((Double) line.getUserData() <= 40);
+                rings++;
+            } else {
+                assertTrue((Double) line.getUserData() >= 50);
+            }
+        }
+        assertEquals(4, rings);
+
+        // a no data pixel on the 10 ring opens it
+        extractor = new TiledContourExtractor(cone, 0, new double[] { 10 }, null,
+                Collections.<Object> singletonList(cone.getData().getSampleFloat(60, 50, 0)),
+                null, true, new GeometryFactory());
+        extractor.setTileSize(13, 11);
+        lines = extract(extractor);
+        assertEquals(1, lines.size());
+        assertFalse(lines.get(0).isClosed());
+    }
+}
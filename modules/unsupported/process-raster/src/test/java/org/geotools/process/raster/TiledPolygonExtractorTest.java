@@ -0,0 +1,122 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2013, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.process.raster;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.image.RenderedImage;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.geotools.coverage.CoverageFactoryFinder;
+import org.geotools.geometry.jts.ReferencedEnvelope;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.vividsolutions.jts.geom.GeometryFactory;
+import com.vividsolutions.jts.geom.Polygon;
+
+/**
+ * Tests the {@link TiledPolygonExtractor}, checking regions are merged across tile boundaries.
+ *
+ * @source $URL$
+ */
+public class TiledPolygonExtractorTest {
+
+    private static final int SIZE = 60;
+
+    private ExecutorService executor;
+
+    private RenderedImage rings;
+
+    @Before
+    public void setUp() {
+        executor = Executors.newFixedThreadPool(4);
+        // concentric square rings of alternating value, 1 in the center, 0 outside
+        float[][] data = new float[SIZE][SIZE];
+        for (int y = 0; y < SIZE; y++) {
+            for (int x = 0; x < SIZE; x++) {
+                int d = Math.max(Math.abs(2 * x - SIZE + 1), Math.abs(2 * y - SIZE + 1)) / 2;
+                data[y][x] = d >= 25 ? 0 : (d / 5) % 2 + 1;
+            }
+        }
+        rings = CoverageFactoryFinder.getGridCoverageFactory(null)
+                .create("rings", data, new ReferencedEnvelope(0, SIZE, 0, SIZE, null))
+                .getRenderedImage();
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdown();
+    }
+
+    private List<Polygon> extract(TiledPolygonExtractor extractor) {
+        List<Polygon> polygons = new ArrayList<Polygon>();
+        while (extractor.hasMoreRows()) {
+            polygons.addAll(extractor.nextRow());
+        }
+        return polygons;
+    }
+
+    @Test
+    public void testRingsAcrossTiles() {
+        for (int tileSize : new int[] { 7, 16, SIZE }) {
+            TiledPolygonExtractor extractor = new TiledPolygonExtractor(rings, 0,
+                    Collections.singleton(0), null, new GeometryFactory());
+            extractor.setTileSize(tileSize, tileSize);
+            extractor.setExecutor(executor);
+            List<Polygon> polygons = extract(extractor);
+            // the center square and the four rings around it
+            assertEquals("tile size " + tileSize, 5, polygons.size());
+            Map<Integer, Integer> holes = new HashMap<Integer, Integer>();
+            double area = 0;
+            for (Polygon polygon : polygons) {
+                assertTrue(polygon.isValid());
+                int side = (int) Math.round(polygon.getExteriorRing().getLength() / 4);
+                holes.put(side, polygon.getNumInteriorRing());
+                area += polygon.getArea();
+            }
+            assertEquals(50 * 50, area, 0d);
+            assertEquals(Integer.valueOf(0), holes.get(10));
+            for (int side = 20; side <= 50; side += 10) {
+                assertEquals(Integer.valueOf(1), holes.get(side));
+            }
+        }
+    }
+
+    @Test
+    public void testNoData() {
+        // without outside values the border becomes a polygon with a hole
+        TiledPolygonExtractor extractor = new TiledPolygonExtractor(rings, 0, null, null,
+                new GeometryFactory());
+        extractor.setTileSize(13, 11);
+        List<Polygon> polygons = extract(extractor);
+        assertEquals(6, polygons.size());
+        double area = 0;
+        for (Polygon polygon : polygons) {
+            area += polygon.getArea();
+        }
+        assertEquals(SIZE * SIZE, area, 0d);
+    }
+}
@@ -158,16 +158,38 @@ public class ZonalStatsProcessTest extends Assert {
 
             // invoke the process
             SimpleFeatureCollection sfc = process.execute(coverage2D, null, featureCollection,
-                    covClassificator);
+                    covClassificator, null);
 
             iterator = sfc.features();
             assertNotNull(iterator);
 
+            Map<String, SimpleFeature> perZone = new HashMap<String, SimpleFeature>();
             while (iterator.hasNext()) {
                 SimpleFeature feature = iterator.next();
                 assertTrue((feature.toString()).equals(results.get(feature.getID()
                         + feature.getAttribute("classification"))));
+                perZone.put(feature.getID() + feature.getAttribute("classification"), feature);
             }
+            iterator.close();
+
+            // the single pass computation gives the same statistics
+            sfc = process.execute(coverage2D, null, featureCollection, covClassificator,
+                    Boolean.TRUE);
+            iterator = sfc.features();
+            int count = 0;
+            while (iterator.hasNext()) {
+                SimpleFeature feature = iterator.next();
+                SimpleFeature expected = perZone.get(feature.getID()
+                        + feature.getAttribute("classification"));
+                assertNotNull(expected);
+                assertEquals(expected.getAttribute("count"), feature.getAttribute("count"));
+                for (String name : new String[] { "min", "max", "sum", "avg", "stddev" }) {
+                    assertEquals(name, (Double) expected.getAttribute(name),
+                            (Double) feature.getAttribute(name), 1e-6);
+                }
+                count++;
+            }
+            assertEquals(perZone.size(), count);
 
         } finally {
             try {
@@ -20,6 +20,7 @@ import java.util.Iterator;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ThreadFactory;
 
@@ -51,6 +52,11 @@ public class Processors extends FactoryFinder {
      */
     private static FactoryRegistry registry;
 
+    /**
+     * The pool shared by the processes splitting their work in parallel tasks, created on first use
+     */
+    private static ExecutorService sharedExecutor;
+
     /**
      * Do not allow any instantiation of this class.
      */
@@ -193,6 +199,32 @@ public class Processors extends FactoryFinder {
         return new ThreadPoolProcessExecutor( nThreads, threadFactory);
     }
 
+    /**
+     * Returns the thread pool shared by the processes splitting their work in parallel tasks,
+     * bounded to as many daemon threads as the available processors whatever the number of
+     * concurrent process executions. Daemon threads ensure the JVM can exit even if a caller never
+     * closes an iterator. Callers must not shut it down, they cancel the tasks they submitted
+     * instead.
+     * 
+     * @return the shared {@link ExecutorService}.
+     */
+    public static synchronized ExecutorService getSharedExecutor() {
+        if (sharedExecutor == null) {
+            sharedExecutor = Executors.newFixedThreadPool(Runtime.getRuntime()
+                    .availableProcessors(), new ThreadFactory() {
+
+                final ThreadFactory delegate = Executors.defaultThreadFactory();
+
+                public Thread newThread(Runnable r) {
+                    Thread thread = delegate.newThread(r);
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        return sharedExecutor;
+    }
+
     /**
      * Reinitializes all static state, including the ProcessFactory service registry and reference
      * to the last used ProcessFactory
@@ -25,6 +25,12 @@ import java.net.URI;
 import java.net.URISyntaxException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 import org.geotools.data.DataUtilities;
 import org.geotools.data.DefaultServiceInfo;
@@ -37,6 +43,7 @@ import org.geotools.factory.CommonFactoryFinder;
 import org.geotools.feature.FeatureTypes;
 import org.geotools.feature.NameImpl;
 import org.geotools.feature.type.FeatureTypeFactoryImpl;
+import org.geotools.util.logging.Logging;
 import org.opengis.feature.simple.SimpleFeatureType;
 import org.opengis.feature.type.Name;
 
@@ -45,6 +52,12 @@ import com.vividsolutions.jts.geom.GeometryFactory;
 /**
  * Sample DataStore implementation, please see formal tutorial included with
  * users docs.
+ * <p>
+ * An indexed store keeps the line offsets and bounds of the features in a sidecar, decodes
+ * geometries only for the features a query needs, and records changes in a write-ahead log
+ * instead of rewriting the file. The log is folded back into the file in the background once it
+ * grows past a quarter of it, and when the store is disposed. A store that is not indexed folds
+ * a log left behind before reading or writing the file.
  * 
  * @author Jody Garnett, Refractions Research Inc.
  *
@@ -52,12 +65,27 @@ import com.vividsolutions.jts.geom.GeometryFactory;
  * @source $URL$
  */
 public class PropertyDataStore extends ContentDataStore {
+    static final Logger LOGGER = Logging.getLogger("org.geotools.data.property");
+
     protected File file;
 
+    boolean indexed;
+
+    private PropertyIndex index;
+
+    private ExecutorService compactor;
+
+    private Future<?> compaction;
+
     public PropertyDataStore(File dir) {
         this(dir, null);
     }
 
+    public PropertyDataStore(File file, String namespaceURI, boolean indexed) {
+        this(file, namespaceURI);
+        this.indexed = indexed;
+    }
+
     // constructor start
     public PropertyDataStore(File file, String namespaceURI) {
         if (file.isDirectory()) {
@@ -85,6 +113,8 @@ public class PropertyDataStore extends ContentDataStore {
             throw new FileNotFoundException("Unable to create a new property file: file exists "+file);
         }
         String typeName = featureType.getTypeName();
+        // a log left by an earlier file of the same name does not apply
+        PropertyIndex.getLog(file).delete();
         BufferedWriter writer = new BufferedWriter(new FileWriter(file));
         writer.write("_=");
         writer.write(DataUtilities.spec(featureType));
@@ -113,6 +143,88 @@ public class PropertyDataStore extends ContentDataStore {
         this.namespaceURI = namespaceURI;
     }
 
+    /**
+     * @return whether features are read through an index and written to a log
+     */
+    public boolean isIndexed() {
+        return indexed;
+    }
+
+    synchronized PropertyIndex getIndex() throws IOException {
+        if (index == null) {
+            index = new PropertyIndex(file, getSchema(getTypeNames()[0]));
+        }
+        return index;
+    }
+
+    /**
+     * Logs changes made by a {@link PropertyLogFeatureWriter}, scheduling a compaction once the
+     * log is large enough.
+     */
+    void log(List<String> changes) throws IOException {
+        final PropertyIndex index = getIndex();
+        index.apply(changes);
+        if (!index.isCompactionDue()) {
+            return;
+        }
+        synchronized (this) {
+            if (compaction != null && !compaction.isDone()) {
+                return;
+            }
+            if (compactor == null) {
+                compactor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+                    public Thread newThread(Runnable r) {
+                        Thread thread = new Thread(r, "property-compactor");
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+            }
+            compaction = compactor.submit(new Runnable() {
+                public void run() {
+                    try {
+                        // tried again on a later write if the file is in use
+                        index.compact();
+                    } catch (IOException e) {
+                        LOGGER.log(Level.WARNING, "Could not compact the log of " + file, e);
+                    }
+                }
+            });
+        }
+    }
+
+    /**
+     * Folds a log left by an indexed store into the property file, so that it can be read and
+     * written directly.
+     */
+    void flushLog() throws IOException {
+        if (!indexed && PropertyIndex.getLog(file).exists()) {
+            getIndex().compact();
+        }
+    }
+
+    @Override
+    public void dispose() {
+        PropertyIndex index;
+        synchronized (this) {
+            if (compactor != null) {
+                compactor.shutdown();
+                compactor = null;
+            }
+            compaction = null;
+            index = this.index;
+            this.index = null;
+        }
+        if (index != null) {
+            try {
+                index.compact();
+            } catch (IOException e) {
+                LOGGER.log(Level.WARNING, "Could not compact the log of " + file, e);
+            }
+        }
+        super.dispose();
+    }
+
     protected java.util.List<Name> createTypeNames() throws IOException {
         String name = file.getName();
         String typeName = name.substring(0,name.lastIndexOf('.'));
@@ -43,14 +43,18 @@ public class PropertyDataStoreFactory implements DataStoreFactorySpi {
 
     public static final Param NAMESPACE = new Param("namespace", String.class,
             "namespace of datastore", false);
+
+    public static final Param INDEXED = new Param("indexed", Boolean.class,
+            "index the property file and log changes rather than rewrite it", false,
+            Boolean.FALSE);
     
     public DataStore createDataStore(Map params) throws IOException {
-    	File dir = fileLookup(params);
+    	File file = fileLookup(params);
         String namespaceURI = (String) NAMESPACE.lookUp( params );
-        if (dir.exists() && dir.isDirectory()) {
-            return new PropertyDataStore(dir,namespaceURI);
+        if (file.exists()) {
+            return new PropertyDataStore(file, namespaceURI, isIndexed(params));
         } else {
-            throw new IOException("Directory is required");
+            throw new IOException("Property file is required");
         }
     }
 
@@ -63,7 +67,7 @@ public class PropertyDataStoreFactory implements DataStoreFactorySpi {
         }
 
         String namespaceURI = (String) NAMESPACE.lookUp(params);
-        return new PropertyDataStore(dir,namespaceURI);
+        return new PropertyDataStore(dir, namespaceURI, isIndexed(params));
     }
     // createNewDataStore end
 
@@ -78,9 +82,15 @@ public class PropertyDataStoreFactory implements DataStoreFactorySpi {
     /**
      * @see #DIRECTORY
      * @see PropertyDataStoreFactory#NAMESPACE
+     * @see PropertyDataStoreFactory#INDEXED
      */
     public Param[] getParametersInfo() {
-        return new Param[] { FILE, NAMESPACE };
+        return new Param[] { FILE, NAMESPACE, INDEXED };
+    }
+
+    private boolean isIndexed(Map params) throws IOException {
+        Boolean indexed = (Boolean) INDEXED.lookUp(params);
+        return indexed != null && indexed;
     }
 
     /**
@@ -180,6 +180,17 @@ public class PropertyFeatureReader implements FeatureReader<SimpleFeatureType, S
             e1.printStackTrace();
             stringValue = null;
         }
+        return read(attType, stringValue);
+    }
+
+    /**
+     * Converts the text of an attribute to its value.
+     * 
+     * @param attType Attribute to read
+     * @param stringValue Text of the attribute, <code>&lt;null&gt;</code> for null
+     * @return Value for the attribute
+     */
+    static Object read(AttributeDescriptor attType, String stringValue) {
         // check for special <null> flag
         if ("<null>".equals(stringValue)) {
             stringValue = null;
@@ -258,7 +269,7 @@ public class PropertyFeatureReader implements FeatureReader<SimpleFeatureType, S
      * @param txt
      * @return txt leading whitespace removed
      */
-    String trimLeft(String txt) {
+    static String trimLeft(String txt) {
         // trim
         int start = 0;
         WHITESPACE: for (int i = 0; i < txt.length(); i++) {
@@ -26,12 +26,14 @@ import org.geotools.data.DataUtilities;
 import org.geotools.data.FeatureReader;
 import org.geotools.data.Query;
 import org.geotools.data.QueryCapabilities;
+import org.geotools.data.Transaction;
 import org.geotools.data.store.ContentEntry;
 import org.geotools.data.store.ContentFeatureSource;
 import org.geotools.feature.SchemaException;
 import org.geotools.geometry.jts.ReferencedEnvelope;
 import org.opengis.feature.simple.SimpleFeature;
 import org.opengis.feature.simple.SimpleFeatureType;
+import org.opengis.filter.Filter;
 
 /**
  * 
@@ -55,8 +57,13 @@ public class PropertyFeatureSource extends ContentFeatureSource {
     protected ReferencedEnvelope getBoundsInternal(Query query) throws IOException {
         ReferencedEnvelope bounds = new ReferencedEnvelope(getSchema()
                 .getCoordinateReferenceSystem());
+        PropertyDataStore dataStore = (PropertyDataStore) getEntry().getDataStore();
+        if (dataStore.isIndexed() && isAll(query)) {
+            bounds.include(dataStore.getIndex().getBounds());
+            return bounds;
+        }
 
-        FeatureReader<SimpleFeatureType, SimpleFeature> featureReader = getReaderInternal(query);
+        FeatureReader<SimpleFeatureType, SimpleFeature> featureReader = read(query, true);
         try {
             while (featureReader.hasNext()) {
                 SimpleFeature feature = featureReader.next();
@@ -70,8 +77,12 @@ public class PropertyFeatureSource extends ContentFeatureSource {
 
     @Override
     protected int getCountInternal(Query query) throws IOException {
+        PropertyDataStore dataStore = (PropertyDataStore) getEntry().getDataStore();
+        if (dataStore.isIndexed() && isAll(query)) {
+            return dataStore.getIndex().size();
+        }
         int count = 0;
-        FeatureReader<SimpleFeatureType, SimpleFeature> featureReader = getReaderInternal(query);
+        FeatureReader<SimpleFeatureType, SimpleFeature> featureReader = read(query, true);
         try {
             while (featureReader.hasNext()) {
                 featureReader.next();
@@ -115,10 +126,40 @@ public class PropertyFeatureSource extends ContentFeatureSource {
     }
 
 
+    /**
+     * @return whether the query asks for all the features
+     */
+    private boolean isAll(Query query) {
+        return (query.getFilter() == null || query.getFilter() == Filter.INCLUDE)
+                && query.getStartIndex() == null && query.isMaxFeaturesUnlimited();
+    }
+
     @Override
     protected FeatureReader<SimpleFeatureType, SimpleFeature> getReaderInternal(Query query)
             throws IOException {
+        return read(query, isAutoCommit(getTransaction()));
+    }
+
+    static boolean isAutoCommit(Transaction transaction) {
+        return transaction == null || transaction == Transaction.AUTO_COMMIT;
+    }
+
+    /**
+     * Reads the property file, through its index when the store is indexed.
+     * 
+     * @param prefilter whether the features not matching the query filter can be skipped; the
+     *        indexed reader then preselects features by id or bounds and evaluates the filter
+     */
+    FeatureReader<SimpleFeatureType, SimpleFeature> read(Query query, boolean prefilter)
+            throws IOException {
         PropertyDataStore dataStore = (PropertyDataStore) getEntry().getDataStore();
+        if (dataStore.isIndexed()) {
+            PropertyIndex index = dataStore.getIndex();
+            PropertyIndex.Snapshot snapshot = index.snapshot(prefilter ? query.getFilter()
+                    : Filter.INCLUDE);
+            return new PropertyIndexedFeatureReader(index.type, snapshot, query, prefilter);
+        }
+        dataStore.flushLog();
         return new PropertyFeatureReader(dataStore.getNamespaceURI(),dataStore.file);
     }
 }
\ No newline at end of file
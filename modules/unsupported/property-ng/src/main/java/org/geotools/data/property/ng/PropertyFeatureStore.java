@@ -69,7 +69,12 @@ public class PropertyFeatureStore extends ContentFeatureStore {
     @Override
     protected FeatureWriter<SimpleFeatureType, SimpleFeature> getWriterInternal(Query query,
             int flags) throws IOException {
-        return new PropertyFeatureWriter(this,getState(), query, (flags | WRITER_ADD) == WRITER_ADD);
+        boolean append = (flags | WRITER_ADD) == WRITER_ADD;
+        if (store.isIndexed()) {
+            return new PropertyLogFeatureWriter(this, getState(), query, append);
+        }
+        store.flushLog();
+        return new PropertyFeatureWriter(this,getState(), query, append);
     }
 
     @Override
@@ -85,7 +90,8 @@ public class PropertyFeatureStore extends ContentFeatureStore {
     @Override
     protected FeatureReader<SimpleFeatureType, SimpleFeature> getReaderInternal(Query query)
             throws IOException {
-        return delegate.getReaderInternal(query);
+        return delegate.read(query,
+                PropertyFeatureSource.isAutoCommit(getTransaction()));
     }
 
     @Override
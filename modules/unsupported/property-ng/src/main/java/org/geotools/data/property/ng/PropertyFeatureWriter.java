@@ -139,23 +139,30 @@ public class PropertyFeatureWriter implements FeatureWriter<SimpleFeatureType, S
             throw new IOException("Writer has been closed");
         }
         writer.write(position == 0 ? "=" : "|");
+        writer.write(encode(attribute));
+    }
+
+    /**
+     * Encodes an attribute value as written in a property file.
+     */
+    static String encode(Object attribute) {
         if (attribute == null) {
-            writer.write("<null>"); // nothing!
+            return "<null>"; // nothing!
         } else if( attribute instanceof String){
             // encode newlines
             String txt = (String) attribute;
             txt = txt.replace("\n", "\\n");
             txt = txt.replace("\r", "\\r");
-            writer.write( txt );            
+            return txt;
         } else if (attribute instanceof Geometry) {
             Geometry geometry = (Geometry) attribute;
-            writer.write( geometry.toText() );
+            return geometry.toText();
         } else {
             String txt = Converters.convert( attribute, String.class );
             if( txt == null ){ // could not convert?
                 txt = attribute.toString();
             }
-            writer.write( txt );
+            return txt;
         }
     }
     // writeImplementation end
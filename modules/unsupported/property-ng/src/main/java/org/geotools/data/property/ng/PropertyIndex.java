@@ -0,0 +1,828 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2002-2008, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.data.property.ng;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.geotools.data.DataSourceException;
+import org.geotools.filter.visitor.ExtractBoundsFilterVisitor;
+import org.geotools.geometry.jts.ReferencedEnvelope;
+import org.geotools.util.logging.Logging;
+import org.opengis.feature.simple.SimpleFeatureType;
+import org.opengis.feature.type.AttributeDescriptor;
+import org.opengis.feature.type.GeometryDescriptor;
+import org.opengis.filter.Filter;
+import org.opengis.filter.Id;
+import org.opengis.filter.identity.Identifier;
+
+import com.vividsolutions.jts.geom.Envelope;
+import com.vividsolutions.jts.geom.Geometry;
+
+/**
+ * Line offset and bounds index of a property file, plus the write-ahead log of the changes made
+ * to it.
+ * <p>
+ * Each feature is located by the position and length of its record, in the property file or in
+ * the log, and carries the envelope of its default geometry. The envelopes are worked out once,
+ * when a record is indexed, so queries skip the records they do not need without parsing their
+ * well known text. The index of the property file is saved in a sidecar named after it plus the
+ * {@value #EXTENSION} extension, and is rebuilt when the length or modification time of the file
+ * no longer match.
+ * <p>
+ * Changes are appended to a log named after the property file plus the {@value #LOG_EXTENSION}
+ * extension, one line each: <code>+fid=value|...</code> adds or replaces a feature and
+ * <code>-fid</code> removes it. The log is replayed on open, dropping a last line left half
+ * written, and {@link #compact()} folds it back into the property file. Replaying a log over the
+ * file it was compacted into changes nothing, so a compaction interrupted before the log is
+ * deleted is harmless.
+ * <p>
+ * Feature ids are expected to be unique within the file.
+ *
+ * @source $URL$
+ */
+class PropertyIndex {
+
+    static final Logger LOGGER = Logging.getLogger("org.geotools.data.property");
+
+    static final String EXTENSION = ".pix";
+
+    static final String LOG_EXTENSION = ".wal";
+
+    static final int MAGIC = 0x50495831;
+
+    /** the log is compacted once larger than this fraction of the property file */
+    static final int COMPACT_RATIO = 4;
+
+    /** logs smaller than this are never worth compacting */
+    static final long COMPACT_MIN = 64 * 1024;
+
+    static final int BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * The location and bounds of a record.
+     */
+    static final class Entry {
+        final String fid;
+
+        /** whether the record is in the log rather than in the property file */
+        final boolean logged;
+
+        final long offset;
+
+        final int length;
+
+        /** the envelope of the default geometry, NaN when there is none */
+        final double minX, minY, maxX, maxY;
+
+        Entry(String fid, boolean logged, long offset, int length, Envelope bounds) {
+            this.fid = fid;
+            this.logged = logged;
+            this.offset = offset;
+            this.length = length;
+            if (bounds == null || bounds.isNull()) {
+                minX = minY = maxX = maxY = Double.NaN;
+            } else {
+                minX = bounds.getMinX();
+                minY = bounds.getMinY();
+                maxX = bounds.getMaxX();
+                maxY = bounds.getMaxY();
+            }
+        }
+
+        Entry(String fid, boolean logged, long offset, int length, double minX, double minY,
+                double maxX, double maxY) {
+            this.fid = fid;
+            this.logged = logged;
+            this.offset = offset;
+            this.length = length;
+            this.minX = minX;
+            this.minY = minY;
+            this.maxX = maxX;
+            this.maxY = maxY;
+        }
+
+        boolean intersects(Envelope envelope) {
+            // comparisons with NaN are false, features without a geometry never intersect
+            return minX <= envelope.getMaxX() && maxX >= envelope.getMinX()
+                    && minY <= envelope.getMaxY() && maxY >= envelope.getMinY();
+        }
+    }
+
+    /**
+     * A selection of records, holding the files they are read from open so that it stays valid
+     * while later changes are logged and compacted.
+     */
+    static final class Snapshot {
+        final List<Entry> entries;
+
+        private final Source base;
+
+        private final Source log;
+
+        Snapshot(List<Entry> entries, File base, File log) throws IOException {
+            this.entries = entries;
+            this.base = new Source(base);
+            Source logSource = null;
+            try {
+                logSource = log != null ? new Source(log) : null;
+            } finally {
+                if (logSource == null && log != null) {
+                    this.base.close();
+                }
+            }
+            this.log = logSource;
+        }
+
+        /**
+         * @return the record as {@link PropertyFeatureReader} reads it, with continuation lines
+         *         joined and escapes replaced
+         */
+        String read(Entry entry) throws IOException {
+            byte[] data = (entry.logged ? log : base).read(entry.offset, entry.length);
+            return decode(new String(data));
+        }
+
+        void close() throws IOException {
+            try {
+                base.close();
+            } finally {
+                if (log != null) {
+                    log.close();
+                }
+            }
+        }
+    }
+
+    /**
+     * Reads records through a buffer, as they mostly come in file order.
+     */
+    static final class Source {
+        final RandomAccessFile file;
+
+        final byte[] buffer = new byte[BUFFER_SIZE];
+
+        long start;
+
+        int size;
+
+        Source(File file) throws IOException {
+            this.file = new RandomAccessFile(file, "r");
+        }
+
+        byte[] read(long offset, int length) throws IOException {
+            byte[] data = new byte[length];
+            if (length > buffer.length) {
+                file.seek(offset);
+                file.readFully(data);
+                return data;
+            }
+            if (offset < start || offset + length > start + size) {
+                file.seek(offset);
+                start = offset;
+                size = 0;
+                while (size < buffer.length) {
+                    int read = file.read(buffer, size, buffer.length - size);
+                    if (read < 0) {
+                        break;
+                    }
+                    size += read;
+                }
+                if (size < length) {
+                    throw new EOFException("Record past the end of the file at " + offset);
+                }
+            }
+            System.arraycopy(buffer, (int) (offset - start), data, 0, length);
+            return data;
+        }
+
+        void close() throws IOException {
+            file.close();
+        }
+    }
+
+    /**
+     * Reads lines keeping track of their position, with the same terminators as
+     * {@link java.io.BufferedReader#readLine()}.
+     */
+    static final class Lines {
+        final InputStream in;
+
+        /** position after the last line read, including its terminator */
+        long position;
+
+        /** position of the first and past the last character of the last line read */
+        long start, end;
+
+        /** whether the last line read had a terminator */
+        boolean terminated;
+
+        byte[] line = new byte[256];
+
+        int size;
+
+        Lines(InputStream in) {
+            this.in = in;
+        }
+
+        boolean next() throws IOException {
+            start = position;
+            size = 0;
+            int b;
+            while ((b = in.read()) != -1) {
+                position++;
+                if (b == '\n' || b == '\r') {
+                    end = position - 1;
+                    terminated = true;
+                    if (b == '\r') {
+                        in.mark(1);
+                        if (in.read() == '\n') {
+                            position++;
+                        } else {
+                            in.reset();
+                        }
+                    }
+                    return true;
+                }
+                if (size == line.length) {
+                    byte[] grown = new byte[size * 2];
+                    System.arraycopy(line, 0, grown, 0, size);
+                    line = grown;
+                }
+                line[size++] = (byte) b;
+            }
+            end = position;
+            terminated = false;
+            return size > 0;
+        }
+
+        String text() {
+            return new String(line, 0, size);
+        }
+    }
+
+    final File file;
+
+    final File sidecar;
+
+    final File logFile;
+
+    final SimpleFeatureType type;
+
+    /** position of the default geometry attribute, -1 if there is none */
+    final int geometry;
+
+    /** whether the default geometry is the only one, so that bounds filters refer to it */
+    final boolean singleGeometry;
+
+    /** the features in file order, a replaced feature keeps its place */
+    Map<String, Entry> entries = new LinkedHashMap<String, Entry>();
+
+    /** the union of the entry bounds, null when it needs to be worked out again */
+    Envelope bounds;
+
+    long baseLength;
+
+    long baseModified;
+
+    /** position of the first line after the header */
+    long dataStart;
+
+    long logLength;
+
+    PropertyIndex(File file, SimpleFeatureType type) throws IOException {
+        this.file = file;
+        this.sidecar = getSidecar(file);
+        this.logFile = getLog(file);
+        this.type = type;
+        GeometryDescriptor descriptor = type.getGeometryDescriptor();
+        this.geometry = descriptor == null ? -1 : type.indexOf(descriptor.getLocalName());
+        int geometries = 0;
+        for (AttributeDescriptor attribute : type.getAttributeDescriptors()) {
+            if (attribute instanceof GeometryDescriptor) {
+                geometries++;
+            }
+        }
+        this.singleGeometry = geometries == 1;
+        refresh();
+    }
+
+    static File getSidecar(File file) {
+        return new File(file.getParentFile(), file.getName() + EXTENSION);
+    }
+
+    static File getLog(File file) {
+        return new File(file.getParentFile(), file.getName() + LOG_EXTENSION);
+    }
+
+    /**
+     * @return the number of features
+     */
+    synchronized int size() throws IOException {
+        validate();
+        return entries.size();
+    }
+
+    /**
+     * @return true if a feature with the given id is indexed
+     */
+    synchronized boolean contains(String fid) throws IOException {
+        validate();
+        return entries.containsKey(fid);
+    }
+
+    synchronized ReferencedEnvelope getBounds() throws IOException {
+        validate();
+        if (bounds == null) {
+            Envelope union = new Envelope();
+            for (Entry entry : entries.values()) {
+                if (!Double.isNaN(entry.minX)) {
+                    union.expandToInclude(new Envelope(entry.minX, entry.maxX, entry.minY,
+                            entry.maxY));
+                }
+            }
+            bounds = union;
+        }
+        return new ReferencedEnvelope(bounds, type.getCoordinateReferenceSystem());
+    }
+
+    /**
+     * Selects the records that may match a filter, narrowing feature id and bounding box filters
+     * down with the index. The filter still needs to be evaluated on the features read.
+     */
+    Snapshot snapshot(Filter filter) throws IOException {
+        if (filter instanceof Id) {
+            Set<String> fids = new HashSet<String>();
+            for (Identifier id : ((Id) filter).getIdentifiers()) {
+                fids.add(id.getID().toString());
+            }
+            return snapshot(fids, null);
+        }
+        if (filter != null && filter != Filter.INCLUDE && singleGeometry) {
+            Envelope envelope = (Envelope) filter.accept(
+                    ExtractBoundsFilterVisitor.BOUNDS_VISITOR, null);
+            if (envelope != null && !envelope.isNull()
+                    && !Double.isInfinite(envelope.getWidth())
+                    && !Double.isInfinite(envelope.getHeight())) {
+                return snapshot(null, envelope);
+            }
+        }
+        return snapshot(null, null);
+    }
+
+    /**
+     * @param fids the features to select, or null for all of them
+     * @param envelope the bounds the features need to intersect, or null
+     */
+    synchronized Snapshot snapshot(Set<String> fids, Envelope envelope) throws IOException {
+        validate();
+        List<Entry> selected = new ArrayList<Entry>();
+        if (fids != null) {
+            for (String fid : fids) {
+                Entry entry = entries.get(fid);
+                if (entry != null) {
+                    selected.add(entry);
+                }
+            }
+        } else {
+            for (Entry entry : entries.values()) {
+                if (envelope == null || entry.intersects(envelope)) {
+                    selected.add(entry);
+                }
+            }
+        }
+        return new Snapshot(selected, file, logLength > 0 ? logFile : null);
+    }
+
+    /**
+     * Appends changes to the log, and applies them to the index once they are synced to disk.
+     *
+     * @param changes a record adding or replacing a feature as <code>+fid=value|...</code>, or a
+     *        feature id to remove as <code>-fid</code>, each on a single line
+     */
+    synchronized void apply(List<String> changes) throws IOException {
+        if (changes.isEmpty()) {
+            return;
+        }
+        validate();
+
+        // index the records first, so that the log never holds one that can not be replayed
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        List<Entry> indexed = new ArrayList<Entry>(changes.size());
+        for (String change : changes) {
+            byte[] data = change.getBytes();
+            long offset = logLength + bytes.size();
+            if (change.startsWith("+")) {
+                indexed.add(index(decode(change.substring(1)), true, offset + 1,
+                        data.length - 1));
+            } else if (change.startsWith("-")) {
+                indexed.add(null);
+            } else {
+                throw new IllegalArgumentException("Not a change: " + change);
+            }
+            bytes.write(data, 0, data.length);
+            bytes.write('\n');
+        }
+
+        RandomAccessFile out = new RandomAccessFile(logFile, "rw");
+        try {
+            // drop anything a failed write may have left behind
+            out.setLength(logLength);
+            out.seek(logLength);
+            out.write(bytes.toByteArray());
+            out.getFD().sync();
+        } finally {
+            out.close();
+        }
+        logLength += bytes.size();
+
+        for (int i = 0; i < changes.size(); i++) {
+            Entry entry = indexed.get(i);
+            if (entry != null) {
+                entries.put(entry.fid, entry);
+            } else {
+                entries.remove(changes.get(i).substring(1));
+            }
+        }
+        bounds = null;
+    }
+
+    /**
+     * @return whether the log has grown large enough to be compacted
+     */
+    synchronized boolean isCompactionDue() {
+        return logLength > Math.max(COMPACT_MIN, baseLength / COMPACT_RATIO);
+    }
+
+    /**
+     * Rewrites the property file with the changes of the log, and starts a new log.
+     * <p>
+     * The new file is written next to the property file and synced before being renamed over
+     * it. Readers holding a {@link Snapshot} keep reading the files they opened.
+     *
+     * @return false if the property file could not be replaced, in which case the log is kept
+     *         and the compaction can be tried again later
+     */
+    synchronized boolean compact() throws IOException {
+        if (!logFile.exists()) {
+            return true;
+        }
+        validate();
+        if (logLength == 0) {
+            logFile.delete();
+            return true;
+        }
+
+        Map<String, Entry> compacted = new LinkedHashMap<String, Entry>();
+        File temp = File.createTempFile(file.getName(), null, file.getParentFile());
+        long start = dataStart;
+        boolean written = false;
+        Snapshot snapshot = new Snapshot(null, file, logFile);
+        try {
+            FileOutputStream stream = new FileOutputStream(temp);
+            try {
+                OutputStream out = new BufferedOutputStream(stream, BUFFER_SIZE);
+                byte[] header = snapshot.base.read(0, (int) dataStart);
+                out.write(header);
+                if (header.length > 0 && header[header.length - 1] != '\n'
+                        && header[header.length - 1] != '\r') {
+                    out.write('\n');
+                    start++;
+                }
+                long position = start;
+                for (Entry entry : entries.values()) {
+                    Source source = entry.logged ? snapshot.log : snapshot.base;
+                    out.write(source.read(entry.offset, entry.length));
+                    out.write('\n');
+                    compacted.put(entry.fid, new Entry(entry.fid, false, position, entry.length,
+                            entry.minX, entry.minY, entry.maxX, entry.maxY));
+                    position += entry.length + 1;
+                }
+                out.flush();
+                stream.getFD().sync();
+                written = true;
+            } finally {
+                stream.close();
+            }
+        } finally {
+            snapshot.close();
+            if (!written) {
+                temp.delete();
+            }
+        }
+
+        if (!temp.renameTo(file) && !replace(temp)) {
+            temp.delete();
+            LOGGER.warning("Could not replace " + file + ", its log is kept");
+            return false;
+        }
+        entries = compacted;
+        baseLength = file.length();
+        baseModified = file.lastModified();
+        dataStart = start;
+        save();
+        if (logFile.delete()) {
+            logLength = 0;
+        } else {
+            // replaying it over the compacted file changes nothing
+            LOGGER.warning("Could not delete " + logFile);
+        }
+        return true;
+    }
+
+    /**
+     * Replaces the property file on the platforms that do not rename over an existing file,
+     * keeping the original aside until the replacement is in place.
+     * 
+     * @return false if the property file could not be replaced, in which case the original is
+     *         back in place
+     * @throws IOException if the original could not be put back, it is then left aside
+     */
+    private boolean replace(File replacement) throws IOException {
+        File original = File.createTempFile(file.getName(), ".bak", file.getParentFile());
+        if (!original.delete() || !file.renameTo(original)) {
+            original.delete();
+            return false;
+        }
+        if (!replacement.renameTo(file)) {
+            if (!original.renameTo(file)) {
+                throw new IOException("Could not restore " + file + " from " + original);
+            }
+            return false;
+        }
+        original.delete();
+        return true;
+    }
+
+    /**
+     * Rebuilds the index if the property file was changed by someone else.
+     */
+    private void validate() throws IOException {
+        if (file.length() != baseLength || file.lastModified() != baseModified) {
+            LOGGER.fine(file + " has changed, indexing it again");
+            refresh();
+        }
+    }
+
+    private void refresh() throws IOException {
+        entries = new LinkedHashMap<String, Entry>();
+        bounds = null;
+        baseLength = file.length();
+        baseModified = file.lastModified();
+        if (!load()) {
+            entries.clear();
+            scan();
+            save();
+        }
+        replay();
+    }
+
+    /**
+     * Indexes the records of the property file, with the same rules as
+     * {@link PropertyFeatureReader}.
+     */
+    private void scan() throws IOException {
+        InputStream in = new BufferedInputStream(new FileInputStream(file), BUFFER_SIZE);
+        try {
+            Lines lines = new Lines(in);
+            dataStart = -1;
+            while (lines.next()) {
+                if (lines.text().startsWith("_=")) {
+                    dataStart = lines.position;
+                    break;
+                }
+            }
+            if (dataStart < 0) {
+                throw new IOException("Property file schema not available found");
+            }
+            StringBuilder raw = new StringBuilder();
+            while (true) {
+                raw.setLength(0);
+                long start = -1;
+                long end = 0;
+                while (lines.next()) {
+                    String txt = lines.text();
+                    boolean comment = txt.startsWith("#") || txt.startsWith("!");
+                    if (start < 0) {
+                        if (comment) {
+                            continue;
+                        }
+                        start = lines.start;
+                    } else {
+                        raw.append('\n');
+                    }
+                    raw.append(txt);
+                    end = lines.end;
+                    if (!comment && !PropertyFeatureReader.trimLeft(txt).endsWith("\\")) {
+                        break;
+                    }
+                }
+                if (start < 0) {
+                    break;
+                }
+                String record = decode(raw.toString());
+                if (record.length() == 0) {
+                    break; // PropertyFeatureReader stops at the first empty line
+                }
+                Entry entry = index(record, false, start, (int) (end - start));
+                entries.put(entry.fid, entry);
+            }
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Applies the log to the index, dropping a last change left half written.
+     */
+    private void replay() throws IOException {
+        logLength = 0;
+        if (!logFile.exists()) {
+            return;
+        }
+        InputStream in = new BufferedInputStream(new FileInputStream(logFile), BUFFER_SIZE);
+        try {
+            Lines lines = new Lines(in);
+            while (lines.next() && lines.terminated) {
+                String txt = lines.text();
+                if (txt.startsWith("+")) {
+                    Entry entry = index(decode(txt.substring(1)), true, lines.start + 1,
+                            (int) (lines.end - lines.start - 1));
+                    entries.put(entry.fid, entry);
+                } else if (txt.startsWith("-")) {
+                    entries.remove(txt.substring(1));
+                }
+                logLength = lines.position;
+            }
+        } finally {
+            in.close();
+        }
+        if (logLength < logFile.length()) {
+            LOGGER.warning("Dropping an incomplete change at the end of " + logFile);
+            RandomAccessFile out = new RandomAccessFile(logFile, "rw");
+            try {
+                out.setLength(logLength);
+            } finally {
+                out.close();
+            }
+        }
+        bounds = null;
+    }
+
+    private Entry index(String record, boolean logged, long offset, int length)
+            throws IOException {
+        int split = record.indexOf('=');
+        if (split < 0) {
+            throw new DataSourceException("Format error: no feature id. [" + record + "]");
+        }
+        String fid = record.substring(0, split);
+        Envelope envelope = null;
+        if (geometry >= 0) {
+            String[] text = record.substring(split + 1).split("\\|", -1);
+            if (text.length == type.getAttributeCount()) {
+                try {
+                    Object value = PropertyFeatureReader.read(type.getDescriptor(geometry),
+                            text[geometry]);
+                    if (value instanceof Geometry) {
+                        envelope = ((Geometry) value).getEnvelopeInternal();
+                    }
+                } catch (RuntimeException e) {
+                    // read as null, as PropertyFeatureReader does
+                }
+            }
+        }
+        return new Entry(fid, logged, offset, length, envelope);
+    }
+
+    private boolean load() {
+        if (!sidecar.exists()) {
+            return false;
+        }
+        try {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(
+                    new FileInputStream(sidecar), BUFFER_SIZE));
+            try {
+                if (in.readInt() != MAGIC || in.readLong() != baseLength
+                        || in.readLong() != baseModified) {
+                    return false;
+                }
+                dataStart = in.readLong();
+                int count = in.readInt();
+                for (int i = 0; i < count; i++) {
+                    Entry entry = new Entry(in.readUTF(), false, in.readLong(), in.readInt(),
+                            in.readDouble(), in.readDouble(), in.readDouble(), in.readDouble());
+                    entries.put(entry.fid, entry);
+                }
+                return true;
+            } finally {
+                in.close();
+            }
+        } catch (IOException e) {
+            LOGGER.log(Level.FINE, "Could not read " + sidecar + ", rebuilding it", e);
+            return false;
+        }
+    }
+
+    /**
+     * Saves the index of the property file, the index is kept in memory only if the sidecar can
+     * not be written.
+     */
+    private void save() {
+        try {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                    new FileOutputStream(sidecar), BUFFER_SIZE));
+            try {
+                out.writeInt(MAGIC);
+                out.writeLong(baseLength);
+                out.writeLong(baseModified);
+                out.writeLong(dataStart);
+                out.writeInt(entries.size());
+                for (Entry entry : entries.values()) {
+                    out.writeUTF(entry.fid);
+                    out.writeLong(entry.offset);
+                    out.writeInt(entry.length);
+                    out.writeDouble(entry.minX);
+                    out.writeDouble(entry.minY);
+                    out.writeDouble(entry.maxX);
+                    out.writeDouble(entry.maxY);
+                }
+            } finally {
+                out.close();
+            }
+        } catch (IOException e) {
+            LOGGER.log(Level.FINE, "Could not write " + sidecar, e);
+            sidecar.delete();
+        }
+    }
+
+    /**
+     * Joins continuation lines and replaces escapes, as {@link PropertyFeatureReader} does.
+     */
+    static String decode(String raw) {
+        StringBuilder buffer = new StringBuilder(raw.length());
+        int start = 0;
+        while (start <= raw.length()) {
+            int end = start;
+            while (end < raw.length() && raw.charAt(end) != '\n' && raw.charAt(end) != '\r') {
+                end++;
+            }
+            String txt = raw.substring(start, end);
+            start = end + 1;
+            if (end < raw.length() && raw.charAt(end) == '\r' && start < raw.length()
+                    && raw.charAt(start) == '\n') {
+                start++;
+            }
+            if (txt.startsWith("#") || txt.startsWith("!")) {
+                continue; // skip content
+            }
+            txt = PropertyFeatureReader.trimLeft(txt);
+            if (txt.endsWith("\\")) {
+                buffer.append(txt, 0, txt.length() - 1);
+                buffer.append("\n");
+            } else {
+                buffer.append(txt);
+                break;
+            }
+        }
+        String text = buffer.toString();
+        if (text.indexOf('\\') >= 0) {
+            text = text.replace("\\n", "\n");
+            text = text.replace("\\r", "\r");
+            text = text.replace("\\t", "\t");
+        }
+        return text;
+    }
+}
@@ -0,0 +1,178 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2002-2008, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.data.property.ng;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import org.geotools.data.DataSourceException;
+import org.geotools.data.DataUtilities;
+import org.geotools.data.FeatureReader;
+import org.geotools.data.Query;
+import org.geotools.feature.simple.SimpleFeatureBuilder;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
+import org.opengis.feature.type.AttributeDescriptor;
+import org.opengis.feature.type.GeometryDescriptor;
+import org.opengis.filter.Filter;
+
+/**
+ * Reads the records selected from a {@link PropertyIndex}, decoding the well known text of the
+ * geometries only when needed.
+ * <p>
+ * Geometries are decoded after the filter, when it does not refer to them, and not at all when
+ * the query does not ask for them; they are left null in the features returned, for the wrappers
+ * of {@link org.geotools.data.store.ContentFeatureSource} to retype away.
+ *
+ * @source $URL$
+ */
+class PropertyIndexedFeatureReader implements FeatureReader<SimpleFeatureType, SimpleFeature> {
+
+    SimpleFeatureType type;
+
+    PropertyIndex.Snapshot snapshot;
+
+    Iterator<PropertyIndex.Entry> entries;
+
+    /** the filter evaluated on the records read, or null */
+    Filter filter;
+
+    /** geometry attributes decoded only for the records matching the filter */
+    boolean[] deferred;
+
+    /** geometry attributes never decoded */
+    boolean[] skipped;
+
+    SimpleFeature next;
+
+    /**
+     * @param query the query being run, used to find out which geometries are needed
+     * @param prefilter whether to drop the records not matching the query filter
+     */
+    PropertyIndexedFeatureReader(SimpleFeatureType type, PropertyIndex.Snapshot snapshot,
+            Query query, boolean prefilter) {
+        this.type = type;
+        this.snapshot = snapshot;
+        this.entries = snapshot.entries.iterator();
+
+        Filter filter = query.getFilter();
+        if (filter == null || filter == Filter.INCLUDE) {
+            filter = null;
+        }
+        this.filter = prefilter ? filter : null;
+
+        // geometries the filter refers to are always read
+        boolean lazy = true;
+        if (filter != null) {
+            for (String name : DataUtilities.attributeNames(filter, type)) {
+                AttributeDescriptor descriptor = type.getDescriptor(name);
+                if (descriptor == null || descriptor instanceof GeometryDescriptor) {
+                    lazy = false;
+                }
+            }
+        }
+        String[] properties = query.getPropertyNames();
+        List<String> retained = properties == null ? null : Arrays.asList(properties);
+        int count = type.getAttributeCount();
+        deferred = new boolean[count];
+        skipped = new boolean[count];
+        for (int i = 0; i < count; i++) {
+            AttributeDescriptor descriptor = type.getDescriptor(i);
+            if (lazy && descriptor instanceof GeometryDescriptor) {
+                deferred[i] = true;
+                skipped[i] = retained != null && !retained.contains(descriptor.getLocalName());
+            }
+        }
+    }
+
+    public SimpleFeatureType getFeatureType() {
+        return type;
+    }
+
+    public boolean hasNext() throws IOException {
+        if (snapshot == null) {
+            throw new IOException("Reader has been closed");
+        }
+        while (next == null && entries.hasNext()) {
+            next = read(entries.next());
+        }
+        return next != null;
+    }
+
+    public SimpleFeature next() throws IOException, NoSuchElementException {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        SimpleFeature feature = next;
+        next = null;
+        return feature;
+    }
+
+    /**
+     * @return the feature of a record, or null if it does not match the filter
+     */
+    SimpleFeature read(PropertyIndex.Entry entry) throws IOException {
+        String line = snapshot.read(entry);
+        int split = line.indexOf('=');
+        String fid = line.substring(0, split);
+        String[] text = line.substring(split + 1).split("\\|", -1);
+        if (type.getAttributeCount() != text.length)
+            throw new DataSourceException("Format error: expected " + type.getAttributeCount()
+                    + " attributes, but found " + text.length + ". [" + line + "]");
+
+        Object[] values = new Object[text.length];
+        boolean pending = false;
+        for (int i = 0; i < text.length; i++) {
+            if (deferred[i]) {
+                pending |= !skipped[i];
+            } else {
+                values[i] = read(i, text[i]);
+            }
+        }
+        SimpleFeature feature = SimpleFeatureBuilder.build(type, values, fid);
+        if (filter != null && !filter.evaluate(feature)) {
+            return null;
+        }
+        if (pending) {
+            for (int i = 0; i < text.length; i++) {
+                if (deferred[i] && !skipped[i]) {
+                    values[i] = read(i, text[i]);
+                }
+            }
+            feature = SimpleFeatureBuilder.build(type, values, fid);
+        }
+        return feature;
+    }
+
+    private Object read(int index, String text) {
+        try {
+            return PropertyFeatureReader.read(type.getDescriptor(index), text);
+        } catch (RuntimeException e) {
+            return null;
+        }
+    }
+
+    public void close() throws IOException {
+        if (snapshot != null) {
+            snapshot.close();
+            snapshot = null;
+        }
+    }
+}
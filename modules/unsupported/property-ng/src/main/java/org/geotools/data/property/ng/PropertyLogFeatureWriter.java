@@ -0,0 +1,238 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2002-2008, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.data.property.ng;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.geotools.data.DataSourceException;
+import org.geotools.data.DataUtilities;
+import org.geotools.data.FeatureWriter;
+import org.geotools.data.Query;
+import org.geotools.data.store.ContentFeatureSource;
+import org.geotools.data.store.ContentState;
+import org.geotools.factory.Hints;
+import org.geotools.feature.simple.SimpleFeatureBuilder;
+import org.geotools.filter.identity.FeatureIdImpl;
+import org.geotools.geometry.jts.ReferencedEnvelope;
+import org.opengis.feature.IllegalAttributeException;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
+
+/**
+ * Writer of an indexed {@link PropertyDataStore}, logging the features written and removed
+ * instead of rewriting the property file.
+ * <p>
+ * Features passed over or written back unchanged cost nothing; the changes are appended to the
+ * log and synced once, on close. New features never replace existing ones: they are given ids
+ * not in use, even when the id provided is, while moving a feature to an id in use fails.
+ *
+ * @source $URL$
+ */
+class PropertyLogFeatureWriter implements FeatureWriter<SimpleFeatureType, SimpleFeature> {
+
+    /** numbers the new features, starting from the time so ids differ between runs too */
+    static final AtomicLong FIDS = new AtomicLong(System.currentTimeMillis());
+
+    PropertyDataStore store;
+
+    PropertyIndex index;
+
+    ContentFeatureSource featureSource;
+
+    ContentState state;
+
+    SimpleFeatureType type;
+
+    PropertyIndexedFeatureReader reader;
+
+    List<String> changes = new ArrayList<String>();
+
+    /** ids written and removed by this writer, not in the index until close */
+    Set<String> added = new HashSet<String>();
+
+    Set<String> removed = new HashSet<String>();
+
+    SimpleFeature origional = null;
+
+    SimpleFeature live = null;
+
+    PropertyLogFeatureWriter(ContentFeatureSource source, ContentState contentState, Query query,
+            boolean append) throws IOException {
+        this.state = contentState;
+        this.featureSource = source;
+        this.store = (PropertyDataStore) contentState.getEntry().getDataStore();
+        this.index = store.getIndex();
+        this.type = index.type;
+
+        PropertyIndex.Snapshot snapshot;
+        if (append) {
+            snapshot = index.snapshot(Collections.<String> emptySet(), null);
+        } else {
+            // the features not selected are left as they are
+            snapshot = index.snapshot(query.getFilter());
+        }
+        reader = new PropertyIndexedFeatureReader(type, snapshot, Query.ALL, false);
+    }
+
+    public SimpleFeatureType getFeatureType() {
+        return type;
+    }
+
+    public boolean hasNext() throws IOException {
+        if (reader == null) {
+            throw new IOException("Writer has been closed");
+        }
+        // a feature returned and not written is left unchanged
+        origional = null;
+        live = null;
+        return reader.hasNext();
+    }
+
+    public SimpleFeature next() throws IOException {
+        if (reader == null) {
+            throw new IOException("Writer has been closed");
+        }
+        String fid = null;
+        try {
+            if (hasNext()) {
+                origional = reader.next();
+                live = SimpleFeatureBuilder.copy(origional);
+                return live;
+            } else {
+                fid = newFid();
+                Object values[] = DataUtilities.defaultValues(type);
+
+                origional = null;
+                live = SimpleFeatureBuilder.build(type, values, fid);
+                return live;
+            }
+        } catch (IllegalAttributeException e) {
+            String message = "Problem creating feature " + (fid != null ? fid : "");
+            throw new DataSourceException(message, e);
+        }
+    }
+
+    public void write() throws IOException {
+        if (live == null) {
+            throw new IOException("No current feature to write");
+        }
+        if (!live.equals(origional)) {
+            String fid = live.getID();
+            if (Boolean.TRUE.equals(live.getUserData().get(Hints.USE_PROVIDED_FID))) {
+                if (live.getUserData().containsKey(Hints.PROVIDED_FID)) {
+                    fid = (String) live.getUserData().get(Hints.PROVIDED_FID);
+                }
+            }
+            if (origional == null) {
+                if (exists(fid)) {
+                    // transactions provide ids of their own, that may be in use already
+                    fid = newFid();
+                    ((FeatureIdImpl) live.getIdentifier()).setID(fid);
+                    if (live.getUserData().containsKey(Hints.PROVIDED_FID)) {
+                        live.getUserData().put(Hints.PROVIDED_FID, fid);
+                    }
+                }
+                added.add(fid);
+            } else if (!origional.getID().equals(fid)) {
+                if (exists(fid)) {
+                    throw new IOException("Feature " + fid + " already exists");
+                }
+                added.add(fid);
+                changes.add(singleLine("-" + origional.getID()));
+                removed.add(origional.getID());
+                added.remove(origional.getID());
+            }
+            StringBuilder record = new StringBuilder("+");
+            record.append(fid);
+            for (int i = 0; i < live.getAttributeCount(); i++) {
+                record.append(i == 0 ? "=" : "|");
+                record.append(PropertyFeatureWriter.encode(live.getAttribute(i)));
+            }
+            changes.add(singleLine(record.toString()));
+
+            if (origional != null) {
+                ReferencedEnvelope bounds = new ReferencedEnvelope();
+                bounds.include(live.getBounds());
+                bounds.include(origional.getBounds());
+                state.fireFeatureUpdated(featureSource, live, bounds);
+            } else {
+                state.fireFeatureAdded(featureSource, live);
+            }
+        }
+        origional = null;
+        live = null;
+    }
+
+    public void remove() throws IOException {
+        if (live == null) {
+            throw new IOException("No current feature to remove");
+        }
+        if (origional != null) {
+            changes.add(singleLine("-" + origional.getID()));
+            removed.add(origional.getID());
+            added.remove(origional.getID());
+            state.fireFeatureRemoved(featureSource, origional);
+        }
+        origional = null;
+        live = null;
+    }
+
+    /**
+     * @return an id not in use, neither in the index nor by this writer
+     */
+    private String newFid() throws IOException {
+        String fid;
+        do {
+            fid = type.getTypeName() + "." + FIDS.incrementAndGet();
+        } while (exists(fid));
+        return fid;
+    }
+
+    private boolean exists(String fid) throws IOException {
+        return added.contains(fid) || (!removed.contains(fid) && index.contains(fid));
+    }
+
+    /**
+     * Escapes the line breaks left in a change, the reader unescapes them anywhere in a record.
+     */
+    static String singleLine(String change) {
+        return change.replace("\n", "\\n").replace("\r", "\\r");
+    }
+
+    public void close() throws IOException {
+        if (reader == null) {
+            throw new IOException("writer already closed");
+        }
+        try {
+            store.log(changes);
+        } finally {
+            reader.close();
+            reader = null;
+            changes = null;
+            added = null;
+            removed = null;
+            origional = null;
+            live = null;
+        }
+    }
+}
@@ -0,0 +1,433 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2002-2008, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.data.property.ng;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import junit.framework.TestCase;
+
+import org.geotools.data.DataStore;
+import org.geotools.data.DataUtilities;
+import org.geotools.data.DefaultTransaction;
+import org.geotools.data.FeatureWriter;
+import org.geotools.data.Query;
+import org.geotools.data.Transaction;
+import org.geotools.data.simple.SimpleFeatureCollection;
+import org.geotools.data.simple.SimpleFeatureIterator;
+import org.geotools.data.simple.SimpleFeatureStore;
+import org.geotools.factory.CommonFactoryFinder;
+import org.geotools.factory.Hints;
+import org.geotools.feature.simple.SimpleFeatureBuilder;
+import org.geotools.geometry.jts.ReferencedEnvelope;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
+import org.opengis.filter.Filter;
+import org.opengis.filter.FilterFactory2;
+import org.opengis.filter.identity.FeatureId;
+
+import com.vividsolutions.jts.io.WKTReader;
+
+/**
+ * Test the indexed mode of PropertyDataStore.
+ *
+ * @source $URL$
+ */
+public class PropertyIndexedDataStoreTest extends TestCase {
+    private File dir;
+
+    private File file;
+
+    private PropertyDataStore store;
+
+    static FilterFactory2 ff = (FilterFactory2) CommonFactoryFinder.getFilterFactory(null);
+
+    protected void setUp() throws Exception {
+        dir = new File(".", "propertyIndexedTestData");
+        dir.mkdir();
+
+        file = new File(dir, "road.properties");
+        if (file.exists()) {
+            file.delete();
+        }
+        BufferedWriter writer = new BufferedWriter(new FileWriter(file));
+        writer.write("_=id:Integer,name:String,geom:Point"); writer.newLine();
+        writer.write("fid1=1|jody|POINT(1 1)"); writer.newLine();
+        writer.write("fid2=2|brent|POINT(2 2)"); writer.newLine();
+        writer.write("# comment"); writer.newLine();
+        writer.write("fid3=3|dave \\"); writer.newLine();
+        writer.write("    smith|POINT(3 3)"); writer.newLine();
+        writer.write("fid4=4|justin|<null>"); writer.newLine();
+        writer.write("fid5=5||POINT(5 5)");
+        writer.close();
+        store = new PropertyDataStore(file, "propertyIndexedTestData", true);
+        super.setUp();
+    }
+
+    protected void tearDown() throws Exception {
+        if (store != null) {
+            store.dispose();
+        }
+        File list[] = dir.listFiles();
+        for (int i = 0; i < list.length; i++) {
+            list[i].delete();
+        }
+        dir.delete();
+        super.tearDown();
+    }
+
+    public void testRead() throws Exception {
+        SimpleFeatureCollection features = store.getFeatureSource("road").getFeatures();
+        assertEquals(5, features.size());
+        Map<String, String> names = names(store, Filter.INCLUDE);
+        assertEquals("dave \nsmith", names.get("fid3"));
+        assertEquals("", names.get("fid5"));
+
+        SimpleFeatureIterator it = store.getFeatureSource("road").getFeatures(
+                ff.id(Collections.singleton(ff.featureId("fid4")))).features();
+        try {
+            assertTrue(it.hasNext());
+            SimpleFeature feature = it.next();
+            assertEquals(Integer.valueOf(4), feature.getAttribute("id"));
+            assertNull(feature.getDefaultGeometry());
+            assertFalse(it.hasNext());
+        } finally {
+            it.close();
+        }
+        assertTrue(PropertyIndex.getSidecar(file).exists());
+    }
+
+    public void testSameAsPlainStore() throws Exception {
+        PropertyDataStore plain = new PropertyDataStore(file, "propertyIndexedTestData");
+        try {
+            assertEquals(features(plain, Filter.INCLUDE), features(store, Filter.INCLUDE));
+        } finally {
+            plain.dispose();
+        }
+    }
+
+    public void testCountAndBounds() throws Exception {
+        assertEquals(5, store.getFeatureSource("road").getCount(Query.ALL));
+        ReferencedEnvelope bounds = store.getFeatureSource("road").getBounds();
+        assertEquals(new ReferencedEnvelope(1, 5, 1, 5, null), new ReferencedEnvelope(bounds,
+                null));
+
+        Filter filter = ff.greater(ff.property("id"), ff.literal(2));
+        assertEquals(3, store.getFeatureSource("road").getCount(new Query("road", filter)));
+    }
+
+    public void testBBox() throws Exception {
+        Filter filter = ff.bbox("geom", 1.5, 1.5, 3.5, 3.5, null);
+        assertEquals(new TreeSet<String>(Arrays.asList("fid2", "fid3")),
+                names(store, filter).keySet());
+
+        filter = ff.and(filter, ff.equals(ff.property("name"), ff.literal("brent")));
+        assertEquals(Collections.singleton("fid2"), names(store, filter).keySet());
+    }
+
+    public void testWithoutGeometry() throws Exception {
+        Query query = new Query("road", ff.equals(ff.property("id"), ff.literal(2)),
+                new String[] { "name" });
+        SimpleFeatureIterator it = store.getFeatureSource("road").getFeatures(query).features();
+        try {
+            assertTrue(it.hasNext());
+            SimpleFeature feature = it.next();
+            assertEquals(1, feature.getAttributeCount());
+            assertEquals("brent", feature.getAttribute("name"));
+            assertFalse(it.hasNext());
+        } finally {
+            it.close();
+        }
+    }
+
+    public void testChangesAreLogged() throws Exception {
+        String before = read(file);
+        SimpleFeatureStore road = (SimpleFeatureStore) store.getFeatureSource("road");
+        Filter fid1 = ff.id(Collections.singleton(ff.featureId("fid1")));
+        road.modifyFeatures("name", "changed", fid1);
+        road.removeFeatures(ff.id(Collections.singleton(ff.featureId("fid2"))));
+
+        FeatureWriter<SimpleFeatureType, SimpleFeature> writer = store.getFeatureWriterAppend(
+                "road", Transaction.AUTO_COMMIT);
+        SimpleFeature feature = writer.next();
+        feature.setAttribute("id", 6);
+        feature.setAttribute("name", "line\nbreak");
+        feature.setAttribute("geom", new WKTReader().read("POINT(10 10)"));
+        writer.write();
+        writer.close();
+
+        assertEquals(before, read(file));
+        assertTrue(PropertyIndex.getLog(file).exists());
+
+        Map<String, String> names = names(store, Filter.INCLUDE);
+        assertEquals(5, names.size());
+        assertEquals("changed", names.get("fid1"));
+        assertFalse(names.containsKey("fid2"));
+        assertTrue(names.containsValue("line\nbreak"));
+        assertEquals(5, road.getCount(Query.ALL));
+        assertEquals(10.0, road.getBounds().getMaxX());
+        assertEquals(Collections.singletonMap("fid1", "changed"), names(store,
+                ff.bbox("geom", 0, 0, 1, 1, null)));
+    }
+
+    public void testReopenReplaysLog() throws Exception {
+        change(store);
+        Map<String, SimpleFeature> expected = features(store, Filter.INCLUDE);
+
+        PropertyDataStore reopened = new PropertyDataStore(file, "propertyIndexedTestData", true);
+        try {
+            assertEquals(expected, features(reopened, Filter.INCLUDE));
+        } finally {
+            reopened.dispose();
+        }
+    }
+
+    public void testCompact() throws Exception {
+        change(store);
+        Map<String, SimpleFeature> expected = features(store, Filter.INCLUDE);
+
+        assertTrue(store.getIndex().compact());
+        assertFalse(PropertyIndex.getLog(file).exists());
+        assertEquals(expected, features(store, Filter.INCLUDE));
+
+        PropertyDataStore plain = new PropertyDataStore(file, "propertyIndexedTestData");
+        try {
+            assertEquals(expected, features(plain, Filter.INCLUDE));
+        } finally {
+            plain.dispose();
+        }
+    }
+
+    public void testDisposeCompacts() throws Exception {
+        change(store);
+        Map<String, SimpleFeature> expected = features(store, Filter.INCLUDE);
+        store.dispose();
+        store = null;
+        assertFalse(PropertyIndex.getLog(file).exists());
+
+        PropertyDataStore plain = new PropertyDataStore(file, "propertyIndexedTestData");
+        try {
+            assertEquals(expected, features(plain, Filter.INCLUDE));
+        } finally {
+            plain.dispose();
+        }
+    }
+
+    public void testPlainStoreFoldsLog() throws Exception {
+        change(store);
+        Map<String, SimpleFeature> expected = features(store, Filter.INCLUDE);
+
+        PropertyDataStore plain = new PropertyDataStore(file, "propertyIndexedTestData");
+        try {
+            assertEquals(expected, features(plain, Filter.INCLUDE));
+            assertFalse(PropertyIndex.getLog(file).exists());
+        } finally {
+            plain.dispose();
+        }
+        // the indexed store picks up the rewritten file
+        assertEquals(expected, features(store, Filter.INCLUDE));
+    }
+
+    public void testTransaction() throws Exception {
+        SimpleFeatureType type = store.getSchema("road");
+        SimpleFeature chris = SimpleFeatureBuilder.build(type, new Object[] { 6, "chris",
+                new WKTReader().read("POINT(6 6)") }, "fid6");
+        chris.getUserData().put(Hints.USE_PROVIDED_FID, Boolean.TRUE);
+
+        SimpleFeatureStore auto = (SimpleFeatureStore) store.getFeatureSource("road");
+        SimpleFeatureStore road = (SimpleFeatureStore) store.getFeatureSource("road");
+        Transaction transaction = new DefaultTransaction();
+        road.setTransaction(transaction);
+        try {
+            road.removeFeatures(ff.id(Collections.singleton(ff.featureId("fid1"))));
+            road.modifyFeatures("geom", new WKTReader().read("POINT(20 20)"),
+                    ff.id(Collections.singleton(ff.featureId("fid2"))));
+            road.addFeatures(DataUtilities.collection(chris));
+
+            assertEquals(5, auto.getFeatures().size());
+            assertEquals(5, road.getFeatures().size());
+            // the moved feature is found by its new location
+            assertEquals(Collections.singleton("fid2"),
+                    names(road, ff.bbox("geom", 19, 19, 21, 21, null)).keySet());
+            assertTrue(names(auto, ff.bbox("geom", 19, 19, 21, 21, null)).isEmpty());
+
+            transaction.commit();
+        } finally {
+            transaction.close();
+        }
+        Map<String, String> names = names(auto, Filter.INCLUDE);
+        assertEquals(5, names.size());
+        assertFalse(names.containsKey("fid1"));
+        assertEquals("chris", names.get("fid6"));
+        assertEquals(Collections.singleton("fid2"),
+                names(auto, ff.bbox("geom", 19, 19, 21, 21, null)).keySet());
+    }
+
+    public void testInsertSeveral() throws Exception {
+        SimpleFeatureStore road = (SimpleFeatureStore) store.getFeatureSource("road");
+        // the ids are generated as the features are written, all within a few milliseconds
+        road.addFeatures(roads(10, 10));
+        // transactions provide the same ids on each commit
+        for (int t = 0; t < 2; t++) {
+            Transaction transaction = new DefaultTransaction();
+            road.setTransaction(transaction);
+            try {
+                road.addFeatures(roads(20 + t * 10, 10));
+                transaction.commit();
+            } finally {
+                transaction.close();
+            }
+        }
+        road.setTransaction(Transaction.AUTO_COMMIT);
+
+        Map<String, String> names = names(store, Filter.INCLUDE);
+        assertEquals(35, names.size());
+        assertEquals(35, road.getCount(Query.ALL));
+        for (int i = 10; i < 40; i++) {
+            assertTrue(names.containsValue("added" + i));
+        }
+        assertEquals("jody", names.get("fid1"));
+    }
+
+    public void testInsertExistingFid() throws Exception {
+        SimpleFeatureStore road = (SimpleFeatureStore) store.getFeatureSource("road");
+        SimpleFeature feature = SimpleFeatureBuilder.build(store.getSchema("road"), new Object[] {
+                6, "chris", new WKTReader().read("POINT(6 6)") }, "fid1");
+        feature.getUserData().put(Hints.USE_PROVIDED_FID, Boolean.TRUE);
+        List<FeatureId> ids = road.addFeatures(DataUtilities.collection(feature));
+
+        // the existing feature is left alone, the new one gets an id of its own
+        String fid = ids.get(0).getID();
+        assertFalse("fid1".equals(fid));
+        Map<String, String> names = names(store, Filter.INCLUDE);
+        assertEquals(6, names.size());
+        assertEquals("jody", names.get("fid1"));
+        assertEquals("chris", names.get(fid));
+
+        // an existing feature cannot be moved to an id in use
+        FeatureWriter<SimpleFeatureType, SimpleFeature> writer = store.getFeatureWriter("road",
+                ff.id(Collections.singleton(ff.featureId("fid2"))), Transaction.AUTO_COMMIT);
+        try {
+            SimpleFeature moved = writer.next();
+            moved.setAttribute("name", "moved");
+            moved.getUserData().put(Hints.USE_PROVIDED_FID, Boolean.TRUE);
+            moved.getUserData().put(Hints.PROVIDED_FID, "fid1");
+            try {
+                writer.write();
+                fail("fid1 is already in use");
+            } catch (IOException e) {
+                // fine
+            }
+        } finally {
+            writer.close();
+        }
+        assertEquals(names, names(store, Filter.INCLUDE));
+    }
+
+    private SimpleFeatureCollection roads(int first, int count) throws Exception {
+        SimpleFeatureType type = store.getSchema("road");
+        List<SimpleFeature> features = new ArrayList<SimpleFeature>();
+        for (int i = first; i < first + count; i++) {
+            features.add(SimpleFeatureBuilder.build(type, new Object[] { i, "added" + i,
+                    new WKTReader().read("POINT(" + i + " " + i + ")") }, null));
+        }
+        return DataUtilities.collection(features);
+    }
+
+    public void testFactory() throws Exception {
+        Map<String, Object> params = new HashMap<String, Object>();
+        params.put(PropertyDataStoreFactory.FILE.key, file);
+        params.put(PropertyDataStoreFactory.INDEXED.key, Boolean.TRUE);
+        DataStore dataStore = new PropertyDataStoreFactory().createDataStore(params);
+        try {
+            assertTrue(((PropertyDataStore) dataStore).isIndexed());
+            assertEquals(5, dataStore.getFeatureSource("road").getCount(Query.ALL));
+        } finally {
+            dataStore.dispose();
+        }
+    }
+
+    /**
+     * Modifies fid1, removes fid2 and moves fid5.
+     */
+    private void change(PropertyDataStore dataStore) throws Exception {
+        SimpleFeatureStore road = (SimpleFeatureStore) dataStore.getFeatureSource("road");
+        road.modifyFeatures("name", "changed", ff.id(Collections.singleton(ff.featureId("fid1"))));
+        road.removeFeatures(ff.id(Collections.singleton(ff.featureId("fid2"))));
+        road.modifyFeatures("geom", new WKTReader().read("POINT(50 50)"),
+                ff.id(Collections.singleton(ff.featureId("fid5"))));
+    }
+
+    private Map<String, String> names(DataStore dataStore, Filter filter) throws IOException {
+        return names((SimpleFeatureStore) dataStore.getFeatureSource("road"), filter);
+    }
+
+    private Map<String, String> names(SimpleFeatureStore road, Filter filter) throws IOException {
+        Map<String, String> names = new TreeMap<String, String>();
+        SimpleFeatureIterator it = road.getFeatures(filter).features();
+        try {
+            while (it.hasNext()) {
+                SimpleFeature feature = it.next();
+                names.put(feature.getID(), (String) feature.getAttribute("name"));
+            }
+        } finally {
+            it.close();
+        }
+        return names;
+    }
+
+    private Map<String, SimpleFeature> features(DataStore dataStore, Filter filter)
+            throws IOException {
+        Map<String, SimpleFeature> features = new TreeMap<String, SimpleFeature>();
+        SimpleFeatureIterator it = dataStore.getFeatureSource("road").getFeatures(filter)
+                .features();
+        try {
+            while (it.hasNext()) {
+                SimpleFeature feature = it.next();
+                features.put(feature.getID(), feature);
+            }
+        } finally {
+            it.close();
+        }
+        return features;
+    }
+
+    private String read(File file) throws IOException {
+        FileInputStream in = new FileInputStream(file);
+        try {
+            byte[] data = new byte[(int) file.length()];
+            int read = 0;
+            while (read < data.length) {
+                read += in.read(data, read, data.length - read);
+            }
+            return new String(data);
+        } finally {
+            in.close();
+        }
+    }
+}
@@ -0,0 +1,517 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2013, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.data.wfs.impl;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.geotools.data.FeatureReader;
+import org.geotools.data.wfs.internal.GetFeatureParser;
+import org.geotools.util.logging.Logging;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.Envelope;
+import com.vividsolutions.jts.geom.Geometry;
+
+/**
+ * A {@link FeatureReader} merging the results of several GetFeature requests (pages or tiles)
+ * that are issued and parsed concurrently.
+ * <p>
+ * Up to {@code maxConcurrent} pages are in flight at any time, each one parsed on its own thread
+ * into a bounded buffer, so that parsing is pipelined with the network I/O of the following
+ * pages. Features are returned page after page, in page order, as the consumer drains each
+ * buffer. As soon as a page is found to be the {@link Pages#isLast last one}, the pages after it
+ * are cancelled. If a page instead tells the pages after it were computed on wrong assumptions, as
+ * it happens when a server returns less features per page than requested, the pages in flight are
+ * cancelled and issued again. Features coming back from several {@link TilePages tiles} are
+ * returned only once.
+ * </p>
+ * 
+ * @source $URL$
+ */
+class ParallelFeatureReader implements FeatureReader<SimpleFeatureType, SimpleFeature> {
+
+    private static final Logger LOGGER = Logging.getLogger(ParallelFeatureReader.class);
+
+    /**
+     * The number of parsed features each page buffers ahead of the consumer
+     */
+    static final int BUFFER_SIZE = 512;
+
+    /**
+     * The source of the pages to be read
+     */
+    interface Pages {
+
+        /**
+         * @return the number of pages, or {@code -1} if unknown, in which case pages are read
+         *         until {@link #isLast} says otherwise. May change after a {@link #realign}.
+         */
+        int getPageCount();
+
+        /**
+         * Issues the request for the given zero based page
+         */
+        GetFeatureParser open(int page) throws IOException;
+
+        /**
+         * @return whether the given page, having returned {@code count} features, is the last one
+         */
+        boolean isLast(int page, int count);
+
+        /**
+         * Called once the given page, not being the last one, returned {@code count} features
+         * 
+         * @return whether the pages after it shall be issued again, their requests having been
+         *         computed on wrong assumptions
+         */
+        boolean realign(int page, int count);
+    }
+
+    /**
+     * Pages by start index. Servers may return less features per page than requested, hence
+     * paging goes on until a page comes back empty or the maximum number of features is
+     * reached, and a short page realigns the following pages right after its last feature, with
+     * the page size the server actually honours.
+     */
+    abstract static class StartIndexPages implements Pages {
+
+        private final int maxFeatures;
+
+        private int pageSize;
+
+        private int firstPage;
+
+        private int firstIndex;
+
+        /**
+         * @param pageSize the number of features to request per page
+         * @param maxFeatures the maximum number of features to read, {@link Integer#MAX_VALUE}
+         *        meaning no limit
+         */
+        StartIndexPages(int pageSize, int maxFeatures) {
+            this.pageSize = pageSize;
+            this.maxFeatures = maxFeatures;
+        }
+
+        /**
+         * Issues the request for a page
+         */
+        protected abstract GetFeatureParser open(int startIndex, int count) throws IOException;
+
+        public GetFeatureParser open(int page) throws IOException {
+            int startIndex;
+            int count;
+            synchronized (this) {
+                startIndex = getStartIndex(page);
+                count = getRequested(page);
+            }
+            return open(startIndex, count);
+        }
+
+        public synchronized int getPageCount() {
+            if (maxFeatures == Integer.MAX_VALUE) {
+                return -1;
+            }
+            return firstPage + (int) ((maxFeatures - firstIndex + (long) pageSize - 1) / pageSize);
+        }
+
+        public synchronized boolean isLast(int page, int count) {
+            return count == 0 || getStartIndex(page) + (long) count >= maxFeatures;
+        }
+
+        public synchronized boolean realign(int page, int count) {
+            if (count >= getRequested(page)) {
+                return false;
+            }
+            // the server capped the page, the following ones start right after it
+            firstIndex = getStartIndex(page) + count;
+            firstPage = page + 1;
+            pageSize = count;
+            return true;
+        }
+
+        private int getStartIndex(int page) {
+            return (int) Math.min(Integer.MAX_VALUE, firstIndex + (long) (page - firstPage)
+                    * pageSize);
+        }
+
+        private int getRequested(int page) {
+            return (int) Math.min(pageSize, (long) maxFeatures - getStartIndex(page));
+        }
+    }
+
+    /**
+     * Pages by a grid of bbox tiles over the given bounds, plus a last page for the features
+     * outside them, as bounds may be approximate. Features crossing tiles come back once per
+     * tile, and are returned only by the tile owning their first vertex, so that telling
+     * duplicates apart does not need to remember the features read so far. Only the features
+     * whose first vertex is out of the bounds, but that cross them, are told apart by id.
+     */
+    abstract static class TilePages implements Pages {
+
+        private final Envelope bounds;
+
+        private final int tiles;
+
+        /** ids of the features crossing the bounds returned so far, used by the consumer only */
+        private final Set<String> crossingIds = new HashSet<String>();
+
+        /**
+         * @param bounds the area to split in tiles
+         * @param tiles the number of tiles along each axis
+         */
+        TilePages(Envelope bounds, int tiles) {
+            this.bounds = bounds;
+            this.tiles = tiles;
+        }
+
+        /**
+         * Issues the request for a tile
+         * 
+         * @param tile the tile, features intersecting it shall be returned, or {@code null} for
+         *        the features not intersecting the bounds at all
+         */
+        protected abstract GetFeatureParser open(Envelope tile) throws IOException;
+
+        public GetFeatureParser open(int page) throws IOException {
+            return open(getTile(page));
+        }
+
+        public int getPageCount() {
+            return tiles * tiles + 1;
+        }
+
+        public boolean isLast(int page, int count) {
+            return false;
+        }
+
+        public boolean realign(int page, int count) {
+            return false;
+        }
+
+        /**
+         * @return the envelope of the tile read by the given page, or {@code null} for the last
+         *         page
+         */
+        Envelope getTile(int page) {
+            if (page == tiles * tiles) {
+                return null;
+            }
+            // tiles share their edges, the grid being computed on the same ordinates
+            int col = page % tiles;
+            int row = page / tiles;
+            return new Envelope(getEdge(bounds.getMinX(), bounds.getMaxX(), col), getEdge(
+                    bounds.getMinX(), bounds.getMaxX(), col + 1), getEdge(bounds.getMinY(),
+                    bounds.getMaxY(), row), getEdge(bounds.getMinY(), bounds.getMaxY(), row + 1));
+        }
+
+        /**
+         * @return whether the feature, read by the given page, is to be returned
+         */
+        boolean owns(int page, SimpleFeature feature) {
+            if (page == tiles * tiles) {
+                return true;
+            }
+            Object geometry = feature.getDefaultGeometry();
+            if (!(geometry instanceof Geometry) || ((Geometry) geometry).isEmpty()) {
+                return true;
+            }
+            // a point of the geometry, matched by the bbox of its tile whether the server
+            // compares envelopes or geometries
+            Coordinate vertex = ((Geometry) geometry).getCoordinate();
+            if (!bounds.contains(vertex)) {
+                // no tile is sure to return the feature
+                String id = feature.getID();
+                return id == null || crossingIds.add(id);
+            }
+            int col = getIndex(bounds.getMinX(), bounds.getMaxX(), vertex.x);
+            int row = getIndex(bounds.getMinY(), bounds.getMaxY(), vertex.y);
+            return page == row * tiles + col;
+        }
+
+        private double getEdge(double min, double max, int index) {
+            return index == tiles ? max : min + index * ((max - min) / tiles);
+        }
+
+        /**
+         * @return the last tile whose lower edge is not above the given ordinate
+         */
+        private int getIndex(double min, double max, double ordinate) {
+            int index = Math.min(tiles - 1, (int) ((ordinate - min) / ((max - min) / tiles)));
+            while (index > 0 && getEdge(min, max, index) > ordinate) {
+                index--;
+            }
+            while (index < tiles - 1 && getEdge(min, max, index + 1) <= ordinate) {
+                index++;
+            }
+            return index;
+        }
+    }
+
+    /**
+     * Marks the end of a page in its buffer
+     */
+    private static final Object END = new Object();
+
+    /**
+     * Carries a page failure to the consumer
+     */
+    private static final class Failure {
+        final Throwable cause;
+
+        Failure(Throwable cause) {
+            this.cause = cause;
+        }
+    }
+
+    private final class PageTask implements Runnable {
+
+        final int page;
+
+        final BlockingQueue<Object> buffer = new ArrayBlockingQueue<Object>(BUFFER_SIZE);
+
+        volatile boolean cancelled;
+
+        Future<?> future;
+
+        /** features taken by the consumer so far, accessed by the consumer only */
+        int count;
+
+        PageTask(int page) {
+            this.page = page;
+        }
+
+        public void run() {
+            if (cancelled) {
+                return;
+            }
+            GetFeatureParser parser = null;
+            try {
+                parser = pages.open(page);
+                SimpleFeature feature;
+                while (!cancelled && (feature = parser.parse()) != null) {
+                    if (!put(feature)) {
+                        return;
+                    }
+                }
+                put(END);
+            } catch (Throwable t) {
+                put(new Failure(t));
+            } finally {
+                if (parser != null) {
+                    try {
+                        parser.close();
+                    } catch (IOException e) {
+                        LOGGER.log(Level.FINE, "Error closing page " + page, e);
+                    }
+                }
+            }
+        }
+
+        /**
+         * Waits for room in the buffer, giving up if the page gets cancelled meanwhile
+         */
+        private boolean put(Object item) {
+            try {
+                while (!cancelled) {
+                    if (buffer.offer(item, 100, TimeUnit.MILLISECONDS)) {
+                        return true;
+                    }
+                }
+            } catch (InterruptedException e) {
+                cancelled = true;
+            }
+            return false;
+        }
+
+        void cancel() {
+            cancelled = true;
+            if (future != null) {
+                future.cancel(false);
+            }
+        }
+    }
+
+    private final Pages pages;
+
+    private final ExecutorService executor;
+
+    private final int maxConcurrent;
+
+    private final TilePages tiles;
+
+    private final LinkedList<PageTask> inFlight = new LinkedList<PageTask>();
+
+    private int nextPage;
+
+    private boolean exhausted;
+
+    private PageTask current;
+
+    private SimpleFeature next;
+
+    private SimpleFeatureType featureType;
+
+    /**
+     * @param pages
+     *            the pages to read
+     * @param executor
+     *            the executor running the page requests, shall not queue tasks to avoid the
+     *            consumer waiting on a page that never starts
+     * @param maxConcurrent
+     *            the maximum number of pages in flight
+     */
+    public ParallelFeatureReader(Pages pages, ExecutorService executor, int maxConcurrent)
+            throws IOException {
+        this.pages = pages;
+        this.executor = executor;
+        this.maxConcurrent = Math.max(1, maxConcurrent);
+        this.tiles = pages instanceof TilePages ? (TilePages) pages : null;
+        this.next = fetch();
+        if (this.next != null) {
+            this.featureType = WFSFeatureReader.simpleType(next);
+        }
+    }
+
+    /**
+     * @see FeatureReader#getFeatureType()
+     */
+    public SimpleFeatureType getFeatureType() {
+        if (featureType == null) {
+            throw new IllegalStateException(
+                    "No features were retrieved, shouldn't be calling getFeatureType()");
+        }
+        return featureType;
+    }
+
+    /**
+     * @see FeatureReader#hasNext()
+     */
+    public boolean hasNext() throws IOException {
+        return next != null;
+    }
+
+    /**
+     * @see FeatureReader#next()
+     */
+    public SimpleFeature next() throws IOException, NoSuchElementException {
+        if (next == null) {
+            throw new NoSuchElementException();
+        }
+        SimpleFeature feature = next;
+        next = fetch();
+        return feature;
+    }
+
+    /**
+     * @see FeatureReader#close()
+     */
+    public void close() throws IOException {
+        next = null;
+        exhausted = true;
+        cancelAll();
+    }
+
+    private SimpleFeature fetch() throws IOException {
+        while (true) {
+            if (current == null) {
+                schedule();
+                current = inFlight.poll();
+                if (current == null) {
+                    return null;
+                }
+            }
+            Object item;
+            try {
+                item = current.buffer.take();
+            } catch (InterruptedException e) {
+                int page = current.page;
+                close();
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while reading page " + page);
+            }
+            if (item == END) {
+                if (pages.isLast(current.page, current.count)) {
+                    exhausted = true;
+                    cancelAll();
+                } else if (pages.realign(current.page, current.count)) {
+                    for (PageTask task : inFlight) {
+                        task.cancel();
+                    }
+                    inFlight.clear();
+                    nextPage = current.page + 1;
+                }
+                current = null;
+                continue;
+            }
+            if (item instanceof Failure) {
+                int page = current.page;
+                close();
+                Throwable cause = ((Failure) item).cause;
+                if (cause instanceof IOException) {
+                    throw (IOException) cause;
+                }
+                throw new IOException("Error reading page " + page, cause);
+            }
+            current.count++;
+            SimpleFeature feature = (SimpleFeature) item;
+            if (tiles != null && !tiles.owns(current.page, feature)) {
+                // returned by another tile
+                continue;
+            }
+            return feature;
+        }
+    }
+
+    /**
+     * Submits pages until {@code maxConcurrent} are in flight, counting the one being drained
+     */
+    private void schedule() {
+        int pageCount = pages.getPageCount();
+        int lastPage = pageCount < 0 ? Integer.MAX_VALUE : pageCount - 1;
+        while (!exhausted && nextPage <= lastPage && inFlight.size() < maxConcurrent) {
+            PageTask task = new PageTask(nextPage++);
+            task.future = executor.submit(task);
+            inFlight.add(task);
+        }
+    }
+
+    private void cancelAll() {
+        if (current != null) {
+            current.cancel();
+            current = null;
+        }
+        for (PageTask task : inFlight) {
+            task.cancel();
+        }
+        inFlight.clear();
+    }
+}
@@ -7,6 +7,10 @@ import java.util.Map;
 import java.util.NoSuchElementException;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.xml.XMLConstants;
 import javax.xml.namespace.QName;
@@ -17,6 +21,7 @@ import org.geotools.data.store.ContentFeatureSource;
 import org.geotools.data.wfs.internal.DescribeFeatureTypeRequest;
 import org.geotools.data.wfs.internal.DescribeFeatureTypeResponse;
 import org.geotools.data.wfs.internal.WFSClient;
+import org.geotools.data.wfs.internal.cache.FeatureCache;
 import org.geotools.data.wfs.internal.parsers.EmfAppSchemaParser;
 import org.geotools.factory.CommonFactoryFinder;
 import org.geotools.feature.NameImpl;
@@ -36,6 +41,16 @@ public class WFSContentDataStore extends ContentDataStore {
 
     private final Map<QName, FeatureType> remoteFeatureTypes;
 
+    /**
+     * Runs the concurrent GetFeature requests of paged and tiled reads, lazily created
+     */
+    private ExecutorService executor;
+
+    /**
+     * Caches the features of GetFeature responses, {@code null} if caching is disabled
+     */
+    private FeatureCache featureCache;
+
     public WFSContentDataStore(final WFSClient client) {
         this.client = client;
         this.names = new ConcurrentHashMap<Name, QName>();
@@ -153,4 +168,45 @@ public class WFSContentDataStore extends ContentDataStore {
         return client;
     }
 
+    /**
+     * @return the executor running the concurrent GetFeature requests of paged and tiled reads.
+     *         Threads are not pooled up to a bound, as each read waits on its own pages and a
+     *         bounded pool shared among concurrent reads could starve them.
+     */
+    synchronized ExecutorService getExecutor() {
+        if (executor == null) {
+            final AtomicInteger count = new AtomicInteger();
+            executor = Executors.newCachedThreadPool(new ThreadFactory() {
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "wfs-getfeature-" + count.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        return executor;
+    }
+
+    /**
+     * @return the cache of GetFeature responses, or {@code null} if caching is disabled
+     */
+    public FeatureCache getFeatureCache() {
+        return featureCache;
+    }
+
+    public void setFeatureCache(FeatureCache featureCache) {
+        this.featureCache = featureCache;
+    }
+
+    @Override
+    public void dispose() {
+        synchronized (this) {
+            if (executor != null) {
+                executor.shutdownNow();
+                executor = null;
+            }
+        }
+        super.dispose();
+    }
+
 }
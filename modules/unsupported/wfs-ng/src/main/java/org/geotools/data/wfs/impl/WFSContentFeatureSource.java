@@ -22,6 +22,9 @@ import org.geotools.data.wfs.internal.GetFeatureRequest;
 import org.geotools.data.wfs.internal.GetFeatureRequest.ResultType;
 import org.geotools.data.wfs.internal.GetFeatureResponse;
 import org.geotools.data.wfs.internal.WFSClient;
+import org.geotools.data.wfs.internal.WFSConfig;
+import org.geotools.data.wfs.internal.cache.FeatureCache;
+import org.geotools.factory.CommonFactoryFinder;
 import org.geotools.factory.Hints;
 import org.geotools.feature.SchemaException;
 import org.geotools.feature.simple.SimpleFeatureTypeBuilder;
@@ -33,9 +36,12 @@ import org.opengis.feature.simple.SimpleFeatureType;
 import org.opengis.feature.type.GeometryDescriptor;
 import org.opengis.feature.type.Name;
 import org.opengis.filter.Filter;
+import org.opengis.filter.FilterFactory2;
+import org.opengis.filter.expression.PropertyName;
 import org.opengis.referencing.crs.CoordinateReferenceSystem;
 
 import com.vividsolutions.jts.geom.CoordinateSequenceFactory;
+import com.vividsolutions.jts.geom.Envelope;
 import com.vividsolutions.jts.geom.GeometryFactory;
 import com.vividsolutions.jts.geom.impl.PackedCoordinateSequenceFactory;
 
@@ -43,6 +49,8 @@ class WFSContentFeatureSource extends ContentFeatureSource {
 
     private static final Logger LOGGER = Logging.getLogger(WFSContentFeatureSource.class);
 
+    private static final FilterFactory2 FF = CommonFactoryFinder.getFilterFactory2(null);
+
     private final WFSClient client;
 
     public WFSContentFeatureSource(final ContentEntry entry, final WFSClient client) {
@@ -202,18 +210,22 @@ class WFSContentFeatureSource extends ContentFeatureSource {
             return new EmptyFeatureReader<SimpleFeatureType, SimpleFeature>(getSchema());
         }
 
-        GetFeatureRequest request = createGetFeature(localQuery, ResultType.RESULTS);
-
         final SimpleFeatureType contentType = getQueryType(localQuery);
-        request.setQueryType(contentType);
-
-        GetFeatureResponse response = client.issueRequest(request);
-
-        GeometryFactory geometryFactory = findGeometryFactory(localQuery.getHints());
-        GetFeatureParser features = response.getSimpleFeatures(geometryFactory);
+        final GeometryFactory geometryFactory = findGeometryFactory(localQuery.getHints());
 
         FeatureReader<SimpleFeatureType, SimpleFeature> reader;
-        reader = new WFSFeatureReader(features);
+        final ParallelFeatureReader.Pages pages = createPages(localQuery, contentType, geometryFactory);
+        if (pages != null) {
+            final int maxConcurrent = client.getConfig().getMaxConcurrentRequests();
+            reader = new ParallelFeatureReader(pages, getDataStore().getExecutor(),
+                    maxConcurrent);
+        } else {
+            GetFeatureRequest request = createGetFeature(localQuery, ResultType.RESULTS);
+            request.setQueryType(contentType);
+
+            GetFeatureParser features = getFeatures(request, geometryFactory);
+            reader = new WFSFeatureReader(features);
+        }
 
         if (!reader.hasNext()) {
             return new EmptyFeatureReader<SimpleFeatureType, SimpleFeature>(contentType);
@@ -238,6 +250,147 @@ class WFSContentFeatureSource extends ContentFeatureSource {
         return reader;
     }
 
+    /**
+     * Issues a GetFeature request, going through the feature cache if enabled and not in a
+     * transaction, whose reads shall see the server as it is
+     */
+    private GetFeatureParser getFeatures(GetFeatureRequest request,
+            GeometryFactory geometryFactory) throws IOException {
+        FeatureCache cache = getDataStore().getFeatureCache();
+        if (!Transaction.AUTO_COMMIT.equals(getTransaction())) {
+            cache = null;
+        }
+        if (cache != null) {
+            GetFeatureParser cached = cache.get(request, geometryFactory);
+            if (cached != null) {
+                return cached;
+            }
+        }
+
+        GetFeatureResponse response = client.issueRequest(request);
+        GetFeatureParser features = response.getSimpleFeatures(geometryFactory);
+        if (cache != null) {
+            features = cache.record(request, response, features);
+        }
+        return features;
+    }
+
+    /**
+     * Splits a read in several concurrent GetFeature requests if so configured: by start index
+     * when the server supports paging, by bbox tiles otherwise.
+     * 
+     * @return the pages to read, or {@code null} if the read shall be issued as a single request
+     */
+    private ParallelFeatureReader.Pages createPages(Query query, SimpleFeatureType contentType,
+            GeometryFactory geometryFactory) throws IOException {
+        final WFSConfig config = client.getConfig();
+        final int pageSize = config.getPageSize();
+        if (pageSize > 0 && client.canPage()) {
+            return new StartIndexPages(query, contentType, geometryFactory, pageSize);
+        }
+
+        final int tiles = config.getTiles();
+        final boolean sorted = query.getSortBy() != null && query.getSortBy().length > 0;
+        if (tiles <= 1 || sorted || query.getMaxFeatures() < Integer.MAX_VALUE) {
+            // tiles would change the order, or need a global limit
+            return null;
+        }
+        final GeometryDescriptor geometry = getSchema().getGeometryDescriptor();
+        if (geometry == null) {
+            return null;
+        }
+        final QName remoteTypeName = getRemoteTypeName();
+        final ReferencedEnvelope bounds = client.getBounds(remoteTypeName,
+                client.getDefaultCRS(remoteTypeName));
+        if (bounds == null || bounds.isEmpty()) {
+            return null;
+        }
+        return new TilePages(query, contentType, geometryFactory, geometry.getLocalName(),
+                bounds, tiles);
+    }
+
+    /**
+     * Pages by start index and count
+     */
+    private class StartIndexPages extends ParallelFeatureReader.StartIndexPages {
+
+        final Query query;
+
+        final SimpleFeatureType contentType;
+
+        final GeometryFactory geometryFactory;
+
+        StartIndexPages(Query query, SimpleFeatureType contentType,
+                GeometryFactory geometryFactory, int pageSize) {
+            super(pageSize, query.getMaxFeatures());
+            this.query = query;
+            this.contentType = contentType;
+            this.geometryFactory = geometryFactory;
+        }
+
+        @Override
+        protected GetFeatureParser open(int startIndex, int count) throws IOException {
+            GetFeatureRequest request = createGetFeature(query, ResultType.RESULTS);
+            request.setQueryType(contentType);
+            request.setStartIndex(startIndex);
+            request.setMaxFeatures(count);
+
+            return getFeatures(request, geometryFactory);
+        }
+    }
+
+    /**
+     * Pages by a grid of bbox tiles over the advertised bounds of the feature type, plus a last
+     * page for the features outside them, as advertised bounds may be approximate. The reader
+     * returns the features crossing tiles only once.
+     */
+    private class TilePages extends ParallelFeatureReader.TilePages {
+
+        final Query query;
+
+        final SimpleFeatureType contentType;
+
+        final GeometryFactory geometryFactory;
+
+        final String geometryName;
+
+        final ReferencedEnvelope bounds;
+
+        TilePages(Query query, SimpleFeatureType contentType, GeometryFactory geometryFactory,
+                String geometryName, ReferencedEnvelope bounds, int tiles) {
+            super(bounds, tiles);
+            this.query = query;
+            this.contentType = contentType;
+            this.geometryFactory = geometryFactory;
+            this.geometryName = geometryName;
+            this.bounds = bounds;
+        }
+
+        @Override
+        protected GetFeatureParser open(Envelope tile) throws IOException {
+            GetFeatureRequest request = createGetFeature(query, ResultType.RESULTS);
+            request.setQueryType(contentType);
+
+            final FilterFactory2 ff = FF;
+            final PropertyName geometry = ff.property(geometryName);
+            Filter tileFilter;
+            if (tile == null) {
+                tileFilter = ff.not(ff.bbox(geometry, bounds));
+            } else {
+                tileFilter = ff.bbox(geometry, new ReferencedEnvelope(tile,
+                        bounds.getCoordinateReferenceSystem()));
+            }
+            Filter filter = request.getFilter();
+            if (filter == null || Filter.INCLUDE.equals(filter)) {
+                request.setFilter(tileFilter);
+            } else {
+                request.setFilter(ff.and(filter, tileFilter));
+            }
+
+            return getFeatures(request, geometryFactory);
+        }
+    }
+
     private GeometryFactory findGeometryFactory(Hints hints) {
         GeometryFactory geomFactory = (GeometryFactory) hints.get(Hints.JTS_GEOMETRY_FACTORY);
         if (geomFactory == null) {
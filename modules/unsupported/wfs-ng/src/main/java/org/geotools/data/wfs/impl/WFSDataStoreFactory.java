@@ -16,6 +16,7 @@
  */
 package org.geotools.data.wfs.impl;
 
+import java.io.File;
 import java.io.IOException;
 import java.io.Serializable;
 import java.net.Authenticator;
@@ -37,6 +38,9 @@ import org.geotools.data.ows.SimpleHttpClient;
 import org.geotools.data.wfs.internal.Loggers;
 import org.geotools.data.wfs.internal.WFSClient;
 import org.geotools.data.wfs.internal.WFSConfig;
+import org.geotools.data.wfs.internal.cache.CachingHTTPClient;
+import org.geotools.data.wfs.internal.cache.FeatureCache;
+import org.geotools.data.wfs.internal.cache.ResponseCache;
 import org.geotools.factory.CommonFactoryFinder;
 import org.geotools.feature.type.FeatureTypeFactoryImpl;
 import org.geotools.ows.ServiceException;
@@ -115,7 +119,7 @@ public class WFSDataStoreFactory extends AbstractDataStoreFactory {
     }
 
     /** Access with {@link WFSDataStoreFactory#getParametersInfo()  */
-    private static final WFSFactoryParam<?>[] parametersInfo = new WFSFactoryParam[13];
+    private static final WFSFactoryParam<?>[] parametersInfo = new WFSFactoryParam[19];
 
     /**
      * Mandatory DataStore parameter indicating the URL for the WFS GetCapabilities document.
@@ -315,6 +319,92 @@ public class WFSDataStoreFactory extends AbstractDataStoreFactory {
                 description, null);
     }
 
+    /**
+     * Optional positive {@code Integer} indicating how many features to request per GetFeature
+     * page, when the server supports paging (startIndex/count). A value of zero or not providing
+     * this parameter means reads are issued as a single request.
+     * <p>
+     * Currently has no effect: none of the protocol strategies supports paging yet, see
+     * {@link org.geotools.data.wfs.internal.WFSStrategy#canPage()}, so reads are split by
+     * {@link #TILES} only.
+     * </p>
+     */
+    public static final WFSFactoryParam<Integer> PAGE_SIZE;
+    static {
+        String name = "WFSDataStoreFactory:PAGE_SIZE";
+        String description = "Number of features to request per GetFeature page, for servers "
+                + "supporting paging. A value of zero means no paging. Currently has no effect, "
+                + "as no protocol strategy supports paging yet.";
+        parametersInfo[13] = PAGE_SIZE = new WFSFactoryParam<Integer>(name, Integer.class,
+                description, 0);
+    }
+
+    /**
+     * Optional positive {@code Integer} indicating how many paged or tiled GetFeature requests
+     * are executed concurrently for a single read.
+     */
+    public static final WFSFactoryParam<Integer> MAX_CONCURRENT_REQUESTS;
+    static {
+        String name = "WFSDataStoreFactory:MAX_CONCURRENT_REQUESTS";
+        String description = "Maximum number of paged or tiled GetFeature requests executed "
+                + "concurrently for a single read";
+        parametersInfo[14] = MAX_CONCURRENT_REQUESTS = new WFSFactoryParam<Integer>(name,
+                Integer.class, description, 4);
+    }
+
+    /**
+     * Optional positive {@code Integer} indicating in how many tiles per axis the bounds of a
+     * feature type are split when the server does not support paging. Each tile is requested
+     * with its own bbox filter. A value of zero or one means no tiling.
+     */
+    public static final WFSFactoryParam<Integer> TILES;
+    static {
+        String name = "WFSDataStoreFactory:TILES";
+        String description = "Number of bbox tiles per axis a read is split into when the server "
+                + "does not support paging. A value of zero or one means no tiling.";
+        parametersInfo[15] = TILES = new WFSFactoryParam<Integer>(name, Integer.class,
+                description, 0);
+    }
+
+    /**
+     * Optional {@code String} path of a directory where GetCapabilities, DescribeFeatureType and
+     * GetFeature responses are cached across requests and restarts. Not providing this parameter
+     * disables the cache.
+     */
+    public static final WFSFactoryParam<String> CACHE_DIRECTORY;
+    static {
+        String name = "WFSDataStoreFactory:CACHE_DIRECTORY";
+        String description = "Directory where the WFS responses are cached. "
+                + "Not providing it disables the cache.";
+        parametersInfo[16] = CACHE_DIRECTORY = new WFSFactoryParam<String>(name, String.class,
+                description, null);
+    }
+
+    /**
+     * Optional positive {@code Integer} maximum size of the response cache, in megabytes
+     */
+    public static final WFSFactoryParam<Integer> CACHE_MAX_SIZE;
+    static {
+        String name = "WFSDataStoreFactory:CACHE_MAX_SIZE";
+        String description = "Maximum size in megabytes of the response cache, "
+                + "least recently used responses being evicted past it";
+        parametersInfo[17] = CACHE_MAX_SIZE = new WFSFactoryParam<Integer>(name, Integer.class,
+                description, 100);
+    }
+
+    /**
+     * Optional {@code Integer} number of seconds responses are cached for, when the server does
+     * not send HTTP caching headers. Zero means such responses are not cached.
+     */
+    public static final WFSFactoryParam<Integer> CACHE_TTL;
+    static {
+        String name = "WFSDataStoreFactory:CACHE_TTL";
+        String description = "Seconds responses are cached for when the server does not send "
+                + "caching headers, zero meaning such responses are not cached";
+        parametersInfo[18] = CACHE_TTL = new WFSFactoryParam<Integer>(name, Integer.class,
+                description, 300);
+    }
+
     /**
      * Requests the WFS Capabilities document from the {@link WFSDataStoreFactory#URL url} parameter
      * in {@code params} and returns a {@link WFSDataStore} according to the version of the
@@ -343,7 +433,21 @@ public class WFSDataStoreFactory extends AbstractDataStoreFactory {
             }
         }
 
-        final HTTPClient http = new SimpleHttpClient();// new MultithreadedHttpClient();
+        HTTPClient http;
+        if (config.getPageSize() > 0 || config.getTiles() > 1) {
+            // paged and tiled reads issue concurrent requests
+            MultithreadedHttpClient multithreaded = new MultithreadedHttpClient();
+            multithreaded.setMaxConnections(Math.max(1, config.getMaxConcurrentRequests()));
+            http = multithreaded;
+        } else {
+            http = new SimpleHttpClient();
+        }
+        ResponseCache responseCache = null;
+        if (config.getCacheDirectory() != null) {
+            long maxSize = config.getCacheMaxSize() * 1024L * 1024L;
+            responseCache = ResponseCache.get(new File(config.getCacheDirectory()), maxSize);
+            http = new CachingHTTPClient(http, responseCache, config.getCacheTTL() * 1000L);
+        }
         // TODO: let HTTPClient be configured for gzip
         // http.setTryGzip(tryGZIP);
         http.setUser(config.getUser());
@@ -362,6 +466,11 @@ public class WFSDataStoreFactory extends AbstractDataStoreFactory {
         }
 
         WFSContentDataStore dataStore = new WFSContentDataStore(wfsClient);
+        if (responseCache != null) {
+            long ttlMillis = config.getCacheTTL() * 1000L;
+            dataStore.setFeatureCache(new FeatureCache(responseCache, ttlMillis,
+                    capabilitiesURL, config.getUser(), config.getPassword()));
+        }
         // factories
         dataStore.setFilterFactory(CommonFactoryFinder.getFilterFactory(null));
         dataStore.setGeometryFactory(new GeometryFactory(
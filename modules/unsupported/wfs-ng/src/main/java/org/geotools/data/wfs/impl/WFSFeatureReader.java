@@ -42,16 +42,22 @@ class WFSFeatureReader implements FeatureReader<SimpleFeatureType, SimpleFeature
         this.parser = parser;
         this.next = parser.parse();
         if (this.next != null) {
-            FeatureType parsedType = next.getFeatureType();
-            if (parsedType instanceof SimpleFeatureType) {
-                this.featureType = (SimpleFeatureType) parsedType;
-            } else {
-                // this is the FeatureType as parsed by the StreamingParser, we need a simple view
-                this.featureType = EmfAppSchemaParser.toSimpleFeatureType(parsedType);
-            }
+            this.featureType = simpleType(next);
         }
     }
 
+    /**
+     * @return the simple feature type of a parsed feature
+     */
+    static SimpleFeatureType simpleType(SimpleFeature feature) throws IOException {
+        FeatureType parsedType = feature.getFeatureType();
+        if (parsedType instanceof SimpleFeatureType) {
+            return (SimpleFeatureType) parsedType;
+        }
+        // this is the FeatureType as parsed by the StreamingParser, we need a simple view
+        return EmfAppSchemaParser.toSimpleFeatureType(parsedType);
+    }
+
     /**
      * @see FeatureReader#close()
      */
@@ -13,6 +13,7 @@ import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.logging.Level;
 
 import javax.xml.namespace.QName;
 
@@ -20,12 +21,14 @@ import org.geotools.data.Transaction;
 import org.geotools.data.Transaction.State;
 import org.geotools.data.TransactionStateDiff;
 import org.geotools.data.wfs.impl.WFSDiff.BatchUpdate;
+import org.geotools.data.wfs.internal.Loggers;
 import org.geotools.data.wfs.internal.TransactionRequest;
 import org.geotools.data.wfs.internal.TransactionRequest.Delete;
 import org.geotools.data.wfs.internal.TransactionRequest.Insert;
 import org.geotools.data.wfs.internal.TransactionRequest.Update;
 import org.geotools.data.wfs.internal.TransactionResponse;
 import org.geotools.data.wfs.internal.WFSClient;
+import org.geotools.data.wfs.internal.cache.FeatureCache;
 import org.geotools.feature.simple.SimpleFeatureBuilder;
 import org.opengis.feature.Property;
 import org.opengis.feature.simple.SimpleFeature;
@@ -109,7 +112,13 @@ class WFSRemoteTransactionState implements State {
             requestedInsertFids.addAll(addedFids);
         }
 
-        TransactionResponse transactionResponse = wfs.issueTransaction(transactionRequest);
+        TransactionResponse transactionResponse;
+        try {
+            transactionResponse = wfs.issueTransaction(transactionRequest);
+        } finally {
+            // even a failed transaction may have been partly applied
+            invalidateCache();
+        }
         List<FeatureId> insertedFids = transactionResponse.getInsertedFids();
         int deleteCount = transactionResponse.getDeleteCount();
         int updatedCount = transactionResponse.getUpdatedCount();
@@ -129,6 +138,24 @@ class WFSRemoteTransactionState implements State {
         }
     }
 
+    /**
+     * Keeps the feature cache from serving the features of the committed types as they were
+     */
+    private void invalidateCache() {
+        FeatureCache cache = dataStore.getFeatureCache();
+        if (cache == null) {
+            return;
+        }
+        for (Name typeName : localStates.keySet()) {
+            try {
+                cache.invalidate(dataStore.getRemoteTypeName(typeName));
+            } catch (IOException e) {
+                Loggers.MODULE.log(Level.WARNING, "Cannot invalidate the cached features of "
+                        + typeName, e);
+            }
+        }
+    }
+
     private List<MutableFeatureId> applyDiff(final Name localTypeName,
             TransactionRequest transactionRequest) throws IOException {
 
@@ -214,7 +214,12 @@ public abstract class AbstractWFSStrategy extends WFSStrategy {
         map.put("OUTPUTFORMAT", outputFormat);
 
         if (request.getMaxFeatures() != null) {
-            map.put("MAXFEATURES", String.valueOf(request.getMaxFeatures()));
+            // WFS 2.0 renamed MAXFEATURES to COUNT
+            String key = serviceVersion.compareTo(Versions.v2_0_0) < 0 ? "MAXFEATURES" : "COUNT";
+            map.put(key, String.valueOf(request.getMaxFeatures()));
+        }
+        if (request.getStartIndex() != null) {
+            map.put("STARTINDEX", String.valueOf(request.getStartIndex()));
         }
 
         QName typeName = request.getTypeName();
@@ -38,6 +38,8 @@ public class GetFeatureRequest extends WFSRequest {
 
     private Integer maxFeatures;
 
+    private Integer startIndex;
+
     private ResultType resultType;
 
     private SortBy[] sortBy;
@@ -80,6 +82,13 @@ public class GetFeatureRequest extends WFSRequest {
         return maxFeatures;
     }
 
+    /**
+     * @return the zero based index of the first feature to return, {@code null} if not paging
+     */
+    public Integer getStartIndex() {
+        return startIndex;
+    }
+
     public ResultType getResultType() {
         return resultType;
     }
@@ -120,6 +129,14 @@ public class GetFeatureRequest extends WFSRequest {
         this.maxFeatures = maxFeatures;
     }
 
+    /**
+     * @param startIndex
+     *            the zero based index of the first feature to return
+     */
+    public void setStartIndex(Integer startIndex) {
+        this.startIndex = startIndex;
+    }
+
     /**
      * @param resultType
      *            the resultType to set
@@ -246,6 +246,14 @@ public class WFSClient extends AbstractOpenWebService<WFSGetCapabilities, QName>
         return getStrategy().supports(ResultType.HITS);
     }
 
+    public boolean canPage() {
+        return getStrategy().canPage();
+    }
+
+    public WFSConfig getConfig() {
+        return config;
+    }
+
     public GetFeatureRequest createGetFeatureRequest() {
         WFSStrategy strategy = getStrategy();
         return new GetFeatureRequest(config, strategy);
@@ -1,13 +1,19 @@
 package org.geotools.data.wfs.internal;
 
 import static org.geotools.data.wfs.impl.WFSDataStoreFactory.BUFFER_SIZE;
+import static org.geotools.data.wfs.impl.WFSDataStoreFactory.CACHE_DIRECTORY;
+import static org.geotools.data.wfs.impl.WFSDataStoreFactory.CACHE_MAX_SIZE;
+import static org.geotools.data.wfs.impl.WFSDataStoreFactory.CACHE_TTL;
 import static org.geotools.data.wfs.impl.WFSDataStoreFactory.ENCODING;
 import static org.geotools.data.wfs.impl.WFSDataStoreFactory.FILTER_COMPLIANCE;
 import static org.geotools.data.wfs.impl.WFSDataStoreFactory.LENIENT;
+import static org.geotools.data.wfs.impl.WFSDataStoreFactory.MAX_CONCURRENT_REQUESTS;
 import static org.geotools.data.wfs.impl.WFSDataStoreFactory.MAXFEATURES;
 import static org.geotools.data.wfs.impl.WFSDataStoreFactory.NAMESPACE;
+import static org.geotools.data.wfs.impl.WFSDataStoreFactory.PAGE_SIZE;
 import static org.geotools.data.wfs.impl.WFSDataStoreFactory.PASSWORD;
 import static org.geotools.data.wfs.impl.WFSDataStoreFactory.PROTOCOL;
+import static org.geotools.data.wfs.impl.WFSDataStoreFactory.TILES;
 import static org.geotools.data.wfs.impl.WFSDataStoreFactory.TIMEOUT;
 import static org.geotools.data.wfs.impl.WFSDataStoreFactory.TRY_GZIP;
 import static org.geotools.data.wfs.impl.WFSDataStoreFactory.USERNAME;
@@ -46,6 +52,18 @@ public class WFSConfig {
 
     private String namespaceOverride;
 
+    private int pageSize;
+
+    private int maxConcurrentRequests;
+
+    private int tiles;
+
+    private String cacheDirectory;
+
+    private int cacheMaxSize;
+
+    private int cacheTTL;
+
     public static enum PreferredHttpMethod {
         AUTO, HTTP_GET, HTTP_POST
     }
@@ -62,6 +80,12 @@ public class WFSConfig {
         wfsStrategy = (String) WFS_STRATEGY.getDefaultValue();
         filterCompliance = (Integer) FILTER_COMPLIANCE.getDefaultValue();
         namespaceOverride = (String) NAMESPACE.getDefaultValue();
+        pageSize = (Integer) PAGE_SIZE.getDefaultValue();
+        maxConcurrentRequests = (Integer) MAX_CONCURRENT_REQUESTS.getDefaultValue();
+        tiles = (Integer) TILES.getDefaultValue();
+        cacheDirectory = (String) CACHE_DIRECTORY.getDefaultValue();
+        cacheMaxSize = (Integer) CACHE_MAX_SIZE.getDefaultValue();
+        cacheTTL = (Integer) CACHE_TTL.getDefaultValue();
     }
 
     public static WFSConfig fromParams(Map<?, ?> params) throws IOException {
@@ -93,6 +117,12 @@ public class WFSConfig {
         config.wfsStrategy = (String) WFS_STRATEGY.lookUp(params);
         config.filterCompliance = (Integer) FILTER_COMPLIANCE.lookUp(params);
         config.namespaceOverride = (String) NAMESPACE.lookUp(params);
+        config.pageSize = (Integer) PAGE_SIZE.lookUp(params);
+        config.maxConcurrentRequests = (Integer) MAX_CONCURRENT_REQUESTS.lookUp(params);
+        config.tiles = (Integer) TILES.lookUp(params);
+        config.cacheDirectory = (String) CACHE_DIRECTORY.lookUp(params);
+        config.cacheMaxSize = (Integer) CACHE_MAX_SIZE.lookUp(params);
+        config.cacheTTL = (Integer) CACHE_TTL.lookUp(params);
 
         return config;
     }
@@ -180,4 +210,46 @@ public class WFSConfig {
     public String getNamespaceOverride() {
         return namespaceOverride;
     }
+
+    /**
+     * @return the number of features per GetFeature page, zero meaning no paging
+     */
+    public int getPageSize() {
+        return pageSize;
+    }
+
+    /**
+     * @return the maximum number of concurrent GetFeature requests for a single read
+     */
+    public int getMaxConcurrentRequests() {
+        return maxConcurrentRequests;
+    }
+
+    /**
+     * @return the number of bbox tiles per axis, zero or one meaning no tiling
+     */
+    public int getTiles() {
+        return tiles;
+    }
+
+    /**
+     * @return the response cache directory, {@code null} if caching is disabled
+     */
+    public String getCacheDirectory() {
+        return cacheDirectory;
+    }
+
+    /**
+     * @return the maximum size of the response cache, in megabytes
+     */
+    public int getCacheMaxSize() {
+        return cacheMaxSize;
+    }
+
+    /**
+     * @return the seconds responses are cached for when the server does not send caching headers
+     */
+    public int getCacheTTL() {
+        return cacheTTL;
+    }
 }
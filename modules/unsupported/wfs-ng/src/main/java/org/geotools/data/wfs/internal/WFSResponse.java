@@ -107,6 +107,13 @@ public class WFSResponse extends Response {
         return request;
     }
 
+    /**
+     * @return the HTTP response this response was built from, giving access to its headers
+     */
+    public HTTPResponse getHTTPResponse() {
+        return httpResponse;
+    }
+
     @Override
     public String toString() {
         return new StringBuilder("WFSResponse[charset=").append(charset).append(", contentType=")
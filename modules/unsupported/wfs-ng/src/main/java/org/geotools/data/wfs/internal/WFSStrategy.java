@@ -158,6 +158,17 @@ public abstract class WFSStrategy extends Specification {
 
     public abstract boolean supportsTransaction(QName typeName);
 
+    /**
+     * Whether GetFeature requests can be paged by {@link GetFeatureRequest#setStartIndex start
+     * index}, which allows a read to be split in several concurrent requests.
+     * 
+     * @return {@code false} by default, strategies issuing GetFeature requests to servers
+     *         supporting paging shall override
+     */
+    public boolean canPage() {
+        return false;
+    }
+
     /**
      * Returns the URL for the given operation name and HTTP protocol as stated in the WFS
      * capabilities.
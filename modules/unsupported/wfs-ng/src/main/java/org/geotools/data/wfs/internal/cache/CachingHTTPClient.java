@@ -0,0 +1,406 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2013, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.data.wfs.internal.cache;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.apache.commons.io.IOUtils;
+import org.geotools.data.ows.HTTPClient;
+import org.geotools.data.ows.HTTPResponse;
+import org.geotools.util.logging.Logging;
+
+/**
+ * An {@link HTTPClient} decorator caching the GetCapabilities and DescribeFeatureType responses
+ * into a {@link ResponseCache}.
+ * <p>
+ * The operation is recognized from the {@code REQUEST} KVP parameter for GET requests, and from
+ * the root element of the body for POST ones. Other operations go straight to the delegate:
+ * GetFeature results are cached as parsed features by {@link FeatureCache} instead, and
+ * transactions are never cached. Responses are stored while the caller consumes them, and
+ * committed only if fully read and not an exception report.
+ * </p>
+ * 
+ * @source $URL$
+ */
+public class CachingHTTPClient implements HTTPClient {
+
+    private static final Logger LOGGER = Logging.getLogger(CachingHTTPClient.class);
+
+    private static final Set<String> CACHED_OPERATIONS = new HashSet<String>(Arrays.asList(
+            "GetCapabilities", "DescribeFeatureType"));
+
+    /** the response headers stored along with the contents */
+    private static final String[] HEADERS = { "Content-Type", "Charset" };
+
+    /** the bytes sniffed for the root element of requests and responses */
+    private static final int SNIFF_SIZE = 1024;
+
+    private final HTTPClient delegate;
+
+    private final ResponseCache cache;
+
+    private final long ttlMillis;
+
+    /**
+     * @param ttlMillis
+     *            how long responses are kept when the server does not send caching headers
+     */
+    public CachingHTTPClient(HTTPClient delegate, ResponseCache cache, long ttlMillis) {
+        this.delegate = delegate;
+        this.cache = cache;
+        this.ttlMillis = ttlMillis;
+    }
+
+    public HTTPResponse get(URL url) throws IOException {
+        String request = ResponseCache.getParameter(url, "REQUEST");
+        if (request == null || !CACHED_OPERATIONS.contains(request)) {
+            return delegate.get(url);
+        }
+        String key = credentials() + ResponseCache.key(url, null);
+        HTTPResponse cached = getCached(key);
+        if (cached != null) {
+            return cached;
+        }
+        return record(key, delegate.get(url));
+    }
+
+    public HTTPResponse post(URL url, InputStream postContent, String postContentType)
+            throws IOException {
+        byte[] body = IOUtils.toByteArray(postContent);
+        String request = rootElement(body, Math.min(body.length, SNIFF_SIZE));
+        if (request == null || !CACHED_OPERATIONS.contains(request)) {
+            return delegate.post(url, new ByteArrayInputStream(body), postContentType);
+        }
+        String key = credentials() + ResponseCache.key(url, body);
+        HTTPResponse cached = getCached(key);
+        if (cached != null) {
+            return cached;
+        }
+        return record(key, delegate.post(url, new ByteArrayInputStream(body), postContentType));
+    }
+
+    private String credentials() {
+        return ResponseCache.credentials(getUser(), getPassword());
+    }
+
+    private HTTPResponse getCached(String key) throws IOException {
+        ResponseCache.Entry entry = cache.get(key);
+        if (entry == null) {
+            return null;
+        }
+        LOGGER.fine("Serving response from the cache");
+        return new CachedHTTPResponse(entry);
+    }
+
+    private HTTPResponse record(String key, HTTPResponse response) throws IOException {
+        long expires = ResponseCache.expires(response, ttlMillis);
+        if (expires == 0 || response.getResponseStream() == null) {
+            return response;
+        }
+        Map<String, String> headers = new HashMap<String, String>();
+        for (String name : HEADERS) {
+            headers.put(name, response.getResponseHeader(name));
+        }
+        ResponseCache.EntryWriter writer = cache.put(key, expires, headers);
+        return new RecordingHTTPResponse(response, writer);
+    }
+
+    /**
+     * @return the local name of the root element of an xml document, or {@code null} if not
+     *         found in the given bytes
+     */
+    static String rootElement(byte[] xml, int length) {
+        int i = 0;
+        while (i < length) {
+            if (xml[i] != '<') {
+                i++;
+                continue;
+            }
+            if (i + 1 < length && (xml[i + 1] == '?' || xml[i + 1] == '!')) {
+                // prolog, comment or doctype, a comment containing '>' is not worth handling
+                while (i < length && xml[i] != '>') {
+                    i++;
+                }
+                continue;
+            }
+            int start = ++i;
+            while (i < length && xml[i] != '>' && xml[i] != '/'
+                    && !Character.isWhitespace(xml[i])) {
+                if (xml[i] == ':') {
+                    start = i + 1;
+                }
+                i++;
+            }
+            if (i == length) {
+                return null;
+            }
+            try {
+                return new String(xml, start, i - start, "UTF-8");
+            } catch (IOException e) {
+                return null;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * A response coming from the cache
+     */
+    static class CachedHTTPResponse implements HTTPResponse {
+
+        private final ResponseCache.Entry entry;
+
+        CachedHTTPResponse(ResponseCache.Entry entry) {
+            this.entry = entry;
+        }
+
+        public void dispose() {
+            try {
+                entry.getInputStream().close();
+            } catch (IOException e) {
+                LOGGER.log(Level.FINE, "Error closing cached response", e);
+            }
+        }
+
+        public String getContentType() {
+            return entry.getHeader("Content-Type");
+        }
+
+        public String getResponseHeader(String headerName) {
+            for (String name : HEADERS) {
+                if (name.equalsIgnoreCase(headerName)) {
+                    return entry.getHeader(name);
+                }
+            }
+            return null;
+        }
+
+        public InputStream getResponseStream() throws IOException {
+            return entry.getInputStream();
+        }
+
+        public String getResponseCharset() {
+            String contentType = getContentType();
+            if (null == contentType) {
+                return null;
+            }
+            String[] split = contentType.split(";");
+            for (int i = 1; i < split.length; i++) {
+                String[] mimeParam = split[i].split("=");
+                if (mimeParam.length == 2 && "charset".equalsIgnoreCase(mimeParam[0].trim())) {
+                    return mimeParam[1].trim();
+                }
+            }
+            return null;
+        }
+    }
+
+    /**
+     * A response copying its contents into a cache entry as they are read
+     */
+    static class RecordingHTTPResponse implements HTTPResponse {
+
+        private final HTTPResponse delegate;
+
+        private final ResponseCache.EntryWriter writer;
+
+        private InputStream stream;
+
+        RecordingHTTPResponse(HTTPResponse delegate, ResponseCache.EntryWriter writer) {
+            this.delegate = delegate;
+            this.writer = writer;
+        }
+
+        public void dispose() {
+            writer.abort();
+            delegate.dispose();
+        }
+
+        public String getContentType() {
+            return delegate.getContentType();
+        }
+
+        public String getResponseHeader(String headerName) {
+            return delegate.getResponseHeader(headerName);
+        }
+
+        public String getResponseCharset() {
+            return delegate.getResponseCharset();
+        }
+
+        public synchronized InputStream getResponseStream() throws IOException {
+            if (stream == null) {
+                stream = new RecordingInputStream(delegate.getResponseStream(), writer);
+            }
+            return stream;
+        }
+    }
+
+    /**
+     * Copies the bytes read into the entry, committing it at the end of the stream
+     */
+    static class RecordingInputStream extends FilterInputStream {
+
+        private final ResponseCache.EntryWriter writer;
+
+        private final ByteArrayOutputStream head = new ByteArrayOutputStream(SNIFF_SIZE);
+
+        private boolean recording = true;
+
+        RecordingInputStream(InputStream in, ResponseCache.EntryWriter writer) {
+            super(in);
+            this.writer = writer;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b == -1) {
+                end();
+            } else if (recording) {
+                record(new byte[] { (byte) b }, 0, 1);
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int read = super.read(b, off, len);
+            if (read == -1) {
+                end();
+            } else if (recording) {
+                record(b, off, read);
+            }
+            return read;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            // skipped bytes cannot be recorded
+            stopRecording();
+            return super.skip(n);
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+
+        @Override
+        public void close() throws IOException {
+            // an incomplete read is not cached
+            stopRecording();
+            super.close();
+        }
+
+        private void record(byte[] b, int off, int len) {
+            try {
+                if (head.size() < SNIFF_SIZE) {
+                    head.write(b, off, Math.min(len, SNIFF_SIZE - head.size()));
+                }
+                writer.write(b, off, len);
+            } catch (IOException e) {
+                LOGGER.log(Level.FINE, "Error writing cache entry, not caching the response", e);
+                stopRecording();
+            }
+        }
+
+        private void end() {
+            if (!recording) {
+                return;
+            }
+            recording = false;
+            byte[] bytes = head.toByteArray();
+            String root = rootElement(bytes, bytes.length);
+            if (root == null || root.endsWith("ExceptionReport")) {
+                writer.abort();
+                return;
+            }
+            try {
+                writer.commit();
+            } catch (IOException e) {
+                LOGGER.log(Level.FINE, "Error committing cache entry", e);
+            }
+        }
+
+        private void stopRecording() {
+            if (recording) {
+                recording = false;
+                writer.abort();
+            }
+        }
+    }
+
+    public String getUser() {
+        return delegate.getUser();
+    }
+
+    public void setUser(String user) {
+        delegate.setUser(user);
+    }
+
+    public String getPassword() {
+        return delegate.getPassword();
+    }
+
+    public void setPassword(String password) {
+        delegate.setPassword(password);
+    }
+
+    public int getConnectTimeout() {
+        return delegate.getConnectTimeout();
+    }
+
+    public void setConnectTimeout(int connectTimeout) {
+        delegate.setConnectTimeout(connectTimeout);
+    }
+
+    public int getReadTimeout() {
+        return delegate.getReadTimeout();
+    }
+
+    public void setReadTimeout(int readTimeout) {
+        delegate.setReadTimeout(readTimeout);
+    }
+
+    public void setTryGzip(boolean tryGZIP) {
+        delegate.setTryGzip(tryGZIP);
+    }
+
+    public boolean isTryGzip() {
+        return delegate.isTryGzip();
+    }
+
+    /**
+     * @return the decorated client
+     */
+    public HTTPClient getDelegate() {
+        return delegate;
+    }
+}
@@ -0,0 +1,582 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2013, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.data.wfs.internal.cache;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.xml.namespace.QName;
+
+import org.geotools.data.wfs.internal.GetFeatureParser;
+import org.geotools.data.wfs.internal.GetFeatureRequest;
+import org.geotools.data.wfs.internal.GetFeatureResponse;
+import org.geotools.feature.simple.SimpleFeatureBuilder;
+import org.geotools.feature.simple.SimpleFeatureTypeBuilder;
+import org.geotools.referencing.CRS;
+import org.geotools.util.logging.Logging;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
+import org.opengis.feature.type.AttributeDescriptor;
+import org.opengis.feature.type.FeatureType;
+import org.opengis.feature.type.GeometryDescriptor;
+import org.opengis.referencing.crs.CoordinateReferenceSystem;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.GeometryFactory;
+import com.vividsolutions.jts.io.ParseException;
+import com.vividsolutions.jts.io.WKBReader;
+import com.vividsolutions.jts.io.WKBWriter;
+
+/**
+ * Caches the features returned by GetFeature requests into a {@link ResponseCache}, in a compact
+ * binary form so that cache hits skip the xml parsing altogether.
+ * <p>
+ * Features are recorded while the caller parses the response, and the entry is committed only
+ * once the whole response has been parsed. The stored form holds the attribute names, bindings
+ * and CRSs followed by each feature id and values, with geometries as WKB, much in the same way
+ * the merge sort of {@code org.geotools.data.sort} dumps features to disk. Unlike it, each value
+ * is tagged with its own type, as parsed values are not guaranteed to match the attribute
+ * binding exactly. Responses holding values of other types are not cached: the cache directory
+ * may be shared, so values are never deserialized from it.
+ * </p>
+ * <p>
+ * Keys are scoped to the credentials of the data store, and to a generation of the feature type
+ * that is renewed by {@link #invalidate}, once a transaction modified the type. The generations
+ * are stored in the {@link ResponseCache} too, so that they are shared with the other data stores
+ * using the same cache directory and survive restarts. A missing generation, never written or
+ * evicted, is renewed as well, hence entries written before can never be served again.
+ * </p>
+ * 
+ * @source $URL$
+ */
+public class FeatureCache {
+
+    private static final Logger LOGGER = Logging.getLogger(FeatureCache.class);
+
+    static final int VERSION = 2;
+
+    private static final byte NULL = 0, BOOLEAN = 1, BYTE = 2, SHORT = 3, INTEGER = 4, LONG = 5,
+            FLOAT = 6, DOUBLE = 7, STRING = 8, DATE = 9, SQL_DATE = 10, SQL_TIME = 11,
+            SQL_TIMESTAMP = 12, GEOMETRY = 13, BIG_DECIMAL = 14, BIG_INTEGER = 15;
+
+    private static final byte FEATURE = 1, END = 0;
+
+    private final ResponseCache cache;
+
+    private final long ttlMillis;
+
+    /** the server url, without the query string */
+    private final String server;
+
+    private final String credentials;
+
+    /**
+     * @param ttlMillis
+     *            how long features are kept when the server does not send caching headers
+     * @param server
+     *            the server the features come from, scoping the feature type generations
+     * @param user
+     *            the user the requests are issued as, {@code null} if anonymous
+     * @param password
+     *            the password of the user
+     */
+    public FeatureCache(ResponseCache cache, long ttlMillis, URL server, String user,
+            String password) {
+        this.cache = cache;
+        this.ttlMillis = ttlMillis;
+        this.server = server == null ? "" : server.getProtocol().toLowerCase() + "://"
+                + server.getHost().toLowerCase()
+                + (server.getPort() == -1 ? "" : ":" + server.getPort()) + server.getPath();
+        this.credentials = ResponseCache.credentials(user, password);
+    }
+
+    /**
+     * @return a parser over the cached features for the given request, or {@code null} on a miss
+     */
+    public GetFeatureParser get(GetFeatureRequest request, GeometryFactory geometryFactory)
+            throws IOException {
+        ResponseCache.Entry entry = cache.get(key(request));
+        if (entry == null) {
+            return null;
+        }
+        DataInputStream in = entry.getInputStream();
+        try {
+            if (in.readInt() != VERSION) {
+                in.close();
+                return null;
+            }
+            SimpleFeatureType type = readType(in, request.getQueryType());
+            return new CachedGetFeatureParser(in, type, geometryFactory);
+        } catch (IOException e) {
+            LOGGER.log(Level.FINE, "Ignoring unreadable cached features", e);
+            in.close();
+            return null;
+        }
+    }
+
+    /**
+     * @return a parser recording the features parsed by {@code parser} into the cache, or
+     *         {@code parser} itself if the response shall not be cached
+     */
+    public GetFeatureParser record(GetFeatureRequest request, GetFeatureResponse response,
+            GetFeatureParser parser) throws IOException {
+        long expires = ResponseCache.expires(response.getHTTPResponse(), ttlMillis);
+        if (expires == 0) {
+            return parser;
+        }
+        ResponseCache.EntryWriter writer = cache.put(key(request), expires, null);
+        return new RecordingGetFeatureParser(parser, writer, request.getQueryType());
+    }
+
+    /**
+     * Makes the cached features of the given type unreachable, to be called once a transaction
+     * modified it
+     */
+    public void invalidate(QName typeName) throws IOException {
+        long previous = readGeneration(typeName);
+        writeGeneration(typeName, Math.max(System.currentTimeMillis(), previous + 1));
+    }
+
+    String key(GetFeatureRequest request) throws IOException {
+        byte[] body = null;
+        if (request.requiresPost()) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            request.performPostOutput(out);
+            body = out.toByteArray();
+        }
+        return key(request.getTypeName(), request.getFinalURL(), body);
+    }
+
+    String key(QName typeName, URL url, byte[] body) throws IOException {
+        return "GetFeature\n" + credentials + getGeneration(typeName) + "\n"
+                + ResponseCache.key(url, body);
+    }
+
+    /**
+     * @return the current generation of the type, renewed if missing
+     */
+    long getGeneration(QName typeName) throws IOException {
+        long generation = readGeneration(typeName);
+        if (generation < 0) {
+            generation = System.currentTimeMillis();
+            writeGeneration(typeName, generation);
+        }
+        return generation;
+    }
+
+    private String generationKey(QName typeName) {
+        return "GetFeature generation\n" + server + "\n" + typeName;
+    }
+
+    private long readGeneration(QName typeName) throws IOException {
+        ResponseCache.Entry entry = cache.get(generationKey(typeName));
+        if (entry == null) {
+            return -1;
+        }
+        DataInputStream in = entry.getInputStream();
+        try {
+            return in.readLong();
+        } catch (IOException e) {
+            LOGGER.log(Level.FINE, "Ignoring unreadable feature type generation", e);
+            return -1;
+        } finally {
+            in.close();
+        }
+    }
+
+    private void writeGeneration(QName typeName, long generation) throws IOException {
+        ResponseCache.EntryWriter writer = cache.put(generationKey(typeName), Long.MAX_VALUE,
+                null);
+        try {
+            writer.getDataOutput().writeLong(generation);
+            writer.commit();
+        } finally {
+            writer.close();
+        }
+    }
+
+    /**
+     * Serves the features from a cache entry
+     */
+    static class CachedGetFeatureParser implements GetFeatureParser {
+
+        private DataInputStream in;
+
+        private final SimpleFeatureType type;
+
+        private final SimpleFeatureBuilder builder;
+
+        private final List<AttributeDescriptor> attributes;
+
+        private WKBReader wkbReader;
+
+        CachedGetFeatureParser(DataInputStream in, SimpleFeatureType type,
+                GeometryFactory geometryFactory) {
+            this.in = in;
+            this.type = type;
+            this.builder = new SimpleFeatureBuilder(type);
+            this.attributes = type.getAttributeDescriptors();
+            setGeometryFactory(geometryFactory);
+        }
+
+        public int getNumberOfFeatures() {
+            return -1;
+        }
+
+        public SimpleFeature parse() throws IOException {
+            if (in == null || in.readByte() != FEATURE) {
+                return null;
+            }
+            String fid = readString(in);
+            for (AttributeDescriptor descriptor : attributes) {
+                Object value = readValue(in, wkbReader);
+                if (value instanceof Geometry && descriptor instanceof GeometryDescriptor) {
+                    CoordinateReferenceSystem crs = ((GeometryDescriptor) descriptor)
+                            .getCoordinateReferenceSystem();
+                    ((Geometry) value).setUserData(crs);
+                }
+                builder.add(value);
+            }
+            return builder.buildFeature(fid);
+        }
+
+        public void close() throws IOException {
+            if (in != null) {
+                in.close();
+                in = null;
+            }
+        }
+
+        public FeatureType getFeatureType() {
+            return type;
+        }
+
+        public void setGeometryFactory(GeometryFactory geometryFactory) {
+            this.wkbReader = geometryFactory == null ? new WKBReader() : new WKBReader(
+                    geometryFactory);
+        }
+    }
+
+    /**
+     * Records the features parsed by a delegate parser
+     */
+    static class RecordingGetFeatureParser implements GetFeatureParser {
+
+        private final GetFeatureParser delegate;
+
+        private final FeatureType queryType;
+
+        private ResponseCache.EntryWriter writer;
+
+        private DataOutputStream out;
+
+        private List<AttributeDescriptor> attributes;
+
+        RecordingGetFeatureParser(GetFeatureParser delegate, ResponseCache.EntryWriter writer,
+                FeatureType queryType) {
+            this.delegate = delegate;
+            this.writer = writer;
+            this.out = writer.getDataOutput();
+            this.queryType = queryType;
+        }
+
+        public int getNumberOfFeatures() {
+            return delegate.getNumberOfFeatures();
+        }
+
+        public SimpleFeature parse() throws IOException {
+            SimpleFeature feature = delegate.parse();
+            if (writer != null) {
+                try {
+                    record(feature);
+                } catch (Exception e) {
+                    LOGGER.log(Level.FINE, "Cannot cache the features, not caching the response",
+                            e);
+                    abort();
+                }
+            }
+            return feature;
+        }
+
+        private void record(SimpleFeature feature) throws IOException {
+            if (attributes == null) {
+                // the header, out of the first feature type as the parser may adapt the query one
+                FeatureType type = feature == null ? delegate.getFeatureType() : feature
+                        .getFeatureType();
+                if (!(type instanceof SimpleFeatureType)) {
+                    type = queryType;
+                }
+                if (!(type instanceof SimpleFeatureType)) {
+                    throw new IOException("Cannot cache non simple features");
+                }
+                attributes = ((SimpleFeatureType) type).getAttributeDescriptors();
+                out.writeInt(VERSION);
+                writeType(out, (SimpleFeatureType) type);
+            }
+            if (feature == null) {
+                out.writeByte(END);
+                ResponseCache.EntryWriter writer = this.writer;
+                this.writer = null;
+                writer.commit();
+                return;
+            }
+            out.writeByte(FEATURE);
+            writeString(out, feature.getID());
+            for (AttributeDescriptor descriptor : attributes) {
+                writeValue(out, feature.getAttribute(descriptor.getLocalName()));
+            }
+        }
+
+        private void abort() {
+            if (writer != null) {
+                writer.abort();
+                writer = null;
+            }
+        }
+
+        public void close() throws IOException {
+            // a response not parsed to the end is not cached
+            abort();
+            delegate.close();
+        }
+
+        public FeatureType getFeatureType() {
+            return delegate.getFeatureType();
+        }
+
+        public void setGeometryFactory(GeometryFactory geometryFactory) {
+            delegate.setGeometryFactory(geometryFactory);
+        }
+    }
+
+    static void writeType(DataOutputStream out, SimpleFeatureType type) throws IOException {
+        String namespace = type.getName().getNamespaceURI();
+        writeString(out, namespace == null ? "" : namespace);
+        writeString(out, type.getName().getLocalPart());
+        List<AttributeDescriptor> attributes = type.getAttributeDescriptors();
+        out.writeInt(attributes.size());
+        for (AttributeDescriptor descriptor : attributes) {
+            writeString(out, descriptor.getLocalName());
+            writeString(out, descriptor.getType().getBinding().getName());
+            String wkt = "";
+            if (descriptor instanceof GeometryDescriptor) {
+                CoordinateReferenceSystem crs = ((GeometryDescriptor) descriptor)
+                        .getCoordinateReferenceSystem();
+                if (crs != null) {
+                    wkt = crs.toWKT();
+                }
+            }
+            writeString(out, wkt);
+        }
+    }
+
+    /**
+     * Reads back the stored type, which is the query type itself whenever it matches, sparing
+     * the features a retype
+     */
+    static SimpleFeatureType readType(DataInputStream in, FeatureType queryType)
+            throws IOException {
+        String namespace = readString(in);
+        String localName = readString(in);
+        int count = in.readInt();
+        List<String> names = new ArrayList<String>(count);
+        List<Class<?>> bindings = new ArrayList<Class<?>>(count);
+        List<String> crss = new ArrayList<String>(count);
+        for (int i = 0; i < count; i++) {
+            names.add(readString(in));
+            String binding = readString(in);
+            try {
+                bindings.add(Class.forName(binding));
+            } catch (ClassNotFoundException e) {
+                throw new IOException("Unknown attribute binding " + binding, e);
+            }
+            crss.add(readString(in));
+        }
+
+        SimpleFeatureType simpleQueryType = null;
+        if (queryType instanceof SimpleFeatureType) {
+            simpleQueryType = (SimpleFeatureType) queryType;
+        }
+        if (simpleQueryType != null && simpleQueryType.getAttributeCount() == count) {
+            boolean matches = true;
+            for (int i = 0; i < count && matches; i++) {
+                AttributeDescriptor descriptor = simpleQueryType.getDescriptor(i);
+                matches = descriptor.getLocalName().equals(names.get(i))
+                        && descriptor.getType().getBinding().equals(bindings.get(i));
+            }
+            if (matches) {
+                return simpleQueryType;
+            }
+        }
+
+        SimpleFeatureTypeBuilder builder = new SimpleFeatureTypeBuilder();
+        builder.setName(localName);
+        if (namespace.length() > 0) {
+            builder.setNamespaceURI(namespace);
+        }
+        for (int i = 0; i < count; i++) {
+            String name = names.get(i);
+            AttributeDescriptor descriptor = simpleQueryType == null ? null : simpleQueryType
+                    .getDescriptor(name);
+            if (descriptor != null && descriptor.getType().getBinding().equals(bindings.get(i))) {
+                builder.add(descriptor);
+            } else if (crss.get(i).length() > 0) {
+                try {
+                    builder.add(name, bindings.get(i), CRS.parseWKT(crss.get(i)));
+                } catch (Exception e) {
+                    throw new IOException("Cannot parse the CRS of " + name, e);
+                }
+            } else {
+                builder.add(name, bindings.get(i));
+            }
+        }
+        return builder.buildFeatureType();
+    }
+
+    static void writeValue(DataOutputStream out, Object value) throws IOException {
+        if (value == null) {
+            out.writeByte(NULL);
+        } else if (value instanceof Boolean) {
+            out.writeByte(BOOLEAN);
+            out.writeBoolean((Boolean) value);
+        } else if (value instanceof Byte) {
+            out.writeByte(BYTE);
+            out.writeByte((Byte) value);
+        } else if (value instanceof Short) {
+            out.writeByte(SHORT);
+            out.writeShort((Short) value);
+        } else if (value instanceof Integer) {
+            out.writeByte(INTEGER);
+            out.writeInt((Integer) value);
+        } else if (value instanceof Long) {
+            out.writeByte(LONG);
+            out.writeLong((Long) value);
+        } else if (value instanceof Float) {
+            out.writeByte(FLOAT);
+            out.writeFloat((Float) value);
+        } else if (value instanceof Double) {
+            out.writeByte(DOUBLE);
+            out.writeDouble((Double) value);
+        } else if (value instanceof String) {
+            out.writeByte(STRING);
+            writeString(out, (String) value);
+        } else if (value.getClass() == Date.class) {
+            out.writeByte(DATE);
+            out.writeLong(((Date) value).getTime());
+        } else if (value.getClass() == java.sql.Date.class) {
+            out.writeByte(SQL_DATE);
+            out.writeLong(((Date) value).getTime());
+        } else if (value.getClass() == java.sql.Time.class) {
+            out.writeByte(SQL_TIME);
+            out.writeLong(((Date) value).getTime());
+        } else if (value.getClass() == java.sql.Timestamp.class) {
+            out.writeByte(SQL_TIMESTAMP);
+            out.writeLong(((Date) value).getTime());
+            out.writeInt(((java.sql.Timestamp) value).getNanos());
+        } else if (value instanceof Geometry) {
+            Geometry geometry = (Geometry) value;
+            Coordinate coordinate = geometry.getCoordinate();
+            int dimension = coordinate != null && !Double.isNaN(coordinate.z) ? 3 : 2;
+            byte[] wkb = new WKBWriter(dimension).write(geometry);
+            out.writeByte(GEOMETRY);
+            out.writeInt(wkb.length);
+            out.write(wkb);
+        } else if (value instanceof BigDecimal) {
+            out.writeByte(BIG_DECIMAL);
+            writeString(out, value.toString());
+        } else if (value instanceof BigInteger) {
+            out.writeByte(BIG_INTEGER);
+            writeString(out, value.toString());
+        } else {
+            throw new IOException("Cannot cache values of type " + value.getClass().getName());
+        }
+    }
+
+    static Object readValue(DataInputStream in, WKBReader wkbReader) throws IOException {
+        byte tag = in.readByte();
+        switch (tag) {
+        case NULL:
+            return null;
+        case BOOLEAN:
+            return in.readBoolean();
+        case BYTE:
+            return in.readByte();
+        case SHORT:
+            return in.readShort();
+        case INTEGER:
+            return in.readInt();
+        case LONG:
+            return in.readLong();
+        case FLOAT:
+            return in.readFloat();
+        case DOUBLE:
+            return in.readDouble();
+        case STRING:
+            return readString(in);
+        case DATE:
+            return new Date(in.readLong());
+        case SQL_DATE:
+            return new java.sql.Date(in.readLong());
+        case SQL_TIME:
+            return new java.sql.Time(in.readLong());
+        case SQL_TIMESTAMP:
+            java.sql.Timestamp timestamp = new java.sql.Timestamp(in.readLong());
+            timestamp.setNanos(in.readInt());
+            return timestamp;
+        case GEOMETRY:
+            byte[] wkb = new byte[in.readInt()];
+            in.readFully(wkb);
+            try {
+                return wkbReader.read(wkb);
+            } catch (ParseException e) {
+                throw new IOException("Failed to parse the cached geometry", e);
+            }
+        case BIG_DECIMAL:
+            return new BigDecimal(readString(in));
+        case BIG_INTEGER:
+            return new BigInteger(readString(in));
+        default:
+            throw new IOException("Unknown value tag " + tag);
+        }
+    }
+
+    /**
+     * Writes a string without the 64KB limit of {@link DataOutputStream#writeUTF}
+     */
+    static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes("UTF-8");
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    static String readString(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new String(bytes, "UTF-8");
+    }
+}
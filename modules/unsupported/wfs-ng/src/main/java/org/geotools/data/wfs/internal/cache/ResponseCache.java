@@ -0,0 +1,512 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2013, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.data.wfs.internal.cache;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.net.URL;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TimeZone;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.geotools.data.ows.HTTPResponse;
+import org.geotools.util.logging.Logging;
+
+/**
+ * A disk backed, size bounded cache of WFS responses, shared by all the data stores pointing to
+ * the same directory.
+ * <p>
+ * Each entry is a file named after the SHA-1 of its {@link #key normalized request}, holding the
+ * expiration time and a few response headers followed by the payload. Entries are written to a
+ * temporary file and renamed once complete, so that readers never see partial contents. When the
+ * total size exceeds the limit the least recently used entries are evicted, the access order
+ * surviving restarts through the file modification times.
+ * </p>
+ * 
+ * @source $URL$
+ */
+public class ResponseCache {
+
+    private static final Logger LOGGER = Logging.getLogger(ResponseCache.class);
+
+    private static final int MAGIC = 0x57465343; // WFSC
+
+    private static final String SUFFIX = ".cache";
+
+    private static final Map<File, ResponseCache> CACHES = new HashMap<File, ResponseCache>();
+
+    private final File directory;
+
+    private long maxSize;
+
+    /** entry name to entry size, in access order */
+    private final LinkedHashMap<String, Long> index = new LinkedHashMap<String, Long>(16, 0.75f,
+            true);
+
+    private long size;
+
+    /**
+     * @return the cache for the given directory, created if missing
+     * @param maxSize
+     *            the maximum size in bytes of the cache contents, the last value set wins when
+     *            several data stores share the directory
+     */
+    public static synchronized ResponseCache get(File directory, long maxSize) throws IOException {
+        File canonical = directory.getCanonicalFile();
+        ResponseCache cache = CACHES.get(canonical);
+        if (cache == null) {
+            cache = new ResponseCache(canonical, maxSize);
+            CACHES.put(canonical, cache);
+        } else {
+            cache.setMaxSize(maxSize);
+        }
+        return cache;
+    }
+
+    ResponseCache(File directory, long maxSize) throws IOException {
+        this.directory = directory;
+        this.maxSize = maxSize;
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Cannot create the cache directory " + directory);
+        }
+        // rebuild the index, least recently used first
+        File[] files = directory.listFiles();
+        List<File> entries = new ArrayList<File>();
+        for (File file : files) {
+            if (file.getName().endsWith(SUFFIX)) {
+                entries.add(file);
+            } else if (file.getName().endsWith(".tmp")) {
+                // leftover of an interrupted write
+                file.delete();
+            }
+        }
+        Collections.sort(entries, new Comparator<File>() {
+            public int compare(File f1, File f2) {
+                long m1 = f1.lastModified();
+                long m2 = f2.lastModified();
+                return m1 < m2 ? -1 : (m1 == m2 ? 0 : 1);
+            }
+        });
+        synchronized (this) {
+            for (File file : entries) {
+                String name = file.getName();
+                long length = file.length();
+                index.put(name.substring(0, name.length() - SUFFIX.length()), length);
+                size += length;
+            }
+            evict();
+        }
+    }
+
+    /**
+     * A cached response
+     */
+    public static class Entry {
+
+        private final Map<String, String> headers;
+
+        private final DataInputStream in;
+
+        Entry(Map<String, String> headers, DataInputStream in) {
+            this.headers = headers;
+            this.in = in;
+        }
+
+        /**
+         * @return the value of the given response header, {@code null} if not stored
+         */
+        public String getHeader(String name) {
+            return headers.get(name);
+        }
+
+        /**
+         * @return the payload, to be closed by the caller
+         */
+        public DataInputStream getInputStream() {
+            return in;
+        }
+    }
+
+    /**
+     * Writes an entry, which becomes visible only once {@link #commit() committed}. Closing an
+     * entry that has not been committed discards it.
+     */
+    public class EntryWriter extends FilterOutputStream {
+
+        private final String name;
+
+        private final File temp;
+
+        private boolean done;
+
+        EntryWriter(String name, File temp, DataOutputStream out) {
+            super(out);
+            this.name = name;
+            this.temp = temp;
+        }
+
+        /**
+         * @return the payload stream
+         */
+        public DataOutputStream getDataOutput() {
+            return (DataOutputStream) out;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+        }
+
+        /**
+         * Makes the entry visible, replacing any previous one for the same key
+         */
+        public void commit() throws IOException {
+            if (done) {
+                return;
+            }
+            done = true;
+            out.close();
+            publish(name, temp);
+        }
+
+        /**
+         * Discards the entry
+         */
+        public void abort() {
+            if (done) {
+                return;
+            }
+            done = true;
+            try {
+                out.close();
+            } catch (IOException e) {
+                LOGGER.log(Level.FINE, "Error closing cache entry " + temp, e);
+            }
+            temp.delete();
+        }
+
+        @Override
+        public void close() {
+            abort();
+        }
+    }
+
+    /**
+     * @return the entry for the given key, or {@code null} if missing or expired
+     */
+    public Entry get(String key) throws IOException {
+        final String name = hash(key);
+        final File file = new File(directory, name + SUFFIX);
+        synchronized (this) {
+            if (index.get(name) == null) {
+                return null;
+            }
+        }
+        DataInputStream in;
+        try {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+        } catch (IOException e) {
+            // evicted meanwhile
+            return null;
+        }
+        boolean valid = false;
+        try {
+            if (in.readInt() != MAGIC) {
+                throw new IOException("Not a cache entry: " + file);
+            }
+            long expires = in.readLong();
+            if (expires <= System.currentTimeMillis()) {
+                remove(name);
+                return null;
+            }
+            int count = in.readInt();
+            Map<String, String> headers = new HashMap<String, String>();
+            for (int i = 0; i < count; i++) {
+                headers.put(in.readUTF(), in.readUTF());
+            }
+            synchronized (this) {
+                // the lookup moves the entry to the most recently used end
+                index.get(name);
+            }
+            file.setLastModified(System.currentTimeMillis());
+            valid = true;
+            return new Entry(headers, in);
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Discarding unreadable cache entry " + file, e);
+            remove(name);
+            return null;
+        } finally {
+            if (!valid) {
+                in.close();
+            }
+        }
+    }
+
+    /**
+     * Starts writing an entry
+     * 
+     * @param expires
+     *            the time in milliseconds after which the entry is stale
+     * @param headers
+     *            the response headers to store with the entry, {@code null} values being skipped
+     */
+    public EntryWriter put(String key, long expires, Map<String, String> headers)
+            throws IOException {
+        final String name = hash(key);
+        final File temp = File.createTempFile(name, ".tmp", directory);
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                new FileOutputStream(temp)));
+        try {
+            out.writeInt(MAGIC);
+            out.writeLong(expires);
+            Map<String, String> stored = new HashMap<String, String>();
+            if (headers != null) {
+                for (Map.Entry<String, String> header : headers.entrySet()) {
+                    if (header.getValue() != null) {
+                        stored.put(header.getKey(), header.getValue());
+                    }
+                }
+            }
+            out.writeInt(stored.size());
+            for (Map.Entry<String, String> header : stored.entrySet()) {
+                out.writeUTF(header.getKey());
+                out.writeUTF(header.getValue());
+            }
+        } catch (IOException e) {
+            out.close();
+            temp.delete();
+            throw e;
+        }
+        return new EntryWriter(name, temp, out);
+    }
+
+    /**
+     * Removes all the entries
+     */
+    public synchronized void clear() {
+        for (String name : new ArrayList<String>(index.keySet())) {
+            remove(name);
+        }
+    }
+
+    /**
+     * Sets the maximum size in bytes of the cache contents, evicting entries as needed
+     */
+    public synchronized void setMaxSize(long maxSize) {
+        this.maxSize = maxSize;
+        evict();
+    }
+
+    /**
+     * @return the total size in bytes of the entries
+     */
+    public synchronized long getSize() {
+        return size;
+    }
+
+    private synchronized void publish(String name, File temp) throws IOException {
+        File file = new File(directory, name + SUFFIX);
+        remove(name);
+        if (!temp.renameTo(file)) {
+            temp.delete();
+            throw new IOException("Cannot rename " + temp + " to " + file);
+        }
+        long length = file.length();
+        index.put(name, length);
+        size += length;
+        evict();
+    }
+
+    private synchronized void remove(String name) {
+        Long length = index.remove(name);
+        if (length != null) {
+            size -= length;
+        }
+        File file = new File(directory, name + SUFFIX);
+        if (file.exists() && !file.delete()) {
+            LOGGER.fine("Cannot delete cache entry " + file);
+        }
+    }
+
+    private void evict() {
+        Iterator<Map.Entry<String, Long>> it = index.entrySet().iterator();
+        while (size > maxSize && it.hasNext()) {
+            Map.Entry<String, Long> eldest = it.next();
+            it.remove();
+            size -= eldest.getValue();
+            new File(directory, eldest.getKey() + SUFFIX).delete();
+        }
+    }
+
+    /**
+     * Normalizes a request into a cache key: the KVP parameters are sorted and their names upper
+     * cased, so that equivalent GET requests share the entry, and the POST body is appended.
+     * 
+     * @param postBody
+     *            the POST request body, {@code null} for GET requests
+     */
+    public static String key(URL url, byte[] postBody) {
+        StringBuilder sb = new StringBuilder();
+        sb.append(url.getProtocol().toLowerCase()).append("://");
+        sb.append(url.getHost().toLowerCase());
+        if (url.getPort() != -1) {
+            sb.append(':').append(url.getPort());
+        }
+        sb.append(url.getPath());
+        String query = url.getQuery();
+        if (query != null && query.length() > 0) {
+            String[] kvps = query.split("&");
+            for (int i = 0; i < kvps.length; i++) {
+                int eq = kvps[i].indexOf('=');
+                kvps[i] = eq < 0 ? kvps[i].toUpperCase() : kvps[i].substring(0, eq)
+                        .toUpperCase() + kvps[i].substring(eq);
+            }
+            Arrays.sort(kvps);
+            char separator = '?';
+            for (String kvp : kvps) {
+                if (kvp.length() > 0) {
+                    sb.append(separator).append(kvp);
+                    separator = '&';
+                }
+            }
+        }
+        if (postBody != null) {
+            sb.append("\nPOST\n");
+            try {
+                sb.append(new String(postBody, "UTF-8"));
+            } catch (UnsupportedEncodingException e) {
+                throw new RuntimeException(e);
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * @return a prefix scoping cache keys to the given credentials, so that users do not get each
+     *         other's responses: the empty string for anonymous requests, a hash of the
+     *         credentials otherwise
+     */
+    public static String credentials(String user, String password) {
+        if (user == null && password == null) {
+            return "";
+        }
+        return hash(user + "\n" + password) + "\n";
+    }
+
+    /**
+     * @return the value of the given KVP parameter, matching its name ignoring case, or
+     *         {@code null} if not found
+     */
+    static String getParameter(URL url, String name) {
+        String query = url.getQuery();
+        if (query == null) {
+            return null;
+        }
+        for (String kvp : query.split("&")) {
+            int eq = kvp.indexOf('=');
+            if (eq > 0 && kvp.substring(0, eq).equalsIgnoreCase(name)) {
+                return kvp.substring(eq + 1);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Computes when a response becomes stale, honoring the {@code Cache-Control}, {@code Pragma}
+     * and {@code Expires} headers, and falling back to the given time to live when the server
+     * does not say.
+     * 
+     * @return the expiration time in milliseconds, or zero if the response shall not be cached
+     */
+    public static long expires(HTTPResponse response, long ttlMillis) {
+        final long now = System.currentTimeMillis();
+        String cacheControl = response.getResponseHeader("Cache-Control");
+        if (cacheControl != null) {
+            for (String directive : cacheControl.toLowerCase().split(",")) {
+                directive = directive.trim();
+                if (directive.equals("no-store") || directive.equals("no-cache")) {
+                    return 0;
+                }
+                if (directive.startsWith("max-age=")) {
+                    try {
+                        long maxAge = Long.parseLong(directive.substring(8).trim());
+                        return maxAge > 0 ? now + maxAge * 1000 : 0;
+                    } catch (NumberFormatException e) {
+                        return 0;
+                    }
+                }
+            }
+        }
+        String pragma = response.getResponseHeader("Pragma");
+        if (pragma != null && pragma.toLowerCase().contains("no-cache")) {
+            return 0;
+        }
+        String expires = response.getResponseHeader("Expires");
+        if (expires != null) {
+            // an invalid date means already expired
+            SimpleDateFormat format = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss zzz",
+                    Locale.US);
+            format.setTimeZone(TimeZone.getTimeZone("GMT"));
+            try {
+                long time = format.parse(expires.trim()).getTime();
+                return time > now ? time : 0;
+            } catch (ParseException e) {
+                return 0;
+            }
+        }
+        return ttlMillis > 0 ? now + ttlMillis : 0;
+    }
+
+    static String hash(String key) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-1");
+            byte[] bytes = digest.digest(key.getBytes("UTF-8"));
+            StringBuilder sb = new StringBuilder(bytes.length * 2);
+            for (byte b : bytes) {
+                sb.append(Character.forDigit((b >> 4) & 0xF, 16));
+                sb.append(Character.forDigit(b & 0xF, 16));
+            }
+            return sb.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        } catch (UnsupportedEncodingException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
@@ -160,6 +160,10 @@ public class StrictWFS_1_x_Strategy extends AbstractWFSStrategy {
         if (maxFeatures != null) {
             getFeature.setMaxFeatures(BigInteger.valueOf(maxFeatures.intValue()));
         }
+        Integer startIndex = query.getStartIndex();
+        if (startIndex != null) {
+            getFeature.setStartIndex(BigInteger.valueOf(startIndex.intValue()));
+        }
 
         ResultType resultType = query.getResultType();
         getFeature.setResultType(RESULTS == resultType ? ResultTypeType.RESULTS_LITERAL
@@ -0,0 +1,356 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2013, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.data.wfs.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.geotools.data.DataUtilities;
+import org.geotools.data.wfs.internal.GetFeatureParser;
+import org.geotools.feature.simple.SimpleFeatureBuilder;
+import org.geotools.feature.simple.SimpleFeatureImpl;
+import org.geotools.filter.identity.FeatureIdImpl;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
+import org.opengis.feature.type.FeatureType;
+
+import com.vividsolutions.jts.geom.Envelope;
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.GeometryFactory;
+import com.vividsolutions.jts.io.WKTReader;
+
+/**
+ * Tests the {@link ParallelFeatureReader}, checking pages are merged in order.
+ * 
+ * @source $URL$
+ */
+public class ParallelFeatureReaderTest {
+
+    private SimpleFeatureType type;
+
+    private SimpleFeatureType geometryType;
+
+    private ExecutorService executor;
+
+    @Before
+    public void setUp() throws Exception {
+        type = DataUtilities.createType("test", "name:String");
+        geometryType = DataUtilities.createType("test", "geom:Geometry");
+        executor = Executors.newCachedThreadPool();
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    private SimpleFeature feature(int id) {
+        return SimpleFeatureBuilder.build(type, new Object[] { "f" + id }, "test." + id);
+    }
+
+    private static class ListParser implements GetFeatureParser {
+
+        private final Iterator<SimpleFeature> features;
+
+        ListParser(List<SimpleFeature> features) {
+            this.features = features.iterator();
+        }
+
+        public int getNumberOfFeatures() {
+            return -1;
+        }
+
+        public SimpleFeature parse() throws IOException {
+            return features.hasNext() ? features.next() : null;
+        }
+
+        public void close() throws IOException {
+        }
+
+        public FeatureType getFeatureType() {
+            return null;
+        }
+
+        public void setGeometryFactory(GeometryFactory geometryFactory) {
+        }
+    }
+
+    /**
+     * Pages of {@code pageSize} features out of {@code total}, with unknown page count
+     */
+    private class CountPages implements ParallelFeatureReader.Pages {
+
+        final int pageSize;
+
+        final int total;
+
+        final AtomicInteger opened = new AtomicInteger();
+
+        CountPages(int pageSize, int total) {
+            this.pageSize = pageSize;
+            this.total = total;
+        }
+
+        public int getPageCount() {
+            return -1;
+        }
+
+        public GetFeatureParser open(int page) throws IOException {
+            opened.incrementAndGet();
+            List<SimpleFeature> features = new ArrayList<SimpleFeature>();
+            for (int i = page * pageSize; i < Math.min(total, (page + 1) * pageSize); i++) {
+                features.add(feature(i));
+            }
+            return new ListParser(features);
+        }
+
+        public boolean isLast(int page, int count) {
+            return count < pageSize;
+        }
+
+        public boolean realign(int page, int count) {
+            return false;
+        }
+    }
+
+    /**
+     * A server returning the features from a start index, but never more than {@code cap} at a
+     * time
+     */
+    private class CappedPages extends ParallelFeatureReader.StartIndexPages {
+
+        final int cap;
+
+        final int total;
+
+        CappedPages(int pageSize, int maxFeatures, int cap, int total) {
+            super(pageSize, maxFeatures);
+            this.cap = cap;
+            this.total = total;
+        }
+
+        @Override
+        protected GetFeatureParser open(int startIndex, int count) throws IOException {
+            List<SimpleFeature> features = new ArrayList<SimpleFeature>();
+            int end = Math.min(total, startIndex + Math.min(count, cap));
+            for (int i = startIndex; i < end; i++) {
+                features.add(feature(i));
+            }
+            return new ListParser(features);
+        }
+    }
+
+    private List<String> readIds(ParallelFeatureReader reader) throws IOException {
+        List<String> ids = new ArrayList<String>();
+        try {
+            while (reader.hasNext()) {
+                ids.add(reader.next().getID());
+            }
+        } finally {
+            reader.close();
+        }
+        return ids;
+    }
+
+    @Test
+    public void testPagesInOrder() throws Exception {
+        // larger than the page buffers, so that producers block on the consumer
+        final int total = 5 * ParallelFeatureReader.BUFFER_SIZE + 7;
+        final int pageSize = 2 * ParallelFeatureReader.BUFFER_SIZE;
+        CountPages pages = new CountPages(pageSize, total);
+        ParallelFeatureReader reader = new ParallelFeatureReader(pages, executor, 2);
+        assertSame(type, reader.getFeatureType());
+
+        List<String> ids = readIds(reader);
+        assertEquals(total, ids.size());
+        for (int i = 0; i < total; i++) {
+            assertEquals("test." + i, ids.get(i));
+        }
+        // the short page stops the paging, with at most the pages in flight wasted
+        assertTrue(pages.opened.get() <= 3 + 2);
+    }
+
+    @Test
+    public void testExactLastPage() throws Exception {
+        // the last full page is followed by an empty one
+        CountPages pages = new CountPages(5, 10);
+        ParallelFeatureReader reader = new ParallelFeatureReader(pages, executor, 4);
+        assertEquals(10, readIds(reader).size());
+    }
+
+    @Test
+    public void testEmpty() throws Exception {
+        ParallelFeatureReader reader = new ParallelFeatureReader(new CountPages(5, 0), executor,
+                4);
+        assertFalse(reader.hasNext());
+        try {
+            reader.getFeatureType();
+            fail("Expected IllegalStateException");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+        reader.close();
+    }
+
+    /**
+     * A grid of 2x2 tiles over (0,0 2,2), returning the features whose envelope intersects each
+     * tile, like a server would with a bbox filter
+     */
+    private class GridPages extends ParallelFeatureReader.TilePages {
+
+        final List<SimpleFeature> features;
+
+        GridPages(List<SimpleFeature> features) {
+            super(new Envelope(0, 2, 0, 2), 2);
+            this.features = features;
+        }
+
+        @Override
+        protected GetFeatureParser open(Envelope tile) throws IOException {
+            List<SimpleFeature> result = new ArrayList<SimpleFeature>();
+            for (SimpleFeature feature : features) {
+                Envelope envelope = ((Geometry) feature.getDefaultGeometry())
+                        .getEnvelopeInternal();
+                if (tile == null ? !envelope.intersects(new Envelope(0, 2, 0, 2)) : envelope
+                        .intersects(tile)) {
+                    result.add(feature);
+                }
+            }
+            return new ListParser(result);
+        }
+    }
+
+    private SimpleFeature feature(String id, String wkt) throws Exception {
+        Object[] values = new Object[] { new WKTReader().read(wkt) };
+        if (id != null) {
+            return SimpleFeatureBuilder.build(geometryType, values, id);
+        }
+        return new SimpleFeatureImpl(values, geometryType, new FeatureIdImpl("anonymous"), false) {
+            @Override
+            public String getID() {
+                return null;
+            }
+        };
+    }
+
+    @Test
+    public void testTilesOwnFeatures() throws Exception {
+        List<SimpleFeature> features = Arrays.asList(
+                // inside a single tile
+                feature("test.0", "POINT(0.5 0.5)"),
+                // on the edges shared by the four tiles
+                feature("test.1", "POINT(1 1)"),
+                // across all the tiles, starting from the last one
+                feature("test.2", "LINESTRING(1.5 1.5, 0.5 0.5)"),
+                // on the upper right corner of the grid
+                feature("test.3", "POINT(2 2)"),
+                // starting out of the grid, crossing two tiles
+                feature("test.4", "LINESTRING(-1 0.5, 1.5 0.5)"),
+                // out of the grid
+                feature("test.5", "POINT(5 5)"));
+        List<String> ids = readIds(new ParallelFeatureReader(new GridPages(features), executor,
+                2));
+        assertEquals(6, ids.size());
+        for (SimpleFeature feature : features) {
+            assertTrue(feature.getID(), ids.contains(feature.getID()));
+        }
+
+        // tiles come back in order, each feature from the tile owning its first vertex
+        assertEquals(Arrays.asList("test.0", "test.4", "test.1", "test.2", "test.3", "test.5"),
+                ids);
+    }
+
+    @Test
+    public void testTilesWithoutIds() throws Exception {
+        // features without an id are told apart by their position, unless they cross the grid
+        List<SimpleFeature> features = Arrays.asList(feature(null, "LINESTRING(0.5 0.5, 1.5 1.5)"),
+                feature(null, "LINESTRING(-1 0.5, 1.5 0.5)"));
+        List<String> ids = readIds(new ParallelFeatureReader(new GridPages(features), executor,
+                2));
+        assertEquals(Arrays.asList(null, null, null), ids);
+    }
+
+    @Test
+    public void testStartIndexPages() throws Exception {
+        // the last full page is followed by an empty one
+        CappedPages pages = new CappedPages(5, Integer.MAX_VALUE, 5, 10);
+        assertEquals(10, readIds(new ParallelFeatureReader(pages, executor, 3)).size());
+
+        // paging stops at the maximum number of features
+        pages = new CappedPages(5, 12, 5, 100);
+        List<String> ids = readIds(new ParallelFeatureReader(pages, executor, 3));
+        assertEquals(12, ids.size());
+        assertEquals("test.11", ids.get(11));
+    }
+
+    @Test
+    public void testStartIndexPagesCapped() throws Exception {
+        // the server returns less features than requested, none shall be skipped
+        CappedPages pages = new CappedPages(10, Integer.MAX_VALUE, 3, 47);
+        List<String> ids = readIds(new ParallelFeatureReader(pages, executor, 4));
+        assertEquals(47, ids.size());
+        for (int i = 0; i < 47; i++) {
+            assertEquals("test." + i, ids.get(i));
+        }
+
+        pages = new CappedPages(10, 25, 3, 47);
+        ids = readIds(new ParallelFeatureReader(pages, executor, 4));
+        assertEquals(25, ids.size());
+        assertEquals("test.24", ids.get(24));
+    }
+
+    @Test
+    public void testFailure() throws Exception {
+        CountPages pages = new CountPages(5, 100) {
+            @Override
+            public GetFeatureParser open(int page) throws IOException {
+                if (page == 2) {
+                    throw new IOException("page 2 failed");
+                }
+                return super.open(page);
+            }
+        };
+        ParallelFeatureReader reader = new ParallelFeatureReader(pages, executor, 3);
+        int read = 0;
+        try {
+            while (reader.hasNext()) {
+                reader.next();
+                read++;
+            }
+            fail("Expected IOException");
+        } catch (IOException e) {
+            assertEquals("page 2 failed", e.getMessage());
+        }
+        assertEquals(9, read);
+        assertFalse(reader.hasNext());
+    }
+}
@@ -0,0 +1,248 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2013, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.data.wfs.internal.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.net.URL;
+import java.sql.Timestamp;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.List;
+import java.util.UUID;
+
+import javax.xml.namespace.QName;
+
+import org.apache.commons.io.FileUtils;
+import org.geotools.data.DataUtilities;
+import org.geotools.data.wfs.internal.GetFeatureParser;
+import org.geotools.feature.simple.SimpleFeatureBuilder;
+import org.geotools.feature.simple.SimpleFeatureTypeBuilder;
+import org.geotools.referencing.crs.DefaultGeographicCRS;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
+import org.opengis.feature.type.FeatureType;
+
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.GeometryFactory;
+import com.vividsolutions.jts.geom.Point;
+import com.vividsolutions.jts.io.WKTReader;
+
+/**
+ * Tests the binary form of the {@link FeatureCache}
+ * 
+ * @source $URL$
+ */
+public class FeatureCacheTest {
+
+    private File directory;
+
+    private ResponseCache cache;
+
+    private SimpleFeatureType type;
+
+    @Before
+    public void setUp() throws Exception {
+        directory = File.createTempFile("wfs-cache", "");
+        directory.delete();
+        cache = new ResponseCache(directory, 1024 * 1024);
+
+        SimpleFeatureTypeBuilder builder = new SimpleFeatureTypeBuilder();
+        builder.setName("roads");
+        builder.setNamespaceURI("http://example.org");
+        builder.add("geom", Geometry.class, DefaultGeographicCRS.WGS84);
+        builder.add("name", String.class);
+        builder.add("lanes", Integer.class);
+        builder.add("length", BigDecimal.class);
+        builder.add("opened", Date.class);
+        builder.add("updated", Timestamp.class);
+        type = builder.buildFeatureType();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        FileUtils.deleteDirectory(directory);
+    }
+
+    private static class ListParser implements GetFeatureParser {
+
+        private final SimpleFeatureType type;
+
+        private final Iterator<SimpleFeature> features;
+
+        ListParser(SimpleFeatureType type, List<SimpleFeature> features) {
+            this.type = type;
+            this.features = features.iterator();
+        }
+
+        public int getNumberOfFeatures() {
+            return -1;
+        }
+
+        public SimpleFeature parse() throws IOException {
+            return features.hasNext() ? features.next() : null;
+        }
+
+        public void close() throws IOException {
+        }
+
+        public FeatureType getFeatureType() {
+            return type;
+        }
+
+        public void setGeometryFactory(GeometryFactory geometryFactory) {
+        }
+    }
+
+    private List<SimpleFeature> features() throws Exception {
+        WKTReader wkt = new WKTReader();
+        Timestamp updated = new Timestamp(1000);
+        updated.setNanos(123456789);
+        return Arrays.asList(
+                SimpleFeatureBuilder.build(type, new Object[] {
+                        wkt.read("LINESTRING(0 0, 1 1)"), "first", 2, new BigDecimal("10.25"),
+                        new Date(5000), updated }, "roads.1"),
+                SimpleFeatureBuilder.build(type, new Object[] { wkt.read("POINT(1 2 3)"),
+                        null, null, null, null, null }, "roads.2"));
+    }
+
+    private GetFeatureParser read() throws IOException {
+        ResponseCache.Entry entry = cache.get("roads");
+        if (entry == null) {
+            return null;
+        }
+        assertEquals(FeatureCache.VERSION, entry.getInputStream().readInt());
+        SimpleFeatureType cachedType = FeatureCache.readType(entry.getInputStream(), type);
+        return new FeatureCache.CachedGetFeatureParser(entry.getInputStream(), cachedType,
+                new GeometryFactory());
+    }
+
+    @Test
+    public void testRoundTrip() throws Exception {
+        List<SimpleFeature> features = features();
+        GetFeatureParser recording = new FeatureCache.RecordingGetFeatureParser(new ListParser(
+                type, features), cache.put("roads", Long.MAX_VALUE, null), type);
+        while (recording.parse() != null)
+            ;
+        recording.close();
+
+        GetFeatureParser cached = read();
+        // the query type is reused as is
+        assertSame(type, cached.getFeatureType());
+        SimpleFeature actual = null;
+        for (SimpleFeature expected : features) {
+            actual = cached.parse();
+            assertEquals(expected.getID(), actual.getID());
+            for (int i = 0; i < type.getAttributeCount(); i++) {
+                Object value = expected.getAttribute(i);
+                if (value instanceof Geometry) {
+                    assertTrue(((Geometry) value).equalsExact((Geometry) actual.getAttribute(i)));
+                    assertSame(DefaultGeographicCRS.WGS84,
+                            ((Geometry) actual.getAttribute(i)).getUserData());
+                } else {
+                    assertEquals(value, actual.getAttribute(i));
+                }
+            }
+        }
+        // the third dimension is kept
+        assertEquals(3, ((Point) actual.getDefaultGeometry()).getCoordinate().z, 0d);
+        assertNull(cached.parse());
+        cached.close();
+    }
+
+    @Test
+    public void testKeys() throws Exception {
+        URL server = new URL("http://example.org/wfs?service=WFS");
+        URL getFeature = new URL("http://example.org/wfs?service=WFS&request=GetFeature");
+        QName roads = new QName("http://example.org", "roads");
+        QName rivers = new QName("http://example.org", "rivers");
+        FeatureCache anonymous = new FeatureCache(cache, 60000, server, null, null);
+        FeatureCache alice = new FeatureCache(cache, 60000, server, "alice", "secret");
+        String roadsKey = anonymous.key(roads, getFeature, null);
+        String riversKey = anonymous.key(rivers, getFeature, null);
+        assertEquals(roadsKey, anonymous.key(roads, getFeature, null));
+        assertFalse(roadsKey.equals(alice.key(roads, getFeature, null)));
+
+        // a commit renews the generation of the type, for all the stores sharing the cache
+        String aliceKey = alice.key(roads, getFeature, null);
+        alice.invalidate(roads);
+        assertFalse(roadsKey.equals(anonymous.key(roads, getFeature, null)));
+        assertFalse(aliceKey.equals(alice.key(roads, getFeature, null)));
+        assertEquals(riversKey, anonymous.key(rivers, getFeature, null));
+
+        // a lost generation is renewed too
+        String current = anonymous.key(rivers, getFeature, null);
+        cache.clear();
+        Thread.sleep(2);
+        assertFalse(current.equals(anonymous.key(rivers, getFeature, null)));
+    }
+
+    @Test
+    public void testIncompleteNotCached() throws Exception {
+        GetFeatureParser recording = new FeatureCache.RecordingGetFeatureParser(new ListParser(
+                type, features()), cache.put("roads", Long.MAX_VALUE, null), type);
+        recording.parse();
+        recording.close();
+        assertNull(read());
+    }
+
+    @Test
+    public void testOtherTypesNotCached() throws Exception {
+        SimpleFeatureType other = DataUtilities.createType("roads", "id:java.util.UUID");
+        SimpleFeature feature = SimpleFeatureBuilder.build(other,
+                new Object[] { UUID.randomUUID() }, "roads.1");
+        GetFeatureParser recording = new FeatureCache.RecordingGetFeatureParser(new ListParser(
+                other, Collections.singletonList(feature)), cache.put("roads", Long.MAX_VALUE,
+                null), other);
+        // parsed as usual, but not cached
+        assertSame(feature, recording.parse());
+        assertNull(recording.parse());
+        recording.close();
+        assertNull(cache.get("roads"));
+    }
+
+    @Test
+    public void testOtherQueryType() throws Exception {
+        GetFeatureParser recording = new FeatureCache.RecordingGetFeatureParser(new ListParser(
+                type, features()), cache.put("roads", Long.MAX_VALUE, null), type);
+        while (recording.parse() != null)
+            ;
+
+        ResponseCache.Entry entry = cache.get("roads");
+        entry.getInputStream().readInt();
+        SimpleFeatureType other = DataUtilities.createType("roads", "name:String");
+        SimpleFeatureType cachedType = FeatureCache.readType(entry.getInputStream(), other);
+        entry.getInputStream().close();
+        assertEquals(type.getAttributeCount(), cachedType.getAttributeCount());
+        assertEquals(type.getName(), cachedType.getName());
+        assertEquals(Integer.class, cachedType.getDescriptor("lanes").getType().getBinding());
+        assertTrue(org.geotools.referencing.CRS.equalsIgnoreMetadata(DefaultGeographicCRS.WGS84,
+                cachedType.getGeometryDescriptor().getCoordinateReferenceSystem()));
+    }
+}
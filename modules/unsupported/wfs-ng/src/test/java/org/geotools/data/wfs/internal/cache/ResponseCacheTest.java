@@ -0,0 +1,260 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2013, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.data.wfs.internal.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.geotools.data.ows.HTTPClient;
+import org.geotools.data.ows.HTTPResponse;
+import org.geotools.data.ows.SimpleHttpClient;
+import org.geotools.data.wfs.internal.cache.ResponseCache.Entry;
+import org.geotools.data.wfs.internal.cache.ResponseCache.EntryWriter;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests the {@link ResponseCache} and the {@link CachingHTTPClient}
+ * 
+ * @source $URL$
+ */
+public class ResponseCacheTest {
+
+    private File directory;
+
+    @Before
+    public void setUp() throws Exception {
+        directory = File.createTempFile("wfs-cache", "");
+        directory.delete();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        FileUtils.deleteDirectory(directory);
+    }
+
+    private static class TestResponse implements HTTPResponse {
+
+        final Map<String, String> headers = new HashMap<String, String>();
+
+        final InputStream stream;
+
+        TestResponse(String contents) {
+            headers.put("Content-Type", "text/xml");
+            stream = new ByteArrayInputStream(contents.getBytes());
+        }
+
+        public void dispose() {
+        }
+
+        public String getContentType() {
+            return headers.get("Content-Type");
+        }
+
+        public String getResponseHeader(String headerName) {
+            return headers.get(headerName);
+        }
+
+        public InputStream getResponseStream() throws IOException {
+            return stream;
+        }
+
+        public String getResponseCharset() {
+            return null;
+        }
+    }
+
+    private void put(ResponseCache cache, String key, String contents, long expires)
+            throws IOException {
+        EntryWriter writer = cache.put(key, expires,
+                Collections.singletonMap("Content-Type", "text/xml"));
+        writer.write(contents.getBytes());
+        writer.commit();
+    }
+
+    private String read(Entry entry) throws IOException {
+        try {
+            return new String(IOUtils.toByteArray(entry.getInputStream()));
+        } finally {
+            entry.getInputStream().close();
+        }
+    }
+
+    @Test
+    public void testPutGet() throws Exception {
+        ResponseCache cache = new ResponseCache(directory, 1024 * 1024);
+        long expires = System.currentTimeMillis() + 60000;
+        put(cache, "a", "<a/>", expires);
+        Entry entry = cache.get("a");
+        assertNotNull(entry);
+        assertEquals("text/xml", entry.getHeader("Content-Type"));
+        assertEquals("<a/>", read(entry));
+        assertNull(cache.get("b"));
+
+        // uncommitted entries are not visible
+        EntryWriter writer = cache.put("b", expires, null);
+        writer.write("<b/>".getBytes());
+        assertNull(cache.get("b"));
+        writer.close();
+        assertNull(cache.get("b"));
+
+        // survives a restart
+        cache = new ResponseCache(directory, 1024 * 1024);
+        assertEquals("<a/>", read(cache.get("a")));
+        assertEquals(1, directory.list().length);
+    }
+
+    @Test
+    public void testExpiration() throws Exception {
+        ResponseCache cache = new ResponseCache(directory, 1024 * 1024);
+        put(cache, "a", "<a/>", System.currentTimeMillis() - 1);
+        assertNull(cache.get("a"));
+        assertEquals(0, cache.getSize());
+    }
+
+    @Test
+    public void testEviction() throws Exception {
+        ResponseCache cache = new ResponseCache(directory, 1024 * 1024);
+        long expires = System.currentTimeMillis() + 60000;
+        char[] contents = new char[1000];
+        Arrays.fill(contents, 'x');
+        put(cache, "a", new String(contents), expires);
+        long entrySize = cache.getSize();
+        put(cache, "b", new String(contents), expires);
+        put(cache, "c", new String(contents), expires);
+        // use a, so that b is the least recently used
+        read(cache.get("a"));
+        cache.setMaxSize(2 * entrySize);
+        assertEquals(2 * entrySize, cache.getSize());
+        assertNotNull(cache.get("a"));
+        assertNull(cache.get("b"));
+        assertNotNull(cache.get("c"));
+    }
+
+    @Test
+    public void testKey() throws Exception {
+        String k1 = ResponseCache.key(new URL(
+                "http://Example.org/wfs?request=GetCapabilities&service=WFS"), null);
+        String k2 = ResponseCache.key(new URL(
+                "http://example.org/wfs?SERVICE=WFS&REQUEST=GetCapabilities"), null);
+        assertEquals(k1, k2);
+        String k3 = ResponseCache.key(new URL("http://example.org/wfs"), "<a/>".getBytes());
+        String k4 = ResponseCache.key(new URL("http://example.org/wfs"), "<b/>".getBytes());
+        assertTrue(!k3.equals(k4));
+    }
+
+    @Test
+    public void testExpires() throws Exception {
+        long now = System.currentTimeMillis();
+        TestResponse response = new TestResponse("");
+        assertTrue(ResponseCache.expires(response, 1000) >= now + 1000);
+        assertEquals(0, ResponseCache.expires(response, 0));
+
+        response.headers.put("Cache-Control", "public, max-age=60");
+        assertTrue(ResponseCache.expires(response, 0) >= now + 60000);
+
+        response.headers.put("Cache-Control", "no-cache");
+        assertEquals(0, ResponseCache.expires(response, 1000));
+
+        response.headers.remove("Cache-Control");
+        response.headers.put("Expires", "Thu, 01 Dec 1994 16:00:00 GMT");
+        assertEquals(0, ResponseCache.expires(response, 1000));
+    }
+
+    @Test
+    public void testCachingHTTPClient() throws Exception {
+        final ResponseCache cache = new ResponseCache(directory, 1024 * 1024);
+        final int[] requests = new int[1];
+        HTTPClient server = new SimpleHttpClient() {
+            @Override
+            public HTTPResponse get(URL url) {
+                requests[0]++;
+                return new TestResponse("<?xml version=\"1.0\"?><wfs:WFS_Capabilities/>");
+            }
+
+            @Override
+            public HTTPResponse post(URL url, InputStream postContent, String postContentType) {
+                return get(url);
+            }
+        };
+        CachingHTTPClient client = new CachingHTTPClient(server, cache, 60000);
+        URL caps = new URL("http://example.org/wfs?service=WFS&request=GetCapabilities");
+        for (int i = 0; i < 3; i++) {
+            HTTPResponse response = client.get(caps);
+            assertEquals("text/xml", response.getContentType());
+            String contents = new String(IOUtils.toByteArray(response.getResponseStream()));
+            assertEquals("<?xml version=\"1.0\"?><wfs:WFS_Capabilities/>", contents);
+            response.dispose();
+        }
+        assertEquals(1, requests[0]);
+
+        // GetFeature is not cached as a raw response
+        URL getFeature = new URL("http://example.org/wfs?service=WFS&request=GetFeature");
+        for (int i = 0; i < 2; i++) {
+            HTTPResponse response = client.get(getFeature);
+            IOUtils.toByteArray(response.getResponseStream());
+            response.dispose();
+        }
+        assertEquals(3, requests[0]);
+
+        // POST requests are recognized by their root element
+        byte[] dft = "<wfs:DescribeFeatureType xmlns:wfs=\"http://www.opengis.net/wfs\"/>"
+                .getBytes();
+        for (int i = 0; i < 2; i++) {
+            HTTPResponse response = client.post(caps, new ByteArrayInputStream(dft), "text/xml");
+            IOUtils.toByteArray(response.getResponseStream());
+            response.dispose();
+        }
+        assertEquals(4, requests[0]);
+
+        // responses are not shared among users
+        client.setUser("alice");
+        client.setPassword("secret");
+        for (int i = 0; i < 2; i++) {
+            HTTPResponse response = client.get(caps);
+            IOUtils.toByteArray(response.getResponseStream());
+            response.dispose();
+        }
+        assertEquals(5, requests[0]);
+        client.setPassword("other");
+        IOUtils.toByteArray(client.get(caps).getResponseStream());
+        assertEquals(6, requests[0]);
+    }
+
+    @Test
+    public void testRootElement() {
+        byte[] xml = "<?xml version=\"1.0\"?>\n<!-- a comment --><ows:ExceptionReport a=\"b\">"
+                .getBytes();
+        assertEquals("ExceptionReport", CachingHTTPClient.rootElement(xml, xml.length));
+        assertNull(CachingHTTPClient.rootElement(xml, 10));
+    }
+}